@@ -6,8 +6,18 @@ package org.rhq.cassandra.schema;
 public enum Table {
 
     METRICS_INDEX("rhq.metrics_idx"),
+    METRICS_CHECKPOINT("rhq.metrics_checkpoint"),
+    METRICS_LATE_INDEX("rhq.metrics_late_idx"),
+    METRICS_AGGREGATION_LEASE("rhq.metrics_aggregation_lease"),
     RAW_METRICS("rhq.raw_metrics"),
     AGGREGATE_METRICS("rhq.aggregate_metrics"),
+    GROUP_AGGREGATE_METRICS("rhq.group_aggregate_metrics"),
+    GROUP_ROLLUPS("rhq.group_rollups"),
+    TRAIT_HISTORY("rhq.trait_history"),
+    AVAILABILITY_HISTORY("rhq.availability_history"),
+    EVENTS("rhq.events"),
+    EVENT_ROLLUPS("rhq.event_rollups"),
+    EVENT_IDS("rhq.event_ids"),
     SCHEMA_VERSION("rhq.schema_version");
 
     private String tableName;
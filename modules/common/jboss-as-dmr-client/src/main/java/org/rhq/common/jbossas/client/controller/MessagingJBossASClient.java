@@ -34,6 +34,7 @@ public class MessagingJBossASClient extends JBossASClient {
     public static final String SUBSYSTEM_MESSAGING = "messaging";
     public static final String HORNETQ_SERVER = "hornetq-server";
     public static final String JMS_QUEUE = "jms-queue";
+    public static final String ADDRESS_SETTING = "address-setting";
 
     public MessagingJBossASClient(ModelControllerClient client) {
         super(client);
@@ -80,4 +81,46 @@ public class MessagingJBossASClient extends JBossASClient {
         return request;
     }
 
+    /**
+     * Checks to see if there are already address settings for the given match.
+     *
+     * @param match the address match, e.g. "jms.queue.MyQueue"
+     * @return true if there are address settings for the given match already in existence
+     */
+    public boolean isAddressSetting(String match) throws Exception {
+        Address addr = Address.root().add(SUBSYSTEM, SUBSYSTEM_MESSAGING, HORNETQ_SERVER, "default");
+        String haystack = ADDRESS_SETTING;
+        return null != findNodeInList(addr, haystack, match);
+    }
+
+    /**
+     * Returns a ModelNode that can be used to create the address settings controlling the redelivery of the
+     * messages of the matching addresses. The settings not given here are inherited from the less specific matches.
+     *
+     * @param match the address match, e.g. "jms.queue.MyQueue"
+     * @param redeliveryDelay the time, in milliseconds, to wait before redelivering a message that was rolled back
+     * @param maxDeliveryAttempts the number of times a message is delivered before it is sent to the dead letter
+     *                            address
+     *
+     * @return the request that can be used to create the address settings
+     */
+    public ModelNode createNewAddressSettingRequest(String match, long redeliveryDelay, int maxDeliveryAttempts) {
+
+        String dmrTemplate = "" //
+            + "{" //
+            + "\"redelivery-delay\" => %dL, " //
+            + "\"max-delivery-attempts\" => %d " //
+            + "}";
+
+        String dmr = String.format(dmrTemplate, redeliveryDelay, maxDeliveryAttempts);
+
+        Address addr = Address.root().add(SUBSYSTEM, SUBSYSTEM_MESSAGING, HORNETQ_SERVER, "default", ADDRESS_SETTING,
+            match);
+        final ModelNode request = ModelNode.fromString(dmr);
+        request.get(OPERATION).set(ADD);
+        request.get(ADDRESS).set(addr.getAddressNode());
+
+        return request;
+    }
+
 }
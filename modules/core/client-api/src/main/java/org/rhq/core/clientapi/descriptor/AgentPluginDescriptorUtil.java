@@ -29,6 +29,8 @@ import java.io.StringWriter;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -79,6 +81,9 @@ public abstract class AgentPluginDescriptorUtil {
     private static final String CANNED_GROUP_EXPRESSION_SCHEMA_PATH="rhq-canned-groups.xsd";
     private static final String CANNED_GROUP_EXPRESSION_DESCRIPTOR_PATH="META-INF/rhq-group-expressions.xml";
 
+    private static final ConcurrentMap<String, JAXBContext> JAXB_CONTEXTS = new ConcurrentHashMap<String, JAXBContext>();
+    private static final ConcurrentMap<String, Schema> SCHEMAS = new ConcurrentHashMap<String, Schema>();
+
     /**
      * Determines which of the two plugins is obsolete - in other words, this determines which
      * plugin is older. Each plugin must have the same logical name, but
@@ -455,7 +460,7 @@ public abstract class AgentPluginDescriptorUtil {
             ValidationEventCollector validationEventCollector, String xsd, String jaxbPackage) throws PluginContainerException {
         JAXBContext jaxbContext;
         try {
-            jaxbContext = JAXBContext.newInstance(jaxbPackage);
+            jaxbContext = getJaxbContext(jaxbPackage);
         } catch (Exception e) {
             throw new PluginContainerException("Failed to create JAXB Context.", new WrappedRemotingException(e));
         }
@@ -464,10 +469,7 @@ public abstract class AgentPluginDescriptorUtil {
         try {
             unmarshaller = jaxbContext.createUnmarshaller();
             // Enable schema validation
-            URL pluginSchemaURL = AgentPluginDescriptorUtil.class.getClassLoader().getResource(xsd);
-            Schema pluginSchema = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI).newSchema(
-                    pluginSchemaURL);
-            unmarshaller.setSchema(pluginSchema);
+            unmarshaller.setSchema(getSchema(xsd));
             unmarshaller.setEventHandler(validationEventCollector);
 
             return unmarshaller.unmarshal(is);
@@ -478,6 +480,31 @@ public abstract class AgentPluginDescriptorUtil {
         }
     }
 
+    /**
+     * JAXB contexts are expensive to create but thread safe, so one is created per package and shared by all parses.
+     */
+    private static JAXBContext getJaxbContext(String jaxbPackage) throws JAXBException {
+        JAXBContext jaxbContext = JAXB_CONTEXTS.get(jaxbPackage);
+        if (jaxbContext == null) {
+            jaxbContext = JAXBContext.newInstance(jaxbPackage);
+            JAXB_CONTEXTS.putIfAbsent(jaxbPackage, jaxbContext);
+        }
+        return jaxbContext;
+    }
+
+    /**
+     * Compiled schemas are immutable and thread safe, so each schema is compiled once and shared by all parses.
+     */
+    private static Schema getSchema(String xsd) throws SAXException {
+        Schema schema = SCHEMAS.get(xsd);
+        if (schema == null) {
+            URL schemaURL = AgentPluginDescriptorUtil.class.getClassLoader().getResource(xsd);
+            schema = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI).newSchema(schemaURL);
+            SCHEMAS.putIfAbsent(xsd, schema);
+        }
+        return schema;
+    }
+
     private static void logValidationEvents(URL pluginJarFileUrl, ValidationEventCollector validationEventCollector,
                                             Log logger) {
         for (ValidationEvent event : validationEventCollector.getEvents()) {
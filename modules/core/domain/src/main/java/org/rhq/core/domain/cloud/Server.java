@@ -88,10 +88,17 @@ import org.rhq.core.domain.resource.Agent;
         + "   AND ( s.name <> :thisServerName OR :thisServerName IS NULL ) "), //
     @NamedQuery(name = Server.QUERY_UPDATE_STATUS_BY_NAME, query = "" //
         + " UPDATE Server s " //
-        + "    SET s.status = 3 " //Change this to the only value possible before adding MANUAL_MAINTENANCE_MODE.
-                                  //This status should never be set to negative since negative values are not
-                                  //allowed by the bitmask.
-        + "  WHERE s.status = 0 ") })
+        + "    SET s.status = s.status + 2 " //Sets ALERT_DEFINITION, keeping RESOURCE_HIERARCHY_UPDATED if it is set.
+                                             //This status should never be set to negative since negative values are
+                                             //not allowed by the bitmask.
+        + "  WHERE s.status = 0 OR s.status = 1 "), //
+    @NamedQuery(name = Server.QUERY_UPDATE_STATUS_RESOURCE_HIERARCHY, query = "" //
+        + " UPDATE Server s " //
+        + "    SET s.status = s.status + 1 " //Sets RESOURCE_HIERARCHY_UPDATED, keeping ALERT_DEFINITION if it is set.
+                                             //Servers in maintenance mode are left alone, like above; they reload
+                                             //their resource hierarchy index when they leave it.
+        + "  WHERE (s.status = 0 OR s.status = 2) " //
+        + "    AND s.name <> :thisServerName ") })
 @SequenceGenerator(allocationSize = org.rhq.core.domain.util.Constants.ALLOCATION_SIZE, name = "RHQ_SERVER_ID_SEQ", sequenceName = "RHQ_SERVER_ID_SEQ")
 @Table(name = "RHQ_SERVER")
 public class Server implements Serializable {
@@ -108,6 +115,7 @@ public class Server implements Serializable {
     public static final String QUERY_UPDATE_SET_STALE_DOWN = "Server.updateSetStaleDown";
     public static final String QUERY_FIND_ALL_NORMAL_CLOUD_MEMBERS = "Server.findAllNormalCloudMembers";
     public static final String QUERY_UPDATE_STATUS_BY_NAME = "Server.updateStatusByName";
+    public static final String QUERY_UPDATE_STATUS_RESOURCE_HIERARCHY = "Server.updateStatusResourceHierarchy";
 
     @Column(name = "ID", nullable = false)
     @GeneratedValue(strategy = GenerationType.AUTO, generator = "RHQ_SERVER_ID_SEQ")
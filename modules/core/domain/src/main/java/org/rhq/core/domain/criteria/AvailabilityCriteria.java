@@ -50,6 +50,9 @@ public class AvailabilityCriteria extends Criteria {
     private Integer filterResourceId; // requires overrides
     private List<AvailabilityType> filterAvailabilityTypes;
 
+    // the end of the interval filter, which is inlined in the startTime override rather than bound to a parameter
+    private Long intervalEndTime;
+
     private boolean fetchResource;
 
     private PageOrdering sortStartTime;
@@ -89,18 +92,41 @@ public class AvailabilityCriteria extends Criteria {
 
         filterOverrides.put("startTime", filterFragment);
         this.filterStartTime = intervalStartTime;
+        this.intervalEndTime = intervalEndTime;
+    }
+
+    /**
+     * @return the start of the interval filter, or null if the criteria has no interval filter
+     */
+    public Long getIntervalStartTime() {
+        return null == intervalEndTime ? null : filterStartTime;
+    }
+
+    /**
+     * @return the end of the interval filter, or null if the criteria has no interval filter
+     */
+    public Long getIntervalEndTime() {
+        return intervalEndTime;
     }
 
     public void addFilterResourceId(Integer filterResourceId) {
         this.filterResourceId = filterResourceId;
     }
 
+    public Integer getFilterResourceId() {
+        return filterResourceId;
+    }
+
     public void addFilterAvailabilityTypes(AvailabilityType... filterAvailabilityTypes) {
         if (filterAvailabilityTypes != null && filterAvailabilityTypes.length > 0) {
             this.filterAvailabilityTypes = Arrays.asList(filterAvailabilityTypes);
         }
     }
 
+    public List<AvailabilityType> getFilterAvailabilityTypes() {
+        return filterAvailabilityTypes;
+    }
+
     /**
      * Include initial UNKNOWN availability with startTime=0. If unset it will be included. This
      * filter is mutually exclusive with filterInterval.
@@ -115,6 +141,13 @@ public class AvailabilityCriteria extends Criteria {
         filterOverrides.put("startTime", "startTime >= ?");
     }
 
+    /**
+     * @return the value set with {@link #addFilterInitialAvailability(Boolean)}, or null if it was not set
+     */
+    public Boolean getFilterInitialAvailability() {
+        return (null != intervalEndTime || null == filterStartTime) ? null : filterStartTime == 0L;
+    }
+
     public void fetchResource(boolean fetchResource) {
         this.fetchResource = fetchResource;
     }
@@ -125,4 +158,8 @@ public class AvailabilityCriteria extends Criteria {
         }
         this.sortStartTime = sortStartTime;
     }
+
+    public PageOrdering getSortStartTime() {
+        return sortStartTime;
+    }
 }
@@ -94,28 +94,52 @@ public class EventCriteria extends Criteria {
         this.filterDetail = filterDetail;
     }
 
+    public String getFilterDetail() {
+        return filterDetail;
+    }
+
     public void addFilterSourceName(String filterSourceName) {
         this.filterSourceName = filterSourceName;
     }
 
+    public String getFilterSourceName() {
+        return filterSourceName;
+    }
+
     public void addFilterSourceId(Integer sourceId) {
         this.filterSourceId = sourceId;
     }
 
+    public Integer getFilterSourceId() {
+        return filterSourceId;
+    }
+
     public void addFilterStartTime(Long filterStartTime) {
         this.filterStartTime = filterStartTime;
     }
 
+    public Long getFilterStartTime() {
+        return filterStartTime;
+    }
+
     public void addFilterEndTime(Long filterEndTime) {
         this.filterEndTime = filterEndTime;
     }
 
+    public Long getFilterEndTime() {
+        return filterEndTime;
+    }
+
     public void addFilterSeverities(EventSeverity... filterSeverities) {
         if (filterSeverities != null && filterSeverities.length > 0) {
             this.filterSeverities = Arrays.asList(filterSeverities);
         }
     }
 
+    public List<EventSeverity> getFilterSeverities() {
+        return filterSeverities;
+    }
+
     public void addFilterEntityContext(EntityContext filterEntityContext) {
         if (filterEntityContext.getType() == EntityContext.Type.Resource) {
             addFilterResourceId(filterEntityContext.getResourceId());
@@ -130,23 +154,43 @@ public class EventCriteria extends Criteria {
     public void addFilterResourceId(Integer filterResourceId) {
         this.filterResourceId = filterResourceId;
     }
+
+    public Integer getFilterResourceId() {
+        return filterResourceId;
+    }
     
     public void addFilterResourceName(String filterResourceName) {
         this.filterResourceName = filterResourceName;
     }
 
+    public String getFilterResourceName() {
+        return filterResourceName;
+    }
+
     public void addFilterResourceGroupId(Integer filterResourceGroupId) {
         this.filterResourceGroupId = filterResourceGroupId;
     }
 
+    public Integer getFilterResourceGroupId() {
+        return filterResourceGroupId;
+    }
+
     public void addFilterAutoGroupResourceTypeId(Integer filterAutoGroupResourceTypeId) {
         this.filterAutoGroupResourceTypeId = filterAutoGroupResourceTypeId;
     }
 
+    public Integer getFilterAutoGroupResourceTypeId() {
+        return filterAutoGroupResourceTypeId;
+    }
+
     public void addFilterAutoGroupParentResourceId(Integer filterAutoGroupParentResourceId) {
         this.filterAutoGroupParentResourceId = filterAutoGroupParentResourceId;
     }
 
+    public Integer getFilterAutoGroupParentResourceId() {
+        return filterAutoGroupParentResourceId;
+    }
+
     public void fetchSource(boolean fetchSource) {
         this.fetchSource = fetchSource;
     }
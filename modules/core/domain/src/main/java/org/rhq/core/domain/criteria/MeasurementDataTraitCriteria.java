@@ -118,6 +118,10 @@ public class MeasurementDataTraitCriteria extends Criteria {
         this.filterMaxTimestamp = 1;
     }
 
+    public boolean isFilterMaxTimestamp() {
+        return filterMaxTimestamp != null;
+    }
+
     public void addFilterEnabled(boolean filterEnabled) {
         this.filterEnabled = filterEnabled;
     }
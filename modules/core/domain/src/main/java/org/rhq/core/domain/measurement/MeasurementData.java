@@ -106,6 +106,10 @@ public abstract class MeasurementData implements Serializable {
         return schedule;
     }
 
+    public void setSchedule(MeasurementSchedule schedule) {
+        this.schedule = schedule;
+    }
+
     public abstract Object getValue();
 
     @Override
@@ -685,6 +685,24 @@ import org.rhq.core.domain.util.Summary;
     @NamedQuery(name = Resource.QUERY_FIND_BY_ID_WITH_INSTALLED_PACKAGE_HIST, query = "SELECT r FROM Resource AS r LEFT JOIN r.installedPackageHistory ip WHERE r.id = :id"),
     @NamedQuery(name = Resource.QUERY_FIND_PLATFORM_BY_AGENT, query = "SELECT res FROM Resource res WHERE res.resourceType.category = :category AND res.agent = :agent"),
     @NamedQuery(name = Resource.QUERY_FIND_PARENT_ID, query = "SELECT res.parentResource.id FROM Resource AS res WHERE res.id = :id"),
+    @NamedQuery(name = Resource.QUERY_FIND_HIERARCHY_INDEX_ENTRIES, query = "" //
+        + "SELECT r.id, p.id, r.resourceType.id, a.id " //
+        + "  FROM Resource r " //
+        + "  LEFT JOIN r.parentResource p " //
+        + "  LEFT JOIN r.agent a " //
+        + " WHERE r.id > :lastId " //
+        + "   AND r.inventoryStatus <> :uninventoried " //
+        + " ORDER BY r.id "),
+    @NamedQuery(name = Resource.QUERY_FIND_HIERARCHY_INDEX_CHANGES, query = "" //
+        + "SELECT r.id, p.id, r.resourceType.id, a.id, r.inventoryStatus " //
+        + "  FROM Resource r " //
+        + "  LEFT JOIN r.parentResource p " //
+        + "  LEFT JOIN r.agent a " //
+        + " WHERE r.ctime >= :since " // added
+        + "    OR r.itime >= :since " // committed or uninventoried
+        + "    OR r.mtime >= :since "), // moved to another parent
+    @NamedQuery(name = Resource.QUERY_COUNT_HIERARCHY_INDEX_ENTRIES, query = "" //
+        + "SELECT COUNT(r) FROM Resource r WHERE r.inventoryStatus <> :uninventoried "),
     @NamedQuery(name = Resource.QUERY_FIND_ROOT_PLATFORM_OF_RESOURCE, query = ""
         + "SELECT DISTINCT r FROM Resource r "
         + "WHERE r.parentResource.id is null "
@@ -727,7 +745,8 @@ import org.rhq.core.domain.util.Summary;
         + "   SET r.inventoryStatus = :status, " // change to UNINVENTORIED status will remove it from inventory browser
         + "       r.agent = NULL, " // don't have to change ResourceSyncInfo logic
         + "       r.parentResource = NULL, " // resources without hierarchy can be deleted in any order
-        + "       r.resourceKey = 'deleted' " // prevents collision with future discovery reports
+        + "       r.resourceKey = 'deleted', " // prevents collision with future discovery reports
+        + "       r.itime = :itime " // lets the other servers' resource hierarchy indexes find the change
         + " WHERE r.id IN (:resourceIds ) "), //
     @NamedQuery(name = Resource.QUERY_FIND_RESOURCES_MARKED_FOR_ASYNC_DELETION, query = "" //
         + "SELECT r.id FROM Resource AS r WHERE r.agent IS NULL"),
@@ -892,6 +911,9 @@ public class Resource implements Comparable<Resource>, Serializable {
     public static final String QUERY_FIND_PLATFORM_BY_AGENT = "Resource.findPlatformByAgent";
 
     public static final String QUERY_FIND_PARENT_ID = "Resource.findParentId";
+    public static final String QUERY_FIND_HIERARCHY_INDEX_ENTRIES = "Resource.findHierarchyIndexEntries";
+    public static final String QUERY_FIND_HIERARCHY_INDEX_CHANGES = "Resource.findHierarchyIndexChanges";
+    public static final String QUERY_COUNT_HIERARCHY_INDEX_ENTRIES = "Resource.countHierarchyIndexEntries";
 
     public static final String QUERY_FIND_ROOT_PLATFORM_OF_RESOURCE = "Resource.findRootPlatformOfResource";
 
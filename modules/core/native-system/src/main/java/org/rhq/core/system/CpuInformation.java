@@ -22,6 +22,7 @@
   */
 package org.rhq.core.system;
 
+import java.io.IOException;
 import java.util.Arrays;
 
 import org.hyperic.sigar.*;
@@ -43,10 +44,23 @@ public class CpuInformation {
     private CpuPerc cpuPercentage;
     private boolean enabled;
     private SigarProxy sigar;
+    private LinuxProcStats procStats;
+    private CpuInfo staticCpuInfo;
 
     public CpuInformation(int index, SigarProxy sigar) {
+        this(index, sigar, null, null);
+    }
+
+    /**
+     * @param procStats if not <code>null</code>, the source of the CPU times and usage; SIGAR is then only used if they
+     *                  cannot be read
+     * @param cpuInfo if not <code>null</code>, the CPU description, which is then not asked to SIGAR on every refresh
+     */
+    CpuInformation(int index, SigarProxy sigar, LinuxProcStats procStats, CpuInfo cpuInfo) {
         cpuIndex = index;
         this.sigar = sigar;
+        this.procStats = procStats;
+        this.staticCpuInfo = cpuInfo;
         refresh();
     }
 
@@ -72,21 +86,36 @@ public class CpuInformation {
 
     public void refresh() {
         try {
-            // This is supposed to return one CpuInfo per *socket*, but on some platforms, it will return one per *core*.
-            // In either case, all CpuInfo's in the list should be identical.
-            // NOTE: The results of getCpuInfoList() should be more consistent in SIGAR 1.5.1 and later
-            //       (see http://jira.hyperic.com/browse/SIGAR-71).
-            CpuInfo[] cpuInfoList = sigar.getCpuInfoList();
-            if (cpuInfoList != null && cpuInfoList.length >= 1) {
-                // Since all CpuInfo's in the list should be identical, we can always just grab the first one in the list.
-                // We do *not* want to use this.cpuIndex as the index, because that is the *core* index, and this list
-                // may be a list of *sockets*.
-                this.cpuInfo = cpuInfoList[0];
+            if (this.staticCpuInfo != null) {
+                this.cpuInfo = this.staticCpuInfo;
+            } else {
+                // This is supposed to return one CpuInfo per *socket*, but on some platforms, it will return one per *core*.
+                // In either case, all CpuInfo's in the list should be identical.
+                // NOTE: The results of getCpuInfoList() should be more consistent in SIGAR 1.5.1 and later
+                //       (see http://jira.hyperic.com/browse/SIGAR-71).
+                CpuInfo[] cpuInfoList = sigar.getCpuInfoList();
+                if (cpuInfoList != null && cpuInfoList.length >= 1) {
+                    // Since all CpuInfo's in the list should be identical, we can always just grab the first one in the list.
+                    // We do *not* want to use this.cpuIndex as the index, because that is the *core* index, and this list
+                    // may be a list of *sockets*.
+                    this.cpuInfo = cpuInfoList[0];
+                }
+                else {
+                    log.error("Sigar.getCpuInfoList() returned null or empty array: "
+                            + ((cpuInfoList != null) ? Arrays.asList(cpuInfoList) : cpuInfoList));
+                    this.cpuInfo = null;
+                }
             }
-            else {
-                log.error("Sigar.getCpuInfoList() returned null or empty array: "
-                        + ((cpuInfoList != null) ? Arrays.asList(cpuInfoList) : cpuInfoList));
-                this.cpuInfo = null;
+
+            if (this.procStats != null) {
+                try {
+                    this.cpu = this.procStats.getCpu(this.cpuIndex);
+                    this.cpuPercentage = this.procStats.getCpuPerc(this.cpuIndex);
+                    this.enabled = ((this.cpuInfo != null) && (this.cpu != null) && (this.cpuPercentage != null));
+                    return;
+                } catch (IOException e) {
+                    log.debug("Cannot read the CPU statistics from /proc, falling back to SIGAR: " + e);
+                }
             }
 
             // This should return one Cpu per *core*.
@@ -0,0 +1,131 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.system;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hyperic.sigar.CpuInfo;
+import org.hyperic.sigar.Mem;
+import org.hyperic.sigar.NetInterfaceStat;
+import org.hyperic.sigar.Swap;
+
+/**
+ * The native {@link SystemInfo} of Linux platforms. The memory, swap, CPU and network interface statistics are read
+ * directly from <code>/proc</code> by {@link LinuxProcStats}, instead of through SIGAR: they are the metrics collected
+ * the most often, by the most components, and SIGAR calls are serialized. Everything else is inherited from
+ * {@link NativeSystemInfo}, which is also used as a fallback if a file of <code>/proc</code> cannot be read.
+ * <p/>
+ * The file system metrics, including the disk reads and writes, stay on SIGAR. They all come from the single
+ * {@link org.hyperic.sigar.SigarProxy#getMountedFileSystemUsage(String)} call, which is still needed for the space and
+ * inode counts of <code>statvfs</code>, so reading the disk counters from <code>/proc/diskstats</code> as well would
+ * add a read rather than save a SIGAR call. It would also mean resolving mount points to block devices (through device
+ * mapper and partitions) the way SIGAR does.
+ * <p/>
+ * Setting the {@link #PROC_DISABLED_PROPERTY} system property to <code>true</code> makes the factory use
+ * {@link NativeSystemInfo} instead.
+ */
+public class LinuxNativeSystemInfo extends NativeSystemInfo {
+    private static final Log LOG = LogFactory.getLog(LinuxNativeSystemInfo.class);
+
+    public static final String PROC_DISABLED_PROPERTY = "rhq.system.proc.disabled";
+
+    private final LinuxProcStats procStats = new LinuxProcStats();
+
+    // the CPU description does not change while the agent runs, so it is asked to SIGAR once
+    private volatile CpuInfo cpuInfo;
+
+    /**
+     * @return true if this implementation can be used on the current platform
+     */
+    static boolean isSupported() {
+        return System.getProperty("os.name").toLowerCase().indexOf("linux") > -1
+            && !Boolean.getBoolean(PROC_DISABLED_PROPERTY) && LinuxProcStats.isAvailable();
+    }
+
+    @Override
+    public Mem getMemoryInfo() {
+        try {
+            return procStats.getMem();
+        } catch (Exception e) {
+            logFallback("memory", e);
+            return super.getMemoryInfo();
+        }
+    }
+
+    @Override
+    public Swap getSwapInfo() {
+        try {
+            return procStats.getSwap();
+        } catch (Exception e) {
+            logFallback("swap", e);
+            return super.getSwapInfo();
+        }
+    }
+
+    @Override
+    public CpuInformation getCpu(int cpuIndex) {
+        return new CpuInformation(cpuIndex, SigarAccess.getSigar(), procStats, getCpuInfo());
+    }
+
+    /**
+     * @return the description of the CPUs, or <code>null</code> if SIGAR cannot provide it, in which case each
+     *         {@link CpuInformation} asks for it again
+     */
+    private CpuInfo getCpuInfo() {
+        CpuInfo info = cpuInfo;
+        if (info == null) {
+            try {
+                CpuInfo[] cpuInfoList = SigarAccess.getSigar().getCpuInfoList();
+                if (cpuInfoList != null && cpuInfoList.length >= 1) {
+                    // all the CpuInfo's in the list should be identical, see CpuInformation
+                    info = cpuInfoList[0];
+                    cpuInfo = info;
+                }
+            } catch (Exception e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Cannot get the CPU description from SIGAR: " + e);
+                }
+            }
+        }
+        return info;
+    }
+
+    @Override
+    public NetworkAdapterStats getNetworkAdapterStats(String interfaceName) {
+        try {
+            NetInterfaceStat interfaceStat = procStats.getNetInterfaceStat(interfaceName);
+            if (interfaceStat != null) {
+                return new NetworkAdapterStats(interfaceStat);
+            }
+        } catch (Exception e) {
+            logFallback("network interface", e);
+        }
+        return super.getNetworkAdapterStats(interfaceName);
+    }
+
+    private void logFallback(String stats, Exception e) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Cannot read the " + stats + " statistics from /proc, falling back to SIGAR: " + e);
+        }
+    }
+}
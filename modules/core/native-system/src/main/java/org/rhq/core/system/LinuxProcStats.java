@@ -0,0 +1,674 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.system;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.hyperic.sigar.Cpu;
+import org.hyperic.sigar.CpuPerc;
+import org.hyperic.sigar.Mem;
+import org.hyperic.sigar.NetInterfaceStat;
+import org.hyperic.sigar.Swap;
+
+/**
+ * Reads the platform statistics from the <code>/proc</code> file system of Linux, in pure Java. Each file is read at
+ * most once per {@link #TTL_PROPERTY time to live}, into a buffer reused for all the reads, so that the components
+ * collecting platform metrics at about the same time (the platform, each of its CPUs and network adapters) share a
+ * single read instead of each going through SIGAR.
+ * <p/>
+ * The statistics are returned as the SIGAR types {@link NativeSystemInfo} returns, computed the way SIGAR computes them
+ * on Linux, so that users do not see a difference.
+ */
+public class LinuxProcStats {
+
+    public static final String TTL_PROPERTY = "rhq.system.proc.ttl";
+
+    static final long DEFAULT_TTL = 1000L;
+
+    // the unit of the times in /proc/stat, which is part of the kernel ABI
+    private static final int USER_HZ = 100;
+
+    private static final int CPU_FIELDS = 8;
+
+    private static final int NET_DEV_FIELDS = 16;
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private final File procDir;
+    private final long ttl;
+
+    private byte[] buffer = new byte[16384];
+    private int length;
+    private int position;
+
+    private long memTimestamp;
+    private long memTotal;
+    private long memFree;
+    private long buffers;
+    private long cached;
+    private long swapTotal;
+    private long swapFree;
+
+    private long vmTimestamp;
+    private long pageIn;
+    private long pageOut;
+
+    private long statTimestamp;
+    private int cpuCount;
+    private long[][] cpuTimes = new long[0][];
+    private long[][] previousCpuTimes = new long[0][];
+
+    private long netDevTimestamp;
+    private final Map<String, long[]> netDev = new HashMap<String, long[]>();
+
+    LinuxProcStats() {
+        this(new File("/proc"), Long.getLong(TTL_PROPERTY, DEFAULT_TTL));
+    }
+
+    LinuxProcStats(File procDir, long ttl) {
+        this.procDir = procDir;
+        this.ttl = ttl;
+    }
+
+    /**
+     * @return true if the statistics this class reads are available on this platform
+     */
+    static boolean isAvailable() {
+        return new File("/proc/stat").canRead() && new File("/proc/meminfo").canRead()
+            && new File("/proc/net/dev").canRead();
+    }
+
+    public synchronized Mem getMem() throws IOException {
+        readMeminfo();
+        long total = memTotal * 1024;
+        long free = memFree * 1024;
+        long used = total - free;
+        long kernel = (buffers + cached) * 1024;
+        return new ProcMem(total, used, free, used - kernel, free + kernel);
+    }
+
+    public synchronized Swap getSwap() throws IOException {
+        readMeminfo();
+        readVmstat();
+        return new ProcSwap(swapTotal * 1024, swapFree * 1024, pageIn, pageOut);
+    }
+
+    /**
+     * @return the number of CPUs listed in <code>/proc/stat</code>
+     */
+    public synchronized int getCpuCount() throws IOException {
+        readStat();
+        return cpuCount;
+    }
+
+    /**
+     * @return the times of a CPU, or <code>null</code> if there is no such CPU
+     */
+    public synchronized Cpu getCpu(int index) throws IOException {
+        readStat();
+        return (index < cpuCount) ? new ProcCpu(cpuTimes[index]) : null;
+    }
+
+    /**
+     * @return the usage of a CPU since the previous read of <code>/proc/stat</code>, or <code>null</code> if there is no
+     *         such CPU
+     */
+    public synchronized CpuPerc getCpuPerc(int index) throws IOException {
+        readStat();
+        if (index >= cpuCount) {
+            return null;
+        }
+        long[] previous = (index < previousCpuTimes.length) ? previousCpuTimes[index] : null;
+        if (previous == null) {
+            // first read, the usage is the one since the boot
+            previous = new long[CPU_FIELDS];
+        }
+        return new ProcCpuPerc(previous, cpuTimes[index]);
+    }
+
+    /**
+     * @return the statistics of a network interface, or <code>null</code> if there is no such interface
+     */
+    public synchronized NetInterfaceStat getNetInterfaceStat(String name) throws IOException {
+        readNetDev();
+        long[] stats = netDev.get(name);
+        return (stats != null) ? new ProcNetInterfaceStat(stats) : null;
+    }
+
+    private boolean isStale(long timestamp) {
+        return timestamp == 0 || System.currentTimeMillis() - timestamp >= ttl;
+    }
+
+    private void readMeminfo() throws IOException {
+        if (!isStale(memTimestamp)) {
+            return;
+        }
+        read("meminfo");
+        while (position < length) {
+            String key = readKey();
+            long value = readLong();
+            if (key.equals("MemTotal")) {
+                memTotal = value;
+            } else if (key.equals("MemFree")) {
+                memFree = value;
+            } else if (key.equals("Buffers")) {
+                buffers = value;
+            } else if (key.equals("Cached")) {
+                cached = value;
+            } else if (key.equals("SwapTotal")) {
+                swapTotal = value;
+            } else if (key.equals("SwapFree")) {
+                swapFree = value;
+            }
+            nextLine();
+        }
+        memTimestamp = System.currentTimeMillis();
+    }
+
+    private void readVmstat() throws IOException {
+        if (!isStale(vmTimestamp)) {
+            return;
+        }
+        read("vmstat");
+        while (position < length) {
+            String key = readKey();
+            if (key.equals("pswpin")) {
+                pageIn = readLong();
+            } else if (key.equals("pswpout")) {
+                pageOut = readLong();
+            }
+            nextLine();
+        }
+        vmTimestamp = System.currentTimeMillis();
+    }
+
+    private void readStat() throws IOException {
+        if (!isStale(statTimestamp)) {
+            return;
+        }
+        read("stat");
+
+        // the times of the previous read are kept to compute the usage percentages, the arrays of the read before are
+        // reused for this one
+        long[][] times = previousCpuTimes;
+        previousCpuTimes = cpuTimes;
+        int count = 0;
+        while (position < length) {
+            String key = readKey();
+            // the first line, "cpu", is the sum of all the CPUs; the CPUs follow as "cpu0", "cpu1"...
+            if (key.startsWith("cpu") && key.length() > 3) {
+                if (count == times.length) {
+                    times = Arrays.copyOf(times, count + 1);
+                }
+                if (times[count] == null) {
+                    times[count] = new long[CPU_FIELDS];
+                }
+                readLongs(times[count]);
+                count++;
+            }
+            nextLine();
+        }
+        cpuTimes = times;
+        cpuCount = count;
+        statTimestamp = System.currentTimeMillis();
+    }
+
+    private void readNetDev() throws IOException {
+        if (!isStale(netDevTimestamp)) {
+            return;
+        }
+        read("net/dev");
+        // skip the two header lines
+        nextLine();
+        nextLine();
+        Map<String, long[]> previous = new HashMap<String, long[]>(netDev);
+        netDev.clear();
+        while (position < length) {
+            String name = readKey();
+            long[] stats = previous.get(name);
+            if (stats == null) {
+                stats = new long[NET_DEV_FIELDS];
+            }
+            readLongs(stats);
+            netDev.put(name, stats);
+            nextLine();
+        }
+        netDevTimestamp = System.currentTimeMillis();
+    }
+
+    private void read(String fileName) throws IOException {
+        // files in /proc report a size of zero, they are read until the end instead
+        FileInputStream in = new FileInputStream(new File(procDir, fileName));
+        try {
+            length = 0;
+            position = 0;
+            int read;
+            while ((read = in.read(buffer, length, buffer.length - length)) != -1) {
+                length += read;
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads the key that starts a line, which ends with a colon or a space; leading spaces are skipped.
+     */
+    private String readKey() {
+        skipSpaces();
+        int start = position;
+        while (position < length && buffer[position] != ':' && buffer[position] != ' ' && buffer[position] != '\t'
+            && buffer[position] != '\n') {
+            position++;
+        }
+        String key = new String(buffer, start, position - start, ASCII);
+        if (position < length && buffer[position] == ':') {
+            position++;
+        }
+        return key;
+    }
+
+    /**
+     * Reads as many numbers of the current line as the array holds; the missing ones are set to zero.
+     */
+    private void readLongs(long[] values) {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = readLong();
+        }
+    }
+
+    /**
+     * @return the next number of the current line, or zero if there are none left
+     */
+    private long readLong() {
+        skipSpaces();
+        long value = 0;
+        while (position < length && buffer[position] >= '0' && buffer[position] <= '9') {
+            value = value * 10 + (buffer[position++] - '0');
+        }
+        return value;
+    }
+
+    private void skipSpaces() {
+        while (position < length && (buffer[position] == ' ' || buffer[position] == '\t')) {
+            position++;
+        }
+    }
+
+    private void nextLine() {
+        while (position < length && buffer[position++] != '\n') {
+        }
+    }
+
+    public static class ProcMem extends Mem {
+        private static final long serialVersionUID = 1L;
+
+        private final long total;
+        private final long ram;
+        private final long used;
+        private final long free;
+        private final long actualUsed;
+        private final long actualFree;
+        private final double usedPercent;
+        private final double freePercent;
+
+        ProcMem(long total, long used, long free, long actualUsed, long actualFree) {
+            this.total = total;
+            this.used = used;
+            this.free = free;
+            this.actualUsed = actualUsed;
+            this.actualFree = actualFree;
+            // as SIGAR does, the RAM size is the total in MB, rounded up to a multiple of 8
+            long megabytes = total / (1024 * 1024);
+            this.ram = (megabytes % 8 == 0) ? megabytes : megabytes + 8 - megabytes % 8;
+            long totalKb = total / 1024;
+            this.usedPercent = (totalKb == 0) ? 0 : (double) ((totalKb - actualFree / 1024) * 100) / totalKb;
+            this.freePercent = (totalKb == 0) ? 0 : (double) ((totalKb - actualUsed / 1024) * 100) / totalKb;
+        }
+
+        @Override
+        public long getTotal() {
+            return total;
+        }
+
+        @Override
+        public long getRam() {
+            return ram;
+        }
+
+        @Override
+        public long getUsed() {
+            return used;
+        }
+
+        @Override
+        public long getFree() {
+            return free;
+        }
+
+        @Override
+        public long getActualUsed() {
+            return actualUsed;
+        }
+
+        @Override
+        public long getActualFree() {
+            return actualFree;
+        }
+
+        @Override
+        public double getUsedPercent() {
+            return usedPercent;
+        }
+
+        @Override
+        public double getFreePercent() {
+            return freePercent;
+        }
+
+        @Override
+        public String toString() {
+            return "Mem: " + (total / 1024) + "K av, " + (used / 1024) + "K used, " + (free / 1024) + "K free";
+        }
+    }
+
+    public static class ProcSwap extends Swap {
+        private static final long serialVersionUID = 1L;
+
+        private final long total;
+        private final long free;
+        private final long pageIn;
+        private final long pageOut;
+
+        ProcSwap(long total, long free, long pageIn, long pageOut) {
+            this.total = total;
+            this.free = free;
+            this.pageIn = pageIn;
+            this.pageOut = pageOut;
+        }
+
+        @Override
+        public long getTotal() {
+            return total;
+        }
+
+        @Override
+        public long getUsed() {
+            return total - free;
+        }
+
+        @Override
+        public long getFree() {
+            return free;
+        }
+
+        @Override
+        public long getPageIn() {
+            return pageIn;
+        }
+
+        @Override
+        public long getPageOut() {
+            return pageOut;
+        }
+
+        @Override
+        public String toString() {
+            return "Swap: " + (total / 1024) + "K av, " + ((total - free) / 1024) + "K used, " + (free / 1024)
+                + "K free";
+        }
+    }
+
+    /**
+     * The times of a CPU, in milliseconds like SIGAR reports them. The fields of /proc/stat are, in this order: user,
+     * nice, system, idle, iowait, irq, softirq and steal.
+     */
+    public static class ProcCpu extends Cpu {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] times = new long[CPU_FIELDS];
+
+        ProcCpu(long[] jiffies) {
+            for (int i = 0; i < CPU_FIELDS; i++) {
+                times[i] = jiffies[i] * 1000 / USER_HZ;
+            }
+        }
+
+        @Override
+        public long getUser() {
+            return times[0];
+        }
+
+        @Override
+        public long getNice() {
+            return times[1];
+        }
+
+        @Override
+        public long getSys() {
+            return times[2];
+        }
+
+        @Override
+        public long getIdle() {
+            return times[3];
+        }
+
+        @Override
+        public long getWait() {
+            return times[4];
+        }
+
+        @Override
+        public long getIrq() {
+            return times[5];
+        }
+
+        @Override
+        public long getSoftIrq() {
+            return times[6];
+        }
+
+        @Override
+        public long getStolen() {
+            return times[7];
+        }
+
+        @Override
+        public long getTotal() {
+            long total = 0;
+            for (long time : times) {
+                total += time;
+            }
+            return total;
+        }
+
+        @Override
+        public String toString() {
+            return "CPU states: " + getUser() + " user, " + getSys() + " system, " + getNice() + " nice, "
+                + getWait() + " wait, " + getIdle() + " idle";
+        }
+    }
+
+    /**
+     * The usage of a CPU between two reads of its times, computed as SIGAR does.
+     */
+    public static class ProcCpuPerc extends CpuPerc {
+        private static final long serialVersionUID = 1L;
+
+        private final double[] percentages = new double[CPU_FIELDS];
+
+        ProcCpuPerc(long[] previous, long[] current) {
+            long total = 0;
+            for (int i = 0; i < CPU_FIELDS; i++) {
+                total += current[i] - previous[i];
+            }
+            if (total > 0) {
+                for (int i = 0; i < CPU_FIELDS; i++) {
+                    percentages[i] = (double) (current[i] - previous[i]) / total;
+                }
+            }
+        }
+
+        @Override
+        public double getUser() {
+            return percentages[0];
+        }
+
+        @Override
+        public double getNice() {
+            return percentages[1];
+        }
+
+        @Override
+        public double getSys() {
+            return percentages[2];
+        }
+
+        @Override
+        public double getIdle() {
+            return percentages[3];
+        }
+
+        @Override
+        public double getWait() {
+            return percentages[4];
+        }
+
+        @Override
+        public double getIrq() {
+            return percentages[5];
+        }
+
+        @Override
+        public double getSoftIrq() {
+            return percentages[6];
+        }
+
+        @Override
+        public double getStolen() {
+            return percentages[7];
+        }
+
+        @Override
+        public double getCombined() {
+            return getUser() + getSys() + getNice() + getWait();
+        }
+
+        @Override
+        public String toString() {
+            return "CPU states: " + CpuPerc.format(getUser()) + " user, " + CpuPerc.format(getSys()) + " system, "
+                + CpuPerc.format(getNice()) + " nice, " + CpuPerc.format(getWait()) + " wait, "
+                + CpuPerc.format(getIdle()) + " idle";
+        }
+    }
+
+    /**
+     * The statistics of a network interface. The fields of /proc/net/dev are, in this order: received bytes, packets,
+     * errors, drops, fifo errors, frame errors, compressed and multicast packets, then sent bytes, packets, errors,
+     * drops, fifo errors, collisions, carrier errors and compressed packets.
+     */
+    public static class ProcNetInterfaceStat extends NetInterfaceStat {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] stats;
+
+        ProcNetInterfaceStat(long[] stats) {
+            this.stats = stats.clone();
+        }
+
+        @Override
+        public long getRxBytes() {
+            return stats[0];
+        }
+
+        @Override
+        public long getRxPackets() {
+            return stats[1];
+        }
+
+        @Override
+        public long getRxErrors() {
+            return stats[2];
+        }
+
+        @Override
+        public long getRxDropped() {
+            return stats[3];
+        }
+
+        @Override
+        public long getRxOverruns() {
+            return stats[4];
+        }
+
+        @Override
+        public long getRxFrame() {
+            return stats[5];
+        }
+
+        @Override
+        public long getTxBytes() {
+            return stats[8];
+        }
+
+        @Override
+        public long getTxPackets() {
+            return stats[9];
+        }
+
+        @Override
+        public long getTxErrors() {
+            return stats[10];
+        }
+
+        @Override
+        public long getTxDropped() {
+            return stats[11];
+        }
+
+        @Override
+        public long getTxOverruns() {
+            return stats[12];
+        }
+
+        @Override
+        public long getTxCollisions() {
+            return stats[13];
+        }
+
+        @Override
+        public long getTxCarrier() {
+            return stats[14];
+        }
+    }
+}
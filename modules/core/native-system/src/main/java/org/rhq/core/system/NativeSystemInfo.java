@@ -45,8 +45,6 @@ import org.hyperic.sigar.SigarException;
 import org.hyperic.sigar.SigarProxy;
 import org.hyperic.sigar.Swap;
 
-import org.rhq.core.system.pquery.ProcessInfoQuery;
-
 /**
  * The superclass for all the native {@link SystemInfo} implementations. You are free to subclass this implementation if
  * there are additional platform-specific methods that need to be exposed. Most functionality, however, can be exposed
@@ -63,6 +61,8 @@ public class NativeSystemInfo implements SystemInfo {
 
     private SigarProxy sigar;
 
+    private ProcessTable processTable;
+
     /**
      * Always returns <code>true</code> to indicate that the native library is available.
      *
@@ -211,37 +211,27 @@ public class NativeSystemInfo implements SystemInfo {
         throw new UnsupportedOperationException("Cannot get services for this platform");
     }
 
+    /**
+     * Returns the processes of the {@link #getProcessTable() shared process table}. Their state is as old as the
+     * table, at most its time to live.
+     */
     public List<ProcessInfo> getAllProcesses() {
-        ArrayList<ProcessInfo> processes = new ArrayList<ProcessInfo>();
-        long[] pids = null;
-
-        log.debug("Retrieving PIDs of all running processes...");
-        long startTime = System.currentTimeMillis();
-        try {
-            pids = sigar.getProcList();
-            long elapsedTime = System.currentTimeMillis() - startTime;
-            log.debug("Retrieval of " + pids.length + " PIDs took " + elapsedTime + " ms.");
-            // NOTE: Do not close sigarImpl on success, as the ProcessInfos created below will reuse it.
-        } catch (Exception e) {
-            log.warn("Failed to retrieve PIDs of all running processes.", e);
-        }
-
-        if (pids != null) {
-            for (long pid : pids) {
-                if (log.isTraceEnabled()) {
-                    log.trace("Loading process info for pid " + pid + "...");
-                }
-                ProcessInfo info = new ProcessInfo(pid, sigar);
-                processes.add(info);
-            }
-        }
-
-        return processes;
+        return getProcessTable().getProcesses();
     }
 
     public List<ProcessInfo> getProcesses(String piq) {
-        ProcessInfoQuery piql = new ProcessInfoQuery(getAllProcesses());
-        return piql.query(piq);
+        return getProcessTable().getQuery().query(piq);
+    }
+
+    /**
+     * @return the process table shared by all the users of this object
+     */
+    public synchronized ProcessTable getProcessTable() {
+        // NOTE: Do not close sigar, as the ProcessInfos created by the table will reuse it.
+        if (processTable == null) {
+            processTable = new ProcessTable(sigar);
+        }
+        return processTable;
     }
 
     public ProcessInfo getThisProcess() {
@@ -0,0 +1,187 @@
+/*
+* RHQ Management Platform
+* Copyright (C) 2005-2014 Red Hat, Inc.
+* All rights reserved.
+*
+* This program is free software; you can redistribute it and/or modify
+* it under the terms of the GNU General Public License, version 2, as
+* published by the Free Software Foundation, and/or the GNU Lesser
+* General Public License, version 2.1, also as published by the Free
+* Software Foundation.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU General Public License and the GNU Lesser General Public License
+* for more details.
+*
+* You should have received a copy of the GNU General Public License
+* and the GNU Lesser General Public License along with this program;
+* if not, write to the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+*/
+package org.rhq.core.system;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hyperic.sigar.ProcTime;
+import org.hyperic.sigar.SigarProxy;
+
+import org.rhq.core.system.pquery.ProcessInfoQuery;
+
+/**
+ * The table of the processes running on the platform, shared by all the users of a {@link NativeSystemInfo} for a
+ * short time so that discovery scans and process based availability checks running close together do not each list
+ * all the processes.
+ * <p/>
+ * The table is refreshed incrementally: the {@link ProcessInfo} of the processes that were already running at the
+ * previous refresh are kept and {@link ProcessInfo#refresh() refreshed}, which only reads their state again, while
+ * their command line and environment, which never change, are only read for new processes. The state of the processes
+ * of the table is therefore at most as old as the table; users needing their current state should take a
+ * {@link ProcessInfo#freshSnapshot() fresh snapshot}.
+ * <p/>
+ * The time to live of the table, in milliseconds, is read from the {@link #TTL_PROPERTY} system property. A time to
+ * live of zero refreshes the table on every call.
+ */
+public class ProcessTable {
+    private static final Log LOG = LogFactory.getLog(ProcessTable.class);
+
+    public static final String TTL_PROPERTY = "rhq.system.process-table.ttl";
+
+    static final long DEFAULT_TTL = 5000L;
+
+    private final SigarProxy sigar;
+    private final long ttl;
+
+    private Map<Long, ProcessInfo> processes = Collections.emptyMap();
+    private ProcessInfoQuery query;
+    private long timestamp;
+
+    ProcessTable(SigarProxy sigar) {
+        this(sigar, Long.getLong(TTL_PROPERTY, DEFAULT_TTL));
+    }
+
+    ProcessTable(SigarProxy sigar, long ttl) {
+        this.sigar = sigar;
+        this.ttl = ttl;
+    }
+
+    /**
+     * @return the processes currently running, in a list the caller is free to modify
+     */
+    public synchronized List<ProcessInfo> getProcesses() {
+        refreshIfStale();
+        return new ArrayList<ProcessInfo>(processes.values());
+    }
+
+    /**
+     * @return a query over the processes currently running; its indexes are shared until the next refresh
+     */
+    public synchronized ProcessInfoQuery getQuery() {
+        refreshIfStale();
+        return query;
+    }
+
+    /**
+     * Makes the next call list the processes again, regardless of the time to live.
+     */
+    public synchronized void invalidate() {
+        query = null;
+    }
+
+    private void refreshIfStale() {
+        long now = System.currentTimeMillis();
+        if (query == null || now - timestamp >= ttl) {
+            refresh();
+            timestamp = now;
+        }
+    }
+
+    private void refresh() {
+        long startTime = System.currentTimeMillis();
+
+        long[] pids = null;
+        try {
+            pids = listPids();
+        } catch (Exception e) {
+            LOG.warn("Failed to retrieve PIDs of all running processes.", e);
+        }
+
+        Map<Long, ProcessInfo> refreshed = new LinkedHashMap<Long, ProcessInfo>();
+        int loaded = 0;
+        if (pids != null) {
+            for (long pid : pids) {
+                ProcessInfo info = processes.get(pid);
+                if (info != null && !refreshKept(info)) {
+                    info = null;
+                }
+                if (info == null) {
+                    if (LOG.isTraceEnabled()) {
+                        LOG.trace("Loading process info for pid " + pid + "...");
+                    }
+                    info = createProcessInfo(pid);
+                    loaded++;
+                }
+                refreshed.put(pid, info);
+            }
+        }
+
+        processes = refreshed;
+        query = new ProcessInfoQuery(new ArrayList<ProcessInfo>(refreshed.values()));
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Refresh of the process table with " + refreshed.size() + " processes, " + loaded
+                + " of them new, took " + (System.currentTimeMillis() - startTime) + " ms.");
+        }
+    }
+
+    /**
+     * Refreshes a process that was already running at the previous refresh.
+     *
+     * @return false if the process has to be loaded again, because its pid has been reused or it could not be refreshed
+     */
+    private boolean refreshKept(ProcessInfo info) {
+        if (!isSameProcess(info)) {
+            return false;
+        }
+        try {
+            info.refresh();
+            return true;
+        } catch (Exception e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Failed to refresh process info for pid " + info.getPid() + ", loading it again.", e);
+            }
+            return false;
+        }
+    }
+
+    protected long[] listPids() throws Exception {
+        return sigar.getProcList();
+    }
+
+    protected ProcessInfo createProcessInfo(long pid) {
+        return new ProcessInfo(pid, sigar);
+    }
+
+    /**
+     * Tells whether the process with the pid of <code>info</code> is still the process <code>info</code> was created
+     * for, and not a new process that reused the pid, by comparing their start times.
+     */
+    protected boolean isSameProcess(ProcessInfo info) {
+        ProcTime time = info.priorSnaphot().getTime();
+        if (time == null) {
+            return false;
+        }
+        try {
+            return sigar.getProcTime(info.getPid()).getStartTime() == time.getStartTime();
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
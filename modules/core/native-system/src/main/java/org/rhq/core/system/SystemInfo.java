@@ -107,6 +107,10 @@ public interface SystemInfo {
     /**
      * Returns the information on all processes found in the process table. This means that all processes currently
      * running and are visible to the user running the VM are returned.
+     * <p/>
+     * Implementations may share the process table between calls for a short time, see {@link ProcessTable}, in which
+     * case the returned {@link ProcessInfo} objects are shared too and their state may be as old as the table. Call
+     * {@link ProcessInfo#freshSnapshot()} to get the current state of a process.
      *
      * @return list containing information on all processes currently running at the time the method was called
      */
@@ -220,6 +220,8 @@ public class SystemInfoFactory {
                 // we could use SIGAR here, but this should be enough
                 if (System.getProperty("os.name").toLowerCase().indexOf("windows") > -1) {
                     nativePlatform = new WindowsNativeSystemInfo();
+                } else if (LinuxNativeSystemInfo.isSupported()) {
+                    nativePlatform = new LinuxNativeSystemInfo();
                 } else {
                     // we either don't know what OS it is or we don't have a specific native subclass for it;
                     // but we know we have a native library for it! so just create the generic NativePlatform to represent it.
@@ -28,11 +28,12 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -186,6 +187,11 @@ import org.rhq.core.system.pquery.Conditional.Qualifier;
  *   </tr>
  * </table>
  *
+ * <p>Criteria are evaluated in order, each one only against the processes matched by the previous ones, so the most
+ * selective criteria should come first. Criteria on the name or basename of the processes themselves are evaluated once
+ * per distinct name, and criteria on named arguments only look at the processes having such arguments, through indexes
+ * built on first use. Querying the same instance several times reuses the indexes.</p>
+ *
  * @author John Mazzitelli
  */
 public class ProcessInfoQuery {
@@ -197,6 +203,16 @@ public class ProcessInfoQuery {
      */
     private final Map<Long, ProcessInfo> allProcesses;
 
+    private static final Pattern PID_PATTERN = Pattern.compile("\\d+");
+
+    /**
+     * The processes keyed on their names, basenames, and the names of their arguments (the part before the equals sign
+     * of arguments like "name=value", the whole argument otherwise). Built on first use. Unknown names are null keys.
+     */
+    private Map<String, List<ProcessInfo>> processesByName;
+    private Map<String, List<ProcessInfo>> processesByBaseName;
+    private TreeMap<String, List<ProcessInfo>> processesByArgName;
+
     /**
      * Constructor for {@link ProcessInfoQuery} given an collection of process information that represents the processes
      * currently running. Think of the <code>processes</code> data as coming from part of the output you see in the
@@ -241,28 +257,19 @@ public class ProcessInfoQuery {
         }
 
         // keyed on pid so we automatically avoid dups (in case more than one criteria matches)
-        Map<Long, ProcessInfo> queryResults = new HashMap<Long, ProcessInfo>(this.allProcesses);
-        Map<Long, ProcessInfo> criteriaResults;
+        Map<Long, ProcessInfo> queryResults = this.allProcesses;
 
         for (Criteria criteria : criteriaList) {
+            // multiple criteria results are ANDed together, so each criteria only looks at the processes
+            // matched by the previous ones
             if (criteria.getConditional().getCategory().equals(Conditional.Category.process)) {
-                criteriaResults = doProcessCriteriaQuery(criteria);
+                queryResults = doProcessCriteriaQuery(criteria, queryResults);
             } else if (criteria.getConditional().getCategory().equals(Conditional.Category.arg)) {
-                criteriaResults = doArgCriteriaQuery(criteria);
+                queryResults = doArgCriteriaQuery(criteria, queryResults);
             } else {
                 throw new IllegalArgumentException("Unknown category: " + criteria); // should never happen
             }
 
-            // multiple criteria results are ANDed together
-            // only retain those previously matched processes that were also matched in the latest criteria
-            Set<Long> pids = new HashSet<Long>(queryResults.keySet()); // new set to avoid concurrent mod exceptions
-
-            for (Long pid : pids) {
-                if (!criteriaResults.containsKey(pid)) { // a previously matched process was not matched in the latest criteria, so removed it
-                    queryResults.remove(pid);
-                }
-            }
-
             if (queryResults.size() == 0) {
                 // we've eliminated every possible process - don't bother running any more criteria
                 break;
@@ -279,12 +286,13 @@ public class ProcessInfoQuery {
      * Runs the given criteria with the arg conditional and returns the processes that match.
      *
      * @param  criteria the criteria with the arg conditional
+     * @param  candidates the processes to match, keyed on the pids
      *
      * @return the matched processes keyed on the pids
      *
      * @throws IllegalArgumentException
      */
-    private Map<Long, ProcessInfo> doArgCriteriaQuery(Criteria criteria) {
+    private Map<Long, ProcessInfo> doArgCriteriaQuery(Criteria criteria, Map<Long, ProcessInfo> candidates) {
         Map<Long, ProcessInfo> matches = new HashMap<Long, ProcessInfo>();
 
         Attribute attribute = criteria.getConditional().getAttribute();
@@ -294,7 +302,24 @@ public class ProcessInfoQuery {
         String operand1 = null;
         String operand2 = criteria.getValue();
 
-        for (ProcessInfo process : getProcesses()) {
+        Collection<ProcessInfo> processes = candidates.values();
+        String attributeName = attribute.getAttributeValue();
+        if (qualifier.equals(Qualifier.unspecified) && !attributeName.equals("*")
+            && attribute.getAttributeValueAsInteger() == null && attributeName.length() > 0
+            && attributeName.indexOf('=') == -1) {
+            // only the processes with an argument starting with the attribute name can match, with either operator
+            processes = new ArrayList<ProcessInfo>();
+            for (List<ProcessInfo> withArg : getProcessesByArgName().subMap(attributeName,
+                attributeName + Character.MAX_VALUE).values()) {
+                for (ProcessInfo process : withArg) {
+                    if (candidates.containsKey(process.getPid())) {
+                        processes.add(process);
+                    }
+                }
+            }
+        }
+
+        for (ProcessInfo process : processes) {
             ProcessInfo processToMatch; // will be the same as process unless the parent qualifier was provided
 
             if (qualifier.equals(Qualifier.parent)) {
@@ -338,8 +363,6 @@ public class ProcessInfoQuery {
                 }
             } else {
                 // if we get here, it means the attribute specified was the name of an argument
-                String attributeName = attribute.getAttributeValue();
-
                 for (int i = 0; i < cmdline.length; i++) {
                     String arg = cmdline[i];
 
@@ -375,12 +398,13 @@ public class ProcessInfoQuery {
      * Runs the given criteria with the process conditional and returns the processes that match.
      *
      * @param  criteria the criteria with the process conditional
+     * @param  candidates the processes to match, keyed on the pids
      *
      * @return the matched processes keyed on the pids
      *
      * @throws IllegalArgumentException
      */
-    private Map<Long, ProcessInfo> doProcessCriteriaQuery(Criteria criteria) {
+    private Map<Long, ProcessInfo> doProcessCriteriaQuery(Criteria criteria, Map<Long, ProcessInfo> candidates) {
         Map<Long, ProcessInfo> matches = new HashMap<Long, ProcessInfo>();
 
         Attribute attribute = criteria.getConditional().getAttribute();
@@ -392,7 +416,34 @@ public class ProcessInfoQuery {
 
         String pidfileContentsCache = null; // so we avoid reading the file over and over again
 
-        for (ProcessInfo process : getProcesses()) {
+        if (qualifier.equals(Qualifier.unspecified)) {
+            String attributeValue = attribute.getAttributeValue();
+            if (attributeValue.equals(Attribute.ProcessCategoryAttributes.name.toString())) {
+                return doIndexedQuery(getProcessesByName(), op, criteria.getValue(), candidates);
+            } else if (attributeValue.equals(Attribute.ProcessCategoryAttributes.basename.toString())) {
+                return doIndexedQuery(getProcessesByBaseName(), op, criteria.getValue(), candidates);
+            } else if (op.getOperator().equals(Conditional.Operator.match)) {
+                String pid = null;
+                if (attributeValue.equals(Attribute.ProcessCategoryAttributes.pid.toString())) {
+                    pid = criteria.getValue();
+                } else if (attributeValue.equals(Attribute.ProcessCategoryAttributes.pidfile.toString())) {
+                    pid = getPidfileContents(criteria.getValue());
+                }
+                if (pid != null && PID_PATTERN.matcher(pid).matches()) {
+                    // a plain number only matches the process with that pid
+                    ProcessInfo process = candidates.get(Long.valueOf(pid));
+                    if (process != null && op.doOperation(String.valueOf(process.getPid()), pid)) {
+                        matches.put(process.getPid(), process);
+                    }
+                    return matches;
+                }
+                if (attributeValue.equals(Attribute.ProcessCategoryAttributes.pidfile.toString())) {
+                    pidfileContentsCache = pid;
+                }
+            }
+        }
+
+        for (ProcessInfo process : candidates.values()) {
             ProcessInfo processToMatch; // will be the same as process unless the parent qualifier was provided
 
             if (qualifier.equals(Qualifier.parent)) {
@@ -431,6 +482,76 @@ public class ProcessInfoQuery {
         return matches;
     }
 
+    /**
+     * Matches the keys of the index rather than each process, which is cheaper as long as many processes share the
+     * same key, like the many processes of a same executable.
+     */
+    private Map<Long, ProcessInfo> doIndexedQuery(Map<String, List<ProcessInfo>> index, Operation op, String value,
+        Map<Long, ProcessInfo> candidates) {
+        Map<Long, ProcessInfo> matches = new HashMap<Long, ProcessInfo>();
+        for (Map.Entry<String, List<ProcessInfo>> entry : index.entrySet()) {
+            if (op.doOperation(entry.getKey(), value)) {
+                for (ProcessInfo process : entry.getValue()) {
+                    if (candidates.containsKey(process.getPid())) {
+                        matches.put(process.getPid(), process);
+                    }
+                }
+            }
+        }
+        return matches;
+    }
+
+    private synchronized Map<String, List<ProcessInfo>> getProcessesByName() {
+        if (processesByName == null) {
+            processesByName = new HashMap<String, List<ProcessInfo>>();
+            for (ProcessInfo process : allProcesses.values()) {
+                addToIndex(processesByName, process.getName(), process);
+            }
+        }
+        return processesByName;
+    }
+
+    private synchronized Map<String, List<ProcessInfo>> getProcessesByBaseName() {
+        if (processesByBaseName == null) {
+            processesByBaseName = new HashMap<String, List<ProcessInfo>>();
+            for (ProcessInfo process : allProcesses.values()) {
+                addToIndex(processesByBaseName, process.getBaseName(), process);
+            }
+        }
+        return processesByBaseName;
+    }
+
+    private synchronized TreeMap<String, List<ProcessInfo>> getProcessesByArgName() {
+        if (processesByArgName == null) {
+            processesByArgName = new TreeMap<String, List<ProcessInfo>>();
+            for (ProcessInfo process : allProcesses.values()) {
+                String[] cmdline = process.getCommandLine();
+                if (cmdline == null) {
+                    continue;
+                }
+                for (String arg : cmdline) {
+                    int equals = arg.indexOf('=');
+                    String argName = (equals == -1) ? arg : arg.substring(0, equals);
+                    List<ProcessInfo> withArg = processesByArgName.get(argName);
+                    // a process is listed once per argument name, even if it has the argument several times
+                    if (withArg == null || withArg.get(withArg.size() - 1) != process) {
+                        addToIndex(processesByArgName, argName, process);
+                    }
+                }
+            }
+        }
+        return processesByArgName;
+    }
+
+    private static void addToIndex(Map<String, List<ProcessInfo>> index, String key, ProcessInfo process) {
+        List<ProcessInfo> processes = index.get(key);
+        if (processes == null) {
+            processes = new ArrayList<ProcessInfo>(1);
+            index.put(key, processes);
+        }
+        processes.add(process);
+    }
+
     /**
      * Gets the parent process for the given process. The parent will be searched for within the {@link #getProcesses()}
      * list.
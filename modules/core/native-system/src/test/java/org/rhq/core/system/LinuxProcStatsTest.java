@@ -0,0 +1,209 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.system;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.hyperic.sigar.Cpu;
+import org.hyperic.sigar.CpuPerc;
+import org.hyperic.sigar.Mem;
+import org.hyperic.sigar.NetInterfaceStat;
+import org.hyperic.sigar.SigarProxy;
+import org.hyperic.sigar.Swap;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test
+public class LinuxProcStatsTest {
+
+    private File procDir;
+
+    @BeforeMethod
+    public void createProcDir() throws IOException {
+        procDir = File.createTempFile("proc", "");
+        procDir.delete();
+        new File(procDir, "net").mkdirs();
+        write("meminfo", "MemTotal:       16318412 kB\n" //
+            + "MemFree:         1187356 kB\n" //
+            + "MemAvailable:    9822736 kB\n" //
+            + "Buffers:          512000 kB\n" //
+            + "Cached:          8000000 kB\n" //
+            + "SwapCached:          120 kB\n" //
+            + "SwapTotal:       8388604 kB\n" //
+            + "SwapFree:        8388000 kB\n");
+        write("vmstat", "nr_free_pages 296839\n" //
+            + "pswpin 12\n" //
+            + "pswpout 34\n");
+        writeStat(100);
+        write("net/dev", "Inter-|   Receive                                                |  Transmit\n"
+            + " face |bytes    packets errs drop fifo frame compressed multicast|bytes    packets errs drop fifo colls carrier compressed\n"
+            + "    lo: 1000 10 0 0 0 0 0 0 1000 10 0 0 0 0 0 0\n"
+            + "  eth0:123456 789 1 2 3 4 0 5 654321 987 6 7 8 9 10 0\n");
+    }
+
+    @AfterMethod
+    public void deleteProcDir() {
+        new File(procDir, "net/dev").delete();
+        new File(procDir, "net").delete();
+        for (File file : procDir.listFiles()) {
+            file.delete();
+        }
+        procDir.delete();
+    }
+
+    public void testMemory() throws Exception {
+        LinuxProcStats stats = new LinuxProcStats(procDir, 0);
+
+        Mem mem = stats.getMem();
+        assertEquals(mem.getTotal(), 16318412L * 1024);
+        assertEquals(mem.getFree(), 1187356L * 1024);
+        assertEquals(mem.getUsed(), (16318412L - 1187356L) * 1024);
+        assertEquals(mem.getActualFree(), (1187356L + 512000L + 8000000L) * 1024);
+        assertEquals(mem.getActualUsed(), (16318412L - 1187356L - 512000L - 8000000L) * 1024);
+        assertEquals(mem.getRam(), 15936L);
+
+        Swap swap = stats.getSwap();
+        assertEquals(swap.getTotal(), 8388604L * 1024);
+        assertEquals(swap.getFree(), 8388000L * 1024);
+        assertEquals(swap.getUsed(), 604L * 1024);
+        assertEquals(swap.getPageIn(), 12L);
+        assertEquals(swap.getPageOut(), 34L);
+    }
+
+    public void testCpu() throws Exception {
+        LinuxProcStats stats = new LinuxProcStats(procDir, 0);
+
+        assertEquals(stats.getCpuCount(), 2);
+        // the times are read in jiffies, of 10 ms
+        Cpu cpu = stats.getCpu(1);
+        assertEquals(cpu.getUser(), 10000L);
+        assertEquals(cpu.getNice(), 200L);
+        assertEquals(cpu.getSys(), 3000L);
+        assertEquals(cpu.getIdle(), 40000L);
+        assertEquals(cpu.getWait(), 500L);
+        assertEquals(cpu.getTotal(), 55800L);
+        assertNull(stats.getCpu(2));
+
+        // the usage is computed between two reads
+        writeStat(200);
+        CpuPerc cpuPerc = stats.getCpuPerc(1);
+        assertEquals(cpuPerc.getUser(), 1000.0 / 5580, 0.0001);
+        assertEquals(cpuPerc.getSys(), 300.0 / 5580, 0.0001);
+        assertEquals(cpuPerc.getIdle(), 4000.0 / 5580, 0.0001);
+        assertEquals(cpuPerc.getCombined(), cpuPerc.getUser() + cpuPerc.getSys() + cpuPerc.getNice()
+            + cpuPerc.getWait(), 0.0001);
+    }
+
+    public void testReadsAreSharedWithinTheTimeToLive() throws Exception {
+        LinuxProcStats stats = new LinuxProcStats(procDir, Long.MAX_VALUE);
+
+        long user = stats.getCpu(0).getUser();
+        writeStat(200);
+        assertEquals(stats.getCpu(0).getUser(), user, "/proc/stat should not have been read again");
+    }
+
+    public void testNetworkInterfaces() throws Exception {
+        LinuxProcStats stats = new LinuxProcStats(procDir, 0);
+
+        NetInterfaceStat eth0 = stats.getNetInterfaceStat("eth0");
+        assertEquals(eth0.getRxBytes(), 123456L);
+        assertEquals(eth0.getRxPackets(), 789L);
+        assertEquals(eth0.getRxErrors(), 1L);
+        assertEquals(eth0.getRxDropped(), 2L);
+        assertEquals(eth0.getRxOverruns(), 3L);
+        assertEquals(eth0.getRxFrame(), 4L);
+        assertEquals(eth0.getTxBytes(), 654321L);
+        assertEquals(eth0.getTxPackets(), 987L);
+        assertEquals(eth0.getTxErrors(), 6L);
+        assertEquals(eth0.getTxDropped(), 7L);
+        assertEquals(eth0.getTxOverruns(), 8L);
+        assertEquals(eth0.getTxCollisions(), 9L);
+        assertEquals(eth0.getTxCarrier(), 10L);
+        assertEquals(stats.getNetInterfaceStat("lo").getTxBytes(), 1000L);
+        assertNull(stats.getNetInterfaceStat("eth1"));
+    }
+
+    /**
+     * Compares the statistics read from the real /proc with the ones of SIGAR, and the time it takes to get them.
+     */
+    @Test(groups = "native.system")
+    public void testCompareWithSigar() throws Exception {
+        if (!LinuxProcStats.isAvailable() || !SystemInfoFactory.isNativeSystemInfoAvailable()) {
+            System.out.println("~~~ /proc or the native library is not available - skipping testCompareWithSigar");
+            return;
+        }
+        SigarProxy sigar = SigarAccess.getSigar();
+        LinuxProcStats stats = new LinuxProcStats(new File("/proc"), 0);
+
+        assertEquals(stats.getMem().getTotal(), sigar.getMem().getTotal());
+        assertEquals(stats.getSwap().getTotal(), sigar.getSwap().getTotal());
+        assertEquals(stats.getCpuCount(), sigar.getCpuList().length);
+
+        int iterations = 1000;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            stats.getMem();
+            stats.getSwap();
+            for (int cpu = 0; cpu < stats.getCpuCount(); cpu++) {
+                stats.getCpu(cpu);
+            }
+        }
+        long procTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sigar.getMem();
+            sigar.getSwap();
+            sigar.getCpuList();
+        }
+        long sigarTime = System.nanoTime() - start;
+
+        System.out.println("~~~ " + iterations + " reads of memory, swap and CPUs: /proc=" + (procTime / 1000000)
+            + "ms, SIGAR=" + (sigarTime / 1000000) + "ms");
+    }
+
+    private void writeStat(int base) throws IOException {
+        write("stat", "cpu  " + (base * 20) + " 0 0 0 0 0 0 0 0 0\n" //
+            + "cpu0 " + (base * 10) + " " + (base / 5) + " " + (base * 3) + " " + (base * 40) + " " + (base / 2) + " "
+            + (base * 6 / 10) + " " + (base * 7 / 10) + " " + (base * 8 / 10) + " 0 0\n" //
+            + "cpu1 " + (base * 10) + " " + (base / 5) + " " + (base * 3) + " " + (base * 40) + " " + (base / 2) + " "
+            + (base * 6 / 10) + " " + (base * 7 / 10) + " " + (base * 8 / 10) + " 0 0\n" //
+            + "intr 1234 0 0\n" //
+            + "ctxt 5678\n");
+    }
+
+    private void write(String name, String content) throws IOException {
+        FileWriter writer = new FileWriter(new File(procDir, name));
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+
+package org.rhq.core.system;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+@Test
+public class ProcessTableTest {
+
+    public void testProcessesAreReusedAcrossRefreshes() {
+        TestProcessTable table = new TestProcessTable(0);
+        table.pids = new long[] { 1, 2 };
+        List<ProcessInfo> first = table.getProcesses();
+        assertEquals(first.size(), 2);
+        assertEquals(table.created, 2);
+
+        table.pids = new long[] { 1, 3 };
+        List<ProcessInfo> second = table.getProcesses();
+        assertEquals(second.size(), 2);
+        assertEquals(table.created, 3, "only the process with pid 3 should have been loaded");
+        assertSame(second.get(0), first.get(0));
+        assertEquals(second.get(1).getPid(), 3);
+        assertEquals(((TestProcessInfo) second.get(0)).refreshes, 1, "the kept process should have been refreshed");
+        assertEquals(((TestProcessInfo) second.get(1)).refreshes, 0);
+    }
+
+    public void testProcessFailingToRefreshIsLoadedAgain() {
+        TestProcessTable table = new TestProcessTable(0);
+        table.pids = new long[] { 1 };
+        TestProcessInfo before = (TestProcessInfo) table.getProcesses().get(0);
+
+        before.failRefresh = true;
+        ProcessInfo after = table.getProcesses().get(0);
+        assertNotSame(after, before);
+        assertEquals(table.created, 2);
+    }
+
+    public void testReusedPidIsLoadedAgain() {
+        TestProcessTable table = new TestProcessTable(0);
+        table.pids = new long[] { 1 };
+        ProcessInfo before = table.getProcesses().get(0);
+
+        table.restarted.add(1L);
+        ProcessInfo after = table.getProcesses().get(0);
+        assertNotSame(after, before);
+        assertEquals(table.created, 2);
+    }
+
+    public void testTableIsSharedUntilInvalidated() {
+        TestProcessTable table = new TestProcessTable(Long.MAX_VALUE);
+        table.pids = new long[] { 1 };
+        assertEquals(table.getQuery().query("process|pid|match=1").size(), 1);
+
+        table.pids = new long[] { 1, 2 };
+        assertEquals(table.getProcesses().size(), 1, "the table should not have been refreshed before its ttl");
+        assertEquals(table.listed, 1);
+
+        table.invalidate();
+        assertEquals(table.getQuery().query("process|pid|match=2").size(), 1);
+        assertEquals(table.listed, 2);
+        assertEquals(table.created, 2);
+    }
+
+    private static class TestProcessTable extends ProcessTable {
+        long[] pids = new long[0];
+        Set<Long> restarted = new HashSet<Long>();
+        int listed;
+        int created;
+
+        TestProcessTable(long ttl) {
+            super(null, ttl);
+        }
+
+        @Override
+        protected long[] listPids() {
+            listed++;
+            return pids;
+        }
+
+        @Override
+        protected ProcessInfo createProcessInfo(long pid) {
+            created++;
+            return new TestProcessInfo(pid);
+        }
+
+        @Override
+        protected boolean isSameProcess(ProcessInfo info) {
+            return !restarted.remove(info.getPid());
+        }
+    }
+
+    private static class TestProcessInfo extends ProcessInfo {
+        private final long testPid;
+        int refreshes;
+        boolean failRefresh;
+
+        TestProcessInfo(long pid) {
+            this.testPid = pid;
+        }
+
+        @Override
+        public long getPid() {
+            return testPid;
+        }
+
+        @Override
+        public String getName() {
+            return "/bin/test";
+        }
+
+        @Override
+        public String getBaseName() {
+            return "test";
+        }
+
+        @Override
+        public String[] getCommandLine() {
+            return new String[] { "/bin/test" };
+        }
+
+        @Override
+        public long getParentPid() {
+            return 0;
+        }
+
+        @Override
+        public void refresh() {
+            if (failRefresh) {
+                throw new SystemInfoException("refresh failed");
+            }
+            refreshes++;
+        }
+    }
+}
@@ -236,6 +236,45 @@ public class ProcessInfoQueryTest {
         assertPidExists(5, results, "");
     }
 
+    /**
+     * Test that the indexed lookups return the same processes as a full scan would, also when the query is reused.
+     */
+    public void testPIQLIndexedQueries() {
+        for (int i = 0; i < 2; i++) {
+            results = query.query("arg|-Dbind.port|match=.*");
+            assert results.size() == 0 : "no process has a -Dbind.port argument: " + results;
+
+            results = query.query("arg|-Dbind|match=192\\.168\\.0\\.1");
+            assert results.size() == 1 : "an argument name prefix matches like a full argument name: " + results;
+            assertPidExists(8, results, "");
+
+            results = query.query("arg|-b|match=.*");
+            assert results.size() == 1 : "only pid 1 has a -b argument: " + results;
+            assertPidExists(1, results, "");
+
+            results = query.query("process|basename|match=exec");
+            assert results.size() == 3 : results;
+            assertPidExists(3, results, "");
+            assertPidExists(4, results, "");
+            assertPidExists(5, results, "");
+
+            results = query.query("process|basename|nomatch=exec");
+            assert results.size() == 5 : results;
+            assertPidDoesNotExist(3, results, "");
+
+            results = query.query("process|pid|match=7");
+            assert results.size() == 1 : results;
+            assertPidExists(7, results, "");
+
+            results = query.query("process|pid|match=70");
+            assert results.size() == 0 : results;
+
+            results = query.query("process|basename|match=exec,arg|--daemon|match=.*,process|pid|match=5");
+            assert results.size() == 1 : results;
+            assertPidExists(5, results, "");
+        }
+    }
+
     /**
      * Test multiple criteria.
      */
@@ -71,7 +71,8 @@ public interface EventContext {
 
     /**
      * Tells the plugin container to stop polling for Events of the specified type (i.e.
-     * {@link org.rhq.core.domain.event.EventDefinition} name).
+     * {@link org.rhq.core.domain.event.EventDefinition} name). If the poller implements {@link java.io.Closeable}, it
+     * is closed.
      *
      * @param eventType the type of Event to stop polling for
      */
@@ -80,7 +81,8 @@ public interface EventContext {
 
     /**
      * Tells the plugin container to stop polling the specified source for Events of the specified type (i.e.
-     * {@link org.rhq.core.domain.event.EventDefinition} name).
+     * {@link org.rhq.core.domain.event.EventDefinition} name). If the poller implements {@link java.io.Closeable}, it
+     * is closed.
      *
      * @param eventType the type of Event to stop polling for
      * @param sourceLocation the location of the source to stop polling
@@ -31,6 +31,9 @@ import org.rhq.core.domain.event.Event;
 
 /**
  * A class that polls at a designated interval for {@link Event}s of a specific type from a specific source.
+ * <p/>
+ * A poller that holds resources, such as an open file, can implement {@link java.io.Closeable}. The plugin container
+ * then closes it when it is unregistered or the plugin container shuts down, possibly while a poll is still running.
  *
  * @author Ian Springer
  */
@@ -20,10 +20,10 @@
 package org.rhq.core.pluginapi.event.log;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.Reader;
+import java.io.StringReader;
 import java.util.Set;
 
 import org.apache.commons.logging.Log;
@@ -39,11 +39,16 @@ import org.rhq.core.pluginapi.event.EventContext;
 import org.rhq.core.pluginapi.event.EventPoller;
 
 /**
- * An Event poller that polls a log file for new entries. 
+ * An Event poller that polls a log file for new entries. The file is tailed by a {@link LogFileTailer}, which keeps
+ * the file open between polls and only reads the bytes appended since the previous poll. SIGAR, if available, is only
+ * used to obtain the file's inode so rotation can be detected reliably.
+ * <p/>
+ * The poller is {@link Closeable}: the plugin container closes it once it has been unregistered, which releases the
+ * log file. Polling and closing are serialized, and a closed poller does not reopen the file.
  *
  * @author Ian Springer
  */
-public class LogFileEventPoller implements EventPoller {
+public class LogFileEventPoller implements EventPoller, Closeable {
     private static final Log LOG = LogFactory.getLog(LogFileEventPoller.class);
 
     private String eventType;
@@ -51,7 +56,9 @@ public class LogFileEventPoller implements EventPoller {
     private FileInfo logFileInfo;
     private LogEntryProcessor entryProcessor;
     private EventContext eventContext;
+    private LogFileTailer tailer;
     private boolean initialized;
+    private boolean closed;
 
     public LogFileEventPoller(EventContext eventContext, String eventType, File logFile,
         LogEntryProcessor entryProcessor) {
@@ -59,6 +66,7 @@ public class LogFileEventPoller implements EventPoller {
         this.logFile = logFile;
         this.entryProcessor = entryProcessor;
         this.eventContext = eventContext;
+        this.tailer = new LogFileTailer(logFile);
     }
 
     @NotNull
@@ -72,7 +80,10 @@ public class LogFileEventPoller implements EventPoller {
     }
 
     @Nullable
-    public Set<Event> poll() {
+    public synchronized Set<Event> poll() {
+        if (this.closed) {
+            return null;
+        }
         if (!this.logFile.exists()) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Log file [" + this.logFile + "] being polled does not exist.");
@@ -85,29 +96,58 @@ public class LogFileEventPoller implements EventPoller {
         }
         if (!this.initialized) {
             init();
-        }
-        if (this.logFileInfo == null) {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Cannot poll log file [" + this.logFile
-                    + "] because native integration is either disabled or unavailable.");
-            }
             return null;
         }
-        try {
-            if (!this.logFileInfo.changed()) {
-                return null;
-            }
-        } catch (SigarException e) {
-            throw new RuntimeException(e);
+        long inode = getInode();
+        if (!this.tailer.hasNewData(inode)) {
+            return null;
         }
-        return processNewLines(this.logFileInfo);
+        return processNewLines(inode);
+    }
+
+    /**
+     * Releases the log file held open by this poller. Called by the plugin container once the poller has been
+     * unregistered; subsequent polls return no events.
+     */
+    public synchronized void close() {
+        this.closed = true;
+        this.tailer.close();
+    }
+
+    /**
+     * @return the total number of bytes consumed from the log file by this poller
+     */
+    public long getTotalBytesRead() {
+        return this.tailer.getTotalBytesRead();
+    }
+
+    /**
+     * @return the total number of lines consumed from the log file by this poller
+     */
+    public long getTotalLinesRead() {
+        return this.tailer.getTotalLinesRead();
+    }
+
+    /**
+     * @return the rate, in bytes per second, at which the log file grew between the last two polls
+     */
+    public double getBytesPerSecond() {
+        return this.tailer.getBytesPerSecond();
+    }
+
+    /**
+     * @return the rate, in lines per second, at which the log file grew between the last two polls
+     */
+    public double getLinesPerSecond() {
+        return this.tailer.getLinesPerSecond();
     }
 
     /**
      * This performs any initialization that requires using the EventContext. It must *not* be called from our
      * constructor, because pollers are constructed during PC initialization, and at that time the PC EventManager,
      * which the EventContext relies on, is not yet available. Instead it is called from {@link #poll()} on the first
-     * invocation of that method, at which point the PC will be initialized.
+     * invocation of that method, at which point the PC will be initialized. Like the first stat of the file did
+     * previously, this positions the tailer at the current end of the file, so existing entries are not reported.
      */
     protected void init() {
         SigarProxy sigar = this.eventContext.getSigar();
@@ -117,69 +157,54 @@ public class LogFileEventPoller implements EventPoller {
             } catch (SigarException e) {
                 throw new RuntimeException("Failed to obtain file info for log file [" + this.logFile + "].", e);
             }
-        } else {
-            LOG.warn("SIGAR is unavailable - cannot poll log file [" + this.logFile + "] for events.");
+        } else if (LOG.isDebugEnabled()) {
+            LOG.debug("SIGAR is unavailable - rotation of log file [" + this.logFile
+                + "] will be detected by size only.");
         }
 
-        this.initialized = true;
-    }
-
-    private Set<Event> processNewLines(FileInfo fileInfo) {
-        Set<Event> events = null;
-        Reader reader = null;
         try {
-            reader = new FileReader(this.logFile);
-
-            long offset = getOffset(fileInfo);
-
-            if (offset > 0) {
-                reader.skip(offset);
-            }
-            BufferedReader bufferedReader = new BufferedReader(reader);
-            events = this.entryProcessor.processLines(bufferedReader);
+            this.tailer.seekToEnd(getInode());
         } catch (IOException e) {
-            LOG.error("Failed to read log file being tailed: " + this.logFile, e);
-        } finally {
-            if (reader != null) {
-                //noinspection EmptyCatchBlock
-                try {
-                    reader.close();
-                } catch (IOException e) {
-                }
-            }
+            throw new RuntimeException("Failed to open log file [" + this.logFile + "] for tailing.", e);
         }
-        return events;
-    }
 
-    private long getOffset(FileInfo fileInfo) {
-        FileInfo previousFileInfo = fileInfo.getPreviousInfo();
+        this.initialized = true;
+    }
 
-        if (previousFileInfo == null) {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug(this.logFile + ": first stat");
-            }
-            return fileInfo.getSize();
+    private long getInode() {
+        if (this.logFileInfo == null) {
+            return -1;
         }
-
-        if (fileInfo.getInode() != previousFileInfo.getInode()) {
+        try {
+            this.logFileInfo.stat();
+        } catch (SigarException e) {
             if (LOG.isDebugEnabled()) {
-                LOG.debug(this.logFile + ": file inode changed");
+                LOG.debug("Failed to stat log file [" + this.logFile + "].", e);
             }
             return -1;
         }
+        return this.logFileInfo.getInode();
+    }
 
-        if (fileInfo.getSize() < previousFileInfo.getSize()) {
+    private Set<Event> processNewLines(long inode) {
+        Set<Event> events = null;
+        try {
+            String newLines = this.tailer.readNewLines(inode);
+            if (newLines != null) {
+                BufferedReader bufferedReader = new BufferedReader(new StringReader(newLines));
+                events = this.entryProcessor.processLines(bufferedReader);
+            }
             if (LOG.isDebugEnabled()) {
-                LOG.debug(this.logFile + ": file truncated");
+                LOG.debug(this.logFile + ": read " + this.tailer.getTotalBytesRead() + " bytes / "
+                    + this.tailer.getTotalLinesRead() + " lines in total ("
+                    + String.format("%.1f", this.tailer.getBytesPerSecond()) + " bytes/sec, "
+                    + String.format("%.1f", this.tailer.getLinesPerSecond()) + " lines/sec)");
             }
-            return -1;
-        }
-
-        if (LOG.isDebugEnabled()) {
-            long diff = fileInfo.getSize() - previousFileInfo.getSize();
-            LOG.debug(this.logFile + ": " + diff + " new bytes");
+        } catch (IOException e) {
+            LOG.error("Failed to read log file being tailed: " + this.logFile, e);
+            // Reopen on the next poll, in case the failure was due to the file having been replaced.
+            this.tailer.close();
         }
-
-        return previousFileInfo.getSize();
+        return events;
     }
 }
@@ -23,8 +23,10 @@ import java.io.File;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -38,7 +40,6 @@ import org.rhq.core.domain.configuration.PropertyMap;
 import org.rhq.core.domain.event.EventSeverity;
 import org.rhq.core.domain.resource.ResourceType;
 import org.rhq.core.pluginapi.event.EventContext;
-import org.rhq.core.pluginapi.event.EventPoller;
 import org.rhq.core.pluginapi.inventory.InvalidPluginConfigurationException;
 import org.rhq.core.pluginapi.inventory.ResourceContext;
 import org.rhq.core.system.SystemInfoFactory;
@@ -70,6 +71,7 @@ public class LogFileEventResourceComponentHelper {
 
     private ResourceContext<?> resourceContext;
     private List<PropertyMap> startedEventSources = new ArrayList<PropertyMap>();
+    private Map<String, LogFileEventPoller> startedPollers = new HashMap<String, LogFileEventPoller>();
 
     public LogFileEventResourceComponentHelper(ResourceContext<?> resourceContext) {
         this.resourceContext = resourceContext;
@@ -155,9 +157,10 @@ public class LogFileEventResourceComponentHelper {
                 processor.setMinimumSeverity(minimumSeverity);
             }
             EventContext eventContext = this.resourceContext.getEventContext();
-            EventPoller poller = new LogFileEventPoller(eventContext, LOG_ENTRY_EVENT_TYPE, logFile, processor);
+            LogFileEventPoller poller = new LogFileEventPoller(eventContext, LOG_ENTRY_EVENT_TYPE, logFile, processor);
             eventContext.registerEventPoller(poller, POLLING_INTERVAL_IN_SECONDS, logFile.getPath());
             this.startedEventSources.add(logEventSource);
+            this.startedPollers.put(logFile.getPath(), poller);
         }
     }
 
@@ -172,6 +175,10 @@ public class LogFileEventResourceComponentHelper {
             EventContext eventContext = this.resourceContext.getEventContext();
             String logFilePath = logEventSource.getSimpleValue(LogEventSourcePropertyNames.LOG_FILE_PATH, null);
             eventContext.unregisterEventPoller(LOG_ENTRY_EVENT_TYPE, logFilePath);
+            LogFileEventPoller poller = this.startedPollers.remove(new File(logFilePath).getPath());
+            if (poller != null) {
+                poller.close();
+            }
             iterator.remove();
         }
     }
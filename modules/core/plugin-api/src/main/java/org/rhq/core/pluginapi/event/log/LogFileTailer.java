@@ -0,0 +1,400 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.core.pluginapi.event.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Reads the lines appended to a file since the previous read. Unlike reopening the file and skipping to the previous
+ * offset, the tailer keeps the file channel open between reads and only ever reads the new bytes, using positional
+ * reads for small deltas and a memory mapping for large ones, so the cost of a read is proportional to the amount of
+ * new data rather than to the size of the file.
+ * <p/>
+ * Only complete lines are returned; a trailing partial line is left in the file and picked up by the next read once
+ * its line terminator has been written. At most <code>maxBytesPerRead</code> bytes are consumed per read from the
+ * current file - whatever is left is consumed by subsequent reads, which bounds the memory used per poll and applies
+ * back-pressure when a log file grows faster than it is being polled.
+ * <p/>
+ * Rotation is detected when the inode of the file changes (if the caller is able to supply it), when the file key
+ * reported by the JVM for the path changes (where the platform has file keys), when the file shrinks below the
+ * current read position, or when the path no longer refers to the file held open by the tailer. The remainder of a
+ * rotated file is drained completely, since it cannot be read once the tailer has switched to the new file, which it
+ * then reads from the beginning.
+ * <p/>
+ * Instances are not thread safe; callers such as {@link LogFileEventPoller} serialize reads and {@link #close()}.
+ */
+public class LogFileTailer {
+    private static final Log LOG = LogFactory.getLog(LogFileTailer.class);
+
+    public static final int DEFAULT_MAX_BYTES_PER_READ = 4 * 1024 * 1024;
+
+    /** Deltas at least this large are read through a memory mapping rather than a positional read. */
+    static final int MAPPED_READ_THRESHOLD = 256 * 1024;
+
+    private static final byte LINE_FEED = '\n';
+
+    /** Windows does not allow an open file to be renamed, so the channel must not be held open across reads there. */
+    private static final boolean KEEP_OPEN = !System.getProperty("os.name", "").toLowerCase().startsWith("windows");
+
+    private final File file;
+    private final int maxBytesPerRead;
+    private final Charset charset;
+
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+    private ByteBuffer readBuffer;
+    private long position = -1;
+    private long inode = -1;
+    private Object fileKey;
+
+    private long totalBytesRead;
+    private long totalLinesRead;
+    private long lastReadTime;
+    private volatile double bytesPerSecond;
+    private volatile double linesPerSecond;
+
+    public LogFileTailer(File file) {
+        this(file, DEFAULT_MAX_BYTES_PER_READ, Charset.defaultCharset());
+    }
+
+    public LogFileTailer(File file, int maxBytesPerRead, Charset charset) {
+        if (maxBytesPerRead <= 0) {
+            throw new IllegalArgumentException("maxBytesPerRead must be positive.");
+        }
+        this.file = file;
+        this.maxBytesPerRead = maxBytesPerRead;
+        this.charset = charset;
+    }
+
+    /**
+     * Positions the tailer at the current end of the file, so that only lines appended from now on are returned.
+     * This is what a poller wants when it starts tailing a log that already has content.
+     *
+     * @param inode the current inode of the file, or -1 if unknown
+     */
+    public void seekToEnd(long inode) throws IOException {
+        open();
+        this.position = this.channel.size();
+        this.inode = inode;
+        this.fileKey = FileKeys.get(this.file);
+        this.lastReadTime = System.currentTimeMillis();
+        releaseIfNotKeptOpen();
+    }
+
+    /**
+     * Returns the complete lines appended to the file since the previous read, or null if there are none.
+     *
+     * @param currentInode the current inode of the file, or -1 if unknown
+     *
+     * @return the new lines, including their line terminators, or null if there are no complete new lines
+     *
+     * @throws IOException if reading the file fails
+     */
+    @Nullable
+    public String readNewLines(long currentInode) throws IOException {
+        if (this.position < 0) {
+            // Never positioned - start from the beginning of the file.
+            this.position = 0;
+            this.inode = currentInode;
+            this.fileKey = FileKeys.get(this.file);
+        }
+
+        StringBuilder lines = new StringBuilder();
+        long startBytes = this.totalBytesRead;
+        long startLines = this.totalLinesRead;
+        try {
+            open();
+            if (isRotated(currentInode)) {
+                // Whatever is left in the old file was written before the rotation - don't lose any of it, it
+                // cannot be read anymore once we have switched to the new file.
+                String remainder;
+                while ((remainder = read(true)) != null) {
+                    lines.append(remainder);
+                }
+                close();
+                open();
+                this.position = 0;
+                this.inode = currentInode;
+                this.fileKey = FileKeys.get(this.file);
+            }
+            String newLines = read(false);
+            if (newLines != null) {
+                lines.append(newLines);
+            }
+        } finally {
+            releaseIfNotKeptOpen();
+        }
+
+        updateRates(this.totalBytesRead - startBytes, this.totalLinesRead - startLines);
+
+        return (lines.length() > 0) ? lines.toString() : null;
+    }
+
+    /**
+     * Returns true if there may be data to read, i.e. the file has been replaced or its length differs from the
+     * current read position. This is a cheap check that does not require reading the file.
+     *
+     * @param currentInode the current inode of the file, or -1 if unknown
+     */
+    public boolean hasNewData(long currentInode) {
+        if (this.position < 0 || this.file.length() != this.position) {
+            return true;
+        }
+        if (currentInode != -1 && this.inode != -1) {
+            return currentInode != this.inode;
+        }
+        return isFileKeyChanged();
+    }
+
+    public void close() {
+        if (this.randomAccessFile != null) {
+            try {
+                this.randomAccessFile.close();
+            } catch (IOException e) {
+                LOG.debug("Failed to close tailed file [" + this.file + "].", e);
+            }
+        }
+        this.randomAccessFile = null;
+        this.channel = null;
+    }
+
+    public long getPosition() {
+        return this.position;
+    }
+
+    public long getTotalBytesRead() {
+        return this.totalBytesRead;
+    }
+
+    public long getTotalLinesRead() {
+        return this.totalLinesRead;
+    }
+
+    /**
+     * @return the rate at which bytes were consumed, measured over the interval between the last two reads
+     */
+    public double getBytesPerSecond() {
+        return this.bytesPerSecond;
+    }
+
+    /**
+     * @return the rate at which lines were consumed, measured over the interval between the last two reads
+     */
+    public double getLinesPerSecond() {
+        return this.linesPerSecond;
+    }
+
+    private void open() throws IOException {
+        if (this.channel == null) {
+            this.randomAccessFile = new RandomAccessFile(this.file, "r");
+            this.channel = this.randomAccessFile.getChannel();
+        }
+    }
+
+    private void releaseIfNotKeptOpen() {
+        if (!KEEP_OPEN) {
+            close();
+        }
+    }
+
+    private boolean isRotated(long currentInode) throws IOException {
+        if (currentInode != -1 && this.inode != -1 && currentInode != this.inode) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(this.file + ": file inode changed");
+            }
+            return true;
+        }
+        if (isFileKeyChanged()) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(this.file + ": file key changed");
+            }
+            return true;
+        }
+        long openSize = this.channel.size();
+        if (openSize < this.position) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(this.file + ": file truncated");
+            }
+            // The open file itself shrank - there is nothing left to drain from it.
+            this.position = openSize;
+            return true;
+        }
+        if (KEEP_OPEN && this.file.length() < this.position) {
+            // The path now refers to a new, smaller file than the one we hold open.
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(this.file + ": file replaced");
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private boolean isFileKeyChanged() {
+        if (this.fileKey == null) {
+            return false;
+        }
+        Object currentFileKey = FileKeys.get(this.file);
+        return currentFileKey != null && !currentFileKey.equals(this.fileKey);
+    }
+
+    /**
+     * Reads up to maxBytesPerRead bytes from the current position and returns the complete lines contained in them,
+     * advancing the position past those lines.
+     *
+     * @param flush if true, a trailing partial line is returned as well
+     */
+    private String read(boolean flush) throws IOException {
+        long available = this.channel.size() - this.position;
+        if (available <= 0) {
+            return null;
+        }
+        int length = (int) Math.min(available, this.maxBytesPerRead);
+
+        ByteBuffer buffer;
+        if (length >= MAPPED_READ_THRESHOLD) {
+            buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, this.position, length);
+        } else {
+            buffer = getReadBuffer(length);
+            while (buffer.hasRemaining()) {
+                if (this.channel.read(buffer, this.position + buffer.position()) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+        }
+
+        int lineCount = 0;
+        int end = 0;
+        for (int i = buffer.limit() - 1; i >= 0; i--) {
+            if (buffer.get(i) == LINE_FEED) {
+                if (end == 0) {
+                    end = i + 1;
+                }
+                lineCount++;
+            }
+        }
+        if (flush || (end == 0 && buffer.limit() == this.maxBytesPerRead)) {
+            // Either we are draining, or a single line is longer than we are willing to buffer - hand it over as is.
+            if (end < buffer.limit()) {
+                lineCount++;
+                end = buffer.limit();
+            }
+        }
+        if (end == 0) {
+            // Only a partial line has been written so far - wait for the rest of it.
+            return null;
+        }
+
+        buffer.limit(end);
+        String lines = this.charset.decode(buffer).toString();
+
+        this.position += end;
+        this.totalBytesRead += end;
+        this.totalLinesRead += lineCount;
+        return lines;
+    }
+
+    private ByteBuffer getReadBuffer(int length) {
+        if (this.readBuffer == null || this.readBuffer.capacity() < length) {
+            this.readBuffer = ByteBuffer.allocate(length);
+        }
+        this.readBuffer.clear();
+        this.readBuffer.limit(length);
+        return this.readBuffer;
+    }
+
+    private void updateRates(long bytes, long lines) {
+        long now = System.currentTimeMillis();
+        long elapsed = now - this.lastReadTime;
+        if (this.lastReadTime > 0 && elapsed > 0) {
+            this.bytesPerSecond = (bytes * 1000.0) / elapsed;
+            this.linesPerSecond = (lines * 1000.0) / elapsed;
+        }
+        this.lastReadTime = now;
+    }
+
+    /**
+     * Reads the key that identifies a file independently of its path, i.e. the device and inode on UNIX, through
+     * <code>Files.readAttributes(path, BasicFileAttributes.class).fileKey()</code>. That API is only available from
+     * Java 7 on, so it is looked up reflectively; on older JVMs, and on platforms without file keys, no key is read.
+     */
+    static final class FileKeys {
+        private static final Method TO_PATH;
+        private static final Method READ_ATTRIBUTES;
+        private static final Method FILE_KEY;
+        private static final Class<?> BASIC_FILE_ATTRIBUTES;
+        private static final Object NO_LINK_OPTIONS;
+
+        static {
+            Method toPath = null;
+            Method readAttributes = null;
+            Method fileKey = null;
+            Class<?> basicFileAttributes = null;
+            Object noLinkOptions = null;
+            try {
+                Class<?> pathClass = Class.forName("java.nio.file.Path");
+                Class<?> linkOptionClass = Class.forName("java.nio.file.LinkOption");
+                basicFileAttributes = Class.forName("java.nio.file.attribute.BasicFileAttributes");
+                noLinkOptions = Array.newInstance(linkOptionClass, 0);
+                toPath = File.class.getMethod("toPath");
+                readAttributes = Class.forName("java.nio.file.Files").getMethod("readAttributes", pathClass,
+                    Class.class, noLinkOptions.getClass());
+                fileKey = basicFileAttributes.getMethod("fileKey");
+            } catch (Exception e) {
+                LOG.debug("File keys are not available - log file rotation will not be detected by file key.");
+                toPath = null;
+            }
+            TO_PATH = toPath;
+            READ_ATTRIBUTES = readAttributes;
+            FILE_KEY = fileKey;
+            BASIC_FILE_ATTRIBUTES = basicFileAttributes;
+            NO_LINK_OPTIONS = noLinkOptions;
+        }
+
+        /**
+         * @return the key of the file the path currently refers to, or null if it is unknown
+         */
+        @Nullable
+        static Object get(File file) {
+            if (TO_PATH == null) {
+                return null;
+            }
+            try {
+                Object attributes = READ_ATTRIBUTES.invoke(null, TO_PATH.invoke(file), BASIC_FILE_ATTRIBUTES,
+                    NO_LINK_OPTIONS);
+                return FILE_KEY.invoke(attributes);
+            } catch (Exception e) {
+                // most likely the file is being rotated and does not exist right now
+                return null;
+            }
+        }
+    }
+}
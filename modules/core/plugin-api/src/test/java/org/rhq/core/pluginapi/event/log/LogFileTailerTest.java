@@ -0,0 +1,187 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.core.pluginapi.event.log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test
+public class LogFileTailerTest {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private File logFile;
+    private LogFileTailer tailer;
+
+    @BeforeMethod
+    public void createLogFile() throws IOException {
+        logFile = File.createTempFile("tailer", ".log");
+        append("existing line 1\nexisting line 2\n");
+    }
+
+    @AfterMethod
+    public void deleteLogFile() {
+        if (tailer != null) {
+            tailer.close();
+        }
+        logFile.delete();
+    }
+
+    public void testOnlyNewLinesAreReadAfterSeekToEnd() throws Exception {
+        tailer = new LogFileTailer(logFile, 1024, UTF8);
+        tailer.seekToEnd(-1);
+        assert !tailer.hasNewData(-1);
+        assert tailer.readNewLines(-1) == null;
+
+        append("new line 1\nnew line 2\n");
+        assert tailer.hasNewData(-1);
+        assert "new line 1\nnew line 2\n".equals(tailer.readNewLines(-1));
+        assert tailer.getTotalLinesRead() == 2;
+        assert tailer.getTotalBytesRead() == "new line 1\nnew line 2\n".length();
+        assert tailer.readNewLines(-1) == null;
+    }
+
+    public void testPartialLineIsHeldBackUntilComplete() throws Exception {
+        tailer = new LogFileTailer(logFile, 1024, UTF8);
+        tailer.seekToEnd(-1);
+
+        append("complete\npart");
+        assert "complete\n".equals(tailer.readNewLines(-1));
+        assert tailer.readNewLines(-1) == null;
+
+        append("ial\n");
+        assert "partial\n".equals(tailer.readNewLines(-1));
+    }
+
+    public void testReadsAreBoundedByMaxBytesPerRead() throws Exception {
+        tailer = new LogFileTailer(logFile, 16, UTF8);
+        tailer.seekToEnd(-1);
+
+        append("0123456\n0123456\n0123456\n");
+        assert "0123456\n0123456\n".equals(tailer.readNewLines(-1));
+        assert "0123456\n".equals(tailer.readNewLines(-1));
+        assert tailer.readNewLines(-1) == null;
+    }
+
+    public void testLineLongerThanMaxBytesPerReadIsSplit() throws Exception {
+        tailer = new LogFileTailer(logFile, 8, UTF8);
+        tailer.seekToEnd(-1);
+
+        append("0123456789\n");
+        assert "01234567".equals(tailer.readNewLines(-1));
+        assert "89\n".equals(tailer.readNewLines(-1));
+    }
+
+    public void testTruncationRestartsFromBeginning() throws Exception {
+        tailer = new LogFileTailer(logFile, 1024, UTF8);
+        tailer.seekToEnd(-1);
+
+        new FileOutputStream(logFile, false).close();
+        append("after truncation\n");
+        assert "after truncation\n".equals(tailer.readNewLines(-1));
+    }
+
+    public void testRotationDrainsOldFileAndRestartsFromBeginning() throws Exception {
+        tailer = new LogFileTailer(logFile, 1024, UTF8);
+        tailer.seekToEnd(1);
+
+        append("last line of old file\n");
+        File rotatedFile = new File(logFile.getPath() + ".1");
+        try {
+            assert logFile.renameTo(rotatedFile);
+            append("first line of new file\n");
+
+            String lines = tailer.readNewLines(2);
+            assert "last line of old file\nfirst line of new file\n".equals(lines) : lines;
+            append("second line of new file\n");
+            lines = tailer.readNewLines(2);
+            assert "second line of new file\n".equals(lines) : lines;
+        } finally {
+            rotatedFile.delete();
+        }
+    }
+
+    public void testRotationDrainsWholeOldFile() throws Exception {
+        tailer = new LogFileTailer(logFile, 16, UTF8);
+        tailer.seekToEnd(1);
+
+        append("old 1\nold 2\nold 3\nold 4\nold 5\n");
+        File rotatedFile = new File(logFile.getPath() + ".1");
+        try {
+            assert logFile.renameTo(rotatedFile);
+            append("new 1\n");
+
+            String lines = tailer.readNewLines(2);
+            assert "old 1\nold 2\nold 3\nold 4\nold 5\nnew 1\n".equals(lines) : lines;
+        } finally {
+            rotatedFile.delete();
+        }
+    }
+
+    public void testRotationDetectedByFileKeyWithoutInode() throws Exception {
+        tailer = new LogFileTailer(logFile, 1024, UTF8);
+        tailer.seekToEnd(-1);
+
+        File rotatedFile = new File(logFile.getPath() + ".1");
+        try {
+            assert logFile.renameTo(rotatedFile);
+            // larger than the old file, so that the rotation cannot be told from the size
+            append("first line of new file, which is long\n");
+            if (LogFileTailer.FileKeys.get(logFile) == null) {
+                // no file keys on this platform
+                return;
+            }
+
+            assert tailer.hasNewData(-1);
+            String lines = tailer.readNewLines(-1);
+            assert "first line of new file, which is long\n".equals(lines) : lines;
+        } finally {
+            rotatedFile.delete();
+        }
+    }
+
+    public void testLargeDeltaIsReadThroughMapping() throws Exception {
+        tailer = new LogFileTailer(logFile, LogFileTailer.MAPPED_READ_THRESHOLD * 2, UTF8);
+        tailer.seekToEnd(-1);
+
+        StringBuilder content = new StringBuilder();
+        int lineCount = 0;
+        while (content.length() < LogFileTailer.MAPPED_READ_THRESHOLD) {
+            content.append("line ").append(lineCount++).append('\n');
+        }
+        append(content.toString());
+        assert content.toString().equals(tailer.readNewLines(-1));
+        assert tailer.getTotalLinesRead() == lineCount;
+    }
+
+    private void append(String text) throws IOException {
+        FileOutputStream out = new FileOutputStream(logFile, true);
+        try {
+            out.write(text.getBytes(UTF8));
+        } finally {
+            out.close();
+        }
+    }
+}
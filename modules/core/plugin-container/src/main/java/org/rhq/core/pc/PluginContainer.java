@@ -22,6 +22,9 @@ package org.rhq.core.pc;
 import java.beans.Introspector;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutorService;
@@ -127,6 +130,8 @@ public class PluginContainer {
     // this is to prevent race conditions on startup between components from all the different managers
     private final ReadWriteLock rwLock = new ReentrantReadWriteLock();
 
+    private volatile Map<String, Long> startupTimes = Collections.emptyMap();
+
     private long shutdownStartTime;
     private boolean shutdownGracefully;
     private volatile boolean shuttingDown;
@@ -286,10 +291,17 @@ public class PluginContainer {
 
             ResourceContainer.initialize(configuration);
 
+            Map<String, Long> startupTimes = new LinkedHashMap<String, Long>();
+            long initStartTime = System.currentTimeMillis();
             PluginLifecycleListenerManager pluginLifecycle = new PluginLifecycleListenerManagerImpl();
             pluginManager = new PluginManager(configuration, pluginLifecycle);
+            startupTimes.put("Plugin Descriptor Parsing", pluginManager.getDescriptorParseTime());
+            startupTimes.put("Plugin Loading", pluginManager.getPluginLoadTime());
+            long phaseStartTime = System.currentTimeMillis();
             inventoryManager = new InventoryManager(configuration, agentServiceStreamRemoter, pluginManager);
             inventoryManager.initialize();
+            startupTimes.put("Inventory Initialization", System.currentTimeMillis() - phaseStartTime);
+            phaseStartTime = System.currentTimeMillis();
             eventManager = inventoryManager.getEventManager();
             eventManager.initialize();
             operationManager = inventoryManager.getOperationManager();
@@ -308,6 +320,9 @@ public class PluginContainer {
                 measurementManager);
             driftManager = new DriftManager(configuration, agentServiceStreamRemoter, inventoryManager);
             pingManager = new PingManager(agentServiceStreamRemoter);
+            startupTimes.put("Subsystem Initialization", System.currentTimeMillis() - phaseStartTime);
+            startupTimes.put("Total", System.currentTimeMillis() - initStartTime);
+            this.startupTimes = startupTimes;
 
             for (AgentServiceLifecycleListener ll : agentServiceListeners) {
                 for (AgentService service : services()) {
@@ -521,6 +536,16 @@ public class PluginContainer {
         }
     }
 
+    /**
+     * Returns how long, in milliseconds, each phase of the last plugin container initialization took, in the order the
+     * phases were executed. Empty if the plugin container has not been initialized yet.
+     *
+     * @return the startup phase names mapped to their durations
+     */
+    public Map<String, Long> getStartupTimes() {
+        return this.startupTimes;
+    }
+
     // The methods below return the actual manager implementation objects.
     // Only those objects inside the plugin container should be calling these getXXXManager() methods.
 
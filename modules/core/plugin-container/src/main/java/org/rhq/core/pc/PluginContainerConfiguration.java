@@ -90,6 +90,14 @@ public class PluginContainerConfiguration {
     public static final String AVAILABILITY_SCAN_THREADPOOL_SIZE_PROP = "availability-scan-threadpool-size";
     public static final int AVAILABILITY_SCAN_THREADPOOL_SIZE_DEFAULT = 100;
 
+    // Facet Invocation ----------
+
+    private static final String FACET_INVOCATION_MAX_PER_PLUGIN_PROP = PROP_PREFIX + "facet-invocation-max-per-plugin";
+    public static final int FACET_INVOCATION_MAX_PER_PLUGIN_DEFAULT = 50;
+    private static final String FACET_INVOCATION_VIRTUAL_THREADS_PROP = PROP_PREFIX
+        + "facet-invocation-virtual-threads";
+    public static final boolean FACET_INVOCATION_VIRTUAL_THREADS_DEFAULT = false;
+
     // Measurement ----------
 
     private static final String MEASUREMENT_COLLECTION_INITIAL_DELAY_PROP = PROP_PREFIX
@@ -145,6 +153,14 @@ public class PluginContainerConfiguration {
     public static final int EVENT_REPORT_MAX_PER_SOURCE_DEFAULT = 200;
     private static final String EVENT_REPORT_MAX_TOTAL_PROP = PROP_PREFIX + "event-report-max-total";
     public static final int EVENT_REPORT_MAX_TOTAL_DEFAULT = 400;
+    private static final String EVENT_COALESCE_WINDOW_PROP = PROP_PREFIX + "event-coalesce-window";
+    public static final long EVENT_COALESCE_WINDOW_DEFAULT = 0L; // in seconds, disabled unless configured
+    private static final String EVENT_RATE_LIMIT_PER_SOURCE_PROP = PROP_PREFIX + "event-rate-limit-per-source";
+    public static final int EVENT_RATE_LIMIT_PER_SOURCE_DEFAULT = 0; // events per second, disabled unless configured
+    private static final String EVENT_RATE_LIMIT_BURST_PROP = PROP_PREFIX + "event-rate-limit-burst";
+    public static final int EVENT_RATE_LIMIT_BURST_DEFAULT = 200;
+    private static final String EVENT_SAMPLE_RATE_PROP = PROP_PREFIX + "event-sample-rate";
+    public static final int EVENT_SAMPLE_RATE_DEFAULT = 100;
 
     /**
      * Contains all remote POJO services that the server exposes to the plugin container.
@@ -502,6 +518,37 @@ public class PluginContainerConfiguration {
         configuration.put(AVAILABILITY_SCAN_THREADPOOL_SIZE_PROP, Integer.valueOf(size));
     }
 
+    /**
+     * Returns the maximum number of facet invocations (measurement collections, configuration updates, operations,
+     * etc.) that can be in progress at the same time for the resources of any one plugin. Callers wait for an
+     * invocation to complete, up to their timeout, once this limit is reached. 0 means there is no limit.
+     *
+     * @return maximum concurrent facet invocations per plugin
+     */
+    public int getFacetInvocationMaxPerPlugin() {
+        Integer value = (Integer) configuration.get(FACET_INVOCATION_MAX_PER_PLUGIN_PROP);
+        return (value == null) ? FACET_INVOCATION_MAX_PER_PLUGIN_DEFAULT : value.intValue();
+    }
+
+    public void setFacetInvocationMaxPerPlugin(int value) {
+        configuration.put(FACET_INVOCATION_MAX_PER_PLUGIN_PROP, Integer.valueOf(value));
+    }
+
+    /**
+     * Returns whether facet invocations that do not need a non-daemon thread should run in virtual threads. This is
+     * only honored if the JVM supports virtual threads.
+     *
+     * @return <code>true</code> if virtual threads should be used for facet invocations
+     */
+    public boolean isFacetInvocationVirtualThreads() {
+        Boolean value = (Boolean) configuration.get(FACET_INVOCATION_VIRTUAL_THREADS_PROP);
+        return (value == null) ? FACET_INVOCATION_VIRTUAL_THREADS_DEFAULT : value.booleanValue();
+    }
+
+    public void setFacetInvocationVirtualThreads(boolean value) {
+        configuration.put(FACET_INVOCATION_VIRTUAL_THREADS_PROP, Boolean.valueOf(value));
+    }
+
     /**
      * Returns the length of time, in seconds, before measurements begin getting collected.
      *
@@ -885,6 +932,65 @@ public class PluginContainerConfiguration {
         configuration.put(EVENT_REPORT_MAX_TOTAL_PROP, value);
     }
 
+    /**
+     * Returns the window, in seconds, within which identical events from the same event source are coalesced into a
+     * single event carrying a repeat count. 0, the default, disables coalescing.
+     *
+     * @return coalesce window in seconds
+     */
+    public long getEventCoalesceWindow() {
+        Long window = (Long) configuration.get(EVENT_COALESCE_WINDOW_PROP);
+        return (window == null) ? EVENT_COALESCE_WINDOW_DEFAULT : window.longValue();
+    }
+
+    public void setEventCoalesceWindow(long window) {
+        configuration.put(EVENT_COALESCE_WINDOW_PROP, window);
+    }
+
+    /**
+     * Returns the sustained number of events per second any one event source may publish before its events are
+     * sampled. 0, the default, disables rate limiting.
+     *
+     * @return events per second allowed per event source
+     */
+    public int getEventRateLimitPerSource() {
+        Integer value = (Integer) configuration.get(EVENT_RATE_LIMIT_PER_SOURCE_PROP);
+        return (value == null) ? EVENT_RATE_LIMIT_PER_SOURCE_DEFAULT : value.intValue();
+    }
+
+    public void setEventRateLimitPerSource(int value) {
+        configuration.put(EVENT_RATE_LIMIT_PER_SOURCE_PROP, value);
+    }
+
+    /**
+     * Returns the number of events an event source may publish in a burst before the rate limit applies.
+     *
+     * @return burst size per event source
+     */
+    public int getEventRateLimitBurst() {
+        Integer value = (Integer) configuration.get(EVENT_RATE_LIMIT_BURST_PROP);
+        return (value == null) ? EVENT_RATE_LIMIT_BURST_DEFAULT : value.intValue();
+    }
+
+    public void setEventRateLimitBurst(int value) {
+        configuration.put(EVENT_RATE_LIMIT_BURST_PROP, value);
+    }
+
+    /**
+     * Returns the sample rate applied to an event source that exceeds its rate limit - one in this many events is
+     * kept, the rest are dropped.
+     *
+     * @return sample rate
+     */
+    public int getEventSampleRate() {
+        Integer value = (Integer) configuration.get(EVENT_SAMPLE_RATE_PROP);
+        return (value == null) ? EVENT_SAMPLE_RATE_DEFAULT : value.intValue();
+    }
+
+    public void setEventSampleRate(int value) {
+        configuration.put(EVENT_SAMPLE_RATE_PROP, value);
+    }
+
     /**
      * Defines the base number of threads that can concurrently execute resource factory tasks.
      *
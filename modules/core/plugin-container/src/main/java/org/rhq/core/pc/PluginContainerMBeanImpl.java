@@ -39,6 +39,8 @@ import org.rhq.core.clientapi.server.discovery.InventoryReport;
 import org.rhq.core.domain.configuration.PropertyList;
 import org.rhq.core.domain.configuration.PropertyMap;
 import org.rhq.core.domain.configuration.PropertySimple;
+import org.rhq.core.pc.inventory.FacetInvocationStatistics;
+import org.rhq.core.pc.inventory.FacetInvocationStatistics.FacetStatistics;
 import org.rhq.core.pc.inventory.InventoryManager;
 import org.rhq.core.pc.inventory.ResourceContainer;
 import org.rhq.core.pc.plugin.CanonicalResourceKey;
@@ -287,6 +289,49 @@ public class PluginContainerMBeanImpl implements PluginContainerMBeanImplMBean {
         return info;
     }
 
+    public OperationResult retrieveStartupTimings() {
+        OperationResult info = new OperationResult();
+        PropertyList list = new PropertyList("phases");
+        info.getComplexResults().put(list);
+
+        for (Entry<String, Long> entry : this.pluginContainer.getStartupTimes().entrySet()) {
+            PropertyMap map = new PropertyMap("phase");
+            map.put(new PropertySimple("name", entry.getKey()));
+            map.put(new PropertySimple("time", entry.getValue()));
+            list.add(map);
+        }
+
+        return info;
+    }
+
+    public OperationResult retrieveFacetInvocationStatistics() {
+        OperationResult info = new OperationResult();
+        PropertyList list = new PropertyList("facets");
+        info.getComplexResults().put(list);
+
+        for (Entry<String, FacetStatistics> entry : ResourceContainer.getFacetInvocationStatistics()
+            .getFacetStatistics().entrySet()) {
+            FacetStatistics stats = entry.getValue();
+            PropertyMap map = new PropertyMap("facet");
+            map.put(new PropertySimple("name", entry.getKey()));
+            map.put(new PropertySimple("inFlight", stats.getInFlight()));
+            map.put(new PropertySimple("invocations", stats.getInvocations()));
+            map.put(new PropertySimple("failures", stats.getFailures()));
+            map.put(new PropertySimple("timeouts", stats.getTimeouts()));
+            map.put(new PropertySimple("rejections", stats.getRejections()));
+            map.put(new PropertySimple("totalTime", stats.getTotalTime()));
+            map.put(new PropertySimple("latencyHistogram", generateLatencyHistogramString(stats
+                .getLatencyHistogram())));
+            list.add(map);
+        }
+
+        return info;
+    }
+
+    public int getFacetInvocationsInFlight() {
+        return ResourceContainer.getFacetInvocationStatistics().getInFlight();
+    }
+
     public int getNumberOfPluginClassLoaders() {
         return this.pluginContainer.getPluginManager().getClassLoaderManager().getNumberOfPluginClassLoaders();
     }
@@ -299,6 +344,19 @@ public class PluginContainerMBeanImpl implements PluginContainerMBeanImplMBean {
         return this.pluginContainer.getPluginManager().getClassLoaderManager().getNumberOfResourceClassLoaders();
     }
 
+    private String generateLatencyHistogramString(long[] histogram) {
+        StringBuilder str = new StringBuilder();
+        long[] limits = FacetInvocationStatistics.LATENCY_BUCKET_LIMITS;
+        for (int i = 0; i < histogram.length; i++) {
+            if (i > 0) {
+                str.append(", ");
+            }
+            str.append((i < limits.length) ? ("<=" + limits[i] + "ms") : (">" + limits[limits.length - 1] + "ms"));
+            str.append(": ").append(histogram[i]);
+        }
+        return str.toString();
+    }
+
     private String generateInventoryReportString(InventoryReport report) {
         StringBuilder reportStr = new StringBuilder();
         if (report != null) {
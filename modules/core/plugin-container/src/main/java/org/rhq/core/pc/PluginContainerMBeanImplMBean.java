@@ -87,7 +87,31 @@ public interface PluginContainerMBeanImplMBean {
     OperationResult retrieveUniqueResourceClassLoaderInformation();
 
     /**
-     * Returns the number of classloaders assigned to a plugin.
+     * Retrieves how long each phase of the plugin container startup took, such as parsing the plugin
+     * descriptors and loading the plugins.
+     *
+     * @return startup phase timings
+     */
+    OperationResult retrieveStartupTimings();
+
+    /**
+     * Retrieves, per facet interface, how many calls into resource components are in progress, how many completed,
+     * failed, timed out or were rejected, and how long they took.
+     *
+     * @return facet invocation statistics
+     */
+    OperationResult retrieveFacetInvocationStatistics();
+
+    /**
+     * Returns the number of calls into resource components that are currently in progress.
+     *
+     * @return facet invocations in progress
+     */
+    int getFacetInvocationsInFlight();
+
+    /**
+     * Returns the number of classloaders assigned to a plugin. Plugin classloaders are created
+     * on demand, so this may be less than the number of deployed plugins.
      * 
      * @return plugin classloader count
      */
@@ -28,6 +28,7 @@ import java.io.FileOutputStream;
 import java.io.OutputStream;
 import java.io.StringReader;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -201,14 +202,15 @@ public class BundleManager extends AgentService implements BundleAgentService, B
                             + bundleDeployment.getBundleVersion().getId());
                         bundleFilesDir.mkdirs();
 
+                        // now download the bundle files we need for the current deployment - files that are
+                        // unchanged since a previously downloaded bundle version are reused rather than downloaded
+                        Map<PackageVersion, File> downloadedFiles = downloadBundleFiles(resourceDeployment,
+                            bundleFilesDir);
+
                         // clean up any old downloads we may have retrieved before. This helps clean out
                         // our temp directory so we don't unnecessarily fill up our file system with obsolete files
                         removeOldDownloadedBundleFiles(bundleFilesDir);
 
-                        // now download the bundle files we need for the current deployment
-                        Map<PackageVersion, File> downloadedFiles = downloadBundleFiles(resourceDeployment,
-                            bundleFilesDir);
-
                         // deploy the bundle utilizing the bundle facet object
                         String deploymentMessage = "Deployment [" + bundleDeployment + "] to ["
                             + resourceDeployment.getResource() + "]";
@@ -562,6 +564,9 @@ public class BundleManager extends AgentService implements BundleAgentService, B
 
     /**
      * Downloads the bundle's files into the bundle plugin's tmp directory and returns that tmp directory.
+     * A bundle file that is byte-identical to a file downloaded for another bundle version (which is typically the
+     * version being upgraded) is copied locally instead of being downloaded again, so only new or changed bundle
+     * files are transferred from the server.
      *
      * @param resourceDeployment access to deployment information, including what bundle files need to be downloaded
      * @param downloadDir        location where the bundle files should be downloaded
@@ -578,12 +583,20 @@ public class BundleManager extends AgentService implements BundleAgentService, B
 
         Map<PackageVersion, File> packageVersionFiles = new HashMap<PackageVersion, File>();
         List<PackageVersion> packageVersions = getAllBundleVersionPackageVersions(bundleVersion);
+        Map<Long, List<File>> reusableFiles = null;
         for (PackageVersion packageVersion : packageVersions) {
             File packageFile = new File(downloadDir, packageVersion.getFileName());
 
             try {
                 verifyHash(packageVersion, packageFile);
             } catch (Exception e) {
+                if (reusableFiles == null) {
+                    reusableFiles = getPreviouslyDownloadedBundleFiles(downloadDir);
+                }
+                if (reuseBundleFile(resourceDeployment, packageVersion, packageFile, reusableFiles)) {
+                    packageVersionFiles.put(packageVersion, packageFile);
+                    continue;
+                }
 
                 // file either doesn't exist or it hash doesn't match, download a new copy
                 packageFile.getParentFile().mkdirs();
@@ -623,6 +636,80 @@ public class BundleManager extends AgentService implements BundleAgentService, B
         return packageVersionFiles;
     }
 
+    /**
+     * Indexes, by file size, the files that were downloaded for other bundle versions and are still found in the
+     * peer directories of the given download directory.
+     */
+    private Map<Long, List<File>> getPreviouslyDownloadedBundleFiles(final File downloadDir) {
+        Map<Long, List<File>> filesBySize = new HashMap<Long, List<File>>();
+        File[] peerDirs = downloadDir.getParentFile().listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File child) {
+                return child.isDirectory() && !downloadDir.equals(child);
+            }
+        });
+        if (peerDirs == null) {
+            return filesBySize;
+        }
+        for (File peerDir : peerDirs) {
+            try {
+                for (File relativeFile : FileUtil.getDirectoryFiles(peerDir)) {
+                    File file = new File(peerDir, relativeFile.getPath());
+                    Long size = Long.valueOf(file.length());
+                    List<File> files = filesBySize.get(size);
+                    if (files == null) {
+                        files = new ArrayList<File>(1);
+                        filesBySize.put(size, files);
+                    }
+                    files.add(file);
+                }
+            } catch (Exception e) {
+                LOG.debug("Cannot look for reusable bundle files in [" + peerDir + "]: " + e);
+            }
+        }
+        return filesBySize;
+    }
+
+    /**
+     * Looks for a previously downloaded file with the same content as the given package version and, if one is
+     * found, copies it to the package file location.
+     *
+     * @return true if the package file was obtained locally and does not have to be downloaded
+     */
+    private boolean reuseBundleFile(BundleResourceDeployment resourceDeployment, PackageVersion packageVersion,
+        File packageFile, Map<Long, List<File>> reusableFiles) {
+
+        // without a size and hash we can't tell if a file is the same as the one we need
+        if (packageVersion.getFileSize() == null
+            || (packageVersion.getMD5() == null && packageVersion.getSHA256() == null)) {
+            return false;
+        }
+        List<File> candidates = reusableFiles.get(packageVersion.getFileSize());
+        if (candidates == null) {
+            return false;
+        }
+        for (File candidate : candidates) {
+            try {
+                verifyHash(packageVersion, candidate);
+            } catch (Exception e) {
+                continue; // same size, different content
+            }
+            try {
+                packageFile.getParentFile().mkdirs();
+                FileUtil.copyFile(candidate, packageFile);
+                verifyHash(packageVersion, packageFile);
+            } catch (Exception e) {
+                LOG.debug("Failed to reuse [" + candidate + "] for bundle file [" + packageVersion + "]: " + e);
+                packageFile.delete();
+                return false;
+            }
+            auditDeployment(resourceDeployment, AUDIT_FILE_DOWNLOAD_ENDED, packageVersion.getDisplayName(),
+                "Bundle file [" + packageVersion + "] is unchanged since a previous download - reused it");
+            return true;
+        }
+        return false;
+    }
+
     private void completeDeployment(final BundleResourceDeployment resourceDeployment, BundleDeploymentStatus status,
         String message) {
         getBundleServerService().setBundleDeploymentStatus(resourceDeployment.getId(), status);
@@ -19,13 +19,22 @@
 
 package org.rhq.core.pc.event;
 
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hyperic.sigar.SigarProxy;
@@ -49,9 +58,11 @@ import org.rhq.core.system.SigarAccess;
  *
  * @author Ian Springer
  */
-public class EventManager implements ContainerService {
+public class EventManager implements ContainerService, EventManagerMBean {
     private static final Log log = LogFactory.getLog(EventManager.class);
 
+    public static final String OBJECT_NAME = "rhq.pc:type=EventManager";
+
     private static final String SENDER_THREAD_POOL_NAME = "EventManager.sender";
     private static final int SENDER_THREAD_POOL_CORE_SIZE = 2;
 
@@ -59,12 +70,16 @@ public class EventManager implements ContainerService {
     private static final int POLLER_THREAD_POOL_CORE_SIZE = 3;
     private static final int POLLER_INITIAL_DELAY_SECS = 0;
 
+    private static final int MAX_COALESCED_EVENTS = 10000;
+
     private final PluginContainerConfiguration pcConfig;
     private final ScheduledThreadPoolExecutor senderThreadPool;
     private volatile EventReport activeReport;
     private final ReentrantReadWriteLock reportLock = new ReentrantReadWriteLock(true);
     private final ScheduledThreadPoolExecutor pollerThreadPool;
     private final Map<PollerKey, Runnable> pollerThreads;
+    private final Map<PollerKey, EventPoller> pollers;
+    private final EventStormFilter stormFilter;
     private SigarProxy sigar;
 
     public EventManager(PluginContainerConfiguration configuration) {
@@ -77,6 +92,10 @@ public class EventManager implements ContainerService {
         pollerThreadPool = new ScheduledThreadPoolExecutor(POLLER_THREAD_POOL_CORE_SIZE, new LoggingThreadFactory(
             POLLER_THREAD_POOL_NAME, true));
         pollerThreads = new HashMap<PollerKey, Runnable>();
+        pollers = new HashMap<PollerKey, EventPoller>();
+        stormFilter = new EventStormFilter(pcConfig.getEventCoalesceWindow() * 1000L,
+            pcConfig.getEventRateLimitPerSource(), pcConfig.getEventRateLimitBurst(), pcConfig.getEventSampleRate(),
+            MAX_COALESCED_EVENTS);
     }
 
     public void initialize() {
@@ -85,23 +104,62 @@ public class EventManager implements ContainerService {
         EventSenderRunner senderRunner = new EventSenderRunner(this);
         senderThreadPool.scheduleAtFixedRate(senderRunner, pcConfig.getEventSenderInitialDelay(),
             pcConfig.getEventSenderPeriod(), TimeUnit.SECONDS);
+        if (pcConfig.isStartManagementBean()) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                server.registerMBean(this, new ObjectName(OBJECT_NAME));
+            } catch (JMException e) {
+                log.error("Unable to register EventManagerMBean", e);
+            }
+        }
         log.info("Event Manager initialized.");
     }
 
     @Override
     public void shutdown() {
-        log.debug("Shutting down event sender thread pool...");
-        PluginContainer.shutdownExecutorService(this.senderThreadPool, true);
         log.debug("Shutting down event poller thread pool...");
         PluginContainer.shutdownExecutorService(this.pollerThreadPool, true);
+        for (EventPoller poller : this.pollers.values()) {
+            closePoller(poller);
+        }
+        this.pollers.clear();
+        // No more Events will be published - send what has been collected since the last report, along with the
+        // summaries of all open coalesce windows, before the sender threads go away.
+        log.debug("Sending final Event report and shutting down event sender thread pool...");
+        if (!this.senderThreadPool.isShutdown()) {
+            this.senderThreadPool.execute(new EventSenderRunner(this, true));
+        }
+        PluginContainer.shutdownExecutorService(this.senderThreadPool, false);
+        if (pcConfig.isStartManagementBean()) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                server.unregisterMBean(new ObjectName(OBJECT_NAME));
+            } catch (JMException e) {
+                log.warn("Unable to unregister EventManagerMBean", e);
+            }
+        }
     }
 
     void publishEvents(@NotNull Set<Event> events, @NotNull Resource resource) {
         this.reportLock.readLock().lock();
         try {
+            // A poller reports events of a single type from a single location, but don't rely on it.
+            Map<EventSource, List<Event>> eventsBySource = new HashMap<EventSource, List<Event>>();
             for (Event event : events) {
                 EventSource eventSource = createEventSource(event, resource);
-                this.activeReport.addEvent(event, eventSource);
+                List<Event> sourceEvents = eventsBySource.get(eventSource);
+                if (sourceEvents == null) {
+                    sourceEvents = new ArrayList<Event>();
+                    eventsBySource.put(eventSource, sourceEvents);
+                }
+                sourceEvents.add(event);
+            }
+            long now = System.currentTimeMillis();
+            for (Map.Entry<EventSource, List<Event>> entry : eventsBySource.entrySet()) {
+                EventSource eventSource = entry.getKey();
+                for (Event event : this.stormFilter.filter(entry.getValue(), eventSource, now)) {
+                    this.activeReport.addEvent(event, eventSource);
+                }
             }
         } catch (Throwable t) {
             log.error("Failed to add Events for " + resource + " to Event report: " + events, t);
@@ -144,9 +202,17 @@ public class EventManager implements ContainerService {
         }
     }
 
-    EventReport swapReport() {
+    /**
+     * @param flushAll if true, all coalesce windows are closed, not just the expired ones, as is done for the last
+     * report sent at shutdown
+     */
+    EventReport swapReport(boolean flushAll) {
         this.reportLock.writeLock().lock();
         try {
+            // Close any expired coalesce windows and report rate limited sources in the outgoing report.
+            for (Event event : this.stormFilter.flush(System.currentTimeMillis(), flushAll)) {
+                this.activeReport.addEvent(event, event.getSource());
+            }
             EventReport previousReport = this.activeReport;
             this.activeReport = new EventReport(this.pcConfig.getEventReportMaxPerSource(), this.pcConfig
                 .getEventReportMaxTotal());
@@ -157,11 +223,24 @@ public class EventManager implements ContainerService {
     }
 
     void registerEventPoller(EventPoller poller, int pollingInterval, Resource resource, String sourceLocation) {
+        PollerKey pollerKey = new PollerKey(resource.getId(), poller.getEventType(), sourceLocation);
+        // A poller registered again for the same source replaces the previous one, which must neither keep polling
+        // nor keep its file open.
+        Runnable previousThread = this.pollerThreads.remove(pollerKey);
+        if (previousThread != null) {
+            ((Future<?>) previousThread).cancel(false);
+            this.pollerThreadPool.remove(previousThread);
+        }
+        EventPoller previousPoller = this.pollers.remove(pollerKey);
+        if (previousPoller != null && previousPoller != poller) {
+            closePoller(previousPoller);
+        }
+
         EventPollerRunner pollerRunner = new EventPollerRunner(poller, resource, this);
         Runnable pollerFuture = (Runnable) this.pollerThreadPool.scheduleAtFixedRate(pollerRunner,
             POLLER_INITIAL_DELAY_SECS, pollingInterval, TimeUnit.SECONDS);
-        PollerKey pollerKey = new PollerKey(resource.getId(), poller.getEventType(), sourceLocation);
         this.pollerThreads.put(pollerKey, pollerFuture);
+        this.pollers.put(pollerKey, poller);
     }
 
     void unregisterEventPoller(Resource resource, String eventType, String sourceLocation) {
@@ -178,6 +257,21 @@ public class EventManager implements ContainerService {
             }
             this.pollerThreads.remove(pollerKey);
         }
+        EventPoller poller = this.pollers.remove(pollerKey);
+        if (poller != null) {
+            // A poll may still be running, a Closeable poller has to cope with being closed concurrently.
+            closePoller(poller);
+        }
+    }
+
+    private void closePoller(EventPoller poller) {
+        if (poller instanceof Closeable) {
+            try {
+                ((Closeable) poller).close();
+            } catch (Exception e) {
+                log.warn("Failed to close Event poller " + poller + ".", e);
+            }
+        }
     }
 
     private EventSource createEventSource(Event event, Resource resource) {
@@ -190,6 +284,28 @@ public class EventManager implements ContainerService {
         return new EventSource(event.getSourceLocation(), eventDefinition, resource);
     }
 
+    // -- MBean monitoring methods
+
+    @Override
+    public long getEventsPublished() {
+        return this.stormFilter.getEventsAccepted();
+    }
+
+    @Override
+    public long getEventsCoalesced() {
+        return this.stormFilter.getEventsCoalesced();
+    }
+
+    @Override
+    public long getEventsSampled() {
+        return this.stormFilter.getEventsSampled();
+    }
+
+    @Override
+    public long getEventsDropped() {
+        return this.stormFilter.getEventsDropped();
+    }
+
     static class PollerKey {
         int resourceId;
         String eventType;
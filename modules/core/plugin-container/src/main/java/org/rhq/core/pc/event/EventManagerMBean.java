@@ -0,0 +1,44 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.core.pc.event;
+
+/**
+ * The management interface for the {@link EventManager}, exposing the counters of its event storm protection.
+ */
+public interface EventManagerMBean {
+    /**
+     * @return the number of events that were accepted into event reports since the plugin container started
+     */
+    long getEventsPublished();
+
+    /**
+     * @return the number of events that were coalesced into an identical event published earlier
+     */
+    long getEventsCoalesced();
+
+    /**
+     * @return the number of events that were kept by sampling after their source exceeded its rate limit
+     */
+    long getEventsSampled();
+
+    /**
+     * @return the number of events that were dropped because their source exceeded its rate limit
+     */
+    long getEventsDropped();
+}
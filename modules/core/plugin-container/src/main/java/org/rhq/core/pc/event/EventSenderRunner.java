@@ -38,13 +38,22 @@ public class EventSenderRunner implements Callable<EventReport>, Runnable {
     private static final Log LOG = LogFactory.getLog(EventSenderRunner.class);
 
     private EventManager eventManager;
+    private boolean flushAll;
 
     public EventSenderRunner(EventManager eventManager) {
+        this(eventManager, false);
+    }
+
+    /**
+     * @param flushAll if true, the summaries of all coalesced Events are sent, whether their window has expired or not
+     */
+    public EventSenderRunner(EventManager eventManager, boolean flushAll) {
         this.eventManager = eventManager;
+        this.flushAll = flushAll;
     }
 
     public EventReport call() throws Exception {
-        EventReport report = this.eventManager.swapReport();
+        EventReport report = this.eventManager.swapReport(this.flushAll);
         this.eventManager.sendEventReport(report);
         return report;
     }
@@ -0,0 +1,298 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.core.pc.event;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.rhq.core.domain.event.Event;
+import org.rhq.core.domain.event.EventSeverity;
+import org.rhq.core.domain.event.EventSource;
+
+/**
+ * Protects the Event subsystem from event storms - e.g. an application logging the same stack trace thousands of
+ * times a minute. Events published by pollers pass through this filter before being added to the Event report:
+ * <ul>
+ * <li>identical Events (same source, severity and detail) seen within the coalesce window are collapsed into the
+ * first occurrence; when the window expires, a single summary Event carrying the repeat count is emitted</li>
+ * <li>each Event source is rate limited by a token bucket; once a source has exhausted its bucket, only one in every
+ * <code>sampleRate</code> Events is kept, the rest are dropped. When the next report is built, a warning Event stating
+ * how many Events were dropped and sampled is emitted for the source</li>
+ * </ul>
+ * The summary and warning Events are ordinary Events of the source's type, so alert definitions on Events still see
+ * the suppressed counts on the Server side.
+ * <p/>
+ * All methods are synchronized, since Events are published concurrently from the poller threads.
+ */
+class EventStormFilter {
+    private final long coalesceWindowMillis;
+    private final double tokensPerMilli;
+    private final int burst;
+    private final int sampleRate;
+    private final int maxTrackedEvents;
+
+    private final LinkedHashMap<EventKey, CoalescedEvent> coalescedEvents;
+    private final List<Event> pendingSummaries = new ArrayList<Event>();
+    private final Map<EventSource, SourceLimiter> limiters = new HashMap<EventSource, SourceLimiter>();
+
+    private final AtomicLong eventsAccepted = new AtomicLong();
+    private final AtomicLong eventsCoalesced = new AtomicLong();
+    private final AtomicLong eventsSampled = new AtomicLong();
+    private final AtomicLong eventsDropped = new AtomicLong();
+
+    /**
+     * @param coalesceWindowMillis the window within which identical Events are coalesced, 0 to disable coalescing
+     * @param eventsPerSecond the sustained rate of Events allowed per source, 0 to disable rate limiting
+     * @param burst the number of Events a source may publish at once before it is rate limited
+     * @param sampleRate once a source is rate limited, one in this many of its Events is kept
+     * @param maxTrackedEvents the maximum number of distinct Events tracked for coalescing
+     */
+    EventStormFilter(long coalesceWindowMillis, int eventsPerSecond, int burst, int sampleRate,
+        int maxTrackedEvents) {
+        this.coalesceWindowMillis = coalesceWindowMillis;
+        this.tokensPerMilli = eventsPerSecond / 1000.0;
+        this.burst = Math.max(burst, 1);
+        this.sampleRate = Math.max(sampleRate, 1);
+        this.maxTrackedEvents = maxTrackedEvents;
+        this.coalescedEvents = new LinkedHashMap<EventKey, CoalescedEvent>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<EventKey, CoalescedEvent> eldest) {
+                if (size() > EventStormFilter.this.maxTrackedEvents) {
+                    addSummary(eldest.getKey(), eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Filters the given Events, all of which are from the given source.
+     *
+     * @return the Events that should be added to the Event report
+     */
+    synchronized List<Event> filter(Iterable<Event> events, EventSource eventSource, long now) {
+        List<Event> accepted = new ArrayList<Event>();
+        SourceLimiter limiter = (this.tokensPerMilli > 0) ? getLimiter(eventSource, now) : null;
+        for (Event event : events) {
+            if (isCoalesced(event, eventSource, now)) {
+                this.eventsCoalesced.incrementAndGet();
+                continue;
+            }
+            if (limiter != null && !limiter.tryAcquire(now)) {
+                limiter.overLimit++;
+                if (this.sampleRate > 1 && (limiter.overLimit % this.sampleRate) != 1) {
+                    limiter.dropped++;
+                    this.eventsDropped.incrementAndGet();
+                    continue;
+                }
+                limiter.sampled++;
+                this.eventsSampled.incrementAndGet();
+            }
+            this.eventsAccepted.incrementAndGet();
+            accepted.add(event);
+        }
+        return accepted;
+    }
+
+    /**
+     * Returns the summary Events for coalesce windows that have expired and the warning Events for sources that had
+     * Events dropped since the last call. The returned Events carry their {@link EventSource}.
+     *
+     * @param flushAll if true, all coalesce windows are closed, regardless of whether they have expired
+     */
+    synchronized List<Event> flush(long now, boolean flushAll) {
+        for (Iterator<Map.Entry<EventKey, CoalescedEvent>> iterator = this.coalescedEvents.entrySet().iterator(); iterator
+            .hasNext();) {
+            Map.Entry<EventKey, CoalescedEvent> entry = iterator.next();
+            if (flushAll || (now - entry.getValue().windowStart) >= this.coalesceWindowMillis) {
+                addSummary(entry.getKey(), entry.getValue());
+                iterator.remove();
+            }
+        }
+
+        List<Event> events = new ArrayList<Event>(this.pendingSummaries);
+        this.pendingSummaries.clear();
+
+        for (Iterator<Map.Entry<EventSource, SourceLimiter>> iterator = this.limiters.entrySet().iterator(); iterator
+            .hasNext();) {
+            Map.Entry<EventSource, SourceLimiter> entry = iterator.next();
+            SourceLimiter limiter = entry.getValue();
+            if (limiter.dropped > 0) {
+                EventSource eventSource = entry.getKey();
+                String detail = "Event Rate Limit Reached: more than " + Math.round(this.tokensPerMilli * 1000)
+                    + " events per second from this event source - dropped [" + limiter.dropped + "] and sampled ["
+                    + limiter.sampled + "] events";
+                events.add(new Event(eventSource.getEventDefinition().getName(), eventSource.getLocation(), now,
+                    EventSeverity.WARN, detail, eventSource));
+            } else if (limiter.isIdle(now)) {
+                // a full bucket is equivalent to no bucket - don't keep limiters around for sources that went away
+                iterator.remove();
+                continue;
+            }
+            limiter.dropped = 0;
+            limiter.sampled = 0;
+            limiter.overLimit = 0;
+        }
+
+        return events;
+    }
+
+    long getEventsAccepted() {
+        return this.eventsAccepted.get();
+    }
+
+    long getEventsCoalesced() {
+        return this.eventsCoalesced.get();
+    }
+
+    long getEventsSampled() {
+        return this.eventsSampled.get();
+    }
+
+    long getEventsDropped() {
+        return this.eventsDropped.get();
+    }
+
+    private boolean isCoalesced(Event event, EventSource eventSource, long now) {
+        if (this.coalesceWindowMillis <= 0) {
+            return false;
+        }
+        EventKey key = new EventKey(eventSource, event.getSeverity(), event.getDetail());
+        CoalescedEvent coalesced = this.coalescedEvents.get(key);
+        if (coalesced != null) {
+            if ((now - coalesced.windowStart) < this.coalesceWindowMillis) {
+                coalesced.repeatCount++;
+                coalesced.lastTimestamp = event.getTimestamp();
+                return true;
+            }
+            // The window has expired - close it and let this Event open a new one.
+            addSummary(key, coalesced);
+        }
+        this.coalescedEvents.put(key, new CoalescedEvent(now, event.getTimestamp()));
+        return false;
+    }
+
+    private void addSummary(EventKey key, CoalescedEvent coalesced) {
+        if (coalesced.repeatCount == 0) {
+            return;
+        }
+        String detail = "[Repeated " + coalesced.repeatCount + " more time(s) within "
+            + (this.coalesceWindowMillis / 1000) + " seconds]\n" + key.detail;
+        this.pendingSummaries.add(new Event(key.source.getEventDefinition().getName(), key.source.getLocation(),
+            coalesced.lastTimestamp, key.severity, detail, key.source));
+    }
+
+    private SourceLimiter getLimiter(EventSource eventSource, long now) {
+        SourceLimiter limiter = this.limiters.get(eventSource);
+        if (limiter == null) {
+            limiter = new SourceLimiter(this.burst, now);
+            this.limiters.put(eventSource, limiter);
+        }
+        return limiter;
+    }
+
+    private class SourceLimiter {
+        double tokens;
+        long lastRefill;
+        int overLimit;
+        int sampled;
+        int dropped;
+
+        SourceLimiter(int tokens, long now) {
+            this.tokens = tokens;
+            this.lastRefill = now;
+        }
+
+        boolean tryAcquire(long now) {
+            refill(now);
+            if (this.tokens >= 1) {
+                this.tokens -= 1;
+                return true;
+            }
+            return false;
+        }
+
+        boolean isIdle(long now) {
+            refill(now);
+            return this.tokens >= burst;
+        }
+
+        private void refill(long now) {
+            if (now > this.lastRefill) {
+                this.tokens = Math.min(burst, this.tokens + ((now - this.lastRefill) * tokensPerMilli));
+                this.lastRefill = now;
+            }
+        }
+    }
+
+    private static class CoalescedEvent {
+        final long windowStart;
+        long lastTimestamp;
+        int repeatCount;
+
+        CoalescedEvent(long windowStart, long timestamp) {
+            this.windowStart = windowStart;
+            this.lastTimestamp = timestamp;
+        }
+    }
+
+    private static class EventKey {
+        final EventSource source;
+        final EventSeverity severity;
+        final String detail;
+        private final int hashCode;
+
+        EventKey(EventSource source, EventSeverity severity, String detail) {
+            this.source = source;
+            this.severity = severity;
+            this.detail = detail;
+            int result = source.hashCode();
+            result = 31 * result + severity.hashCode();
+            result = 31 * result + detail.hashCode();
+            this.hashCode = result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof EventKey)) {
+                return false;
+            }
+            EventKey that = (EventKey) obj;
+            return this.hashCode == that.hashCode && this.severity == that.severity
+                && this.detail.equals(that.detail) && this.source.equals(that.source);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.core.pc.inventory;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps track of the facet method invocations that {@link ResourceContainer} proxies hand off to its invoker threads:
+ * how many are in flight, how many completed, failed, timed out or were rejected because the plugin already had too
+ * many invocations in progress, and a latency histogram. The statistics are kept per facet interface.
+ * <p/>
+ * All methods are thread safe and lock free, so recording statistics adds no contention to the invocations.
+ */
+public class FacetInvocationStatistics {
+
+    /**
+     * The upper bounds, in milliseconds, of the latency histogram buckets. There is one more bucket, for invocations
+     * that took longer than the last bound.
+     */
+    public static final long[] LATENCY_BUCKET_LIMITS = { 10L, 100L, 1000L, 10000L, 60000L };
+
+    private final ConcurrentMap<String, FacetStatistics> statistics = new ConcurrentHashMap<String, FacetStatistics>();
+
+    void invocationStarted(Class<?> facetInterface) {
+        getFacetStatistics(facetInterface).inFlight.incrementAndGet();
+    }
+
+    void invocationEnded(Class<?> facetInterface, long durationMillis, boolean failed) {
+        FacetStatistics facetStatistics = getFacetStatistics(facetInterface);
+        facetStatistics.inFlight.decrementAndGet();
+        facetStatistics.invocations.incrementAndGet();
+        facetStatistics.totalTime.addAndGet(durationMillis);
+        if (failed) {
+            facetStatistics.failures.incrementAndGet();
+        }
+        int bucket = 0;
+        while (bucket < LATENCY_BUCKET_LIMITS.length && durationMillis > LATENCY_BUCKET_LIMITS[bucket]) {
+            bucket++;
+        }
+        facetStatistics.latencyHistogram.incrementAndGet(bucket);
+    }
+
+    void invocationTimedOut(Class<?> facetInterface) {
+        getFacetStatistics(facetInterface).timeouts.incrementAndGet();
+    }
+
+    void invocationRejected(Class<?> facetInterface) {
+        getFacetStatistics(facetInterface).rejections.incrementAndGet();
+    }
+
+    /**
+     * @return the statistics of all facets that have been invoked, keyed and sorted by facet interface name
+     */
+    public Map<String, FacetStatistics> getFacetStatistics() {
+        return new TreeMap<String, FacetStatistics>(this.statistics);
+    }
+
+    /**
+     * @return the number of facet invocations currently in progress, across all facets
+     */
+    public int getInFlight() {
+        int inFlight = 0;
+        for (FacetStatistics facetStatistics : this.statistics.values()) {
+            inFlight += facetStatistics.getInFlight();
+        }
+        return inFlight;
+    }
+
+    private FacetStatistics getFacetStatistics(Class<?> facetInterface) {
+        String name = facetInterface.getSimpleName();
+        FacetStatistics facetStatistics = this.statistics.get(name);
+        if (facetStatistics == null) {
+            facetStatistics = new FacetStatistics();
+            FacetStatistics existing = this.statistics.putIfAbsent(name, facetStatistics);
+            if (existing != null) {
+                facetStatistics = existing;
+            }
+        }
+        return facetStatistics;
+    }
+
+    public static class FacetStatistics {
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong invocations = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong timeouts = new AtomicLong();
+        private final AtomicLong rejections = new AtomicLong();
+        private final AtomicLong totalTime = new AtomicLong();
+        private final AtomicLongArray latencyHistogram = new AtomicLongArray(LATENCY_BUCKET_LIMITS.length + 1);
+
+        public int getInFlight() {
+            return this.inFlight.get();
+        }
+
+        /**
+         * @return the number of completed invocations, including those that failed or that the caller stopped
+         *         waiting for
+         */
+        public long getInvocations() {
+            return this.invocations.get();
+        }
+
+        public long getFailures() {
+            return this.failures.get();
+        }
+
+        /**
+         * @return the number of invocations the caller stopped waiting for because they exceeded their timeout
+         */
+        public long getTimeouts() {
+            return this.timeouts.get();
+        }
+
+        /**
+         * @return the number of invocations that were never started because the plugin's concurrency limit was
+         *         reached and no invocation completed before the caller's timeout expired
+         */
+        public long getRejections() {
+            return this.rejections.get();
+        }
+
+        /**
+         * @return the sum of the durations of all completed invocations, in milliseconds
+         */
+        public long getTotalTime() {
+            return this.totalTime.get();
+        }
+
+        /**
+         * @return the number of completed invocations per latency bucket - see {@link #LATENCY_BUCKET_LIMITS}
+         */
+        public long[] getLatencyHistogram() {
+            long[] histogram = new long[this.latencyHistogram.length()];
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] = this.latencyHistogram.get(i);
+            }
+            return histogram;
+        }
+    }
+}
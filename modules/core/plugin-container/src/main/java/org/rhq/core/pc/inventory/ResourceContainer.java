@@ -36,11 +36,15 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -105,6 +109,15 @@ public class ResourceContainer implements Serializable {
      */
     private static ExecutorService AVAIL_CHECK_THREAD_POOL;
 
+    /**
+     * Bulkheads that bound the number of facet invocations that can be in progress for any one plugin, so a hung
+     * managed resource can only tie up a bounded number of invoker threads. Keyed by plugin name.
+     */
+    private static final ConcurrentMap<String, Semaphore> PLUGIN_INVOCATION_PERMITS = new ConcurrentHashMap<String, Semaphore>();
+    private static int MAX_INVOCATIONS_PER_PLUGIN;
+
+    private static final FacetInvocationStatistics INVOCATION_STATISTICS = new FacetInvocationStatistics();
+
     // non-transient fields
     private final Resource resource;
     private SynchronizationState synchronizationState = SynchronizationState.NEW;
@@ -136,10 +149,67 @@ public class ResourceContainer implements Serializable {
         LoggingThreadFactory daemonFactory = new LoggingThreadFactory(DAEMON_THREAD_POOL_NAME, true);
         LoggingThreadFactory nonDaemonFactory = new LoggingThreadFactory(NON_DAEMON_THREAD_POOL_NAME, false);
         LoggingThreadFactory availCheckFactory = new LoggingThreadFactory(AVAIL_CHECK_THREAD_POOL_NAME, true);
-        DAEMON_THREAD_POOL = Executors.newCachedThreadPool(daemonFactory);
+        DAEMON_THREAD_POOL = null;
+        if (pcConfig.isFacetInvocationVirtualThreads()) {
+            DAEMON_THREAD_POOL = createVirtualThreadExecutor();
+        }
+        if (DAEMON_THREAD_POOL == null) {
+            DAEMON_THREAD_POOL = Executors.newCachedThreadPool(daemonFactory);
+        }
         NON_DAEMON_THREAD_POOL = Executors.newCachedThreadPool(nonDaemonFactory);
         AVAIL_CHECK_THREAD_POOL = Executors.newFixedThreadPool(pcConfig.getAvailabilityScanThreadPoolSize(),
             availCheckFactory);
+        MAX_INVOCATIONS_PER_PLUGIN = pcConfig.getFacetInvocationMaxPerPlugin();
+        PLUGIN_INVOCATION_PERMITS.clear();
+    }
+
+    /**
+     * Virtual threads (JDK 21+) make blocked facet invocations cheap. They are always daemon threads, so they can
+     * only replace the daemon invoker pool.
+     *
+     * @return an executor that runs each task in a new virtual thread, or null if the JVM does not support them
+     */
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            ExecutorService executor = (ExecutorService) factory.invoke(null);
+            LogFactory.getLog(ResourceContainer.class).info(
+                "Facet invocations that do not need a non-daemon thread will run in virtual threads.");
+            return executor;
+        } catch (Exception e) {
+            LogFactory.getLog(ResourceContainer.class).warn(
+                "Virtual threads were requested for facet invocations but are not supported by this JVM ["
+                + System.getProperty("java.version") + "] - using platform threads.");
+            return null;
+        }
+    }
+
+    /**
+     * @return the statistics of the facet invocations made through resource component proxies
+     */
+    public static FacetInvocationStatistics getFacetInvocationStatistics() {
+        return INVOCATION_STATISTICS;
+    }
+
+    /**
+     * @return the semaphore bounding the concurrent facet invocations of the plugin of the given resource, or null
+     *         if the number of concurrent invocations is not bounded
+     */
+    @Nullable
+    private static Semaphore getInvocationPermits(Resource resource) {
+        if (MAX_INVOCATIONS_PER_PLUGIN <= 0) {
+            return null;
+        }
+        String pluginName = resource.getResourceType().getPlugin();
+        Semaphore permits = PLUGIN_INVOCATION_PERMITS.get(pluginName);
+        if (permits == null) {
+            permits = new Semaphore(MAX_INVOCATIONS_PER_PLUGIN);
+            Semaphore existing = PLUGIN_INVOCATION_PERMITS.putIfAbsent(pluginName, permits);
+            if (existing != null) {
+                permits = existing;
+            }
+        }
+        return permits;
     }
 
     /**
@@ -644,15 +714,47 @@ public class ResourceContainer implements Serializable {
 
         private Object invokeInNewThreadWithLock(Method method, Object[] args) throws Throwable {
             ExecutorService threadPool = this.daemonThread ? DAEMON_THREAD_POOL : NON_DAEMON_THREAD_POOL;
-            ComponentInvocation componentInvocation = new ComponentInvocation(this.container, method, args, this.lock);
-            Future<?> future = threadPool.submit(componentInvocation);
+            long timeoutMillis = this.timeoutInSeconds * 1000L;
+            long startTime = System.currentTimeMillis();
+
+            // wait for the plugin's bulkhead to let us in - the time spent waiting counts towards the timeout
+            Semaphore permits = getInvocationPermits(this.container.getResource());
+            if (permits != null) {
+                boolean acquired;
+                try {
+                    acquired = permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(invokedMethodString(method, args, "was rudely interrupted."), e);
+                }
+                if (!acquired) {
+                    INVOCATION_STATISTICS.invocationRejected(this.facetInterface);
+                    String msg = invokedMethodString(method, args, "timed out after " + timeoutInSeconds
+                        + " seconds - plugin [" + this.container.getResource().getResourceType().getPlugin()
+                        + "] already has [" + MAX_INVOCATIONS_PER_PLUGIN + "] invocations in progress.");
+                    LOG.debug(msg);
+                    throw new TimeoutException(msg);
+                }
+            }
+
+            ComponentInvocation componentInvocation = new ComponentInvocation(this.container, method, args, this.lock,
+                this.facetInterface, permits);
+            Future<?> future;
+            try {
+                future = threadPool.submit(componentInvocation);
+            } catch (RuntimeException e) {
+                componentInvocation.cancelIfNotStarted();
+                throw e;
+            }
             try {
-                return future.get(this.timeoutInSeconds, TimeUnit.SECONDS);
+                long remainingMillis = timeoutMillis - (System.currentTimeMillis() - startTime);
+                return future.get(Math.max(remainingMillis, 1L), TimeUnit.MILLISECONDS);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 LOG.error("Thread [" + Thread.currentThread().getName() + "] was interrupted.");
                 if (this.transferInterrupt) {
                     future.cancel(true);
+                    componentInvocation.cancelIfNotStarted();
                     componentInvocation.markContextInterrupted();
                 }
                 throw new RuntimeException(invokedMethodString(method, args, "was rudely interrupted."), e);
@@ -662,12 +764,14 @@ public class ResourceContainer implements Serializable {
                 }
                 throw e.getCause();
             } catch (java.util.concurrent.TimeoutException e) {
+                INVOCATION_STATISTICS.invocationTimedOut(this.facetInterface);
                 String msg = invokedMethodString(method, args, "timed out after " + timeoutInSeconds
                     + " seconds - invocation thread will be interrupted.");
                 LOG.debug(msg);
                 Throwable cause = new Throwable();
                 cause.setStackTrace(componentInvocation.getStackTrace());
                 future.cancel(true);
+                componentInvocation.cancelIfNotStarted();
                 componentInvocation.markContextInterrupted();
                 if (LOG.isDebugEnabled()) {
                     LOG.debug(this.container.getFacetLockStatus());
@@ -708,15 +812,21 @@ public class ResourceContainer implements Serializable {
         private final Method method;
         private final Object[] args;
         private final Lock lock;
+        private final Class<?> facetInterface;
+        private final Semaphore permits;
+        private final AtomicBoolean startedOrCancelled = new AtomicBoolean();
         private final ComponentInvocationContextImpl componentInvocationContext;
         private final LocalContext localContext;
         private volatile Thread thread;
 
-        ComponentInvocation(ResourceContainer resourceContainer, Method method, Object[] args, Lock lock) {
+        ComponentInvocation(ResourceContainer resourceContainer, Method method, Object[] args, Lock lock,
+            Class<?> facetInterface, @Nullable Semaphore permits) {
             this.resourceContainer = resourceContainer;
             this.method = method;
             this.args = args;
             this.lock = lock;
+            this.facetInterface = facetInterface;
+            this.permits = permits;
             this.componentInvocationContext = (ComponentInvocationContextImpl) resourceContainer.getResourceContext()
                 .getComponentInvocationContext();
             localContext = new LocalContext();
@@ -732,7 +842,36 @@ public class ResourceContainer implements Serializable {
             return thread.getStackTrace();
         }
 
+        /**
+         * Makes sure this invocation will never run if it has not started yet, giving back its bulkhead permit.
+         */
+        public void cancelIfNotStarted() {
+            if (this.startedOrCancelled.compareAndSet(false, true) && this.permits != null) {
+                this.permits.release();
+            }
+        }
+
         public Object call() throws Exception {
+            if (!this.startedOrCancelled.compareAndSet(false, true)) {
+                return null; // the caller gave up on us before we even started
+            }
+            long startTime = System.currentTimeMillis();
+            boolean failed = true;
+            INVOCATION_STATISTICS.invocationStarted(this.facetInterface);
+            try {
+                Object result = callWithLock();
+                failed = false;
+                return result;
+            } finally {
+                INVOCATION_STATISTICS.invocationEnded(this.facetInterface, System.currentTimeMillis() - startTime,
+                    failed);
+                if (this.permits != null) {
+                    this.permits.release();
+                }
+            }
+        }
+
+        private Object callWithLock() throws Exception {
             this.thread = Thread.currentThread();
             if (this.lock != null) {
                 try {
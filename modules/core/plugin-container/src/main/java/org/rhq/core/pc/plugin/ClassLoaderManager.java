@@ -80,6 +80,12 @@ public class ClassLoaderManager {
      */
     private final Map<String, ClassLoader> pluginClassLoaders;
 
+    /**
+     * The classpaths of the plugin classloaders that were {@link #unpackPluginJar(String) unpacked} but not created
+     * yet. This map is keyed on plugin name.
+     */
+    private final Map<String, PluginClassLoader.Classpath> unpackedPluginClasspaths;
+
     /**
      * These are the classloaders that are to be used to load discovery components whose discovered
      * resources have parents that contain connection classes necessary for the discovery components
@@ -124,6 +130,7 @@ public class ClassLoaderManager {
 
         this.rootClassLoader = rootClassLoader;
         this.pluginClassLoaders = new HashMap<String, ClassLoader>();
+        this.unpackedPluginClasspaths = new HashMap<String, PluginClassLoader.Classpath>();
         this.resourceClassLoaders = new HashMap<CanonicalResourceKey, ClassLoader>();
         this.discoveryClassLoaders = new HashMap<String, ClassLoader>();
 
@@ -166,6 +173,12 @@ public class ClassLoaderManager {
         for (PluginClassLoader pluginClassLoader : toDestroyClassLoaders) {
             pluginClassLoader.destroy();
         }
+
+        // and the unpacked jars of the plugin classloaders that were never created
+        for (PluginClassLoader.Classpath classpath : unpackedPluginClasspaths.values()) {
+            classpath.destroy();
+        }
+        unpackedPluginClasspaths.clear();
     }
 
     @Override
@@ -207,6 +220,28 @@ public class ClassLoaderManager {
         return pluginDependencyGraph;
     }
 
+    /**
+     * Reads the plugin jar and unpacks its embedded jars, so that the plugin classloader can be created later, by
+     * {@link #obtainPluginClassLoader(String)}, without doing it then. This lets the plugin container find out that
+     * a plugin jar cannot be used when the plugin is deployed, while only creating the classloaders of the plugins
+     * that are actually used.
+     *
+     * @param pluginName the plugin whose jar is to be unpacked
+     * @throws PluginContainerException if the plugin jar cannot be read or unpacked
+     */
+    public synchronized void unpackPluginJar(String pluginName) throws PluginContainerException {
+        if (this.pluginClassLoaders.containsKey(pluginName) || this.unpackedPluginClasspaths.containsKey(pluginName)) {
+            return;
+        }
+        URL pluginJarUrl = this.pluginNamesUrls.get(pluginName);
+        if (pluginJarUrl == null) {
+            return; // this is mainly to support tests, the classloader will be the parent classloader
+        }
+        String pluginJarName = new File(pluginJarUrl.getPath()).getName();
+        this.unpackedPluginClasspaths.put(pluginName,
+            PluginClassLoader.unpack(pluginJarName, new URL[] { pluginJarUrl }, true, this.tmpDir));
+    }
+
     /**
      * Returns a plugin classloader (creating it if necessary) that contains the plugin jar and whose parent
      * classloader is that of the the classloader for the required (&ltdepends>) plugin. In other words,
@@ -240,7 +275,12 @@ public class ClassLoaderManager {
                         + pluginJarUrl + ']');
                 }
             }
-            cl = createClassLoader(pluginJarUrl, null, parentClassLoader);
+            PluginClassLoader.Classpath classpath = this.unpackedPluginClasspaths.remove(pluginName);
+            if (classpath != null) {
+                cl = PluginClassLoader.create(classpath, parentClassLoader);
+            } else {
+                cl = createClassLoader(pluginJarUrl, null, parentClassLoader);
+            }
             this.pluginClassLoaders.put(pluginName, cl);
         }
 
@@ -122,6 +122,42 @@ public class PluginClassLoader extends URLClassLoader {
      */
     public static PluginClassLoader create(String pluginJarName, URL[] pluginUrls, boolean unpackNestedJars,
         ClassLoader parent, File tmpDirectory) throws PluginContainerException {
+        return create(unpack(pluginJarName, pluginUrls, unpackNestedJars, tmpDirectory), parent);
+    }
+
+    /**
+     * Creates a classloader over a classpath that was already {@link #unpack(String, URL[], boolean, File) unpacked}.
+     * The classloader takes over the unpacked embedded jars, which it deletes when it is destroyed.
+     *
+     * @param classpath the unpacked classpath
+     * @param parent the parent classloader for the new classloader being created
+     *
+     * @return the new plugin classloader
+     */
+    public static PluginClassLoader create(Classpath classpath, ClassLoader parent) {
+        PluginClassLoader newLoader = new PluginClassLoader(classpath.getUrls(), parent);
+        newLoader.embeddedJarsDirectory = classpath.getEmbeddedJarsDirectory();
+        return newLoader;
+    }
+
+    /**
+     * Builds the classpath of a plugin classloader without creating the classloader. This is where the plugin jar is
+     * read, and its embedded jars are unpacked, so that a plugin jar that cannot be used is detected before the
+     * classloader is needed.
+     *
+     * @param pluginJarName the logical name of the plugin
+     * @param pluginUrls the first element is the location where the plugin jar can be found, the remaining
+     *                   are additional URLs to jars that will be added to the classpath
+     * @param unpackNestedJars if <code>true</code>, any lib/*.jar files found in the plugin jar
+     *                         are unpacked and put in the classpath. The additional jars are NEVER unpacked.
+     * @param tmpDirectory the directory where the unpacked nested jars are placed
+     *
+     * @return the classpath
+     *
+     * @throws PluginContainerException
+     */
+    public static Classpath unpack(String pluginJarName, URL[] pluginUrls, boolean unpackNestedJars,
+        File tmpDirectory) throws PluginContainerException {
         List<URL> classpathUrlList = new ArrayList<URL>();
         File unpackedDirectory = null;
         boolean processedPluginJar = false; // after the first URL is processed (which is the plugin jar) this will be true
@@ -142,10 +178,7 @@ public class PluginClassLoader extends URLClassLoader {
         }
 
         URL[] classpath = classpathUrlList.toArray(new URL[classpathUrlList.size()]);
-        PluginClassLoader newLoader = new PluginClassLoader(classpath, parent);
-        newLoader.embeddedJarsDirectory = unpackedDirectory;
-
-        return newLoader;
+        return new Classpath(classpath, unpackedDirectory);
     }
 
     /**
@@ -273,6 +306,38 @@ public class PluginClassLoader extends URLClassLoader {
         return tmpDir;
     }
 
+    /**
+     * The classpath of a plugin classloader, with the directory its embedded jars were unpacked to.
+     */
+    public static class Classpath {
+        private final URL[] urls;
+        private final File embeddedJarsDirectory;
+
+        Classpath(URL[] urls, File embeddedJarsDirectory) {
+            this.urls = urls;
+            this.embeddedJarsDirectory = embeddedJarsDirectory;
+        }
+
+        public URL[] getUrls() {
+            return urls;
+        }
+
+        public File getEmbeddedJarsDirectory() {
+            return embeddedJarsDirectory;
+        }
+
+        /**
+         * Deletes the unpacked embedded jars, for a classpath no classloader was created for.
+         */
+        public void destroy() {
+            try {
+                FileUtils.purge(embeddedJarsDirectory, true);
+            } catch (IOException e) {
+                LogFactory.getLog(PluginClassLoader.class).warn("Failed to purge embedded jars directory. Cause: " + e);
+            }
+        }
+    }
+
     @Override
     public String toString() {
         if (this.stringValue == null) {
@@ -41,11 +41,15 @@ public class PluginDescriptorLoader {
     private final Log log = LogFactory.getLog(PluginDescriptorLoader.class);
 
     private final URL pluginJarUrl;
-    private final ClassLoader pluginClassLoader;
+    private final String pluginName;
+    private final ClassLoaderManager classLoaderManager;
+    private volatile ClassLoader pluginClassLoader;
 
     public PluginDescriptorLoader(URL pluginJarUrl, ClassLoader pluginClassLoader) throws PluginContainerException {
 
         this.pluginJarUrl = pluginJarUrl;
+        this.pluginName = null;
+        this.classLoaderManager = null;
         this.pluginClassLoader = pluginClassLoader;
 
         if (log.isDebugEnabled()) {
@@ -53,8 +57,34 @@ public class PluginDescriptorLoader {
         }
     }
 
+    /**
+     * Creates a loader whose plugin classloader is only obtained from the classloader manager the first time it is
+     * needed. The plugin jar must already have been {@link ClassLoaderManager#unpackPluginJar(String) unpacked}, so
+     * that all that is left to do then is to create the classloader itself.
+     */
+    public PluginDescriptorLoader(URL pluginJarUrl, String pluginName, ClassLoaderManager classLoaderManager) {
+
+        this.pluginJarUrl = pluginJarUrl;
+        this.pluginName = pluginName;
+        this.classLoaderManager = classLoaderManager;
+
+        if (log.isDebugEnabled()) {
+            log.debug("Created " + toString());
+        }
+    }
+
     public ClassLoader getPluginClassLoader() {
-        return this.pluginClassLoader;
+        ClassLoader classLoader = this.pluginClassLoader;
+        if (classLoader == null && this.classLoaderManager != null) {
+            try {
+                classLoader = this.classLoaderManager.obtainPluginClassLoader(this.pluginName);
+            } catch (PluginContainerException e) {
+                throw new IllegalStateException("Cannot create the classloader for plugin [" + this.pluginName
+                    + "]", e);
+            }
+            this.pluginClassLoader = classLoader;
+        }
+        return classLoader;
     }
 
     /**
@@ -28,6 +28,11 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -42,6 +47,7 @@ import org.rhq.core.clientapi.descriptor.plugin.PluginDescriptor;
 import org.rhq.core.domain.plugin.Plugin;
 import org.rhq.core.pc.ContainerService;
 import org.rhq.core.pc.PluginContainerConfiguration;
+import org.rhq.core.pc.util.LoggingThreadFactory;
 import org.rhq.core.pluginapi.plugin.PluginContext;
 import org.rhq.core.pluginapi.plugin.PluginLifecycleListener;
 import org.rhq.core.system.SystemInfo;
@@ -53,6 +59,14 @@ import org.rhq.core.util.exception.ThrowableUtil;
  * {@link #getMetadataManager() metadata} found in all plugin descriptors from all loaded plugins. You can obtain a
  * loaded plugin's {@link PluginEnvironment environment}, including its classloader, from this object as well - see
  * {@link #getPlugin(String)}.
+ * <p/>
+ * The plugin descriptors are parsed concurrently. The plugins are then deployed one at a time, in the dependency order
+ * of the {@link PluginDependencyGraph}. Loading the metadata of the plugins of a same dependency level concurrently
+ * would not save time: {@link PluginMetadataManager#loadPlugin(PluginDescriptor)} is synchronized, and the parser it
+ * runs injects the types of a plugin into the types of the plugins it runs inside of, which may be at any level. The
+ * parsed descriptors are not cached across restarts either, since the generated JAXB descriptor classes are not
+ * serializable; the JAXB context and schemas shared by {@link AgentPluginDescriptorUtil} remove most of the repeated
+ * parsing cost instead.
  *
  * @author Greg Hinkle
  * @author Jason Dobies
@@ -88,9 +102,12 @@ public class PluginManager implements ContainerService {
     private final PluginLifecycleListenerManager pluginLifecycleListenerMgr;
     private final UpdateLoadedPlugins updateLoadedPlugins;
 
+    private long descriptorParseTime;
+    private long pluginLoadTime;
+
     /**
      * Finds all plugins using the plugin finder defined in the <code>pluginContainerConfiguration</code> and
-     * {@link #loadPlugin(java.net.URL, ClassLoader, org.rhq.core.clientapi.descriptor.plugin.PluginDescriptor) loads}
+     * {@link #loadPlugin(java.net.URL, org.rhq.core.clientapi.descriptor.plugin.PluginDescriptor) loads}
      * each plugin found.
      */
     public PluginManager(PluginContainerConfiguration pluginContainerConfiguration,
@@ -144,13 +161,16 @@ public class PluginManager implements ContainerService {
         }
 
         try {
+            long startTime = System.currentTimeMillis();
             Collection<URL> pluginUrls = finder.findPlugins();
 
-            // first, we need to parse all descriptors so we can build the dependency graph
+            // first, we need to parse all descriptors so we can build the dependency graph - the descriptors are
+            // independent of each other so they are parsed concurrently, but processed in the order they were found
+            Map<URL, Future<PluginDescriptor>> parsedDescriptors = parsePluginDescriptors(pluginUrls);
             for (URL url : pluginUrls) {
                 log.debug("Plugin found at: " + url);
                 try {
-                    PluginDescriptor descriptor = AgentPluginDescriptorUtil.loadPluginDescriptorFromUrl(url);
+                    PluginDescriptor descriptor = getParsedPluginDescriptor(parsedDescriptors.get(url));
                     if (!disabledPlugins.contains(descriptor.getName())) {
                         AgentPluginDescriptorUtil.addPluginToDependencyGraph(graph, descriptor);
                         pluginNamesUrls.put(descriptor.getName(), url);
@@ -165,17 +185,22 @@ public class PluginManager implements ContainerService {
                 }
             }
 
+            this.descriptorParseTime = System.currentTimeMillis() - startTime;
+            startTime = System.currentTimeMillis();
+
             // our graph is complete, get the order that we have to deploy the plugins
             List<String> deploymentOrder = graph.getDeploymentOrder();
 
-            // now deploy the plugins in the proper order, making sure we build the proper classloaders
+            // now deploy the plugins in the proper order - see the class javadoc for why this is done serially.
+            // The plugin jars are unpacked here, so that a plugin whose jar cannot be used is not deployed, along
+            // with the plugins depending on it; the classloaders themselves are only created when first needed.
             for (String nextPlugin : deploymentOrder) {
                 URL pluginUrl = pluginNamesUrls.get(nextPlugin);
 
                 try {
-                    ClassLoader pluginClassLoader = this.classLoaderManager.obtainPluginClassLoader(nextPlugin);
+                    this.classLoaderManager.unpackPluginJar(nextPlugin);
                     PluginDescriptor descriptor = descriptors.get(pluginUrl);
-                    loadPlugin(pluginUrl, pluginClassLoader, descriptor);
+                    loadPlugin(pluginUrl, descriptor);
                 } catch (Throwable t) {
                     // for some reason, the plugin failed to load - it will be ignored, and its depending plugins will also fail later
                     log.error("Plugin [" + nextPlugin + "] at [" + pluginUrl
@@ -185,6 +210,9 @@ public class PluginManager implements ContainerService {
             }
             log.info("Deployed plugins: " + this.loadedPlugins);
             metadataManager.cleanupDescriptors();
+            this.pluginLoadTime = System.currentTimeMillis() - startTime;
+            log.info("Parsed plugin descriptors in [" + this.descriptorParseTime + "]ms, loaded plugins in ["
+                + this.pluginLoadTime + "]ms");
         } catch (Exception e) {
             shutdown(); // have to clean up the environments (e.g. unpacked jars) we might have already created
             log.error("Error initializing plugin container", e);
@@ -192,6 +220,40 @@ public class PluginManager implements ContainerService {
         }
     }
 
+    /**
+     * Submits the parsing of the given plugin jars' descriptors to a short-lived thread pool.
+     *
+     * @return the pending parse results, keyed by plugin jar URL
+     */
+    private Map<URL, Future<PluginDescriptor>> parsePluginDescriptors(Collection<URL> pluginUrls) {
+        Map<URL, Future<PluginDescriptor>> parsedDescriptors = new HashMap<URL, Future<PluginDescriptor>>();
+        int threads = Math.max(1, Math.min(pluginUrls.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService threadPool = Executors.newFixedThreadPool(threads, new LoggingThreadFactory(
+            "PluginDescriptorParser", true));
+        try {
+            for (final URL url : pluginUrls) {
+                parsedDescriptors.put(url, threadPool.submit(new Callable<PluginDescriptor>() {
+                    public PluginDescriptor call() throws Exception {
+                        return AgentPluginDescriptorUtil.loadPluginDescriptorFromUrl(url);
+                    }
+                }));
+            }
+        } finally {
+            // already submitted parses still run to completion
+            threadPool.shutdown();
+        }
+        return parsedDescriptors;
+    }
+
+    private static PluginDescriptor getParsedPluginDescriptor(Future<PluginDescriptor> parsedDescriptor)
+        throws Throwable {
+        try {
+            return parsedDescriptor.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
     /**
      * @see ContainerService#shutdown()
      */
@@ -274,6 +336,20 @@ public class PluginManager implements ContainerService {
         return this.classLoaderManager;
     }
 
+    /**
+     * @return the time, in milliseconds, it took to find and parse all plugin descriptors
+     */
+    public long getDescriptorParseTime() {
+        return this.descriptorParseTime;
+    }
+
+    /**
+     * @return the time, in milliseconds, it took to load the metadata and initialize all parsed plugins
+     */
+    public long getPluginLoadTime() {
+        return this.pluginLoadTime;
+    }
+
     public String getAmpsVersion(String pluginName) {
         for (Plugin plugin : loadedPlugins) {
             if (plugin.getName().equals(pluginName)) {
@@ -287,18 +363,22 @@ public class PluginManager implements ContainerService {
      * This will create a {@link PluginEnvironment} for the plugin at the given URL. The plugin's descriptor is parsed.
      * Once this method returns, the plugin's components are ready to be created and used.
      *
+     * The plugin's jar must already be {@link ClassLoaderManager#unpackPluginJar(String) unpacked}. Its classloader is
+     * not created here, unless the plugin has a lifecycle listener that needs it - it is created the first time the
+     * plugin environment is asked for it.
+     *
      * @param  pluginUrl   the new plugin's jar location
-     * @param  classLoader the new plugin's classloader
      * @param  pluginDescriptor the already parsed plugin descriptor for this plugin
      * @throws PluginContainerException if the plugin fails to load
      */
-    private void loadPlugin(URL pluginUrl, ClassLoader classLoader, PluginDescriptor pluginDescriptor) throws PluginContainerException {
+    private void loadPlugin(URL pluginUrl, PluginDescriptor pluginDescriptor) throws PluginContainerException {
 
         if (log.isDebugEnabled()) {
-            log.debug("Loading plugin from [" + pluginUrl + "] in classloader [" + classLoader + "]...");
+            log.debug("Loading plugin from [" + pluginUrl + "]...");
         }
 
-        PluginDescriptorLoader pluginDescriptorLoader = new PluginDescriptorLoader(pluginUrl, classLoader);
+        PluginDescriptorLoader pluginDescriptorLoader = new PluginDescriptorLoader(pluginUrl,
+            pluginDescriptor.getName(), this.classLoaderManager);
         PluginEnvironment pluginEnvironment = new PluginEnvironment(pluginDescriptor.getName(), pluginDescriptorLoader);
         String pluginName = pluginEnvironment.getPluginName();
 
@@ -308,7 +388,7 @@ public class PluginManager implements ContainerService {
             PluginContext context = createPluginContext(pluginName);
             ClassLoader originalContextClassLoader = Thread.currentThread().getContextClassLoader();
             try {
-                Thread.currentThread().setContextClassLoader(classLoader);
+                Thread.currentThread().setContextClassLoader(pluginEnvironment.getPluginClassLoader());
                 overseer.initialize(context);
             } catch (Throwable t) {
                 throw new PluginContainerException("Plugin Lifecycle Listener failed to initialize plugin", t);
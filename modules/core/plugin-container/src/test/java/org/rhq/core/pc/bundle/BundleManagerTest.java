@@ -20,11 +20,15 @@
 package org.rhq.core.pc.bundle;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
@@ -74,6 +78,9 @@ import org.rhq.core.pluginapi.bundle.BundleFacet;
 import org.rhq.core.pluginapi.bundle.BundlePurgeRequest;
 import org.rhq.core.pluginapi.bundle.BundlePurgeResult;
 import org.rhq.core.pluginapi.inventory.ResourceContext;
+import org.rhq.core.util.MessageDigestGenerator;
+import org.rhq.core.util.file.FileUtil;
+import org.rhq.core.util.stream.StreamUtil;
 
 @Test
 public class BundleManagerTest {
@@ -229,6 +236,66 @@ public class BundleManagerTest {
 
     }
 
+    public void testUnchangedBundleFilesAreReused() throws Exception {
+        MockBundleServerService bundleService;
+        bundleService = (MockBundleServerService) pcConfig.getServerServices().getBundleServerService();
+        File bundleVersionsDir = new File(new MockResourceContext(im.bundleHandler).getTemporaryDirectory(),
+            "bundle-versions");
+        FileUtil.purge(bundleVersionsDir, true);
+
+        try {
+            BundleResourceDeployment oldDeployment = createBundleFilesDeployment(1001);
+            bundleService.addPackageVersion(1001, "unchanged.txt", "unchanged content");
+            bundleService.addPackageVersion(1001, "changed.txt", "old content");
+            mockBundleManager.absolutePathToAssert = getPath("/tmp/dest");
+            assertSuccess(mockBundleManager.schedule(new BundleScheduleRequest(oldDeployment)));
+            assertBundleDeploymentStatus(BundleDeploymentStatus.SUCCESS);
+            assert bundleService.downloadedFiles.equals(Arrays.asList("unchanged.txt", "changed.txt")) : "Downloaded "
+                + bundleService.downloadedFiles;
+
+            // the changed file has the same size as before, only its hash tells it apart
+            BundleResourceDeployment newDeployment = createBundleFilesDeployment(1002);
+            bundleService.addPackageVersion(1002, "unchanged.txt", "unchanged content");
+            bundleService.addPackageVersion(1002, "changed.txt", "new content");
+            bundleService.addPackageVersion(1002, "added.txt", "added content");
+            bundleService.downloadedFiles.clear();
+            bundleService.lastStatusLatch = new CountDownLatch(1);
+            assertSuccess(mockBundleManager.schedule(new BundleScheduleRequest(newDeployment)));
+            assertBundleDeploymentStatus(BundleDeploymentStatus.SUCCESS);
+            // only the changed and added files are transferred, the unchanged one is copied from the old version
+            assert bundleService.downloadedFiles.equals(Arrays.asList("changed.txt", "added.txt")) : "Downloaded "
+                + bundleService.downloadedFiles;
+
+            File newFilesDir = new File(bundleVersionsDir, "1002");
+            assertFileContent(new File(newFilesDir, "unchanged.txt"), "unchanged content");
+            assertFileContent(new File(newFilesDir, "changed.txt"), "new content");
+            assertFileContent(new File(newFilesDir, "added.txt"), "added content");
+
+            // the files of the old bundle version are only removed once the new ones are downloaded
+            assert !new File(bundleVersionsDir, "1001").exists() : "Old bundle version files were not cleaned up";
+        } finally {
+            FileUtil.purge(bundleVersionsDir, true);
+        }
+    }
+
+    private BundleResourceDeployment createBundleFilesDeployment(int bundleVersionId) {
+        BundleType bundleType = new BundleType("bundleTypeName", im.bundleHandlerType);
+        Bundle bundle = new Bundle("bundleName", bundleType, null, null);
+        BundleVersion bundleVersion = new BundleVersion("bundleVersionName", String.valueOf(bundleVersionId), bundle,
+            "");
+        bundleVersion.setId(bundleVersionId);
+        BundleDestination destination = new BundleDestination(bundle, "destName", null,
+            MockInventoryManager.BUNDLE_CONFIG_NAME_FS, getPath("/tmp/dest"));
+        BundleDeployment bundleDeployment = new BundleDeployment(bundleVersion, destination, "deploymentName");
+        return new BundleResourceDeployment(bundleDeployment, im.serverFS);
+    }
+
+    private void assertFileContent(File file, String content) throws Exception {
+        assert file.exists() : "Missing bundle file [" + file + "]";
+        String actual = new String(StreamUtil.slurp(new FileInputStream(file)), "UTF-8");
+        assert content.equals(actual) : "Bundle file [" + file + "] has content [" + actual + "]";
+    }
+
     private void assertSuccess(BundleScheduleResponse response) {
         assert response.isSuccess() : response;
     }
@@ -283,6 +350,26 @@ public class BundleManagerTest {
     private class MockBundleServerService implements BundleServerService {
         public BundleDeploymentStatus lastStatus = null;
         public CountDownLatch lastStatusLatch = new CountDownLatch(1);
+        public final Map<Integer, List<PackageVersion>> packageVersions = new HashMap<Integer, List<PackageVersion>>();
+        public final Map<PackageVersion, byte[]> packageBits = new HashMap<PackageVersion, byte[]>();
+        public final List<String> downloadedFiles = new ArrayList<String>();
+
+        public void addPackageVersion(int bundleVersionId, String fileName, String content) throws Exception {
+            byte[] bits = content.getBytes("UTF-8");
+            PackageVersion packageVersion = new PackageVersion();
+            packageVersion.setVersion(bundleVersionId + "-" + fileName);
+            packageVersion.setDisplayName(fileName);
+            packageVersion.setFileName(fileName);
+            packageVersion.setFileSize(Long.valueOf(bits.length));
+            packageVersion.setMD5(new MessageDigestGenerator(MessageDigestGenerator.MD5).calcDigestString(bits));
+            List<PackageVersion> list = packageVersions.get(bundleVersionId);
+            if (list == null) {
+                list = new ArrayList<PackageVersion>();
+                packageVersions.put(bundleVersionId, list);
+            }
+            list.add(packageVersion);
+            packageBits.put(packageVersion, bits);
+        }
 
         @Override
         public void addDeploymentHistory(int bundleDeploymentId, BundleResourceDeploymentHistory history) {
@@ -291,12 +378,23 @@ public class BundleManagerTest {
 
         @Override
         public long downloadPackageBits(PackageVersion packageVersion, OutputStream outputStream) {
-            return 0;
+            byte[] bits = packageBits.get(packageVersion);
+            if (bits == null) {
+                return 0;
+            }
+            downloadedFiles.add(packageVersion.getFileName());
+            try {
+                outputStream.write(bits);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return bits.length;
         }
 
         @Override
         public List<PackageVersion> getAllBundleVersionPackageVersions(int bundleVersionId) {
-            return new ArrayList<PackageVersion>(0);
+            List<PackageVersion> list = packageVersions.get(bundleVersionId);
+            return (list != null) ? list : new ArrayList<PackageVersion>(0);
         }
 
         @Override
@@ -20,7 +20,6 @@
 package org.rhq.core.pc.bundle;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 
@@ -35,7 +34,8 @@ public class MockAgentServiceStreamRemoter implements AgentServiceStreamRemoter
 
     @Override
     public OutputStream prepareOutputStream(OutputStream stream) {
-        return new ByteArrayOutputStream();
+        // the bundle file downloads are written straight to their files
+        return stream;
     }
 
 }
@@ -0,0 +1,96 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.core.pc.event;
+
+import java.io.Closeable;
+import java.util.Set;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.event.Event;
+import org.rhq.core.domain.resource.Resource;
+import org.rhq.core.pc.PluginContainerConfiguration;
+import org.rhq.core.pluginapi.event.EventPoller;
+
+@Test
+public class EventManagerTest {
+    private static final String EVENT_TYPE = "logEntry";
+    private static final String LOCATION = "/var/log/test.log";
+
+    private EventManager eventManager;
+    private Resource resource;
+
+    @BeforeMethod
+    public void createEventManager() {
+        eventManager = new EventManager(new PluginContainerConfiguration());
+        resource = new Resource(1);
+    }
+
+    public void testReplacedPollerIsClosed() {
+        ClosablePoller first = new ClosablePoller();
+        ClosablePoller second = new ClosablePoller();
+
+        eventManager.registerEventPoller(first, 60, resource, LOCATION);
+        eventManager.registerEventPoller(second, 60, resource, LOCATION);
+        assert first.closed : "The poller registered first for the source should have been closed";
+        assert !second.closed;
+
+        eventManager.unregisterEventPoller(resource, EVENT_TYPE, LOCATION);
+        assert second.closed;
+    }
+
+    public void testPollerRegisteredAgainIsNotClosed() {
+        ClosablePoller poller = new ClosablePoller();
+
+        eventManager.registerEventPoller(poller, 60, resource, LOCATION);
+        eventManager.registerEventPoller(poller, 60, resource, LOCATION);
+        assert !poller.closed : "A poller registered again should still be usable";
+    }
+
+    public void testPollersOfOtherSourcesAreNotClosed() {
+        ClosablePoller poller = new ClosablePoller();
+        ClosablePoller otherPoller = new ClosablePoller();
+
+        eventManager.registerEventPoller(poller, 60, resource, LOCATION);
+        eventManager.registerEventPoller(otherPoller, 60, resource, "/var/log/other.log");
+        assert !poller.closed;
+        assert !otherPoller.closed;
+    }
+
+    private static class ClosablePoller implements EventPoller, Closeable {
+        volatile boolean closed;
+
+        @Override
+        public String getEventType() {
+            return EVENT_TYPE;
+        }
+
+        @Override
+        public Set<Event> poll() {
+            return null;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
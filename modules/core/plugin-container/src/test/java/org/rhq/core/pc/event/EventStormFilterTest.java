@@ -0,0 +1,145 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.core.pc.event;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.event.Event;
+import org.rhq.core.domain.event.EventDefinition;
+import org.rhq.core.domain.event.EventSeverity;
+import org.rhq.core.domain.event.EventSource;
+import org.rhq.core.domain.resource.Resource;
+import org.rhq.core.domain.resource.ResourceCategory;
+import org.rhq.core.domain.resource.ResourceType;
+
+@Test
+public class EventStormFilterTest {
+    private static final String EVENT_TYPE = "logEntry";
+    private static final String LOCATION = "/var/log/test.log";
+
+    private EventSource eventSource;
+
+    @BeforeMethod
+    public void createEventSource() {
+        ResourceType resourceType = new ResourceType("type", "plugin", ResourceCategory.SERVER, null);
+        Resource resource = new Resource(1);
+        resource.setResourceType(resourceType);
+        eventSource = new EventSource(LOCATION, new EventDefinition(resourceType, EVENT_TYPE), resource);
+    }
+
+    public void testIdenticalEventsAreCoalesced() {
+        EventStormFilter filter = new EventStormFilter(60000L, 0, 0, 1, 100);
+
+        List<Event> accepted = filter.filter(events(1000, "same stack trace"), eventSource, 0L);
+        assert accepted.size() == 1 : accepted;
+        assert filter.getEventsCoalesced() == 999;
+
+        assert filter.flush(59999L, false).isEmpty() : "window has not expired yet";
+
+        List<Event> summaries = filter.flush(60000L, false);
+        assert summaries.size() == 1 : summaries;
+        Event summary = summaries.get(0);
+        assert summary.getSource().equals(eventSource);
+        assert summary.getSeverity() == EventSeverity.ERROR;
+        assert summary.getDetail().startsWith("[Repeated 999 more time(s)") : summary.getDetail();
+        assert summary.getDetail().endsWith("same stack trace") : summary.getDetail();
+
+        // a new window starts with the next occurrence
+        assert filter.filter(events(1, "same stack trace"), eventSource, 60001L).size() == 1;
+    }
+
+    public void testFlushAllClosesOpenWindows() {
+        EventStormFilter filter = new EventStormFilter(60000L, 0, 0, 1, 100);
+
+        filter.filter(events(5, "same stack trace"), eventSource, 0L);
+        assert filter.flush(1000L, false).isEmpty() : "window has not expired yet";
+
+        List<Event> summaries = filter.flush(1000L, true);
+        assert summaries.size() == 1 : summaries;
+        assert summaries.get(0).getDetail().startsWith("[Repeated 4 more time(s)") : summaries.get(0).getDetail();
+        assert filter.flush(60000L, false).isEmpty() : "the window was closed by the flush";
+    }
+
+    public void testDistinctEventsAreNotCoalesced() {
+        EventStormFilter filter = new EventStormFilter(60000L, 0, 0, 1, 100);
+
+        List<Event> events = new ArrayList<Event>();
+        for (int i = 0; i < 10; i++) {
+            events.add(event("message " + i));
+        }
+        assert filter.filter(events, eventSource, 0L).size() == 10;
+        assert filter.getEventsCoalesced() == 0;
+        assert filter.flush(60000L, false).isEmpty();
+    }
+
+    public void testRateLimitedSourceIsSampled() {
+        EventStormFilter filter = new EventStormFilter(0L, 10, 100, 10, 100);
+
+        List<Event> events = new ArrayList<Event>();
+        for (int i = 0; i < 1100; i++) {
+            events.add(event("message " + i));
+        }
+        List<Event> accepted = filter.filter(events, eventSource, 0L);
+        // the burst, plus one in ten of the remaining 1000
+        assert accepted.size() == 200 : accepted.size();
+        assert filter.getEventsSampled() == 100;
+        assert filter.getEventsDropped() == 900;
+
+        List<Event> warnings = filter.flush(1000L, false);
+        assert warnings.size() == 1 : warnings;
+        assert warnings.get(0).getSeverity() == EventSeverity.WARN;
+        assert warnings.get(0).getDetail().contains("dropped [900] and sampled [100]") : warnings.get(0).getDetail();
+
+        // one second later the bucket has refilled by ten tokens
+        events.clear();
+        for (int i = 0; i < 10; i++) {
+            events.add(event("later message " + i));
+        }
+        assert filter.filter(events, eventSource, 1000L).size() == 10;
+        assert filter.flush(1000L, false).isEmpty();
+    }
+
+    public void testEvictedCoalescedEventsAreSummarized() {
+        EventStormFilter filter = new EventStormFilter(60000L, 0, 0, 1, 1);
+
+        filter.filter(events(3, "first"), eventSource, 0L);
+        filter.filter(events(1, "second"), eventSource, 0L);
+
+        List<Event> summaries = filter.flush(0L, false);
+        assert summaries.size() == 1 : summaries;
+        assert summaries.get(0).getDetail().startsWith("[Repeated 2 more time(s)") : summaries.get(0).getDetail();
+    }
+
+    private List<Event> events(int count, String detail) {
+        List<Event> events = new ArrayList<Event>(count);
+        for (int i = 0; i < count; i++) {
+            events.add(event(detail));
+        }
+        return events;
+    }
+
+    private Event event(String detail) {
+        return new Event(EVENT_TYPE, LOCATION, System.nanoTime(), EventSeverity.ERROR, detail);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.core.pc.inventory;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.pc.inventory.FacetInvocationStatistics.FacetStatistics;
+import org.rhq.core.pluginapi.measurement.MeasurementFacet;
+import org.rhq.core.pluginapi.operation.OperationFacet;
+
+@Test
+public class FacetInvocationStatisticsTest {
+
+    public void testInvocationsAreCountedPerFacet() {
+        FacetInvocationStatistics statistics = new FacetInvocationStatistics();
+
+        statistics.invocationStarted(MeasurementFacet.class);
+        statistics.invocationStarted(MeasurementFacet.class);
+        statistics.invocationStarted(OperationFacet.class);
+        assert statistics.getInFlight() == 3;
+
+        statistics.invocationEnded(MeasurementFacet.class, 5L, false);
+        statistics.invocationEnded(MeasurementFacet.class, 500L, true);
+        statistics.invocationTimedOut(OperationFacet.class);
+        statistics.invocationRejected(OperationFacet.class);
+        assert statistics.getInFlight() == 1;
+
+        Map<String, FacetStatistics> facets = statistics.getFacetStatistics();
+        assert facets.keySet().equals(new TreeSet<String>(Arrays.asList("MeasurementFacet",
+            "OperationFacet"))) : facets.keySet();
+
+        FacetStatistics measurement = facets.get("MeasurementFacet");
+        assert measurement.getInFlight() == 0;
+        assert measurement.getInvocations() == 2;
+        assert measurement.getFailures() == 1;
+        assert measurement.getTotalTime() == 505L;
+
+        FacetStatistics operation = facets.get("OperationFacet");
+        assert operation.getInFlight() == 1;
+        assert operation.getInvocations() == 0;
+        assert operation.getTimeouts() == 1;
+        assert operation.getRejections() == 1;
+    }
+
+    public void testLatencyHistogramBuckets() {
+        FacetInvocationStatistics statistics = new FacetInvocationStatistics();
+        long[] durations = { 0L, 10L, 11L, 100L, 1000L, 9999L, 60000L, 60001L, 3600000L };
+        for (long duration : durations) {
+            statistics.invocationStarted(MeasurementFacet.class);
+            statistics.invocationEnded(MeasurementFacet.class, duration, false);
+        }
+
+        long[] histogram = statistics.getFacetStatistics().get("MeasurementFacet").getLatencyHistogram();
+        assert histogram.length == FacetInvocationStatistics.LATENCY_BUCKET_LIMITS.length + 1;
+        assert Arrays.equals(histogram, new long[] { 2L, 2L, 1L, 1L, 1L, 2L }) : Arrays.toString(histogram);
+    }
+}
@@ -114,6 +114,34 @@ public class PluginManagerTest {
         verifyPluginsShutdownInCorrectOrder(pluginLifecycleListenerMgr);
     }
 
+    @Test
+    public void pluginClassLoadersShouldBeCreatedWhenFirstNeeded() throws Exception {
+        PluginContainerConfiguration configuration = createConfiguration();
+
+        // without lifecycle listeners, nothing needs the plugin classloaders while the plugins are deployed
+        FakePluginLifecycleListenerManager pluginLifecycleListenerMgr = new FakePluginLifecycleListenerManager() {
+            @Override
+            public PluginLifecycleListener loadListener(PluginDescriptor pluginDescriptor,
+                PluginEnvironment pluginEnvironment) {
+                return null;
+            }
+        };
+
+        PluginManager pluginMgr = new PluginManager(configuration, pluginLifecycleListenerMgr);
+        try {
+            verifyThatPluginsAreLoaded(pluginMgr);
+            ClassLoaderManager classLoaderMgr = pluginMgr.getClassLoaderManager();
+            assertEquals(classLoaderMgr.getNumberOfPluginClassLoaders(), 0,
+                "Expected no plugin classloader to be created while deploying the plugins.");
+
+            assertNotNull(pluginMgr.getPlugin(descriptorA.getName()).getPluginClassLoader());
+            assertEquals(classLoaderMgr.getNumberOfPluginClassLoaders(), 1,
+                "Expected the classloader of " + descriptorA.getName() + " to be created once asked for.");
+        } finally {
+            pluginMgr.shutdown();
+        }
+    }
+
     private PluginContainerConfiguration createConfiguration() {
         PluginContainerConfiguration configuration = new PluginContainerConfiguration();
         configuration.setPluginFinder(new PluginFinder() {
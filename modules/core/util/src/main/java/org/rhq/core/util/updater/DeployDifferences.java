@@ -39,6 +39,10 @@ import java.util.Set;
  * use this as a realtime listener of events happening during a live
  * deployment; instead, use this as a final report of what happened
  * after a deployment has been completed.
+ * <p/>
+ * The mutators are synchronized since the files of a deployment may be laid
+ * down concurrently. The returned collections are not - read them only after
+ * the deployment has completed.
  * 
  * @author John Mazzitelli
  */
@@ -53,95 +57,95 @@ public class DeployDifferences {
     private final Map<String, String> errors = new HashMap<String, String>();
     private boolean cleaned = false;
 
-    public void addIgnoredFile(String path) {
+    public synchronized void addIgnoredFile(String path) {
         this.ignoredFiles.add(convertPath(path));
     }
 
-    public void addIgnoredFiles(Collection<String> paths) {
+    public synchronized void addIgnoredFiles(Collection<String> paths) {
         for (String path : paths) {
             addIgnoredFile(path);
         }
     }
 
-    public void removeIgnoredFile(String path) {
+    public synchronized void removeIgnoredFile(String path) {
         this.ignoredFiles.remove(convertPath(path));
     }
 
-    public boolean containsIgnoredFile(String path) {
+    public synchronized boolean containsIgnoredFile(String path) {
         return this.ignoredFiles.contains(convertPath(path));
     }
 
-    public void addDeletedFile(String path) {
+    public synchronized void addDeletedFile(String path) {
         this.deletedFiles.add(convertPath(path));
     }
 
-    public void addDeletedFiles(Collection<String> paths) {
+    public synchronized void addDeletedFiles(Collection<String> paths) {
         for (String path : paths) {
             addDeletedFile(path);
         }
     }
 
-    public void removeDeletedFile(String path) {
+    public synchronized void removeDeletedFile(String path) {
         this.deletedFiles.remove(convertPath(path));
     }
 
-    public boolean containsDeletedFile(String path) {
+    public synchronized boolean containsDeletedFile(String path) {
         return this.deletedFiles.contains(convertPath(path));
     }
 
-    public void addAddedFile(String path) {
+    public synchronized void addAddedFile(String path) {
         this.addedFiles.add(convertPath(path));
     }
 
-    public void addAddedFiles(Collection<String> paths) {
+    public synchronized void addAddedFiles(Collection<String> paths) {
         for (String path : paths) {
             addAddedFile(path);
         }
     }
 
-    public void removeAddedFile(String path) {
+    public synchronized void removeAddedFile(String path) {
         this.addedFiles.remove(convertPath(path));
     }
 
-    public boolean containsAddedFile(String path) {
+    public synchronized boolean containsAddedFile(String path) {
         return this.addedFiles.contains(convertPath(path));
     }
 
-    public void addChangedFile(String path) {
+    public synchronized void addChangedFile(String path) {
         this.changedFiles.add(convertPath(path));
     }
 
-    public void addChangedFiles(Collection<String> paths) {
+    public synchronized void addChangedFiles(Collection<String> paths) {
         for (String path : paths) {
             addChangedFile(path);
         }
     }
 
-    public void removeChangedFile(String path) {
+    public synchronized void removeChangedFile(String path) {
         this.changedFiles.remove(convertPath(path));
     }
 
-    public boolean containsChangedFile(String path) {
+    public synchronized boolean containsChangedFile(String path) {
         return this.changedFiles.contains(convertPath(path));
     }
 
-    public void addBackedUpFile(String originalPath, String backupPath) {
+    public synchronized void addBackedUpFile(String originalPath, String backupPath) {
         this.backedUpFiles.put(convertPath(originalPath), convertPath(backupPath));
     }
 
-    public void addRestoredFile(String restoredPath, String backupPath) {
+    public synchronized void addRestoredFile(String restoredPath, String backupPath) {
         this.restoredFiles.put(convertPath(restoredPath), convertPath(backupPath));
     }
 
-    public void addRealizedFile(String path, String content) {
+    public synchronized void addRealizedFile(String path, String content) {
         this.realizedFiles.put(convertPath(path), content);
     }
 
-    public void addError(String path, String errorMsg) {
+    public synchronized void addError(String path, String errorMsg) {
         this.errors.put(convertPath(path), errorMsg);
     }
 
-    public void setCleaned(boolean cleaned) {
+    public synchronized void setCleaned(boolean cleaned) {
         this.cleaned = cleaned;
     }
 
@@ -240,12 +244,12 @@ public class DeployDifferences {
      *  
      * @return the cleaned flag
      */
-    public boolean wasCleaned() {
+    public synchronized boolean wasCleaned() {
         return cleaned;
     }
 
     @Override
-    public String toString() {
+    public synchronized String toString() {
         StringBuilder str = new StringBuilder();
         str.append("added=").append(this.addedFiles).append('\n');
         str.append("deleted=").append(this.deletedFiles).append('\n');
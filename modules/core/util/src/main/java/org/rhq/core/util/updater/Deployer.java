@@ -30,15 +30,27 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
@@ -96,6 +108,15 @@ import org.rhq.core.util.stream.StreamUtil;
  * @author John Mazzitelli
  */
 public class Deployer {
+    /**
+     * System property that defines how many threads are used to lay down a deployment's files. 1 (or less) makes
+     * deployments fully sequential. Archives and raw files are laid down concurrently, and the entries of an archive,
+     * which are inflated one after the other, are hashed and written on the same threads.
+     */
+    public static final String DEPLOYER_THREADS_PROPERTY = "rhq.updater.deployer.threads";
+
+    private static final int MAX_DEFAULT_DEPLOYER_THREADS = 8;
+
     private final Log log = LogFactory.getLog(Deployer.class);
 
     private final DeploymentData deploymentData;
@@ -713,7 +734,7 @@ public class Deployer {
                     if (fileToBackup.isDirectory()) {
                         bakFile.mkdir();
                     } else {
-                        FileUtil.copyFile(fileToBackup, bakFile);
+                        transferFile(fileToBackup, bakFile);
                     }
                     deleted = fileToBackup.delete();
                     if (deleted == false) {
@@ -729,7 +750,8 @@ public class Deployer {
                 if (fileToBackup.isDirectory()) {
                     bakFile.mkdir();
                 } else {
-                    FileUtil.copyFile(fileToBackup, bakFile);
+                    // the original stays in place - and will be overwritten in place - so this needs a true copy
+                    transferFile(fileToBackup, bakFile);
                 }
             }
         } else {
@@ -751,6 +773,30 @@ public class Deployer {
         return;
     }
 
+    /**
+     * Copies a file by letting the channels transfer the bytes, which avoids copying the content through a buffer in
+     * the JVM heap and is therefore considerably cheaper for large files than a stream copy.
+     */
+    private static void transferFile(File inFile, File outFile) throws IOException {
+        FileInputStream in = new FileInputStream(inFile);
+        try {
+            FileOutputStream out = new FileOutputStream(outFile);
+            try {
+                FileChannel inChannel = in.getChannel();
+                FileChannel outChannel = out.getChannel();
+                long size = inChannel.size();
+                long position = 0;
+                while (position < size) {
+                    position += inChannel.transferTo(position, size - position, outChannel);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
     private void backupFiles(DeployDifferences diff, int deploymentId, File dirToBackup, boolean dryRun,
         String relativeTo, boolean removeSourceFiles) throws Exception {
         File[] files = dirToBackup.listFiles();
@@ -777,209 +823,404 @@ public class Deployer {
         }
     }
 
-    private FileHashcodeMap extractZipAndRawFiles(Map<String, String> currentFilesToLeaveAlone, DeployDifferences diff,
-        boolean dryRun) throws Exception {
+    private FileHashcodeMap extractZipAndRawFiles(final Map<String, String> currentFilesToLeaveAlone,
+        final DeployDifferences diff, final boolean dryRun) throws Exception {
 
         // NOTE: right now, this only adds "diffs" to the "realized" file set, no need to track "added" or "changed" here
         FileHashcodeMap newFileHashCodeMap = new FileHashcodeMap();
 
         // get information about the source dir - will be needed if we were told to not explode a zip
         String sourceDirAbsPath = this.deploymentData.getSourceDir().getAbsolutePath();
-        int sourceDirLength = sourceDirAbsPath.length();
-
-        // extract all zip files
-        ExtractorZipFileVisitor visitor;
-        for (Map.Entry<File, File> zipFileEntry : this.deploymentData.getZipFilesMap().entrySet()) {
-            File zipFile = zipFileEntry.getKey();
+        final int sourceDirLength = sourceDirAbsPath.length();
+
+        // Archives and raw files are laid down on a bounded pool. The zips are processed first, then the raw files,
+        // just like a sequential deployment would, and the results of each phase are merged in their original order.
+        // A phase falls back to sequential processing if its units of work could write to the same files.
+        // The entries of an archive are inflated from a single ZipInputStream, and hashed and written on the pool.
+        int threads = getDeployerThreadCount();
+        ExecutorService threadPool = (threads > 1) ? Executors.newFixedThreadPool(threads, new DeployerThreadFactory())
+            : null;
+        final ExecutorService entryPool = threadPool;
+        try {
+            // extract all zip files
+            List<Callable<FileHashcodeMap>> zipTasks = new ArrayList<Callable<FileHashcodeMap>>();
+            for (final Map.Entry<File, File> zipFileEntry : this.deploymentData.getZipFilesMap().entrySet()) {
+                zipTasks.add(new Callable<FileHashcodeMap>() {
+                    public FileHashcodeMap call() throws Exception {
+                        return extractZipFile(zipFileEntry.getKey(), zipFileEntry.getValue(),
+                            currentFilesToLeaveAlone, diff, dryRun, sourceDirLength, entryPool);
+                    }
+                });
+            }
+            boolean parallelZips = (threadPool != null) && zipTasks.size() > 1 && areZipFilesIndependent();
+            for (FileHashcodeMap zipFileHashcodeMap : invokeAll(parallelZips ? threadPool : null, zipTasks)) {
+                newFileHashCodeMap.putAll(zipFileHashcodeMap);
+            }
 
-            Boolean exploded = this.deploymentData.getZipsExploded().get(zipFile);
-            if (exploded == null) {
-                exploded = Boolean.TRUE; // the default is to explode the archive
+            // copy all raw files
+            final FileHashcodeMap pathConverter = newFileHashCodeMap;
+            List<Callable<String[]>> rawFileTasks = new ArrayList<Callable<String[]>>();
+            for (final Map.Entry<File, File> rawFile : this.deploymentData.getRawFiles().entrySet()) {
+                rawFileTasks.add(new Callable<String[]>() {
+                    public String[] call() throws Exception {
+                        return copyRawFile(rawFile.getKey(), rawFile.getValue(), currentFilesToLeaveAlone, diff,
+                            dryRun, pathConverter);
+                    }
+                });
+            }
+            boolean parallelRawFiles = (threadPool != null) && rawFileTasks.size() > 1 && areRawFilesIndependent();
+            for (String[] pathAndHashcode : invokeAll(parallelRawFiles ? threadPool : null, rawFileTasks)) {
+                if (pathAndHashcode != null) {
+                    // remember where the file is now and what its hashcode is
+                    newFileHashCodeMap.put(pathAndHashcode[0], pathAndHashcode[1]);
+                }
+            }
+        } finally {
+            if (threadPool != null) {
+                threadPool.shutdownNow();
             }
+        }
 
-            debug("Extracting zip [", zipFile, "] entries. exploded=", exploded, ", dryRun=", dryRun);
+        newFileHashCodeMap.putAll(currentFilesToLeaveAlone); // remember that these are still there
 
-            Pattern realizeRegex = null;
-            if (this.deploymentData.getZipEntriesToRealizeRegex() != null) {
-                realizeRegex = this.deploymentData.getZipEntriesToRealizeRegex().get(zipFile);
-            }
+        if (!dryRun) {
+            this.deploymentsMetadata.setCurrentDeployment(this.deploymentData.getDeploymentProps(), newFileHashCodeMap,
+                true);
+        }
 
-            // Note: there is a requirement that all zip files must be located in the sourceDir - this is why. We
-            // need the path of the zip relative to the source dir so we can copy it to the same relative location
-            // under the destination dir. Without doing this, if the zip is in a subdirectory, we won't know where to
-            // put it under the destination dir.
+        return newFileHashCodeMap;
+    }
 
-            File destinationDir = this.deploymentData.getDestinationDir();
-            File zipDestinationDir = zipFileEntry.getValue();
+    /**
+     * Extracts (or copies, if it is not to be exploded) a single zip file.
+     *
+     * @param entryPool if not <code>null</code>, the pool the entries of the zip are hashed and written on
+     *
+     * @return the file/hashcode data of the files laid down from the zip
+     */
+    private FileHashcodeMap extractZipFile(File zipFile, File zipDestinationDir,
+        Map<String, String> currentFilesToLeaveAlone, DeployDifferences diff, boolean dryRun, int sourceDirLength,
+        ExecutorService entryPool) throws Exception {
 
-            if (null != zipDestinationDir) {
-                // reset the destinationDir to the specified override.  Note that the override is already a safe path,
-                // preprocessed to remove ".." in DeploymentData.init().
-                destinationDir = zipDestinationDir.isAbsolute() ? zipDestinationDir : new File(destinationDir,
-                    zipDestinationDir.getPath());
-            }
+        FileHashcodeMap newFileHashCodeMap = new FileHashcodeMap();
+        ExtractorZipFileVisitor visitor;
 
-            if (exploded.booleanValue()) {
-                // EXPLODED
+        Boolean exploded = this.deploymentData.getZipsExploded().get(zipFile);
+        if (exploded == null) {
+            exploded = Boolean.TRUE; // the default is to explode the archive
+        }
 
-                visitor = new ExtractorZipFileVisitor(destinationDir, realizeRegex,
-                    this.deploymentData.getTemplateEngine(), currentFilesToLeaveAlone.keySet(), diff, dryRun);
-                ZipUtil.walkZipFile(zipFile, visitor);
-                // exploded into individual files
-                if (null == zipDestinationDir) {
-                    newFileHashCodeMap.putAll(visitor.getFileHashcodeMap());
-                } else {
-                    FileHashcodeMap visitorMap = visitor.getFileHashcodeMap();
-                    for (String file : visitorMap.keySet()) {
-                        newFileHashCodeMap.put(new File(destinationDir, file).getAbsolutePath(), visitorMap.get(file));
-                    }
-                }
+        debug("Extracting zip [", zipFile, "] entries. exploded=", exploded, ", dryRun=", dryRun);
 
-            } else {
-                // COMPRESSED
+        Pattern realizeRegex = getZipEntriesToRealizeRegex(zipFile);
 
-                File compressedFile = null;
-                String zipPath = null;
+        // Note: there is a requirement that all zip files must be located in the sourceDir - this is why. We
+        // need the path of the zip relative to the source dir so we can copy it to the same relative location
+        // under the destination dir. Without doing this, if the zip is in a subdirectory, we won't know where to
+        // put it under the destination dir.
 
-                if (null == zipDestinationDir) {
-                    String zipRelativePath = zipFile.getAbsolutePath().substring(sourceDirLength);
-                    if (zipRelativePath.startsWith("/") || zipRelativePath.startsWith("\\")) {
-                        zipRelativePath = zipRelativePath.substring(1);
-                    }
-                    compressedFile = new File(this.deploymentData.getDestinationDir(), zipRelativePath);
-                    zipPath = zipRelativePath;
+        File destinationDir = getZipDestinationDir(zipDestinationDir);
 
-                } else {
-                    compressedFile = new File(destinationDir, zipFile.getName());
-                    zipPath = compressedFile.getAbsolutePath();
+        if (exploded.booleanValue()) {
+            // EXPLODED
+
+            visitor = new ExtractorZipFileVisitor(destinationDir, realizeRegex, this.deploymentData.getTemplateEngine(),
+                currentFilesToLeaveAlone.keySet(), diff, dryRun, entryPool);
+            walkZipFile(zipFile, visitor);
+            // exploded into individual files
+            if (null == zipDestinationDir) {
+                newFileHashCodeMap.putAll(visitor.getFileHashcodeMap());
+            } else {
+                FileHashcodeMap visitorMap = visitor.getFileHashcodeMap();
+                for (String file : visitorMap.keySet()) {
+                    newFileHashCodeMap.put(new File(destinationDir, file).getAbsolutePath(), visitorMap.get(file));
                 }
+            }
 
-                if (this.deploymentData.getTemplateEngine() != null && realizeRegex != null) {
-                    // we need to explode it to perform the realization of templatized variables
-                    // TODO: can we do this in another tmp location and build the zip in the dest dir?
-                    visitor = new ExtractorZipFileVisitor(this.deploymentData.getDestinationDir(), realizeRegex,
-                        this.deploymentData.getTemplateEngine(), currentFilesToLeaveAlone.keySet(), diff, dryRun);
-                    ZipUtil.walkZipFile(zipFile, visitor);
-                    // we have to compress the file again - our new compressed file will have the new realized files in them
-                    if (!dryRun) {
-                        createZipFile(compressedFile, this.deploymentData.getDestinationDir(),
-                            visitor.getFileHashcodeMap());
-                    }
+        } else {
+            // COMPRESSED
+
+            File compressedFile = null;
+            String zipPath = null;
+
+            if (null == zipDestinationDir) {
+                String zipRelativePath = zipFile.getAbsolutePath().substring(sourceDirLength);
+                if (zipRelativePath.startsWith("/") || zipRelativePath.startsWith("\\")) {
+                    zipRelativePath = zipRelativePath.substring(1);
                 }
+                compressedFile = new File(this.deploymentData.getDestinationDir(), zipRelativePath);
+                zipPath = zipRelativePath;
 
-                // Copy the archive to the destination dir if we need to. Generate its hashcode and add it to the new file hashcode map
-                MessageDigestGenerator hashcodeGenerator = new MessageDigestGenerator();
-                String compressedFileHashcode;
+            } else {
+                compressedFile = new File(destinationDir, zipFile.getName());
+                zipPath = compressedFile.getAbsolutePath();
+            }
+
+            if (this.deploymentData.getTemplateEngine() != null && realizeRegex != null) {
+                // we need to explode it to perform the realization of templatized variables
+                // TODO: can we do this in another tmp location and build the zip in the dest dir?
+                visitor = new ExtractorZipFileVisitor(this.deploymentData.getDestinationDir(), realizeRegex,
+                    this.deploymentData.getTemplateEngine(), currentFilesToLeaveAlone.keySet(), diff, dryRun,
+                    entryPool);
+                walkZipFile(zipFile, visitor);
+                // we have to compress the file again - our new compressed file will have the new realized files in them
                 if (!dryRun) {
-                    if (!compressedFile.exists()) {
-                        if (compressedFile.getParentFile() != null) {
-                            compressedFile.getParentFile().mkdirs();
-                        }
-                        FileUtil.copyFile(zipFile, compressedFile);
+                    createZipFile(compressedFile, this.deploymentData.getDestinationDir(),
+                        visitor.getFileHashcodeMap());
+                }
+            }
+
+            // Copy the archive to the destination dir if we need to. Generate its hashcode and add it to the new file hashcode map
+            String compressedFileHashcode;
+            if (!dryRun) {
+                if (!compressedFile.exists()) {
+                    if (compressedFile.getParentFile() != null) {
+                        compressedFile.getParentFile().mkdirs();
                     }
-                    compressedFileHashcode = hashcodeGenerator.calcDigestString(compressedFile);
+                    // copy and hash in a single pass over the archive
+                    compressedFileHashcode = copyFileAndCalcHashcode(zipFile, compressedFile);
                 } else {
-                    // use source zip for hash - should be the same as the would-be compressed file since we aren't realizing files in it
-                    compressedFileHashcode = hashcodeGenerator.calcDigestString(zipFile);
+                    compressedFileHashcode = new MessageDigestGenerator().calcDigestString(compressedFile);
                 }
-                newFileHashCodeMap.put(zipPath, compressedFileHashcode);
+            } else {
+                // use source zip for hash - should be the same as the would-be compressed file since we aren't realizing files in it
+                compressedFileHashcode = new MessageDigestGenerator().calcDigestString(zipFile);
             }
+            newFileHashCodeMap.put(zipPath, compressedFileHashcode);
         }
 
-        // copy all raw files
-        StreamCopyDigest copyDigester = new StreamCopyDigest();
-        for (Map.Entry<File, File> rawFile : this.deploymentData.getRawFiles().entrySet()) {
-            // determine where the original file is and where it needs to go
-            File currentLocationFile = rawFile.getKey();
-            File newLocationFile = rawFile.getValue();
-            String newLocationPath = rawFile.getValue().getPath();
-            newLocationPath = newFileHashCodeMap.convertPath(newLocationPath);
-            if (currentFilesToLeaveAlone != null && currentFilesToLeaveAlone.containsKey(newLocationPath)) {
-                continue;
-            }
-            if (!newLocationFile.isAbsolute()) {
-                newLocationFile = new File(this.deploymentData.getDestinationDir(), newLocationFile.getPath());
-            }
+        return newFileHashCodeMap;
+    }
 
-            if (!dryRun) {
-                File newLocationParentDir = newLocationFile.getParentFile();
-                newLocationParentDir.mkdirs();
-                if (!newLocationParentDir.isDirectory()) {
-                    throw new Exception("Failed to create new parent directory for raw file [" + newLocationFile + "]");
-                }
+    /**
+     * Walks the zip file with the visitor, and waits for the entries it handed off to be written.
+     */
+    private void walkZipFile(File zipFile, ExtractorZipFileVisitor visitor) throws Exception {
+        boolean walked = false;
+        try {
+            ZipUtil.walkZipFile(zipFile, visitor);
+            walked = true;
+        } finally {
+            if (!walked) {
+                visitor.abort();
             }
+        }
+        visitor.finish();
+    }
 
-            String hashcode;
+    /**
+     * Copies (or realizes) a single raw file to its destination.
+     *
+     * @return the path under which the file is to be remembered and its hashcode, or <code>null</code> if the file
+     *         is to be left alone
+     */
+    private String[] copyRawFile(File currentLocationFile, File newLocationFile,
+        Map<String, String> currentFilesToLeaveAlone, DeployDifferences diff, boolean dryRun,
+        FileHashcodeMap pathConverter) throws Exception {
+
+        // determine where the original file is and where it needs to go
+        boolean absolute = newLocationFile.isAbsolute();
+        String newLocationPath = pathConverter.convertPath(newLocationFile.getPath());
+        if (currentFilesToLeaveAlone != null && currentFilesToLeaveAlone.containsKey(newLocationPath)) {
+            return null;
+        }
+        if (!absolute) {
+            newLocationFile = new File(this.deploymentData.getDestinationDir(), newLocationFile.getPath());
+        }
 
-            boolean realize = false;
-            if (this.deploymentData.getRawFilesToRealize() != null) {
-                realize = this.deploymentData.getRawFilesToRealize().contains(currentLocationFile);
+        if (!dryRun) {
+            File newLocationParentDir = newLocationFile.getParentFile();
+            newLocationParentDir.mkdirs();
+            if (!newLocationParentDir.isDirectory()) {
+                throw new Exception("Failed to create new parent directory for raw file [" + newLocationFile + "]");
             }
+        }
 
-            if (realize) {
-                debug("Realizing file [", currentLocationFile, "] to [", newLocationFile, "]. dryRun=", dryRun);
+        String hashcode;
 
-                // this entry needs to be realized, do it now in-memory (we assume realizable files will not be large)
-                // note: tempateEngine will never be null if we got here
-                FileInputStream in = new FileInputStream(currentLocationFile);
-                byte[] rawFileContent = StreamUtil.slurp(in);
-                String content = this.deploymentData.getTemplateEngine().replaceTokens(new String(rawFileContent));
+        boolean realize = false;
+        if (this.deploymentData.getRawFilesToRealize() != null) {
+            realize = this.deploymentData.getRawFilesToRealize().contains(currentLocationFile);
+        }
+
+        StreamCopyDigest copyDigester = new StreamCopyDigest();
+        if (realize) {
+            debug("Realizing file [", currentLocationFile, "] to [", newLocationFile, "]. dryRun=", dryRun);
+
+            // this entry needs to be realized, do it now in-memory (we assume realizable files will not be large)
+            // note: tempateEngine will never be null if we got here
+            FileInputStream in = new FileInputStream(currentLocationFile);
+            byte[] rawFileContent = StreamUtil.slurp(in);
+            String content = this.deploymentData.getTemplateEngine().replaceTokens(new String(rawFileContent));
 
-                if (diff != null) {
-                    diff.addRealizedFile(newLocationPath, content);
+            if (diff != null) {
+                diff.addRealizedFile(newLocationPath, content);
+            }
+
+            // now write the realized content to the filesystem
+            byte[] bytes = content.getBytes();
+
+            if (!dryRun) {
+                BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(newLocationFile));
+                try {
+                    out.write(bytes);
+                } finally {
+                    out.close();
                 }
+            }
 
-                // now write the realized content to the filesystem
-                byte[] bytes = content.getBytes();
+            MessageDigestGenerator hashcodeGenerator = copyDigester.getMessageDigestGenerator();
+            hashcodeGenerator.add(bytes);
+            hashcode = hashcodeGenerator.getDigestString();
+        } else {
+            debug("Copying raw file [", currentLocationFile, "] to [", newLocationFile, "]. dryRun=", dryRun);
 
+            FileInputStream in = new FileInputStream(currentLocationFile);
+            try {
                 if (!dryRun) {
                     BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(newLocationFile));
                     try {
-                        out.write(bytes);
+                        hashcode = copyDigester.copyAndCalculateHashcode(in, out);
                     } finally {
                         out.close();
                     }
+                } else {
+                    hashcode = MessageDigestGenerator.getDigestString(in);
                 }
+            } finally {
+                in.close();
+            }
+        }
 
-                MessageDigestGenerator hashcodeGenerator = copyDigester.getMessageDigestGenerator();
-                hashcodeGenerator.add(bytes);
-                hashcode = hashcodeGenerator.getDigestString();
-            } else {
-                debug("Copying raw file [", currentLocationFile, "] to [", newLocationFile, "]. dryRun=", dryRun);
+        if (absolute) {
+            return new String[] { newLocationFile.getAbsolutePath(), hashcode };
+        } else {
+            return new String[] { newLocationPath, hashcode };
+        }
+    }
 
-                FileInputStream in = new FileInputStream(currentLocationFile);
+    private Pattern getZipEntriesToRealizeRegex(File zipFile) {
+        if (this.deploymentData.getZipEntriesToRealizeRegex() != null) {
+            return this.deploymentData.getZipEntriesToRealizeRegex().get(zipFile);
+        }
+        return null;
+    }
+
+    private File getZipDestinationDir(File zipDestinationDir) {
+        File destinationDir = this.deploymentData.getDestinationDir();
+        if (null != zipDestinationDir) {
+            // reset the destinationDir to the specified override.  Note that the override is already a safe path,
+            // preprocessed to remove ".." in DeploymentData.init().
+            destinationDir = zipDestinationDir.isAbsolute() ? zipDestinationDir : new File(destinationDir,
+                zipDestinationDir.getPath());
+        }
+        return destinationDir;
+    }
+
+    /**
+     * Determines if the zip files can be laid down concurrently, i.e. no two zips write the same file and no zip
+     * needs to be temporarily exploded into the destination directory to realize its entries (the exploded content
+     * is purged after the zip is rebuilt, which could remove files written by other zips).
+     */
+    private boolean areZipFilesIndependent() throws Exception {
+        Set<File> destinations = new HashSet<File>();
+        for (Map.Entry<File, File> zipFileEntry : this.deploymentData.getZipFilesMap().entrySet()) {
+            File zipFile = zipFileEntry.getKey();
+            Boolean exploded = this.deploymentData.getZipsExploded().get(zipFile);
+            if (exploded == null || exploded.booleanValue()) {
+                File destinationDir = getZipDestinationDir(zipFileEntry.getValue());
+                ZipFile zip = new ZipFile(zipFile);
                 try {
-                    if (!dryRun) {
-                        BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(newLocationFile));
-                        try {
-                            hashcode = copyDigester.copyAndCalculateHashcode(in, out);
-                        } finally {
-                            out.close();
+                    for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements();) {
+                        ZipEntry entry = entries.nextElement();
+                        if (!entry.isDirectory() && !destinations.add(new File(destinationDir, entry.getName()))) {
+                            debug("Zip [", zipFile, "] overlaps other zips - zips will be extracted sequentially");
+                            return false;
                         }
-                    } else {
-                        hashcode = MessageDigestGenerator.getDigestString(in);
                     }
                 } finally {
-                    in.close();
+                    zip.close();
                 }
+            } else if (this.deploymentData.getTemplateEngine() != null && getZipEntriesToRealizeRegex(zipFile) != null) {
+                return false;
             }
+        }
+        return true;
+    }
 
-            // remember where the file is now and what its hashcode is
-            if (rawFile.getValue().isAbsolute()) {
-                newFileHashCodeMap.put(newLocationFile.getAbsolutePath(), hashcode);
-            } else {
-                newFileHashCodeMap.put(newLocationPath, hashcode);
+    /**
+     * Determines if the raw files can be copied concurrently, i.e. no two raw files have the same destination.
+     */
+    private boolean areRawFilesIndependent() {
+        Set<File> destinations = new HashSet<File>();
+        for (File newLocationFile : this.deploymentData.getRawFiles().values()) {
+            if (!newLocationFile.isAbsolute()) {
+                newLocationFile = new File(this.deploymentData.getDestinationDir(), newLocationFile.getPath());
+            }
+            if (!destinations.add(newLocationFile.getAbsoluteFile())) {
+                return false;
             }
         }
+        return true;
+    }
 
-        newFileHashCodeMap.putAll(currentFilesToLeaveAlone); // remember that these are still there
+    /**
+     * Runs the given tasks, on the thread pool if one is given or in the calling thread otherwise, and returns their
+     * results in the order of the tasks. If a task fails, the remaining tasks are cancelled and its exception thrown.
+     */
+    private <T> List<T> invokeAll(ExecutorService threadPool, List<Callable<T>> tasks) throws Exception {
+        List<T> results = new ArrayList<T>(tasks.size());
+        if (threadPool == null) {
+            for (Callable<T> task : tasks) {
+                results.add(task.call());
+            }
+            return results;
+        }
 
-        if (!dryRun) {
-            this.deploymentsMetadata.setCurrentDeployment(this.deploymentData.getDeploymentProps(), newFileHashCodeMap,
-                true);
+        List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+        for (Callable<T> task : tasks) {
+            futures.add(threadPool.submit(task));
+        }
+        try {
+            for (Future<T> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception) cause;
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
         }
+        return results;
+    }
 
-        return newFileHashCodeMap;
+    /**
+     * @return the number of threads to lay down the deployment with, defaults to the number of processors (max 8)
+     */
+    private int getDeployerThreadCount() {
+        int defaultThreads = Math.min(Runtime.getRuntime().availableProcessors(), MAX_DEFAULT_DEPLOYER_THREADS);
+        try {
+            return Integer.parseInt(System.getProperty(DEPLOYER_THREADS_PROPERTY, String.valueOf(defaultThreads)));
+        } catch (NumberFormatException e) {
+            return defaultThreads;
+        }
+    }
+
+    private static class DeployerThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Deployer-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
     }
 
     /**
@@ -26,7 +26,14 @@ package org.rhq.core.util.updater;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -40,10 +47,25 @@ import org.rhq.core.util.stream.StreamUtil;
 /**
  * A visitor object that will extract each zip entry it visits, realizing files that
  * need to have their replacement variables replaced.
+ * <p/>
+ * Entries are always inflated in the order of the zip stream. If the visitor is given an executor, the content of
+ * entries that are not realized and not larger than {@link #MAX_HANDED_OFF_ENTRY_SIZE} is read into memory and hashed
+ * and written on the executor, while the walk inflates the next entries. Such a visitor must be told when the walk is
+ * over with {@link #finish()}, or {@link #abort()} if the walk failed.
  *
  * @author John Mazzitelli
  */
 public class ExtractorZipFileVisitor implements ZipUtil.ZipEntryVisitor {
+    /**
+     * Entries larger than this are hashed and written by the thread walking the zip.
+     */
+    static final int MAX_HANDED_OFF_ENTRY_SIZE = 1024 * 1024;
+
+    /**
+     * The maximum number of inflated bytes waiting to be hashed and written.
+     */
+    static final int MAX_PENDING_BYTES = 4 * 1024 * 1024;
+
     private final FileHashcodeMap fileHashcodeMap = new FileHashcodeMap();
     private final Pattern filesToRealizeRegex;
     private final TemplateEngine templateEngine;
@@ -52,6 +74,10 @@ public class ExtractorZipFileVisitor implements ZipUtil.ZipEntryVisitor {
     private final StreamCopyDigest copierAndHashcodeGenerator;
     private final DeployDifferences diff;
     private final boolean dryRun;
+    private final Executor executor;
+    private final LinkedList<PendingEntry> pendingEntries = new LinkedList<PendingEntry>();
+    private final Set<String> pendingPathnames = new HashSet<String>();
+    private int pendingBytes;
 
     /**
      * Creates the visitor. When the visitor hits a zip entry whose name matches
@@ -71,6 +97,18 @@ public class ExtractorZipFileVisitor implements ZipUtil.ZipEntryVisitor {
      */
     public ExtractorZipFileVisitor(File rootDir, Pattern filesToRealizeRegex, TemplateEngine templateEngine,
         Set<String> filesToNotExtract, DeployDifferences diff, boolean dryRun) {
+        this(rootDir, filesToRealizeRegex, templateEngine, filesToNotExtract, diff, dryRun, null);
+    }
+
+    /**
+     * Creates the visitor like {@link #ExtractorZipFileVisitor(File, Pattern, TemplateEngine, Set, DeployDifferences,
+     * boolean)} does, with an executor to hash and write the entries on.
+     *
+     * @param executor if not <code>null</code>, hashes and writes the content of the entries, in which case
+     *                 {@link #finish()} must be called once the zip file has been walked
+     */
+    public ExtractorZipFileVisitor(File rootDir, Pattern filesToRealizeRegex, TemplateEngine templateEngine,
+        Set<String> filesToNotExtract, DeployDifferences diff, boolean dryRun, Executor executor) {
 
         this.rootDir = rootDir;
 
@@ -88,10 +126,12 @@ public class ExtractorZipFileVisitor implements ZipUtil.ZipEntryVisitor {
         this.copierAndHashcodeGenerator = new StreamCopyDigest();
         this.diff = diff;
         this.dryRun = dryRun;
+        this.executor = executor;
     }
 
     /**
-     * Returns the file/hashcode data this visitor has collected.
+     * Returns the file/hashcode data this visitor has collected. With an executor, the map is only complete once
+     * {@link #finish()} has returned.
      * @return map containing filenames (zip file entry names) and their hashcodes
      */
     public FileHashcodeMap getFileHashcodeMap() {
@@ -149,6 +189,28 @@ public class ExtractorZipFileVisitor implements ZipUtil.ZipEntryVisitor {
             MessageDigestGenerator hashcodeGenerator = this.copierAndHashcodeGenerator.getMessageDigestGenerator();
             hashcodeGenerator.add(bytes);
             hashcode = hashcodeGenerator.getDigestString();
+        } else if (this.executor != null) {
+            ByteArrayOutputStream content = readEntry(entry, stream);
+            if (content.size() <= MAX_HANDED_OFF_ENTRY_SIZE) {
+                handOff(pathname, entryFile, content.toByteArray());
+                return true;
+            }
+            // too large to keep in memory, hash and write what was read so far and the rest of the entry here
+            MessageDigestGenerator hashcodeGenerator = new MessageDigestGenerator();
+            hashcodeGenerator.add(content.toByteArray());
+            if (!dryRun) {
+                FileOutputStream fos = new FileOutputStream(entryFile);
+                try {
+                    content.writeTo(fos);
+                    content = null;
+                    hashcode = new StreamCopyDigest(hashcodeGenerator).copyAndCalculateHashcode(stream, fos);
+                } finally {
+                    fos.close();
+                }
+            } else {
+                hashcodeGenerator.add(stream);
+                hashcode = hashcodeGenerator.getDigestString();
+            }
         } else {
             if (!dryRun) {
                 FileOutputStream fos = new FileOutputStream(entryFile);
@@ -165,4 +227,120 @@ public class ExtractorZipFileVisitor implements ZipUtil.ZipEntryVisitor {
         this.fileHashcodeMap.put(pathname, hashcode);
         return true;
     }
+
+    /**
+     * Waits for the entries handed to the executor to be hashed and written, and adds them to the file/hashcode map.
+     * Does nothing if the visitor has no executor.
+     *
+     * @throws Exception if an entry could not be written, in which case the other pending entries are abandoned
+     */
+    public void finish() throws Exception {
+        boolean finished = false;
+        try {
+            while (!this.pendingEntries.isEmpty()) {
+                completeOldestEntry();
+            }
+            finished = true;
+        } finally {
+            if (!finished) {
+                abort();
+            }
+        }
+    }
+
+    /**
+     * Abandons the entries handed to the executor that are not being written yet, and waits for the others. Nothing
+     * is written by this visitor once this method returns.
+     */
+    public void abort() {
+        for (PendingEntry pendingEntry : this.pendingEntries) {
+            if (!pendingEntry.task.cancel(false)) {
+                try {
+                    pendingEntry.task.get();
+                } catch (Exception ignore) {
+                    // the walk failed already
+                }
+            }
+        }
+        this.pendingEntries.clear();
+        this.pendingPathnames.clear();
+        this.pendingBytes = 0;
+    }
+
+    /**
+     * Reads the entry content, unless it is larger than {@link #MAX_HANDED_OFF_ENTRY_SIZE}, in which case only a
+     * little more than that is read.
+     */
+    private ByteArrayOutputStream readEntry(ZipEntry entry, InputStream stream) throws Exception {
+        long size = entry.getSize();
+        ByteArrayOutputStream content = new ByteArrayOutputStream((size >= 0 && size <= MAX_HANDED_OFF_ENTRY_SIZE) ?
+            (int) size : 32768);
+        byte[] buffer = new byte[32768];
+        int bytesRead;
+        while (content.size() <= MAX_HANDED_OFF_ENTRY_SIZE && (bytesRead = stream.read(buffer)) != -1) {
+            content.write(buffer, 0, bytesRead);
+        }
+        return content;
+    }
+
+    private void handOff(String pathname, final File entryFile, final byte[] content) throws Exception {
+        // a zip can hold the same entry twice, the last one must win just like when extracting serially
+        if (this.pendingPathnames.contains(pathname)) {
+            finish();
+        }
+        while (!this.pendingEntries.isEmpty() && this.pendingBytes + content.length > MAX_PENDING_BYTES) {
+            completeOldestEntry();
+        }
+
+        FutureTask<String> task = new FutureTask<String>(new Callable<String>() {
+            public String call() throws Exception {
+                if (!dryRun) {
+                    FileOutputStream fos = new FileOutputStream(entryFile);
+                    try {
+                        fos.write(content);
+                    } finally {
+                        fos.close();
+                    }
+                }
+                MessageDigestGenerator hashcodeGenerator = new MessageDigestGenerator();
+                hashcodeGenerator.add(content);
+                return hashcodeGenerator.getDigestString();
+            }
+        });
+        this.pendingEntries.add(new PendingEntry(pathname, content.length, task));
+        this.pendingPathnames.add(pathname);
+        this.pendingBytes += content.length;
+        this.executor.execute(task);
+    }
+
+    private void completeOldestEntry() throws Exception {
+        PendingEntry pendingEntry = this.pendingEntries.removeFirst();
+        this.pendingPathnames.remove(pendingEntry.pathname);
+        this.pendingBytes -= pendingEntry.size;
+
+        // runs the task here if no thread of the executor has picked it up yet, so that a walk running on the
+        // executor itself cannot wait for a task queued behind it
+        pendingEntry.task.run();
+        try {
+            this.fileHashcodeMap.put(pendingEntry.pathname, pendingEntry.task.get());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    private static class PendingEntry {
+        private final String pathname;
+        private final int size;
+        private final FutureTask<String> task;
+
+        private PendingEntry(String pathname, int size, FutureTask<String> task) {
+            this.pathname = pathname;
+            this.size = size;
+            this.task = task;
+        }
+    }
 }
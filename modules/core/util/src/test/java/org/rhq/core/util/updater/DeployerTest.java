@@ -30,6 +30,7 @@ import java.io.FileOutputStream;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
@@ -709,6 +710,113 @@ public class DeployerTest {
         }
     }
 
+    public void testParallelDeployMatchesSequentialDeploy() throws Exception {
+        String oldThreads = System.getProperty(Deployer.DEPLOYER_THREADS_PROPERTY);
+        File tmpDir1 = FileUtil.createTempDirectory("testDeployerTest", ".dir", null);
+        File tmpDir2 = FileUtil.createTempDirectory("testDeployerTest", ".dir", null);
+        try {
+            System.setProperty(Deployer.DEPLOYER_THREADS_PROPERTY, "1");
+            DeployDifferences sequentialDiff = new DeployDifferences();
+            FileHashcodeMap sequentialMap = deployZipsAndRawFiles(tmpDir1, sequentialDiff);
+
+            System.setProperty(Deployer.DEPLOYER_THREADS_PROPERTY, "4");
+            DeployDifferences parallelDiff = new DeployDifferences();
+            FileHashcodeMap parallelMap = deployZipsAndRawFiles(tmpDir2, parallelDiff);
+
+            assert parallelMap.size() == 13 : parallelMap;
+            assert parallelMap.equals(sequentialMap) : parallelMap + " != " + sequentialMap;
+            assert parallelDiff.getAddedFiles().equals(sequentialDiff.getAddedFiles()) : parallelDiff;
+            assert parallelDiff.getRealizedFiles().equals(sequentialDiff.getRealizedFiles()) : parallelDiff;
+            assert FileHashcodeMap.generateFileHashcodeMap(tmpDir2, null, null).equals(
+                FileHashcodeMap.generateFileHashcodeMap(tmpDir1, null, null));
+        } finally {
+            if (oldThreads != null) {
+                System.setProperty(Deployer.DEPLOYER_THREADS_PROPERTY, oldThreads);
+            } else {
+                System.clearProperty(Deployer.DEPLOYER_THREADS_PROPERTY);
+            }
+            FileUtil.purge(tmpDir1, true);
+            FileUtil.purge(tmpDir2, true);
+        }
+    }
+
+    public void testParallelEntriesOfOneZipMatchSequentialDeploy() throws Exception {
+        String oldThreads = System.getProperty(Deployer.DEPLOYER_THREADS_PROPERTY);
+        File tmpDir1 = FileUtil.createTempDirectory("testDeployerTest", ".dir", null);
+        File tmpDir2 = FileUtil.createTempDirectory("testDeployerTest", ".dir", null);
+        File zipFile = File.createTempFile("testDeployerTest", ".zip");
+        try {
+            // enough small entries to fill the pending bytes of the visitor several times, and entries too large to
+            // be handed off, one of them in the middle of the small ones
+            Random random = new Random(42);
+            ZipOutputStream zout = new ZipOutputStream(new FileOutputStream(zipFile));
+            try {
+                for (int i = 0; i < 300; i++) {
+                    int size = (i == 150 || i == 299) ? 3 * ExtractorZipFileVisitor.MAX_HANDED_OFF_ENTRY_SIZE
+                        : random.nextInt(64 * 1024);
+                    byte[] content = new byte[size];
+                    random.nextBytes(content);
+                    zout.putNextEntry(new ZipEntry("dir" + (i % 10) + fileSeparator + "file" + i + ".bin"));
+                    zout.write(content);
+                    zout.closeEntry();
+                }
+            } finally {
+                zout.close();
+            }
+
+            System.setProperty(Deployer.DEPLOYER_THREADS_PROPERTY, "1");
+            FileHashcodeMap sequentialMap = deployZip(zipFile, tmpDir1);
+
+            System.setProperty(Deployer.DEPLOYER_THREADS_PROPERTY, "4");
+            FileHashcodeMap parallelMap = deployZip(zipFile, tmpDir2);
+
+            assert parallelMap.size() == 300 : parallelMap.size();
+            assert parallelMap.equals(sequentialMap) : parallelMap + " != " + sequentialMap;
+            assert FileHashcodeMap.generateFileHashcodeMap(tmpDir2, null, null).equals(parallelMap);
+        } finally {
+            if (oldThreads != null) {
+                System.setProperty(Deployer.DEPLOYER_THREADS_PROPERTY, oldThreads);
+            } else {
+                System.clearProperty(Deployer.DEPLOYER_THREADS_PROPERTY);
+            }
+            FileUtil.purge(tmpDir1, true);
+            FileUtil.purge(tmpDir2, true);
+            zipFile.delete();
+        }
+    }
+
+    private FileHashcodeMap deployZip(File zipFile, File destDir) throws Exception {
+        DeploymentProperties deploymentProps = new DeploymentProperties(0, "testbundle", "1.0.test", null,
+            DestinationComplianceMode.full);
+        Map<File, File> zipFiles = new HashMap<File, File>(1);
+        zipFiles.put(zipFile, null);
+        DeploymentData dd = new DeploymentData(deploymentProps, zipFile.getParentFile(), destDir,
+            new HashMap<File, File>(), new HashSet<File>(), zipFiles, null, templateEngine, null, null);
+        return new Deployer(dd).deploy(new DeployDifferences());
+    }
+
+    private FileHashcodeMap deployZipsAndRawFiles(File destDir, DeployDifferences diff) throws Exception {
+        File testZipFile1 = new File("target/test-classes/updater-test2.zip");
+        File testZipFile2 = new File("target/test-classes/updater-test3.zip");
+        File testRawFileA = new File("target/test-classes/updater-testA.txt");
+        File testRawFileB = new File("target/test-classes/updater-testB.txt");
+
+        DeploymentProperties deploymentProps = new DeploymentProperties(0, "testbundle2", "2.0.test", null,
+            DestinationComplianceMode.full);
+        Map<File, File> zipFiles = new HashMap<File, File>(2);
+        zipFiles.put(testZipFile1, null);
+        zipFiles.put(testZipFile2, null);
+        Map<File, File> rawFiles = new HashMap<File, File>();
+        rawFiles.put(testRawFileA, new File("dirA/rawA.txt"));
+        rawFiles.put(testRawFileB, new File("dir100/rawB.txt"));
+        Set<File> realizeRawFiles = new HashSet<File>(1);
+        realizeRawFiles.add(testRawFileB);
+
+        DeploymentData dd = new DeploymentData(deploymentProps, destDir, destDir, rawFiles, realizeRawFiles,
+            zipFiles, null, templateEngine, null, null);
+        return new Deployer(dd).deploy(diff);
+    }
+
     public void testInitialDeployOneZip() throws Exception {
         File tmpDir = FileUtil.createTempDirectory("testDeployerTest", ".dir", null);
         try {
@@ -1236,6 +1236,21 @@ public class AgentConfiguration {
             AgentConfigurationConstants.DEFAULT_PLUGINS_EVENT_REPORT_MAX_PER_SOURCE);
         int event_report_max_total = m_preferences.getInt(AgentConfigurationConstants.PLUGINS_EVENT_REPORT_MAX_TOTAL,
             AgentConfigurationConstants.DEFAULT_PLUGINS_EVENT_REPORT_MAX_TOTAL);
+        long event_coalesce_window = m_preferences.getLong(AgentConfigurationConstants.PLUGINS_EVENT_COALESCE_WINDOW,
+            AgentConfigurationConstants.DEFAULT_PLUGINS_EVENT_COALESCE_WINDOW);
+        int event_rate_limit_per_src = m_preferences.getInt(
+            AgentConfigurationConstants.PLUGINS_EVENT_RATE_LIMIT_PER_SOURCE,
+            AgentConfigurationConstants.DEFAULT_PLUGINS_EVENT_RATE_LIMIT_PER_SOURCE);
+        int event_rate_limit_burst = m_preferences.getInt(AgentConfigurationConstants.PLUGINS_EVENT_RATE_LIMIT_BURST,
+            AgentConfigurationConstants.DEFAULT_PLUGINS_EVENT_RATE_LIMIT_BURST);
+        int event_sample_rate = m_preferences.getInt(AgentConfigurationConstants.PLUGINS_EVENT_SAMPLE_RATE,
+            AgentConfigurationConstants.DEFAULT_PLUGINS_EVENT_SAMPLE_RATE);
+        int facet_invocation_max_per_plugin = m_preferences.getInt(
+            AgentConfigurationConstants.PLUGINS_FACET_INVOCATION_MAX_PER_PLUGIN,
+            AgentConfigurationConstants.DEFAULT_PLUGINS_FACET_INVOCATION_MAX_PER_PLUGIN);
+        boolean facet_invocation_virtual_threads = m_preferences.getBoolean(
+            AgentConfigurationConstants.PLUGINS_FACET_INVOCATION_VIRTUAL_THREADS,
+            AgentConfigurationConstants.DEFAULT_PLUGINS_FACET_INVOCATION_VIRTUAL_THREADS);
 
         // determine the data and tmp directories to use
         File data_directory = getDataDirectory();
@@ -1312,6 +1327,12 @@ public class AgentConfiguration {
         config.setEventSenderPeriod(event_sender_period);
         config.setEventReportMaxPerSource(event_report_max_per_src);
         config.setEventReportMaxTotal(event_report_max_total);
+        config.setEventCoalesceWindow(event_coalesce_window);
+        config.setEventRateLimitPerSource(event_rate_limit_per_src);
+        config.setEventRateLimitBurst(event_rate_limit_burst);
+        config.setEventSampleRate(event_sample_rate);
+        config.setFacetInvocationMaxPerPlugin(facet_invocation_max_per_plugin);
+        config.setFacetInvocationVirtualThreads(facet_invocation_virtual_threads);
 
         if (name != null) {
             config.setContainerName(name);
@@ -801,6 +801,43 @@ public interface AgentConfigurationConstants {
     String PLUGINS_EVENT_REPORT_MAX_TOTAL = PROPERTY_NAME_PREFIX + "plugins.event-report.max-total";
     int DEFAULT_PLUGINS_EVENT_REPORT_MAX_TOTAL = PluginContainerConfiguration.EVENT_REPORT_MAX_TOTAL_DEFAULT;
 
+    /**
+     * The window, in seconds, within which identical events from the same event source are coalesced.
+     */
+    String PLUGINS_EVENT_COALESCE_WINDOW = PROPERTY_NAME_PREFIX + "plugins.event-coalesce.window-secs";
+    long DEFAULT_PLUGINS_EVENT_COALESCE_WINDOW = PluginContainerConfiguration.EVENT_COALESCE_WINDOW_DEFAULT;
+
+    /**
+     * The sustained number of events per second any one event source may publish before its events are sampled.
+     */
+    String PLUGINS_EVENT_RATE_LIMIT_PER_SOURCE = PROPERTY_NAME_PREFIX + "plugins.event-rate-limit.per-source";
+    int DEFAULT_PLUGINS_EVENT_RATE_LIMIT_PER_SOURCE = PluginContainerConfiguration.EVENT_RATE_LIMIT_PER_SOURCE_DEFAULT;
+
+    /**
+     * The number of events any one event source may publish in a burst before the rate limit applies.
+     */
+    String PLUGINS_EVENT_RATE_LIMIT_BURST = PROPERTY_NAME_PREFIX + "plugins.event-rate-limit.burst";
+    int DEFAULT_PLUGINS_EVENT_RATE_LIMIT_BURST = PluginContainerConfiguration.EVENT_RATE_LIMIT_BURST_DEFAULT;
+
+    /**
+     * One in this many events is kept from an event source that exceeds its rate limit.
+     */
+    String PLUGINS_EVENT_SAMPLE_RATE = PROPERTY_NAME_PREFIX + "plugins.event-rate-limit.sample-rate";
+    int DEFAULT_PLUGINS_EVENT_SAMPLE_RATE = PluginContainerConfiguration.EVENT_SAMPLE_RATE_DEFAULT;
+
+    /**
+     * The maximum number of facet invocations that may be in progress at once for the resources of any one plugin.
+     */
+    String PLUGINS_FACET_INVOCATION_MAX_PER_PLUGIN = PROPERTY_NAME_PREFIX + "plugins.facet-invocation.max-per-plugin";
+    int DEFAULT_PLUGINS_FACET_INVOCATION_MAX_PER_PLUGIN = PluginContainerConfiguration.FACET_INVOCATION_MAX_PER_PLUGIN_DEFAULT;
+
+    /**
+     * If true, and the JVM supports them, facet invocations are run in virtual threads.
+     */
+    String PLUGINS_FACET_INVOCATION_VIRTUAL_THREADS = PROPERTY_NAME_PREFIX
+        + "plugins.facet-invocation.virtual-threads";
+    boolean DEFAULT_PLUGINS_FACET_INVOCATION_VIRTUAL_THREADS = PluginContainerConfiguration.FACET_INVOCATION_VIRTUAL_THREADS_DEFAULT;
+
     /**
      * Communications security keystore password
      */
@@ -20,6 +20,10 @@
 
 package org.rhq.server.metrics.migrator;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+
 import javax.persistence.EntityManager;
 
 import com.datastax.driver.core.Session;
@@ -30,6 +34,8 @@ import org.apache.commons.logging.LogFactory;
 import org.rhq.server.metrics.migrator.workers.AggregateDataMigrator;
 import org.rhq.server.metrics.migrator.workers.CallableMigrationWorker;
 import org.rhq.server.metrics.migrator.workers.DeleteAllData;
+import org.rhq.server.metrics.migrator.workers.HistoryDataMigrator;
+import org.rhq.server.metrics.migrator.workers.MigrationCheckpoint;
 import org.rhq.server.metrics.migrator.workers.MigrationTable;
 import org.rhq.server.metrics.migrator.workers.RawDataMigrator;
 
@@ -58,6 +64,14 @@ public class DataMigrator {
     public static final int SQL_TIMEOUT = 6000000;
     public static final int MAX_NUMBER_OF_FAILURES = 5;
 
+    public static final int DEFAULT_MIGRATION_THREADS = 4;
+    public static final int DEFAULT_SCHEDULES_PER_PARTITION = 1000;
+    /**
+     * The number of batches a single migration thread could have in flight when it wrote all the batches of the rows
+     * it read at once.
+     */
+    public static final int DEFAULT_MAX_WRITES_IN_FLIGHT = 300;
+
     private final DataMigratorConfiguration config;
     private long estimation;
 
@@ -75,6 +89,7 @@ public class DataMigrator {
         config.setRun1HAggregateDataMigration(true);
         config.setRun6HAggregateDataMigration(true);
         config.setRun1DAggregateDataMigration(true);
+        config.setRunHistoryDataMigration(false);
     }
 
     public void runRawDataMigration(boolean value) {
@@ -93,6 +108,43 @@ public class DataMigrator {
         config.setRun1DAggregateDataMigration(value);
     }
 
+    /**
+     * The trait and availability history is only migrated on request, since the server keeps it in the database
+     * unless the history storage is enabled.
+     */
+    public void runHistoryDataMigration(boolean value) {
+        config.setRunHistoryDataMigration(value);
+    }
+
+    /**
+     * The raw and aggregate tables are split into ranges of schedule ids, which are migrated concurrently by this
+     * number of threads.
+     */
+    public void setMigrationThreads(int migrationThreads) {
+        config.setMigrationThreads(migrationThreads);
+    }
+
+    public void setSchedulesPerPartition(int schedulesPerPartition) {
+        config.setSchedulesPerPartition(schedulesPerPartition);
+    }
+
+    /**
+     * Limits the number of batches written to the storage cluster at any time by all the migration threads.
+     */
+    public void setMaxWritesInFlight(int maxWritesInFlight) {
+        config.setMaxWritesInFlight(maxWritesInFlight);
+    }
+
+    /**
+     * Keeps the partitions migrated so far in a file, so that a migration that failed resumes where it stopped when
+     * it runs again with the same file. The file is deleted when the migration completes.
+     *
+     * @throws IOException if the file exists and cannot be read
+     */
+    public void setCheckpointFile(File checkpointFile) throws IOException {
+        config.setCheckpoint(new MigrationCheckpoint(checkpointFile));
+    }
+
     public void deleteDataImmediatelyAfterMigration() {
         config.setDeleteDataImmediatelyAfterMigration(true);
         config.setDeleteAllDataAtEndOfMigration(false);
@@ -126,6 +178,10 @@ public class DataMigrator {
             retryOnFailure(new AggregateDataMigrator(MigrationTable.TWENTY_FOUR_HOUR, config), Task.Estimate);
         }
 
+        if (config.isRunHistoryDataMigration()) {
+            retryOnFailure(new HistoryDataMigrator(config), Task.Estimate);
+        }
+
         if (config.isDeleteAllDataAtEndOfMigration()) {
             retryOnFailure(new DeleteAllData(config), Task.Estimate);
         }
@@ -152,9 +208,15 @@ public class DataMigrator {
             retryOnFailure(new AggregateDataMigrator(MigrationTable.TWENTY_FOUR_HOUR, config), Task.Migrate);
         }
 
+        if (config.isRunHistoryDataMigration()) {
+            retryOnFailure(new HistoryDataMigrator(config), Task.Migrate);
+        }
+
         if (config.isDeleteAllDataAtEndOfMigration()) {
             retryOnFailure(new DeleteAllData(config), Task.Migrate);
         }
+
+        config.getCheckpoint().clear();
     }
 
     public void deleteOldData() throws Exception {
@@ -233,6 +295,13 @@ public class DataMigrator {
         private boolean run1HAggregateDataMigration;
         private boolean run6HAggregateDataMigration;
         private boolean run1DAggregateDataMigration;
+        private boolean runHistoryDataMigration;
+
+        private int migrationThreads = DEFAULT_MIGRATION_THREADS;
+        private int schedulesPerPartition = DEFAULT_SCHEDULES_PER_PARTITION;
+        private int maxWritesInFlight = DEFAULT_MAX_WRITES_IN_FLIGHT;
+        private Semaphore writePermits = new Semaphore(DEFAULT_MAX_WRITES_IN_FLIGHT);
+        private MigrationCheckpoint checkpoint = new MigrationCheckpoint();
 
         public DataMigratorConfiguration(EntityManager entityManager, Session session, DatabaseType databaseType,
             boolean experimentalDataSource) {
@@ -290,6 +359,63 @@ public class DataMigrator {
             run1DAggregateDataMigration = run1dAggregateDataMigration;
         }
 
+        public boolean isRunHistoryDataMigration() {
+            return runHistoryDataMigration;
+        }
+
+        private void setRunHistoryDataMigration(boolean runHistoryDataMigration) {
+            this.runHistoryDataMigration = runHistoryDataMigration;
+        }
+
+        public int getMigrationThreads() {
+            return migrationThreads;
+        }
+
+        private void setMigrationThreads(int migrationThreads) {
+            if (migrationThreads < 1) {
+                throw new IllegalArgumentException("The number of migration threads must be positive");
+            }
+            this.migrationThreads = migrationThreads;
+        }
+
+        public int getSchedulesPerPartition() {
+            return schedulesPerPartition;
+        }
+
+        private void setSchedulesPerPartition(int schedulesPerPartition) {
+            if (schedulesPerPartition < 1) {
+                throw new IllegalArgumentException("The number of schedules per partition must be positive");
+            }
+            this.schedulesPerPartition = schedulesPerPartition;
+        }
+
+        public int getMaxWritesInFlight() {
+            return maxWritesInFlight;
+        }
+
+        private void setMaxWritesInFlight(int maxWritesInFlight) {
+            if (maxWritesInFlight < 1) {
+                throw new IllegalArgumentException("The number of writes in flight must be positive");
+            }
+            this.maxWritesInFlight = maxWritesInFlight;
+            this.writePermits = new Semaphore(maxWritesInFlight);
+        }
+
+        /**
+         * @return the permits of the writes to the storage cluster, shared by all the migration threads
+         */
+        public Semaphore getWritePermits() {
+            return writePermits;
+        }
+
+        public MigrationCheckpoint getCheckpoint() {
+            return checkpoint;
+        }
+
+        private void setCheckpoint(MigrationCheckpoint checkpoint) {
+            this.checkpoint = checkpoint;
+        }
+
         public EntityManager getEntityManager() {
             return entityManager;
         }
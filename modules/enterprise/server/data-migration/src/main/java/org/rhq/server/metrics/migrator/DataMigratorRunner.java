@@ -58,6 +58,7 @@ import org.rhq.core.util.obfuscation.PicketBoxObfuscator;
 import org.rhq.server.metrics.migrator.DataMigrator.DatabaseType;
 import org.rhq.server.metrics.migrator.workers.AggregateDataMigrator;
 import org.rhq.server.metrics.migrator.workers.DeleteAllData;
+import org.rhq.server.metrics.migrator.workers.HistoryDataMigrator;
 import org.rhq.server.metrics.migrator.workers.MetricsIndexMigrator;
 import org.rhq.server.metrics.migrator.workers.RawDataMigrator;
 
@@ -78,6 +79,7 @@ import org.rhq.server.metrics.migrator.workers.RawDataMigrator;
 public class DataMigratorRunner {
 
     private static final int DEFAULT_CASSANDRA_PORT = 9142;
+    private static final String DEFAULT_CHECKPOINT_FILE = "data-migration.checkpoint";
     private final Log log = LogFactory.getLog(DataMigratorRunner.class);
 
     //Cassandra
@@ -127,6 +129,9 @@ public class DataMigratorRunner {
     private final Option disable1DOption = OptionBuilder.withLongOpt("disable-1d-migration").hasOptionalArg()
         .withType(Boolean.class)
         .withDescription("Disable 24 hours aggregates table migration (default: false)").create();
+    private final Option enableHistoryOption = OptionBuilder.withLongOpt("enable-history-migration").hasOptionalArg()
+        .withType(Boolean.class)
+        .withDescription("Move the trait and availability history to the storage cluster (default: false)").create();
     private final Option deleteDataOption = OptionBuilder.withLongOpt("delete-data").hasOptionalArg()
         .withType(Boolean.class)
         .withDescription("Delete SQL data at the end of migration (default: false)").create();
@@ -141,6 +146,23 @@ public class DataMigratorRunner {
         .withLongOpt("experimental-export").hasOptionalArg().withType(Boolean.class)
         .withDescription("Enable experimental bulk export for Postgres, option ignored for Oracle migration (default: false)")
         .create();
+    private final Option migrationThreadsOption = OptionBuilder.withLongOpt("migration-threads").hasArg()
+        .withType(Integer.class)
+        .withDescription("Number of schedule id ranges migrated concurrently (default: "
+            + DataMigrator.DEFAULT_MIGRATION_THREADS + ")").create();
+    private final Option schedulesPerPartitionOption = OptionBuilder.withLongOpt("schedules-per-partition").hasArg()
+        .withType(Integer.class)
+        .withDescription("Number of schedule ids of the ranges the tables are split into (default: "
+            + DataMigrator.DEFAULT_SCHEDULES_PER_PARTITION + ")").create();
+    private final Option maxWritesInFlightOption = OptionBuilder.withLongOpt("max-writes-in-flight").hasArg()
+        .withType(Integer.class)
+        .withDescription("Maximum number of batches written to Cassandra at any time (default: "
+            + DataMigrator.DEFAULT_MAX_WRITES_IN_FLIGHT + ")").create();
+    private final Option checkpointFileOption = OptionBuilder.withLongOpt("checkpoint-file").hasArg()
+        .withType(String.class)
+        .withDescription("File keeping the ranges migrated so far. A migration that did not complete resumes from it "
+            + "when run again, the file is deleted when the migration completes (default: "
+            + DEFAULT_CHECKPOINT_FILE + ")").create();
 
     //Runner
     private final Option helpOption = OptionBuilder.withLongOpt("help").create("h");
@@ -210,7 +232,7 @@ public class DataMigratorRunner {
 
         //force change some of the logger levels
         Class[] clazzes = new Class[] { DataMigratorRunner.class, DataMigrator.class, RawDataMigrator.class,
-            DeleteAllData.class, AggregateDataMigrator.class, MetricsIndexMigrator.class };
+            DeleteAllData.class, AggregateDataMigrator.class, MetricsIndexMigrator.class, HistoryDataMigrator.class };
         for (Class clazz : clazzes) {
             migratorLogging = root.getLogger(clazz);
             if (Level.DEBUG.equals(level)) {
@@ -243,10 +265,15 @@ public class DataMigratorRunner {
         options.addOption(disable1HOption);
         options.addOption(disable6HOption);
         options.addOption(disable1DOption);
+        options.addOption(enableHistoryOption);
         options.addOption(deleteDataOption);
         options.addOption(estimateOnlyOption);
         options.addOption(deleteOnlyOption);
         options.addOption(experimentalExportOption);
+        options.addOption(migrationThreadsOption);
+        options.addOption(schedulesPerPartitionOption);
+        options.addOption(maxWritesInFlightOption);
+        options.addOption(checkpointFileOption);
 
         options.addOption(helpOption);
         options.addOption(debugLogOption);
@@ -325,10 +352,15 @@ public class DataMigratorRunner {
         configuration.put(disable1HOption, false);
         configuration.put(disable6HOption, false);
         configuration.put(disable1DOption, false);
+        configuration.put(enableHistoryOption, false);
         configuration.put(estimateOnlyOption, false);
         configuration.put(deleteDataOption, false);
         configuration.put(deleteOnlyOption, false);
         configuration.put(experimentalExportOption, false);
+        configuration.put(migrationThreadsOption, DataMigrator.DEFAULT_MIGRATION_THREADS);
+        configuration.put(schedulesPerPartitionOption, DataMigrator.DEFAULT_SCHEDULES_PER_PARTITION);
+        configuration.put(maxWritesInFlightOption, DataMigrator.DEFAULT_MAX_WRITES_IN_FLIGHT);
+        configuration.put(checkpointFileOption, DEFAULT_CHECKPOINT_FILE);
     }
 
 
@@ -534,6 +566,11 @@ public class DataMigratorRunner {
             configuration.put(disable1DOption, value);
         }
 
+        if (commandLine.hasOption(enableHistoryOption.getLongOpt())) {
+            value = tryParseBoolean(commandLine.getOptionValue(enableHistoryOption.getLongOpt()), true);
+            configuration.put(enableHistoryOption, value);
+        }
+
         if (commandLine.hasOption(deleteDataOption.getLongOpt())) {
             value = tryParseBoolean(commandLine.getOptionValue(deleteDataOption.getLongOpt()), true);
             configuration.put(deleteDataOption, value);
@@ -553,6 +590,27 @@ public class DataMigratorRunner {
             value = tryParseBoolean(commandLine.getOptionValue(experimentalExportOption.getLongOpt()), true);
             configuration.put(experimentalExportOption, value);
         }
+
+        if (commandLine.hasOption(migrationThreadsOption.getLongOpt())) {
+            configuration.put(migrationThreadsOption, tryParseInteger(
+                commandLine.getOptionValue(migrationThreadsOption.getLongOpt()), DataMigrator.DEFAULT_MIGRATION_THREADS));
+        }
+
+        if (commandLine.hasOption(schedulesPerPartitionOption.getLongOpt())) {
+            configuration.put(schedulesPerPartitionOption, tryParseInteger(
+                commandLine.getOptionValue(schedulesPerPartitionOption.getLongOpt()),
+                DataMigrator.DEFAULT_SCHEDULES_PER_PARTITION));
+        }
+
+        if (commandLine.hasOption(maxWritesInFlightOption.getLongOpt())) {
+            configuration.put(maxWritesInFlightOption, tryParseInteger(
+                commandLine.getOptionValue(maxWritesInFlightOption.getLongOpt()),
+                DataMigrator.DEFAULT_MAX_WRITES_IN_FLIGHT));
+        }
+
+        if (commandLine.hasOption(checkpointFileOption.getLongOpt())) {
+            configuration.put(checkpointFileOption, commandLine.getOptionValue(checkpointFileOption.getLongOpt()));
+        }
     }
 
     private void run() throws Exception {
@@ -584,6 +642,11 @@ public class DataMigratorRunner {
             migrator.run1HAggregateDataMigration(!(Boolean) configuration.get(disable1HOption));
             migrator.run6HAggregateDataMigration(!(Boolean) configuration.get(disable6HOption));
             migrator.run1DAggregateDataMigration(!(Boolean) configuration.get(disable1DOption));
+            migrator.runHistoryDataMigration((Boolean) configuration.get(enableHistoryOption));
+
+            migrator.setMigrationThreads((Integer) configuration.get(migrationThreadsOption));
+            migrator.setSchedulesPerPartition((Integer) configuration.get(schedulesPerPartitionOption));
+            migrator.setMaxWritesInFlight((Integer) configuration.get(maxWritesInFlightOption));
 
             System.out.println("Estimation process - starting\n");
             long estimate = migrator.estimate();
@@ -592,6 +655,8 @@ public class DataMigratorRunner {
             System.out.println("Estimation process - ended\n\n");
 
             if (!(Boolean) configuration.get(estimateOnlyOption)) {
+                migrator.setCheckpointFile(new File((String) configuration.get(checkpointFileOption)));
+
                 System.out.println("Migration process - starting\n");
                 long startTime = System.currentTimeMillis();
                 migrator.migrateData();
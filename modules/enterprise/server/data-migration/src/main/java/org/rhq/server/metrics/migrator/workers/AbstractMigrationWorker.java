@@ -20,6 +20,25 @@
 
 package org.rhq.server.metrics.migrator.workers;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.datastax.driver.core.Query;
+import com.datastax.driver.core.ResultSetFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.StatelessSession;
@@ -90,6 +109,188 @@ public abstract class AbstractMigrationWorker {
         return new ScrollableDataSource(config.getEntityManager(), config.getDatabaseType(), query);
     }
 
+    /**
+     * Inserts in the storage cluster a batch of rows read from the database.
+     */
+    protected interface RowInserter {
+        void insert(List<Object[]> rows) throws Exception;
+    }
+
+    /**
+     * Splits a table into ranges of {@link DataMigratorConfiguration#getSchedulesPerPartition()} schedule ids.
+     *
+     * @param table the source table
+     * @param selectQuery the query of the rows of a partition, formatted with the table and the bounds of the range
+     * @return the partitions covering the schedule ids of the table, which share the progress of the table
+     */
+    protected List<MigrationPartition> getPartitions(String table, String selectQuery,
+        DataMigratorConfiguration config) {
+        Object[] range;
+        StatelessSession session = getSQLSession(config);
+        try {
+            org.hibernate.Query query = session.createSQLQuery(String.format(
+                MigrationQuery.SCHEDULE_ID_RANGE.toString(), table));
+            query.setReadOnly(true);
+            query.setTimeout(DataMigrator.SQL_TIMEOUT);
+            range = (Object[]) query.uniqueResult();
+        } finally {
+            closeSQLSession(session);
+        }
+
+        if (range == null || range[0] == null) {
+            return Collections.emptyList();
+        }
+
+        int firstScheduleId = Integer.parseInt(range[0].toString());
+        int lastScheduleId = Integer.parseInt(range[1].toString());
+        long rows = Long.parseLong(range[2].toString());
+        int partitionSize = config.getSchedulesPerPartition();
+
+        MigrationProgress progress = new MigrationProgress(table, rows);
+        List<MigrationPartition> partitions = new ArrayList<MigrationPartition>();
+        for (long start = firstScheduleId - (firstScheduleId % partitionSize); start <= lastScheduleId;
+            start += partitionSize) {
+            int end = (int) Math.min(start + partitionSize, Integer.MAX_VALUE);
+            partitions.add(new MigrationPartition(table, (int) start, end, String.format(selectQuery, table, start,
+                end), progress));
+        }
+
+        log.debug("Split " + table + " into " + partitions.size() + " partitions of " + rows + " rows");
+
+        return partitions;
+    }
+
+    /**
+     * Migrates partitions concurrently on {@link DataMigratorConfiguration#getMigrationThreads()} threads. Partitions
+     * found in the checkpoint of the migration are skipped, and every migrated partition is added to it.
+     *
+     * @throws Exception the failure of the first partition that could not be migrated, after the partitions being
+     * migrated at that time completed
+     */
+    protected void migratePartitions(List<MigrationPartition> partitions, final RowInserter inserter,
+        final DataMigratorConfiguration config) throws Exception {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(config.getMigrationThreads(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Data Migration-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        Set<MigrationProgress> progresses = new LinkedHashSet<MigrationProgress>();
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        try {
+            for (final MigrationPartition partition : partitions) {
+                progresses.add(partition.getProgress());
+
+                Long migratedRows = config.getCheckpoint().getMigratedRows(partition.getKey());
+                if (migratedRows != null) {
+                    partition.getProgress().resume(migratedRows);
+                    continue;
+                }
+
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        migratePartition(partition, inserter, config);
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    // let the partitions in progress complete and be checkpointed, so that a retry skips them
+                    executor.shutdown();
+                    for (Future<Void> other : futures) {
+                        other.cancel(false);
+                    }
+                    executor.awaitTermination(DataMigrator.SQL_TIMEOUT, TimeUnit.MILLISECONDS);
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (MigrationProgress progress : progresses) {
+            log.info(progress);
+        }
+    }
+
+    private void migratePartition(MigrationPartition partition, RowInserter inserter, DataMigratorConfiguration config)
+        throws Exception {
+        ExistingDataSource dataSource = getExistingDataSource(partition.getSelectQuery(), Task.Migrate, config);
+        dataSource.initialize();
+
+        int lastMigratedRecord = 0;
+        try {
+            while (true) {
+                List<Object[]> existingData = dataSource.getData(lastMigratedRecord,
+                    CallableMigrationWorker.MAX_RECORDS_TO_LOAD_FROM_SQL);
+
+                if (existingData == null || existingData.size() == 0) {
+                    break;
+                }
+
+                lastMigratedRecord += existingData.size();
+
+                int failureCount = 0;
+                while (true) {
+                    try {
+                        inserter.insert(existingData);
+                        break;
+                    } catch (Exception e) {
+                        log.error("Failed to insert the data of " + partition
+                            + ". Attempting to insert the current batch of data one more time");
+                        log.error(e);
+
+                        failureCount++;
+                        if (failureCount == CallableMigrationWorker.MAX_NUMBER_OF_FAILURES) {
+                            throw e;
+                        }
+                    }
+                }
+
+                partition.getProgress().add(existingData.size());
+            }
+        } finally {
+            dataSource.close();
+        }
+
+        config.getCheckpoint().complete(partition.getKey(), lastMigratedRecord);
+    }
+
+    /**
+     * Executes a write once there are less than {@link DataMigratorConfiguration#getMaxWritesInFlight()} writes in
+     * flight, all migration threads included, so that the migration does not overload the storage cluster.
+     */
+    protected ResultSetFuture executeAsync(Query query, DataMigratorConfiguration config) throws InterruptedException {
+        final Semaphore permits = config.getWritePermits();
+        permits.acquire();
+        ResultSetFuture future;
+        try {
+            future = config.getSession().executeAsync(query);
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                permits.release();
+            }
+        }, MoreExecutors.sameThreadExecutor());
+        return future;
+    }
+
     protected void prepareSQLSession(StatelessSession session, DataMigratorConfiguration config) {
         if (DatabaseType.Postgres.equals(config.getDatabaseType())) {
             log.debug("Preparing SQL connection with timeout: " + DataMigrator.SQL_TIMEOUT);
@@ -53,6 +53,7 @@ public class AggregateDataMigrator extends AbstractMigrationWorker implements Ca
     private final String selectQuery;
     private final String deleteQuery;
     private final String countQuery;
+    private final String sqlTable;
     private final MigrationTable migrationTable;
     private final MetricsIndexMigrator metricsIndexAccumulator;
 
@@ -70,14 +71,17 @@ public class AggregateDataMigrator extends AbstractMigrationWorker implements Ca
             this.selectQuery = MigrationQuery.SELECT_1H_DATA.toString();
             this.deleteQuery = MigrationQuery.DELETE_1H_DATA.toString();
             this.countQuery = MigrationQuery.COUNT_1H_DATA.toString();
+            this.sqlTable = "RHQ_MEASUREMENT_DATA_NUM_1H";
         } else if (MigrationTable.SIX_HOUR.equals(this.migrationTable)) {
             this.selectQuery = MigrationQuery.SELECT_6H_DATA.toString();
             this.deleteQuery = MigrationQuery.DELETE_6H_DATA.toString();
             this.countQuery = MigrationQuery.COUNT_6H_DATA.toString();
+            this.sqlTable = "RHQ_MEASUREMENT_DATA_NUM_6H";
         } else if (MigrationTable.TWENTY_FOUR_HOUR.equals(this.migrationTable)) {
             this.selectQuery = MigrationQuery.SELECT_1D_DATA.toString();
             this.deleteQuery = MigrationQuery.DELETE_1D_DATA.toString();
             this.countQuery = MigrationQuery.COUNT_1D_DATA.toString();
+            this.sqlTable = "RHQ_MEASUREMENT_DATA_NUM_1D";
         } else {
             throw new Exception("MigrationTable " + migrationTable.toString() + " not supported by this migrator.");
         }
@@ -90,11 +94,11 @@ public class AggregateDataMigrator extends AbstractMigrationWorker implements Ca
         long recordCount = this.getRowCount(this.countQuery);
         log.debug("Retrieved record count for table " + migrationTable.toString() + " -- " + recordCount);
 
-        Telemetry telemetry = this.performMigration(Task.Estimate);
+        Telemetry telemetry = this.performEstimation();
         long estimatedTimeToMigrate = telemetry.getMigrationTime();
 
         long estimation = (recordCount / MAX_RECORDS_TO_LOAD_FROM_SQL / NUMBER_OF_BATCHES_FOR_ESTIMATION)
-            * estimatedTimeToMigrate;
+            * estimatedTimeToMigrate / config.getMigrationThreads();
 
         estimation += telemetry.getNonMigrationTime();
 
@@ -102,7 +106,19 @@ public class AggregateDataMigrator extends AbstractMigrationWorker implements Ca
     }
 
     public void migrate() throws Exception {
-        performMigration(Task.Migrate);
+        List<MigrationPartition> partitions = getPartitions(sqlTable,
+            MigrationQuery.SELECT_AGGREGATE_DATA_PARTITION.toString(), config);
+
+        log.info("Start migrating " + migrationTable + ", " + partitions.size() + " partitions");
+
+        migratePartitions(partitions, new RowInserter() {
+            @Override
+            public void insert(List<Object[]> rows) throws Exception {
+                insertDataToCassandra(rows);
+            }
+        }, config);
+        metricsIndexAccumulator.drain();
+
         if (config.isDeleteDataImmediatelyAfterMigration()) {
             deleteTableData();
         }
@@ -144,7 +160,10 @@ public class AggregateDataMigrator extends AbstractMigrationWorker implements Ca
         }
     }
 
-    private Telemetry performMigration(Task task) throws Exception {
+    /**
+     * Migrates the first batches of the table.
+     */
+    private Telemetry performEstimation() throws Exception {
         Telemetry telemetry = new Telemetry();
         telemetry.getGeneralTimer().start();
 
@@ -154,7 +173,7 @@ public class AggregateDataMigrator extends AbstractMigrationWorker implements Ca
         int failureCount;
 
         int lastMigratedRecord = 0;
-        ExistingDataSource dataSource = getExistingDataSource(selectQuery, task, config);
+        ExistingDataSource dataSource = getExistingDataSource(selectQuery, Task.Estimate, config);
         dataSource.initialize();
 
         telemetry.getMigrationTimer().start();
@@ -187,7 +206,7 @@ public class AggregateDataMigrator extends AbstractMigrationWorker implements Ca
             log.info("- " + migrationTable + " - " + lastMigratedRecord + " -");
 
             numberOfBatchesMigrated++;
-            if (Task.Estimate.equals(task) && numberOfBatchesMigrated >= NUMBER_OF_BATCHES_FOR_ESTIMATION) {
+            if (numberOfBatchesMigrated >= NUMBER_OF_BATCHES_FOR_ESTIMATION) {
                 break;
             }
         }
@@ -238,14 +257,14 @@ public class AggregateDataMigrator extends AbstractMigrationWorker implements Ca
             }
 
             if (batchSize >= MAX_AGGREGATE_BATCH_TO_CASSANDRA) {
-                resultSetFutures.add(config.getSession().executeAsync(batch));
+                resultSetFutures.add(executeAsync(batch, config));
                 batch = QueryBuilder.batch();
                 batchSize = 0;
             }
         }
 
         if (batchSize != 0) {
-            resultSetFutures.add(config.getSession().executeAsync(batch));
+            resultSetFutures.add(executeAsync(batch, config));
         }
 
         for (ResultSetFuture future : resultSetFutures) {
@@ -0,0 +1,263 @@
+/*
+ * RHQ Management Platform
+ * Copyright 2014, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.rhq.server.metrics.migrator.workers;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.ttl;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.querybuilder.Batch;
+import com.datastax.driver.core.querybuilder.Insert;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.StatelessSession;
+
+import org.rhq.server.metrics.HistoryDAO;
+import org.rhq.server.metrics.migrator.DataMigrator;
+import org.rhq.server.metrics.migrator.DataMigrator.DataMigratorConfiguration;
+import org.rhq.server.metrics.migrator.DataMigrator.Task;
+import org.rhq.server.metrics.migrator.datasources.ExistingDataSource;
+
+/**
+ * Moves the trait history and the closed availability intervals from the SQL tables to the history tables of the
+ * storage cluster, leaving only the latest value of each trait and the recent availabilities in the database. This is
+ * the initial bulk move of what the data purge job of the server archives afterwards, when the history storage is
+ * enabled.
+ */
+public class HistoryDataMigrator extends AbstractMigrationWorker implements CallableMigrationWorker {
+    private final Log log = LogFactory.getLog(HistoryDataMigrator.class);
+
+    /**
+     * Availabilities that ended within this period are left in the database, like the server does by default, so that
+     * late agent reports can still be merged into them.
+     */
+    private static final long AVAILABILITY_WINDOW = TimeUnit.DAYS.toMillis(1);
+
+    private final DataMigratorConfiguration config;
+    private final long availabilityThreshold;
+
+    public HistoryDataMigrator(DataMigratorConfiguration config) {
+        this.config = config;
+        this.availabilityThreshold = System.currentTimeMillis() - AVAILABILITY_WINDOW;
+    }
+
+    public long estimate() throws Exception {
+        long recordCount = getRowCount(MigrationQuery.COUNT_TRAIT_HISTORY.toString());
+        recordCount += getRowCount(String.format(MigrationQuery.COUNT_AVAILABILITY_HISTORY.toString(),
+            availabilityThreshold));
+
+        Telemetry telemetry = this.performMigration(Task.Estimate);
+        long estimatedTimeToMigrate = telemetry.getMigrationTime();
+        long estimation = (recordCount / MAX_RECORDS_TO_LOAD_FROM_SQL / NUMBER_OF_BATCHES_FOR_ESTIMATION)
+            * estimatedTimeToMigrate;
+        estimation += telemetry.getNonMigrationTime();
+
+        return estimation;
+    }
+
+    public void migrate() throws Exception {
+        performMigration(Task.Migrate);
+    }
+
+    private long getRowCount(String countQuery) {
+        StatelessSession session = getSQLSession(config);
+
+        org.hibernate.Query query = session.createSQLQuery(countQuery);
+        query.setReadOnly(true);
+        query.setTimeout(DataMigrator.SQL_TIMEOUT);
+
+        long count = Long.parseLong(query.uniqueResult().toString());
+
+        closeSQLSession(session);
+
+        return count;
+    }
+
+    private Telemetry performMigration(Task task) throws Exception {
+        Telemetry telemetry = new Telemetry();
+        telemetry.getGeneralTimer().start();
+
+        telemetry.getMigrationTimer().start();
+        telemetry.getMigrationTimer().suspend();
+
+        long numberOfBatchesMigrated = migrateTable(MigrationTable.TRAIT_HISTORY,
+            MigrationQuery.SELECT_TRAIT_HISTORY.toString(), task, 0, telemetry);
+        if (Task.Migrate.equals(task) && isDeleteData()) {
+            deleteTableData(MigrationQuery.DELETE_TRAIT_HISTORY.toString());
+        }
+
+        if (Task.Migrate.equals(task) || numberOfBatchesMigrated < NUMBER_OF_BATCHES_FOR_ESTIMATION) {
+            migrateTable(MigrationTable.AVAILABILITY_HISTORY,
+                String.format(MigrationQuery.SELECT_AVAILABILITY_HISTORY.toString(), availabilityThreshold), task,
+                numberOfBatchesMigrated, telemetry);
+            if (Task.Migrate.equals(task) && isDeleteData()) {
+                deleteTableData(String.format(MigrationQuery.DELETE_AVAILABILITY_HISTORY.toString(),
+                    availabilityThreshold));
+            }
+        }
+
+        telemetry.getGeneralTimer().stop();
+        return telemetry;
+    }
+
+    /**
+     * The migrated rows are deleted right away even when the data is to be deleted at the end of the migration, since
+     * the availabilities to delete are only known here.
+     */
+    private boolean isDeleteData() {
+        return config.isDeleteDataImmediatelyAfterMigration() || config.isDeleteAllDataAtEndOfMigration();
+    }
+
+    private long migrateTable(MigrationTable table, String selectQuery, Task task, long numberOfBatchesMigrated,
+        Telemetry telemetry) throws Exception {
+        ExistingDataSource dataSource = getExistingDataSource(selectQuery, task, config);
+        dataSource.initialize();
+
+        log.info("Start migrating " + table + " data");
+
+        telemetry.getMigrationTimer().resume();
+        int lastMigratedRecord = 0;
+        while (true) {
+            List<Object[]> existingData = dataSource.getData(lastMigratedRecord, MAX_RECORDS_TO_LOAD_FROM_SQL);
+
+            if (existingData == null || existingData.size() == 0) {
+                break;
+            }
+
+            lastMigratedRecord += existingData.size();
+
+            int failureCount = 0;
+            while (failureCount < MAX_NUMBER_OF_FAILURES) {
+                try {
+                    insertDataToCassandra(table, existingData);
+                    break;
+                } catch (Exception e) {
+                    log.error("Failed to insert " + table
+                        + " data. Attempting to insert the current batch of data one more time");
+                    log.error(e);
+
+                    failureCount++;
+                    if (failureCount == MAX_NUMBER_OF_FAILURES) {
+                        throw e;
+                    }
+                }
+            }
+
+            log.info("- " + table + " - " + lastMigratedRecord + " -");
+
+            numberOfBatchesMigrated++;
+            if (Task.Estimate.equals(task) && numberOfBatchesMigrated >= NUMBER_OF_BATCHES_FOR_ESTIMATION) {
+                break;
+            }
+        }
+        telemetry.getMigrationTimer().suspend();
+
+        dataSource.close();
+
+        return numberOfBatchesMigrated;
+    }
+
+    private void deleteTableData(String deleteQuery) throws Exception {
+        int failureCount = 0;
+        while (failureCount < MAX_NUMBER_OF_FAILURES) {
+            try {
+                StatelessSession session = getSQLSession(config);
+                session.getTransaction().begin();
+                org.hibernate.Query nativeQuery = session.createSQLQuery(deleteQuery);
+                nativeQuery.executeUpdate();
+                session.getTransaction().commit();
+                closeSQLSession(session);
+                log.info("- " + deleteQuery + " - Cleaned -");
+                return;
+            } catch (Exception e) {
+                log.error("Failed to delete migrated history data. Attempting to delete data one more time...");
+
+                failureCount++;
+                if (failureCount == MAX_NUMBER_OF_FAILURES) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private void insertDataToCassandra(MigrationTable table, List<Object[]> existingData) throws Exception {
+        List<ResultSetFuture> resultSetFutures = new ArrayList<ResultSetFuture>();
+        Batch batch = QueryBuilder.batch();
+        int batchSize = 0;
+
+        //only need approximate TTL to speed up processing
+        //given that each batch is processed within seconds, getting the
+        //system time once per batch has minimal impact on the record retention
+        long currentTimeMillis = System.currentTimeMillis();
+        long expectedTTLMillis = table.getTTLinMilliseconds();
+
+        for (Object[] row : existingData) {
+            Insert insert;
+            long expirationBaseMillis;
+            if (MigrationTable.TRAIT_HISTORY.equals(table)) {
+                long time = Long.parseLong(row[MigrationQuery.TIMESTAMP_INDEX].toString());
+                expirationBaseMillis = time;
+                insert = QueryBuilder.insertInto(table.toString())
+                    .value("schedule_id", Integer.parseInt(row[MigrationQuery.SCHEDULE_INDEX].toString()))
+                    .value("bucket", new Date(HistoryDAO.getBucket(time)))
+                    .value("time", new Date(time))
+                    .value("value", row[MigrationQuery.VALUE_INDEX] == null ? null
+                        : row[MigrationQuery.VALUE_INDEX].toString());
+            } else {
+                long startTime = Long.parseLong(row[MigrationQuery.START_TIME_INDEX].toString());
+                long endTime = Long.parseLong(row[MigrationQuery.END_TIME_INDEX].toString());
+                expirationBaseMillis = endTime;
+                insert = QueryBuilder.insertInto(table.toString())
+                    .value("resource_id", Integer.parseInt(row[MigrationQuery.RESOURCE_INDEX].toString()))
+                    .value("bucket", new Date(HistoryDAO.getBucket(startTime)))
+                    .value("start_time", new Date(startTime))
+                    .value("end_time", new Date(endTime))
+                    .value("availability", Integer.parseInt(row[MigrationQuery.AVAILABILITY_TYPE_INDEX].toString()));
+            }
+
+            long itemTTLSeconds = (expectedTTLMillis - currentTimeMillis + expirationBaseMillis) / 1000l;
+            if (itemTTLSeconds > 0) {
+                batch.add(insert.using(ttl((int) itemTTLSeconds)));
+                batchSize++;
+            }
+
+            if (batchSize >= MAX_RAW_BATCH_TO_CASSANDRA) {
+                resultSetFutures.add(executeAsync(batch, config));
+                batch = QueryBuilder.batch();
+                batchSize = 0;
+            }
+        }
+
+        if (batchSize != 0) {
+            resultSetFutures.add(executeAsync(batch, config));
+        }
+
+        for (ResultSetFuture future : resultSetFutures) {
+            future.get();
+        }
+    }
+}
@@ -88,7 +88,7 @@ public class MetricsIndexMigrator extends AbstractMigrationWorker {
         }
     }
 
-    public void add(int scheduleId, long timestamp) throws Exception {
+    public synchronized void add(int scheduleId, long timestamp) throws Exception {
         if (validAccumulatorTable && timeLimit <= timestamp) {
             long alignedTimeSlice = dateTimeService.getTimeSlice(timestamp, sliceDuration).getMillis();
 
@@ -113,7 +113,7 @@ public class MetricsIndexMigrator extends AbstractMigrationWorker {
         }
     }
 
-    public void drain() throws Exception {
+    public synchronized void drain() throws Exception {
         if (log.isDebugEnabled()) {
             log.debug("Draining metrics index accumulator with " + currentCount + " entries");
         }
@@ -127,7 +127,7 @@ public class MetricsIndexMigrator extends AbstractMigrationWorker {
                 BoundStatement statement = updateMetricsIndex.bind(table.getAggregationBucket().toString(),
                     (scheduleId % metricsConfiguration.getIndexPartitions()), new Date(timestamp), scheduleId);
 
-                resultSetFutures.add(migratorConfiguration.getSession().executeAsync(statement));
+                resultSetFutures.add(executeAsync(statement, migratorConfiguration));
             }
         }
 
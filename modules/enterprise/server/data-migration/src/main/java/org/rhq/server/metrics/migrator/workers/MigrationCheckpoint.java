@@ -0,0 +1,105 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.server.metrics.migrator.workers;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.core.util.stream.StreamUtil;
+
+/**
+ * The partitions migrated so far, with their number of rows. Partitions found in the checkpoint are skipped, so that a
+ * migration that failed, or was stopped, resumes with the partitions it did not complete. Retries within a run skip
+ * them too.
+ * <p/>
+ * When backed by a file, every completed partition is appended to the file as a <code>key rows</code> line, which is
+ * flushed before the partition is considered done. Data written again by a resumed migration is harmless, since the
+ * inserts in the storage cluster are idempotent.
+ */
+public class MigrationCheckpoint {
+    private final Log log = LogFactory.getLog(MigrationCheckpoint.class);
+
+    private final File file;
+    private final Map<String, Long> migratedRows = new HashMap<String, Long>();
+
+    /**
+     * Creates a checkpoint kept in memory only.
+     */
+    public MigrationCheckpoint() {
+        this.file = null;
+    }
+
+    /**
+     * @param file the file the checkpoint is kept in
+     * @throws IOException if the file exists and cannot be read
+     */
+    public MigrationCheckpoint(File file) throws IOException {
+        this.file = file;
+        if (file.exists()) {
+            String content = StreamUtil.slurp(new FileReader(file));
+            // the last line is not a completed partition if it was cut by a crash
+            for (String line : content.substring(0, content.lastIndexOf('\n') + 1).split("\n")) {
+                int separator = line.lastIndexOf(' ');
+                if (separator > 0) {
+                    migratedRows.put(line.substring(0, separator), Long.parseLong(line.substring(separator + 1)));
+                }
+            }
+            log.info("Resuming the migration from " + file + ", " + migratedRows.size()
+                + " partitions were already migrated");
+        }
+    }
+
+    /**
+     * @return the number of rows of the partition if it was migrated, <code>null</code> otherwise
+     */
+    public synchronized Long getMigratedRows(String partitionKey) {
+        return migratedRows.get(partitionKey);
+    }
+
+    public synchronized void complete(String partitionKey, long rows) throws IOException {
+        if (file != null) {
+            Writer writer = new FileWriter(file, true);
+            try {
+                writer.write(partitionKey + " " + rows + "\n");
+            } finally {
+                writer.close();
+            }
+        }
+        migratedRows.put(partitionKey, rows);
+    }
+
+    /**
+     * Forgets the migrated partitions, once the whole migration completed.
+     */
+    public synchronized void clear() {
+        migratedRows.clear();
+        if (file != null && file.exists() && !file.delete()) {
+            log.warn("Unable to delete the migration checkpoint " + file);
+        }
+    }
+}
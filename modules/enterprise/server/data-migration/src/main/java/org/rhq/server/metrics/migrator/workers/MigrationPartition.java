@@ -0,0 +1,82 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.server.metrics.migrator.workers;
+
+/**
+ * A range of schedule ids of a source table, migrated as a unit. The bounds of the partitions are multiples of the
+ * partition size, so that the partitions of a table, and their checkpoint keys, stay the same from one run to the
+ * next as long as the partition size does not change.
+ */
+public class MigrationPartition {
+
+    private final String table;
+    private final int startScheduleId;
+    private final int endScheduleId;
+    private final String selectQuery;
+    private final MigrationProgress progress;
+
+    /**
+     * @param table the source table
+     * @param startScheduleId the first schedule id of the partition
+     * @param endScheduleId the schedule id following the last one of the partition
+     * @param selectQuery the query of the rows of the partition
+     * @param progress the progress of the migration of the table
+     */
+    public MigrationPartition(String table, int startScheduleId, int endScheduleId, String selectQuery,
+        MigrationProgress progress) {
+        this.table = table;
+        this.startScheduleId = startScheduleId;
+        this.endScheduleId = endScheduleId;
+        this.selectQuery = selectQuery;
+        this.progress = progress;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public int getStartScheduleId() {
+        return startScheduleId;
+    }
+
+    public int getEndScheduleId() {
+        return endScheduleId;
+    }
+
+    public String getSelectQuery() {
+        return selectQuery;
+    }
+
+    public MigrationProgress getProgress() {
+        return progress;
+    }
+
+    /**
+     * @return the key of the partition in the {@link MigrationCheckpoint checkpoint}
+     */
+    public String getKey() {
+        return table + ":" + startScheduleId + "-" + endScheduleId;
+    }
+
+    @Override
+    public String toString() {
+        return getKey();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.server.metrics.migrator.workers;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Tracks the migration of a source table, whose partitions are migrated concurrently, and logs the number of rows
+ * migrated, the rate and the estimated time left every {@link #REPORT_INTERVAL}. The rows of the partitions migrated
+ * by a previous run count as migrated, but not towards the rate.
+ */
+public class MigrationProgress {
+    private static final Log log = LogFactory.getLog(MigrationProgress.class);
+
+    public static final long REPORT_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+
+    private final String table;
+    private final long totalRows;
+    private final long startTime = System.currentTimeMillis();
+    private final AtomicLong migratedRows = new AtomicLong();
+    private final AtomicLong resumedRows = new AtomicLong();
+    private final AtomicLong lastReportTime = new AtomicLong(startTime);
+
+    /**
+     * @param table the source table
+     * @param totalRows the number of rows of the table when the migration started
+     */
+    public MigrationProgress(String table, long totalRows) {
+        this.table = table;
+        this.totalRows = totalRows;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public long getTotalRows() {
+        return totalRows;
+    }
+
+    /**
+     * Counts the rows of a partition migrated by a previous run.
+     */
+    public void resume(long rows) {
+        resumedRows.addAndGet(rows);
+    }
+
+    /**
+     * Counts migrated rows, and logs the progress if it was not logged for {@link #REPORT_INTERVAL}.
+     */
+    public void add(long rows) {
+        migratedRows.addAndGet(rows);
+
+        long now = System.currentTimeMillis();
+        long lastReport = lastReportTime.get();
+        if (now - lastReport >= REPORT_INTERVAL && lastReportTime.compareAndSet(lastReport, now)) {
+            log.info(this);
+        }
+    }
+
+    public long getMigratedRows() {
+        return migratedRows.get() + resumedRows.get();
+    }
+
+    /**
+     * @return the number of rows migrated per second by this run
+     */
+    public long getRowsPerSecond() {
+        long elapsed = System.currentTimeMillis() - startTime;
+        return elapsed == 0 ? 0 : migratedRows.get() * 1000 / elapsed;
+    }
+
+    /**
+     * @return the estimated time, in milliseconds, to migrate the rest of the table at the current rate, or -1 if no
+     * row was migrated yet
+     */
+    public long getRemainingTime() {
+        long rowsPerSecond = getRowsPerSecond();
+        if (rowsPerSecond == 0) {
+            return -1;
+        }
+        // rows written to the table after the count are migrated too
+        return Math.max(0, totalRows - getMigratedRows()) * 1000 / rowsPerSecond;
+    }
+
+    @Override
+    public String toString() {
+        long migrated = getMigratedRows();
+        long remainingTime = getRemainingTime();
+        return "- " + table + " - " + migrated + " of " + totalRows + " rows ("
+            + (totalRows == 0 ? 100 : Math.min(100, migrated * 100 / totalRows)) + "%), " + getRowsPerSecond()
+            + " rows/s, " + (remainingTime < 0 ? "unknown" : TimeUnit.MILLISECONDS.toMinutes(remainingTime) + " minutes")
+            + " left -";
+    }
+}
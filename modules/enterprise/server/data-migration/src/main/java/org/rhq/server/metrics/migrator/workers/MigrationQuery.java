@@ -43,7 +43,25 @@ public enum MigrationQuery {
 
     COUNT_RAW("SELECT COUNT(*) FROM %s"), SELECT_RAW_DATA(
         "SELECT schedule_id, time_stamp, value FROM %s ORDER BY schedule_id, time_stamp"), DELETE_RAW_ALL_DATA(
-        "DELETE FROM %s"), DELETE_RAW_ENTRY("DELETE FROM %s WHERE schedule_id = ?");
+        "DELETE FROM %s"), DELETE_RAW_ENTRY("DELETE FROM %s WHERE schedule_id = ?"),
+
+    SCHEDULE_ID_RANGE("SELECT MIN(schedule_id), MAX(schedule_id), COUNT(*) FROM %s"), SELECT_RAW_DATA_PARTITION(
+        "SELECT schedule_id, time_stamp, value FROM %s WHERE schedule_id >= %d AND schedule_id < %d "
+            + "ORDER BY schedule_id, time_stamp"), SELECT_AGGREGATE_DATA_PARTITION(
+        "SELECT schedule_id, time_stamp, value, minvalue, maxvalue FROM %s WHERE schedule_id >= %d AND schedule_id < %d "
+            + "ORDER BY schedule_id, time_stamp"),
+
+    COUNT_TRAIT_HISTORY("SELECT COUNT(*) FROM rhq_measurement_data_trait"), SELECT_TRAIT_HISTORY(
+        "SELECT schedule_id, time_stamp, value FROM rhq_measurement_data_trait WHERE time_stamp < "
+            + "(SELECT max(t2.time_stamp) FROM rhq_measurement_data_trait t2 "
+            + "WHERE t2.schedule_id = rhq_measurement_data_trait.schedule_id)"), DELETE_TRAIT_HISTORY(
+        "DELETE FROM rhq_measurement_data_trait WHERE time_stamp < "
+            + "(SELECT max(t2.time_stamp) FROM rhq_measurement_data_trait t2 "
+            + "WHERE t2.schedule_id = rhq_measurement_data_trait.schedule_id)"),
+
+    COUNT_AVAILABILITY_HISTORY("SELECT COUNT(*) FROM rhq_availability WHERE end_time < %d"), SELECT_AVAILABILITY_HISTORY(
+        "SELECT resource_id, start_time, end_time, availability_type FROM rhq_availability WHERE end_time < %d"), DELETE_AVAILABILITY_HISTORY(
+        "DELETE FROM rhq_availability WHERE end_time < %d");
 
     public static final int SCHEDULE_INDEX = 0;
     public static final int TIMESTAMP_INDEX = 1;
@@ -51,6 +69,11 @@ public enum MigrationQuery {
     public static final int MIN_VALUE_INDEX = 3;
     public static final int MAX_VALUE_INDEX = 4;
 
+    public static final int RESOURCE_INDEX = 0;
+    public static final int START_TIME_INDEX = 1;
+    public static final int END_TIME_INDEX = 2;
+    public static final int AVAILABILITY_TYPE_INDEX = 3;
+
     private String query;
 
     private MigrationQuery(String query) {
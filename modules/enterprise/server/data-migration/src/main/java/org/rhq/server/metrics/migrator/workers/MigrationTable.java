@@ -32,7 +32,9 @@ public enum MigrationTable {
     RAW("raw_metrics", Duration.standardDays(7).toStandardSeconds().getSeconds(), null, Bucket.ONE_HOUR),
     ONE_HOUR("one_hour_metrics", Duration.standardDays(14).toStandardSeconds().getSeconds(), Bucket.ONE_HOUR, Bucket.SIX_HOUR),
     SIX_HOUR("six_hour_metrics", Duration.standardDays(31).toStandardSeconds().getSeconds(), Bucket.SIX_HOUR, Bucket.TWENTY_FOUR_HOUR),
-    TWENTY_FOUR_HOUR("twenty_four_hour_metrics", Duration.standardDays(365).toStandardSeconds().getSeconds(), Bucket.TWENTY_FOUR_HOUR,null);
+    TWENTY_FOUR_HOUR("twenty_four_hour_metrics", Duration.standardDays(365).toStandardSeconds().getSeconds(), Bucket.TWENTY_FOUR_HOUR,null),
+    TRAIT_HISTORY("trait_history", Duration.standardDays(365).toStandardSeconds().getSeconds(), null, null),
+    AVAILABILITY_HISTORY("availability_history", Duration.standardDays(365).toStandardSeconds().getSeconds(), null, null);
 
     private final String tableName;
     private final int ttl;
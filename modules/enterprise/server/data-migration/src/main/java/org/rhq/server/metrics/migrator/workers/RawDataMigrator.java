@@ -70,17 +70,41 @@ public class RawDataMigrator extends AbstractMigrationWorker implements Callable
             recordCount += tableRecordCount;
         }
 
-        Telemetry telemetry = this.performMigration(Task.Estimate);
+        Telemetry telemetry = this.performEstimation();
         long estimatedTimeToMigrate = telemetry.getMigrationTime();
         long estimation = (recordCount / MAX_RECORDS_TO_LOAD_FROM_SQL / NUMBER_OF_BATCHES_FOR_ESTIMATION)
-            * estimatedTimeToMigrate;
+            * estimatedTimeToMigrate / config.getMigrationThreads();
         estimation += telemetry.getNonMigrationTime();
 
         return estimation;
     }
 
+    /**
+     * Migrates the partitions of all the raw tables together, the tables being of similar sizes.
+     */
     public void migrate() throws Exception {
-        performMigration(Task.Migrate);
+        List<MigrationPartition> partitions = new ArrayList<MigrationPartition>();
+        for (String table : getRawDataTables()) {
+            partitions.addAll(getPartitions(table, MigrationQuery.SELECT_RAW_DATA_PARTITION.toString(), config));
+        }
+
+        log.info("Start migrating raw tables, " + partitions.size() + " partitions");
+
+        migratePartitions(partitions, new RowInserter() {
+            @Override
+            public void insert(List<Object[]> rows) throws Exception {
+                insertDataToCassandra(rows);
+            }
+        }, config);
+        metricsIndexAccumulator.drain();
+
+        log.info("Done migrating raw tables---------------------");
+
+        if (config.isDeleteDataImmediatelyAfterMigration()) {
+            for (String table : getRawDataTables()) {
+                deleteTableData(table);
+            }
+        }
     }
 
     private long getRowCount(String countQuery) {
@@ -97,7 +121,10 @@ public class RawDataMigrator extends AbstractMigrationWorker implements Callable
         return count;
     }
 
-    private Telemetry performMigration(Task task) throws Exception {
+    /**
+     * Migrates the first batches of the raw tables, one table after the other.
+     */
+    private Telemetry performEstimation() throws Exception {
         Telemetry telemetry = new Telemetry();
         telemetry.getGeneralTimer().start();
 
@@ -114,7 +141,7 @@ public class RawDataMigrator extends AbstractMigrationWorker implements Callable
 
             String selectQuery = String.format(MigrationQuery.SELECT_RAW_DATA.toString(), table);
 
-            ExistingDataSource dataSource = getExistingDataSource(selectQuery, task, config);
+            ExistingDataSource dataSource = getExistingDataSource(selectQuery, Task.Estimate, config);
             dataSource.initialize();
 
             log.info("Start migrating raw table: " + table);
@@ -141,7 +168,7 @@ public class RawDataMigrator extends AbstractMigrationWorker implements Callable
                         log.error(e);
 
                         failureCount++;
-                        if (failureCount == MAX_AGGREGATE_BATCH_TO_CASSANDRA) {
+                        if (failureCount == MAX_NUMBER_OF_FAILURES) {
                             throw e;
                         }
                     }
@@ -150,19 +177,13 @@ public class RawDataMigrator extends AbstractMigrationWorker implements Callable
                 log.info("- " + table + " - " + lastMigratedRecord + " -");
 
                 numberOfBatchesMigrated++;
-                if (Task.Estimate.equals(task) && numberOfBatchesMigrated >= NUMBER_OF_BATCHES_FOR_ESTIMATION) {
+                if (numberOfBatchesMigrated >= NUMBER_OF_BATCHES_FOR_ESTIMATION) {
                     break;
                 }
             }
             telemetry.getMigrationTimer().suspend();
 
-            if (Task.Migrate.equals(task)) {
-                log.info("Done migrating raw table" + table + "---------------------");
-
-                if (config.isDeleteDataImmediatelyAfterMigration()) {
-                    deleteTableData(table);
-                }
-            } else if (numberOfBatchesMigrated >= NUMBER_OF_BATCHES_FOR_ESTIMATION) {
+            if (numberOfBatchesMigrated >= NUMBER_OF_BATCHES_FOR_ESTIMATION) {
                 break;
             }
 
@@ -232,14 +253,14 @@ public class RawDataMigrator extends AbstractMigrationWorker implements Callable
             }
 
             if (batchSize >= MAX_RAW_BATCH_TO_CASSANDRA) {
-                resultSetFutures.add(config.getSession().executeAsync(batch));
+                resultSetFutures.add(executeAsync(batch, config));
                 batch = QueryBuilder.batch();
                 batchSize = 0;
             }
         }
 
         if (batchSize != 0) {
-            resultSetFutures.add(config.getSession().executeAsync(batch));
+            resultSetFutures.add(executeAsync(batch, config));
         }
 
         for (ResultSetFuture future : resultSetFutures) {
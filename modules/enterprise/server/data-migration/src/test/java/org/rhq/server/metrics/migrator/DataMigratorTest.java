@@ -43,6 +43,7 @@ import org.testng.annotations.Test;
 import org.rhq.server.metrics.migrator.DataMigrator.DataMigratorConfiguration;
 import org.rhq.server.metrics.migrator.DataMigrator.DatabaseType;
 import org.rhq.server.metrics.migrator.workers.AggregateDataMigrator;
+import org.rhq.server.metrics.migrator.workers.MigrationCheckpoint;
 import org.rhq.server.metrics.migrator.workers.RawDataMigrator;
 
 @PrepareForTest({ DataMigrator.class, DataMigratorConfiguration.class, RawDataMigrator.class })
@@ -190,6 +191,8 @@ public class DataMigratorTest {
         when(mockConfig.isRun1HAggregateDataMigration()).thenReturn(true);
         when(mockConfig.isRun6HAggregateDataMigration()).thenReturn(true);
         when(mockConfig.isRun1DAggregateDataMigration()).thenReturn(true);
+        MigrationCheckpoint mockCheckpoint = mock(MigrationCheckpoint.class);
+        when(mockConfig.getCheckpoint()).thenReturn(mockCheckpoint);
 
         AggregateDataMigrator mockAggregateDataMigrator = mock(AggregateDataMigrator.class);
         PowerMockito.whenNew(AggregateDataMigrator.class).withArguments(any(), eq(mockConfig))
@@ -221,6 +224,7 @@ public class DataMigratorTest {
         verify(mockConfig, times(1)).isRun6HAggregateDataMigration();
         verify(mockConfig, times(1)).isRun1DAggregateDataMigration();
         verify(mockConfig, times(1)).isDeleteAllDataAtEndOfMigration();
+        verify(mockConfig, times(1)).getCheckpoint();
 
         PowerMockito.verifyNoMoreInteractions(mockConfig);
 
@@ -228,6 +232,10 @@ public class DataMigratorTest {
         verify(mockAggregateDataMigrator, times(3)).migrate();
         verifyNoMoreInteractions(mockAggregateDataMigrator);
 
+        // the migration completed, so it does not resume from the checkpoint if run again
+        verify(mockCheckpoint, times(1)).clear();
+        verifyNoMoreInteractions(mockCheckpoint);
+
         verifyNoMoreInteractions(mockEntityManager);
         verifyNoMoreInteractions(mockCassandraSession);
     }
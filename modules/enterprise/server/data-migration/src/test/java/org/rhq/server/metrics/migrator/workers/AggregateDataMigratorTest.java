@@ -31,6 +31,8 @@ import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
 
 import javax.persistence.EntityManager;
 
@@ -53,7 +55,7 @@ import org.rhq.server.metrics.migrator.DataMigrator.DatabaseType;
 import org.rhq.server.metrics.migrator.datasources.ScrollableDataSource;
 
 
-@PrepareForTest({ AggregateDataMigrator.class })
+@PrepareForTest({ AggregateDataMigrator.class, AbstractMigrationWorker.class })
 public class AggregateDataMigratorTest {
 
     @ObjectFactory
@@ -68,6 +70,7 @@ public class AggregateDataMigratorTest {
         DatabaseType databaseType = DatabaseType.Oracle;
         DataMigratorConfiguration mockConfig = mock(DataMigratorConfiguration.class);
         when(mockConfig.getDatabaseType()).thenReturn(databaseType);
+        when(mockConfig.getMigrationThreads()).thenReturn(2);
 
         MetricsIndexMigrator mockMetricsIndexUpdateAccumulator = mock(MetricsIndexMigrator.class);
         PowerMockito.whenNew(MetricsIndexMigrator.class)
@@ -125,6 +128,12 @@ public class AggregateDataMigratorTest {
         DatabaseType databaseType = DatabaseType.Oracle;
         DataMigratorConfiguration mockConfig = mock(DataMigratorConfiguration.class);
         when(mockConfig.getDatabaseType()).thenReturn(databaseType);
+        when(mockConfig.getMigrationThreads()).thenReturn(2);
+
+        when(mockConfig.getSchedulesPerPartition()).thenReturn(1000);
+        when(mockConfig.getWritePermits()).thenReturn(new Semaphore(100));
+        MigrationCheckpoint checkpoint = new MigrationCheckpoint();
+        when(mockConfig.getCheckpoint()).thenReturn(checkpoint);
 
         Session mockCassandraSession = mock(Session.class);
         when(mockConfig.getSession()).thenReturn(mockCassandraSession);
@@ -147,7 +156,8 @@ public class AggregateDataMigratorTest {
         org.hibernate.SQLQuery mockQuery = mock(org.hibernate.SQLQuery.class);
         when(mockStatelessSession.createSQLQuery(any(String.class))).thenReturn(mockQuery);
 
-        when(mockQuery.uniqueResult()).thenReturn("1000");
+        // the schedule ids of every table are in a single partition
+        when(mockQuery.uniqueResult()).thenReturn(new Object[] { 100, 100, 2 });
 
         ScrollableDataSource mockDataSource = mock(ScrollableDataSource.class);
         PowerMockito.whenNew(ScrollableDataSource.class).withArguments(eq(mockEntityManager), eq(databaseType), any())
@@ -186,12 +196,15 @@ public class AggregateDataMigratorTest {
         verify(mockMetricsIndexUpdateAccumulator, times(1)).drain();
 
         verify(mockCassandraSession, times(1)).executeAsync(any(Query.class));
+        verify(mockResultSetFuture, times(1)).addListener(any(Runnable.class), any(Executor.class));
         verify(mockResultSetFuture, times(1)).get();
 
         verifyNoMoreInteractions(mockDataSource);
         verifyNoMoreInteractions(mockCassandraSession);
         verifyNoMoreInteractions(mockResultSetFuture);
         verifyNoMoreInteractions(mockMetricsIndexUpdateAccumulator);
+
+        Assert.assertEquals(checkpoint.getMigratedRows("RHQ_MEASUREMENT_DATA_NUM_1H:0-1000"), Long.valueOf(2));
     }
 }
 
@@ -0,0 +1,58 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.server.metrics.migrator.workers;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import org.testng.annotations.Test;
+
+public class MigrationCheckpointTest {
+
+    @Test
+    public void testResume() throws Exception {
+        File file = File.createTempFile("data-migration", ".checkpoint");
+        try {
+            MigrationCheckpoint checkpoint = new MigrationCheckpoint(file);
+            checkpoint.complete("RHQ_MEAS_DATA_NUM_R00:0-1000", 30000);
+            checkpoint.complete("RHQ_MEAS_DATA_NUM_R00:1000-2000", 12);
+
+            // the last partition was being written when the migration stopped
+            FileWriter writer = new FileWriter(file, true);
+            writer.write("RHQ_MEAS_DATA_NUM_R00:2000-3000 4");
+            writer.close();
+
+            MigrationCheckpoint resumed = new MigrationCheckpoint(file);
+            assertEquals(resumed.getMigratedRows("RHQ_MEAS_DATA_NUM_R00:0-1000"), Long.valueOf(30000));
+            assertEquals(resumed.getMigratedRows("RHQ_MEAS_DATA_NUM_R00:1000-2000"), Long.valueOf(12));
+            assertNull(resumed.getMigratedRows("RHQ_MEAS_DATA_NUM_R01:0-1000"));
+
+            resumed.clear();
+            assertNull(resumed.getMigratedRows("RHQ_MEAS_DATA_NUM_R00:0-1000"));
+            assertFalse(file.exists());
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -178,6 +178,11 @@ public class ServerInstallUtil {
     private static final String JDBC_DRIVER_POSTGRES = "postgres";
     private static final String JDBC_DRIVER_ORACLE = "oracle";
     private static final String JMS_ALERT_CONDITION_QUEUE = "AlertConditionQueue";
+    private static final String JMS_ALERT_NOTIFICATION_QUEUE = "AlertNotificationQueue";
+    // a notification is redelivered while its alert sender is saturated, so redeliveries are spaced out; the number
+    // of attempts must match AlertNotificationConsumerBean.MAX_DELIVERY_ATTEMPTS, which logs the final failure
+    private static final long JMS_ALERT_NOTIFICATION_REDELIVERY_DELAY = 10000L;
+    private static final int JMS_ALERT_NOTIFICATION_MAX_DELIVERY_ATTEMPTS = 30;
     private static final String JMS_DRIFT_CHANGESET_QUEUE = "DriftChangesetQueue";
     private static final String JMS_DRIFT_FILE_QUEUE = "DriftFileQueue";
     private static final String RHQ_CACHE_CONTAINER = "rhq";
@@ -502,6 +507,35 @@ public class ServerInstallUtil {
         } else {
             LOG.info("JMS Queue [" + queueName + "] already exists, skipping the creation request");
         }
+
+        queueName = JMS_ALERT_NOTIFICATION_QUEUE;
+        if (!client.isQueue(queueName)) {
+            entryNames.clear();
+            entryNames.add("queue/" + queueName);
+            ModelNode request = client.createNewQueueRequest(queueName, true, entryNames);
+            ModelNode results = client.execute(request);
+            if (!MessagingJBossASClient.isSuccess(results)) {
+                throw new FailureException(results, "Failed to create JMS Queue [" + queueName + "]");
+            } else {
+                LOG.info("JMS queue [" + queueName + "] created");
+            }
+        } else {
+            LOG.info("JMS Queue [" + queueName + "] already exists, skipping the creation request");
+        }
+
+        String match = "jms.queue." + JMS_ALERT_NOTIFICATION_QUEUE;
+        if (!client.isAddressSetting(match)) {
+            ModelNode request = client.createNewAddressSettingRequest(match, JMS_ALERT_NOTIFICATION_REDELIVERY_DELAY,
+                JMS_ALERT_NOTIFICATION_MAX_DELIVERY_ATTEMPTS);
+            ModelNode results = client.execute(request);
+            if (!MessagingJBossASClient.isSuccess(results)) {
+                throw new FailureException(results, "Failed to create JMS address settings [" + match + "]");
+            } else {
+                LOG.info("JMS address settings [" + match + "] created");
+            }
+        } else {
+            LOG.info("JMS address settings [" + match + "] already exist, skipping the creation request");
+        }
     }
 
     /**
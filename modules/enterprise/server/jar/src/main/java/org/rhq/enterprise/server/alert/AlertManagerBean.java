@@ -29,6 +29,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
@@ -69,6 +70,7 @@ import org.rhq.core.domain.util.PageList;
 import org.rhq.core.server.MeasurementConverter;
 import org.rhq.core.util.collection.ArrayUtils;
 import org.rhq.enterprise.server.RHQConstants;
+import org.rhq.enterprise.server.alert.engine.jms.AlertNotificationProducerLocal;
 import org.rhq.enterprise.server.alert.i18n.AlertI18NFactory;
 import org.rhq.enterprise.server.alert.i18n.AlertI18NResourceKeys;
 import org.rhq.enterprise.server.auth.SubjectManagerLocal;
@@ -121,6 +123,10 @@ public class AlertManagerBean implements AlertManagerLocal, AlertManagerRemote {
     private OperationManagerLocal operationManager;
     @EJB
     private EmailManagerLocal emailManager;
+    @EJB
+    private AlertNotificationProducerLocal alertNotificationProducer;
+    @EJB
+    private AlertNotificationDispatcher alertNotificationDispatcher;
 
     @Override
     public int deleteAlerts(Subject user, int[] alertIds) {
@@ -543,6 +549,9 @@ public class AlertManagerBean implements AlertManagerLocal, AlertManagerRemote {
      * This is the core of the alert sending process. For each AlertNotification that is hanging
      * on the alerts definition, the sender is instantiated and its send() method called. If a sender
      * returns a list of email addresses, those will be collected and sent at the end.
+     * <p/>
+     * Unless {@link AlertNotificationDispatcher#ASYNC_PROPERTY} is false, the notifications are only queued here and
+     * sent by {@link #sendAlertNotificationNSTx(int, int, boolean)}, so that slow senders do not hold up alert processing.
      * @param alert the fired alert
      */
     @Override
@@ -553,65 +562,173 @@ public class AlertManagerBean implements AlertManagerLocal, AlertManagerRemote {
          * to give them some way to explicitly try to re-send the notification for some client-side auditing purposes
          */
         try {
+            List<AlertNotification> alertNotifications = alert.getAlertDefinition().getAlertNotifications();
+            if (alertNotifications == null || alertNotifications.isEmpty()) {
+                return;
+            }
+
+            if (alertNotificationDispatcher.isAsync()) {
+                try {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Queuing alert notifications for " + alert.toSimpleString() + "...");
+                    }
+                    alertNotificationProducer.sendAlertNotificationMessages(alert);
+                    return;
+                } catch (Throwable t) {
+                    log.warn("Failed to queue the notifications for [" + alert.toSimpleString()
+                        + "], sending them now: " + t.getMessage());
+                }
+            }
+
             if (log.isDebugEnabled()) {
                 log.debug("Sending alert notifications for " + alert.toSimpleString() + "...");
             }
-            List<AlertNotification> alertNotifications = alert.getAlertDefinition().getAlertNotifications();
-
-            if (alertNotifications != null && alertNotifications.size() > 0) {
-                AlertSenderPluginManager alertSenderPluginManager = getAlertPluginManager();
+            AlertSenderPluginManager alertSenderPluginManager = getAlertPluginManager();
 
-                for (AlertNotification alertNotification : alertNotifications) {
+            for (AlertNotification alertNotification : alertNotifications) {
+                try {
                     try {
-                        AlertNotificationLog notificationLog = null;
+                        sendAlertNotification(alert, alertNotification, alertSenderPluginManager);
+                    } catch (AlertNotificationDispatcher.SenderSaturatedException e) {
+                        addNotificationLog(alert, new AlertNotificationLog(alert, alertNotification.getSenderName(),
+                            ResultState.FAILURE, e.getMessage()));
+                    }
+                } catch (Throwable t) {
+                    log.error(
+                        "Failed to send notification [" + alertNotification + "] for [" + alert.toSimpleString()
+                            + "].", t);
+                }
+            }
+        } catch (Throwable t) {
+            log.error("Failed to send all notifications for [" + alert.toSimpleString() + "].", t);
+        }
+    }
 
-                        String senderName = alertNotification.getSenderName();
-                        if (alertSenderPluginManager == null) {
-                            notificationLog = new AlertNotificationLog(alert, senderName, ResultState.FAILURE,
-                                "Notification was not sent as alert sender plugins are not yet initialized ");
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void sendAlertNotificationNSTx(int alertId, int alertNotificationId, boolean lastAttempt) {
+        Alert alert = alertManager.getAlertForNotificationsNewTx(alertId);
+        if (alert == null) {
+            log.info("Alert[id=" + alertId + "] has been removed after it was fired; its notification[id="
+                + alertNotificationId + "] will not be sent");
+            return;
+        }
 
-                        } else if (senderName == null) {
-                            notificationLog = new AlertNotificationLog(alert, senderName, ResultState.FAILURE,
-                                "Sender '" + senderName + "' is not defined");
+        AlertNotification alertNotification = null;
+        for (AlertNotification candidate : alert.getAlertDefinition().getAlertNotifications()) {
+            if (candidate.getId() == alertNotificationId) {
+                alertNotification = candidate;
+                break;
+            }
+        }
+        if (alertNotification == null) {
+            log.info("AlertNotification[id=" + alertNotificationId + "] has been removed after "
+                + alert.toSimpleString() + " was fired; it will not be sent");
+            return;
+        }
 
-                        } else {
-                            AlertSender<?> notificationSender = alertSenderPluginManager
-                                .getAlertSenderForNotification(alertNotification);
-                            if (notificationSender == null) {
-                                notificationLog = new AlertNotificationLog(alert, senderName, ResultState.FAILURE,
-                                    "Failed to obtain a sender with given name");
-                            } else {
-                                try {
-                                    SenderResult result = notificationSender.send(alert);
-                                    if (log.isDebugEnabled()) {
-                                        log.debug(result);
-                                    }
-
-                                    if (result == null) {
-                                        notificationLog = new AlertNotificationLog(alert, senderName,
-                                            ResultState.UNKNOWN, "Sender did not return any result");
-                                    } else {
-                                        notificationLog = new AlertNotificationLog(alert, senderName, result);
-                                    }
-                                } catch (Throwable t) {
-                                    log.error("Notification processing terminated abruptly" + t.getMessage());
-                                    notificationLog = new AlertNotificationLog(alert, senderName, ResultState.FAILURE,
-                                        "Notification processing terminated abruptly, cause: " + t.getMessage());
-                                }
-                            }
-                        }
+        try {
+            sendAlertNotification(alert, alertNotification, getAlertPluginManager());
+        } catch (AlertNotificationDispatcher.SenderSaturatedException e) {
+            if (!lastAttempt) {
+                throw e;
+            }
+            log.error("Giving up on notification [" + alertNotification + "] for [" + alert.toSimpleString() + "]: "
+                + e.getMessage());
+            addNotificationLog(alert, new AlertNotificationLog(alert, alertNotification.getSenderName(),
+                ResultState.FAILURE, "Notification was not sent, the sender stayed saturated: " + e.getMessage()));
+        } catch (Throwable t) {
+            log.error("Failed to send notification [" + alertNotification + "] for [" + alert.toSimpleString() + "].",
+                t);
+        }
+    }
 
-                        alertManager.addNotificationLog(alert.getId(), notificationLog);
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public Alert getAlertForNotificationsNewTx(int alertId) {
+        Alert alert = entityManager.find(Alert.class, alertId);
+        if (alert == null) {
+            return null;
+        }
+        // loads the definition the same way as when the alert was fired
+        alertDefinitionManager.getAlertDefinitionById(subjectManager.getOverlord(), alert.getAlertDefinition()
+            .getId());
+        alert.getAlertDefinition().getResource().getName();
+        fetchCollectionFields(alert);
+        return alert;
+    }
 
-                    } catch (Throwable t) {
-                        log.error(
-                            "Failed to send notification [" + alertNotification + "] for [" + alert.toSimpleString()
-                                + "].", t);
-                    }
+    /**
+     * Hands the notification over to its sender without waiting for it. The notification log is added once the sender
+     * completes or times out, from a thread of the {@link AlertNotificationDispatcher}.
+     *
+     * @throws AlertNotificationDispatcher.SenderSaturatedException if the sender cannot take the notification now
+     */
+    private void sendAlertNotification(final Alert alert, AlertNotification alertNotification,
+        AlertSenderPluginManager alertSenderPluginManager) {
+        final String senderName = alertNotification.getSenderName();
+        if (alertSenderPluginManager == null) {
+            addNotificationLog(alert, new AlertNotificationLog(alert, senderName, ResultState.FAILURE,
+                "Notification was not sent as alert sender plugins are not yet initialized "));
+            return;
+
+        } else if (senderName == null) {
+            addNotificationLog(alert, new AlertNotificationLog(alert, senderName, ResultState.FAILURE, "Sender '"
+                + senderName + "' is not defined"));
+            return;
+        }
+
+        final AlertSender<?> notificationSender = alertSenderPluginManager
+            .getAlertSenderForNotification(alertNotification);
+        if (notificationSender == null) {
+            addNotificationLog(alert, new AlertNotificationLog(alert, senderName, ResultState.FAILURE,
+                "Failed to obtain a sender with given name"));
+            return;
+        }
+
+        alertNotificationDispatcher.send(senderName, new Callable<SenderResult>() {
+            @Override
+            public SenderResult call() throws Exception {
+                return notificationSender.send(alert);
+            }
+        }, new AlertNotificationDispatcher.NotificationCallback() {
+            @Override
+            public void sent(SenderResult result) {
+                if (log.isDebugEnabled()) {
+                    log.debug(result);
                 }
+
+                if (result == null) {
+                    addNotificationLog(alert, new AlertNotificationLog(alert, senderName, ResultState.UNKNOWN,
+                        "Sender did not return any result"));
+                } else {
+                    addNotificationLog(alert, new AlertNotificationLog(alert, senderName, result));
+                }
+            }
+
+            @Override
+            public void failed(Throwable cause) {
+                log.error("Notification processing terminated abruptly" + cause.getMessage());
+                addNotificationLog(alert, new AlertNotificationLog(alert, senderName, ResultState.FAILURE,
+                    "Notification processing terminated abruptly, cause: " + cause.getMessage()));
+            }
+
+            @Override
+            public void timedOut(long timeout) {
+                log.error("Notification processing timed out for [" + alert.toSimpleString() + "] and sender '"
+                    + senderName + "'");
+                addNotificationLog(alert, new AlertNotificationLog(alert, senderName, ResultState.FAILURE,
+                    "Notification processing did not complete within " + timeout + "ms"));
             }
+        });
+    }
+
+    private void addNotificationLog(Alert alert, AlertNotificationLog notificationLog) {
+        try {
+            alertManager.addNotificationLog(alert.getId(), notificationLog);
         } catch (Throwable t) {
-            log.error("Failed to send all notifications for [" + alert.toSimpleString() + "].", t);
+            log.error("Failed to add the notification log of sender '" + notificationLog.getSender() + "' to ["
+                + alert.toSimpleString() + "].", t);
         }
     }
 
@@ -681,6 +798,13 @@ public class AlertManagerBean implements AlertManagerLocal, AlertManagerRemote {
         String messageBody = alertMessage.values().iterator().next();
 
         Set<String> uniqueAddresses = new HashSet<String>(emailAddresses);
+        if (alertNotificationDispatcher.addToDigest(uniqueAddresses, messageSubject, messageBody)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Notifications for " + alert.toSimpleString() + " will be sent with the next digest");
+            }
+            return new ArrayList<String>(0);
+        }
+
         Collection<String> badAddresses = emailManager.sendEmail(uniqueAddresses, messageSubject, messageBody);
 
         if (log.isDebugEnabled()) {
@@ -53,6 +53,23 @@ public interface AlertManagerLocal {
 
     void sendAlertNotificationsNSTx(Alert alert);
 
+    /**
+     * Sends one notification of an alert queued by {@link #sendAlertNotificationsNSTx(Alert)}. This returns once the
+     * sender took the notification, its log is added when the sender completes.
+     *
+     * @param lastAttempt true if the notification will not be delivered again, in which case a saturated sender is
+     *                    logged as a failure of the notification instead of being thrown
+     *
+     * @throws AlertNotificationDispatcher.SenderSaturatedException if the sender cannot take the notification now
+     */
+    void sendAlertNotificationNSTx(int alertId, int alertNotificationId, boolean lastAttempt);
+
+    /**
+     * @return The alert with its definition, condition logs and notification configurations loaded, or null if the
+     * alert does not exist anymore
+     */
+    Alert getAlertForNotificationsNewTx(int alertId);
+
     int getAlertCountByMeasurementDefinitionAndResources(int measurementDefinitionId, int[] resources, long beginDate,
         long endDate);
 
@@ -0,0 +1,455 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.alert;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.ApplicationException;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.EJB;
+import javax.ejb.LocalBean;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.Timeout;
+import javax.ejb.Timer;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.core.domain.alert.notification.SenderResult;
+import org.rhq.core.util.ObjectNameFactory;
+import org.rhq.enterprise.server.RHQConstants;
+import org.rhq.enterprise.server.core.EmailManagerLocal;
+import org.rhq.enterprise.server.util.JMXUtil;
+
+/**
+ * Runs alert senders on bounded pools, one per sender, so that a slow or hung sender only delays its own
+ * notifications. Notifications are handed over to the pools without waiting for them, their outcome is reported to a
+ * callback from the pool thread, or from a timer thread when the sender does not complete in time. It also collects alert emails into periodic digests, one email per recipient, when
+ * {@link #DIGEST_PERIOD_PROPERTY} is set.
+ */
+@Singleton
+@Startup
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class AlertNotificationDispatcher implements AlertNotificationDispatcherMBean {
+    private static final Log LOG = LogFactory.getLog(AlertNotificationDispatcher.class);
+
+    private static final ObjectName OBJECT_NAME = ObjectNameFactory.create("rhq:service=AlertNotificationDispatcher");
+
+    /**
+     * When false, notifications are sent in the thread that fired the alert instead of being queued. Defaults to true.
+     */
+    public static final String ASYNC_PROPERTY = "rhq.server.alert.notification.async";
+
+    /**
+     * The number of threads of each sender, 5 by default.
+     */
+    public static final String SENDER_THREADS_PROPERTY = "rhq.server.alert.notification.sender-threads";
+
+    /**
+     * The number of notifications that can wait for each sender, 100 by default. Notifications beyond that are
+     * rejected and left on the notification queue.
+     */
+    public static final String SENDER_QUEUE_SIZE_PROPERTY = "rhq.server.alert.notification.sender-queue-size";
+
+    /**
+     * How long a sender has to complete a notification, in milliseconds, 60 seconds by default.
+     */
+    public static final String SENDER_TIMEOUT_PROPERTY = "rhq.server.alert.notification.sender-timeout";
+
+    /**
+     * How often alert emails are sent as a digest, in milliseconds. Alert emails are sent right away when not set.
+     */
+    public static final String DIGEST_PERIOD_PROPERTY = "rhq.server.alert.email.digest-period";
+
+    /**
+     * Thrown when a sender has no room left for more notifications.
+     */
+    @ApplicationException(rollback = true)
+    public static class SenderSaturatedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public SenderSaturatedException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Receives the outcome of a notification. Exactly one of the methods is called, once the sender completed or timed
+     * out, from a thread of the dispatcher.
+     */
+    public interface NotificationCallback {
+        /**
+         * @param result the result of the sender, which can be null
+         */
+        void sent(SenderResult result);
+
+        void failed(Throwable cause);
+
+        /**
+         * @param timeout the time the sender had to complete, in milliseconds
+         */
+        void timedOut(long timeout);
+    }
+
+    private static class SenderStats {
+        final AtomicLong sent = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong timedOut = new AtomicLong();
+        final AtomicLong totalLatency = new AtomicLong();
+        final AtomicLong maxLatency = new AtomicLong();
+
+        void record(long latency) {
+            sent.incrementAndGet();
+            totalLatency.addAndGet(latency);
+            long max = maxLatency.get();
+            while (latency > max && !maxLatency.compareAndSet(max, latency)) {
+                max = maxLatency.get();
+            }
+        }
+    }
+
+    @EJB
+    private EmailManagerLocal emailManager;
+
+    @javax.annotation.Resource
+    private TimerService timerService;
+
+    private final ConcurrentMap<String, ThreadPoolExecutor> executors = new ConcurrentHashMap<String, ThreadPoolExecutor>();
+    private final ConcurrentMap<String, SenderStats> stats = new ConcurrentHashMap<String, SenderStats>();
+    private ScheduledExecutorService timeouts;
+
+    // recipient -> the subjects and bodies of the alert emails waiting for the next digest
+    private final Map<String, List<String[]>> digests = new LinkedHashMap<String, List<String[]>>();
+
+    private int senderThreads;
+    private int senderQueueSize;
+    private long senderTimeout;
+    private long digestPeriod;
+
+    @PostConstruct
+    private void init() {
+        senderThreads = Integer.getInteger(SENDER_THREADS_PROPERTY, 5);
+        senderQueueSize = Integer.getInteger(SENDER_QUEUE_SIZE_PROPERTY, 100);
+        senderTimeout = Long.getLong(SENDER_TIMEOUT_PROPERTY, TimeUnit.SECONDS.toMillis(60));
+        digestPeriod = Long.getLong(DIGEST_PERIOD_PROPERTY, 0L);
+        timeouts = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "AlertSenderTimeouts");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        if (digestPeriod > 0) {
+            timerService.createIntervalTimer(digestPeriod, digestPeriod, new TimerConfig(null, false));
+        }
+        JMXUtil.registerMBean(this, OBJECT_NAME);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        JMXUtil.unregisterMBeanQuietly(OBJECT_NAME);
+        for (ThreadPoolExecutor executor : executors.values()) {
+            executor.shutdown();
+        }
+        timeouts.shutdownNow();
+        sendDigests();
+    }
+
+    public boolean isAsync() {
+        return Boolean.parseBoolean(System.getProperty(ASYNC_PROPERTY, "true"));
+    }
+
+    /**
+     * Hands the notification over to the pool of its sender, and returns without waiting for it. A notification that
+     * does not complete within the sender timeout is interrupted, so that it gives its pool thread back, and reported
+     * as timed out.
+     *
+     * @throws SenderSaturatedException if the pool of the sender is full
+     */
+    public void send(String senderName, final Callable<SenderResult> notification,
+        final NotificationCallback callback) {
+        final SenderStats senderStats = getStats(senderName);
+        final long start = System.currentTimeMillis();
+        // set by whichever of the sender and the timeout comes first, the other one then does nothing
+        final AtomicBoolean completed = new AtomicBoolean();
+        final AtomicReference<ScheduledFuture<?>> timeout = new AtomicReference<ScheduledFuture<?>>();
+        final Future<?> task;
+        try {
+            task = getExecutor(senderName).submit(new Runnable() {
+                @Override
+                public void run() {
+                    SenderResult result = null;
+                    Throwable failure = null;
+                    try {
+                        result = notification.call();
+                    } catch (Throwable t) {
+                        failure = t;
+                    } finally {
+                        senderStats.record(System.currentTimeMillis() - start);
+                    }
+                    if (!completed.compareAndSet(false, true)) {
+                        return;
+                    }
+                    ScheduledFuture<?> scheduledTimeout = timeout.get();
+                    if (scheduledTimeout != null) {
+                        scheduledTimeout.cancel(false);
+                    }
+                    try {
+                        if (failure == null) {
+                            callback.sent(result);
+                        } else {
+                            callback.failed(failure);
+                        }
+                    } catch (Throwable t) {
+                        LOG.error("Failed to report the outcome of an alert notification", t);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            senderStats.rejected.incrementAndGet();
+            throw new SenderSaturatedException("Sender '" + senderName + "' has " + senderQueueSize
+                + " notifications waiting already");
+        }
+
+        timeout.set(timeouts.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (!completed.compareAndSet(false, true)) {
+                    return;
+                }
+                task.cancel(true);
+                senderStats.timedOut.incrementAndGet();
+                try {
+                    callback.timedOut(senderTimeout);
+                } catch (Throwable t) {
+                    LOG.error("Failed to report the time out of an alert notification", t);
+                }
+            }
+        }, senderTimeout, TimeUnit.MILLISECONDS));
+        if (completed.get()) {
+            // the sender completed before its timeout was scheduled
+            timeout.get().cancel(false);
+        }
+    }
+
+    private ThreadPoolExecutor getExecutor(final String senderName) {
+        ThreadPoolExecutor executor = executors.get(senderName);
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(senderThreads, senderThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(senderQueueSize), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "AlertSender-" + senderName + "-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            executor.allowCoreThreadTimeOut(true);
+            ThreadPoolExecutor existing = executors.putIfAbsent(senderName, executor);
+            if (existing != null) {
+                executor.shutdown();
+                executor = existing;
+            }
+        }
+        return executor;
+    }
+
+    private SenderStats getStats(String senderName) {
+        SenderStats senderStats = stats.get(senderName);
+        if (senderStats == null) {
+            senderStats = new SenderStats();
+            SenderStats existing = stats.putIfAbsent(senderName, senderStats);
+            if (existing != null) {
+                senderStats = existing;
+            }
+        }
+        return senderStats;
+    }
+
+    /**
+     * Keeps the email for the next digest of each recipient.
+     *
+     * @return false if digests are disabled, in which case the email must be sent right away
+     */
+    public boolean addToDigest(Collection<String> recipients, String subject, String body) {
+        if (digestPeriod <= 0) {
+            return false;
+        }
+        synchronized (digests) {
+            for (String recipient : recipients) {
+                List<String[]> emails = digests.get(recipient);
+                if (emails == null) {
+                    emails = new ArrayList<String[]>();
+                    digests.put(recipient, emails);
+                }
+                emails.add(new String[] { subject, body });
+            }
+        }
+        return true;
+    }
+
+    @Timeout
+    public void sendDigests(Timer timer) {
+        sendDigests();
+    }
+
+    private void sendDigests() {
+        Map<String, List<String[]>> pending;
+        synchronized (digests) {
+            if (digests.isEmpty()) {
+                return;
+            }
+            pending = new LinkedHashMap<String, List<String[]>>(digests);
+            digests.clear();
+        }
+
+        for (Map.Entry<String, List<String[]>> digest : pending.entrySet()) {
+            List<String[]> emails = digest.getValue();
+            String subject;
+            StringBuilder body = new StringBuilder();
+            if (emails.size() == 1) {
+                subject = emails.get(0)[0];
+                body.append(emails.get(0)[1]);
+            } else {
+                subject = "[" + RHQConstants.PRODUCT_NAME + "] " + emails.size() + " Alerts";
+                for (String[] email : emails) {
+                    if (body.length() > 0) {
+                        body.append("\n----------------------------------------\n\n");
+                    }
+                    body.append(email[1]);
+                }
+            }
+            try {
+                Collection<String> badAddresses = emailManager.sendEmail(Collections.singleton(digest.getKey()),
+                    subject, body.toString());
+                if (!badAddresses.isEmpty()) {
+                    LOG.warn("Failed to send the digest of " + emails.size() + " alert emails to " + badAddresses);
+                }
+            } catch (Exception e) {
+                LOG.error("Failed to send the digest of " + emails.size() + " alert emails to [" + digest.getKey()
+                    + "]", e);
+            }
+        }
+    }
+
+    @Override
+    public Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> depths = new HashMap<String, Integer>();
+        for (Map.Entry<String, ThreadPoolExecutor> executor : executors.entrySet()) {
+            depths.put(executor.getKey(), executor.getValue().getQueue().size() + executor.getValue().getActiveCount());
+        }
+        return depths;
+    }
+
+    @Override
+    public Map<String, Long> getSentCounts() {
+        Map<String, Long> counts = new HashMap<String, Long>();
+        for (Map.Entry<String, SenderStats> senderStats : stats.entrySet()) {
+            counts.put(senderStats.getKey(), senderStats.getValue().sent.get());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getRejectedCounts() {
+        Map<String, Long> counts = new HashMap<String, Long>();
+        for (Map.Entry<String, SenderStats> senderStats : stats.entrySet()) {
+            counts.put(senderStats.getKey(), senderStats.getValue().rejected.get());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getTimedOutCounts() {
+        Map<String, Long> counts = new HashMap<String, Long>();
+        for (Map.Entry<String, SenderStats> senderStats : stats.entrySet()) {
+            counts.put(senderStats.getKey(), senderStats.getValue().timedOut.get());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getAverageLatencies() {
+        Map<String, Long> latencies = new HashMap<String, Long>();
+        for (Map.Entry<String, SenderStats> senderStats : stats.entrySet()) {
+            long sent = senderStats.getValue().sent.get();
+            latencies.put(senderStats.getKey(), sent == 0 ? 0L : senderStats.getValue().totalLatency.get() / sent);
+        }
+        return latencies;
+    }
+
+    @Override
+    public Map<String, Long> getMaxLatencies() {
+        Map<String, Long> latencies = new HashMap<String, Long>();
+        for (Map.Entry<String, SenderStats> senderStats : stats.entrySet()) {
+            latencies.put(senderStats.getKey(), senderStats.getValue().maxLatency.get());
+        }
+        return latencies;
+    }
+
+    @Override
+    public int getDigestRecipientCount() {
+        synchronized (digests) {
+            return digests.size();
+        }
+    }
+
+    @Override
+    public void resetStatistics() {
+        stats.clear();
+    }
+}
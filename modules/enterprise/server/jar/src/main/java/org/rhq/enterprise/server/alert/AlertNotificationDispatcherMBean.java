@@ -0,0 +1,56 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.alert;
+
+import java.util.Map;
+
+/**
+ * Exposes the state of the alert notification senders, keyed by sender name.
+ */
+public interface AlertNotificationDispatcherMBean {
+
+    /**
+     * @return The number of notifications waiting for or being processed by each sender
+     */
+    Map<String, Integer> getQueueDepths();
+
+    Map<String, Long> getSentCounts();
+
+    Map<String, Long> getRejectedCounts();
+
+    /**
+     * @return The number of notifications each sender did not complete in time
+     */
+    Map<String, Long> getTimedOutCounts();
+
+    /**
+     * @return The average time in milliseconds between handing a notification to a sender and its completion
+     */
+    Map<String, Long> getAverageLatencies();
+
+    Map<String, Long> getMaxLatencies();
+
+    /**
+     * @return The number of recipients with alert emails waiting for the next digest
+     */
+    int getDigestRecipientCount();
+
+    void resetStatistics();
+}
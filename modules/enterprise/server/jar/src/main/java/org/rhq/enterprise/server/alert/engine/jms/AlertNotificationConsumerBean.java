@@ -0,0 +1,93 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.alert.engine.jms;
+
+import javax.ejb.ActivationConfigProperty;
+import javax.ejb.EJB;
+import javax.ejb.MessageDriven;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.ObjectMessage;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.enterprise.server.alert.AlertManagerLocal;
+import org.rhq.enterprise.server.alert.AlertNotificationDispatcher;
+import org.rhq.enterprise.server.alert.engine.jms.model.AlertNotificationMessage;
+
+/**
+ * Sends the notifications queued by the {@link AlertNotificationProducerBean}. A message is acknowledged as soon as
+ * its notification is handed over to its sender, without waiting for the sender, so that a hung sender does not hold
+ * up the consumers. A notification that cannot be handed over because the sender is saturated is left on the queue for
+ * redelivery, until its last delivery attempt, where it is logged as failed instead.
+ */
+@MessageDriven(activationConfig = {
+    @ActivationConfigProperty(propertyName = "destinationType", propertyValue = "javax.jms.Queue"),
+    @ActivationConfigProperty(propertyName = "destination", propertyValue = "java:/queue/AlertNotificationQueue"),
+    @ActivationConfigProperty(propertyName = "acknowledgeMode", propertyValue = "Auto-acknowledge") })
+public class AlertNotificationConsumerBean implements MessageListener {
+
+    /**
+     * The number of times a notification is delivered, as set on the AlertNotificationQueue address settings by the
+     * installer.
+     */
+    public static final int MAX_DELIVERY_ATTEMPTS = 30;
+
+    private final Log log = LogFactory.getLog(AlertNotificationConsumerBean.class);
+
+    @EJB
+    private AlertManagerLocal alertManager;
+
+    @Override
+    public void onMessage(Message message) {
+        AlertNotificationMessage notificationMessage = null;
+
+        try {
+            ObjectMessage objectMessage = (ObjectMessage) message;
+            notificationMessage = (AlertNotificationMessage) objectMessage.getObject();
+        } catch (Throwable t) {
+            log.error("Error getting content of jms message", t);
+            return;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Received message: " + notificationMessage);
+        }
+
+        boolean lastAttempt = false;
+        try {
+            lastAttempt = message.getIntProperty("JMSXDeliveryCount") >= MAX_DELIVERY_ATTEMPTS;
+        } catch (JMSException e) {
+            log.debug("Could not get the delivery count of " + notificationMessage + " - " + e.toString());
+        }
+
+        try {
+            alertManager.sendAlertNotificationNSTx(notificationMessage.getAlertId(),
+                notificationMessage.getAlertNotificationId(), lastAttempt);
+        } catch (AlertNotificationDispatcher.SenderSaturatedException e) {
+            log.warn(e.getMessage() + ", " + notificationMessage + " will be redelivered");
+            throw e;
+        } catch (Throwable t) {
+            log.error("Error handling " + notificationMessage + " - " + t.toString());
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.alert.engine.jms;
+
+import javax.annotation.Resource;
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+
+import org.rhq.core.domain.alert.Alert;
+import org.rhq.core.domain.alert.notification.AlertNotification;
+import org.rhq.enterprise.server.alert.engine.jms.model.AlertNotificationMessage;
+
+/**
+ * Hands the notifications of fired alerts over to the {@link AlertNotificationConsumerBean}, so that sending them
+ * does not hold up the processing of alert conditions.
+ */
+@Stateless
+public class AlertNotificationProducerBean implements AlertNotificationProducerLocal {
+    /*
+     * Get the transactional connection factory
+     */
+    @Resource(mappedName = "java:/JmsXA")
+    private ConnectionFactory factory;
+
+    @Resource(mappedName = "java:/queue/AlertNotificationQueue")
+    private Queue alertNotificationQueue;
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void sendAlertNotificationMessages(Alert alert) throws JMSException {
+        Connection connection = factory.createConnection();
+        try {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageProducer sender = session.createProducer(alertNotificationQueue);
+
+            for (AlertNotification alertNotification : alert.getAlertDefinition().getAlertNotifications()) {
+                sender.send(session.createObjectMessage(new AlertNotificationMessage(alert.getId(),
+                    alertNotification.getId())));
+            }
+        } finally {
+            connection.close();
+        }
+    }
+}
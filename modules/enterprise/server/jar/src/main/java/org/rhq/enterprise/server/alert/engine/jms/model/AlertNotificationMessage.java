@@ -0,0 +1,51 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.alert.engine.jms.model;
+
+import java.io.Serializable;
+
+/**
+ * A request to send one notification of a fired alert.
+ */
+public class AlertNotificationMessage implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int alertId;
+    private final int alertNotificationId;
+
+    public AlertNotificationMessage(int alertId, int alertNotificationId) {
+        this.alertId = alertId;
+        this.alertNotificationId = alertNotificationId;
+    }
+
+    public int getAlertId() {
+        return alertId;
+    }
+
+    public int getAlertNotificationId() {
+        return alertNotificationId;
+    }
+
+    @Override
+    public String toString() {
+        return "AlertNotificationMessage" + "[ " + "alertId=" + alertId + ", " + "alertNotificationId="
+            + alertNotificationId + " ]";
+    }
+}
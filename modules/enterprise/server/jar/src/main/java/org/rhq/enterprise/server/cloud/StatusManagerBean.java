@@ -199,6 +199,17 @@ public class StatusManagerBean implements StatusManagerLocal {
         }
     }
 
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void markResourceHierarchy() {
+        Query updateServerQuery = entityManager.createNamedQuery(Server.QUERY_UPDATE_STATUS_RESOURCE_HIERARCHY);
+        updateServerQuery.setParameter("thisServerName", serverManager.getIdentity());
+        int serversUpdated = updateServerQuery.executeUpdate();
+
+        if (log.isDebugEnabled()) {
+            log.debug("Marking resource hierarchy status, servers updated: " + serversUpdated);
+        }
+    }
+
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     public void updateByMeasurementBaseline(int baselineId) {
         log.debug("About to mark status by measurement baseline");
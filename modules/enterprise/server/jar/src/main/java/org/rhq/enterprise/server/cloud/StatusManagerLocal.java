@@ -34,6 +34,12 @@ public interface StatusManagerLocal {
 
     void markGlobalCache();
 
+    /**
+     * Flags all other servers, so that they reload their {@link org.rhq.enterprise.server.resource.ResourceHierarchyIndex}
+     * the next time they check their cache consistency. The caller is expected to have updated this server's index.
+     */
+    void markResourceHierarchy();
+
     void updateByResource(Subject subject, int resourceId);
 
     void updateByAlertDefinition(Subject subject, int alertDefinitionId);
@@ -36,6 +36,9 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.rhq.enterprise.server.alert.engine.AlertConditionCacheManagerLocal;
+import org.rhq.enterprise.server.cloud.StatusManagerLocal;
+import org.rhq.enterprise.server.resource.ResourceHierarchyIndex;
+import org.rhq.enterprise.server.resource.ResourceManagerLocal;
 
 /**
  * Each server has partitioned alerts condition cache data.  This session bean exists
@@ -61,6 +64,12 @@ public class CacheConsistencyManagerBean implements CacheConsistencyManagerLocal
     @EJB
     CacheConsistencyManagerLocal cacheConsistencyManager;
 
+    @EJB
+    ResourceManagerLocal resourceManager;
+
+    @EJB
+    StatusManagerLocal statusManager;
+
     @Override
     public void scheduleServerCacheReloader() {
         /* each time the webapp is reloaded, it would create 
@@ -95,6 +104,8 @@ public class CacheConsistencyManagerBean implements CacheConsistencyManagerLocal
         // try reload the global cache separate from the agent caches for purposes of isolated failures
         reloadGlobalCacheIfNeeded();
         reloadAgentCachesAsNeeded();
+        announceResourceHierarchyChangesIfNeeded();
+        reloadResourceHierarchyIndexIfNeeded();
     }
 
     private void reloadGlobalCacheIfNeeded() {
@@ -122,6 +133,63 @@ public class CacheConsistencyManagerBean implements CacheConsistencyManagerLocal
         }
     }
 
+    private void announceResourceHierarchyChangesIfNeeded() {
+        ResourceHierarchyIndex index = ResourceHierarchyIndex.getInstance();
+        if (!index.getAndClearUnannounced()) {
+            return;
+        }
+        try {
+            // only committed changes get here, so the other servers will read them when they reload
+            statusManager.markResourceHierarchy();
+        } catch (Throwable t) {
+            // make sure the next check tries again
+            index.markUnannounced();
+            log.error("Failed to tell the other servers to reload their resource hierarchy index, cause: "
+                + t.getMessage());
+        }
+    }
+
+    private void reloadResourceHierarchyIndexIfNeeded() {
+        try {
+            // always clear the status, the update or reload below covers whatever change it signals
+            boolean hadServerStatus = serverManager.getAndClearResourceHierarchyStatus();
+            ResourceHierarchyIndex index = ResourceHierarchyIndex.getInstance();
+            String serverName = serverManager.getIdentity();
+            if (hadServerStatus && index.isLoaded() && !index.isStale()) {
+                // only read what the other servers changed
+                long startTime = System.currentTimeMillis();
+                int changes = resourceManager.updateResourceHierarchyIndex();
+                long endTime = System.currentTimeMillis();
+
+                if (log.isDebugEnabled()) {
+                    log.debug(serverName + " took [" + (endTime - startTime)
+                        + "]ms to update the resource hierarchy index with [" + changes + "] changed resources");
+                }
+            }
+            if (index.isLoaded() && !index.isStale()) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Resource hierarchy index does not need reloading");
+                }
+                return;
+            }
+
+            long startTime = System.currentTimeMillis();
+            resourceManager.reloadResourceHierarchyIndex();
+            long endTime = System.currentTimeMillis();
+
+            log.info(serverName + " took [" + (endTime - startTime) + "]ms to reload the resource hierarchy index of ["
+                + index.size() + "] resources");
+        } catch (Throwable t) {
+            // make sure the next check tries again
+            ResourceHierarchyIndex.getInstance().markStale();
+            if (log.isDebugEnabled()) {
+                log.debug("Failed to reload resource hierarchy index", t);
+            } else {
+                log.error("Failed to reload resource hierarchy index, cause: " + t.getMessage());
+            }
+        }
+    }
+
     private void reloadAgentCachesAsNeeded() {
         /* 
          * catch absolutely everything, so that even if this REQUIRES_NEW transaction rollback, 
@@ -56,6 +56,7 @@ import org.rhq.enterprise.server.cloud.PartitionEventManagerLocal;
 import org.rhq.enterprise.server.cloud.StatusManagerLocal;
 import org.rhq.enterprise.server.cloud.TopologyManagerLocal;
 import org.rhq.enterprise.server.core.comm.ServerCommunicationsServiceUtil;
+import org.rhq.enterprise.server.resource.ResourceHierarchyIndex;
 import org.rhq.enterprise.server.storage.StorageClientManager;
 
 /**
@@ -188,9 +189,17 @@ public class ServerManagerBean implements ServerManagerLocal {
         if (server == null) {
             return false; // don't reload caches if we don't know who we are
         }
-        boolean hadStatus = (server.hasStatus(Status.ALERT_DEFINITION) || server
-            .hasStatus(Status.RESOURCE_HIERARCHY_UPDATED));
+        boolean hadStatus = server.hasStatus(Status.ALERT_DEFINITION);
         server.clearStatus(Status.ALERT_DEFINITION);
+        return hadStatus;
+    }
+
+    public boolean getAndClearResourceHierarchyStatus() {
+        Server server = topologyManager.getServerByName(getServerName());
+        if (server == null) {
+            return false;
+        }
+        boolean hadStatus = server.hasStatus(Status.RESOURCE_HIERARCHY_UPDATED);
         server.clearStatus(Status.RESOURCE_HIERARCHY_UPDATED);
         return hadStatus;
     }
@@ -241,9 +250,12 @@ public class ServerManagerBean implements ServerManagerLocal {
                 //    - this may have been done at startup already, this covers the case when we go in and
                 //    - out of MM without ever taking down the server
                 // 2) Re-establish server communication by taking away the MM listener
+                // 3) Reload the resource hierarchy index, the other servers do not flag their changes to it while
+                //    this server is in MM
                 if (Server.OperationMode.MAINTENANCE == lastEstablishedServerMode) {
                     printWithTrace("establishCurrentServerMode: MAINTENANCE->NORMAL, clearing agent references");
                     clearAgentReferences(server);
+                    ResourceHierarchyIndex.getInstance().markStale();
 
                     ServerCommunicationsServiceUtil.getService().safeGetServiceContainer()
                         .removeCommandListener(getMaintenanceModeListener());
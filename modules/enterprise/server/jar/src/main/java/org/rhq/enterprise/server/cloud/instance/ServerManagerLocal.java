@@ -83,6 +83,14 @@ public interface ServerManagerLocal {
      */
     boolean getAndClearServerStatus();
 
+    /**
+     * Like {@link #getAndClearServerStatus()}, but only for the {@link Server.Status#RESOURCE_HIERARCHY_UPDATED}
+     * status, which indicates that another server changed the resource hierarchy.
+     *
+     * @return whether or not this server had the resource hierarchy status set.
+     */
+    boolean getAndClearResourceHierarchyStatus();
+
     /**
      * Returns an object representing this server as it is known within the registered cloud of servers.
      *
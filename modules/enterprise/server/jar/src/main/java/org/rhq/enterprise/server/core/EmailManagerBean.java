@@ -24,6 +24,7 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 
 import javax.annotation.Resource;
@@ -31,6 +32,7 @@ import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
 import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
 import javax.mail.Session;
 import javax.mail.Transport;
 import javax.mail.internet.InternetAddress;
@@ -90,6 +92,14 @@ public class EmailManagerBean implements EmailManagerLocal {
 
     private static final String TEMPLATE_TOKEN_PRODUCT_NAME = "@@@PRODUCT_NAME@@@";
 
+    /**
+     * The number of idle SMTP connections kept open for the next emails, 4 by default.
+     */
+    private static final String MAX_IDLE_CONNECTIONS_PROPERTY = "rhq.server.email.max-idle-connections";
+
+    private static final SmtpTransportPool TRANSPORT_POOL = new SmtpTransportPool(Integer.getInteger(
+        MAX_IDLE_CONNECTIONS_PROPERTY, 4), TimeUnit.SECONDS.toMillis(30));
+
     @Resource(mappedName = "java:jboss/mail/Default")
     private Session mailSession;
 
@@ -116,6 +126,7 @@ public class EmailManagerBean implements EmailManagerLocal {
 
             mimeMessage.setSubject(messageSubject);
             mimeMessage.setContent(messageBody, "text/plain");
+            mimeMessage.saveChanges();
         } catch (MessagingException e) {
             e.printStackTrace(); // TODO: Customise this generated block
             return toAddresses;
@@ -124,23 +135,38 @@ public class EmailManagerBean implements EmailManagerLocal {
         Exception error = null;
         Collection<String> badAdresses = new ArrayList<String>(toAddresses.size());
 
-        // Send to each recipient individually, do not throw exceptions until we try them all
-        for (String toAddress : toAddresses) {
-            try {
-                LOG.debug("Sending email [" + messageSubject + "] to recipient [" + toAddress + "]");
-                InternetAddress recipient = new InternetAddress(toAddress);
-                Transport.send(mimeMessage, new InternetAddress[] { recipient });
-            } catch (Exception e) {
-                LOG.error("Failed to send email [" + messageSubject + "] to recipient [" + toAddress + "]: "
-                    + e.getMessage());
-                badAdresses.add(toAddress);
-
-                // Remember the first error - in case its due to a session initialization problem,
-                // we don't want to lose the first error.
-                if (error == null) {
-                    error = e;
+        // Send to each recipient individually, do not throw exceptions until we try them all. The recipients share
+        // one pooled connection, which is only replaced when it fails for a reason other than the recipient.
+        Transport transport = null;
+        try {
+            for (String toAddress : toAddresses) {
+                try {
+                    LOG.debug("Sending email [" + messageSubject + "] to recipient [" + toAddress + "]");
+                    InternetAddress recipient = new InternetAddress(toAddress);
+                    if (transport == null) {
+                        transport = TRANSPORT_POOL.borrow(mailSession, recipient);
+                    }
+                    transport.sendMessage(mimeMessage, new InternetAddress[] { recipient });
+                } catch (Exception e) {
+                    LOG.error("Failed to send email [" + messageSubject + "] to recipient [" + toAddress + "]: "
+                        + e.getMessage());
+                    badAdresses.add(toAddress);
+                    if (transport != null && !(e instanceof SendFailedException)) {
+                        TRANSPORT_POOL.invalidate(transport);
+                        transport = null;
+                    }
+
+                    // Remember the first error - in case its due to a session initialization problem,
+                    // we don't want to lose the first error.
+                    if (error == null) {
+                        error = e;
+                    }
                 }
             }
+        } finally {
+            if (transport != null) {
+                TRANSPORT_POOL.release(transport);
+            }
         }
 
         if (error != null) {
@@ -0,0 +1,112 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.core;
+
+import java.util.LinkedList;
+
+import javax.mail.Address;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Keeps connected mail transports around between emails, so that sending many alert emails does not open a new SMTP
+ * connection for each of them. Transports idle for longer than the idle time are closed when next looked at, since the
+ * mail server will have dropped them by then anyway.
+ */
+class SmtpTransportPool {
+    private static final Log LOG = LogFactory.getLog(SmtpTransportPool.class);
+
+    private static class PooledTransport {
+        final Transport transport;
+        final long releaseTime;
+
+        PooledTransport(Transport transport, long releaseTime) {
+            this.transport = transport;
+            this.releaseTime = releaseTime;
+        }
+    }
+
+    private final int maxIdle;
+    private final long maxIdleTime;
+
+    // most recently released first
+    private final LinkedList<PooledTransport> idle = new LinkedList<PooledTransport>();
+
+    SmtpTransportPool(int maxIdle, long maxIdleTime) {
+        this.maxIdle = maxIdle;
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    /**
+     * @return A connected transport for the address, which must be given back with {@link #release(Transport)} or
+     * {@link #invalidate(Transport)}
+     */
+    Transport borrow(Session session, Address address) throws MessagingException {
+        long now = System.currentTimeMillis();
+        while (true) {
+            PooledTransport pooled;
+            synchronized (idle) {
+                pooled = idle.poll();
+            }
+            if (pooled == null) {
+                break;
+            }
+            if (now - pooled.releaseTime < maxIdleTime && pooled.transport.isConnected()) {
+                return pooled.transport;
+            }
+            close(pooled.transport);
+        }
+
+        Transport transport = session.getTransport(address);
+        transport.connect();
+        return transport;
+    }
+
+    void release(Transport transport) {
+        synchronized (idle) {
+            if (idle.size() < maxIdle) {
+                idle.addFirst(new PooledTransport(transport, System.currentTimeMillis()));
+                return;
+            }
+        }
+        close(transport);
+    }
+
+    /**
+     * Closes a transport that failed, it is not given out again.
+     */
+    void invalidate(Transport transport) {
+        close(transport);
+    }
+
+    private void close(Transport transport) {
+        try {
+            transport.close();
+        } catch (MessagingException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Failed to close mail transport: " + e.getMessage());
+            }
+        }
+    }
+}
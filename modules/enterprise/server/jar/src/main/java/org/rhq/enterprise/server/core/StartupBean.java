@@ -75,9 +75,11 @@ import org.rhq.enterprise.server.cloud.instance.ServerManagerLocal;
 import org.rhq.enterprise.server.cloud.instance.SyncEndpointAddressException;
 import org.rhq.enterprise.server.core.comm.ServerCommunicationsServiceUtil;
 import org.rhq.enterprise.server.core.plugin.PluginDeploymentScannerMBean;
+import org.rhq.enterprise.server.measurement.AggregationWorkerLocal;
 import org.rhq.enterprise.server.naming.NamingHack;
 import org.rhq.enterprise.server.plugin.pc.MasterServerPluginContainer;
 import org.rhq.enterprise.server.plugin.pc.ServerPluginServiceMBean;
+import org.rhq.enterprise.server.resource.ResourceManagerLocal;
 import org.rhq.enterprise.server.resource.ResourceTypeManagerLocal;
 import org.rhq.enterprise.server.scheduler.SchedulerLocal;
 import org.rhq.enterprise.server.scheduler.jobs.AsyncResourceDeleteJob;
@@ -134,6 +136,9 @@ public class StartupBean implements StartupLocal {
     @EJB
     private ResourceTypeManagerLocal resourceTypeManager;
 
+    @EJB
+    private ResourceManagerLocal resourceManager;
+
     @EJB
     private SchedulerLocal schedulerBean;
 
@@ -152,6 +157,9 @@ public class StartupBean implements StartupLocal {
     @EJB
     private StorageClientManager storageClientManager;
 
+    @EJB
+    private AggregationWorkerLocal aggregationWorker;
+
     @Resource
     private TimerService timerService; // needed to schedule our plugin scanner
 
@@ -211,6 +219,16 @@ public class StartupBean implements StartupLocal {
             log.error("Could not load ResourceFacets cache.", t);
         }
 
+        // load the resource hierarchy index - not fatal, lookups fall back to the database until the cache
+        // consistency check manages to load it
+        try {
+            long start = System.currentTimeMillis();
+            resourceManager.reloadResourceHierarchyIndex();
+            log.info("Loaded the resource hierarchy index in [" + (System.currentTimeMillis() - start) + "]ms");
+        } catch (Throwable t) {
+            log.error("Could not load the resource hierarchy index, will retry later.", t);
+        }
+
         //Server depends on the storage cluster availability. Since the storage client init just
         //establishes connectivity with the storage cluster, then run it before the server init.
         initStorageClient();
@@ -659,6 +677,7 @@ public class StartupBean implements StartupLocal {
         systemManager.scheduleConfigCacheReloader();
         subjectManager.scheduleSessionPurgeJob();
         storageClientManager.scheduleStorageSessionMaintenance();
+        aggregationWorker.scheduleAggregationWorker();
 
         try {
             // Do not check until we are up at least 1 min, and every minute thereafter.
@@ -47,6 +47,7 @@ import javax.persistence.NoResultException;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
 import javax.security.auth.login.LoginException;
+import javax.transaction.TransactionSynchronizationRegistry;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -102,6 +103,7 @@ import org.rhq.enterprise.server.auth.SubjectManagerLocal;
 import org.rhq.enterprise.server.authz.AuthorizationManagerLocal;
 import org.rhq.enterprise.server.authz.PermissionException;
 import org.rhq.enterprise.server.authz.RequiredPermission;
+import org.rhq.enterprise.server.cloud.StatusManagerLocal;
 import org.rhq.enterprise.server.cloud.StorageNodeManagerLocal;
 import org.rhq.enterprise.server.configuration.ConfigurationManagerLocal;
 import org.rhq.enterprise.server.core.AgentManagerLocal;
@@ -109,6 +111,8 @@ import org.rhq.enterprise.server.measurement.AvailabilityManagerLocal;
 import org.rhq.enterprise.server.resource.ProductVersionManagerLocal;
 import org.rhq.enterprise.server.resource.ResourceAlreadyExistsException;
 import org.rhq.enterprise.server.resource.ResourceAvailabilityManagerLocal;
+import org.rhq.enterprise.server.resource.ResourceHierarchyIndex;
+import org.rhq.enterprise.server.resource.ResourceHierarchyIndexUpdates;
 import org.rhq.enterprise.server.resource.ResourceManagerLocal;
 import org.rhq.enterprise.server.resource.ResourceTypeManagerLocal;
 import org.rhq.enterprise.server.resource.group.ResourceGroupManagerLocal;
@@ -171,6 +175,10 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
     private StorageNodeManagerLocal storageNodeManager;
     @EJB
     private ConfigurationManagerLocal configurationManager;
+    @EJB
+    private StatusManagerLocal statusManager;
+    @javax.annotation.Resource
+    private TransactionSynchronizationRegistry txSyncRegistry;
 
     // Do not start in a transaction.  A single transaction may timeout if the report size is too large
     @Override
@@ -243,6 +251,18 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
 
         allTypes = null; // maybe help GC? we don't need this anymore
 
+        // our own index has been updated as the merge transactions committed, let the other servers know they need
+        // to reload theirs
+        if (ResourceHierarchyIndex.getInstance().getAndClearUnannounced()) {
+            try {
+                statusManager.markResourceHierarchy();
+            } catch (RuntimeException e) {
+                // the cache consistency check will try again
+                ResourceHierarchyIndex.getInstance().markUnannounced();
+                LOG.warn("Failed to tell the other servers to reload their resource hierarchy index: " + e);
+            }
+        }
+
         // Prepare the ResourceSyncInfo tree which contains all the info the PC needs to sync itself up with us.
         // The platform can be null in only one scenario.. a brand new agent has connected to the server
         // and that agent is currently trying to upgrade its resources. For that it asks us to send down
@@ -1240,6 +1260,9 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
                 } else {
                     existingResource.setParentResource(Resource.ROOT);
                 }
+                // the other servers' resource hierarchy indexes find moved resources by their mtime
+                existingResource.setMtime(System.currentTimeMillis());
+                putInHierarchyIndex(existingResource);
 
             } else {
                 if (LOG.isDebugEnabled()) {
@@ -1381,6 +1404,7 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
         }
 
         entityManager.persist(resource);
+        putInHierarchyIndex(resource);
 
         // Add a product version entry for the new resource.
         if ((resource.getVersion() != null) && (resource.getVersion().length() > 0)) {
@@ -1403,6 +1427,14 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
         }
     }
 
+    private void putInHierarchyIndex(Resource resource) {
+        Resource parent = resource.getParentResource();
+        Agent agent = resource.getAgent();
+        ResourceHierarchyIndexUpdates.forCurrentTransaction(txSyncRegistry).put(resource.getId(),
+            (parent != null) ? parent.getId() : Resource.ROOT_ID, resource.getResourceType().getId(),
+            (agent != null) ? agent.getId() : 0);
+    }
+
     private CreateResourceHistory findMatchingCreateResourceHistory(Integer parentId, String resourceKey) {
         Query query = PersistenceUtility.createQueryWithOrderBy(entityManager,
             CreateResourceHistory.QUERY_FIND_BY_CHILD_RESOURCE_KEY, new PageControl(0, 1, new OrderingField("mtime",
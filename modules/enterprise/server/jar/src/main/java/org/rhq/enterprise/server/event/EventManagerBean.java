@@ -23,10 +23,14 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
@@ -47,6 +51,7 @@ import org.rhq.core.db.SQLServerDatabaseType;
 import org.rhq.core.domain.auth.Subject;
 import org.rhq.core.domain.authz.Permission;
 import org.rhq.core.domain.common.EntityContext;
+import org.rhq.core.domain.common.composite.SystemSetting;
 import org.rhq.core.domain.criteria.EventCriteria;
 import org.rhq.core.domain.event.Event;
 import org.rhq.core.domain.event.EventDefinition;
@@ -54,15 +59,23 @@ import org.rhq.core.domain.event.EventSeverity;
 import org.rhq.core.domain.event.EventSource;
 import org.rhq.core.domain.event.composite.EventComposite;
 import org.rhq.core.domain.util.PageControl;
+import org.rhq.core.domain.util.OrderingField;
 import org.rhq.core.domain.util.PageList;
+import org.rhq.core.domain.util.PageOrdering;
 import org.rhq.core.util.jdbc.JDBCUtil;
 import org.rhq.enterprise.server.RHQConstants;
 import org.rhq.enterprise.server.alert.engine.AlertConditionCacheManagerLocal;
 import org.rhq.enterprise.server.alert.engine.AlertConditionCacheStats;
 import org.rhq.enterprise.server.authz.AuthorizationManagerLocal;
 import org.rhq.enterprise.server.authz.PermissionException;
+import org.rhq.enterprise.server.storage.StorageClientManager;
+import org.rhq.enterprise.server.system.SystemManagerLocal;
 import org.rhq.enterprise.server.util.CriteriaQueryGenerator;
 import org.rhq.enterprise.server.util.CriteriaQueryRunner;
+import org.rhq.server.metrics.EventDAO;
+import org.rhq.server.metrics.StorageResultSetFuture;
+import org.rhq.server.metrics.domain.EventFilter;
+import org.rhq.server.metrics.domain.EventRollup;
 
 /**
  * Manager for Handling of {@link Event}s.
@@ -101,6 +114,12 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
     @EJB
     private AuthorizationManagerLocal authorizationManager;
 
+    @EJB
+    private StorageClientManager storageClientManager;
+
+    @EJB
+    private SystemManagerLocal systemManager;
+
     Log log = LogFactory.getLog(EventManagerBean.class);
 
     @Override
@@ -149,6 +168,14 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
                 JDBCUtil.safeClose(ps);
             }
 
+            // The sources stay in the database, they are referenced by the event definitions and the alert
+            // conditions. Only the events themselves move to the storage cluster.
+            EventDAO eventDAO = storageClientManager.getEventDAO();
+            if (eventDAO != null) {
+                storeEventData(eventDAO, events);
+                return;
+            }
+
             if (dbType instanceof PostgresqlDatabaseType || dbType instanceof OracleDatabaseType
                 || dbType instanceof H2DatabaseType) {
                 String nextvalSql = JDBCUtil.getNextValSql(conn, Event.TABLE_NAME);
@@ -204,6 +231,31 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
         }
     }
 
+    private void storeEventData(EventDAO eventDAO, Map<EventSource, Set<Event>> events) {
+        // Events are stored as soon as they are reported, so the retention period is used as is for their TTL.
+        int ttl = (int) TimeUnit.MILLISECONDS.toSeconds(getEventRetention());
+
+        List<StorageResultSetFuture> futures = new ArrayList<StorageResultSetFuture>();
+        for (EventSource eventSource : events.keySet()) {
+            Set<Event> eventData = events.get(eventSource);
+            futures.addAll(eventDAO.insertEvents(eventSource.getResource().getId(), eventSource.getLocation(),
+                eventData, ttl));
+            notifyAlertConditionCacheManager("addEventData", eventSource,
+                eventData.toArray(new Event[eventData.size()]));
+        }
+        for (StorageResultSetFuture future : futures) {
+            future.get();
+        }
+    }
+
+    /**
+     * @return The time, in milliseconds, events are kept for
+     */
+    private long getEventRetention() {
+        String retention = systemManager.getObfuscatedSystemSettings(true).get(SystemSetting.EVENT_PURGE_PERIOD);
+        return retention == null ? TimeUnit.DAYS.toMillis(14) : Long.parseLong(retention);
+    }
+
     private void notifyAlertConditionCacheManager(String callingMethod, EventSource source, Event... events) {
         AlertConditionCacheStats stats = alertConditionCacheManager.checkConditions(source, events);
 
@@ -215,6 +267,19 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
 
         int[] buckets = new int[numBuckets];
 
+        EventDAO eventDAO = storageClientManager.getEventDAO();
+        if (eventDAO != null) {
+            if (authorizationManager.canViewResource(subject, resourceId) == false) {
+                throw new PermissionException("User [" + subject.getName()
+                    + "] does not have permission to view event history for resource[id=" + resourceId + "]");
+            }
+            long timePerBucket = (end - begin) / numBuckets;
+            for (EventRollup rollup : eventDAO.findEventRollups(resourceId, begin, end)) {
+                buckets[getBucket(rollup.getSlot(), begin, timePerBucket, numBuckets)] += rollup.getCount();
+            }
+            return buckets;
+        }
+
         // TODO possibly rewrite query so that the db calculates the buckets (?)
         List<EventComposite> events = findEventComposites(subject, EntityContext.forResource(resourceId), begin, end,
             null, null, null, PageControl.getUnlimitedInstance());
@@ -235,6 +300,18 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
     @Override
     @SuppressWarnings("unchecked")
     public EventComposite getEventDetailForEventId(Subject subject, int eventId) throws EventException {
+        EventDAO eventDAO = storageClientManager.getEventDAO();
+        if (eventDAO != null) {
+            // event ids can be shared, the first event the subject can view is the one asked for
+            for (EventComposite composite : eventDAO.findEvent(eventId)) {
+                if (authorizationManager.canViewResource(subject, composite.getResourceId())) {
+                    setResourceProperties(Collections.singletonList(composite));
+                    return composite;
+                }
+            }
+            throw new EventException("No event found for eventId[" + eventId + "]");
+        }
+
         Query q = entityManager.createNamedQuery(Event.GET_DETAILS_FOR_EVENT_IDS);
         List<Integer> eventIds = new ArrayList<Integer>(1);
         eventIds.add(eventId);
@@ -282,6 +359,11 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
             }
         }
 
+        EventDAO eventDAO = storageClientManager.getEventDAO();
+        if (eventDAO != null) {
+            return deleteEvents(eventDAO, subject, context, eventIds);
+        }
+
         Query q = entityManager.createNamedQuery(Event.DELETE_BY_EVENT_IDS);
         q.setParameter("eventIds", eventIds);
         int deletedCount = q.executeUpdate();
@@ -289,6 +371,33 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
         return deletedCount;
     }
 
+    /**
+     * Deletes the events with the event ids that belong to the context. For the subsystem view, those are the events of
+     * the resources the subject can manage the events of.
+     */
+    private int deleteEvents(EventDAO eventDAO, Subject subject, EntityContext context, List<Integer> eventIds) {
+        Set<Integer> contextResourceIds = null;
+        if (context.type != EntityContext.Type.SubsystemView) {
+            contextResourceIds = new HashSet<Integer>(getContextResourceIds(context, false));
+        }
+
+        int deletedCount = 0;
+        for (Integer eventId : eventIds) {
+            Set<Integer> resourceIds = contextResourceIds;
+            if (resourceIds == null) {
+                resourceIds = new HashSet<Integer>();
+                for (EventComposite composite : eventDAO.findEvent(eventId)) {
+                    if (authorizationManager.hasResourcePermission(subject, Permission.MANAGE_EVENTS,
+                        composite.getResourceId())) {
+                        resourceIds.add(composite.getResourceId());
+                    }
+                }
+            }
+            deletedCount += eventDAO.deleteEvent(eventId, resourceIds);
+        }
+        return deletedCount;
+    }
+
     @Override
     public int purgeEventsForContext(Subject subject, EntityContext context) {
 
@@ -317,6 +426,15 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
 
         int deletedCount = purgeQuery.executeUpdate();
 
+        EventDAO eventDAO = storageClientManager.getEventDAO();
+        if (eventDAO != null) {
+            long end = System.currentTimeMillis();
+            long begin = end - getEventRetention();
+            for (Integer resourceId : getContextResourceIds(context, false)) {
+                eventDAO.deleteEvents(resourceId, begin, end);
+            }
+        }
+
         return deletedCount;
     }
 
@@ -324,6 +442,11 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
     @SuppressWarnings("unchecked")
     public Map<EventSeverity, Integer> getEventCountsBySeverity(Subject subject, int resourceId, long startDate,
         long endDate) {
+        EventDAO eventDAO = storageClientManager.getEventDAO();
+        if (eventDAO != null) {
+            return getEventCountsBySeverity(eventDAO, Collections.singletonList(resourceId), startDate, endDate);
+        }
+
         Map<EventSeverity, Integer> results = new HashMap<EventSeverity, Integer>();
         Query q = entityManager.createNamedQuery(Event.QUERY_EVENT_COUNTS_BY_SEVERITY);
         q.setParameter("resourceId", resourceId);
@@ -342,6 +465,12 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
     @SuppressWarnings("unchecked")
     public Map<EventSeverity, Integer> getEventCountsBySeverityForGroup(Subject subject, int groupId, long startDate,
         long endDate) {
+        EventDAO eventDAO = storageClientManager.getEventDAO();
+        if (eventDAO != null) {
+            return getEventCountsBySeverity(eventDAO, getContextResourceIds(EntityContext.forGroup(groupId), true),
+                startDate, endDate);
+        }
+
         Map<EventSeverity, Integer> results = new HashMap<EventSeverity, Integer>();
         Query q = entityManager.createNamedQuery(Event.QUERY_EVENT_COUNTS_BY_SEVERITY_GROUP);
         q.setParameter("groupId", groupId);
@@ -356,10 +485,38 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
         return results;
     }
 
+    private Map<EventSeverity, Integer> getEventCountsBySeverity(EventDAO eventDAO, List<Integer> resourceIds,
+        long startDate, long endDate) {
+        Map<EventSeverity, Integer> results = new HashMap<EventSeverity, Integer>();
+        for (Integer resourceId : resourceIds) {
+            for (EventRollup rollup : eventDAO.findEventRollups(resourceId, startDate, endDate)) {
+                Integer count = results.get(rollup.getSeverity());
+                results.put(rollup.getSeverity(), count == null ? rollup.getCount() : count + rollup.getCount());
+            }
+        }
+        return results;
+    }
+
     @Override
     public EventSeverity[] getSeverityBucketsByContext(Subject subject, EntityContext context, long begin, long end,
         int bucketCount) {
 
+        EventDAO eventDAO = storageClientManager.getEventDAO();
+        if (eventDAO != null && context.type != EntityContext.Type.SubsystemView) {
+            checkCanViewEvents(subject, context);
+            EventSeverity[] buckets = new EventSeverity[bucketCount];
+            long timePerBucket = (end - begin) / bucketCount;
+            for (Integer resourceId : getContextResourceIds(context, false)) {
+                for (EventRollup rollup : eventDAO.findEventRollups(resourceId, begin, end)) {
+                    int bucket = getBucket(rollup.getSlot(), begin, timePerBucket, bucketCount);
+                    if (rollup.getSeverity().isMoreSevereThan(buckets[bucket])) {
+                        buckets[bucket] = rollup.getSeverity();
+                    }
+                }
+            }
+            return buckets;
+        }
+
         EventCriteria criteria = new EventCriteria();
         criteria.addFilterStartTime(begin);
         criteria.addFilterEndTime(end);
@@ -406,6 +563,39 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
     public PageList<EventComposite> findEventComposites(Subject subject, EntityContext context, long begin, long end,
         EventSeverity[] severities, String source, String detail, PageControl pc) {
 
+        checkCanViewEvents(subject, context);
+
+        EventDAO eventDAO = storageClientManager.getEventDAO();
+        if (eventDAO != null && context.type != EntityContext.Type.SubsystemView) {
+            return findEventComposites(eventDAO, context, begin, end, new EventFilter(severities, source, detail), pc);
+        }
+
+        EventCriteria criteria = new EventCriteria();
+        criteria.addFilterStartTime(begin);
+        criteria.addFilterEndTime(end);
+        criteria.addFilterSeverities(severities);
+        if (source != null && !source.trim().equals("")) {
+            criteria.addFilterSourceName(source);
+        }
+        if (detail != null && !detail.trim().equals("")) {
+            criteria.addFilterDetail(detail);
+        }
+
+        criteria.setPageControl(pc);
+
+        if (context.type == EntityContext.Type.Resource) {
+            criteria.addFilterResourceId(context.resourceId);
+        } else if (context.type == EntityContext.Type.ResourceGroup) {
+            criteria.addFilterResourceGroupId(context.groupId);
+        } else if (context.type == EntityContext.Type.AutoGroup) {
+            criteria.addFilterAutoGroupParentResourceId(context.parentResourceId);
+            criteria.addFilterAutoGroupResourceTypeId(context.resourceTypeId);
+        }
+
+        return findEventCompositesByCriteria(subject, criteria);
+    }
+
+    private void checkCanViewEvents(Subject subject, EntityContext context) {
         if (context.type == EntityContext.Type.Resource) {
             if (authorizationManager.canViewResource(subject, context.resourceId) == false) {
                 throw new PermissionException("User [" + subject.getName()
@@ -423,34 +613,132 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
                     + context.parentResourceId + ", resourceTypeId=" + context.resourceTypeId + "]");
             }
         }
+    }
 
-        EventCriteria criteria = new EventCriteria();
-        criteria.addFilterStartTime(begin);
-        criteria.addFilterEndTime(end);
-        criteria.addFilterSeverities(severities);
-        if (source != null && !source.trim().equals("")) {
-            criteria.addFilterSourceName(source);
+    /**
+     * Pages the events of the context. The events of each resource are read in time stamp order up to the end of the
+     * page, and merged. The total is counted from the rollups where the filter allows it. Events are stored in time
+     * stamp order only, so that is the only order they can be sorted in.
+     */
+    private PageList<EventComposite> findEventComposites(EventDAO eventDAO, EntityContext context, long begin,
+        long end, EventFilter filter, PageControl pc) {
+
+        final boolean newestFirst = isNewestFirst(pc);
+        int limit = pc.isUnlimited() ? Integer.MAX_VALUE : pc.getStartRow() + pc.getPageSize();
+
+        List<EventComposite> composites = new ArrayList<EventComposite>();
+        int totalSize = 0;
+        for (Integer resourceId : getContextResourceIds(context, false)) {
+            List<EventComposite> found = eventDAO.findEvents(resourceId, begin, end, filter, newestFirst, limit);
+            composites.addAll(found);
+            // fewer events than asked for are all there are
+            totalSize += found.size() < limit ? found.size() : eventDAO.countEvents(resourceId, begin, end, filter);
         }
-        if (detail != null && !detail.trim().equals("")) {
-            criteria.addFilterDetail(detail);
+
+        Collections.sort(composites, new Comparator<EventComposite>() {
+            @Override
+            public int compare(EventComposite e1, EventComposite e2) {
+                return newestFirst ? e2.getTimestamp().compareTo(e1.getTimestamp()) : e1.getTimestamp().compareTo(
+                    e2.getTimestamp());
+            }
+        });
+
+        int fromIndex = pc.isUnlimited() ? 0 : Math.min(pc.getStartRow(), composites.size());
+        int toIndex = pc.isUnlimited() ? composites.size() : Math.min(fromIndex + pc.getPageSize(), composites.size());
+        List<EventComposite> page = new ArrayList<EventComposite>(composites.subList(fromIndex, toIndex));
+        setResourceProperties(page);
+
+        return new PageList<EventComposite>(page, totalSize, pc);
+    }
+
+    private static boolean isNewestFirst(PageControl pc) {
+        List<OrderingField> orderingFields = pc.getOrderingFields();
+        if (orderingFields.isEmpty()) {
+            return true;
+        }
+        String field = orderingFields.get(0).getField();
+        if (!field.equals("timestamp") && !field.endsWith(".timestamp")) {
+            throw new UnsupportedOperationException("Events stored in the storage cluster can only be sorted by "
+                + "timestamp, not by [" + field + "]");
         }
+        return orderingFields.get(0).getOrdering() != PageOrdering.ASC;
+    }
 
-        criteria.setPageControl(pc);
+    /**
+     * Sets the properties of the resources of events read from the storage cluster, which only have the resource id.
+     */
+    @SuppressWarnings("unchecked")
+    private void setResourceProperties(List<EventComposite> composites) {
+        if (composites.isEmpty()) {
+            return;
+        }
+        Set<Integer> resourceIds = new HashSet<Integer>();
+        for (EventComposite composite : composites) {
+            resourceIds.add(composite.getResourceId());
+        }
 
+        Query q = entityManager.createQuery("" //
+            + "SELECT res.id, res.name, res.ancestry, res.resourceType.id " //
+            + "  FROM Resource res " //
+            + " WHERE res.id IN ( :resourceIds )");
+        q.setParameter("resourceIds", resourceIds);
+        Map<Integer, Object[]> resources = new HashMap<Integer, Object[]>();
+        for (Object[] resource : (List<Object[]>) q.getResultList()) {
+            resources.put((Integer) resource[0], resource);
+        }
+        for (EventComposite composite : composites) {
+            Object[] resource = resources.get(composite.getResourceId());
+            if (resource != null) {
+                composite.setResourceName((String) resource[1]);
+                composite.setResourceAncestry((String) resource[2]);
+                composite.setResourceTypeId((Integer) resource[3]);
+            }
+        }
+    }
+
+    /**
+     * @param explicit For groups, whether to only return the explicit members rather than all the implicit ones
+     * @return The ids of the resources whose events belong to the context, which must not be the subsystem view
+     */
+    @SuppressWarnings("unchecked")
+    private List<Integer> getContextResourceIds(EntityContext context, boolean explicit) {
+        Query q;
         if (context.type == EntityContext.Type.Resource) {
-            criteria.addFilterResourceId(context.resourceId);
+            return Collections.singletonList(context.resourceId);
         } else if (context.type == EntityContext.Type.ResourceGroup) {
-            criteria.addFilterResourceGroupId(context.groupId);
+            q = entityManager.createQuery("SELECT res.id FROM ResourceGroup g JOIN g."
+                + (explicit ? "explicitResources" : "implicitResources") + " res WHERE g.id = :groupId");
+            q.setParameter("groupId", context.groupId);
         } else if (context.type == EntityContext.Type.AutoGroup) {
-            criteria.addFilterAutoGroupParentResourceId(context.parentResourceId);
-            criteria.addFilterAutoGroupResourceTypeId(context.resourceTypeId);
+            q = entityManager.createQuery("" //
+                + "SELECT res.id FROM Resource res " //
+                + " WHERE res.parentResource.id = :parentResourceId AND res.resourceType.id = :resourceTypeId");
+            q.setParameter("parentResourceId", context.parentResourceId);
+            q.setParameter("resourceTypeId", context.resourceTypeId);
+        } else {
+            throw new IllegalArgumentException(context.getUnknownContextMessage());
         }
+        return q.getResultList();
+    }
 
-        return findEventCompositesByCriteria(subject, criteria);
+    /**
+     * Rollups cover whole slots, so the bucket of a slot is the one of its start, and slots starting before the
+     * first bucket are counted in it.
+     */
+    private static int getBucket(long slot, long begin, long timePerBucket, int bucketCount) {
+        if (slot <= begin || timePerBucket <= 0) {
+            return 0;
+        }
+        return (int) Math.min((slot - begin) / timePerBucket, bucketCount - 1);
     }
 
     @Override
     public PageList<EventComposite> findEventCompositesByCriteria(Subject subject, EventCriteria criteria) {
+        EventDAO eventDAO = storageClientManager.getEventDAO();
+        if (eventDAO != null) {
+            return findEventCompositesByCriteria(eventDAO, subject, criteria);
+        }
+
         CriteriaQueryGenerator generator = new CriteriaQueryGenerator(subject, criteria);
 
         String replacementSelectList = "" //
@@ -479,9 +767,52 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
         return queryRunner.execute();
     }
 
+    /**
+     * Finds the events of the criteria in the storage cluster, which supports the filters of the context based listing:
+     * a resource, group or autogroup, a time range, which defaults to the retention period, severities, a source and a
+     * detail. Criteria with other filters are rejected rather than have them ignored.
+     */
+    private PageList<EventComposite> findEventCompositesByCriteria(EventDAO eventDAO, Subject subject,
+        EventCriteria criteria) {
+        if (criteria.getFilterSourceId() != null || criteria.getFilterResourceName() != null) {
+            throw new UnsupportedOperationException("Events stored in the storage cluster cannot be filtered by "
+                + "source id or resource name");
+        }
+
+        EntityContext context;
+        if (criteria.getFilterResourceId() != null) {
+            context = EntityContext.forResource(criteria.getFilterResourceId());
+        } else if (criteria.getFilterResourceGroupId() != null) {
+            context = EntityContext.forGroup(criteria.getFilterResourceGroupId());
+        } else if (criteria.getFilterAutoGroupParentResourceId() != null
+            && criteria.getFilterAutoGroupResourceTypeId() != null) {
+            context = EntityContext.forAutoGroup(criteria.getFilterAutoGroupParentResourceId(),
+                criteria.getFilterAutoGroupResourceTypeId());
+        } else {
+            throw new UnsupportedOperationException("Events stored in the storage cluster can only be found for a "
+                + "resource, a group or an autogroup");
+        }
+        checkCanViewEvents(subject, context);
+
+        long end = criteria.getFilterEndTime() == null ? System.currentTimeMillis() : criteria.getFilterEndTime();
+        long begin = criteria.getFilterStartTime() == null ? end - getEventRetention() : criteria
+            .getFilterStartTime();
+        EventFilter filter = new EventFilter(criteria.getFilterSeverities(), criteria.getFilterSourceName(),
+            criteria.getFilterDetail());
+
+        return findEventComposites(eventDAO, context, begin, end, filter, CriteriaQueryGenerator
+            .getPageControl(criteria));
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     public PageList<Event> findEventsByCriteria(Subject subject, EventCriteria criteria) {
+        if (storageClientManager.getEventDAO() != null) {
+            // events stored in the storage cluster have no entities, their composites are all there is
+            throw new UnsupportedOperationException("Events stored in the storage cluster can only be found with "
+                + "findEventCompositesByCriteria");
+        }
+
         CriteriaQueryGenerator generator = new CriteriaQueryGenerator(subject, criteria);
         ;
         if (authorizationManager.isInventoryManager(subject) == false) {
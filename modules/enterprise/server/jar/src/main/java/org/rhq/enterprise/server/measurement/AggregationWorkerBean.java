@@ -0,0 +1,130 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.measurement;
+
+import java.util.Collection;
+
+import javax.annotation.Resource;
+import javax.ejb.Asynchronous;
+import javax.ejb.EJB;
+import javax.ejb.Stateless;
+import javax.ejb.Timeout;
+import javax.ejb.Timer;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.enterprise.server.auth.SubjectManagerLocal;
+import org.rhq.enterprise.server.cloud.instance.ServerManagerLocal;
+import org.rhq.enterprise.server.storage.StorageClientManager;
+import org.rhq.server.metrics.MetricsServer;
+import org.rhq.server.metrics.aggregation.DistributedAggregation;
+import org.rhq.server.metrics.aggregation.OOBScorer;
+
+/**
+ * Metrics aggregation is coordinated by the server that runs the data calc job, which leases index partitions to the
+ * other live servers (see {@link DistributedAggregation}). Each server polls for partitions leased to it and aggregates
+ * them in the background.
+ */
+@Stateless
+public class AggregationWorkerBean implements AggregationWorkerLocal {
+
+    private final Log log = LogFactory.getLog(AggregationWorkerBean.class);
+
+    @Resource
+    TimerService timerService;
+
+    @EJB
+    AggregationWorkerLocal aggregationWorker;
+
+    @EJB
+    ServerManagerLocal serverManager;
+
+    @EJB
+    SubjectManagerLocal subjectManager;
+
+    @EJB
+    MeasurementOOBManagerLocal oobManager;
+
+    @EJB
+    StorageClientManager storageClientManager;
+
+    @Override
+    public void scheduleAggregationWorker() {
+        /* each time the webapp is reloaded, it would create
+         * duplicate events if we don't cancel the existing ones
+         */
+        Collection<Timer> timers = timerService.getTimers();
+        for (Timer existingTimer : timers) {
+            log.debug("Found timer - attempting to cancel: " + existingTimer.toString());
+            try {
+                existingTimer.cancel();
+            } catch (Exception e) {
+                log.warn("Failed in attempting to cancel timer: " + existingTimer.toString());
+            }
+        }
+
+        timerService.createIntervalTimer(60000L, 15000L, new TimerConfig(null, false));
+    }
+
+    @Override
+    @Timeout
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void handleWorkerTimer(Timer timer) {
+        try {
+            DistributedAggregation distributedAggregation = getDistributedAggregation();
+            if (distributedAggregation != null && !distributedAggregation.isAggregating()
+                && !distributedAggregation.findLeasedPartitions(serverManager.getIdentity()).isEmpty()) {
+                // aggregation can take a while, don't hold up the timer
+                aggregationWorker.aggregateLeasedPartitions();
+            }
+        } catch (Throwable t) {
+            log.error("Failed to check for index partitions to aggregate - will try again later. Cause: " + t);
+        }
+    }
+
+    @Override
+    @Asynchronous
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void aggregateLeasedPartitions() {
+        try {
+            DistributedAggregation distributedAggregation = getDistributedAggregation();
+            if (distributedAggregation == null) {
+                return;
+            }
+            // The 1h data is scored for OOBs against the current baselines while it is being aggregated
+            OOBScorer oobScorer = oobManager.createOOBScorer(subjectManager.getOverlord(), 0);
+            distributedAggregation.work(serverManager.getIdentity(), oobScorer);
+        } catch (Throwable t) {
+            log.error("Failed to aggregate the index partitions leased to this server. Cause: " + t, t);
+        }
+    }
+
+    private DistributedAggregation getDistributedAggregation() {
+        if (!storageClientManager.isClusterAvailable()) {
+            return null;
+        }
+        MetricsServer metricsServer = storageClientManager.getMetricsServer();
+        return metricsServer == null ? null : metricsServer.getDistributedAggregation();
+    }
+}
@@ -22,11 +22,13 @@ package org.rhq.enterprise.server.measurement;
 import java.text.DateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
@@ -49,6 +51,7 @@ import org.jboss.ejb3.annotation.TransactionTimeout;
 
 import org.rhq.core.domain.auth.Subject;
 import org.rhq.core.domain.common.EntityContext;
+import org.rhq.core.domain.common.composite.SystemSetting;
 import org.rhq.core.domain.criteria.AvailabilityCriteria;
 import org.rhq.core.domain.discovery.AvailabilityReport;
 import org.rhq.core.domain.discovery.AvailabilityReport.Datum;
@@ -65,6 +68,7 @@ import org.rhq.core.domain.resource.group.composite.ResourceGroupComposite.Group
 import org.rhq.core.domain.server.PersistenceUtility;
 import org.rhq.core.domain.util.PageControl;
 import org.rhq.core.domain.util.PageList;
+import org.rhq.core.domain.util.OrderingField;
 import org.rhq.core.domain.util.PageOrdering;
 import org.rhq.core.util.StopWatch;
 import org.rhq.enterprise.server.RHQConstants;
@@ -79,9 +83,12 @@ import org.rhq.enterprise.server.resource.ResourceAvailabilityManagerLocal;
 import org.rhq.enterprise.server.resource.ResourceManagerLocal;
 import org.rhq.enterprise.server.resource.group.ResourceGroupManagerLocal;
 import org.rhq.enterprise.server.scheduler.jobs.AlertAvailabilityDurationJob;
+import org.rhq.enterprise.server.storage.StorageClientManager;
+import org.rhq.enterprise.server.system.SystemManagerLocal;
 import org.rhq.enterprise.server.util.CriteriaQueryGenerator;
 import org.rhq.enterprise.server.util.CriteriaQueryRunner;
 import org.rhq.enterprise.server.util.concurrent.AvailabilityReportSerializer;
+import org.rhq.server.metrics.HistoryDAO;
 
 /**
  * Manager for availability related tasks.
@@ -125,6 +132,10 @@ public class AvailabilityManagerBean implements AvailabilityManagerLocal, Availa
     private ResourceAvailabilityManagerLocal resourceAvailabilityManager;
     @EJB
     private AlertConditionCacheManagerLocal alertConditionCacheManager;
+    @EJB
+    private StorageClientManager storageClientManager;
+    @EJB
+    private SystemManagerLocal systemManager;
 
     // For Avail Duration Alert Condition Checks
     @javax.annotation.Resource
@@ -1337,8 +1348,135 @@ public class AvailabilityManagerBean implements AvailabilityManagerLocal, Availa
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public PageList<Availability> findAvailabilityByCriteria(Subject subject, AvailabilityCriteria criteria) {
+        HistoryDAO historyDAO = storageClientManager.getHistoryDAO();
+        if (historyDAO != null) {
+            return findAvailabilityByCriteria(historyDAO, subject, criteria);
+        }
+        return findAvailabilityInDatabase(subject, criteria);
+    }
+
+    /**
+     * Finds the availabilities of the criteria when the data purge job moves the closed intervals to the storage
+     * cluster. The archived intervals all precede the ones still in the database, and are merged with them and paged
+     * here. That only works for the intervals of a single resource sorted by start time, so other criteria are
+     * rejected rather than have the archived intervals missing from their results.
+     */
+    private PageList<Availability> findAvailabilityByCriteria(HistoryDAO historyDAO, Subject subject,
+        AvailabilityCriteria criteria) {
+        Integer resourceId = criteria.getFilterResourceId();
+        if (resourceId == null) {
+            throw new UnsupportedOperationException("Availabilities kept in the storage cluster can only be found "
+                + "for a resource");
+        }
+        PageControl pageControl = CriteriaQueryGenerator.getPageControl(criteria);
+        final boolean descending = isDescending(pageControl);
+        if (!authorizationManager.canViewResource(subject, resourceId)) {
+            return new PageList<Availability>(pageControl);
+        }
+
+        criteria.clearPaging();
+        List<Availability> availabilities = new ArrayList<Availability>(findAvailabilityInDatabase(subject, criteria));
+
+        long oldest = getAvailabilityHistoryStart();
+        Long intervalStartTime = criteria.getIntervalStartTime();
+        long begin = intervalStartTime == null ? oldest : Math.max(intervalStartTime, oldest);
+        long end = criteria.getIntervalEndTime() == null ? System.currentTimeMillis() : criteria
+            .getIntervalEndTime() + 1;
+        for (Availability availability : availabilities) {
+            end = Math.min(end, availability.getStartTime());
+        }
+        if (begin < end) {
+            Boolean initialAvailability = criteria.getFilterInitialAvailability();
+            List<AvailabilityType> types = criteria.getFilterAvailabilityTypes();
+            for (Availability availability : historyDAO.findAvailabilities(resourceId, begin, end, oldest)) {
+                if ((types == null || types.contains(availability.getAvailabilityType()))
+                    && (initialAvailability == null || initialAvailability || availability.getStartTime() > 0)) {
+                    availabilities.add(availability);
+                }
+            }
+        }
+
+        Collections.sort(availabilities, new Comparator<Availability>() {
+            @Override
+            public int compare(Availability a1, Availability a2) {
+                return descending ? a2.getStartTime().compareTo(a1.getStartTime()) : a1.getStartTime().compareTo(
+                    a2.getStartTime());
+            }
+        });
+
+        int fromIndex = pageControl.isUnlimited() ? 0 : Math.min(pageControl.getStartRow(), availabilities.size());
+        int toIndex = pageControl.isUnlimited() ? availabilities.size() : Math.min(
+            fromIndex + pageControl.getPageSize(), availabilities.size());
+        return new PageList<Availability>(new ArrayList<Availability>(availabilities.subList(fromIndex, toIndex)),
+            availabilities.size(), pageControl);
+    }
+
+    private static boolean isDescending(PageControl pageControl) {
+        List<OrderingField> orderingFields = pageControl.getOrderingFields();
+        if (orderingFields.isEmpty() || orderingFields.get(0).getField().equals("id")) {
+            return false;
+        }
+        String field = orderingFields.get(0).getField();
+        if (!field.equals("startTime") && !field.endsWith(".startTime")) {
+            throw new UnsupportedOperationException("Availabilities kept in the storage cluster can only be sorted "
+                + "by start time, not by [" + field + "]");
+        }
+        return orderingFields.get(0).getOrdering() == PageOrdering.DESC;
+    }
+
+    /**
+     * @return the start of the availability retention period, which nothing in the storage cluster precedes
+     */
+    private long getAvailabilityHistoryStart() {
+        String retention = systemManager.getObfuscatedSystemSettings(true).get(
+            SystemSetting.AVAILABILITY_PURGE_PERIOD);
+        return System.currentTimeMillis()
+            - (retention == null ? TimeUnit.DAYS.toMillis(365) : Long.parseLong(retention));
+    }
+
+    /**
+     * Adds the intervals of the resources the data purge job moved to the storage cluster, if it does, to the
+     * intervals found in the database for the range, and sorts them by start time. The archived intervals of a
+     * resource all precede the ones still in the database.
+     */
+    private void addArchivedAvailabilities(List<Availability> availabilities, List<Integer> resourceIds,
+        long startTime, long endTime) {
+        HistoryDAO historyDAO = storageClientManager.getHistoryDAO();
+        if (historyDAO == null || resourceIds.isEmpty()) {
+            return;
+        }
+
+        Map<Integer, Long> archivedEnds = new HashMap<Integer, Long>();
+        for (Integer resourceId : resourceIds) {
+            archivedEnds.put(resourceId, endTime + 1);
+        }
+        for (Availability availability : availabilities) {
+            Long archivedEnd = archivedEnds.get(availability.getResource().getId());
+            if (archivedEnd != null && availability.getStartTime() < archivedEnd) {
+                archivedEnds.put(availability.getResource().getId(), availability.getStartTime());
+            }
+        }
+
+        long oldest = getAvailabilityHistoryStart();
+        long begin = Math.max(startTime, oldest);
+        for (Map.Entry<Integer, Long> archivedEnd : archivedEnds.entrySet()) {
+            if (begin < archivedEnd.getValue()) {
+                availabilities.addAll(historyDAO.findAvailabilities(archivedEnd.getKey(), begin,
+                    archivedEnd.getValue(), oldest));
+            }
+        }
+
+        Collections.sort(availabilities, new Comparator<Availability>() {
+            @Override
+            public int compare(Availability a1, Availability a2) {
+                return a1.getStartTime().compareTo(a2.getStartTime());
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private PageList<Availability> findAvailabilityInDatabase(Subject subject, AvailabilityCriteria criteria) {
         CriteriaQueryGenerator generator = new CriteriaQueryGenerator(subject, criteria);
 
         if (authorizationManager.isInventoryManager(subject) == false) {
@@ -1361,6 +1499,13 @@ public class AvailabilityManagerBean implements AvailabilityManagerLocal, Availa
         q.setParameter("start", startDate.getTime());
         q.setParameter("end", endDate.getTime());
         List<Availability> results = q.getResultList();
+
+        if (storageClientManager.getHistoryDAO() != null) {
+            Query members = entityManager.createNamedQuery(Resource.QUERY_FIND_EXPLICIT_IDS_BY_RESOURCE_GROUP_ADMIN);
+            members.setParameter("groupId", groupId);
+            results = new ArrayList<Availability>(results);
+            addArchivedAvailabilities(results, members.getResultList(), startDate.getTime(), endDate.getTime());
+        }
         return results;
     }
 
@@ -1376,6 +1521,17 @@ public class AvailabilityManagerBean implements AvailabilityManagerLocal, Availa
         q.setParameter("start", startDate.getTime());
         q.setParameter("end", endDate.getTime());
         List<Availability> results = q.getResultList();
+
+        if (storageClientManager.getHistoryDAO() != null) {
+            Query members = entityManager.createQuery("" //
+                + "SELECT res.id FROM Resource res " //
+                + " WHERE res.parentResource.id = :parentId AND res.resourceType.id = :typeId " //
+                + "   AND res.inventoryStatus = 'COMMITTED'");
+            members.setParameter("parentId", parentResourceId);
+            members.setParameter("typeId", resourceTypeId);
+            results = new ArrayList<Availability>(results);
+            addArchivedAvailabilities(results, members.getResultList(), startDate.getTime(), endDate.getTime());
+        }
         return results;
     }
 
@@ -57,9 +57,14 @@ public interface AvailabilityManagerRemote {
     public Availability getCurrentAvailabilityForResource(Subject subject, int resourceId);
 
     /**
+     * When the availability history is kept in the storage cluster, the criteria must be filtered by resource and can
+     * only be sorted by start time.
+     *
      * @param subject
      * @param criteria
      * @return not null
+     * @throws UnsupportedOperationException if the history is kept in the storage cluster and the criteria is not
+     * filtered by resource or sorted by something else
      */
     PageList<Availability> findAvailabilityByCriteria(Subject subject, AvailabilityCriteria criteria);
 }
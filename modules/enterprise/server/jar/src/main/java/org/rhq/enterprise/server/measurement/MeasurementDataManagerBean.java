@@ -61,6 +61,7 @@ import org.jboss.remoting.CannotConnectException;
 
 import org.rhq.core.domain.auth.Subject;
 import org.rhq.core.domain.common.EntityContext;
+import org.rhq.core.domain.common.composite.SystemSetting;
 import org.rhq.core.domain.criteria.MeasurementDataTraitCriteria;
 import org.rhq.core.domain.criteria.MeasurementScheduleCriteria;
 import org.rhq.core.domain.measurement.DataType;
@@ -102,8 +103,10 @@ import org.rhq.enterprise.server.measurement.util.MeasurementDataManagerUtility;
 import org.rhq.enterprise.server.resource.group.ResourceGroupManagerLocal;
 import org.rhq.enterprise.server.rest.ResourceHandlerBean;
 import org.rhq.enterprise.server.storage.StorageClientManager;
+import org.rhq.enterprise.server.system.SystemManagerLocal;
 import org.rhq.enterprise.server.util.CriteriaQueryGenerator;
 import org.rhq.enterprise.server.util.CriteriaQueryRunner;
+import org.rhq.server.metrics.HistoryDAO;
 import org.rhq.server.metrics.MetricsServer;
 import org.rhq.server.metrics.RawDataInsertedCallback;
 import org.rhq.server.metrics.domain.AggregateNumericMetric;
@@ -165,6 +168,9 @@ public class MeasurementDataManagerBean implements MeasurementDataManagerLocal,
     @EJB
     private StorageClientManager storageClientManager;
 
+    @EJB
+    private SystemManagerLocal systemManager;
+
     @EJB
     private MeasurementScheduleManagerLocal measurementScheduleManager;
 
@@ -700,7 +706,8 @@ public class MeasurementDataManagerBean implements MeasurementDataManagerLocal,
             criteria);
 
         MetricsServer metricsServer = storageClientManager.getMetricsServer();
-        AggregateNumericMetric summary = metricsServer.getSummaryAggregate(map(schedules), startTime, endTime);
+        AggregateNumericMetric summary = metricsServer.getSummaryAggregate(groupId, definitionId, map(schedules),
+            startTime, endTime);
 
         return new MeasurementAggregate(summary.getMin(), summary.getAvg(), summary.getMax());
     }
@@ -808,8 +815,8 @@ public class MeasurementDataManagerBean implements MeasurementDataManagerLocal,
                 new ArrayList<List<MeasurementDataNumericHighLowComposite>>();
 
             List<MeasurementDataNumericHighLowComposite> tempList = new ArrayList<MeasurementDataNumericHighLowComposite>();
-            for (MeasurementDataNumericHighLowComposite object : metricsServer.findDataForGroup(map(schedules),
-                beginTime, endTime,numDataPoints)) {
+            for (MeasurementDataNumericHighLowComposite object : metricsServer.findDataForGroup(context.getGroupId(),
+                definitionId, map(schedules), beginTime, endTime, numDataPoints)) {
                 tempList.add(object);
             }
             data.add(tempList);
@@ -1046,11 +1053,110 @@ public class MeasurementDataManagerBean implements MeasurementDataManagerLocal,
             result.add(mdt);
         }
 
+        // The data purge job moves all but the latest value of a schedule to the storage cluster when the history is
+        // kept there, so the archived values are older than anything found in the database.
+        HistoryDAO historyDAO = storageClientManager.getHistoryDAO();
+        if (historyDAO != null && !result.isEmpty()) {
+            MeasurementDataTrait oldest = result.get(result.size() - 1);
+            String retention = systemManager.getObfuscatedSystemSettings(true).get(SystemSetting.TRAIT_PURGE_PERIOD);
+            long begin = System.currentTimeMillis()
+                - (retention == null ? TimeUnit.DAYS.toMillis(365) : Long.parseLong(retention));
+            try {
+                for (MeasurementDataTrait trait : historyDAO.findTraits(oldest.getScheduleId(), begin,
+                    oldest.getTimestamp())) {
+                    trait.setName(oldest.getName());
+                    result.add(trait);
+                }
+            } catch (Exception e) {
+                log.warn("Failed to load the trait history of resource[id=" + resourceId + "] and definition[id="
+                    + definitionId + "] from the storage cluster: " + ThrowableUtil.getRootMessage(e));
+            }
+        }
+
         return result;
     }
 
     @Override
     public PageList<MeasurementDataTrait> findTraitsByCriteria(Subject subject, MeasurementDataTraitCriteria criteria) {
+        HistoryDAO historyDAO = storageClientManager.getHistoryDAO();
+        if (historyDAO != null && !criteria.isFilterMaxTimestamp()) {
+            return findTraitsByCriteria(historyDAO, subject, criteria);
+        }
+        return findTraitsInDatabase(subject, criteria);
+    }
+
+    /**
+     * Finds the trait values of the criteria when the data purge job moves all but the latest value of each schedule
+     * to the storage cluster. The database still has a value for every schedule the criteria matches, the archived
+     * values of those schedules are merged with them and paged here. That only works when sorting by time stamp, so
+     * other sorts are rejected rather than have the archived values missing from their results.
+     */
+    private PageList<MeasurementDataTrait> findTraitsByCriteria(HistoryDAO historyDAO, Subject subject,
+        MeasurementDataTraitCriteria criteria) {
+        PageControl pageControl = CriteriaQueryGenerator.getPageControl(criteria);
+        final boolean ascending = isAscending(pageControl);
+
+        criteria.clearPaging();
+        List<MeasurementDataTrait> traits = new ArrayList<MeasurementDataTrait>(findTraitsInDatabase(subject,
+            criteria));
+
+        Map<Integer, MeasurementDataTrait> oldestTraits = new HashMap<Integer, MeasurementDataTrait>();
+        for (MeasurementDataTrait trait : traits) {
+            MeasurementDataTrait oldest = oldestTraits.get(trait.getScheduleId());
+            if (oldest == null || trait.getTimestamp() < oldest.getTimestamp()) {
+                oldestTraits.put(trait.getScheduleId(), trait);
+            }
+        }
+        String retention = systemManager.getObfuscatedSystemSettings(true).get(SystemSetting.TRAIT_PURGE_PERIOD);
+        long begin = System.currentTimeMillis()
+            - (retention == null ? TimeUnit.DAYS.toMillis(365) : Long.parseLong(retention));
+        for (MeasurementDataTrait oldest : oldestTraits.values()) {
+            for (MeasurementDataTrait trait : historyDAO.findTraits(oldest.getScheduleId(), begin,
+                oldest.getTimestamp())) {
+                trait.setSchedule(oldest.getSchedule());
+                traits.add(trait);
+            }
+        }
+
+        Collections.sort(traits, new Comparator<MeasurementDataTrait>() {
+            @Override
+            public int compare(MeasurementDataTrait t1, MeasurementDataTrait t2) {
+                int comparison = t1.getTimestamp() < t2.getTimestamp() ? -1 : (t1.getTimestamp() == t2
+                    .getTimestamp() ? 0 : 1);
+                if (comparison == 0) {
+                    comparison = t1.getScheduleId() - t2.getScheduleId();
+                }
+                return ascending ? comparison : -comparison;
+            }
+        });
+
+        int fromIndex = pageControl.isUnlimited() ? 0 : Math.min(pageControl.getStartRow(), traits.size());
+        int toIndex = pageControl.isUnlimited() ? traits.size() : Math.min(fromIndex + pageControl.getPageSize(),
+            traits.size());
+        return new PageList<MeasurementDataTrait>(new ArrayList<MeasurementDataTrait>(
+            traits.subList(fromIndex, toIndex)), traits.size(), pageControl);
+    }
+
+    /**
+     * Trait values read from the storage cluster can only be sorted by time stamp, newest first unless the criteria
+     * asks otherwise.
+     */
+    private static boolean isAscending(PageControl pageControl) {
+        List<OrderingField> orderingFields = pageControl.getOrderingFields();
+        if (orderingFields.isEmpty() || orderingFields.get(0).getField().equals("id")) {
+            return false;
+        }
+        String field = orderingFields.get(0).getField();
+        if (!field.equals("timestamp") && !field.endsWith(".timestamp")) {
+            throw new UnsupportedOperationException("Trait values kept in the storage cluster can only be sorted by "
+                + "timestamp, not by [" + field + "]");
+        }
+        return orderingFields.get(0).getOrdering() == PageOrdering.ASC;
+    }
+
+    @SuppressWarnings("unchecked")
+    private PageList<MeasurementDataTrait> findTraitsInDatabase(Subject subject,
+        MeasurementDataTraitCriteria criteria) {
         CriteriaQueryGenerator generator = new CriteriaQueryGenerator(subject, criteria);
 
         Map<String, Object> filterFields = generator.getFilterFields(criteria);
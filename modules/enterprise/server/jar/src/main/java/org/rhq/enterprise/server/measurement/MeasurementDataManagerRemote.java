@@ -96,12 +96,16 @@ public interface MeasurementDataManagerRemote {
     List<MeasurementDataTrait> findCurrentTraitsForResource(Subject subject, int resourceId, DisplayType displayType);
 
     /**
-     * Finds traits that match the specified {@link MeasurementDataTraitCriteria criteria}.
+     * Finds traits that match the specified {@link MeasurementDataTraitCriteria criteria}. When the trait history is
+     * kept in the storage cluster, the traits can only be sorted by time stamp, unless the criteria only asks for the
+     * latest values.
      *
      * @param subject the user that is requesting the traits
      * @param criteria the criteria by which to filter the traits
      *
      * @return the traits that match the specified {@link MeasurementDataTraitCriteria criteria}; never null
+     * @throws UnsupportedOperationException if the history is kept in the storage cluster and the criteria sorts by
+     * something else than the time stamp
      */
     PageList<MeasurementDataTrait> findTraitsByCriteria(Subject subject, MeasurementDataTraitCriteria criteria);
 
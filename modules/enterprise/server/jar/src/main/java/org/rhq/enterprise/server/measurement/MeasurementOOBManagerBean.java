@@ -68,6 +68,7 @@ import org.rhq.enterprise.server.util.QueryUtility;
 import org.rhq.server.metrics.MetricsDAO;
 import org.rhq.server.metrics.MetricsServer;
 import org.rhq.server.metrics.StorageResultSetFuture;
+import org.rhq.server.metrics.aggregation.OOBScorer;
 import org.rhq.server.metrics.domain.AggregateNumericMetric;
 import org.rhq.server.metrics.domain.AggregateNumericMetricMapper;
 import org.rhq.server.metrics.domain.Bucket;
@@ -81,6 +82,13 @@ import org.rhq.server.metrics.domain.Bucket;
 public class MeasurementOOBManagerBean implements MeasurementOOBManagerLocal {
 
     private static final int BATCH_SIZE = 500;
+    private static final int BASELINE_FETCH_SIZE = 1000;
+
+    private static final String QUERY_BASELINES_COMPUTED_AFTER = "" //
+        + "SELECT schedule_id, bl_min, bl_max FROM rhq_measurement_bline WHERE bl_compute_time > ?";
+    private static final String DELETE_OOB = "DELETE FROM rhq_measurement_oob WHERE schedule_id = ?";
+    private static final String INSERT_OOB = "" //
+        + "INSERT INTO rhq_measurement_oob (schedule_id, time_stamp, oob_factor) VALUES (?, ?, ?)";
     private final Log log = LogFactory.getLog(MeasurementOOBManagerBean.class);
 
     @PersistenceContext(unitName = RHQConstants.PERSISTENCE_UNIT_NAME)
@@ -234,34 +242,157 @@ public class MeasurementOOBManagerBean implements MeasurementOOBManagerLocal {
                 q.setParameter("scheduleIds",scheduleIds);
                 List<MeasurementBaseline> tmpList = q.getResultList();
 
-                // put the result in a HashMap to speed up query later
-                Map<Integer,MeasurementBaseline> baselineMap = new HashMap<Integer, MeasurementBaseline>(tmpList.size());
+                // score the batch in memory and persist the resulting OOBs with a single statement batch
+                OOBScorer scorer = new OOBScorer(createOOBSink(), BATCH_SIZE);
                 for (MeasurementBaseline baseline : tmpList) {
-                    baselineMap.put(baseline.getScheduleId(),baseline);
+                    scorer.addBaseline(baseline.getScheduleId(), baseline.getMin(), baseline.getMax());
                 }
+                scorer.score(metricList);
+                count += scorer.finish();
+            }
+        } finally {
+            long endTime = System.currentTimeMillis();
+            if (log.isInfoEnabled()) {
+                log.info("Finished calculating " + count + " OOBs in " + (endTime - startTime) + " ms");
+            }
+        }
+    }
 
-                for (AggregateNumericMetric metric : metricList) {
-                    MeasurementBaseline baseline = baselineMap.get(metric.getScheduleId());
-                    if (baseline==null)
-                        continue;
-
-                    try {
-                        count += oobManager.calculateOOB(metric,baseline);
-                    } catch (Exception e) {
-                        log.error("An error occurred while calculating OOBs for " + metric, e);
-                        throw new RuntimeException(e);
-                    }
+    @Override
+    @TransactionAttribute(value = TransactionAttributeType.NOT_SUPPORTED)
+    public void computeOOBsForLastHour(Subject subject, Iterable<AggregateNumericMetric> metrics,
+        long baselinesComputedAfter) {
+        log.info("Computing OOBs for baselines computed after " + new Date(baselinesComputedAfter));
+        long startTime = System.currentTimeMillis();
+        int count = 0;
+        try {
+            OOBScorer scorer = createOOBScorer(subject, baselinesComputedAfter);
+            if (scorer.getBaselineCount() == 0) {
+                return;
+            }
+            List<AggregateNumericMetric> metricList = new ArrayList<AggregateNumericMetric>(BATCH_SIZE);
+            for (AggregateNumericMetric metric : metrics) {
+                metricList.add(metric);
+                if (metricList.size() == BATCH_SIZE) {
+                    scorer.score(metricList);
+                    metricList.clear();
+                }
+            }
+            scorer.score(metricList);
+            count = scorer.finish();
+        } finally {
+            if (log.isInfoEnabled()) {
+                log.info("Finished calculating " + count + " OOBs in " + (System.currentTimeMillis() - startTime)
+                    + " ms");
+            }
+        }
+    }
 
+    @Override
+    @TransactionAttribute(value = TransactionAttributeType.NOT_SUPPORTED)
+    public void computeOOBsForHour(Subject subject, long hour, long baselinesComputedAfter) {
+        log.info("Computing OOBs of the hour starting at " + new Date(hour) + " for baselines computed after "
+            + new Date(baselinesComputedAfter));
+        long startTime = System.currentTimeMillis();
+        int count = 0;
+        try {
+            OOBScorer scorer = createOOBScorer(subject, baselinesComputedAfter);
+            if (scorer.getBaselineCount() == 0) {
+                return;
+            }
+            List<MeasurementDataPK> pks = new ArrayList<MeasurementDataPK>(BATCH_SIZE);
+            for (Integer scheduleId : scorer.getScheduleIds()) {
+                pks.add(new MeasurementDataPK(hour, scheduleId));
+                if (pks.size() == BATCH_SIZE) {
+                    scorer.score(getOneHourDataForPKs(pks));
+                    pks.clear();
                 }
             }
+            scorer.score(getOneHourDataForPKs(pks));
+            count = scorer.finish();
         } finally {
-            long endTime = System.currentTimeMillis();
             if (log.isInfoEnabled()) {
-                log.info("Finished calculating " + count + " OOBs in " + (endTime - startTime) + " ms");
+                log.info("Finished calculating " + count + " OOBs in " + (System.currentTimeMillis() - startTime)
+                    + " ms");
             }
         }
     }
 
+    @Override
+    @TransactionAttribute(value = TransactionAttributeType.NOT_SUPPORTED)
+    public OOBScorer createOOBScorer(Subject subject, long baselinesComputedAfter) {
+        OOBScorer scorer = new OOBScorer(createOOBSink(), BATCH_SIZE);
+
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        java.sql.ResultSet rs = null;
+        long startTime = System.currentTimeMillis();
+        try {
+            conn = rhqDs.getConnection();
+            stmt = conn.prepareStatement(QUERY_BASELINES_COMPUTED_AFTER);
+            stmt.setFetchSize(BASELINE_FETCH_SIZE);
+            stmt.setLong(1, baselinesComputedAfter);
+            rs = stmt.executeQuery();
+            while (rs.next()) {
+                scorer.addBaseline(rs.getInt(1), rs.getDouble(2), rs.getDouble(3));
+            }
+        } catch (SQLException e) {
+            log.error("Failed to load baselines, OOBs will not be computed for the schedules not loaded: " + e);
+        } finally {
+            JDBCUtil.safeClose(conn, stmt, rs);
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Loaded " + scorer.getBaselineCount() + " baselines in " + (System.currentTimeMillis() - startTime)
+                + " ms");
+        }
+        return scorer;
+    }
+
+    @Override
+    @TransactionAttribute(value = TransactionAttributeType.REQUIRES_NEW)
+    public void persistOOBs(List<OOBScorer.OOB> oobs) {
+        if (oobs.isEmpty()) {
+            return;
+        }
+
+        Connection conn = null;
+        PreparedStatement deleteStmt = null;
+        PreparedStatement insertStmt = null;
+        try {
+            conn = rhqDs.getConnection();
+            // There is at most one OOB per schedule, so replace whatever is there. Deleting and inserting in
+            // batches is portable across the supported databases, unlike an upsert.
+            deleteStmt = conn.prepareStatement(DELETE_OOB);
+            insertStmt = conn.prepareStatement(INSERT_OOB);
+            for (OOBScorer.OOB oob : oobs) {
+                deleteStmt.setInt(1, oob.getScheduleId());
+                deleteStmt.addBatch();
+                insertStmt.setInt(1, oob.getScheduleId());
+                insertStmt.setLong(2, oob.getTimestamp());
+                insertStmt.setInt(3, oob.getOobFactor());
+                insertStmt.addBatch();
+            }
+            deleteStmt.executeBatch();
+            insertStmt.executeBatch();
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to persist " + oobs.size() + " OOBs", e);
+        } finally {
+            JDBCUtil.safeClose(deleteStmt);
+            JDBCUtil.safeClose(conn, insertStmt, null);
+        }
+    }
+
+    private OOBScorer.Sink createOOBSink() {
+        final MeasurementOOBManagerLocal manager = oobManager;
+        return new OOBScorer.Sink() {
+            @Override
+            public void persist(List<OOBScorer.OOB> oobs) {
+                manager.persistOOBs(oobs);
+            }
+        };
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     @TransactionAttribute(value = TransactionAttributeType.REQUIRES_NEW)
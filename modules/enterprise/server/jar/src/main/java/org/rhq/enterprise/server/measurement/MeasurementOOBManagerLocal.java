@@ -19,6 +19,8 @@
 
 package org.rhq.enterprise.server.measurement;
 
+import java.util.List;
+
 import javax.ejb.Local;
 
 import org.rhq.core.domain.auth.Subject;
@@ -27,6 +29,7 @@ import org.rhq.core.domain.measurement.MeasurementSchedule;
 import org.rhq.core.domain.measurement.composite.MeasurementOOBComposite;
 import org.rhq.core.domain.util.PageControl;
 import org.rhq.core.domain.util.PageList;
+import org.rhq.server.metrics.aggregation.OOBScorer;
 import org.rhq.server.metrics.domain.AggregateNumericMetric;
 
 /**
@@ -58,6 +61,42 @@ public interface MeasurementOOBManagerLocal {
      */
     void computeOOBsForLastHour(Subject subject, Iterable<AggregateNumericMetric> metrics);
 
+    /**
+     * Same as {@link #computeOOBsForLastHour(Subject, Iterable)}, but only the schedules whose baseline has been
+     * computed after the given time are scored. This is used to rescore the schedules whose baseline has been
+     * recalculated after their 1 hr data was already scored during aggregation.
+     *
+     * @param subject
+     * @param metrics The most recent 1 hr aggregates
+     * @param baselinesComputedAfter Only baselines computed after this time are scored against
+     */
+    void computeOOBsForLastHour(Subject subject, Iterable<AggregateNumericMetric> metrics, long baselinesComputedAfter);
+
+    /**
+     * Same as {@link #computeOOBsForLastHour(Subject, Iterable, long)}, but the 1 hr aggregates are loaded from
+     * storage. This is used when aggregation has been distributed across the servers, in which case the 1 hr
+     * aggregates are not all in memory on any one server.
+     *
+     * @param subject
+     * @param hour The start time of the 1 hr aggregates
+     * @param baselinesComputedAfter Only baselines computed after this time are scored against
+     */
+    void computeOOBsForHour(Subject subject, long hour, long baselinesComputedAfter);
+
+    /**
+     * Creates a scorer that computes OOBs in memory, loaded with all baselines computed after the given time (pass 0
+     * for all baselines) and persisting the OOBs it finds with {@link #persistOOBs(List)}. The scorer is meant to be
+     * handed to metrics aggregation, so that 1 hr data is scored as it is produced.
+     */
+    OOBScorer createOOBScorer(Subject subject, long baselinesComputedAfter);
+
+    /**
+     * Stores the OOBs, replacing any existing OOB of their schedules, using JDBC batches.
+     * <br/><br/>
+     * <strong>Note</strong> This method exists only for transaction demarcation.
+     */
+    void persistOOBs(List<OOBScorer.OOB> oobs);
+
     /**
      * Determines and calculates an OOB if necessary, If an OOB is generated, this method
      * saves it to the database.
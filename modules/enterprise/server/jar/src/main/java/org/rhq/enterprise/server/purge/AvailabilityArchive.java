@@ -0,0 +1,140 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.purge;
+
+import static org.rhq.core.db.DatabaseTypeFactory.isOracle;
+import static org.rhq.core.db.DatabaseTypeFactory.isPostgres;
+
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+import javax.transaction.UserTransaction;
+
+import org.rhq.core.db.DatabaseType;
+import org.rhq.core.domain.measurement.AvailabilityType;
+import org.rhq.server.metrics.HistoryDAO;
+import org.rhq.server.metrics.StorageResultSetFuture;
+
+/**
+ * Moves the closed availability intervals which ended before a point in time to the availability history of the
+ * storage cluster before deleting them. Intervals are stored with a TTL so that they expire at the end of the retention
+ * period; intervals which already ended before that are deleted without being copied.
+ */
+class AvailabilityArchive extends PurgeTemplate<AvailabilityArchive.Interval> {
+    private static final String ENTITY_NAME = "Availability";
+
+    private static final String QUERY_SELECT_KEYS_FOR_ARCHIVE = "" //
+        + "SELECT ID, RESOURCE_ID, START_TIME, END_TIME, AVAILABILITY_TYPE FROM RHQ_AVAILABILITY WHERE END_TIME < ?";
+
+    private static final String QUERY_PURGE_BY_KEY = "DELETE FROM RHQ_AVAILABILITY WHERE ID = ?";
+
+    private final HistoryDAO historyDAO;
+    private final long oldest;
+    private final long retention;
+
+    /**
+     * @param oldest the intervals which ended before this are archived
+     * @param retention the availability purge period, in milliseconds
+     */
+    AvailabilityArchive(DataSource dataSource, UserTransaction userTransaction, HistoryDAO historyDAO, long oldest,
+        long retention) {
+        super(dataSource, userTransaction);
+        this.historyDAO = historyDAO;
+        this.oldest = oldest;
+        this.retention = retention;
+    }
+
+    @Override
+    protected String getEntityName() {
+        return ENTITY_NAME;
+    }
+
+    @Override
+    protected String getFindRowKeysQuery(DatabaseType databaseType) {
+        if (isPostgres(databaseType) || isOracle(databaseType)) {
+            return QUERY_SELECT_KEYS_FOR_ARCHIVE;
+        }
+        throw new UnsupportedOperationException(databaseType.getName());
+    }
+
+    @Override
+    protected void setFindRowKeysQueryParams(PreparedStatement preparedStatement) throws SQLException {
+        preparedStatement.setLong(1, oldest);
+    }
+
+    @Override
+    protected Interval getKeyFromResultSet(ResultSet resultSet) throws SQLException {
+        return new Interval(resultSet.getInt(1), resultSet.getInt(2), resultSet.getLong(3), resultSet.getLong(4),
+            resultSet.getInt(5));
+    }
+
+    @Override
+    protected void beforeDeleteRows(List<Interval> selectedKeys) throws Exception {
+        long now = System.currentTimeMillis();
+        List<StorageResultSetFuture> inserts = new ArrayList<StorageResultSetFuture>(selectedKeys.size());
+        for (Interval interval : selectedKeys) {
+            long ttl = (retention - now + interval.endTime) / 1000;
+            if (ttl > 0) {
+                inserts.add(historyDAO.insertAvailability(interval.resourceId, interval.startTime, interval.endTime,
+                    AvailabilityType.values()[interval.availabilityType], (int) ttl));
+            }
+        }
+        for (StorageResultSetFuture insert : inserts) {
+            insert.get();
+        }
+    }
+
+    @Override
+    protected String getDeleteRowByKeyQuery(DatabaseType databaseType) {
+        if (isPostgres(databaseType) || isOracle(databaseType)) {
+            return QUERY_PURGE_BY_KEY;
+        }
+        throw new UnsupportedOperationException(databaseType.getName());
+    }
+
+    @Override
+    protected void setDeleteRowByKeyQueryParams(PreparedStatement preparedStatement, Interval key)
+        throws SQLException {
+        preparedStatement.setInt(1, key.id);
+    }
+
+    static class Interval implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final int id;
+        final int resourceId;
+        final long startTime;
+        final long endTime;
+        final int availabilityType;
+
+        Interval(int id, int resourceId, long startTime, long endTime, int availabilityType) {
+            this.id = id;
+            this.resourceId = resourceId;
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.availabilityType = availabilityType;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.purge;
+
+import static org.rhq.core.db.DatabaseTypeFactory.isOracle;
+import static org.rhq.core.db.DatabaseTypeFactory.isPostgres;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+import javax.transaction.UserTransaction;
+
+import org.rhq.core.db.DatabaseType;
+import org.rhq.core.domain.measurement.MeasurementDataPK;
+import org.rhq.core.domain.measurement.MeasurementDataTrait;
+import org.rhq.server.metrics.HistoryDAO;
+import org.rhq.server.metrics.StorageResultSetFuture;
+
+/**
+ * Moves the trait values selected by {@link MeasurementDataTraitPurge} to the trait history of the storage cluster
+ * before deleting them. Values are stored with a TTL so that they expire at the end of the retention period; values
+ * that are already older than that are deleted without being copied.
+ */
+class MeasurementDataTraitArchive extends PurgeTemplate<MeasurementDataTrait> {
+    private static final String ENTITY_NAME = "MeasurementDataTrait";
+
+    private static final String QUERY_SELECT_KEYS_FOR_ARCHIVE = "" //
+        + "SELECT schedule_id, time_stamp, value FROM rhq_measurement_data_trait "
+        + MeasurementDataTraitPurge.QUERY_PURGE_CONDITION;
+
+    private final HistoryDAO historyDAO;
+    private final long oldest;
+    private final long retention;
+
+    /**
+     * @param oldest the rows older than the latest row of their schedule which is itself older than this are archived
+     * @param retention the trait purge period, in milliseconds
+     */
+    MeasurementDataTraitArchive(DataSource dataSource, UserTransaction userTransaction, HistoryDAO historyDAO,
+        long oldest, long retention) {
+        super(dataSource, userTransaction);
+        this.historyDAO = historyDAO;
+        this.oldest = oldest;
+        this.retention = retention;
+    }
+
+    @Override
+    protected String getEntityName() {
+        return ENTITY_NAME;
+    }
+
+    @Override
+    protected String getFindRowKeysQuery(DatabaseType databaseType) {
+        if (isPostgres(databaseType) || isOracle(databaseType)) {
+            return QUERY_SELECT_KEYS_FOR_ARCHIVE;
+        }
+        throw new UnsupportedOperationException(databaseType.getName());
+    }
+
+    @Override
+    protected void setFindRowKeysQueryParams(PreparedStatement preparedStatement) throws SQLException {
+        preparedStatement.setLong(1, oldest);
+    }
+
+    @Override
+    protected MeasurementDataTrait getKeyFromResultSet(ResultSet resultSet) throws SQLException {
+        return new MeasurementDataTrait(new MeasurementDataPK(resultSet.getLong(2), resultSet.getInt(1)),
+            resultSet.getString(3));
+    }
+
+    @Override
+    protected void beforeDeleteRows(List<MeasurementDataTrait> selectedKeys) throws Exception {
+        long now = System.currentTimeMillis();
+        List<StorageResultSetFuture> inserts = new ArrayList<StorageResultSetFuture>(selectedKeys.size());
+        for (MeasurementDataTrait trait : selectedKeys) {
+            long ttl = (retention - now + trait.getTimestamp()) / 1000;
+            if (ttl > 0) {
+                inserts.add(historyDAO.insertTrait(trait.getScheduleId(), trait.getTimestamp(), trait.getValue(),
+                    (int) ttl));
+            }
+        }
+        for (StorageResultSetFuture insert : inserts) {
+            insert.get();
+        }
+    }
+
+    @Override
+    protected String getDeleteRowByKeyQuery(DatabaseType databaseType) {
+        if (isPostgres(databaseType) || isOracle(databaseType)) {
+            return MeasurementDataTraitPurge.QUERY_PURGE_BY_KEY;
+        }
+        throw new UnsupportedOperationException(databaseType.getName());
+    }
+
+    @Override
+    protected void setDeleteRowByKeyQueryParams(PreparedStatement preparedStatement, MeasurementDataTrait key)
+        throws SQLException {
+        preparedStatement.setInt(1, key.getScheduleId());
+        preparedStatement.setLong(2, key.getTimestamp());
+    }
+}
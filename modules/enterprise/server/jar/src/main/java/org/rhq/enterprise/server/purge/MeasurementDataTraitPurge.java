@@ -44,7 +44,13 @@ class MeasurementDataTraitPurge extends PurgeTemplate<MeasurementDataPK> {
      *       E051-08).
      */
     private static final String QUERY_SELECT_KEYS_FOR_PURGE = "" //
-        + "SELECT schedule_id, time_stamp FROM rhq_measurement_data_trait " // SQL Server doesn't like aliases, use full table name
+        + "SELECT schedule_id, time_stamp FROM rhq_measurement_data_trait "; // SQL Server doesn't like aliases, use full table name
+
+    /**
+     * Selects the rows older than the latest row of their schedule which is itself older than the parameter. Shared
+     * with {@link MeasurementDataTraitArchive}.
+     */
+    static final String QUERY_PURGE_CONDITION = "" //
         + "WHERE EXISTS " // rewritten as exists because H2 doesn't support multi-column conditions
         + "  (SELECT t2.schedule_id, t2.time_stamp " //
         + "   FROM rhq_measurement_data_trait t2, " //
@@ -57,7 +63,7 @@ class MeasurementDataTraitPurge extends PurgeTemplate<MeasurementDataPK> {
         + "   AND rhq_measurement_data_trait.time_stamp = t2.time_stamp " // rewrote multi-column conditions as additional
         + "   AND rhq_measurement_data_trait.schedule_id = t2.schedule_id) "; // correlated restrictions to the delete table;
 
-    private static final String QUERY_PURGE_BY_KEY = "" //
+    static final String QUERY_PURGE_BY_KEY = "" //
         + "DELETE FROM rhq_measurement_data_trait WHERE schedule_id = ? AND time_stamp = ?";
 
     private final long oldest;
@@ -75,7 +81,7 @@ class MeasurementDataTraitPurge extends PurgeTemplate<MeasurementDataPK> {
     @Override
     protected String getFindRowKeysQuery(DatabaseType databaseType) {
         if (isPostgres(databaseType) || isOracle(databaseType)) {
-            return QUERY_SELECT_KEYS_FOR_PURGE;
+            return QUERY_SELECT_KEYS_FOR_PURGE + QUERY_PURGE_CONDITION;
         }
         throw new UnsupportedOperationException(databaseType.getName());
     }
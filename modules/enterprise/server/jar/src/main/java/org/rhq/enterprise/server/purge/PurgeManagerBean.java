@@ -20,6 +20,7 @@
 package org.rhq.enterprise.server.purge;
 
 import javax.annotation.Resource;
+import javax.ejb.EJB;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionManagement;
 import javax.ejb.TransactionManagementType;
@@ -31,6 +32,8 @@ import org.apache.commons.logging.LogFactory;
 
 import org.rhq.enterprise.server.RHQConstants;
 import org.rhq.enterprise.server.measurement.instrumentation.MeasurementMonitor;
+import org.rhq.enterprise.server.storage.StorageClientManager;
+import org.rhq.server.metrics.HistoryDAO;
 
 /**
  * A manager for purge. It's mostly used from the {@link org.rhq.enterprise.server.scheduler.jobs.DataPurgeJob}.<br>
@@ -52,6 +55,9 @@ public class PurgeManagerBean implements PurgeManagerLocal {
     @Resource
     private UserTransaction userTransaction;
 
+    @EJB
+    private StorageClientManager storageClientManager;
+
     @Override
     public int purgeAvailabilities(long oldest) {
         AvailabilityPurge availabilityPurge = new AvailabilityPurge(dataSource, userTransaction, oldest);
@@ -72,6 +78,38 @@ public class PurgeManagerBean implements PurgeManagerLocal {
         return deleted;
     }
 
+    @Override
+    public int archiveAvailabilities(long oldest, long retention) {
+        HistoryDAO historyDAO = storageClientManager.getHistoryDAO();
+        if (historyDAO == null) {
+            LOG.warn("The storage cluster does not keep the availability history, purging availabilities instead");
+            return purgeAvailabilities(System.currentTimeMillis() - retention);
+        }
+        AvailabilityArchive availabilityArchive = new AvailabilityArchive(dataSource, userTransaction, historyDAO,
+            oldest, retention);
+        long startTime = System.currentTimeMillis();
+        int deleted = availabilityArchive.execute();
+        MeasurementMonitor.getMBean().incrementPurgeTime(System.currentTimeMillis() - startTime);
+        MeasurementMonitor.getMBean().setPurgedAvailabilities(deleted);
+        return deleted;
+    }
+
+    @Override
+    public int archiveTraits(long oldest, long retention) {
+        HistoryDAO historyDAO = storageClientManager.getHistoryDAO();
+        if (historyDAO == null) {
+            LOG.warn("The storage cluster does not keep the trait history, purging traits instead");
+            return purgeTraits(System.currentTimeMillis() - retention);
+        }
+        MeasurementDataTraitArchive traitArchive = new MeasurementDataTraitArchive(dataSource, userTransaction,
+            historyDAO, oldest, retention);
+        long startTime = System.currentTimeMillis();
+        int deleted = traitArchive.execute();
+        MeasurementMonitor.getMBean().incrementPurgeTime(System.currentTimeMillis() - startTime);
+        MeasurementMonitor.getMBean().setPurgedMeasurementTraits(deleted);
+        return deleted;
+    }
+
     @Override
     public int purgeEventData(long deleteUpToTime) {
         EventDataPurge eventDataPurge = new EventDataPurge(dataSource, userTransaction, deleteUpToTime);
@@ -40,6 +40,28 @@ public interface PurgeManagerLocal {
 
     int purgeTraits(long oldest);
 
+    /**
+     * Moves the closed availabilities which ended before <code>oldest</code> to the storage cluster, where they
+     * expire at the end of the <code>retention</code> period. Falls back to purging the availabilities older than the
+     * retention period if the storage cluster does not keep the history.
+     *
+     * @param  oldest oldest time (in epoch milliseconds) to retain in the database
+     * @param  retention the availability purge period, in milliseconds
+     * @return the number of availabilities that were deleted from the database
+     */
+    int archiveAvailabilities(long oldest, long retention);
+
+    /**
+     * Moves the trait values that are older than the latest value of their schedule before <code>oldest</code> to the
+     * storage cluster, where they expire at the end of the <code>retention</code> period. Falls back to purging the
+     * traits older than the retention period if the storage cluster does not keep the history.
+     *
+     * @param  oldest oldest time (in epoch milliseconds) to retain in the database
+     * @param  retention the trait purge period, in milliseconds
+     * @return the number of traits that were deleted from the database
+     */
+    int archiveTraits(long oldest, long retention);
+
     /**
      * Deletes event data older than the specified time.
      *
@@ -108,6 +108,7 @@ abstract class PurgeTemplate<KEY extends Serializable> {
                     if (LOG.isDebugEnabled()) {
                         LOG.debug("Deleting " + selectedKeys.size() + " row(s) of " + getEntityName());
                     }
+                    beforeDeleteRows(selectedKeys);
                     deleted += deleteRows(selectedKeys);
                     selectedKeys.clear();
                 }
@@ -185,6 +186,18 @@ abstract class PurgeTemplate<KEY extends Serializable> {
      */
     protected abstract KEY getKeyFromResultSet(ResultSet resultSet) throws SQLException;
 
+    /**
+     * Called with each batch of keys before the corresponding rows are deleted. Subclasses which copy the rows elsewhere
+     * before they are deleted do it here. If this method throws an exception, the purge stops and the rows of the batch
+     * are kept. The default implementation does nothing.
+     *
+     * @param selectedKeys the keys of the rows about to be deleted
+     *
+     * @throws Exception
+     */
+    protected void beforeDeleteRows(List<KEY> selectedKeys) throws Exception {
+    }
+
     private int deleteRows(List<KEY> selectedKeys) throws Exception {
         Connection connection = null;
         PreparedStatement preparedStatement = null;
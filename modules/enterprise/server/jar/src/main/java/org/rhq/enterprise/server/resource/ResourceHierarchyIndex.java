@@ -0,0 +1,661 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.resource;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.core.domain.resource.Resource;
+
+/**
+ * A server-wide, in-memory index of the resource hierarchy, so that lineage and descendant lookups do not have to
+ * rediscover the parent/child structure from the RHQ_RESOURCE table one level at a time.
+ * <p/>
+ * The hierarchy is kept in parallel primitive arrays indexed by slot (resource id, parent slot, first child slot,
+ * next and previous sibling slots, resource type id and agent id) plus an open addressing resource id to slot map, so
+ * a million resources cost a few tens of megabytes and no per-resource objects.
+ * <p/>
+ * The index is loaded by {@link ResourceManagerLocal#reloadResourceHierarchyIndex()} and kept current by the
+ * inventory merge and uninventory code paths of this server, through {@link ResourceHierarchyIndexUpdates} so that
+ * only committed changes are applied. Other servers learn about those changes through the
+ * {@link org.rhq.core.domain.cloud.Server.Status#RESOURCE_HIERARCHY_UPDATED} status bit, which makes the
+ * {@link org.rhq.enterprise.server.cloud.instance.CacheConsistencyManagerBean} read the resources added, moved or
+ * uninventoried since their index was last brought up to date (see {@link #getSyncTime()}) into their index, through
+ * {@link ResourceManagerLocal#updateResourceHierarchyIndex()}. Only a stale index is reloaded completely.
+ * <p/>
+ * All lookups return <code>null</code> if the index cannot answer them - because it is not loaded yet, or because
+ * the resource is not (or not completely) indexed - in which case callers must fall back to the database. Only
+ * resources that are not uninventoried are indexed.
+ */
+public final class ResourceHierarchyIndex {
+
+    private static final Log log = LogFactory.getLog(ResourceHierarchyIndex.class);
+
+    private static final ResourceHierarchyIndex instance = new ResourceHierarchyIndex();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicLong modifications = new AtomicLong();
+    private Hierarchy hierarchy;
+    private volatile boolean stale;
+    private volatile long syncTime;
+    private final AtomicBoolean unannounced = new AtomicBoolean();
+
+    ResourceHierarchyIndex() {
+    }
+
+    public static ResourceHierarchyIndex getInstance() {
+        return instance;
+    }
+
+    /**
+     * @return a loader to bulk load the index with; the index is replaced when {@link #finishLoad(Loader)} is called
+     */
+    public Loader startLoad() {
+        return new Loader(this.modifications.get(), System.currentTimeMillis());
+    }
+
+    /**
+     * Replaces the contents of the index with what the given loader was loaded with. If the index was modified while
+     * the loader was being loaded, the loaded hierarchy may be missing those modifications, so the index is flagged as
+     * stale in order to be reloaded again.
+     */
+    public void finishLoad(Loader loader) {
+        Hierarchy loaded = loader.hierarchy;
+        int orphans = loaded.link();
+        this.lock.writeLock().lock();
+        try {
+            this.hierarchy = loaded;
+            this.stale = (this.modifications.get() != loader.modificationsAtStart);
+            this.syncTime = loader.startTime;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+        if (orphans > 0 && log.isDebugEnabled()) {
+            log.debug("[" + orphans + "] resources were loaded into the resource hierarchy index without their parent");
+        }
+    }
+
+    public boolean isLoaded() {
+        this.lock.readLock().lock();
+        try {
+            return this.hierarchy != null;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return true if the index is known to have missed modifications and should be reloaded
+     */
+    public boolean isStale() {
+        return this.stale;
+    }
+
+    public void markStale() {
+        this.stale = true;
+    }
+
+    /**
+     * @return the time the index was last loaded or updated from the database; changes made to the resource
+     *         hierarchy by other servers before that time are in the index
+     */
+    public long getSyncTime() {
+        return this.syncTime;
+    }
+
+    public void setSyncTime(long syncTime) {
+        this.syncTime = syncTime;
+    }
+
+    /**
+     * @return true if the resource is indexed
+     */
+    public boolean contains(int resourceId) {
+        this.lock.readLock().lock();
+        try {
+            return this.hierarchy != null && this.hierarchy.contains(resourceId);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Flags that committed modifications were applied to the index which the other servers have not been told about.
+     */
+    public void markUnannounced() {
+        this.unannounced.set(true);
+    }
+
+    /**
+     * @return true if the other servers need to be told to reload their index; the flag is cleared, so the caller
+     *         has to tell them (or call {@link #markUnannounced()} again if it fails to)
+     */
+    public boolean getAndClearUnannounced() {
+        return this.unannounced.getAndSet(false);
+    }
+
+    /**
+     * @return the number of indexed resources, or -1 if the index is not loaded
+     */
+    public int size() {
+        this.lock.readLock().lock();
+        try {
+            return (this.hierarchy != null) ? this.hierarchy.size : -1;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a resource to the index, or moves it (along with its descendants) if it is already indexed.
+     *
+     * @param resourceId the resource id
+     * @param parentId the id of the resource's parent, or {@link Resource#ROOT_ID} for a platform
+     * @param resourceTypeId the id of the resource's type
+     * @param agentId the id of the agent managing the resource, or 0 if unknown
+     */
+    public void put(int resourceId, int parentId, int resourceTypeId, int agentId) {
+        this.modifications.incrementAndGet();
+        this.lock.writeLock().lock();
+        try {
+            if (this.hierarchy != null && !this.hierarchy.put(resourceId, parentId, resourceTypeId, agentId)) {
+                // we'd be guessing where the resource belongs - let the next consistency check rebuild the index
+                this.stale = true;
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a resource and all its descendants from the index.
+     */
+    public void remove(int resourceId) {
+        this.modifications.incrementAndGet();
+        this.lock.writeLock().lock();
+        try {
+            if (this.hierarchy != null) {
+                this.hierarchy.removeSubtree(resourceId);
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the ids of the ancestors of the resource, starting with its parent and ending with its platform, or
+     *         null if the lineage is not known
+     */
+    public int[] getLineage(int resourceId) {
+        this.lock.readLock().lock();
+        try {
+            return (this.hierarchy != null) ? this.hierarchy.getLineage(resourceId) : null;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the id of the resource followed by the ids of all its descendants, in depth-first order, or null if the
+     *         resource is not indexed
+     */
+    public int[] getSubtree(int resourceId) {
+        this.lock.readLock().lock();
+        try {
+            return (this.hierarchy != null) ? this.hierarchy.getSubtree(resourceId) : null;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the ids of the children of the resource, or null if the resource is not indexed
+     */
+    public int[] getChildren(int resourceId) {
+        this.lock.readLock().lock();
+        try {
+            return (this.hierarchy != null) ? this.hierarchy.getChildren(resourceId) : null;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the id of the agent managing the resource, or 0 if the resource is not indexed
+     */
+    public int getAgentId(int resourceId) {
+        this.lock.readLock().lock();
+        try {
+            return (this.hierarchy != null) ? this.hierarchy.getAgentId(resourceId) : 0;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the id of the type of the resource, or 0 if the resource is not indexed
+     */
+    public int getResourceTypeId(int resourceId) {
+        this.lock.readLock().lock();
+        try {
+            return (this.hierarchy != null) ? this.hierarchy.getResourceTypeId(resourceId) : 0;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Collects the resources the index is bulk loaded with. Resources can be added in any order; children are linked
+     * to their parents once loading is finished.
+     */
+    public static final class Loader {
+        private final long modificationsAtStart;
+        private final long startTime;
+        private final Hierarchy hierarchy = new Hierarchy();
+
+        private Loader(long modificationsAtStart, long startTime) {
+            this.modificationsAtStart = modificationsAtStart;
+            this.startTime = startTime;
+        }
+
+        /**
+         * @param parentId the id of the resource's parent, or {@link Resource#ROOT_ID} (or 0) for a platform
+         */
+        public void add(int resourceId, int parentId, int resourceTypeId, int agentId) {
+            this.hierarchy.add(resourceId, parentId, resourceTypeId, agentId);
+        }
+    }
+
+    /**
+     * The hierarchy itself. Not thread safe - guarded by the index's lock.
+     */
+    static final class Hierarchy {
+        private static final int NONE = -1;
+        /** The parent slot of a resource whose parent is not indexed. */
+        private static final int UNRESOLVED = -2;
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private int[] resourceIds = new int[INITIAL_CAPACITY];
+        private int[] parents = new int[INITIAL_CAPACITY];
+        private int[] firstChildren = new int[INITIAL_CAPACITY];
+        private int[] nextSiblings = new int[INITIAL_CAPACITY];
+        private int[] previousSiblings = new int[INITIAL_CAPACITY];
+        private int[] resourceTypeIds = new int[INITIAL_CAPACITY];
+        private int[] agentIds = new int[INITIAL_CAPACITY];
+        /** Only used while bulk loading, to link children once all resources are known. */
+        private int[] pendingParentIds = new int[INITIAL_CAPACITY];
+
+        private final SlotMap slots = new SlotMap();
+        private int used; // slots handed out so far, including freed ones
+        private int size;
+        private int freeSlots = NONE; // chained through nextSiblings
+
+        void add(int resourceId, int parentId, int resourceTypeId, int agentId) {
+            int slot = this.slots.get(resourceId);
+            if (slot == NONE) {
+                slot = allocate(resourceId);
+            }
+            this.pendingParentIds[slot] = (parentId > 0) ? parentId : 0;
+            this.resourceTypeIds[slot] = resourceTypeId;
+            this.agentIds[slot] = agentId;
+        }
+
+        /**
+         * Links all resources added through {@link #add(int, int, int, int)} to their parents.
+         *
+         * @return the number of resources whose parent is not indexed
+         */
+        int link() {
+            int orphans = 0;
+            for (int slot = 0; slot < this.used; slot++) {
+                if (this.resourceIds[slot] == 0) {
+                    continue;
+                }
+                int parentId = this.pendingParentIds[slot];
+                if (parentId == 0) {
+                    this.parents[slot] = NONE;
+                    continue;
+                }
+                int parentSlot = this.slots.get(parentId);
+                if (parentSlot == NONE) {
+                    this.parents[slot] = UNRESOLVED;
+                    orphans++;
+                } else {
+                    attach(slot, parentSlot);
+                }
+            }
+            this.pendingParentIds = null;
+            return orphans;
+        }
+
+        /**
+         * @return false if the resource could not be put because its parent is not indexed
+         */
+        boolean put(int resourceId, int parentId, int resourceTypeId, int agentId) {
+            int parentSlot = NONE;
+            if (parentId > 0) {
+                parentSlot = this.slots.get(parentId);
+                if (parentSlot == NONE) {
+                    return false;
+                }
+            }
+            int slot = this.slots.get(resourceId);
+            if (slot == NONE) {
+                slot = allocate(resourceId);
+            } else {
+                if (isAncestorOrSelf(slot, parentSlot)) {
+                    return false; // would create a cycle
+                }
+                detach(slot);
+            }
+            this.resourceTypeIds[slot] = resourceTypeId;
+            this.agentIds[slot] = agentId;
+            if (parentSlot == NONE) {
+                this.parents[slot] = NONE;
+            } else {
+                attach(slot, parentSlot);
+            }
+            return true;
+        }
+
+        void removeSubtree(int resourceId) {
+            int root = this.slots.get(resourceId);
+            if (root == NONE) {
+                return;
+            }
+            int[] subtree = collectSubtreeSlots(root);
+            detach(root);
+            for (int slot : subtree) {
+                free(slot);
+            }
+        }
+
+        int[] getLineage(int resourceId) {
+            int slot = this.slots.get(resourceId);
+            if (slot == NONE) {
+                return null;
+            }
+            IntArray lineage = new IntArray(8);
+            int parent = this.parents[slot];
+            while (parent >= 0) {
+                lineage.add(this.resourceIds[parent]);
+                if (lineage.size > this.size) {
+                    return null; // corrupt - never loop forever
+                }
+                parent = this.parents[parent];
+            }
+            return (parent == UNRESOLVED) ? null : lineage.toArray();
+        }
+
+        int[] getSubtree(int resourceId) {
+            int root = this.slots.get(resourceId);
+            if (root == NONE) {
+                return null;
+            }
+            int[] subtree = collectSubtreeSlots(root);
+            for (int i = 0; i < subtree.length; i++) {
+                subtree[i] = this.resourceIds[subtree[i]];
+            }
+            return subtree;
+        }
+
+        int[] getChildren(int resourceId) {
+            int slot = this.slots.get(resourceId);
+            if (slot == NONE) {
+                return null;
+            }
+            IntArray children = new IntArray(8);
+            for (int child = this.firstChildren[slot]; child != NONE; child = this.nextSiblings[child]) {
+                children.add(this.resourceIds[child]);
+            }
+            return children.toArray();
+        }
+
+        boolean contains(int resourceId) {
+            return this.slots.get(resourceId) != NONE;
+        }
+
+        int getAgentId(int resourceId) {
+            int slot = this.slots.get(resourceId);
+            return (slot == NONE) ? 0 : this.agentIds[slot];
+        }
+
+        int getResourceTypeId(int resourceId) {
+            int slot = this.slots.get(resourceId);
+            return (slot == NONE) ? 0 : this.resourceTypeIds[slot];
+        }
+
+        int size() {
+            return this.size;
+        }
+
+        /**
+         * Walks the subtree in depth-first order following the first child, next sibling and parent links, so no
+         * stack is needed however deep the hierarchy is.
+         */
+        private int[] collectSubtreeSlots(int root) {
+            IntArray subtree = new IntArray(16);
+            subtree.add(root);
+            int current = this.firstChildren[root];
+            while (current != NONE) {
+                subtree.add(current);
+                if (this.firstChildren[current] != NONE) {
+                    current = this.firstChildren[current];
+                    continue;
+                }
+                while (current != root && this.nextSiblings[current] == NONE) {
+                    current = this.parents[current];
+                }
+                current = (current == root) ? NONE : this.nextSiblings[current];
+            }
+            return subtree.toArray();
+        }
+
+        private boolean isAncestorOrSelf(int slot, int descendant) {
+            for (int current = descendant; current >= 0; current = this.parents[current]) {
+                if (current == slot) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void attach(int slot, int parentSlot) {
+            this.parents[slot] = parentSlot;
+            int first = this.firstChildren[parentSlot];
+            this.nextSiblings[slot] = first;
+            this.previousSiblings[slot] = NONE;
+            if (first != NONE) {
+                this.previousSiblings[first] = slot;
+            }
+            this.firstChildren[parentSlot] = slot;
+        }
+
+        private void detach(int slot) {
+            int parent = this.parents[slot];
+            int previous = this.previousSiblings[slot];
+            int next = this.nextSiblings[slot];
+            if (previous != NONE) {
+                this.nextSiblings[previous] = next;
+            } else if (parent >= 0) {
+                this.firstChildren[parent] = next;
+            }
+            if (next != NONE) {
+                this.previousSiblings[next] = previous;
+            }
+            this.parents[slot] = NONE;
+            this.nextSiblings[slot] = NONE;
+            this.previousSiblings[slot] = NONE;
+        }
+
+        private int allocate(int resourceId) {
+            int slot;
+            if (this.freeSlots != NONE) {
+                slot = this.freeSlots;
+                this.freeSlots = this.nextSiblings[slot];
+            } else {
+                if (this.used == this.resourceIds.length) {
+                    grow();
+                }
+                slot = this.used++;
+            }
+            this.resourceIds[slot] = resourceId;
+            this.parents[slot] = NONE;
+            this.firstChildren[slot] = NONE;
+            this.nextSiblings[slot] = NONE;
+            this.previousSiblings[slot] = NONE;
+            this.slots.put(resourceId, slot);
+            this.size++;
+            return slot;
+        }
+
+        private void free(int slot) {
+            this.slots.remove(this.resourceIds[slot]);
+            this.resourceIds[slot] = 0;
+            this.parents[slot] = NONE;
+            this.firstChildren[slot] = NONE;
+            this.previousSiblings[slot] = NONE;
+            this.nextSiblings[slot] = this.freeSlots;
+            this.freeSlots = slot;
+            this.size--;
+        }
+
+        private void grow() {
+            int capacity = this.resourceIds.length * 2;
+            this.resourceIds = Arrays.copyOf(this.resourceIds, capacity);
+            this.parents = Arrays.copyOf(this.parents, capacity);
+            this.firstChildren = Arrays.copyOf(this.firstChildren, capacity);
+            this.nextSiblings = Arrays.copyOf(this.nextSiblings, capacity);
+            this.previousSiblings = Arrays.copyOf(this.previousSiblings, capacity);
+            this.resourceTypeIds = Arrays.copyOf(this.resourceTypeIds, capacity);
+            this.agentIds = Arrays.copyOf(this.agentIds, capacity);
+            if (this.pendingParentIds != null) {
+                this.pendingParentIds = Arrays.copyOf(this.pendingParentIds, capacity);
+            }
+        }
+    }
+
+    /**
+     * Maps positive resource ids to slots using open addressing with linear probing. Removal shifts the following
+     * entries of the probe sequence back, so no tombstones are needed.
+     */
+    static final class SlotMap {
+        private static final int EMPTY = 0;
+
+        private int[] keys = new int[2048];
+        private int[] values = new int[2048];
+        private int size;
+
+        int get(int key) {
+            int mask = this.keys.length - 1;
+            for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+                int k = this.keys[i];
+                if (k == key) {
+                    return this.values[i];
+                }
+                if (k == EMPTY) {
+                    return Hierarchy.NONE;
+                }
+            }
+        }
+
+        void put(int key, int value) {
+            if ((this.size + 1) * 2 > this.keys.length) {
+                rehash(this.keys.length * 2);
+            }
+            int mask = this.keys.length - 1;
+            int i = hash(key) & mask;
+            while (this.keys[i] != EMPTY && this.keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (this.keys[i] == EMPTY) {
+                this.size++;
+            }
+            this.keys[i] = key;
+            this.values[i] = value;
+        }
+
+        void remove(int key) {
+            int mask = this.keys.length - 1;
+            int i = hash(key) & mask;
+            while (this.keys[i] != key) {
+                if (this.keys[i] == EMPTY) {
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            this.keys[i] = EMPTY;
+            this.size--;
+            // shift back the entries that probed past the removed one
+            for (int j = (i + 1) & mask; this.keys[j] != EMPTY; j = (j + 1) & mask) {
+                int home = hash(this.keys[j]) & mask;
+                if ((j > i && (home <= i || home > j)) || (j < i && (home <= i && home > j))) {
+                    this.keys[i] = this.keys[j];
+                    this.values[i] = this.values[j];
+                    this.keys[j] = EMPTY;
+                    i = j;
+                }
+            }
+        }
+
+        private void rehash(int capacity) {
+            int[] oldKeys = this.keys;
+            int[] oldValues = this.values;
+            this.keys = new int[capacity];
+            this.values = new int[capacity];
+            this.size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int hash(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    private static final class IntArray {
+        private int[] values;
+        private int size;
+
+        IntArray(int capacity) {
+            this.values = new int[capacity];
+        }
+
+        void add(int value) {
+            if (this.size == this.values.length) {
+                this.values = Arrays.copyOf(this.values, this.size * 2);
+            }
+            this.values[this.size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(this.values, this.size);
+        }
+    }
+}
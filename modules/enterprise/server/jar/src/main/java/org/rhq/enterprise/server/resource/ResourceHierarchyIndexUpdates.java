@@ -0,0 +1,118 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.resource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * The {@link ResourceHierarchyIndex} modifications made by a transaction. They are applied to the index only once the
+ * transaction has committed, so that a rolled back inventory change never shows up in lineage or subtree lookups, and
+ * the other servers are told to reload their index only for changes they can actually read from the database. Until
+ * then, lookups of resources the transaction added return null and their callers fall back to the database.
+ * <p/>
+ * Outside of a transaction, modifications are applied immediately.
+ */
+public final class ResourceHierarchyIndexUpdates implements Synchronization {
+
+    private static final Object KEY = ResourceHierarchyIndexUpdates.class;
+
+    private static final int PUT = 0;
+    private static final int REMOVE = 1;
+
+    private final ResourceHierarchyIndex index;
+    private final boolean deferred;
+    private final List<int[]> updates = new ArrayList<int[]>();
+
+    ResourceHierarchyIndexUpdates(ResourceHierarchyIndex index, boolean deferred) {
+        this.index = index;
+        this.deferred = deferred;
+    }
+
+    /**
+     * @return the index modifications of the transaction currently associated with the calling thread, registered
+     *         with the transaction the first time they are asked for
+     */
+    public static ResourceHierarchyIndexUpdates forCurrentTransaction(TransactionSynchronizationRegistry registry) {
+        ResourceHierarchyIndex index = ResourceHierarchyIndex.getInstance();
+        if (registry.getTransactionKey() == null) {
+            return new ResourceHierarchyIndexUpdates(index, false);
+        }
+        ResourceHierarchyIndexUpdates updates = (ResourceHierarchyIndexUpdates) registry.getResource(KEY);
+        if (updates == null) {
+            updates = new ResourceHierarchyIndexUpdates(index, true);
+            registry.putResource(KEY, updates);
+            registry.registerInterposedSynchronization(updates);
+        }
+        return updates;
+    }
+
+    /**
+     * @see ResourceHierarchyIndex#put(int, int, int, int)
+     */
+    public synchronized void put(int resourceId, int parentId, int resourceTypeId, int agentId) {
+        this.updates.add(new int[] { PUT, resourceId, parentId, resourceTypeId, agentId });
+        if (!this.deferred) {
+            apply();
+        }
+    }
+
+    /**
+     * @see ResourceHierarchyIndex#remove(int)
+     */
+    public synchronized void remove(int resourceId) {
+        this.updates.add(new int[] { REMOVE, resourceId });
+        if (!this.deferred) {
+            apply();
+        }
+    }
+
+    @Override
+    public void beforeCompletion() {
+    }
+
+    @Override
+    public synchronized void afterCompletion(int status) {
+        if (status == Status.STATUS_COMMITTED) {
+            apply();
+        } else {
+            this.updates.clear();
+        }
+    }
+
+    private void apply() {
+        if (this.updates.isEmpty()) {
+            return;
+        }
+        for (int[] update : this.updates) {
+            if (update[0] == PUT) {
+                this.index.put(update[1], update[2], update[3], update[4]);
+            } else {
+                this.index.remove(update[1]);
+            }
+        }
+        this.updates.clear();
+        this.index.markUnannounced();
+    }
+}
@@ -47,6 +47,7 @@ import javax.persistence.NoResultException;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
+import javax.transaction.TransactionSynchronizationRegistry;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -160,6 +161,9 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
 
     private final static String BOUNDED_MAX_RESOURCES = "1000";
     private final static String BOUNDED_MAX_RESOURCES_BY_TYPE = "200";
+    private final static int HIERARCHY_INDEX_LOAD_BATCH_SIZE = 50000;
+    // how far before the last index update to look for changes
+    private final static long HIERARCHY_INDEX_UPDATE_OVERLAP = 1000L * 60 * 10;
 
     @PersistenceContext(unitName = RHQConstants.PERSISTENCE_UNIT_NAME)
     private EntityManager entityManager;
@@ -183,6 +187,8 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
     private MeasurementScheduleManagerLocal measurementScheduleManager;
     @EJB
     private AvailabilityManagerLocal availabilityManager;
+    @javax.annotation.Resource
+    private TransactionSynchronizationRegistry txSyncRegistry;
 
     @Override
     public void createResource(Subject user, Resource resource, int parentId) throws ResourceAlreadyExistsException {
@@ -216,6 +222,9 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
 
         entityManager.persist(resource);
         LOG.debug("********* resource persisted ************");
+        ResourceHierarchyIndexUpdates.forCurrentTransaction(txSyncRegistry).put(resource.getId(),
+            (parent != null) ? parent.getId() : Resource.ROOT_ID, resource.getResourceType().getId(),
+            (resource.getAgent() != null) ? resource.getAgent().getId() : 0);
         // Execute sub-methods as overlord to bypass additional security checks.
         Subject overlord = this.subjectManager.getOverlord();
         updateImplicitMembership(overlord, resource);
@@ -464,6 +473,7 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
                     .createNamedQuery(Resource.QUERY_MARK_RESOURCES_FOR_ASYNC_DELETION_QUICK);
                 markDeletedQuery.setParameter("resourceIds", idsToDelete);
                 markDeletedQuery.setParameter("status", InventoryStatus.UNINVENTORIED);
+                markDeletedQuery.setParameter("itime", System.currentTimeMillis());
                 resourcesDeleted += markDeletedQuery.executeUpdate();
                 i = j;
             }
@@ -505,6 +515,8 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
                 entityManager.flush();
             }
 
+            ResourceHierarchyIndexUpdates.forCurrentTransaction(txSyncRegistry).remove(resourceId);
+
             return toBeDeletedResourceIds;
 
         } catch (RuntimeException e) {
@@ -988,6 +1000,7 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
     // lineage is a getXXX (not findXXX) because it logically returns a single object, but modeled as a list here
     @Override
     public List<Integer> getResourceIdLineage(int resourceId) {
+        // read from the database, not the resource hierarchy index, since group membership updates rely on this
         List<Integer> lineage = new ArrayList<Integer>();
 
         Integer child = resourceId;
@@ -1010,6 +1023,10 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
         }
 
         resourceLineage.add(resource);
+        if (addIndexedAncestors(resourceLineage, resourceId)) {
+            return resourceLineage;
+        }
+
         int childResourceId = resourceId;
         Resource parent;
         while ((parent = getParentResource(childResourceId)) != null) {
@@ -1020,6 +1037,129 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
         return resourceLineage;
     }
 
+    /**
+     * Adds the ancestors of the resource, as known by the {@link ResourceHierarchyIndex}, to the front of the lineage.
+     *
+     * @return false, leaving the lineage untouched, if the index does not know the complete lineage of the resource
+     */
+    private boolean addIndexedAncestors(LinkedList<Resource> resourceLineage, int resourceId) {
+        int[] ancestorIds = ResourceHierarchyIndex.getInstance().getLineage(resourceId);
+        if (ancestorIds == null) {
+            return false;
+        }
+        if (ancestorIds.length == 0) {
+            return true;
+        }
+        List<Integer> ids = new ArrayList<Integer>(ancestorIds.length);
+        for (int ancestorId : ancestorIds) {
+            ids.add(ancestorId);
+        }
+        Query query = entityManager.createNamedQuery(Resource.QUERY_FIND_BY_IDS_ADMIN);
+        query.setParameter("ids", ids);
+        @SuppressWarnings("unchecked")
+        List<Resource> ancestors = query.getResultList();
+        if (ancestors.size() != ancestorIds.length) {
+            return false;
+        }
+        Map<Integer, Resource> ancestorsById = new HashMap<Integer, Resource>(ancestors.size());
+        for (Resource ancestor : ancestors) {
+            ancestorsById.put(ancestor.getId(), ancestor);
+        }
+        for (int ancestorId : ancestorIds) {
+            Resource ancestor = ancestorsById.get(ancestorId);
+            if (ancestor == null) {
+                return false;
+            }
+            resourceLineage.addFirst(ancestor);
+        }
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void reloadResourceHierarchyIndex() {
+        ResourceHierarchyIndex index = ResourceHierarchyIndex.getInstance();
+        ResourceHierarchyIndex.Loader loader = index.startLoad();
+
+        // page through the resources by id, so we never hold more than one batch of rows in memory
+        Query query = entityManager.createNamedQuery(Resource.QUERY_FIND_HIERARCHY_INDEX_ENTRIES);
+        query.setParameter("uninventoried", InventoryStatus.UNINVENTORIED);
+        query.setMaxResults(HIERARCHY_INDEX_LOAD_BATCH_SIZE);
+        int lastId = 0;
+        List<Object[]> rows;
+        do {
+            query.setParameter("lastId", lastId);
+            rows = query.getResultList();
+            for (Object[] row : rows) {
+                lastId = (Integer) row[0];
+                int parentId = (row[1] != null) ? (Integer) row[1] : Resource.ROOT_ID;
+                int agentId = (row[3] != null) ? (Integer) row[3] : 0;
+                loader.add(lastId, parentId, (Integer) row[2], agentId);
+            }
+        } while (rows.size() == HIERARCHY_INDEX_LOAD_BATCH_SIZE);
+
+        index.finishLoad(loader);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public int updateResourceHierarchyIndex() {
+        ResourceHierarchyIndex index = ResourceHierarchyIndex.getInstance();
+        long startTime = System.currentTimeMillis();
+
+        // the timestamps are set by the servers making the changes, before their transactions commit, so look back
+        // far enough to cover clock differences and long transactions; changes read twice are simply put again
+        Query query = entityManager.createNamedQuery(Resource.QUERY_FIND_HIERARCHY_INDEX_CHANGES);
+        query.setParameter("since", index.getSyncTime() - HIERARCHY_INDEX_UPDATE_OVERLAP);
+        List<Object[]> rows = query.getResultList();
+
+        List<Object[]> puts = new ArrayList<Object[]>(rows.size());
+        for (Object[] row : rows) {
+            if (row[4] == InventoryStatus.UNINVENTORIED) {
+                index.remove((Integer) row[0]);
+            } else {
+                puts.add(row);
+            }
+        }
+
+        // put parents before their children, as a resource can only be put under an indexed parent
+        while (!puts.isEmpty()) {
+            List<Object[]> orphans = new ArrayList<Object[]>();
+            for (Object[] row : puts) {
+                int parentId = (row[1] != null) ? (Integer) row[1] : Resource.ROOT_ID;
+                if (parentId == Resource.ROOT_ID || index.contains(parentId)) {
+                    int agentId = (row[3] != null) ? (Integer) row[3] : 0;
+                    index.put((Integer) row[0], parentId, (Integer) row[2], agentId);
+                } else {
+                    orphans.add(row);
+                }
+            }
+            if (orphans.size() == puts.size()) {
+                // their parents are neither indexed nor changed - the index missed something
+                index.markStale();
+                break;
+            }
+            puts = orphans;
+        }
+
+        // deletions of resources uninventoried long ago leave no trace, so make sure nothing was missed
+        Query countQuery = entityManager.createNamedQuery(Resource.QUERY_COUNT_HIERARCHY_INDEX_ENTRIES);
+        countQuery.setParameter("uninventoried", InventoryStatus.UNINVENTORIED);
+        long count = (Long) countQuery.getSingleResult();
+        if (count != index.size()) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("The resource hierarchy index holds [" + index.size() + "] resources instead of [" + count
+                    + "] after being updated");
+            }
+            index.markStale();
+        }
+
+        index.setSyncTime(startTime);
+        return rows.size();
+    }
+
     @Override
     public List<ResourceLineageComposite> getResourceLineageAndSiblings(Subject subject, int resourceId) {
         // Get the raw resource lineage up to the platform. We'll check the auth below.
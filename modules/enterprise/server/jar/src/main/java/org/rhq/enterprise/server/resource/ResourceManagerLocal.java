@@ -155,6 +155,22 @@ public interface ResourceManagerLocal extends ResourceManagerRemote {
 
     List<Integer> getResourceIdLineage(int resourceId);
 
+    /**
+     * Reloads this server's {@link ResourceHierarchyIndex} from the database. This is done at startup and whenever
+     * the index is stale.
+     */
+    void reloadResourceHierarchyIndex();
+
+    /**
+     * Reads the resources that were added, moved or uninventoried since this server's {@link ResourceHierarchyIndex}
+     * was last loaded or updated into the index. This is done whenever another server flags that it changed the
+     * resource hierarchy. The index is marked stale if the changes cannot be applied, or if it does not hold as many
+     * resources as the database afterwards.
+     *
+     * @return the number of changed resources read
+     */
+    int updateResourceHierarchyIndex();
+
     /**
      * Returns the lineage of the Resource with the specified id. The lineage is represented as a List of Resources,
      * with the first item being the root of the Resource's ancestry (or the Resource itself if it is a root Resource
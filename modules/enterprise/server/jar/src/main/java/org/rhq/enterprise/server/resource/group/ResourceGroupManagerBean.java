@@ -795,7 +795,8 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
         }
 
         /*
-         * BFS-construct the resource tree
+         * BFS-construct the resource tree - this writes membership, so it is read from the database rather than from
+         * the resource hierarchy index, which lags behind the current transaction and the other servers
          */
         List<Integer> resourceIdsToAdd = new ArrayList<Integer>();
         List<Resource> toBeSearched = new LinkedList<Resource>();
@@ -19,8 +19,11 @@
 
 package org.rhq.enterprise.server.scheduler.jobs;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -29,6 +32,7 @@ import org.quartz.JobExecutionException;
 import org.quartz.SimpleTrigger;
 
 import org.rhq.core.domain.auth.Subject;
+import org.rhq.core.domain.cloud.Server;
 import org.rhq.enterprise.server.measurement.MeasurementBaselineManagerLocal;
 import org.rhq.enterprise.server.measurement.MeasurementOOBManagerLocal;
 import org.rhq.enterprise.server.purge.PurgeManagerLocal;
@@ -37,6 +41,8 @@ import org.rhq.enterprise.server.storage.StorageClientManager;
 import org.rhq.enterprise.server.system.SystemManagerLocal;
 import org.rhq.enterprise.server.util.LookupUtil;
 import org.rhq.server.metrics.MetricsServer;
+import org.rhq.server.metrics.aggregation.DistributedAggregation;
+import org.rhq.server.metrics.aggregation.OOBScorer;
 import org.rhq.server.metrics.domain.AggregateNumericMetric;
 
 /**
@@ -49,11 +55,27 @@ import org.rhq.server.metrics.domain.AggregateNumericMetric;
  * away to be executed independently.  Moreover, there is really no reason to wait for all of the DB maintenance and
  * unrelated data purge before performing out metric calculations. Also, see [BZ 1125439].
  *
+ * In an HA deployment the server running this job coordinates aggregation, which is distributed across all servers in
+ * normal operation mode, see {@link DistributedAggregation}. The other servers pick up their share of the work with
+ * {@link org.rhq.enterprise.server.measurement.AggregationWorkerBean}.
+ *
  * @author Jay Shaughnessy
  */
 public class DataCalcJob extends AbstractStatefulJob {
     private static final Log LOG = LogFactory.getLog(DataCalcJob.class);
 
+    /**
+     * Aggregation is distributed across the live servers unless this is set to false, in which case the server that
+     * runs this job aggregates all of the data.
+     */
+    private static final boolean DISTRIBUTED_AGGREGATION = Boolean.valueOf(System.getProperty(
+        "rhq.metrics.aggregation.distributed", "true"));
+
+    /**
+     * The start time of the aggregation run if it was distributed across several servers, null otherwise
+     */
+    private Long distributedRun;
+
     /**
      * Schedules a calc job to trigger right now. This will not block - it schedules the job to trigger but immediately
      * returns. This method will ensure that no two data calc jobs will execute at the same time (Quartz will ensure
@@ -81,8 +103,10 @@ public class DataCalcJob extends AbstractStatefulJob {
 
         try {
             Iterable<AggregateNumericMetric> oneHourAggregates = compressMeasurementData();
+            // baselines recalculated from now on have a compute time later than this
+            long baselineCutOff = System.currentTimeMillis() - 1;
             calculateAutoBaselines(LookupUtil.getMeasurementBaselineManager());
-            calculateOOBs(oneHourAggregates);
+            calculateOOBs(oneHourAggregates, baselineCutOff);
         } catch (Exception e) {
             LOG.error("Data Calc Job FAILED TO COMPLETE. Cause: " + e);
         } finally {
@@ -98,7 +122,17 @@ public class DataCalcJob extends AbstractStatefulJob {
         try {
             StorageClientManager storageClientManager = LookupUtil.getStorageClientManager();
             MetricsServer metricsServer = storageClientManager.getMetricsServer();
-            return metricsServer.calculateAggregates();
+            // The 1h data is scored for OOBs against the current baselines while it is being aggregated
+            OOBScorer oobScorer = LookupUtil.getOOBManager().createOOBScorer(
+                LookupUtil.getSubjectManager().getOverlord(), 0);
+            List<String> servers = getAggregationServers();
+            if (servers.size() > 1) {
+                DistributedAggregation distributedAggregation = metricsServer.getDistributedAggregation();
+                distributedRun = distributedAggregation.getCurrentRun();
+                return distributedAggregation.coordinate(LookupUtil.getServerManager().getIdentity(), servers,
+                    oobScorer);
+            }
+            return metricsServer.calculateAggregates(oobScorer);
         } catch (Exception e) {
             LOG.error("Failed to compress measurement data. Cause: " + e, e);
             return Collections.emptyList();
@@ -108,6 +142,23 @@ public class DataCalcJob extends AbstractStatefulJob {
         }
     }
 
+    /**
+     * @return The names of the servers across which aggregation is distributed, i.e. the servers in normal operation
+     * mode. Empty if aggregation is not distributed.
+     */
+    private List<String> getAggregationServers() {
+        List<String> servers = new ArrayList<String>();
+        if (!DISTRIBUTED_AGGREGATION) {
+            return servers;
+        }
+        for (Server server : LookupUtil.getTopologyManager().getAllCloudServers()) {
+            if (server.getOperationMode() == Server.OperationMode.NORMAL) {
+                servers.add(server.getName());
+            }
+        }
+        return servers;
+    }
+
     private void calculateAutoBaselines(MeasurementBaselineManagerLocal measurementBaselineManager) {
         long timeStart = System.currentTimeMillis();
         LOG.info("Auto-calculation of baselines starting at " + new Date(timeStart));
@@ -124,9 +175,10 @@ public class DataCalcJob extends AbstractStatefulJob {
 
     /**
      * Calculate the OOB values for the last hour.
-     * This also removes out-dated ones due to recalculated baselines.
+     * The 1h data has already been scored during aggregation; this removes the OOBs of the schedules whose baseline
+     * got recalculated since and scores the 1h data of those schedules against their new baseline.
      */
-    public void calculateOOBs(Iterable<AggregateNumericMetric> oneHourAggregates) {
+    public void calculateOOBs(Iterable<AggregateNumericMetric> oneHourAggregates, long baselineCutOff) {
         LOG.info("Auto-calculation of OOBs starting");
 
         Subject overlord = LookupUtil.getSubjectManager().getOverlord();
@@ -134,20 +186,21 @@ public class DataCalcJob extends AbstractStatefulJob {
         PurgeManagerLocal purgeManager = LookupUtil.getPurgeManager();
         SystemManagerLocal systemManager = LookupUtil.getSystemManager();
 
-        // purge OOBs whose baseline just got recalculated
-        // For now just assume that our system is fast, so a cutoff of 30mins is ok,
-        // as the calculate baseline job runs hourly
-        long cutOff = System.currentTimeMillis() - (30L * 60L * 1000L);
-
         long timeStart = System.currentTimeMillis();
 
-        purgeManager.removeOutdatedOOBs(cutOff);
+        // purge OOBs whose baseline just got recalculated
+        purgeManager.removeOutdatedOOBs(baselineCutOff);
 
         // clean up
         systemManager.vacuum(overlord, new String[] { "RHQ_MEASUREMENT_OOB" });
 
-        // Now calculate the fresh OOBs
-        manager.computeOOBsForLastHour(overlord, oneHourAggregates);
+        // Now calculate the fresh OOBs of those schedules
+        if (distributedRun == null) {
+            manager.computeOOBsForLastHour(overlord, oneHourAggregates, baselineCutOff);
+        } else {
+            // the 1h data of the other servers' index partitions is not in memory
+            manager.computeOOBsForHour(overlord, distributedRun - TimeUnit.HOURS.toMillis(1), baselineCutOff);
+        }
 
         long duration = System.currentTimeMillis() - timeStart;
 
@@ -53,6 +53,7 @@ import org.rhq.enterprise.server.operation.OperationManagerLocal;
 import org.rhq.enterprise.server.purge.PurgeManagerLocal;
 import org.rhq.enterprise.server.resource.ResourceManagerLocal;
 import org.rhq.enterprise.server.scheduler.SchedulerLocal;
+import org.rhq.enterprise.server.storage.StorageClientManager;
 import org.rhq.enterprise.server.system.SystemManagerLocal;
 import org.rhq.enterprise.server.util.LookupUtil;
 import org.rhq.enterprise.server.util.TimingVoodoo;
@@ -69,6 +70,13 @@ public class DataPurgeJob extends AbstractStatefulJob {
 
     private static final long HOUR = MILLISECONDS.convert(1, HOURS);
 
+    /**
+     * When the history is kept in the storage cluster, closed availability intervals stay in the RDBMS for this many
+     * milliseconds, so that late agent reports can still be merged into them. Defaults to one day.
+     */
+    private static final long AVAILABILITY_HISTORY_WINDOW = Long.getLong("rhq.storage.history.availability-window",
+        24 * HOUR);
+
     private final SubjectManagerLocal subjectManager;
     private final SystemManagerLocal systemManager;
     private final PurgeManagerLocal purgeManager;
@@ -153,17 +161,23 @@ public class DataPurgeJob extends AbstractStatefulJob {
         int traitsPurged = 0;
 
         try {
-            long threshold;
+            long retention;
             String traitPurgeThresholdStr = systemSettings.get(TRAIT_PURGE_PERIOD);
             if (traitPurgeThresholdStr == null) {
-                threshold = timeStart - (1000L * 60 * 60 * 24 * 365);
+                retention = 1000L * 60 * 60 * 24 * 365;
                 LOG.debug("No purge traits threshold found - will purge traits older than one year");
             } else {
-                threshold = timeStart - Long.parseLong(traitPurgeThresholdStr);
+                retention = Long.parseLong(traitPurgeThresholdStr);
             }
 
-            LOG.info("Purging traits that are older than " + new Date(threshold));
-            traitsPurged = purgeManager.purgeTraits(threshold);
+            if (Boolean.getBoolean(StorageClientManager.HISTORY_STORAGE_PROPERTY)) {
+                LOG.info("Moving trait history to the storage cluster");
+                traitsPurged = purgeManager.archiveTraits(timeStart, retention);
+            } else {
+                long threshold = timeStart - retention;
+                LOG.info("Purging traits that are older than " + new Date(threshold));
+                traitsPurged = purgeManager.purgeTraits(threshold);
+            }
         } catch (Exception e) {
             LOG.error("Failed to purge trait data. Cause: " + e, e);
         } finally {
@@ -205,16 +219,26 @@ public class DataPurgeJob extends AbstractStatefulJob {
         int availsPurged = 0;
 
         try {
-            long threshold;
+            long retention;
             String availPurgeThresholdStr = systemSettings.get(AVAILABILITY_PURGE_PERIOD);
             if (availPurgeThresholdStr == null) {
-                threshold = timeStart - (1000L * 60 * 60 * 24 * 365);
+                retention = 1000L * 60 * 60 * 24 * 365;
                 LOG.debug("No purge avails threshold found - will purge availabilities older than one year");
             } else {
-                threshold = timeStart - Long.parseLong(availPurgeThresholdStr);
+                retention = Long.parseLong(availPurgeThresholdStr);
+            }
+
+            if (Boolean.getBoolean(StorageClientManager.HISTORY_STORAGE_PROPERTY)
+                && AVAILABILITY_HISTORY_WINDOW < retention) {
+                long threshold = timeStart - AVAILABILITY_HISTORY_WINDOW;
+                LOG.info("Moving availabilities that are older than " + new Date(threshold)
+                    + " to the storage cluster");
+                availsPurged = purgeManager.archiveAvailabilities(threshold, retention);
+            } else {
+                long threshold = timeStart - retention;
+                LOG.info("Purging availablities that are older than " + new Date(threshold));
+                availsPurged = purgeManager.purgeAvailabilities(threshold);
             }
-            LOG.info("Purging availablities that are older than " + new Date(threshold));
-            availsPurged = purgeManager.purgeAvailabilities(threshold);
         } catch (Exception e) {
             LOG.error("Failed to purge availability data. Cause: " + e, e);
         } finally {
@@ -21,16 +21,20 @@ package org.rhq.enterprise.server.storage;
 
 import static org.rhq.server.metrics.StorageClientConstants.DATA_CENTER;
 import static org.rhq.server.metrics.StorageClientConstants.LOAD_BALANCING;
+import static org.rhq.server.metrics.StorageClientConstants.REQUEST_LATENCY_TOLERANCE;
+import static org.rhq.server.metrics.StorageClientConstants.REQUEST_LIMIT_ACQUIRE_TIMEOUT;
+import static org.rhq.server.metrics.StorageClientConstants.REQUEST_LIMIT_INITIAL;
+import static org.rhq.server.metrics.StorageClientConstants.REQUEST_LIMIT_MAX;
+import static org.rhq.server.metrics.StorageClientConstants.REQUEST_LIMIT_MIN;
 import static org.rhq.server.metrics.StorageClientConstants.REQUEST_TIMEOUT_DAMPENING;
-import static org.rhq.server.metrics.StorageClientConstants.REQUEST_TOPOLOGY_CHANGE_DELTA;
-import static org.rhq.server.metrics.StorageClientConstants.REQUEST_WARMUP_PERIOD;
-import static org.rhq.server.metrics.StorageClientConstants.REQUEST_WARMUP_PERIOD_MAX_COUNTER;
+import static org.rhq.server.metrics.StorageClientConstants.TOKEN_AWARE;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import javax.ejb.ConcurrencyManagement;
 import javax.ejb.ConcurrencyManagementType;
@@ -57,6 +61,7 @@ import com.datastax.driver.core.policies.DefaultRetryPolicy;
 import com.datastax.driver.core.policies.LoadBalancingPolicy;
 import com.datastax.driver.core.policies.LoggingRetryPolicy;
 import com.datastax.driver.core.policies.RoundRobinPolicy;
+import com.datastax.driver.core.policies.TokenAwarePolicy;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -76,6 +81,8 @@ import org.rhq.enterprise.server.measurement.MeasurementScheduleManagerLocal;
 import org.rhq.enterprise.server.system.SystemManagerLocal;
 import org.rhq.enterprise.server.util.JMXUtil;
 import org.rhq.server.metrics.DateTimeService;
+import org.rhq.server.metrics.EventDAO;
+import org.rhq.server.metrics.HistoryDAO;
 import org.rhq.server.metrics.MetricsConfiguration;
 import org.rhq.server.metrics.MetricsConstants;
 import org.rhq.server.metrics.MetricsDAO;
@@ -96,6 +103,17 @@ public class StorageClientManager implements StorageClientManagerMBean{
 
     private static final String RHQ_KEYSPACE = "rhq";
 
+    /**
+     * When true, trait history and closed availability intervals are moved from the RDBMS to the storage cluster by
+     * the data purge job, see {@link #getHistoryDAO()}.
+     */
+    public static final String HISTORY_STORAGE_PROPERTY = "rhq.storage.history";
+
+    /**
+     * When true, new events are stored in the storage cluster instead of the RDBMS, see {@link #getEventDAO()}.
+     */
+    public static final String EVENT_STORAGE_PROPERTY = "rhq.storage.events";
+
     @EJB
     private SubjectManagerLocal subjectManager;
     @EJB
@@ -115,6 +133,8 @@ public class StorageClientManager implements StorageClientManagerMBean{
     private StorageSession session;
     private MetricsConfiguration metricsConfiguration;
     private MetricsDAO metricsDAO;
+    private HistoryDAO historyDAO;
+    private EventDAO eventDAO;
     private MetricsServer metricsServer;
     private boolean initialized;
     private StorageClusterMonitor storageClusterMonitor;
@@ -183,7 +203,12 @@ public class StorageClientManager implements StorageClientManagerMBean{
 
             metricsConfiguration = new MetricsConfiguration();
             metricsDAO = new MetricsDAO(session, metricsConfiguration);
-
+            if (Boolean.getBoolean(HISTORY_STORAGE_PROPERTY)) {
+                historyDAO = new HistoryDAO(session);
+            }
+            if (Boolean.getBoolean(EVENT_STORAGE_PROPERTY)) {
+                eventDAO = new EventDAO(session);
+            }
 
             initMetricsServer();
             JMXUtil.registerMBean(this, OBJECT_NAME);
@@ -253,6 +278,12 @@ public class StorageClientManager implements StorageClientManagerMBean{
 
             session.registerNewSession(wrappedSession);
             metricsDAO.initPreparedStatements();
+            if (historyDAO != null) {
+                historyDAO.initPreparedStatements();
+            }
+            if (eventDAO != null) {
+                eventDAO.initPreparedStatements();
+            }
             return true;
         }
 
@@ -294,6 +325,8 @@ public class StorageClientManager implements StorageClientManagerMBean{
         }
 
         metricsDAO = null;
+        historyDAO = null;
+        eventDAO = null;
 
         try {
             if (cluster != null) {
@@ -314,6 +347,24 @@ public class StorageClientManager implements StorageClientManagerMBean{
         return metricsDAO;
     }
 
+    /**
+     * @return The store of the trait and availability history, or null if the history is kept in the RDBMS because
+     * {@link #HISTORY_STORAGE_PROPERTY} is not set or the storage client subsystem is not initialized
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public HistoryDAO getHistoryDAO() {
+        return historyDAO;
+    }
+
+    /**
+     * @return The store of the events, or null if events are kept in the RDBMS because {@link #EVENT_STORAGE_PROPERTY}
+     * is not set or the storage client subsystem is not initialized
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public EventDAO getEventDAO() {
+        return eventDAO;
+    }
+
     @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public MetricsServer getMetricsServer() {
         return metricsServer;
@@ -386,59 +437,127 @@ public class StorageClientManager implements StorageClientManagerMBean{
 
     @Override
     @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
-    public double getRequestLimitTopologyDelta() {
-        return session.getTopologyDelta();
+    public int getReadRequestLimit() {
+        return session.getReadRequestLimit();
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public int getWriteRequestLimit() {
+        return session.getWriteRequestLimit();
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public Map<String, Integer> getReadRequestLimitsPerNode() {
+        return session.getReadRequestLimitsPerNode();
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public Map<String, Integer> getWriteRequestLimitsPerNode() {
+        return session.getWriteRequestLimitsPerNode();
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public int getReadRequestsInFlight() {
+        return session.getReadRequestsInFlight();
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public int getWriteRequestsInFlight() {
+        return session.getWriteRequestsInFlight();
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public long getThrottledRequests() {
+        return session.getThrottledRequests();
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public long getRejectedRequests() {
+        return session.getRejectedRequests();
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public int getRequestLimitInitial() {
+        return session.getRequestLimitInitial();
     }
 
     @Override
     @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
-    public void setRequestWarmupPeriod(int requestWarmupPeriod) {
-        session.setWarmupTimePeriod(requestWarmupPeriod);
-        persistStorageProperty(REQUEST_WARMUP_PERIOD, Integer.toString(requestWarmupPeriod));
+    public void setRequestLimitInitial(int requestLimitInitial) {
+        session.setRequestLimitInitial(requestLimitInitial);
+        persistStorageProperty(REQUEST_LIMIT_INITIAL, Integer.toString(requestLimitInitial));
     }
 
     @Override
     @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
-    public int getRequestWarmupPeriod() {
-        return session.getWarmupTimePeriod();
+    public int getRequestLimitMinimum() {
+        return session.getRequestLimitMinimum();
     }
 
     @Override
     @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
-    public void setRequestWarmupCounterMaximum(int requestWarmupCounterMaximum) {
-        session.setWarmupTimePeriod(requestWarmupCounterMaximum);
-        persistStorageProperty(REQUEST_WARMUP_PERIOD_MAX_COUNTER, Integer.toString(requestWarmupCounterMaximum));
+    public void setRequestLimitMinimum(int requestLimitMinimum) {
+        session.setRequestLimitMinimum(requestLimitMinimum);
+        persistStorageProperty(REQUEST_LIMIT_MIN, Integer.toString(requestLimitMinimum));
     }
 
     @Override
     @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
-    public int getRequestWarmupCounterMaximum() {
-        return session.getMaxWarmupCounter();
+    public int getRequestLimitMaximum() {
+        return session.getRequestLimitMaximum();
     }
 
     @Override
     @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
-    public int getCurrentWarmupTime() {
-        return session.getPreviousWarmupTime();
+    public void setRequestLimitMaximum(int requestLimitMaximum) {
+        session.setRequestLimitMaximum(requestLimitMaximum);
+        persistStorageProperty(REQUEST_LIMIT_MAX, Integer.toString(requestLimitMaximum));
     }
 
     @Override
     @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
-    public void setRequestLimitTopologyDelta(double delta) {
-        session.setTopologyDelta(delta);
-        persistStorageProperty(REQUEST_TOPOLOGY_CHANGE_DELTA, Double.toString(delta));
+    public double getRequestLatencyTolerance() {
+        return session.getRequestLatencyTolerance();
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void setRequestLatencyTolerance(double requestLatencyTolerance) {
+        session.setRequestLatencyTolerance(requestLatencyTolerance);
+        persistStorageProperty(REQUEST_LATENCY_TOLERANCE, Double.toString(requestLatencyTolerance));
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public long getRequestAcquireTimeout() {
+        return session.getRequestAcquireTimeout();
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void setRequestAcquireTimeout(long requestAcquireTimeout) {
+        session.setRequestAcquireTimeout(requestAcquireTimeout);
+        persistStorageProperty(REQUEST_LIMIT_ACQUIRE_TIMEOUT, Long.toString(requestAcquireTimeout));
     }
 
     @Override
     @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public long getRequestTimeoutDampening() {
-        return session.getTimeoutDampening();
+        return session.getRequestTimeoutDampening();
     }
 
     @Override
     @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public void setRequestTimeoutDampening(long requestTimeoutDampening) {
-        session.setTimeoutDampening(requestTimeoutDampening);
+        session.setRequestTimeoutDampening(requestTimeoutDampening);
         persistStorageProperty(REQUEST_TIMEOUT_DAMPENING, Long.toString(requestTimeoutDampening));
     }
 
@@ -553,6 +672,16 @@ public class StorageClientManager implements StorageClientManagerMBean{
     }
 
     private LoadBalancingPolicy getLoadBalancingPolicy() {
+        LoadBalancingPolicy policy = getChildLoadBalancingPolicy();
+        // Token awareness sends each request directly to a replica of its partition, which spares the coordinator a
+        // hop. Raw metric batches are single partition writes and benefit the most from it.
+        if (Boolean.valueOf(System.getProperty(TOKEN_AWARE, "true"))) {
+            return new TokenAwarePolicy(policy);
+        }
+        return policy;
+    }
+
+    private LoadBalancingPolicy getChildLoadBalancingPolicy() {
         String policy = System.getProperty(LOAD_BALANCING);
         if (policy == null || policy.equals("RoundRobin")) {
             return new RoundRobinPolicy();
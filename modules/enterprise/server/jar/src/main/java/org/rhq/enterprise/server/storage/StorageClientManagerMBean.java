@@ -19,26 +19,51 @@
 
 package org.rhq.enterprise.server.storage;
 
+import java.util.Map;
+
 /**
  * @author John Sanda
  */
 public interface StorageClientManagerMBean {
 
+    // Adaptive request limits, in number of requests in flight
     double getRequestLimit();
 
-    double getRequestLimitTopologyDelta();
+    int getReadRequestLimit();
+
+    int getWriteRequestLimit();
+
+    Map<String, Integer> getReadRequestLimitsPerNode();
+
+    Map<String, Integer> getWriteRequestLimitsPerNode();
+
+    int getReadRequestsInFlight();
+
+    int getWriteRequestsInFlight();
+
+    long getThrottledRequests();
+
+    long getRejectedRequests();
+
+    int getRequestLimitInitial();
+
+    void setRequestLimitInitial(int requestLimitInitial);
+
+    int getRequestLimitMinimum();
+
+    void setRequestLimitMinimum(int requestLimitMinimum);
 
-    void setRequestWarmupPeriod(int requestWarmupPeriod);
+    int getRequestLimitMaximum();
 
-    int getRequestWarmupPeriod();
+    void setRequestLimitMaximum(int requestLimitMaximum);
 
-    void setRequestWarmupCounterMaximum(int requestWarmupCounterMaximum);
+    double getRequestLatencyTolerance();
 
-    int getRequestWarmupCounterMaximum();
+    void setRequestLatencyTolerance(double requestLatencyTolerance);
 
-    int getCurrentWarmupTime();
+    long getRequestAcquireTimeout();
 
-    void setRequestLimitTopologyDelta(double delta);
+    void setRequestAcquireTimeout(long requestAcquireTimeout);
 
     long getRequestTimeoutDampening();
 
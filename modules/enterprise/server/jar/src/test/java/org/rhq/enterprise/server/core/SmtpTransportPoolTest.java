@@ -0,0 +1,77 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.core;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertSame;
+
+import javax.mail.Transport;
+
+import org.testng.annotations.Test;
+
+@Test
+public class SmtpTransportPoolTest {
+
+    public void reusesTheMostRecentlyReleasedTransport() throws Exception {
+        SmtpTransportPool pool = new SmtpTransportPool(2, 60000);
+        Transport first = connectedTransport();
+        Transport second = connectedTransport();
+
+        pool.release(first);
+        pool.release(second);
+
+        assertSame(pool.borrow(null, null), second);
+        assertSame(pool.borrow(null, null), first);
+        verify(first, never()).close();
+    }
+
+    public void closesTransportsBeyondTheIdleLimit() throws Exception {
+        SmtpTransportPool pool = new SmtpTransportPool(1, 60000);
+        Transport first = connectedTransport();
+        Transport second = connectedTransport();
+
+        pool.release(first);
+        pool.release(second);
+
+        verify(second).close();
+        assertSame(pool.borrow(null, null), first);
+    }
+
+    public void skipsDisconnectedTransports() throws Exception {
+        SmtpTransportPool pool = new SmtpTransportPool(2, 60000);
+        Transport connected = connectedTransport();
+        Transport disconnected = mock(Transport.class);
+
+        pool.release(connected);
+        pool.release(disconnected);
+
+        assertSame(pool.borrow(null, null), connected);
+        verify(disconnected).close();
+    }
+
+    private Transport connectedTransport() {
+        Transport transport = mock(Transport.class);
+        when(transport.isConnected()).thenReturn(true);
+        return transport;
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.resource;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import javax.transaction.Status;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.resource.Resource;
+
+@Test
+public class ResourceHierarchyIndexTest {
+
+    /*
+     * 1 (platform)
+     * +- 2
+     * |  +- 4
+     * |  +- 5
+     * |     +- 7
+     * +- 3
+     *    +- 6
+     * 10 (platform)
+     */
+    private ResourceHierarchyIndex createIndex() {
+        ResourceHierarchyIndex index = new ResourceHierarchyIndex();
+        ResourceHierarchyIndex.Loader loader = index.startLoad();
+        // children before parents on purpose - the loader links them once everything is loaded
+        loader.add(7, 5, 103, 1);
+        loader.add(6, 3, 102, 1);
+        loader.add(5, 2, 102, 1);
+        loader.add(4, 2, 102, 1);
+        loader.add(3, 1, 101, 1);
+        loader.add(2, 1, 101, 1);
+        loader.add(1, Resource.ROOT_ID, 100, 1);
+        loader.add(10, Resource.ROOT_ID, 100, 2);
+        index.finishLoad(loader);
+        return index;
+    }
+
+    public void testNotLoaded() {
+        ResourceHierarchyIndex index = new ResourceHierarchyIndex();
+        assert !index.isLoaded();
+        assert index.getLineage(1) == null;
+        assert index.getSubtree(1) == null;
+        index.put(1, Resource.ROOT_ID, 100, 1);
+        assert index.size() == -1 : "puts are ignored until the index is loaded";
+    }
+
+    public void testLineage() {
+        ResourceHierarchyIndex index = createIndex();
+        assert index.isLoaded();
+        assert !index.isStale();
+        assert index.size() == 8;
+        assert Arrays.equals(index.getLineage(7), new int[] { 5, 2, 1 }) : Arrays.toString(index.getLineage(7));
+        assert Arrays.equals(index.getLineage(3), new int[] { 1 });
+        assert index.getLineage(1).length == 0;
+        assert index.getLineage(99) == null;
+        assert index.getAgentId(10) == 2;
+        assert index.getResourceTypeId(7) == 103;
+    }
+
+    public void testSubtreeAndChildren() {
+        ResourceHierarchyIndex index = createIndex();
+        assertSameIds(index.getSubtree(1), 1, 2, 3, 4, 5, 6, 7);
+        assert index.getSubtree(1)[0] == 1 : "the resource itself comes first";
+        assertSameIds(index.getSubtree(2), 2, 4, 5, 7);
+        assertSameIds(index.getSubtree(7), 7);
+        assertSameIds(index.getChildren(2), 4, 5);
+        assertSameIds(index.getChildren(10));
+        assert index.getSubtree(99) == null;
+    }
+
+    public void testPutAddsAndMoves() {
+        ResourceHierarchyIndex index = createIndex();
+        index.put(8, 7, 104, 1);
+        assert Arrays.equals(index.getLineage(8), new int[] { 7, 5, 2, 1 });
+
+        // move 5 (with 7 and 8) under the other platform
+        index.put(5, 10, 102, 2);
+        assert Arrays.equals(index.getLineage(8), new int[] { 7, 5, 10 });
+        assertSameIds(index.getChildren(2), 4);
+        assertSameIds(index.getSubtree(10), 10, 5, 7, 8);
+        assert !index.isStale();
+    }
+
+    public void testPutWithUnknownParentMarksStale() {
+        ResourceHierarchyIndex index = createIndex();
+        index.put(8, 99, 104, 1);
+        assert index.isStale();
+        assert index.getLineage(8) == null;
+    }
+
+    public void testPutCreatingCycleMarksStale() {
+        ResourceHierarchyIndex index = createIndex();
+        index.put(2, 7, 101, 1);
+        assert index.isStale();
+        assert Arrays.equals(index.getLineage(7), new int[] { 5, 2, 1 }) : "the hierarchy must not have changed";
+    }
+
+    public void testRemoveSubtree() {
+        ResourceHierarchyIndex index = createIndex();
+        index.remove(2);
+        assert index.size() == 4;
+        assert index.getLineage(7) == null;
+        assert index.getLineage(4) == null;
+        assertSameIds(index.getSubtree(1), 1, 3, 6);
+
+        // freed slots are reused
+        index.put(11, 3, 102, 1);
+        index.put(12, 11, 103, 1);
+        assert Arrays.equals(index.getLineage(12), new int[] { 11, 3, 1 });
+        assert index.size() == 6;
+    }
+
+    public void testOrphansHaveNoLineage() {
+        ResourceHierarchyIndex index = new ResourceHierarchyIndex();
+        ResourceHierarchyIndex.Loader loader = index.startLoad();
+        loader.add(1, Resource.ROOT_ID, 100, 1);
+        loader.add(3, 2, 101, 1); // parent 2 is not loaded, e.g. uninventoried concurrently
+        loader.add(4, 3, 102, 1);
+        index.finishLoad(loader);
+
+        assert index.getLineage(4) == null : "an incomplete lineage must not be returned";
+        assertSameIds(index.getSubtree(3), 3, 4);
+    }
+
+    public void testModificationsDuringLoadMarkStale() {
+        ResourceHierarchyIndex index = createIndex();
+        ResourceHierarchyIndex.Loader loader = index.startLoad();
+        loader.add(1, Resource.ROOT_ID, 100, 1);
+        index.put(8, 1, 101, 1); // modifies the old hierarchy while the new one is loading
+        index.finishLoad(loader);
+        assert index.isStale();
+        assert index.size() == 1;
+    }
+
+    public void testSyncTimeIsLoadStartTime() {
+        ResourceHierarchyIndex index = new ResourceHierarchyIndex();
+        long beforeLoad = System.currentTimeMillis();
+        ResourceHierarchyIndex.Loader loader = index.startLoad();
+        loader.add(1, Resource.ROOT_ID, 100, 1);
+        index.finishLoad(loader);
+        assert index.getSyncTime() >= beforeLoad;
+        assert index.getSyncTime() <= System.currentTimeMillis();
+        assert index.contains(1);
+        assert !index.contains(2);
+    }
+
+    public void testSlotMapMatchesHashMap() {
+        ResourceHierarchyIndex.SlotMap slots = new ResourceHierarchyIndex.SlotMap();
+        Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200000; i++) {
+            int key = 1 + random.nextInt(20000);
+            if (random.nextInt(3) == 0) {
+                slots.remove(key);
+                expected.remove(key);
+            } else {
+                slots.put(key, i);
+                expected.put(key, i);
+            }
+        }
+        for (int key = 1; key <= 20000; key++) {
+            Integer value = expected.get(key);
+            assert slots.get(key) == ((value != null) ? value : -1) : "mismatch for key " + key;
+        }
+    }
+
+    public void testUpdatesAppliedOnCommit() {
+        ResourceHierarchyIndex index = createIndex();
+        ResourceHierarchyIndexUpdates updates = new ResourceHierarchyIndexUpdates(index, true);
+        updates.put(8, 6, 103, 1);
+        updates.remove(2);
+        assert index.getLineage(8) == null : "updates must not be visible before the transaction commits";
+        assert index.getLineage(7) != null;
+        assert !index.getAndClearUnannounced();
+
+        updates.afterCompletion(Status.STATUS_COMMITTED);
+        assert Arrays.equals(index.getLineage(8), new int[] { 6, 3, 1 });
+        assert index.getLineage(7) == null;
+        assert index.getAndClearUnannounced();
+        assert !index.getAndClearUnannounced();
+    }
+
+    public void testUpdatesDiscardedOnRollback() {
+        ResourceHierarchyIndex index = createIndex();
+        ResourceHierarchyIndexUpdates updates = new ResourceHierarchyIndexUpdates(index, true);
+        updates.put(8, 6, 103, 1);
+        updates.remove(2);
+
+        updates.afterCompletion(Status.STATUS_ROLLEDBACK);
+        assert index.getLineage(8) == null;
+        assert Arrays.equals(index.getLineage(7), new int[] { 5, 2, 1 });
+        assert !index.getAndClearUnannounced();
+        assert !index.isStale();
+    }
+
+    public void testUpdatesAppliedImmediatelyWithoutTransaction() {
+        ResourceHierarchyIndex index = createIndex();
+        ResourceHierarchyIndexUpdates updates = new ResourceHierarchyIndexUpdates(index, false);
+        updates.put(8, 6, 103, 1);
+        assert Arrays.equals(index.getLineage(8), new int[] { 6, 3, 1 });
+        assert index.getAndClearUnannounced();
+    }
+
+    private static void assertSameIds(int[] actual, int... expected) {
+        int[] sorted = actual.clone();
+        Arrays.sort(sorted);
+        int[] sortedExpected = expected.clone();
+        Arrays.sort(sortedExpected);
+        assert Arrays.equals(sorted, sortedExpected) : Arrays.toString(actual) + " != " + Arrays.toString(expected);
+    }
+}
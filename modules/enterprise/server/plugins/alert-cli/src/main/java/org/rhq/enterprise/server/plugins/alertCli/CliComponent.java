@@ -86,6 +86,7 @@ public class CliComponent implements ServerPluginComponent, ControlFacet {
 
     private static final String CONTROL_CHECK_ALERTS_VALIDITY = "checkAlertsValidity";
     private static final String CONTROL_REASSIGN_ALERTS = "reassignAlerts";
+    private static final String CONTROL_SCRIPT_STATISTICS = "scriptStatistics";
 
     private static final String PROP_ALERT_DEFINITION_NAME = "alertDefinitionName";
     private static final String PROP_RESOURCE_PATH = "resourcePath";
@@ -97,6 +98,15 @@ public class CliComponent implements ServerPluginComponent, ControlFacet {
     private static final String PROP_USER_NAME = "userName";
     private static final String PROP_ALERT_DEF_IDS = "alertDefIds";
     private static final String PROP_SCRIPT_TIMEOUT = "scriptTimeout";
+    private static final String PROP_MAX_CONCURRENT_SCRIPTS = "maxConcurrentScripts";
+    private static final String PROP_PREPARED_SCRIPT_ENGINES = "preparedScriptEngines";
+    private static final String PROP_SCRIPTS = "scripts";
+    private static final String PROP_SCRIPT = "script";
+    private static final String PROP_SCRIPT_NAME = "scriptName";
+    private static final String PROP_EXECUTIONS = "executions";
+    private static final String PROP_FAILURES = "failures";
+    private static final String PROP_AVERAGE_TIME = "averageTime";
+    private static final String PROP_MAX_TIME = "maxTime";
 
     private static final String WARNING_MESSAGE_LOAD_CLASSES = "Could not load domain packages names."
         + " The CLI Alert Sender will only understand fully qualified domain classes names in CLI scripts.";
@@ -104,7 +114,10 @@ public class CliComponent implements ServerPluginComponent, ControlFacet {
     private String pluginName;
     private PackageType packageType;
     private int scriptTimeout;
+    private int maxConcurrentScripts;
+    private int preparedScriptEngines;
     private Set<String> domainPackagesNames;
+    private CliScriptExecutor scriptExecutor;
 
     @Override
     public void initialize(ServerPluginContext context) throws Exception {
@@ -112,6 +125,10 @@ public class CliComponent implements ServerPluginComponent, ControlFacet {
         String timeoutValue = context.getPluginConfiguration() == null ? "60" : context.getPluginConfiguration()
             .getSimpleValue(PROP_SCRIPT_TIMEOUT, "60");
         scriptTimeout = Integer.parseInt(timeoutValue);
+        maxConcurrentScripts = Integer.parseInt(context.getPluginConfiguration() == null ? "10" : context
+            .getPluginConfiguration().getSimpleValue(PROP_MAX_CONCURRENT_SCRIPTS, "10"));
+        preparedScriptEngines = Integer.parseInt(context.getPluginConfiguration() == null ? "1" : context
+            .getPluginConfiguration().getSimpleValue(PROP_PREPARED_SCRIPT_ENGINES, "1"));
     }
 
     public PackageType getScriptPackageType() {
@@ -127,9 +144,15 @@ public class CliComponent implements ServerPluginComponent, ControlFacet {
         return scriptTimeout;
     }
 
+    CliScriptExecutor getScriptExecutor() {
+        return scriptExecutor;
+    }
+
     @Override
     public void start() {
         domainPackagesNames = loadPackagesNames();
+        scriptExecutor = new CliScriptExecutor(maxConcurrentScripts, domainPackagesNames);
+        scriptExecutor.prepareEngines(preparedScriptEngines);
     }
 
     private Set<String> loadPackagesNames() {
@@ -214,6 +237,10 @@ public class CliComponent implements ServerPluginComponent, ControlFacet {
 
     @Override
     public void stop() {
+        if (scriptExecutor != null) {
+            scriptExecutor.shutdown();
+            scriptExecutor = null;
+        }
         domainPackagesNames = null;
     }
 
@@ -230,6 +257,8 @@ public class CliComponent implements ServerPluginComponent, ControlFacet {
                 checkAlertsValidity(results);
             } else if (CONTROL_REASSIGN_ALERTS.equals(name)) {
                 reassignAlerts(parameters);
+            } else if (CONTROL_SCRIPT_STATISTICS.equals(name)) {
+                scriptStatistics(results);
             }
         } catch (Exception e) {
             results.setError(e);
@@ -287,6 +316,26 @@ public class CliComponent implements ServerPluginComponent, ControlFacet {
 
     }
 
+    private void scriptStatistics(ControlResults results) {
+        PropertyList scripts = new PropertyList(PROP_SCRIPTS);
+        results.getComplexResults().put(scripts);
+
+        if (scriptExecutor == null) {
+            return;
+        }
+
+        for (Map.Entry<String, CliScriptExecutor.ScriptStatistics> e : scriptExecutor.getStatistics().entrySet()) {
+            CliScriptExecutor.ScriptStatistics stats = e.getValue();
+            PropertyMap script = new PropertyMap(PROP_SCRIPT);
+            script.put(new PropertySimple(PROP_SCRIPT_NAME, e.getKey()));
+            script.put(new PropertySimple(PROP_EXECUTIONS, stats.getExecutions()));
+            script.put(new PropertySimple(PROP_FAILURES, stats.getFailures()));
+            script.put(new PropertySimple(PROP_AVERAGE_TIME, stats.getAverageTime()));
+            script.put(new PropertySimple(PROP_MAX_TIME, stats.getMaxTime()));
+            scripts.add(script);
+        }
+    }
+
     private void reassignAlerts(Configuration parameters) {
         PropertySimple userNameProp = parameters.getSimple(PROP_USER_NAME);
         PropertySimple alertDefIdsProp = parameters.getSimple(PROP_ALERT_DEF_IDS);
@@ -0,0 +1,347 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.plugins.alertCli;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.bindings.ScriptEngineFactory;
+import org.rhq.bindings.StandardBindings;
+import org.rhq.bindings.StandardScriptPermissions;
+import org.rhq.bindings.util.PackageFinder;
+import org.rhq.core.domain.content.PackageVersion;
+import org.rhq.enterprise.server.util.LookupUtil;
+import org.rhq.scripting.ScriptSourceProvider;
+import org.rhq.scripting.ScriptSourceProviderFactory;
+
+/**
+ * Runs the CLI alert scripts on a bounded pool of worker threads and script engines.
+ * <p/>
+ * Package versions never change once created, so the source of a script is downloaded once per package version and
+ * each engine compiles it once, if the engine supports compilation. Engines are kept between executions and can be
+ * created ahead of the first alert with {@link #prepareEngines(int)}.
+ */
+class CliScriptExecutor {
+    private static final Log LOG = LogFactory.getLog(CliScriptExecutor.class);
+
+    static final int MAX_CACHED_SCRIPTS = 50;
+
+    /**
+     * The execution statistics of one script.
+     */
+    static class ScriptStatistics {
+        private final AtomicLong executions = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong totalTime = new AtomicLong();
+        private final AtomicLong maxTime = new AtomicLong();
+
+        void record(long time, boolean failed) {
+            executions.incrementAndGet();
+            if (failed) {
+                failures.incrementAndGet();
+            }
+            totalTime.addAndGet(time);
+            long max = maxTime.get();
+            while (time > max && !maxTime.compareAndSet(max, time)) {
+                max = maxTime.get();
+            }
+        }
+
+        long getExecutions() {
+            return executions.get();
+        }
+
+        long getFailures() {
+            return failures.get();
+        }
+
+        long getAverageTime() {
+            long count = executions.get();
+            return count == 0 ? 0 : totalTime.get() / count;
+        }
+
+        long getMaxTime() {
+            return maxTime.get();
+        }
+    }
+
+    /**
+     * An engine along with the scripts it has compiled. Only used by one execution at a time.
+     */
+    private static class PooledEngine {
+        final ScriptEngine engine;
+        final Map<Integer, CompiledScript> compiledScripts = new LinkedHashMap<Integer, CompiledScript>(16, 0.75f,
+            true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, CompiledScript> eldest) {
+                return size() > MAX_CACHED_SCRIPTS;
+            }
+        };
+
+        PooledEngine(ScriptEngine engine) {
+            this.engine = engine;
+        }
+
+        Object eval(int packageVersionId, String source) throws ScriptException {
+            if (!(engine instanceof Compilable)) {
+                return engine.eval(source);
+            }
+            CompiledScript compiled = compiledScripts.get(packageVersionId);
+            if (compiled == null) {
+                compiled = ((Compilable) engine).compile(source);
+                compiledScripts.put(packageVersionId, compiled);
+            }
+            return compiled.eval(engine.getContext());
+        }
+    }
+
+    private final Set<String> domainPackagesNames;
+    private final Semaphore permits;
+    private final ThreadPoolExecutor runners;
+
+    private final ConcurrentMap<String, Queue<PooledEngine>> engines = new ConcurrentHashMap<String, Queue<PooledEngine>>();
+    private final Map<Integer, String> sources = Collections.synchronizedMap(new LinkedHashMap<Integer, String>(16,
+        0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+            return size() > MAX_CACHED_SCRIPTS;
+        }
+    });
+    private final ConcurrentMap<String, ScriptStatistics> statistics = new ConcurrentHashMap<String, ScriptStatistics>();
+
+    CliScriptExecutor(int maxConcurrentScripts, Set<String> domainPackagesNames) {
+        this.domainPackagesNames = domainPackagesNames;
+        permits = new Semaphore(maxConcurrentScripts, true);
+
+        final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        runners = new ThreadPoolExecutor(maxConcurrentScripts, maxConcurrentScripts, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "CLI Alert Script Runner-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setContextClassLoader(classLoader);
+                    return thread;
+                }
+            });
+        runners.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Creates engines in the background, so that the first alerts do not pay for their initialization.
+     */
+    void prepareEngines(final int enginesPerLanguage) {
+        if (enginesPerLanguage <= 0) {
+            return;
+        }
+        runners.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (String language : ScriptEngineFactory.getSupportedLanguages()) {
+                    Queue<PooledEngine> queue = getEngines(language);
+                    while (queue.size() < enginesPerLanguage) {
+                        try {
+                            queue.offer(new PooledEngine(createEngine(language, null)));
+                        } catch (Exception e) {
+                            LOG.warn("Failed to prepare a script engine for " + language + ": " + e.getMessage());
+                            break;
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs the script of the package version and waits for it.
+     *
+     * @param timeout the number of seconds to wait for the script, 0 or less to wait forever
+     * @throws TimeoutException if the script did not complete in time, in which case it has been interrupted
+     */
+    Object execute(final String scriptName, PackageVersion packageVersion, String language,
+        StandardBindings bindings, PrintWriter output, int timeout) throws Exception {
+        final int packageVersionId = packageVersion.getId();
+        final String source = getSource(packageVersion);
+
+        permits.acquire();
+        final PooledEngine engine;
+        final String engineLanguage = language;
+        try {
+            engine = takeEngine(language, bindings);
+        } catch (Exception e) {
+            permits.release();
+            throw e;
+        }
+        engine.engine.getContext().setWriter(output);
+        engine.engine.getContext().setErrorWriter(output);
+
+        Future<Object> result = runners.submit(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                long start = System.currentTimeMillis();
+                boolean failed = true;
+                try {
+                    Object ret = engine.eval(packageVersionId, source);
+                    failed = false;
+                    return ret;
+                } finally {
+                    getStatistics(scriptName).record(System.currentTimeMillis() - start, failed);
+                    // the engine is only reused once the script is really done with it
+                    getEngines(engineLanguage).offer(engine);
+                    permits.release();
+                }
+            }
+        });
+
+        try {
+            return timeout <= 0 ? result.get() : result.get(timeout, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            result.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return The statistics of the scripts executed so far, keyed by script name
+     */
+    Map<String, ScriptStatistics> getStatistics() {
+        return Collections.<String, ScriptStatistics> unmodifiableMap(statistics);
+    }
+
+    void shutdown() {
+        runners.shutdownNow();
+        engines.clear();
+        sources.clear();
+    }
+
+    private ScriptStatistics getStatistics(String scriptName) {
+        ScriptStatistics scriptStatistics = statistics.get(scriptName);
+        if (scriptStatistics == null) {
+            scriptStatistics = new ScriptStatistics();
+            ScriptStatistics existing = statistics.putIfAbsent(scriptName, scriptStatistics);
+            if (existing != null) {
+                scriptStatistics = existing;
+            }
+        }
+        return scriptStatistics;
+    }
+
+    private String getSource(PackageVersion packageVersion) {
+        String source = sources.get(packageVersion.getId());
+        if (source == null) {
+            source = downloadSource(packageVersion);
+            sources.put(packageVersion.getId(), source);
+        }
+        return source;
+    }
+
+    String downloadSource(PackageVersion packageVersion) {
+        ByteArrayOutputStream bits = new ByteArrayOutputStream();
+        LookupUtil.getContentSourceManager().outputPackageVersionBits(packageVersion, bits);
+        return new String(bits.toByteArray(), Charset.defaultCharset());
+    }
+
+    private Queue<PooledEngine> getEngines(String language) {
+        Queue<PooledEngine> queue = engines.get(language);
+        if (queue == null) {
+            queue = new ConcurrentLinkedQueue<PooledEngine>();
+            Queue<PooledEngine> existing = engines.putIfAbsent(language, queue);
+            if (existing != null) {
+                queue = existing;
+            }
+        }
+        return queue;
+    }
+
+    private PooledEngine takeEngine(String language, StandardBindings bindings) throws ScriptException, IOException {
+        PooledEngine engine = getEngines(language).poll();
+        if (engine == null) {
+            engine = new PooledEngine(createEngine(language, bindings));
+        }
+        injectBindings(engine.engine, bindings);
+        return engine;
+    }
+
+    void injectBindings(ScriptEngine engine, StandardBindings bindings) {
+        //TODO is this OK, or should we use a different classloader than the context classloader?
+        ScriptSourceProvider[] providers = ScriptSourceProviderFactory.get(null);
+        ScriptEngineFactory.injectStandardBindings(engine, bindings, true, providers);
+    }
+
+    ScriptEngine createEngine(String language, StandardBindings bindings) throws ScriptException, IOException {
+        return ScriptEngineFactory.getSecuredScriptEngine(language, new CliSenderPackageFinder(domainPackagesNames),
+            bindings, new StandardScriptPermissions());
+    }
+
+    private static class CliSenderPackageFinder extends PackageFinder {
+        final Set<String> domainPackagesNames;
+
+        CliSenderPackageFinder(Set<String> domainPackagesNames) {
+            super(Collections.<File> emptyList());
+            this.domainPackagesNames = domainPackagesNames;
+        }
+
+        @Override
+        public Set<String> findPackages(String packageRoot) throws IOException {
+            return domainPackagesNames;
+        }
+    }
+}
@@ -19,26 +19,13 @@
 
 package org.rhq.enterprise.server.plugins.alertCli;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.io.PrintWriter;
 import java.nio.charset.Charset;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Queue;
-import java.util.Set;
+import java.util.concurrent.TimeoutException;
 
-import javax.script.ScriptEngine;
 import javax.script.ScriptException;
 
 import org.apache.commons.logging.Log;
@@ -46,8 +33,6 @@ import org.apache.commons.logging.LogFactory;
 
 import org.rhq.bindings.ScriptEngineFactory;
 import org.rhq.bindings.StandardBindings;
-import org.rhq.bindings.StandardScriptPermissions;
-import org.rhq.bindings.util.PackageFinder;
 import org.rhq.core.domain.alert.Alert;
 import org.rhq.core.domain.alert.notification.SenderResult;
 import org.rhq.core.domain.auth.Subject;
@@ -59,14 +44,11 @@ import org.rhq.core.util.exception.ThrowableUtil;
 import org.rhq.enterprise.client.LocalClient;
 import org.rhq.enterprise.server.auth.SessionManager;
 import org.rhq.enterprise.server.auth.SubjectManagerLocal;
-import org.rhq.enterprise.server.content.ContentSourceManagerLocal;
 import org.rhq.enterprise.server.content.RepoManagerLocal;
 import org.rhq.enterprise.server.plugin.pc.alert.AlertSender;
 import org.rhq.enterprise.server.plugin.pc.alert.AlertSenderValidationResults;
 import org.rhq.enterprise.server.util.LookupUtil;
 import org.rhq.scripting.ScriptEngineInitializer;
-import org.rhq.scripting.ScriptSourceProvider;
-import org.rhq.scripting.ScriptSourceProviderFactory;
 
 /**
  * Uses CLI to perform the alert notification.
@@ -89,12 +71,6 @@ public class CliSender extends AlertSender<CliComponent> {
 
     private static final String VALIDATION_ERROR_MESSAGE = "The provided user failed to authenticate.";
 
-    //no more than 10 concurrently running CLI notifications..
-    //is that enough?
-    private static final int MAX_SCRIPT_ENGINES = 10;
-    private static final Map<String, Queue<ScriptEngine>> SCRIPT_ENGINES = new HashMap<String, Queue<ScriptEngine>>();
-    private static int ENGINES_IN_USE = 0;
-
     /**
      * Simple strongly typed representation of the alert configuration
      */
@@ -104,21 +80,9 @@ public class CliSender extends AlertSender<CliComponent> {
         int repoId;
     }
 
-    private static class ExceptionHolder {
-        public ScriptException scriptException;
-        public Throwable throwable;
-    }
-
-    private static class BitsAndFileExtension {
-        InputStream packageBits;
-        String scriptFileExtension;
-    }
-
     @Override
     public SenderResult send(Alert alert) {
         SenderResult result = new SenderResult();
-        BufferedReader reader = null;
-        ScriptEngine engine = null;
         Subject subjectWithSession = null;
         final SessionManager sessionManager = SessionManager.getInstance();
         String language = null;
@@ -135,10 +99,8 @@ public class CliSender extends AlertSender<CliComponent> {
             ByteArrayOutputStream scriptOutputStream = new ByteArrayOutputStream();
             PrintWriter scriptOut = new PrintWriter(scriptOutputStream);
 
-            BitsAndFileExtension packageData = getPackageBits(config.packageId, config.repoId);
-
-            InputStream packageBits = packageData.packageBits;
-            String scriptFileExtension = packageData.scriptFileExtension;
+            PackageVersion packageVersion = getPackageVersion(config.packageId, config.repoId);
+            String scriptFileExtension = getScriptFileExtension(packageVersion);
             language = ScriptEngineFactory.getLanguageByScriptFileExtension(scriptFileExtension);
 
             if (language == null) {
@@ -153,54 +115,30 @@ public class CliSender extends AlertSender<CliComponent> {
                         + supportedExtensions);
             }
 
-            engine = getScriptEngine(alert, scriptOut, config, language, pluginComponent.getDomainPackagesNames());
-
-            reader = new BufferedReader(new InputStreamReader(packageBits));
-
-            final BufferedReader rdr = reader;
-
-            final ExceptionHolder exceptionHolder = new ExceptionHolder();
-
-            final ScriptEngine e = engine;
-            Thread scriptRunner = new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        e.eval(rdr);
-                    } catch (ScriptException e) {
-                        exceptionHolder.scriptException = e;
-                    } catch (Throwable e) {
-                        exceptionHolder.throwable = e;
-                    }
-                }
-            }, "Script Runner for alert " + alert);
-            scriptRunner.setDaemon(true);
-            scriptRunner.start();
-
-            if (pluginComponent.getScriptTimeout() <= 0) {
-                scriptRunner.join();
-            } else {
-                scriptRunner.join(pluginComponent.getScriptTimeout() * 1000);
-            }
-
-            scriptRunner.interrupt();
+            StandardBindings bindings = createBindings(alert, scriptOut, config);
 
-            if (exceptionHolder.scriptException != null) {
-                LOG.info("The script execution for CLI notification of alert [" + alert + "] failed.",
-                    exceptionHolder.scriptException);
+            try {
+                pluginComponent.getScriptExecutor().execute(getStatisticsName(packageVersion), packageVersion,
+                    language, bindings, scriptOut, pluginComponent.getScriptTimeout());
+            } catch (ScriptException e) {
+                LOG.info("The script execution for CLI notification of alert [" + alert + "] failed.", e);
 
                 //make things pretty for the UI
                 ScriptEngineInitializer initializer = ScriptEngineFactory.getInitializer(language);
-                String message = initializer.extractUserFriendlyErrorMessage(exceptionHolder.scriptException);
-                int col = exceptionHolder.scriptException.getColumnNumber();
-                int line = exceptionHolder.scriptException.getLineNumber();
+                String message = initializer.extractUserFriendlyErrorMessage(e);
+                int col = e.getColumnNumber();
+                int line = e.getLineNumber();
                 String scriptName = createSummary(config, "script $packageName ($packageVersion) in repo $repoName");
                 throw new ScriptException(message, scriptName, line, col);
-            } else if (exceptionHolder.throwable != null) {
-                LOG.info("The script execution for CLI notification of alert [" + alert + "] failed.",
-                    exceptionHolder.throwable);
+            } catch (TimeoutException e) {
+                LOG.info("The script execution for CLI notification of alert [" + alert + "] timed out.");
 
-                throw exceptionHolder.throwable;
+                result.addFailureMessage("The script did not finish within " + pluginComponent.getScriptTimeout()
+                    + " seconds and was interrupted.");
+            } catch (Exception e) {
+                LOG.info("The script execution for CLI notification of alert [" + alert + "] failed.", e);
+
+                throw e;
             }
 
             scriptOut.flush();
@@ -226,17 +164,6 @@ public class CliSender extends AlertSender<CliComponent> {
             if (subjectWithSession != null) {
                 sessionManager.invalidate(subjectWithSession.getSessionId());
             }
-            if (engine != null) {
-                returnEngine(engine, language);
-            }
-
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException e) {
-                    LOG.error("Failed to close the script reader.", e);
-                }
-            }
         }
     }
 
@@ -288,8 +215,7 @@ public class CliSender extends AlertSender<CliComponent> {
         return results;
     }
 
-    private static ScriptEngine getScriptEngine(Alert alert, PrintWriter output, Config config, String language,
-        Set<String> domainPackagesNames) throws ScriptException, IOException, InterruptedException {
+    private static StandardBindings createBindings(Alert alert, PrintWriter output, Config config) {
         Subject user = config.subject;
 
         LocalClient client = new LocalClient(user);
@@ -297,17 +223,12 @@ public class CliSender extends AlertSender<CliComponent> {
         StandardBindings bindings = new StandardBindings(output, client);
         bindings.put("alert", alert);
 
-        ScriptEngine engine = takeEngine(bindings, language, domainPackagesNames);
-        engine.getContext().setWriter(output);
-        engine.getContext().setErrorWriter(output);
-
-        return engine;
+        return bindings;
     }
 
-    private static BitsAndFileExtension getPackageBits(int packageId, int repoId) throws IOException {
-        final ContentSourceManagerLocal csm = LookupUtil.getContentSourceManager();
+    private static PackageVersion getPackageVersion(int packageId, int repoId) {
         RepoManagerLocal rm = LookupUtil.getRepoManagerLocal();
-        final PackageVersion versionToUse = rm.getLatestPackageVersion(LookupUtil.getSubjectManager().getOverlord(),
+        PackageVersion versionToUse = rm.getLatestPackageVersion(LookupUtil.getSubjectManager().getOverlord(),
             packageId, repoId);
 
         if (versionToUse == null) {
@@ -317,37 +238,11 @@ public class CliSender extends AlertSender<CliComponent> {
                     + " either doesn't exist at all or doesn't have any version. Can't execute a CLI script without a script to run.");
         }
 
-        PipedInputStream bits = new PipedInputStream();
-        final PipedOutputStream out = new PipedOutputStream(bits);
-
-        Thread reader = new Thread(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    csm.outputPackageVersionBits(versionToUse, out);
-                } catch (RuntimeException e) {
-                    LOG.warn("The thread for reading the bits of package version [" + versionToUse
-                        + "] failed with exception.", e);
-                    throw e;
-                } finally {
-                    try {
-                        out.close();
-                    } catch (IOException e) {
-                        //doesn't happen in piped output stream
-                        LOG.error(
-                            "Failed to close the piped output stream receiving the package bits of package version "
-                                + versionToUse + ". This should never happen.", e);
-                    }
-                }
-            }
-        });
-        reader.setName("CLI Alert download thread for package version " + versionToUse);
-        reader.setDaemon(true);
-        reader.start();
-
-        BitsAndFileExtension ret = new BitsAndFileExtension();
-        ret.packageBits = bits;
-        String fileName = versionToUse.getFileName();
+        return versionToUse;
+    }
+
+    private static String getScriptFileExtension(PackageVersion packageVersion) {
+        String fileName = packageVersion.getFileName();
         String extension = "";
 
         if (fileName != null) {
@@ -357,9 +252,13 @@ public class CliSender extends AlertSender<CliComponent> {
             }
         }
 
-        ret.scriptFileExtension = extension;
+        return extension;
+    }
 
-        return ret;
+    private static String getStatisticsName(PackageVersion packageVersion) {
+        return packageVersion.getDisplayName() + " ("
+            + (packageVersion.getDisplayVersion() == null ? packageVersion.getVersion() : packageVersion
+                .getDisplayVersion()) + ")";
     }
 
     /**
@@ -463,50 +362,6 @@ public class CliSender extends AlertSender<CliComponent> {
         return integerValue;
     }
 
-    private static ScriptEngine takeEngine(StandardBindings bindings, String language, Set<String> domainPackagesNames)
-        throws InterruptedException, ScriptException, IOException {
-        synchronized (SCRIPT_ENGINES) {
-            if (ENGINES_IN_USE >= MAX_SCRIPT_ENGINES) {
-                SCRIPT_ENGINES.wait();
-            }
-
-            Queue<ScriptEngine> q = SCRIPT_ENGINES.get(language);
-            if (q == null) {
-                q = new ArrayDeque<ScriptEngine>();
-                SCRIPT_ENGINES.put(language, q);
-            }
-
-            ScriptEngine engine = q.poll();
-
-            if (engine == null) {
-                engine = ScriptEngineFactory.getSecuredScriptEngine(language, new CliSenderPackageFinder(
-                    domainPackagesNames), bindings, new StandardScriptPermissions());
-            }
-            //TODO is this OK, or should we use a different classloader than the context classloader?
-            ScriptSourceProvider[] providers = ScriptSourceProviderFactory.get(null);
-            ScriptEngineFactory.injectStandardBindings(engine, bindings, true, providers);
-
-            ++ENGINES_IN_USE;
-
-            return engine;
-        }
-    }
-
-    private static void returnEngine(ScriptEngine engine, String language) {
-        synchronized (SCRIPT_ENGINES) {
-            Queue<ScriptEngine> q = SCRIPT_ENGINES.get(language);
-            if (q == null) {
-                //hmm... this is very strange and should not happen, because we should have initied the queue in the 
-                //takeEngine() method...
-                q = new ArrayDeque<ScriptEngine>();
-                SCRIPT_ENGINES.put(language, q);
-            }
-            q.offer(engine);
-            --ENGINES_IN_USE;
-            SCRIPT_ENGINES.notify();
-        }
-    }
-
     private static int remainingResultSize(SenderResult r) {
         //the "10" is a ballpark to allow for some formatting
         //done by the receivers of the SenderResult.
@@ -522,18 +377,4 @@ public class CliSender extends AlertSender<CliComponent> {
 
         return ret;
     }
-
-    private static class CliSenderPackageFinder extends PackageFinder {
-        final Set<String> domainPackagesNames;
-
-        CliSenderPackageFinder(Set<String> domainPackagesNames) {
-            super(Collections.<File> emptyList());
-            this.domainPackagesNames = domainPackagesNames;
-        }
-
-        @Override
-        public Set<String> findPackages(String packageRoot) throws IOException {
-            return domainPackagesNames;
-        }
-    }
 }
@@ -0,0 +1,219 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.plugins.alertCli;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.bindings.StandardBindings;
+import org.rhq.core.domain.content.PackageVersion;
+
+/**
+ * Runs {@link CliScriptExecutor} with a fake script engine, whose scripts are their own result except for "block",
+ * which waits until it is interrupted, and "fail", which throws.
+ */
+@Test
+public class CliScriptExecutorTest {
+
+    private TestExecutor executor;
+
+    @BeforeMethod
+    public void setUp() {
+        executor = new TestExecutor(1);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test(timeOut = 30000)
+    public void testPermitAndEngineAreReturnedAfterTimeout() throws Exception {
+        try {
+            executor.execute("blocking", packageVersion(1, "block"), "test", null, output(), 1);
+            fail("The blocking script should have timed out");
+        } catch (TimeoutException e) {
+            // expected
+        }
+
+        // with a single permit, this only runs once the interrupted script gave its permit back
+        assertEquals(executor.execute("quick", packageVersion(2, "quick"), "test", null, output(), 0), "quick");
+        assertEquals(executor.enginesCreated.get(), 1, "The engine of the timed out script should have been reused");
+        assertEquals(executor.getStatistics().get("blocking").getFailures(), 1);
+    }
+
+    public void testCompiledScriptsAreEvictedBeyondCacheSize() throws Exception {
+        for (int id = 1; id <= CliScriptExecutor.MAX_CACHED_SCRIPTS + 1; ++id) {
+            executor.execute("script" + id, packageVersion(id, "script" + id), "test", null, output(), 0);
+        }
+        assertEquals(executor.engine.compilations.get("script1").get(), 1);
+
+        // the least recently used script was evicted, the most recent one is still cached
+        executor.execute("script1", packageVersion(1, "script1"), "test", null, output(), 0);
+        String lastScript = "script" + (CliScriptExecutor.MAX_CACHED_SCRIPTS + 1);
+        executor.execute(lastScript, packageVersion(CliScriptExecutor.MAX_CACHED_SCRIPTS + 1, lastScript), "test",
+            null, output(), 0);
+
+        assertEquals(executor.engine.compilations.get("script1").get(), 2);
+        assertEquals(executor.engine.compilations.get(lastScript).get(), 1);
+        assertEquals(executor.downloads.get(), CliScriptExecutor.MAX_CACHED_SCRIPTS + 2);
+    }
+
+    public void testStatistics() throws Exception {
+        executor.execute("script", packageVersion(1, "quick"), "test", null, output(), 0);
+        executor.execute("script", packageVersion(1, "quick"), "test", null, output(), 0);
+        try {
+            executor.execute("failing", packageVersion(2, "fail"), "test", null, output(), 0);
+            fail("The failing script should have thrown");
+        } catch (ScriptException e) {
+            // expected
+        }
+
+        Map<String, CliScriptExecutor.ScriptStatistics> statistics = executor.getStatistics();
+        assertEquals(statistics.size(), 2);
+        assertEquals(statistics.get("script").getExecutions(), 2);
+        assertEquals(statistics.get("script").getFailures(), 0);
+        assertEquals(statistics.get("failing").getExecutions(), 1);
+        assertEquals(statistics.get("failing").getFailures(), 1);
+        assertTrue(statistics.get("script").getMaxTime() >= statistics.get("script").getAverageTime());
+        assertEquals(executor.downloads.get(), 2, "The source of a package version should be downloaded once");
+    }
+
+    private static PackageVersion packageVersion(int id, String source) {
+        PackageVersion packageVersion = new PackageVersion();
+        packageVersion.setId(id);
+        packageVersion.setDisplayName(source);
+        return packageVersion;
+    }
+
+    private static PrintWriter output() {
+        return new PrintWriter(new StringWriter());
+    }
+
+    private static class TestExecutor extends CliScriptExecutor {
+        final FakeEngine engine = new FakeEngine();
+        final AtomicInteger enginesCreated = new AtomicInteger();
+        final AtomicInteger downloads = new AtomicInteger();
+
+        TestExecutor(int maxConcurrentScripts) {
+            super(maxConcurrentScripts, Collections.<String> emptySet());
+        }
+
+        @Override
+        String downloadSource(PackageVersion packageVersion) {
+            downloads.incrementAndGet();
+            return packageVersion.getDisplayName();
+        }
+
+        @Override
+        ScriptEngine createEngine(String language, StandardBindings bindings) {
+            // there is a single permit, so there is never more than one engine in use
+            enginesCreated.incrementAndGet();
+            return engine;
+        }
+
+        @Override
+        void injectBindings(ScriptEngine engine, StandardBindings bindings) {
+        }
+    }
+
+    private static class FakeEngine extends AbstractScriptEngine implements Compilable {
+        final Map<String, AtomicInteger> compilations = new ConcurrentHashMap<String, AtomicInteger>();
+
+        @Override
+        public Object eval(String script, ScriptContext context) throws ScriptException {
+            if ("block".equals(script)) {
+                try {
+                    Thread.sleep(Long.MAX_VALUE);
+                } catch (InterruptedException e) {
+                    throw new ScriptException("interrupted");
+                }
+            } else if ("fail".equals(script)) {
+                throw new ScriptException("failed");
+            }
+            return script;
+        }
+
+        @Override
+        public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompiledScript compile(final String script) {
+            AtomicInteger count = compilations.get(script);
+            if (count == null) {
+                count = new AtomicInteger();
+                compilations.put(script, count);
+            }
+            count.incrementAndGet();
+            return new CompiledScript() {
+                @Override
+                public Object eval(ScriptContext context) throws ScriptException {
+                    return FakeEngine.this.eval(script, context);
+                }
+
+                @Override
+                public ScriptEngine getEngine() {
+                    return FakeEngine.this;
+                }
+            };
+        }
+
+        @Override
+        public CompiledScript compile(Reader script) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Bindings createBindings() {
+            return new SimpleBindings();
+        }
+
+        @Override
+        public ScriptEngineFactory getFactory() {
+            return null;
+        }
+    }
+}
@@ -18,11 +18,18 @@
  */
 package org.rhq.enterprise.server.plugins.alertScriptlang;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
 
 import org.rhq.enterprise.server.plugin.pc.ServerPluginComponent;
 import org.rhq.enterprise.server.plugin.pc.ServerPluginContext;
@@ -33,14 +40,51 @@ import org.rhq.enterprise.server.plugin.pc.ServerPluginContext;
  */
 public class ScriptLangComponent implements ServerPluginComponent {
 
-    Map<String, ScriptEngine> engineByName = new HashMap<String, ScriptEngine>();
+    static final String JRUBY_SCOPE_PROPERTY = "org.jruby.embed.localcontext.scope";
+
+    /**
+     * An engine along with the version of the script it has evaluated. Only used by one alert at a time.
+     */
+    static class PooledEngine {
+        final ScriptEngine engine;
+        private long evaluatedVersion = -1;
+
+        PooledEngine(ScriptEngine engine) {
+            this.engine = engine;
+        }
+
+        /**
+         * Evaluates the script in the file, unless the engine already did and the file has not been modified since.
+         */
+        void evaluate(File file) throws IOException, ScriptException {
+            long lastModified = file.lastModified();
+            if (lastModified == evaluatedVersion) {
+                return;
+            }
+            BufferedReader br = new BufferedReader(new FileReader(file));
+            try {
+                engine.eval(br);
+            } finally {
+                br.close();
+            }
+            evaluatedVersion = lastModified;
+        }
+    }
+
+    // the idle engines of each script, keyed by language and script file
+    private final ConcurrentMap<String, Queue<PooledEngine>> engines =
+        new ConcurrentHashMap<String, Queue<PooledEngine>>();
     ServerPluginContext context ;
 
     String baseDir = System.getProperty("jboss.home.dir") + "/../alert-scripts/";
 
     public void initialize(ServerPluginContext context) throws Exception {
         this.context = context;
-        // TODO: Customise this generated block
+        // by default all the JRuby engines share a single runtime, in which the sendAlert functions of the scripts
+        // would replace each other, so give each pooled engine its own
+        if (System.getProperty(JRUBY_SCOPE_PROPERTY) == null) {
+            System.setProperty(JRUBY_SCOPE_PROPERTY, "singlethread");
+        }
     }
 
     public void start() {
@@ -48,23 +92,49 @@ public class ScriptLangComponent implements ServerPluginComponent {
     }
 
     public void stop() {
-        // TODO: Customise this generated block
+        engines.clear();
     }
 
     public void shutdown() {
         // TODO: Customise this generated block
     }
 
-    public ScriptEngine getEngineByLanguage(String language) {
-
-        ScriptEngine engine;
-        engine = engineByName.get(language);
+    /**
+     * Takes an idle engine which has evaluated the script, or creates a new one. The engine must be given back with
+     * {@link #returnEngine(String, File, PooledEngine)} once the alert is sent.
+     *
+     * @return the engine, or null if there is no engine for the language
+     */
+    PooledEngine takeEngine(String language, File file) {
+        PooledEngine engine = getEngines(language, file).poll();
         if (engine == null) {
-            ScriptEngineManager manager = new ScriptEngineManager();
-            engine = manager.getEngineByName(language);
-            engineByName.put(language, engine);
+            ScriptEngine scriptEngine = createEngine(language);
+            if (scriptEngine == null) {
+                return null;
+            }
+            engine = new PooledEngine(scriptEngine);
         }
         return engine;
+    }
+
+    void returnEngine(String language, File file, PooledEngine engine) {
+        getEngines(language, file).offer(engine);
+    }
+
+    ScriptEngine createEngine(String language) {
+        return new ScriptEngineManager().getEngineByName(language);
+    }
 
+    private Queue<PooledEngine> getEngines(String language, File file) {
+        String key = language + ":" + file.getAbsolutePath();
+        Queue<PooledEngine> queue = engines.get(key);
+        if (queue == null) {
+            queue = new ConcurrentLinkedQueue<PooledEngine>();
+            Queue<PooledEngine> existing = engines.putIfAbsent(key, queue);
+            if (existing != null) {
+                queue = existing;
+            }
+        }
+        return queue;
     }
 }
@@ -18,15 +18,12 @@
  */
 package org.rhq.enterprise.server.plugins.alertScriptlang;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.util.HashMap;
 import java.util.Map;
 
 import javax.script.Invocable;
 import javax.script.ScriptContext;
-import javax.script.ScriptEngine;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -54,26 +51,20 @@ public class ScriptLangSender extends AlertSender<ScriptLangComponent> {
         }
         String language = alertParameters.getSimpleValue("language", "jruby");
 
-        ScriptEngine engine = pluginComponent.getEngineByLanguage(language);
-//        ScriptEngineManager manager = new ScriptEngineManager(serverPluginEnvironment.getPluginClassLoader());
-//        engine = manager.getEngineByName(language);
-
-
-
-        if (engine==null) {
-            return SenderResult.getSimpleFailure("Script engine with name [" + language + "] does not exist");
-        }
-
         File file = new File(pluginComponent.baseDir + scriptName);
         if (!file.exists() || !file.canRead()) {
             return SenderResult.getSimpleFailure(
                 "Script [" + scriptName + "] does not exist or is not readable at [" + file.getAbsolutePath() + "]");
         }
 
+        // the engine is only used by this alert until it is returned to the pool
+        ScriptLangComponent.PooledEngine engine = pluginComponent.takeEngine(language, file);
+        if (engine==null) {
+            return SenderResult.getSimpleFailure("Script engine with name [" + language + "] does not exist");
+        }
+
         Object result;
         try {
-            BufferedReader br = new BufferedReader(new FileReader(file));
-
             Map<String,String> preferencesMap = new HashMap<String, String>();
             for (String key: preferences.getSimpleProperties().keySet())
                 preferencesMap.put(key,preferences.getSimple(key).getStringValue());
@@ -82,18 +73,19 @@ public class ScriptLangSender extends AlertSender<ScriptLangComponent> {
             for (String key: alertParameters.getSimpleProperties().keySet())
                 parameterMap.put(key,alertParameters.getSimple(key).getStringValue());
 
-            ScriptContext sc = engine.getContext();
-            sc.setAttribute("alertPreferences",preferencesMap,ScriptContext.ENGINE_SCOPE);
-            sc.setAttribute("alertParameters",parameterMap,ScriptContext.ENGINE_SCOPE);
-            engine.eval(br);
-
             AlertManagerLocal alertManager = LookupUtil.getAlertManager();
 
             Object[] args = new Object[3];
             args[0] = alert;
             args[1] = alertManager.prettyPrintAlertURL(alert);
             args[2] = alertManager.prettyPrintAlertConditions(alert, false);
-            result = ((Invocable) engine).invokeFunction("sendAlert", args);
+
+            ScriptContext sc = engine.engine.getContext();
+            sc.setAttribute("alertPreferences",preferencesMap,ScriptContext.ENGINE_SCOPE);
+            sc.setAttribute("alertParameters",parameterMap,ScriptContext.ENGINE_SCOPE);
+
+            engine.evaluate(file);
+            result = ((Invocable) engine.engine).invokeFunction("sendAlert", args);
 
             if (result == null) {
                 return SenderResult.getSimpleFailure("Script ]" + scriptName + "] returned null, so success is unknown");
@@ -105,6 +97,8 @@ public class ScriptLangSender extends AlertSender<ScriptLangComponent> {
         } catch (Exception e) {
             e.printStackTrace();
             return SenderResult.getSimpleFailure("Sending via [" + scriptName + "] failed: " + e.getMessage());
+        } finally {
+            pluginComponent.returnEngine(language, file, engine);
         }
     }
 }
@@ -0,0 +1,174 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.plugins.alertScriptlang;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Runs the engine pool of {@link ScriptLangComponent} with a fake script engine, which counts the scripts it evaluates.
+ */
+@Test
+public class ScriptLangComponentTest {
+
+    private TestComponent component;
+    private File script;
+    private File otherScript;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        component = new TestComponent();
+        script = File.createTempFile("script", ".rb");
+        otherScript = File.createTempFile("other", ".rb");
+        write(script, "script");
+        write(otherScript, "other");
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        component.stop();
+        script.delete();
+        otherScript.delete();
+    }
+
+    public void testScriptIsEvaluatedOncePerEngine() throws Exception {
+        for (int i = 0; i < 3; ++i) {
+            ScriptLangComponent.PooledEngine engine = component.takeEngine("fake", script);
+            engine.evaluate(script);
+            component.returnEngine("fake", script, engine);
+        }
+        assertEquals(component.enginesCreated, 1);
+        assertEquals(component.lastEngine.evaluations, 1);
+    }
+
+    public void testConcurrentAlertsUseDifferentEngines() throws Exception {
+        ScriptLangComponent.PooledEngine first = component.takeEngine("fake", script);
+        ScriptLangComponent.PooledEngine second = component.takeEngine("fake", script);
+        assertNotSame(first, second);
+        component.returnEngine("fake", script, first);
+        component.returnEngine("fake", script, second);
+
+        assertSame(component.takeEngine("fake", script), first, "Idle engines should be reused");
+        assertEquals(component.enginesCreated, 2);
+    }
+
+    public void testScriptsDoNotShareEngines() throws Exception {
+        ScriptLangComponent.PooledEngine engine = component.takeEngine("fake", script);
+        engine.evaluate(script);
+        component.returnEngine("fake", script, engine);
+
+        ScriptLangComponent.PooledEngine other = component.takeEngine("fake", otherScript);
+        assertNotSame(other, engine, "An engine should only define the functions of one script");
+        other.evaluate(otherScript);
+        assertEquals(((FakeEngine) other.engine).lastScript, "other");
+    }
+
+    public void testModifiedScriptIsEvaluatedAgain() throws Exception {
+        ScriptLangComponent.PooledEngine engine = component.takeEngine("fake", script);
+        engine.evaluate(script);
+        write(script, "modified");
+        // the modification time has a resolution of a second on some file systems
+        script.setLastModified(script.lastModified() + 2000L);
+        engine.evaluate(script);
+
+        FakeEngine fakeEngine = (FakeEngine) engine.engine;
+        assertEquals(fakeEngine.evaluations, 2);
+        assertEquals(fakeEngine.lastScript, "modified");
+    }
+
+    public void testUnknownLanguage() {
+        assertNull(component.takeEngine("unknown", script));
+    }
+
+    private static void write(File file, String content) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static class TestComponent extends ScriptLangComponent {
+        int enginesCreated;
+        FakeEngine lastEngine;
+
+        @Override
+        ScriptEngine createEngine(String language) {
+            if (!"fake".equals(language)) {
+                return null;
+            }
+            ++enginesCreated;
+            lastEngine = new FakeEngine();
+            return lastEngine;
+        }
+    }
+
+    private static class FakeEngine extends AbstractScriptEngine {
+        int evaluations;
+        String lastScript;
+
+        @Override
+        public Object eval(String script, ScriptContext context) {
+            ++evaluations;
+            lastScript = script;
+            return null;
+        }
+
+        @Override
+        public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+            try {
+                return eval(new BufferedReader(reader).readLine(), context);
+            } catch (IOException e) {
+                throw new ScriptException(e);
+            }
+        }
+
+        @Override
+        public Bindings createBindings() {
+            return new SimpleBindings();
+        }
+
+        @Override
+        public ScriptEngineFactory getFactory() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,518 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.server.metrics;
+
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of requests of one kind (reads or writes) that are in flight against the storage cluster. Each
+ * storage node has its own limit, which adapts to how the node responds:
+ * <ul>
+ * <li>as long as the node's latency stays close to its no-load latency, the limit grows by one for every
+ * <code>limit</code> successful requests, i.e. by about one per round trip (additive increase)</li>
+ * <li>when the node's smoothed latency exceeds its no-load latency by more than the latency tolerance factor, the limit
+ * is decreased by 10%, and when a request to the node times out it is halved (multiplicative decrease). A node's limit
+ * is decreased at most once per {@link #DECREASE_INTERVAL}, and after a timeout at most once per timeout dampening
+ * period, so that a burst of timeouts caused by the same overload only counts once</li>
+ * </ul>
+ * The no-load latency is the lowest latency observed over the current and the previous
+ * {@link #NO_LOAD_LATENCY_WINDOW}, so it follows the node when its performance changes.
+ * <p/>
+ * The driver picks the coordinator of a request, so the node is only known once the request completes. Requests are
+ * therefore admitted against the sum of the limits of the nodes that are up, and latencies and timeouts are
+ * attributed to the node that served the request. Timeouts the driver does not attribute to a node decrease the limits
+ * of all nodes.
+ * <p/>
+ * A request waits for at most the acquire timeout to be admitted. It fails with a {@link RequestLimitTimeoutException}
+ * after that, rather than block its caller for as long as the storage cluster is overloaded.
+ */
+public class AdaptiveRequestLimiter {
+
+    static final long DECREASE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    static final long NO_LOAD_LATENCY_WINDOW = TimeUnit.MINUTES.toNanos(1);
+
+    /** Latency increases below this are considered noise, regardless of the tolerance factor. */
+    static final long MIN_LATENCY_INCREASE = TimeUnit.MILLISECONDS.toNanos(2);
+
+    static final double LATENCY_BACKOFF = 0.9;
+
+    static final double TIMEOUT_BACKOFF = 0.5;
+
+    private static final double LATENCY_SMOOTHING = 0.05;
+
+    private final String name;
+
+    private final ConcurrentMap<InetAddress, NodeLimit> nodes = new ConcurrentHashMap<InetAddress, NodeLimit>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition available = lock.newCondition();
+
+    private volatile int initialLimit;
+
+    private volatile int minLimit;
+
+    private volatile int maxLimit;
+
+    private volatile double latencyTolerance;
+
+    private volatile long timeoutDampening = DECREASE_INTERVAL;
+
+    private volatile long acquireTimeout = TimeUnit.SECONDS.toNanos(30);
+
+    // guarded by lock
+    private int inFlight;
+
+    // guarded by lock
+    private int totalLimit;
+
+    private final AtomicLong throttled = new AtomicLong();
+
+    private final AtomicLong timeouts = new AtomicLong();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param name used in log messages, e.g. "read"
+     * @param initialLimit the limit a node starts with when it comes up
+     * @param minLimit a node's limit never goes below this
+     * @param maxLimit a node's limit never goes above this
+     * @param latencyTolerance the factor by which a node's latency may exceed its no-load latency before its limit is
+     * decreased
+     */
+    public AdaptiveRequestLimiter(String name, int initialLimit, int minLimit, int maxLimit, double latencyTolerance) {
+        this.name = name;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.initialLimit = clamp(initialLimit);
+        this.latencyTolerance = latencyTolerance;
+        recalculateTotalLimit();
+    }
+
+    /**
+     * Waits until the request may be sent, for at most the acquire timeout. The returned permit must be completed
+     * exactly once, whatever the outcome of the request.
+     *
+     * @throws RequestLimitTimeoutException if the request was not admitted within the acquire timeout, or the thread
+     * was interrupted while waiting
+     */
+    public Permit acquire() {
+        lock.lock();
+        try {
+            if (inFlight >= totalLimit) {
+                throttled.incrementAndGet();
+                long remaining = acquireTimeout;
+                do {
+                    if (remaining <= 0) {
+                        rejected.incrementAndGet();
+                        throw new RequestLimitTimeoutException("The " + name + " request limit of " + totalLimit
+                            + " did not admit the request within " + TimeUnit.NANOSECONDS.toMillis(acquireTimeout)
+                            + " ms");
+                    }
+                    try {
+                        remaining = available.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        rejected.incrementAndGet();
+                        // pass on a signal this thread may have consumed
+                        if (inFlight < totalLimit) {
+                            available.signal();
+                        }
+                        throw new RequestLimitTimeoutException("Interrupted while waiting for the " + name
+                            + " request limit", e);
+                    }
+                } while (inFlight >= totalLimit);
+            }
+            inFlight++;
+            return new Permit(System.nanoTime(), inFlight >= totalLimit / 2);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void nodeUp(InetAddress address) {
+        NodeLimit node = nodes.get(address);
+        if (node == null) {
+            nodes.putIfAbsent(address, new NodeLimit(initialLimit));
+            node = nodes.get(address);
+        }
+        synchronized (node) {
+            if (!node.up) {
+                // The node may have been restarted or replaced - probe it from scratch
+                node.up = true;
+                node.limit = initialLimit;
+                node.increments = 0;
+                node.resetLatencies();
+            }
+        }
+        recalculateTotalLimit();
+    }
+
+    public void nodeDown(InetAddress address) {
+        NodeLimit node = nodes.get(address);
+        if (node != null) {
+            synchronized (node) {
+                node.up = false;
+            }
+            recalculateTotalLimit();
+        }
+    }
+
+    public void nodeRemoved(InetAddress address) {
+        if (nodes.remove(address) != null) {
+            recalculateTotalLimit();
+        }
+    }
+
+    /**
+     * @return the sum of the limits of the nodes that are up
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return totalLimit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the current limit of each node that is up, keyed by node address
+     */
+    public Map<String, Integer> getLimitsPerNode() {
+        Map<String, Integer> limits = new TreeMap<String, Integer>();
+        for (Map.Entry<InetAddress, NodeLimit> entry : nodes.entrySet()) {
+            NodeLimit node = entry.getValue();
+            synchronized (node) {
+                if (node.up) {
+                    limits.put(entry.getKey().getHostAddress(), node.limit);
+                }
+            }
+        }
+        return limits;
+    }
+
+    /**
+     * @return the number of requests that had to wait because the limit was reached
+     */
+    public long getThrottled() {
+        return throttled.get();
+    }
+
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    /**
+     * @return the number of requests that failed because they were not admitted within the acquire timeout
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+
+    /**
+     * Sets the limit nodes start with when they come up. The limits of the nodes that are already up are not changed.
+     */
+    public void setInitialLimit(int initialLimit) {
+        this.initialLimit = clamp(initialLimit);
+    }
+
+    /**
+     * @return the time, in milliseconds, during which a node's limit is decreased only once after a timeout
+     */
+    public long getTimeoutDampening() {
+        return TimeUnit.NANOSECONDS.toMillis(timeoutDampening);
+    }
+
+    public void setTimeoutDampening(long timeoutDampening) {
+        this.timeoutDampening = TimeUnit.MILLISECONDS.toNanos(Math.max(0, timeoutDampening));
+    }
+
+    /**
+     * @return the time, in milliseconds, a request waits to be admitted before it fails
+     */
+    public long getAcquireTimeout() {
+        return TimeUnit.NANOSECONDS.toMillis(acquireTimeout);
+    }
+
+    public void setAcquireTimeout(long acquireTimeout) {
+        this.acquireTimeout = TimeUnit.MILLISECONDS.toNanos(Math.max(0, acquireTimeout));
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public void setMinLimit(int minLimit) {
+        this.minLimit = Math.max(1, minLimit);
+        if (maxLimit < this.minLimit) {
+            maxLimit = this.minLimit;
+        }
+        clampLimits();
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public void setMaxLimit(int maxLimit) {
+        this.maxLimit = Math.max(minLimit, maxLimit);
+        clampLimits();
+    }
+
+    public double getLatencyTolerance() {
+        return latencyTolerance;
+    }
+
+    public void setLatencyTolerance(double latencyTolerance) {
+        this.latencyTolerance = latencyTolerance;
+    }
+
+    void onSuccess(InetAddress address, long latency, boolean saturated, long now) {
+        NodeLimit node = getNode(address);
+        if (node == null) {
+            return;
+        }
+        boolean changed;
+        synchronized (node) {
+            changed = node.onSuccess(latency, saturated, now);
+        }
+        if (changed) {
+            recalculateTotalLimit();
+        }
+    }
+
+    void onTimeout(InetAddress address, long now) {
+        timeouts.incrementAndGet();
+        if (address == null) {
+            for (NodeLimit node : nodes.values()) {
+                synchronized (node) {
+                    node.decrease(TIMEOUT_BACKOFF, now, timeoutDampening);
+                }
+            }
+        } else {
+            NodeLimit node = getNode(address);
+            if (node == null) {
+                return;
+            }
+            synchronized (node) {
+                node.decrease(TIMEOUT_BACKOFF, now, timeoutDampening);
+            }
+        }
+        recalculateTotalLimit();
+    }
+
+    private void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private NodeLimit getNode(InetAddress address) {
+        NodeLimit node = nodes.get(address);
+        if (node == null) {
+            // We found out about the node from a response before the driver told us it is up
+            nodeUp(address);
+            node = nodes.get(address);
+        }
+        return node;
+    }
+
+    private void clampLimits() {
+        for (NodeLimit node : nodes.values()) {
+            synchronized (node) {
+                node.limit = clamp(node.limit);
+            }
+        }
+        initialLimit = clamp(initialLimit);
+        recalculateTotalLimit();
+    }
+
+    private int clamp(int limit) {
+        return Math.min(maxLimit, Math.max(minLimit, limit));
+    }
+
+    private void recalculateTotalLimit() {
+        int total = 0;
+        for (NodeLimit node : nodes.values()) {
+            synchronized (node) {
+                if (node.up) {
+                    total += node.limit;
+                }
+            }
+        }
+        lock.lock();
+        try {
+            // When no node is known to be up, still let requests through so that they fail fast rather than block
+            int oldTotal = totalLimit;
+            totalLimit = (total == 0) ? minLimit : total;
+            if (totalLimit > oldTotal) {
+                available.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveRequestLimiter[" + name + ", limits=" + getLimitsPerNode() + "]";
+    }
+
+    /**
+     * Represents a request that has been admitted by the limiter.
+     */
+    public class Permit {
+        private final long start;
+        private final boolean saturated;
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        private Permit(long start, boolean saturated) {
+            this.start = start;
+            this.saturated = saturated;
+        }
+
+        /**
+         * @param address the node that served the request, or null if unknown
+         */
+        public void success(InetAddress address) {
+            if (completed.compareAndSet(false, true)) {
+                release();
+                if (address != null) {
+                    long now = System.nanoTime();
+                    onSuccess(address, now - start, saturated, now);
+                }
+            }
+        }
+
+        /**
+         * @param address the node the request timed out on, or null if unknown
+         */
+        public void timeout(InetAddress address) {
+            if (completed.compareAndSet(false, true)) {
+                release();
+                onTimeout(address, System.nanoTime());
+            }
+        }
+
+        /**
+         * To be called when the request failed for another reason than a timeout. The limits are not changed.
+         */
+        public void failure() {
+            if (completed.compareAndSet(false, true)) {
+                release();
+            }
+        }
+    }
+
+    private class NodeLimit {
+        boolean up = true;
+        int limit;
+        int increments;
+        long lastDecrease;
+        boolean decreased;
+        double smoothedLatency = -1;
+        long windowStart;
+        long currentMinLatency;
+        long previousMinLatency;
+
+        NodeLimit(int limit) {
+            this.limit = limit;
+            resetLatencies();
+        }
+
+        void resetLatencies() {
+            smoothedLatency = -1;
+            windowStart = System.nanoTime();
+            currentMinLatency = Long.MAX_VALUE;
+            previousMinLatency = Long.MAX_VALUE;
+        }
+
+        /**
+         * @return true if the limit changed
+         */
+        boolean onSuccess(long latency, boolean saturated, long now) {
+            if (now - windowStart > NO_LOAD_LATENCY_WINDOW) {
+                previousMinLatency = currentMinLatency;
+                currentMinLatency = Long.MAX_VALUE;
+                windowStart = now;
+            }
+            currentMinLatency = Math.min(currentMinLatency, latency);
+            smoothedLatency = (smoothedLatency < 0) ? latency : smoothedLatency + LATENCY_SMOOTHING
+                * (latency - smoothedLatency);
+
+            long noLoadLatency = Math.min(currentMinLatency, previousMinLatency);
+            if (smoothedLatency > noLoadLatency * latencyTolerance
+                && smoothedLatency - noLoadLatency > MIN_LATENCY_INCREASE) {
+                return decrease(LATENCY_BACKOFF, now, DECREASE_INTERVAL);
+            }
+            // Only grow the limit when it is actually being used, otherwise an idle period would let it grow to the
+            // maximum and the next burst would overload the node
+            if (saturated && limit < maxLimit && ++increments >= limit) {
+                increments = 0;
+                limit++;
+                return true;
+            }
+            return false;
+        }
+
+        boolean decrease(double backoff, long now, long interval) {
+            if (decreased && now - lastDecrease < interval) {
+                return false;
+            }
+            decreased = true;
+            lastDecrease = now;
+            increments = 0;
+            int newLimit = Math.max(minLimit, (int) (limit * backoff));
+            if (newLimit == limit) {
+                return false;
+            }
+            limit = newLimit;
+            return true;
+        }
+    }
+}
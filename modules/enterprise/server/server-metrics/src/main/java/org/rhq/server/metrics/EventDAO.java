@@ -0,0 +1,489 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+
+package org.rhq.server.metrics;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.ttl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.querybuilder.Batch;
+import com.datastax.driver.core.querybuilder.Insert;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.datastax.driver.core.utils.UUIDs;
+
+import org.rhq.core.domain.event.Event;
+import org.rhq.core.domain.event.EventSeverity;
+import org.rhq.core.domain.event.composite.EventComposite;
+import org.rhq.server.metrics.domain.EventFilter;
+import org.rhq.server.metrics.domain.EventRollup;
+import org.rhq.server.metrics.domain.MetricsTable;
+
+/**
+ * Stores events in the storage cluster, partitioned by resource and day. Along with the events, every insert writes the
+ * number of events per severity for each {@link #SLOT_SIZE} time slot it covers, in the same partitions of a rollup
+ * table. Severity histograms and counts are then computed from the rollups, whose size depends on the time range and
+ * not on the number of events. The rollup rows of an insert are never updated, which is why they are rows of their own
+ * instead of counters: counters cannot expire. All rows carry the TTL passed by the caller.
+ * <p/>
+ * Events are identified by an integer event id derived from their stored id, which an index table maps back to the
+ * event, so that the event ids the listings return can be used to get the detail of an event or to delete it.
+ */
+public class EventDAO {
+
+    public static final long PARTITION_SIZE = TimeUnit.DAYS.toMillis(1);
+
+    public static final long SLOT_SIZE = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * The maximum number of events read per query when events are listed or counted.
+     */
+    static final int PAGE_SIZE = 1000;
+
+    private final StorageSession storageSession;
+
+    private PreparedStatement findEvents;
+    private PreparedStatement findEventsNewestFirst;
+    private PreparedStatement findEventsOldestFirst;
+    private PreparedStatement findEventIds;
+    private PreparedStatement findEvent;
+    private PreparedStatement findRollups;
+    private PreparedStatement deleteEvents;
+    private PreparedStatement deleteEvent;
+    private PreparedStatement deleteEventId;
+    private PreparedStatement deleteRollups;
+
+    public EventDAO(StorageSession session) {
+        this.storageSession = session;
+        initPreparedStatements();
+    }
+
+    public void initPreparedStatements() {
+        findEvents = storageSession.prepare(
+            "SELECT time, id, severity, location, detail FROM " + MetricsTable.EVENTS + " " +
+            "WHERE resource_id = ? AND day = ? AND time >= ? AND time <= ?");
+
+        // the version of CQL we use does not bind limits
+        findEventsNewestFirst = storageSession.prepare(
+            "SELECT time, id, severity, location, detail FROM " + MetricsTable.EVENTS + " " +
+            "WHERE resource_id = ? AND day = ? AND time >= ? AND time <= ? ORDER BY time DESC LIMIT " + PAGE_SIZE);
+
+        findEventsOldestFirst = storageSession.prepare(
+            "SELECT time, id, severity, location, detail FROM " + MetricsTable.EVENTS + " " +
+            "WHERE resource_id = ? AND day = ? AND time >= ? AND time <= ? ORDER BY time ASC LIMIT " + PAGE_SIZE);
+
+        findEventIds = storageSession.prepare(
+            "SELECT resource_id, time, id FROM " + MetricsTable.EVENT_IDS + " WHERE event_id = ?");
+
+        findEvent = storageSession.prepare(
+            "SELECT severity, location, detail, TTL(severity) FROM " + MetricsTable.EVENTS + " " +
+            "WHERE resource_id = ? AND day = ? AND time = ? AND id = ?");
+
+        findRollups = storageSession.prepare(
+            "SELECT slot, severity, count FROM " + MetricsTable.EVENT_ROLLUPS + " " +
+            "WHERE resource_id = ? AND day = ? AND slot >= ? AND slot <= ?");
+
+        deleteEvents = storageSession.prepare(
+            "DELETE FROM " + MetricsTable.EVENTS + " WHERE resource_id = ? AND day = ?");
+
+        deleteEvent = storageSession.prepare(
+            "DELETE FROM " + MetricsTable.EVENTS + " WHERE resource_id = ? AND day = ? AND time = ? AND id = ?");
+
+        deleteEventId = storageSession.prepare(
+            "DELETE FROM " + MetricsTable.EVENT_IDS + " WHERE event_id = ? AND resource_id = ? AND time = ? AND id = ?");
+
+        deleteRollups = storageSession.prepare(
+            "DELETE FROM " + MetricsTable.EVENT_ROLLUPS + " WHERE resource_id = ? AND day = ?");
+    }
+
+    public static long getDay(long time) {
+        return time - (time % PARTITION_SIZE);
+    }
+
+    public static long getSlot(long time) {
+        return time - (time % SLOT_SIZE);
+    }
+
+    /**
+     * @return The event id of the event stored with the id, as set on the events read
+     */
+    public static int getEventId(UUID id) {
+        return id.hashCode();
+    }
+
+    /**
+     * Inserts the events of a resource, their event ids and their rollups. TTLs are not bound values in the version of
+     * CQL we use, so the statements are built per insert rather than prepared.
+     *
+     * @param ttl The time to live in seconds, which must be positive
+     * @return The futures of the batches written, one per day
+     */
+    public List<StorageResultSetFuture> insertEvents(int resourceId, String location, Collection<Event> events,
+        int ttl) {
+        Map<Long, Batch> batches = new TreeMap<Long, Batch>();
+        Map<Long, Map<EventSeverity, Integer>> counts = new TreeMap<Long, Map<EventSeverity, Integer>>();
+        for (Event event : events) {
+            long day = getDay(event.getTimestamp());
+            Batch batch = batches.get(day);
+            if (batch == null) {
+                batch = QueryBuilder.batch();
+                batches.put(day, batch);
+            }
+            UUID id = UUIDs.timeBased();
+            batch.add(QueryBuilder.insertInto(MetricsTable.EVENTS.toString())
+                .value("resource_id", resourceId)
+                .value("day", new Date(day))
+                .value("time", new Date(event.getTimestamp()))
+                .value("id", id)
+                .value("severity", event.getSeverity().ordinal())
+                .value("location", location)
+                .value("detail", event.getDetail())
+                .using(ttl(ttl)));
+            batch.add(QueryBuilder.insertInto(MetricsTable.EVENT_IDS.toString())
+                .value("event_id", getEventId(id))
+                .value("resource_id", resourceId)
+                .value("time", new Date(event.getTimestamp()))
+                .value("id", id)
+                .using(ttl(ttl)));
+
+            long slot = getSlot(event.getTimestamp());
+            Map<EventSeverity, Integer> slotCounts = counts.get(slot);
+            if (slotCounts == null) {
+                slotCounts = new TreeMap<EventSeverity, Integer>();
+                counts.put(slot, slotCounts);
+            }
+            Integer count = slotCounts.get(event.getSeverity());
+            slotCounts.put(event.getSeverity(), count == null ? 1 : count + 1);
+        }
+
+        UUID insertId = UUIDs.timeBased();
+        for (Map.Entry<Long, Map<EventSeverity, Integer>> slotCounts : counts.entrySet()) {
+            long slot = slotCounts.getKey();
+            Batch batch = batches.get(getDay(slot));
+            for (Map.Entry<EventSeverity, Integer> count : slotCounts.getValue().entrySet()) {
+                batch.add(QueryBuilder.insertInto(MetricsTable.EVENT_ROLLUPS.toString())
+                    .value("resource_id", resourceId)
+                    .value("day", new Date(getDay(slot)))
+                    .value("slot", new Date(slot))
+                    .value("severity", count.getKey().ordinal())
+                    .value("batch", insertId)
+                    .value("count", count.getValue())
+                    .using(ttl(ttl)));
+            }
+        }
+
+        List<StorageResultSetFuture> futures = new ArrayList<StorageResultSetFuture>(batches.size());
+        for (Batch batch : batches.values()) {
+            futures.add(storageSession.executeAsync(batch));
+        }
+        return futures;
+    }
+
+    /**
+     * @return The events of the resource in the time range [begin, end], ordered by time stamp. Only the event
+     * properties that are stored are set: the resource id, the severity, the source location, the detail, the time
+     * stamp and the event id.
+     */
+    public List<EventComposite> findEvents(int resourceId, long begin, long end) {
+        List<StorageResultSetFuture> queries = new ArrayList<StorageResultSetFuture>();
+        for (long day = getDay(begin); day <= end; day += PARTITION_SIZE) {
+            queries.add(storageSession.executeAsync(findEvents.bind(resourceId, new Date(day), new Date(begin),
+                new Date(end))));
+        }
+
+        List<EventComposite> events = new ArrayList<EventComposite>();
+        for (StorageResultSetFuture query : queries) {
+            for (Row row : query.get()) {
+                events.add(toEventComposite(resourceId, row));
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Reads the events of the resource in the time range [begin, end] in time stamp order, a page of events at a time,
+     * until enough of them match the filter.
+     *
+     * @param newestFirst Whether to read the newest events first, or the oldest
+     * @param limit The maximum number of events to return
+     * @return The first events in time stamp order that match the filter
+     */
+    public List<EventComposite> findEvents(int resourceId, long begin, long end, final EventFilter filter,
+        boolean newestFirst, final int limit) {
+        final List<EventComposite> events = new ArrayList<EventComposite>();
+        if (limit > 0) {
+            readEvents(resourceId, begin, end, newestFirst, new EventHandler() {
+                @Override
+                public boolean handle(EventComposite event) {
+                    if (filter.matches(event)) {
+                        events.add(event);
+                    }
+                    return events.size() < limit;
+                }
+            });
+        }
+        return events;
+    }
+
+    /**
+     * Counts the events of the resource in the time range [begin, end] that match the filter. Unless the filter has a
+     * text filter, the slots that are entirely in the time range are counted from the rollups, and only the events of
+     * the slots at the edges of the range are read.
+     */
+    public int countEvents(int resourceId, long begin, long end, final EventFilter filter) {
+        final int[] count = new int[1];
+        EventHandler counter = new EventHandler() {
+            @Override
+            public boolean handle(EventComposite event) {
+                if (filter.matches(event)) {
+                    ++count[0];
+                }
+                return true;
+            }
+        };
+
+        long firstSlot = getSlot(begin + SLOT_SIZE - 1);
+        long lastSlot = getSlot(end + 1) - SLOT_SIZE;
+        if (filter.hasTextFilter() || firstSlot > lastSlot) {
+            readEvents(resourceId, begin, end, true, counter);
+            return count[0];
+        }
+
+        for (EventRollup rollup : findEventRollups(resourceId, firstSlot, lastSlot)) {
+            if (filter.matches(rollup.getSeverity())) {
+                count[0] += rollup.getCount();
+            }
+        }
+        if (begin < firstSlot) {
+            readEvents(resourceId, begin, firstSlot - 1, true, counter);
+        }
+        if (lastSlot + SLOT_SIZE <= end) {
+            readEvents(resourceId, lastSlot + SLOT_SIZE, end, true, counter);
+        }
+        return count[0];
+    }
+
+    /**
+     * @return The events with the event id. Event ids are derived from the stored ids, so although it is unlikely,
+     * several events can share one.
+     */
+    public List<EventComposite> findEvent(int eventId) {
+        List<EventComposite> events = new ArrayList<EventComposite>();
+        for (Row row : storageSession.execute(findEventIds.bind(eventId))) {
+            int resourceId = row.getInt(0);
+            Date time = row.getDate(1);
+            Row event = storageSession.execute(findEvent.bind(resourceId, new Date(getDay(time.getTime())), time,
+                row.getUUID(2))).one();
+            // the events of a day can have been deleted without their ids
+            if (event != null) {
+                EventComposite composite = new EventComposite();
+                composite.setResourceId(resourceId);
+                composite.setTimestamp(time);
+                composite.setEventId(eventId);
+                composite.setSeverity(EventSeverity.values()[event.getInt(0)]);
+                composite.setSourceLocation(event.getString(1));
+                composite.setEventDetail(event.getString(2));
+                events.add(composite);
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Deletes the events with the event id that belong to one of the resources. The rollups of their slots are
+     * corrected with rollups of negative counts, which expire when the deleted events would have.
+     *
+     * @return The number of events deleted
+     */
+    public int deleteEvent(int eventId, Collection<Integer> resourceIds) {
+        int deleted = 0;
+        List<StorageResultSetFuture> deletes = new ArrayList<StorageResultSetFuture>();
+        for (Row row : storageSession.execute(findEventIds.bind(eventId))) {
+            int resourceId = row.getInt(0);
+            if (!resourceIds.contains(resourceId)) {
+                continue;
+            }
+            Date time = row.getDate(1);
+            UUID id = row.getUUID(2);
+            Date day = new Date(getDay(time.getTime()));
+            Row event = storageSession.execute(findEvent.bind(resourceId, day, time, id)).one();
+            if (event != null) {
+                Insert correction = QueryBuilder.insertInto(MetricsTable.EVENT_ROLLUPS.toString())
+                    .value("resource_id", resourceId)
+                    .value("day", day)
+                    .value("slot", new Date(getSlot(time.getTime())))
+                    .value("severity", event.getInt(0))
+                    .value("batch", UUIDs.timeBased())
+                    .value("count", -1);
+                if (!event.isNull(3)) {
+                    correction.using(ttl(event.getInt(3)));
+                }
+                deletes.add(storageSession.executeAsync(correction));
+                deletes.add(storageSession.executeAsync(deleteEvent.bind(resourceId, day, time, id)));
+                ++deleted;
+            }
+            deletes.add(storageSession.executeAsync(deleteEventId.bind(eventId, resourceId, time, id)));
+        }
+        for (StorageResultSetFuture delete : deletes) {
+            delete.get();
+        }
+        return deleted;
+    }
+
+    /**
+     * @return The rollups of the slots of the resource that start in the time range [begin, end], ordered by slot
+     */
+    public List<EventRollup> findEventRollups(int resourceId, long begin, long end) {
+        List<StorageResultSetFuture> queries = new ArrayList<StorageResultSetFuture>();
+        for (long day = getDay(begin); day <= end; day += PARTITION_SIZE) {
+            queries.add(storageSession.executeAsync(findRollups.bind(resourceId, new Date(day), new Date(begin),
+                new Date(end))));
+        }
+
+        List<EventRollup> rollups = new ArrayList<EventRollup>();
+        for (StorageResultSetFuture query : queries) {
+            for (Row row : query.get()) {
+                rollups.add(new EventRollup(row.getDate(0).getTime(), EventSeverity.values()[row.getInt(1)],
+                    row.getInt(2)));
+            }
+        }
+        return rollups;
+    }
+
+    /**
+     * Deletes the events and the rollups of the resource for all the days of the time range [begin, end]. Their event
+     * ids are left to expire.
+     */
+    public void deleteEvents(int resourceId, long begin, long end) {
+        List<StorageResultSetFuture> deletes = new ArrayList<StorageResultSetFuture>();
+        for (long day = getDay(begin); day <= end; day += PARTITION_SIZE) {
+            deletes.add(storageSession.executeAsync(deleteEvents.bind(resourceId, new Date(day))));
+            deletes.add(storageSession.executeAsync(deleteRollups.bind(resourceId, new Date(day))));
+        }
+        for (StorageResultSetFuture delete : deletes) {
+            delete.get();
+        }
+    }
+
+    private interface EventHandler {
+        /**
+         * @return Whether to go on reading events
+         */
+        boolean handle(EventComposite event);
+    }
+
+    private void readEvents(int resourceId, long begin, long end, boolean newestFirst, EventHandler handler) {
+        if (newestFirst) {
+            for (long day = getDay(end); day >= getDay(begin); day -= PARTITION_SIZE) {
+                if (!readEvents(resourceId, day, Math.max(begin, day), Math.min(end, day + PARTITION_SIZE - 1), true,
+                    handler)) {
+                    return;
+                }
+            }
+        } else {
+            for (long day = getDay(begin); day <= end; day += PARTITION_SIZE) {
+                if (!readEvents(resourceId, day, Math.max(begin, day), Math.min(end, day + PARTITION_SIZE - 1), false,
+                    handler)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the events of a partition a page at a time. Each page starts at the time stamp of the last event of the
+     * previous page, skipping the events with that time stamp which were already read. When there are more than a
+     * page of events with the same time stamp, the ones past the first page are skipped.
+     *
+     * @return Whether the handler wants more events
+     */
+    private boolean readEvents(int resourceId, long day, long begin, long end, boolean newestFirst,
+        EventHandler handler) {
+        long cursor = newestFirst ? end : begin;
+        Set<UUID> readAtCursor = new HashSet<UUID>();
+        while (true) {
+            List<Row> rows;
+            if (newestFirst) {
+                rows = storageSession.execute(findEventsNewestFirst.bind(resourceId, new Date(day), new Date(begin),
+                    new Date(cursor))).all();
+            } else {
+                rows = storageSession.execute(findEventsOldestFirst.bind(resourceId, new Date(day), new Date(cursor),
+                    new Date(end))).all();
+            }
+
+            long lastTime = cursor;
+            Set<UUID> readAtLastTime = new HashSet<UUID>(readAtCursor);
+            boolean progressed = false;
+            for (Row row : rows) {
+                long time = row.getDate(0).getTime();
+                UUID id = row.getUUID(1);
+                if (time == cursor && readAtCursor.contains(id)) {
+                    continue;
+                }
+                progressed = true;
+                if (!handler.handle(toEventComposite(resourceId, row))) {
+                    return false;
+                }
+                if (time != lastTime) {
+                    lastTime = time;
+                    readAtLastTime.clear();
+                }
+                readAtLastTime.add(id);
+            }
+
+            if (rows.size() < PAGE_SIZE) {
+                return true;
+            }
+            if (progressed) {
+                cursor = lastTime;
+                readAtCursor = readAtLastTime;
+            } else {
+                cursor += newestFirst ? -1 : 1;
+                readAtCursor.clear();
+            }
+        }
+    }
+
+    private static EventComposite toEventComposite(int resourceId, Row row) {
+        EventComposite event = new EventComposite();
+        event.setResourceId(resourceId);
+        event.setTimestamp(row.getDate(0));
+        event.setEventId(getEventId(row.getUUID(1)));
+        event.setSeverity(EventSeverity.values()[row.getInt(2)]);
+        event.setSourceLocation(row.getString(3));
+        event.setEventDetail(row.getString(4));
+        return event;
+    }
+
+}
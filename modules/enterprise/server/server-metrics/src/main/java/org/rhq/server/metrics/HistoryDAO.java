@@ -0,0 +1,170 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+
+package org.rhq.server.metrics;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.ttl;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+
+import org.rhq.core.domain.measurement.Availability;
+import org.rhq.core.domain.measurement.AvailabilityType;
+import org.rhq.core.domain.measurement.MeasurementDataPK;
+import org.rhq.core.domain.measurement.MeasurementDataTrait;
+import org.rhq.core.domain.resource.Resource;
+import org.rhq.server.metrics.domain.MetricsTable;
+
+/**
+ * Stores the trait history and the availability history that has been moved out of the RDBMS. Both tables are
+ * partitioned by a fixed time bucket of {@link #BUCKET_SIZE} so that partitions of long lived schedules and resources
+ * stay bounded. Rows carry their own TTL, computed by the caller from the configured purge period, so that the history
+ * expires without any purge job. Trait values are keyed by their time stamp and availability intervals by their start
+ * time.
+ */
+public class HistoryDAO {
+
+    public static final long BUCKET_SIZE = TimeUnit.DAYS.toMillis(7);
+
+    private final StorageSession storageSession;
+
+    private PreparedStatement findTraits;
+    private PreparedStatement findAvailabilities;
+    private PreparedStatement findPrecedingAvailability;
+
+    public HistoryDAO(StorageSession session) {
+        this.storageSession = session;
+        initPreparedStatements();
+    }
+
+    public void initPreparedStatements() {
+        findTraits = storageSession.prepare(
+            "SELECT time, value FROM " + MetricsTable.TRAIT_HISTORY + " " +
+            "WHERE schedule_id = ? AND bucket = ? AND time >= ? AND time < ?");
+
+        findAvailabilities = storageSession.prepare(
+            "SELECT start_time, end_time, availability FROM " + MetricsTable.AVAILABILITY_HISTORY + " " +
+            "WHERE resource_id = ? AND bucket = ? AND start_time >= ? AND start_time < ?");
+
+        findPrecedingAvailability = storageSession.prepare(
+            "SELECT start_time, end_time, availability FROM " + MetricsTable.AVAILABILITY_HISTORY + " " +
+            "WHERE resource_id = ? AND bucket = ? AND start_time < ? ORDER BY start_time DESC LIMIT 1");
+    }
+
+    public static long getBucket(long time) {
+        return time - (time % BUCKET_SIZE);
+    }
+
+    /**
+     * TTLs are not bound values in the version of CQL we use, so inserts are built per row rather than prepared.
+     *
+     * @param ttl The time to live in seconds, which must be positive
+     */
+    public StorageResultSetFuture insertTrait(int scheduleId, long timestamp, String value, int ttl) {
+        return storageSession.executeAsync(QueryBuilder.insertInto(MetricsTable.TRAIT_HISTORY.toString())
+            .value("schedule_id", scheduleId)
+            .value("bucket", new Date(getBucket(timestamp)))
+            .value("time", new Date(timestamp))
+            .value("value", value)
+            .using(ttl(ttl)));
+    }
+
+    /**
+     * @param ttl The time to live in seconds, which must be positive
+     */
+    public StorageResultSetFuture insertAvailability(int resourceId, long startTime, long endTime,
+        AvailabilityType type, int ttl) {
+        return storageSession.executeAsync(QueryBuilder.insertInto(MetricsTable.AVAILABILITY_HISTORY.toString())
+            .value("resource_id", resourceId)
+            .value("bucket", new Date(getBucket(startTime)))
+            .value("start_time", new Date(startTime))
+            .value("end_time", new Date(endTime))
+            .value("availability", type.ordinal())
+            .using(ttl(ttl)));
+    }
+
+    /**
+     * @return The trait values of the schedule in the time range [begin, end) ordered by time stamp, newest first
+     */
+    public List<MeasurementDataTrait> findTraits(int scheduleId, long begin, long end) {
+        List<StorageResultSetFuture> queries = new ArrayList<StorageResultSetFuture>();
+        for (long bucket = getBucket(end); bucket >= getBucket(begin); bucket -= BUCKET_SIZE) {
+            queries.add(storageSession.executeAsync(findTraits.bind(scheduleId, new Date(bucket), new Date(begin),
+                new Date(end))));
+        }
+
+        List<MeasurementDataTrait> traits = new ArrayList<MeasurementDataTrait>();
+        for (StorageResultSetFuture query : queries) {
+            for (Row row : query.get()) {
+                traits.add(new MeasurementDataTrait(new MeasurementDataPK(row.getDate(0).getTime(), scheduleId),
+                    row.getString(1)));
+            }
+        }
+        return traits;
+    }
+
+    /**
+     * Finds the availability intervals of the resource that overlap the time range [begin, end), ordered by start
+     * time. The interval that started before the range is looked up in the preceding buckets down to the bucket of
+     * <code>oldest</code>, which should be the start of the retention period since nothing older can still exist.
+     */
+    public List<Availability> findAvailabilities(int resourceId, long begin, long end, long oldest) {
+        List<StorageResultSetFuture> queries = new ArrayList<StorageResultSetFuture>();
+        for (long bucket = getBucket(begin); bucket <= getBucket(end); bucket += BUCKET_SIZE) {
+            queries.add(storageSession.executeAsync(findAvailabilities.bind(resourceId, new Date(bucket),
+                new Date(begin), new Date(end))));
+        }
+
+        List<Availability> availabilities = new ArrayList<Availability>();
+        for (long bucket = getBucket(begin); bucket >= getBucket(oldest); bucket -= BUCKET_SIZE) {
+            Row row = storageSession.execute(findPrecedingAvailability.bind(resourceId, new Date(bucket),
+                new Date(begin))).one();
+            if (row != null) {
+                if (row.getDate(1).getTime() > begin) {
+                    availabilities.add(toAvailability(resourceId, row));
+                }
+                break;
+            }
+        }
+        for (StorageResultSetFuture query : queries) {
+            for (Row row : query.get()) {
+                availabilities.add(toAvailability(resourceId, row));
+            }
+        }
+        return availabilities;
+    }
+
+    private Availability toAvailability(int resourceId, Row row) {
+        Availability availability = new Availability(new Resource(resourceId), row.getDate(0).getTime(),
+            AvailabilityType.values()[row.getInt(2)]);
+        availability.setEndTime(row.getDate(1).getTime());
+        return availability;
+    }
+
+}
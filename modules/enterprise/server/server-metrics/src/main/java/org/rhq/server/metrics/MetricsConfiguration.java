@@ -61,6 +61,8 @@ public class MetricsConfiguration {
     // TODO make this configurable
     private int indexPartitions = 10;
 
+    private int rawInsertBatchSize = Integer.parseInt(System.getProperty("rhq.metrics.raw.insert-batch-size", "1"));
+
     public int getRawTTL() {
         return rawTTL;
     }
@@ -176,4 +178,19 @@ public class MetricsConfiguration {
         this.indexPartitions = indexPartitions;
         return this;
     }
+
+    /**
+     * @return The maximum number of raw inserts, or index updates, grouped into a single unlogged batch. A value of 1
+     * or less, the default, disables batching and every raw value is written with its own prepared statement. The
+     * batches inline their values as CQL literals, so they only pay off if the metrics simulator shows it for the
+     * storage cluster at hand.
+     */
+    public int getRawInsertBatchSize() {
+        return rawInsertBatchSize;
+    }
+
+    public MetricsConfiguration setRawInsertBatchSize(int rawInsertBatchSize) {
+        this.rawInsertBatchSize = rawInsertBatchSize;
+        return this;
+    }
 }
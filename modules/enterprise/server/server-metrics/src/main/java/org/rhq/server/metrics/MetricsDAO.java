@@ -26,12 +26,21 @@
 package org.rhq.server.metrics;
 
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.SimpleStatement;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -39,7 +48,10 @@ import org.apache.commons.logging.LogFactory;
 import org.rhq.core.domain.measurement.MeasurementDataNumeric;
 import org.rhq.server.metrics.domain.AggregateNumericMetric;
 import org.rhq.server.metrics.domain.AggregateNumericMetricMapper;
+import org.rhq.server.metrics.domain.AggregationLease;
 import org.rhq.server.metrics.domain.Bucket;
+import org.rhq.server.metrics.domain.GroupAggregateNumericMetric;
+import org.rhq.server.metrics.domain.GroupRollup;
 import org.rhq.server.metrics.domain.IndexBucket;
 import org.rhq.server.metrics.domain.IndexEntry;
 import org.rhq.server.metrics.domain.ListPagedResult;
@@ -53,6 +65,8 @@ import org.rhq.server.metrics.domain.RawNumericMetricMapper;
  */
 public class MetricsDAO {
 
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
     private final Log log = LogFactory.getLog(MetricsDAO.class);
 
     private StorageSession storageSession;
@@ -72,6 +86,20 @@ public class MetricsDAO {
     private PreparedStatement findIndexEntriesAfterScheduleId;
     private PreparedStatement deleteIndexEntry;
     private PreparedStatement deleteAggregate;
+    private PreparedStatement findCheckpoints;
+    private PreparedStatement updateCheckpoint;
+    private PreparedStatement insertLateIndexEntry;
+    private PreparedStatement findLateIndexEntries;
+    private PreparedStatement insertAggregationLease;
+    private PreparedStatement renewAggregationLease;
+    private PreparedStatement finishAggregationLease;
+    private PreparedStatement findAggregationLeases;
+    private PreparedStatement insertGroupOneHourData;
+    private PreparedStatement insertGroupSixHourData;
+    private PreparedStatement insertGroupTwentyFourHourData;
+    private PreparedStatement findGroupAggregateMetrics;
+    private PreparedStatement insertGroupRollup;
+    private PreparedStatement findGroupRollups;
 
     public MetricsDAO(StorageSession session, MetricsConfiguration configuration) {
         this.storageSession = session;
@@ -148,6 +176,63 @@ public class MetricsDAO {
             "DELETE FROM " + MetricsTable.AGGREGATE + " " +
             "WHERE schedule_id = ? AND bucket = ? AND time = ?");
 
+        findCheckpoints = storageSession.prepare(
+            "SELECT partition, time FROM " + MetricsTable.CHECKPOINT + " WHERE bucket = ?");
+
+        updateCheckpoint = storageSession.prepare(
+            "INSERT INTO " + MetricsTable.CHECKPOINT + " (bucket, partition, time) VALUES (?, ?, ?)");
+
+        insertLateIndexEntry = storageSession.prepare(
+            "INSERT INTO " + MetricsTable.LATE_INDEX + " (bucket, partition, time) VALUES (?, ?, ?) " +
+            "USING TTL " + configuration.getRawTTL());
+
+        findLateIndexEntries = storageSession.prepare(
+            "SELECT time FROM " + MetricsTable.LATE_INDEX + " WHERE bucket = ? AND partition = ?");
+
+        insertAggregationLease = storageSession.prepare(
+            "INSERT INTO " + MetricsTable.AGGREGATION_LEASE + " (run, partition, owner, expires, finished) " +
+            "VALUES (?, ?, ?, ?, false) USING TTL " + configuration.getRawTTL());
+
+        renewAggregationLease = storageSession.prepare(
+            "UPDATE " + MetricsTable.AGGREGATION_LEASE + " USING TTL " + configuration.getRawTTL() + " " +
+            "SET expires = ? WHERE run = ? AND partition = ?");
+
+        finishAggregationLease = storageSession.prepare(
+            "UPDATE " + MetricsTable.AGGREGATION_LEASE + " USING TTL " + configuration.getRawTTL() + " " +
+            "SET owner = ?, finished = true, schedules = ? WHERE run = ? AND partition = ?");
+
+        findAggregationLeases = storageSession.prepare(
+            "SELECT partition, owner, expires, finished, schedules FROM " + MetricsTable.AGGREGATION_LEASE + " " +
+            "WHERE run = ?");
+
+        insertGroupOneHourData = storageSession.prepare(
+            "INSERT INTO " + MetricsTable.GROUP_AGGREGATE + " (group_id, definition_id, bucket, time, avg, max, min, " +
+            "members) VALUES (?, ?, '" + Bucket.ONE_HOUR + "', ?, ?, ?, ?, ?) " +
+            "USING TTL " + configuration.getOneHourTTL());
+
+        insertGroupSixHourData = storageSession.prepare(
+            "INSERT INTO " + MetricsTable.GROUP_AGGREGATE + " (group_id, definition_id, bucket, time, avg, max, min, " +
+            "members) VALUES (?, ?, '" + Bucket.SIX_HOUR + "', ?, ?, ?, ?, ?) " +
+            "USING TTL " + configuration.getSixHourTTL());
+
+        insertGroupTwentyFourHourData = storageSession.prepare(
+            "INSERT INTO " + MetricsTable.GROUP_AGGREGATE + " (group_id, definition_id, bucket, time, avg, max, min, " +
+            "members) VALUES (?, ?, '" + Bucket.TWENTY_FOUR_HOUR + "', ?, ?, ?, ?, ?) " +
+            "USING TTL " + configuration.getTwentyFourHourTTL());
+
+        findGroupAggregateMetrics = storageSession.prepare(
+            "SELECT time, avg, max, min, members " +
+            "FROM " + MetricsTable.GROUP_AGGREGATE + " " +
+            "WHERE group_id = ? AND definition_id = ? AND bucket = ? AND time >= ? AND time < ?");
+
+        // Registrations expire unless group data keeps being queried, see GroupRollups
+        insertGroupRollup = storageSession.prepare(
+            "INSERT INTO " + MetricsTable.GROUP_ROLLUPS + " (group_id, definition_id, schedule_ids, ready, updated) " +
+            "VALUES (?, ?, ?, ?, ?) USING TTL " + configuration.getOneHourTTL());
+
+        findGroupRollups = storageSession.prepare(
+            "SELECT group_id, definition_id, schedule_ids, ready, updated FROM " + MetricsTable.GROUP_ROLLUPS);
+
         long endTime = System.currentTimeMillis();
         log.info("Finished initializing prepared statements in " + (endTime - startTime) + " ms");
     }
@@ -162,6 +247,29 @@ public class MetricsDAO {
         return storageSession.executeAsync(statement);
     }
 
+    /**
+     * Inserts raw data of a single schedule with one unlogged batch. Every insert goes to the same partition, so the
+     * replicas apply the batch as a single mutation, and the routing key lets a token aware load balancing policy send
+     * it directly to one of them. Version 1 of the native protocol cannot batch prepared statements, so the values are
+     * inlined in the statement; they must all be finite since NaN and infinity have no CQL literal. The statement
+     * has to be parsed by the coordinator every time, so this is only used when
+     * {@link MetricsConfiguration#getRawInsertBatchSize()} is raised above its default of 1.
+     */
+    public StorageResultSetFuture insertRawData(int scheduleId, List<MeasurementDataNumeric> data) {
+        StringBuilder batch = new StringBuilder("BEGIN UNLOGGED BATCH ");
+        for (MeasurementDataNumeric datum : data) {
+            batch.append("INSERT INTO ").append(MetricsTable.RAW).append(" (schedule_id, time, value) VALUES (")
+                .append(scheduleId).append(", ").append(datum.getTimestamp()).append(", ")
+                .append(datum.getValue().doubleValue()).append(") USING TTL ").append(configuration.getRawTTL())
+                .append("; ");
+        }
+        batch.append("APPLY BATCH");
+
+        SimpleStatement statement = new SimpleStatement(batch.toString());
+        statement.setRoutingKey(toBytes(scheduleId));
+        return storageSession.executeAsync(statement);
+    }
+
     public StorageResultSetFuture insert1HourData(AggregateNumericMetric metric) {
         BoundStatement statement = insertOneHourData.bind(metric.getScheduleId(), new Date(metric.getTimestamp()),
             metric.getAvg(), metric.getMax(), metric.getMin());
@@ -244,16 +352,162 @@ public class MetricsDAO {
         return storageSession.executeAsync(statement);
     }
 
+    /**
+     * Adds the schedules to a single index partition with one unlogged batch. Like
+     * {@link #insertRawData(int, List)} the batch is a single mutation routed to a replica of the partition.
+     */
+    public StorageResultSetFuture updateIndex(IndexBucket bucket, long timestamp, int partition,
+        Collection<Integer> scheduleIds) {
+        StringBuilder batch = new StringBuilder("BEGIN UNLOGGED BATCH ");
+        for (Integer scheduleId : scheduleIds) {
+            batch.append("INSERT INTO ").append(MetricsTable.INDEX).append(" (bucket, partition, time, schedule_id) ")
+                .append("VALUES ('").append(bucket).append("', ").append(partition).append(", ").append(timestamp)
+                .append(", ").append(scheduleId).append("); ");
+        }
+        batch.append("APPLY BATCH");
+
+        SimpleStatement statement = new SimpleStatement(batch.toString());
+        statement.setRoutingKey(ByteBuffer.wrap(bucket.toString().getBytes(UTF_8)), toBytes(partition),
+            toBytes(timestamp));
+        return storageSession.executeAsync(statement);
+    }
+
     public StorageResultSetFuture deleteIndexEntry(IndexEntry indexEntry) {
         BoundStatement statement = deleteIndexEntry.bind(indexEntry.getBucket().toString(), indexEntry.getPartition(),
             new Date(indexEntry.getTimestamp()), indexEntry.getScheduleId());
         return storageSession.executeAsync(statement);
     }
 
+    /**
+     * @return The aggregation checkpoint of each index partition of the bucket, keyed by partition
+     */
+    public Map<Integer, Long> findCheckpoints(IndexBucket bucket) {
+        BoundStatement statement = findCheckpoints.bind(bucket.toString());
+        Map<Integer, Long> checkpoints = new HashMap<Integer, Long>();
+        for (Row row : storageSession.execute(statement)) {
+            checkpoints.put(row.getInt(0), row.getDate(1).getTime());
+        }
+        return checkpoints;
+    }
+
+    public StorageResultSetFuture updateCheckpoint(IndexBucket bucket, int partition, long time) {
+        BoundStatement statement = updateCheckpoint.bind(bucket.toString(), partition, new Date(time));
+        return storageSession.executeAsync(statement);
+    }
+
+    public StorageResultSetFuture insertLateIndexEntry(IndexBucket bucket, int partition, long timeSlice) {
+        BoundStatement statement = insertLateIndexEntry.bind(bucket.toString(), partition, new Date(timeSlice));
+        return storageSession.executeAsync(statement);
+    }
+
+    public List<Long> findLateIndexEntries(IndexBucket bucket, int partition) {
+        BoundStatement statement = findLateIndexEntries.bind(bucket.toString(), partition);
+        List<Long> timeSlices = new ArrayList<Long>();
+        for (Row row : storageSession.execute(statement)) {
+            timeSlices.add(row.getDate(0).getTime());
+        }
+        return timeSlices;
+    }
+
+    /**
+     * Deletes the late index entry, unless it has been written after <code>writeTime</code>. The write time has to be
+     * inlined since it cannot be bound with version 1 of the native protocol.
+     *
+     * @param writeTime The write time of the deletion in milliseconds
+     */
+    public StorageResultSetFuture deleteLateIndexEntry(IndexBucket bucket, int partition, long timeSlice,
+        long writeTime) {
+        SimpleStatement statement = new SimpleStatement("DELETE FROM " + MetricsTable.LATE_INDEX + " USING TIMESTAMP " +
+            (writeTime * 1000) + " WHERE bucket = '" + bucket + "' AND partition = " + partition + " AND time = " +
+            timeSlice);
+        return storageSession.executeAsync(statement);
+    }
+
+    public StorageResultSetFuture insertAggregationLease(long run, int partition, String owner, long expires) {
+        BoundStatement statement = insertAggregationLease.bind(new Date(run), partition, owner, new Date(expires));
+        return storageSession.executeAsync(statement);
+    }
+
+    public StorageResultSetFuture renewAggregationLease(long run, int partition, long expires) {
+        BoundStatement statement = renewAggregationLease.bind(new Date(expires), new Date(run), partition);
+        return storageSession.executeAsync(statement);
+    }
+
+    public StorageResultSetFuture finishAggregationLease(long run, int partition, String owner, int schedules) {
+        BoundStatement statement = finishAggregationLease.bind(owner, schedules, new Date(run), partition);
+        return storageSession.executeAsync(statement);
+    }
+
+    public List<AggregationLease> findAggregationLeases(long run) {
+        BoundStatement statement = findAggregationLeases.bind(new Date(run));
+        List<AggregationLease> leases = new ArrayList<AggregationLease>();
+        for (Row row : storageSession.execute(statement)) {
+            leases.add(new AggregationLease(run, row.getInt(0), row.getString(1), row.getDate(2).getTime(),
+                row.getBool(3), row.getInt(4)));
+        }
+        return leases;
+    }
+
+    public StorageResultSetFuture insertGroupAggregate(GroupAggregateNumericMetric metric) {
+        PreparedStatement insert;
+        switch (metric.getBucket()) {
+            case ONE_HOUR:
+                insert = insertGroupOneHourData;
+                break;
+            case SIX_HOUR:
+                insert = insertGroupSixHourData;
+                break;
+            default:
+                insert = insertGroupTwentyFourHourData;
+        }
+        BoundStatement statement = insert.bind(metric.getGroupId(), metric.getDefinitionId(),
+            new Date(metric.getTimestamp()), metric.getAvg(), metric.getMax(), metric.getMin(), metric.getMembers());
+        return storageSession.executeAsync(statement);
+    }
+
+    public List<GroupAggregateNumericMetric> findGroupAggregateMetrics(int groupId, int definitionId, Bucket bucket,
+        long startTime, long endTime) {
+        BoundStatement statement = findGroupAggregateMetrics.bind(groupId, definitionId, bucket.toString(),
+            new Date(startTime), new Date(endTime));
+        List<GroupAggregateNumericMetric> metrics = new ArrayList<GroupAggregateNumericMetric>();
+        for (Row row : storageSession.execute(statement)) {
+            metrics.add(new GroupAggregateNumericMetric(groupId, definitionId, bucket, row.getDouble(1),
+                row.getDouble(3), row.getDouble(2), row.getInt(4), row.getDate(0).getTime()));
+        }
+        return metrics;
+    }
+
+    public StorageResultSetFuture insertGroupRollup(int groupId, int definitionId, Set<Integer> scheduleIds,
+        boolean ready) {
+        BoundStatement statement = insertGroupRollup.bind(groupId, definitionId, scheduleIds, ready, new Date());
+        return storageSession.executeAsync(statement);
+    }
+
+    public List<GroupRollup> findGroupRollups() {
+        List<GroupRollup> rollups = new ArrayList<GroupRollup>();
+        for (Row row : storageSession.execute(findGroupRollups.bind())) {
+            rollups.add(new GroupRollup(row.getInt(0), row.getInt(1), row.getSet(2, Integer.class), row.getBool(3),
+                row.getDate(4).getTime()));
+        }
+        return rollups;
+    }
+
     public void deleteAggregate(AggregateNumericMetric metric) {
         BoundStatement statement = deleteAggregate.bind(metric.getScheduleId(), metric.getBucket().toString(),
             new Date(metric.getTimestamp()));
         storageSession.execute(statement);
     }
 
+    private static ByteBuffer toBytes(int value) {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        buffer.putInt(0, value);
+        return buffer;
+    }
+
+    private static ByteBuffer toBytes(long value) {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        buffer.putLong(0, value);
+        return buffer;
+    }
+
 }
@@ -27,14 +27,21 @@ package org.rhq.server.metrics;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import com.datastax.driver.core.ResultSet;
 import com.google.common.base.Stopwatch;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -49,10 +56,15 @@ import org.joda.time.Days;
 import org.rhq.core.domain.measurement.MeasurementDataNumeric;
 import org.rhq.core.domain.measurement.composite.MeasurementDataNumericHighLowComposite;
 import org.rhq.core.util.exception.ThrowableUtil;
+import org.rhq.server.metrics.aggregation.AggregationCheckpoints;
 import org.rhq.server.metrics.aggregation.AggregationManager;
+import org.rhq.server.metrics.aggregation.DistributedAggregation;
+import org.rhq.server.metrics.aggregation.GroupRollups;
+import org.rhq.server.metrics.aggregation.OOBScorer;
 import org.rhq.server.metrics.domain.AggregateNumericMetric;
 import org.rhq.server.metrics.domain.AggregateNumericMetricMapper;
 import org.rhq.server.metrics.domain.Bucket;
+import org.rhq.server.metrics.domain.GroupAggregateNumericMetric;
 import org.rhq.server.metrics.domain.IndexBucket;
 import org.rhq.server.metrics.domain.RawNumericMetric;
 import org.rhq.server.metrics.invalid.InvalidMetricsManager;
@@ -78,6 +90,12 @@ public class MetricsServer {
     private InvalidMetricsManager invalidMetricsManager;
 
     private AggregationManager aggregationManager;
+
+    private DistributedAggregation distributedAggregation;
+
+    private GroupRollups groupRollups;
+
+    private boolean groupRollupsEnabled = Boolean.valueOf(System.getProperty("rhq.metrics.group-rollups", "false"));
     
     private Days rawDataAgeLimit = Days.days(Math.min(3, Integer.parseInt(
         System.getProperty("rhq.metrics.data.age-limit", "3"))));
@@ -110,8 +128,20 @@ public class MetricsServer {
         configuration.setIndexPartitions(indexPartitions);
     }
 
+    /**
+     * Has to be called before {@link #init()}.
+     */
+    public void setGroupRollupsEnabled(boolean groupRollupsEnabled) {
+        this.groupRollupsEnabled = groupRollupsEnabled;
+    }
+
     public void init() {
         aggregationManager = new AggregationManager(dao, dateTimeService, configuration);
+        distributedAggregation = new DistributedAggregation(dao, aggregationManager, dateTimeService, configuration);
+        if (groupRollupsEnabled) {
+            groupRollups = new GroupRollups(dao, dateTimeService, configuration);
+            aggregationManager.setGroupRollups(groupRollups);
+        }
         invalidMetricsManager = new InvalidMetricsManager(dateTimeService, dao);
     }
 
@@ -126,7 +156,22 @@ public class MetricsServer {
         return aggregationManager;
     }
 
+    public DistributedAggregation getDistributedAggregation() {
+        return distributedAggregation;
+    }
+
+    /**
+     * @return The group rollups, or null if they are disabled
+     */
+    public GroupRollups getGroupRollups() {
+        return groupRollups;
+    }
+
     public void shutdown() {
+        distributedAggregation.shutdown();
+        if (groupRollups != null) {
+            groupRollups.shutdown();
+        }
         aggregationManager.shutdown();
         invalidMetricsManager.shutdown();
     }
@@ -188,6 +233,157 @@ public class MetricsServer {
         return createComposites(metrics, beginTime, endTime, numberOfBuckets);
     }
 
+    /**
+     * Same as {@link #findDataForGroup(List, long, long, int)}, but the pre-computed rollup series of the group is read
+     * instead of the data of every member, provided that group rollups are enabled and the series has been computed
+     * for the given schedules. Each time slice of the series counts once when it is averaged into a chart bucket,
+     * regardless of the number of members that reported data.
+     * <p/>
+     * Within the raw retention period the 1 hour series is used when the chart buckets are at least an hour wide, see
+     * {@link #findRecentGroupData(int, int, List, long, long)}.
+     *
+     * @param groupId The compatible group id
+     * @param definitionId The measurement definition of the schedules
+     * @param scheduleIds The schedules of the definition for the members of the group
+     */
+    public List<MeasurementDataNumericHighLowComposite> findDataForGroup(int groupId, int definitionId,
+        List<Integer> scheduleIds, long beginTime, long endTime, int numberOfBuckets) {
+        DateTime begin = new DateTime(beginTime);
+        if (dateTimeService.isInRawDataRange(begin)) {
+            // the hourly series only loses detail for buckets narrower than an hour
+            long hour = configuration.getRawTimeSliceDuration().getMillis();
+            if (numberOfBuckets > 0 && (endTime - beginTime) / numberOfBuckets >= hour
+                && isGroupRollupAvailable(groupId, definitionId, scheduleIds)) {
+                RecentGroupData recentData = findRecentGroupData(groupId, definitionId, scheduleIds, beginTime,
+                    endTime);
+                Buckets buckets = new Buckets(beginTime, endTime, numberOfBuckets);
+                for (GroupAggregateNumericMetric metric : recentData.rollups) {
+                    buckets.insert(metric.getTimestamp(), metric.getAvg(), metric.getMin(), metric.getMax());
+                }
+                for (RawNumericMetric metric : recentData.raw) {
+                    buckets.insert(metric.getTimestamp(), metric.getValue(), metric.getValue(), metric.getValue());
+                }
+                return createComposites(buckets);
+            }
+        } else if (isGroupRollupAvailable(groupId, definitionId, scheduleIds)) {
+            List<GroupAggregateNumericMetric> metrics = dao.findGroupAggregateMetrics(groupId, definitionId,
+                getBucket(begin), beginTime, endTime);
+            Buckets buckets = new Buckets(beginTime, endTime, numberOfBuckets);
+            for (GroupAggregateNumericMetric metric : metrics) {
+                buckets.insert(metric.getTimestamp(), metric.getAvg(), metric.getMin(), metric.getMax());
+            }
+            return createComposites(buckets);
+        }
+        return findDataForGroup(scheduleIds, beginTime, endTime, numberOfBuckets);
+    }
+
+    /**
+     * Same as {@link #getSummaryAggregate(List, long, long)}, but reads the pre-computed rollup series of the group
+     * when it is available, see {@link #findDataForGroup(int, int, List, long, long, int)}.
+     */
+    public AggregateNumericMetric getSummaryAggregate(int groupId, int definitionId, List<Integer> scheduleIds,
+        long beginTime, long endTime) {
+        DateTime begin = new DateTime(beginTime);
+        if (dateTimeService.isInRawDataRange(begin)) {
+            if (isGroupRollupAvailable(groupId, definitionId, scheduleIds)) {
+                RecentGroupData recentData = findRecentGroupData(groupId, definitionId, scheduleIds, beginTime,
+                    endTime);
+                return calculateGroupAggregate(recentData.rollups, recentData.raw, Bucket.ONE_HOUR, beginTime);
+            }
+        } else if (isGroupRollupAvailable(groupId, definitionId, scheduleIds)) {
+            Bucket bucket = getBucket(begin);
+            List<GroupAggregateNumericMetric> metrics = dao.findGroupAggregateMetrics(groupId, definitionId, bucket,
+                beginTime, endTime);
+            return calculateGroupAggregate(metrics, Collections.<RawNumericMetric>emptyList(), bucket, beginTime);
+        }
+        return getSummaryAggregate(scheduleIds, beginTime, endTime);
+    }
+
+    private boolean isGroupRollupAvailable(int groupId, int definitionId, List<Integer> scheduleIds) {
+        return groupRollups != null && !scheduleIds.isEmpty() &&
+            groupRollups.isAvailable(groupId, definitionId, scheduleIds);
+    }
+
+    private static class RecentGroupData {
+        final List<GroupAggregateNumericMetric> rollups;
+        final List<RawNumericMetric> raw = new ArrayList<RawNumericMetric>();
+
+        RecentGroupData(List<GroupAggregateNumericMetric> rollups) {
+            this.rollups = rollups;
+        }
+    }
+
+    /**
+     * Reads the group data of a range within the raw retention period. The hours the range covers entirely are read
+     * from the 1 hour rollup series of the group. The partial hours at the edges of the range, and the hours after the
+     * last time slice of the series, which aggregation has not reached yet, are read from the raw data of the members.
+     */
+    private RecentGroupData findRecentGroupData(int groupId, int definitionId, List<Integer> scheduleIds,
+        long beginTime, long endTime) {
+        long hour = configuration.getRawTimeSliceDuration().getMillis();
+        long firstHour = dateTimeService.get1HourTimeSlice(new DateTime(beginTime + hour - 1)).getMillis();
+        long hoursEnd = dateTimeService.get1HourTimeSlice(new DateTime(endTime + 1)).getMillis();
+
+        if (firstHour >= hoursEnd) {
+            RecentGroupData data = new RecentGroupData(Collections.<GroupAggregateNumericMetric>emptyList());
+            addRawMetrics(data.raw, scheduleIds, beginTime, endTime);
+            return data;
+        }
+
+        RecentGroupData data = new RecentGroupData(dao.findGroupAggregateMetrics(groupId, definitionId,
+            Bucket.ONE_HOUR, firstHour, hoursEnd));
+        long rollupsEnd = data.rollups.isEmpty() ? firstHour :
+            data.rollups.get(data.rollups.size() - 1).getTimestamp() + hour;
+        if (beginTime < firstHour) {
+            addRawMetrics(data.raw, scheduleIds, beginTime, firstHour - 1);
+        }
+        if (rollupsEnd <= endTime) {
+            addRawMetrics(data.raw, scheduleIds, rollupsEnd, endTime);
+        }
+        return data;
+    }
+
+    private void addRawMetrics(List<RawNumericMetric> metrics, List<Integer> scheduleIds, long beginTime,
+        long endTime) {
+        for (RawNumericMetric metric : dao.findRawMetrics(scheduleIds, beginTime, endTime)) {
+            metrics.add(metric);
+        }
+    }
+
+    /**
+     * Weighting the rollups by their number of members yields the mean of the member averages. Raw values, which are
+     * only read for the edges of recent ranges, count once each.
+     */
+    private AggregateNumericMetric calculateGroupAggregate(List<GroupAggregateNumericMetric> rollups,
+        List<RawNumericMetric> raw, Bucket bucket, long beginTime) {
+        double min = Double.NaN;
+        double max = Double.NaN;
+        double sum = 0;
+        int count = 0;
+        for (GroupAggregateNumericMetric metric : rollups) {
+            if (count == 0 || metric.getMin() < min) {
+                min = metric.getMin();
+            }
+            if (count == 0 || metric.getMax() > max) {
+                max = metric.getMax();
+            }
+            sum += metric.getAvg() * metric.getMembers();
+            count += metric.getMembers();
+        }
+        for (RawNumericMetric metric : raw) {
+            if (count == 0 || metric.getValue() < min) {
+                min = metric.getValue();
+            }
+            if (count == 0 || metric.getValue() > max) {
+                max = metric.getValue();
+            }
+            sum += metric.getValue();
+            ++count;
+        }
+        double avg = count == 0 ? 0 : sum / count;
+        return new AggregateNumericMetric(0, bucket, avg, min, max, beginTime);
+    }
+
     public AggregateNumericMetric getSummaryAggregate(int scheduleId, long beginTime, long endTime) {
         Stopwatch stopwatch = new Stopwatch().start();
         try {
@@ -336,6 +532,16 @@ public class MetricsServer {
 
     }
 
+    private List<MeasurementDataNumericHighLowComposite> createComposites(Buckets buckets) {
+        List<MeasurementDataNumericHighLowComposite> data = new ArrayList<MeasurementDataNumericHighLowComposite>();
+        for (int i = 0; i < buckets.getNumDataPoints(); ++i) {
+            Buckets.Bucket bucket = buckets.get(i);
+            data.add(new MeasurementDataNumericHighLowComposite(bucket.getStartTime(), bucket.getAvg(),
+                bucket.getMax(), bucket.getMin()));
+        }
+        return data;
+    }
+
     public void addNumericData(final Set<MeasurementDataNumeric> dataSet, final RawDataInsertedCallback callback) {
         if (log.isDebugEnabled()) {
             log.debug("Inserting " + dataSet.size() + " raw metrics");
@@ -343,45 +549,215 @@ public class MetricsServer {
         final Stopwatch stopwatch = new Stopwatch().start();
         final AtomicInteger remainingInserts = new AtomicInteger(dataSet.size());
 
-        for (final MeasurementDataNumeric data : dataSet) {
-            DateTime collectionTimeSlice = dateTimeService.getTimeSlice(new DateTime(data.getTimestamp()),
-                configuration.getRawTimeSliceDuration());
-            Days days = Days.daysBetween(collectionTimeSlice, dateTimeService.now());
+        if (configuration.getRawInsertBatchSize() > 1) {
+            addNumericDataInBatches(dataSet, callback, stopwatch, remainingInserts);
+            return;
+        }
 
-            if (days.isGreaterThan(rawDataAgeLimit)) {
-                log.info(data + " is older than the raw data age limit of " + rawDataAgeLimit.getDays() +
-                    " days. It will not be stored.");
-            } else {
+        for (final MeasurementDataNumeric data : dataSet) {
+            DateTime collectionTimeSlice = getRawTimeSlice(data);
+            if (collectionTimeSlice != null) {
                 StorageResultSetFuture rawFuture = dao.insertRawData(data);
                 StorageResultSetFuture indexFuture = dao.updateIndex(IndexBucket.RAW, collectionTimeSlice.getMillis(),
                     data.getScheduleId());
-                ListenableFuture<List<ResultSet>> insertsFuture = Futures.successfulAsList(rawFuture, indexFuture);
-                Futures.addCallback(insertsFuture, new FutureCallback<List<ResultSet>>() {
-                    @Override
-                    public void onSuccess(List<ResultSet> result) {
-                        callback.onSuccess(data);
-                        if (remainingInserts.decrementAndGet() == 0) {
-                            stopwatch.stop();
-                            if (log.isDebugEnabled()) {
-                                log.debug("Finished inserting " + dataSet.size() + " raw metrics in " +
-                                    stopwatch.elapsed(TimeUnit.MILLISECONDS) + " ms");
-                            }
-                            callback.onFinish();
-                        }
+                List<StorageResultSetFuture> futures = new ArrayList<StorageResultSetFuture>(3);
+                futures.add(rawFuture);
+                futures.add(indexFuture);
+                if (aggregationManager.getCheckpoints() != null) {
+                    StorageResultSetFuture lateIndexFuture = aggregationManager.getCheckpoints().indexUpdated(
+                        IndexBucket.RAW, collectionTimeSlice.getMillis(), data.getScheduleId());
+                    if (lateIndexFuture != null) {
+                        futures.add(lateIndexFuture);
                     }
+                }
+                ListenableFuture<List<ResultSet>> insertsFuture = Futures.successfulAsList(futures);
+                Futures.addCallback(insertsFuture, new RawInsertsCallback(Collections.singletonList(data),
+                    dataSet.size(), callback, stopwatch, remainingInserts), tasks);
+            }
+        }
+    }
 
-                    @Override
-                    public void onFailure(Throwable t) {
-                        if (log.isDebugEnabled()) {
-                            log.debug("An error occurred while inserting raw data", ThrowableUtil.getRootCause(t));
-                        } else {
-                            log.warn("An error occurred while inserting raw data: " + ThrowableUtil.getRootMessage(t));
-                        }
-                        callback.onFailure(t);
+    /**
+     * Writes the raw data of each schedule with unlogged batches of up to
+     * {@link MetricsConfiguration#getRawInsertBatchSize()} inserts, and adds each schedule to the raw index once per
+     * time slice rather than once per value, with one batch per index partition. The callback is notified exactly as
+     * with one insert per value: for every value once its batch and index update have completed.
+     */
+    private void addNumericDataInBatches(Set<MeasurementDataNumeric> dataSet, RawDataInsertedCallback callback,
+        Stopwatch stopwatch, AtomicInteger remainingInserts) {
+        int batchSize = configuration.getRawInsertBatchSize();
+        int indexPartitions = configuration.getIndexPartitions();
+        Map<Integer, List<MeasurementDataNumeric>> dataBySchedule = new LinkedHashMap<Integer,
+            List<MeasurementDataNumeric>>();
+        // time slice -> index partition -> schedule ids
+        Map<Long, Map<Integer, Set<Integer>>> indexUpdates = new HashMap<Long, Map<Integer, Set<Integer>>>();
+
+        for (MeasurementDataNumeric data : dataSet) {
+            DateTime collectionTimeSlice = getRawTimeSlice(data);
+            if (collectionTimeSlice == null) {
+                continue;
+            }
+            List<MeasurementDataNumeric> scheduleData = dataBySchedule.get(data.getScheduleId());
+            if (scheduleData == null) {
+                scheduleData = new ArrayList<MeasurementDataNumeric>();
+                dataBySchedule.put(data.getScheduleId(), scheduleData);
+            }
+            scheduleData.add(data);
+
+            Map<Integer, Set<Integer>> partitions = indexUpdates.get(collectionTimeSlice.getMillis());
+            if (partitions == null) {
+                partitions = new HashMap<Integer, Set<Integer>>();
+                indexUpdates.put(collectionTimeSlice.getMillis(), partitions);
+            }
+            int partition = data.getScheduleId() % indexPartitions;
+            Set<Integer> scheduleIds = partitions.get(partition);
+            if (scheduleIds == null) {
+                scheduleIds = new TreeSet<Integer>();
+                partitions.put(partition, scheduleIds);
+            }
+            scheduleIds.add(data.getScheduleId());
+        }
+
+        // time slice -> schedule id -> the index update covering it
+        Map<Long, Map<Integer, StorageResultSetFuture>> indexFutures = new HashMap<Long,
+            Map<Integer, StorageResultSetFuture>>();
+        // time slice -> index partition -> the late index entry written for it, if any
+        Map<Long, Map<Integer, StorageResultSetFuture>> lateIndexFutures = new HashMap<Long,
+            Map<Integer, StorageResultSetFuture>>();
+        AggregationCheckpoints checkpoints = aggregationManager.getCheckpoints();
+        for (Map.Entry<Long, Map<Integer, Set<Integer>>> timeSlice : indexUpdates.entrySet()) {
+            Map<Integer, StorageResultSetFuture> futures = new HashMap<Integer, StorageResultSetFuture>();
+            indexFutures.put(timeSlice.getKey(), futures);
+            Map<Integer, StorageResultSetFuture> lateFutures = new HashMap<Integer, StorageResultSetFuture>();
+            lateIndexFutures.put(timeSlice.getKey(), lateFutures);
+            for (Map.Entry<Integer, Set<Integer>> partition : timeSlice.getValue().entrySet()) {
+                if (checkpoints != null) {
+                    StorageResultSetFuture lateIndexFuture = checkpoints.indexUpdated(IndexBucket.RAW,
+                        partition.getKey(), timeSlice.getKey());
+                    if (lateIndexFuture != null) {
+                        lateFutures.put(partition.getKey(), lateIndexFuture);
+                    }
+                }
+                for (List<Integer> scheduleIds : Iterables.partition(partition.getValue(), batchSize)) {
+                    StorageResultSetFuture future;
+                    if (scheduleIds.size() == 1) {
+                        future = dao.updateIndex(IndexBucket.RAW, timeSlice.getKey(), scheduleIds.get(0));
+                    } else {
+                        future = dao.updateIndex(IndexBucket.RAW, timeSlice.getKey(), partition.getKey(),
+                            scheduleIds);
                     }
-                }, tasks);
+                    for (Integer scheduleId : scheduleIds) {
+                        futures.put(scheduleId, future);
+                    }
+                }
             }
         }
+
+        for (Map.Entry<Integer, List<MeasurementDataNumeric>> entry : dataBySchedule.entrySet()) {
+            List<MeasurementDataNumeric> batchable = new ArrayList<MeasurementDataNumeric>(entry.getValue().size());
+            for (MeasurementDataNumeric data : entry.getValue()) {
+                if (data.getValue() == null || data.getValue().isNaN() || data.getValue().isInfinite()) {
+                    insertRawData(Collections.singletonList(data), dao.insertRawData(data), indexFutures,
+                        lateIndexFutures, dataSet, callback, stopwatch, remainingInserts);
+                } else {
+                    batchable.add(data);
+                }
+            }
+            for (List<MeasurementDataNumeric> batch : Lists.partition(batchable, batchSize)) {
+                StorageResultSetFuture rawFuture;
+                if (batch.size() == 1) {
+                    rawFuture = dao.insertRawData(batch.get(0));
+                } else {
+                    rawFuture = dao.insertRawData(entry.getKey(), batch);
+                }
+                insertRawData(batch, rawFuture, indexFutures, lateIndexFutures, dataSet, callback, stopwatch,
+                    remainingInserts);
+            }
+        }
+    }
+
+    private void insertRawData(List<MeasurementDataNumeric> batch, StorageResultSetFuture rawFuture,
+        Map<Long, Map<Integer, StorageResultSetFuture>> indexFutures,
+        Map<Long, Map<Integer, StorageResultSetFuture>> lateIndexFutures, Set<MeasurementDataNumeric> dataSet,
+        RawDataInsertedCallback callback, Stopwatch stopwatch, AtomicInteger remainingInserts) {
+        Set<StorageResultSetFuture> futures = new LinkedHashSet<StorageResultSetFuture>();
+        futures.add(rawFuture);
+        for (MeasurementDataNumeric data : batch) {
+            long timeSlice = dateTimeService.getTimeSlice(new DateTime(data.getTimestamp()),
+                configuration.getRawTimeSliceDuration()).getMillis();
+            futures.add(indexFutures.get(timeSlice).get(data.getScheduleId()));
+            StorageResultSetFuture lateIndexFuture = lateIndexFutures.get(timeSlice).get(
+                data.getScheduleId() % configuration.getIndexPartitions());
+            if (lateIndexFuture != null) {
+                futures.add(lateIndexFuture);
+            }
+        }
+        Futures.addCallback(Futures.successfulAsList(futures), new RawInsertsCallback(batch, dataSet.size(),
+            callback, stopwatch, remainingInserts), tasks);
+    }
+
+    /**
+     * @return The raw time slice of the data, or null if the data is older than the raw data age limit and should not
+     * be stored
+     */
+    private DateTime getRawTimeSlice(MeasurementDataNumeric data) {
+        DateTime collectionTimeSlice = dateTimeService.getTimeSlice(new DateTime(data.getTimestamp()),
+            configuration.getRawTimeSliceDuration());
+        Days days = Days.daysBetween(collectionTimeSlice, dateTimeService.now());
+
+        if (days.isGreaterThan(rawDataAgeLimit)) {
+            log.info(data + " is older than the raw data age limit of " + rawDataAgeLimit.getDays() +
+                " days. It will not be stored.");
+            return null;
+        }
+        return collectionTimeSlice;
+    }
+
+    private class RawInsertsCallback implements FutureCallback<List<ResultSet>> {
+
+        private final List<MeasurementDataNumeric> batch;
+
+        private final int total;
+
+        private final RawDataInsertedCallback callback;
+
+        private final Stopwatch stopwatch;
+
+        private final AtomicInteger remainingInserts;
+
+        public RawInsertsCallback(List<MeasurementDataNumeric> batch, int total, RawDataInsertedCallback callback,
+            Stopwatch stopwatch, AtomicInteger remainingInserts) {
+            this.batch = batch;
+            this.total = total;
+            this.callback = callback;
+            this.stopwatch = stopwatch;
+            this.remainingInserts = remainingInserts;
+        }
+
+        @Override
+        public void onSuccess(List<ResultSet> result) {
+            for (MeasurementDataNumeric data : batch) {
+                callback.onSuccess(data);
+                if (remainingInserts.decrementAndGet() == 0) {
+                    stopwatch.stop();
+                    if (log.isDebugEnabled()) {
+                        log.debug("Finished inserting " + total + " raw metrics in " +
+                            stopwatch.elapsed(TimeUnit.MILLISECONDS) + " ms");
+                    }
+                    callback.onFinish();
+                }
+            }
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+            if (log.isDebugEnabled()) {
+                log.debug("An error occurred while inserting raw data", ThrowableUtil.getRootCause(t));
+            } else {
+                log.warn("An error occurred while inserting raw data: " + ThrowableUtil.getRootMessage(t));
+            }
+            callback.onFailure(t);
+        }
     }
 
     /**
@@ -396,6 +772,17 @@ public class MetricsServer {
         return aggregationManager.run();
     }
 
+    /**
+     * Same as {@link #calculateAggregates()}, but the one hour aggregates are also scored for OOBs while they are
+     * being computed.
+     *
+     * @param oobScorer The scorer, loaded with the baselines to score against
+     * @return One hour aggregates
+     */
+    public Iterable<AggregateNumericMetric> calculateAggregates(OOBScorer oobScorer) {
+        return aggregationManager.run(oobScorer);
+    }
+
     private AggregateNumericMetric calculateAggregatedRaw(Iterable<RawNumericMetric> rawMetrics, long timestamp) {
         double min = Double.NaN;
         double max = min;
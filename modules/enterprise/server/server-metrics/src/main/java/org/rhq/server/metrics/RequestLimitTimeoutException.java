@@ -0,0 +1,37 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.server.metrics;
+
+/**
+ * Thrown when a request to the storage cluster is not admitted by the {@link AdaptiveRequestLimiter} in time.
+ */
+public class RequestLimitTimeoutException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RequestLimitTimeoutException(String message) {
+        super(message);
+    }
+
+    public RequestLimitTimeoutException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
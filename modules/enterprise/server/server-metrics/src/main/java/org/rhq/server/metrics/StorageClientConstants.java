@@ -24,18 +24,45 @@ package org.rhq.server.metrics;
  */
 public class StorageClientConstants {
 
-    public static final String REQUEST_WARMUP_PERIOD = "rhq.storage.request.limit.warmup-period";
+    public static final String REQUEST_LIMIT_INITIAL = "rhq.storage.request.limit.initial";
 
-    public static final String REQUEST_WARMUP_PERIOD_MAX_COUNTER = "rhq.storage.request.limit.max-warmup-counter";
+    public static final String REQUEST_LIMIT_MIN = "rhq.storage.request.limit.min";
+
+    public static final String REQUEST_LIMIT_MAX = "rhq.storage.request.limit.max";
+
+    public static final String REQUEST_LATENCY_TOLERANCE = "rhq.storage.request.limit.latency-tolerance";
+
+    public static final String REQUEST_LIMIT_ACQUIRE_TIMEOUT = "rhq.storage.request.limit.acquire-timeout";
 
     public static final String REQUEST_TIMEOUT_DAMPENING = "rhq.storage.request.timeout-dampening";
 
+    /**
+     * @deprecated The request limits grow as the storage nodes keep up instead of over a warmup period, this property
+     * is ignored.
+     */
+    @Deprecated
+    public static final String REQUEST_WARMUP_PERIOD = "rhq.storage.request.limit.warmup-period";
+
+    /**
+     * @deprecated The request limits grow as the storage nodes keep up instead of over a warmup period, this property
+     * is ignored.
+     */
+    @Deprecated
+    public static final String REQUEST_WARMUP_PERIOD_MAX_COUNTER = "rhq.storage.request.limit.max-warmup-counter";
+
+    /**
+     * @deprecated Each storage node has its own request limits, which start at {@link #REQUEST_LIMIT_INITIAL} when the
+     * node comes up and no longer count once it is down, this property is ignored.
+     */
+    @Deprecated
     public static final String REQUEST_TOPOLOGY_CHANGE_DELTA = "rhq.storage.request.limit.topology-delta";
 
     public static final String LOAD_BALANCING = "rhq.storage.client.load-balancing";
 
     public static final String DATA_CENTER = "rhq.storage.dc";
 
+    public static final String TOKEN_AWARE = "rhq.storage.client.token-aware";
+
     private StorageClientConstants() {
     }
 
@@ -19,29 +19,39 @@
 
 package org.rhq.server.metrics;
 
-import static org.rhq.server.metrics.StorageClientConstants.REQUEST_WARMUP_PERIOD;
-import static org.rhq.server.metrics.StorageClientConstants.REQUEST_WARMUP_PERIOD_MAX_COUNTER;
+import static org.rhq.server.metrics.StorageClientConstants.REQUEST_LATENCY_TOLERANCE;
+import static org.rhq.server.metrics.StorageClientConstants.REQUEST_LIMIT_ACQUIRE_TIMEOUT;
+import static org.rhq.server.metrics.StorageClientConstants.REQUEST_LIMIT_INITIAL;
+import static org.rhq.server.metrics.StorageClientConstants.REQUEST_LIMIT_MAX;
+import static org.rhq.server.metrics.StorageClientConstants.REQUEST_LIMIT_MIN;
 import static org.rhq.server.metrics.StorageClientConstants.REQUEST_TIMEOUT_DAMPENING;
 import static org.rhq.server.metrics.StorageClientConstants.REQUEST_TOPOLOGY_CHANGE_DELTA;
+import static org.rhq.server.metrics.StorageClientConstants.REQUEST_WARMUP_PERIOD;
+import static org.rhq.server.metrics.StorageClientConstants.REQUEST_WARMUP_PERIOD_MAX_COUNTER;
 
-import java.math.BigDecimal;
-import java.math.MathContext;
-import java.math.RoundingMode;
 import java.net.InetAddress;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.TimeUnit;
 
+import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.ExecutionInfo;
 import com.datastax.driver.core.Host;
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.Query;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
 import com.datastax.driver.core.exceptions.NoHostAvailableException;
 import com.datastax.driver.core.exceptions.QueryTimeoutException;
-import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -51,10 +61,6 @@ import org.apache.commons.logging.LogFactory;
  */
 public class StorageSession implements Host.StateListener {
 
-    private int warmupTimePeriod = Integer.parseInt(System.getProperty(REQUEST_WARMUP_PERIOD, "3"));
-    private int maxWarmupCounter = Integer.parseInt(System.getProperty(REQUEST_WARMUP_PERIOD_MAX_COUNTER, "10"));
-    private int previousWarmupTime = warmupTimePeriod;
-
     private final Log log = LogFactory.getLog(StorageSession.class);
 
     private Session wrappedSession;
@@ -63,22 +69,35 @@ public class StorageSession implements Host.StateListener {
 
     private boolean isClusterAvailable = false;
 
-    private RateLimiter permits = null;
-
-    private long permitsLastChanged = System.currentTimeMillis();
+    private final AdaptiveRequestLimiter readLimiter;
 
-    private long timeoutDampening = Long.parseLong(System.getProperty(REQUEST_TIMEOUT_DAMPENING, "30000"));
+    private final AdaptiveRequestLimiter writeLimiter;
 
-    private double topologyDelta = Double.parseDouble(System.getProperty(REQUEST_TOPOLOGY_CHANGE_DELTA, "30000"));
+    /** The prepared statements that are queries, as opposed to inserts, updates and deletes. */
+    private final Set<PreparedStatement> readStatements = Collections.synchronizedSet(Collections
+        .newSetFromMap(new WeakHashMap<PreparedStatement, Boolean>()));
 
     public StorageSession(Session wrappedSession) {
+        int initialLimit = Integer.parseInt(System.getProperty(REQUEST_LIMIT_INITIAL, "256"));
+        int minLimit = Integer.parseInt(System.getProperty(REQUEST_LIMIT_MIN, "16"));
+        int maxLimit = Integer.parseInt(System.getProperty(REQUEST_LIMIT_MAX, "2048"));
+        double latencyTolerance = Double.parseDouble(System.getProperty(REQUEST_LATENCY_TOLERANCE, "2.0"));
+        readLimiter = new AdaptiveRequestLimiter("read", initialLimit, minLimit, maxLimit, latencyTolerance);
+        writeLimiter = new AdaptiveRequestLimiter("write", initialLimit, minLimit, maxLimit, latencyTolerance);
+        setRequestAcquireTimeout(Long.parseLong(System.getProperty(REQUEST_LIMIT_ACQUIRE_TIMEOUT, "30000")));
+        setRequestTimeoutDampening(Long.parseLong(System.getProperty(REQUEST_TIMEOUT_DAMPENING, "1000")));
+        for (String property : new String[] { REQUEST_WARMUP_PERIOD, REQUEST_WARMUP_PERIOD_MAX_COUNTER,
+            REQUEST_TOPOLOGY_CHANGE_DELTA }) {
+            if (System.getProperty(property) != null) {
+                log.warn("The " + property + " property is no longer used, the storage client request limits adapt "
+                    + "to the storage nodes. See " + REQUEST_LIMIT_INITIAL + ", " + REQUEST_LIMIT_MIN + " and "
+                    + REQUEST_LIMIT_MAX + " instead.");
+            }
+        }
+
         this.wrappedSession = wrappedSession;
         this.wrappedSession.getCluster().register(this);
-        permits = getRateLimiter(warmupTimePeriod);
-    }
-
-    private RateLimiter getRateLimiter(int warmupTime) {
-        return RateLimiter.create(calculateRequestLimit(), warmupTime, TimeUnit.MINUTES);
+        registerUpHosts();
     }
 
     public void registerNewSession(Session newWrappedSession) {
@@ -86,6 +105,7 @@ public class StorageSession implements Host.StateListener {
 
         this.wrappedSession = newWrappedSession;
         this.wrappedSession.getCluster().register(this);
+        registerUpHosts();
 
         oldWrappedSession.getCluster().unregister(this);
 
@@ -98,42 +118,107 @@ public class StorageSession implements Host.StateListener {
         oldWrappedSession.shutdown();
     }
 
-    private double calculateRequestLimit() {
-        double rate = 0.0;
+    private void registerUpHosts() {
         for (Host host : wrappedSession.getCluster().getMetadata().getAllHosts()) {
             if (host.isUp()) {
-                rate += topologyDelta;
+                readLimiter.nodeUp(host.getAddress());
+                writeLimiter.nodeUp(host.getAddress());
             }
         }
-        return rate;
     }
 
-    private void setRequestLimit() {
-        permitsLastChanged = System.currentTimeMillis();
-        permits.setRate(calculateRequestLimit());
+    /**
+     * @return The sum of the read and write limits, i.e. the maximum number of requests that can currently be in
+     * flight
+     */
+    public double getRequestLimit() {
+        return readLimiter.getLimit() + writeLimiter.getLimit();
     }
 
-    public double getRequestLimit() {
-        return new BigDecimal(permits.getRate(), new MathContext(2, RoundingMode.HALF_UP)).doubleValue();
+    public int getReadRequestLimit() {
+        return readLimiter.getLimit();
+    }
+
+    public int getWriteRequestLimit() {
+        return writeLimiter.getLimit();
+    }
+
+    public Map<String, Integer> getReadRequestLimitsPerNode() {
+        return readLimiter.getLimitsPerNode();
+    }
+
+    public Map<String, Integer> getWriteRequestLimitsPerNode() {
+        return writeLimiter.getLimitsPerNode();
+    }
+
+    public int getReadRequestsInFlight() {
+        return readLimiter.getInFlight();
+    }
+
+    public int getWriteRequestsInFlight() {
+        return writeLimiter.getInFlight();
+    }
+
+    public long getThrottledRequests() {
+        return readLimiter.getThrottled() + writeLimiter.getThrottled();
     }
 
-    public double getTopologyDelta() {
-        return topologyDelta;
+    public long getRejectedRequests() {
+        return readLimiter.getRejected() + writeLimiter.getRejected();
     }
 
-    public synchronized void setTopologyDelta(double delta) {
-        topologyDelta = delta;
-        // On delta change, reset warmup period
-        previousWarmupTime = warmupTimePeriod;
-        setRequestLimit();
+    public int getRequestLimitInitial() {
+        return readLimiter.getInitialLimit();
     }
 
-    public long getTimeoutDampening() {
-        return timeoutDampening;
+    public void setRequestLimitInitial(int initial) {
+        readLimiter.setInitialLimit(initial);
+        writeLimiter.setInitialLimit(initial);
     }
 
-    public void setTimeoutDampening(long timeoutDampening) {
-        this.timeoutDampening = timeoutDampening;
+    public long getRequestAcquireTimeout() {
+        return readLimiter.getAcquireTimeout();
+    }
+
+    public void setRequestAcquireTimeout(long acquireTimeout) {
+        readLimiter.setAcquireTimeout(acquireTimeout);
+        writeLimiter.setAcquireTimeout(acquireTimeout);
+    }
+
+    public long getRequestTimeoutDampening() {
+        return readLimiter.getTimeoutDampening();
+    }
+
+    public void setRequestTimeoutDampening(long timeoutDampening) {
+        readLimiter.setTimeoutDampening(timeoutDampening);
+        writeLimiter.setTimeoutDampening(timeoutDampening);
+    }
+
+    public int getRequestLimitMinimum() {
+        return readLimiter.getMinLimit();
+    }
+
+    public void setRequestLimitMinimum(int minimum) {
+        readLimiter.setMinLimit(minimum);
+        writeLimiter.setMinLimit(minimum);
+    }
+
+    public int getRequestLimitMaximum() {
+        return readLimiter.getMaxLimit();
+    }
+
+    public void setRequestLimitMaximum(int maximum) {
+        readLimiter.setMaxLimit(maximum);
+        writeLimiter.setMaxLimit(maximum);
+    }
+
+    public double getRequestLatencyTolerance() {
+        return readLimiter.getLatencyTolerance();
+    }
+
+    public void setRequestLatencyTolerance(double tolerance) {
+        readLimiter.setLatencyTolerance(tolerance);
+        writeLimiter.setLatencyTolerance(tolerance);
     }
 
     public void addStorageStateListener(StorageStateListener listener) {
@@ -141,46 +226,118 @@ public class StorageSession implements Host.StateListener {
     }
 
     public ResultSet execute(String query) {
+        AdaptiveRequestLimiter.Permit permit = getLimiter(isRead(query)).acquire();
         try {
-            permits.acquire();
-            return wrappedSession.execute(query);
-        } catch (QueryTimeoutException e) {
-            handleTimeout();
-            throw e;
-        } catch (NoHostAvailableException e) {
-            handleNoHostAvailable(e);
+            ResultSet resultSet = wrappedSession.execute(query);
+            permit.success(getQueriedHost(resultSet));
+            return resultSet;
+        } catch (RuntimeException e) {
+            requestFailed(permit, e);
+            if (e instanceof NoHostAvailableException) {
+                handleNoHostAvailable((NoHostAvailableException) e);
+            }
             throw e;
         }
     }
 
     public ResultSet execute(Query query) {
+        AdaptiveRequestLimiter.Permit permit = getLimiter(isRead(query)).acquire();
         try {
-            permits.acquire();
-            return wrappedSession.execute(query);
-        } catch(QueryTimeoutException e) {
-            handleTimeout();
-            throw e;
-        } catch (NoHostAvailableException e) {
-            handleNoHostAvailable(e);
+            ResultSet resultSet = wrappedSession.execute(query);
+            permit.success(getQueriedHost(resultSet));
+            return resultSet;
+        } catch (RuntimeException e) {
+            requestFailed(permit, e);
+            if (e instanceof NoHostAvailableException) {
+                handleNoHostAvailable((NoHostAvailableException) e);
+            }
             throw e;
         }
     }
 
     public StorageResultSetFuture executeAsync(String query) {
-        permits.acquire();
-        ResultSetFuture future = wrappedSession.executeAsync(query);
-        return new StorageResultSetFuture(future, this);
+        AdaptiveRequestLimiter.Permit permit = getLimiter(isRead(query)).acquire();
+        try {
+            return track(permit, wrappedSession.executeAsync(query));
+        } catch (RuntimeException e) {
+            permit.failure();
+            throw e;
+        }
     }
 
     public StorageResultSetFuture executeAsync(Query query) {
-        permits.acquire();
-        ResultSetFuture future = wrappedSession.executeAsync(query);
-        return new StorageResultSetFuture(future, this);
+        AdaptiveRequestLimiter.Permit permit = getLimiter(isRead(query)).acquire();
+        try {
+            return track(permit, wrappedSession.executeAsync(query));
+        } catch (RuntimeException e) {
+            permit.failure();
+            throw e;
+        }
     }
 
     public PreparedStatement prepare(String query) {
-        permits.acquire();
-        return wrappedSession.prepare(query);
+        PreparedStatement statement = wrappedSession.prepare(query);
+        if (isRead(query)) {
+            readStatements.add(statement);
+        }
+        return statement;
+    }
+
+    private StorageResultSetFuture track(final AdaptiveRequestLimiter.Permit permit, ResultSetFuture future) {
+        Futures.addCallback(future, new FutureCallback<ResultSet>() {
+            @Override
+            public void onSuccess(ResultSet resultSet) {
+                permit.success(getQueriedHost(resultSet));
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                requestFailed(permit, t);
+            }
+        });
+        return new StorageResultSetFuture(future, this);
+    }
+
+    private AdaptiveRequestLimiter getLimiter(boolean read) {
+        return read ? readLimiter : writeLimiter;
+    }
+
+    private boolean isRead(Query query) {
+        if (query instanceof BoundStatement) {
+            return readStatements.contains(((BoundStatement) query).preparedStatement());
+        }
+        if (query instanceof Statement) {
+            return isRead(((Statement) query).getQueryString());
+        }
+        return false;
+    }
+
+    private boolean isRead(String query) {
+        return query != null && query.trim().regionMatches(true, 0, "SELECT", 0, 6);
+    }
+
+    private InetAddress getQueriedHost(ResultSet resultSet) {
+        ExecutionInfo executionInfo = resultSet.getExecutionInfo();
+        if (executionInfo == null || executionInfo.getQueriedHost() == null) {
+            return null;
+        }
+        return executionInfo.getQueriedHost().getAddress();
+    }
+
+    private void requestFailed(AdaptiveRequestLimiter.Permit permit, Throwable t) {
+        if (t instanceof QueryTimeoutException) {
+            permit.timeout(null);
+        } else if (t instanceof NoHostAvailableException && isClientTimeout((NoHostAvailableException) t)) {
+            InetAddress timedOutHost = null;
+            for (Map.Entry<InetAddress, String> error : ((NoHostAvailableException) t).getErrors().entrySet()) {
+                if (isTimeout(error.getValue())) {
+                    timedOutHost = error.getKey();
+                }
+            }
+            permit.timeout(timedOutHost);
+        } else {
+            permit.failure();
+        }
     }
 
     public void shutdown() {
@@ -207,7 +364,8 @@ public class StorageSession implements Host.StateListener {
 
     private void addOrUp(Host host, String msg) {
         log.info(host + msg);
-        resetRequestThroughput();
+        readLimiter.nodeUp(host.getAddress());
+        writeLimiter.nodeUp(host.getAddress());
         if (!isClusterAvailable) {
             log.debug("Storage cluster is up");
         }
@@ -224,7 +382,8 @@ public class StorageSession implements Host.StateListener {
 
     @Override
     public void onDown(Host host) {
-        resetRequestThroughput();
+        readLimiter.nodeDown(host.getAddress());
+        writeLimiter.nodeDown(host.getAddress());
         for (StorageStateListener listener : listeners) {
             listener.onStorageNodeDown(host.getAddress());
         }
@@ -233,7 +392,8 @@ public class StorageSession implements Host.StateListener {
     @Override
     public void onRemove(Host host) {
         log.debug(host + " has been removed.");
-        resetRequestThroughput();
+        readLimiter.nodeRemoved(host.getAddress());
+        writeLimiter.nodeRemoved(host.getAddress());
         for (StorageStateListener listener : listeners) {
             listener.onStorageNodeRemoved(host.getAddress());
         }
@@ -242,69 +402,29 @@ public class StorageSession implements Host.StateListener {
     void handleNoHostAvailable(NoHostAvailableException e) {
         log.warn("Encountered " + NoHostAvailableException.class.getSimpleName() + " due to following error(s): " +
                 e.getErrors());
-        if (isClientTimeout(e)) {
-            handleTimeout();
-        } else {
+        if (!isClientTimeout(e)) {
             fireClusterDownEvent(e);
         }
     }
 
-    synchronized void handleTimeout() {
-        if (System.currentTimeMillis() - permitsLastChanged > timeoutDampening) {
-            int warmupTime = previousWarmupTime;
-            if(previousWarmupTime < (maxWarmupCounter * warmupTimePeriod)) {
-                warmupTime += warmupTimePeriod;
-                previousWarmupTime = warmupTime;
-            }
-            permits = getRateLimiter(warmupTime);
-            log.warn("Reset warmup period to " + warmupTime + " minutes after a timeout");
-            permitsLastChanged = System.currentTimeMillis();
-        }
-    }
-
-    private synchronized void resetRequestThroughput() {
-        double oldRate = getRequestLimit();
-        double newRate = calculateRequestLimit();
-        setRequestLimit();
-
-        log.info("Changing request throughput from " + oldRate + " request/sec to " + newRate + " requests/sec");
-    }
-
     private boolean isClientTimeout(NoHostAvailableException e) {
         for (InetAddress address : e.getErrors().keySet()) {
-            String error = e.getErrors().get(address);
-            if (error != null && (error.contains("Timeout during read") ||
-                error.contains("Timeout while trying to acquire available connection"))) {
+            if (isTimeout(e.getErrors().get(address))) {
                 return true;
             }
         }
         return false;
     }
 
+    private boolean isTimeout(String error) {
+        return error != null && (error.contains("Timeout during read") ||
+            error.contains("Timeout while trying to acquire available connection"));
+    }
+
     private void fireClusterDownEvent(NoHostAvailableException e) {
         isClusterAvailable = false;
         for (StorageStateListener listener : listeners) {
             listener.onStorageClusterDown(e);
         }
     }
-
-    public int getWarmupTimePeriod() {
-        return warmupTimePeriod;
-    }
-
-    public void setWarmupTimePeriod(int warmupTimePeriod) {
-        this.warmupTimePeriod = warmupTimePeriod;
-    }
-
-    public int getMaxWarmupCounter() {
-        return maxWarmupCounter;
-    }
-
-    public void setMaxWarmupCounter(int maxWarmupCounter) {
-        this.maxWarmupCounter = maxWarmupCounter;
-    }
-
-    public int getPreviousWarmupTime() {
-        return previousWarmupTime;
-    }
 }
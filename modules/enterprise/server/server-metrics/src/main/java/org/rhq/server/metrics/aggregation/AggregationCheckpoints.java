@@ -0,0 +1,199 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.server.metrics.aggregation;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.datastax.driver.core.ResultSet;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+
+import org.rhq.server.metrics.DateTimeService;
+import org.rhq.server.metrics.MetricsConfiguration;
+import org.rhq.server.metrics.MetricsDAO;
+import org.rhq.server.metrics.StorageResultSetFuture;
+import org.rhq.server.metrics.domain.IndexBucket;
+
+/**
+ * Aggregation checkpoints let aggregation resume where it left off instead of scanning the index for the whole raw
+ * retention period on every run. There is a checkpoint per bucket and index partition. It is the time slice before
+ * which every index entry of the partition has been aggregated, and it is advanced while aggregation progresses.
+ * <p/>
+ * Data can still arrive for a time slice before the checkpoint, e.g. raw data reported late by an agent, or a 1 hour
+ * aggregate recomputed because of such raw data. The index is updated as usual, and in addition a late index entry is
+ * recorded for the time slice. The next run aggregates the late time slices of a partition before scanning from its
+ * checkpoint, which recomputes the affected aggregates from scratch, and then deletes the late index entries.
+ * <p/>
+ * Late index entries are written from any server while aggregation runs on one of them, so they are not deleted
+ * outright. The deletion carries a write time from before the scan of the time slice started, minus the period during
+ * which a server does not write the same late index entry again, minus an allowance for clock skew. Any entry written
+ * after that is kept, and its time slice is aggregated once more by the next run.
+ */
+public class AggregationCheckpoints {
+
+    private static final Log log = LogFactory.getLog(AggregationCheckpoints.class);
+
+    /**
+     * A server writes a given late index entry at most once per period.
+     */
+    static final long LATE_INDEX_ENTRY_PERIOD = 60000;
+
+    /**
+     * The maximum expected clock difference between RHQ servers and storage nodes.
+     */
+    static final long CLOCK_SKEW_ALLOWANCE = 60000;
+
+    private MetricsDAO dao;
+
+    private DateTimeService dateTimeService;
+
+    private MetricsConfiguration configuration;
+
+    private ConcurrentMap<String, Long> lateIndexEntryWriteTimes = new ConcurrentHashMap<String, Long>();
+
+    public AggregationCheckpoints(MetricsDAO dao, DateTimeService dateTimeService,
+        MetricsConfiguration configuration) {
+        this.dao = dao;
+        this.dateTimeService = dateTimeService;
+        this.configuration = configuration;
+    }
+
+    /**
+     * @see #indexUpdated(IndexBucket, int, long)
+     */
+    public StorageResultSetFuture indexUpdated(IndexBucket bucket, long timeSlice, int scheduleId) {
+        return indexUpdated(bucket, scheduleId % configuration.getIndexPartitions(), timeSlice);
+    }
+
+    /**
+     * This should be called whenever the index is updated. A late index entry is written if aggregation may already
+     * have gone past the time slice. Since time slices are only aggregated once they have ended, that is the case if
+     * the time slice has ended, give or take the clock skew between servers.
+     *
+     * @return The write of the late index entry, or null if none was needed
+     */
+    public StorageResultSetFuture indexUpdated(IndexBucket bucket, int partition, long timeSlice) {
+        long now = dateTimeService.nowInMillis();
+        if (timeSlice + getTimeSliceDuration(bucket).getMillis() > now + CLOCK_SKEW_ALLOWANCE) {
+            return null;
+        }
+
+        final String key = bucket + ":" + partition + ":" + timeSlice;
+        long currentTime = System.currentTimeMillis();
+        Long lastWriteTime = lateIndexEntryWriteTimes.get(key);
+        if (lastWriteTime != null && currentTime - lastWriteTime < LATE_INDEX_ENTRY_PERIOD) {
+            return null;
+        }
+        lateIndexEntryWriteTimes.put(key, currentTime);
+        if (lateIndexEntryWriteTimes.size() > 1000) {
+            purgeLateIndexEntryWriteTimes(currentTime);
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Adding late index entry {bucket: " + bucket + ", partition: " + partition + ", time: " +
+                new DateTime(timeSlice) + "}");
+        }
+        StorageResultSetFuture future = dao.insertLateIndexEntry(bucket, partition, timeSlice);
+        Futures.addCallback(future, new FutureCallback<ResultSet>() {
+            @Override
+            public void onSuccess(ResultSet result) {
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                // Allow the next index update to try again
+                lateIndexEntryWriteTimes.remove(key);
+                log.warn("Failed to add late index entry " + key + ". The late data will not be aggregated " +
+                    "unless it is reported again: " + t.getMessage());
+            }
+        });
+        return future;
+    }
+
+    private void purgeLateIndexEntryWriteTimes(long currentTime) {
+        Iterator<Long> iterator = lateIndexEntryWriteTimes.values().iterator();
+        while (iterator.hasNext()) {
+            if (currentTime - iterator.next() >= LATE_INDEX_ENTRY_PERIOD) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @return The checkpoint of each partition of the bucket that has one, keyed by partition
+     */
+    public Map<Integer, Long> getCheckpoints(IndexBucket bucket) {
+        return dao.findCheckpoints(bucket);
+    }
+
+    public List<Long> getLateTimeSlices(IndexBucket bucket, int partition) {
+        return dao.findLateIndexEntries(bucket, partition);
+    }
+
+    public StorageResultSetFuture checkpoint(final IndexBucket bucket, final int partition, final long time) {
+        if (log.isDebugEnabled()) {
+            log.debug("Advancing the checkpoint of {bucket: " + bucket + ", partition: " + partition + "} to " +
+                new DateTime(time));
+        }
+        StorageResultSetFuture future = dao.updateCheckpoint(bucket, partition, time);
+        Futures.addCallback(future, new FutureCallback<ResultSet>() {
+            @Override
+            public void onSuccess(ResultSet result) {
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                // Not a problem, the next run will just start from an older checkpoint
+                log.warn("Failed to update the checkpoint of {bucket: " + bucket + ", partition: " + partition +
+                    "} to " + new DateTime(time) + ": " + t.getMessage());
+            }
+        });
+        return future;
+    }
+
+    /**
+     * @param scanStartTime The time at which aggregation of the time slice started
+     */
+    public StorageResultSetFuture lateTimeSliceAggregated(IndexBucket bucket, int partition, long timeSlice,
+        long scanStartTime) {
+        return dao.deleteLateIndexEntry(bucket, partition, timeSlice,
+            scanStartTime - LATE_INDEX_ENTRY_PERIOD - CLOCK_SKEW_ALLOWANCE);
+    }
+
+    private Duration getTimeSliceDuration(IndexBucket bucket) {
+        switch (bucket) {
+            case RAW:
+                return configuration.getRawTimeSliceDuration();
+            case ONE_HOUR:
+                return configuration.getOneHourTimeSliceDuration();
+            default:
+                return configuration.getSixHourTimeSliceDuration();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package org.rhq.server.metrics.aggregation;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -69,6 +70,10 @@ public class AggregationManager {
 
     private ThreadPoolExecutor threadPool;
 
+    private AggregationCheckpoints checkpoints;
+
+    private GroupRollups groupRollups;
+
     public AggregationManager(MetricsDAO dao, DateTimeService dtService, MetricsConfiguration configuration) {
 
         this.dao = dao;
@@ -76,6 +81,9 @@ public class AggregationManager {
         this.configuration = configuration;
         batchSize = Integer.parseInt(System.getProperty("rhq.metrics.aggregation.batch-size", "5"));
         parallelism = Integer.parseInt(System.getProperty("rhq.metrics.aggregation.parallelism", "3"));
+        if (Boolean.valueOf(System.getProperty("rhq.metrics.aggregation.checkpoints", "true"))) {
+            checkpoints = new AggregationCheckpoints(dao, dtService, configuration);
+        }
 
         int numWorkers = Integer.parseInt(System.getProperty("rhq.metrics.aggregation.workers", "4"));
         // We have to have more than 1 thread, otherwise we can deadlock during aggregation task scheduling.
@@ -118,6 +126,25 @@ public class AggregationManager {
         threadPool.setMaximumPoolSize(numWorkers);
     }
 
+    /**
+     * @return The aggregation checkpoints, or null if aggregation scans the index for the whole raw retention period
+     * on every run
+     */
+    public AggregationCheckpoints getCheckpoints() {
+        return checkpoints;
+    }
+
+    /**
+     * @return The group rollups that are updated during aggregation, or null if group rollups are disabled
+     */
+    public GroupRollups getGroupRollups() {
+        return groupRollups;
+    }
+
+    public void setGroupRollups(GroupRollups groupRollups) {
+        this.groupRollups = groupRollups;
+    }
+
     /**
      * @return The total aggregation time in milliseconds since server start. This property is updated after each of
      * raw, one hour, and six hour data are aggregated.
@@ -127,7 +154,29 @@ public class AggregationManager {
     }
 
     public Set<AggregateNumericMetric> run() {
-        log.info("Starting metrics data aggregation");
+        return run(null);
+    }
+
+    /**
+     * @param oobScorer If not null, each batch of 1 hour data is scored for OOBs as soon as it has been computed.
+     * {@link OOBScorer#finish()} is called once raw data aggregation is done.
+     */
+    public Set<AggregateNumericMetric> run(final OOBScorer oobScorer) {
+        return run(oobScorer, null);
+    }
+
+    /**
+     * Same as {@link #run(OOBScorer)}, but only the given index partitions are aggregated. Since the index is
+     * partitioned by schedule id, a partition can be aggregated independently of the others through all buckets.
+     *
+     * @param partitions The index partitions to aggregate, or null for all of them
+     */
+    public Set<AggregateNumericMetric> run(final OOBScorer oobScorer, Collection<Integer> partitions) {
+        if (partitions == null) {
+            log.info("Starting metrics data aggregation");
+        } else {
+            log.info("Starting metrics data aggregation of index partitions " + partitions);
+        }
         Stopwatch stopwatch = Stopwatch.createStarted();
         Semaphore permits = new Semaphore(batchSize * parallelism);
 
@@ -137,7 +186,7 @@ public class AggregationManager {
         int num6Hour = 0;
         int num24Hour = 0;
         try {
-            PersistFunctions persistFunctions = new PersistFunctions(dao, dtService);
+            PersistFunctions persistFunctions = new PersistFunctions(dao, dtService, checkpoints);
             final Set<AggregateNumericMetric> oneHourData = new ConcurrentSkipListSet<AggregateNumericMetric>(
                 AGGREGATE_COMPARATOR);
             DateTime endTime = dtService.currentHour();
@@ -147,22 +196,47 @@ public class AggregationManager {
             // 7 days, then we could end up in a situation where data has expired and
             // aggregate metric get overwritten with partial data.
             DateTime start = end.minus(configuration.getRawRetention().toPeriod().minusHours(1));
+            final GroupRollups.Updates rollupUpdates = groupRollups == null ? null : groupRollups.startUpdates();
             DataAggregator rawAggregator = createRawAggregator(persistFunctions, permits);
+            rawAggregator.setPartitions(partitions);
             rawAggregator.setBatchFinishedListener(new DataAggregator.BatchFinishedListener() {
                 @Override
                 public void onFinish(List<AggregateNumericMetric> metrics) {
                     oneHourData.addAll(metrics);
+                    if (rollupUpdates != null) {
+                        rollupUpdates.onFinish(metrics);
+                    }
+                    if (oobScorer != null) {
+                        try {
+                            oobScorer.score(metrics);
+                        } catch (Exception e) {
+                            log.warn("Failed to score 1 hour data for OOBs", e);
+                        }
+                    }
                 }
             });
             num1Hour = rawAggregator.execute(start, end);
+            if (oobScorer != null) {
+                log.info("Finished scoring 1 hour data, " + oobScorer.finish() + " OOBs were persisted");
+            }
 
             end = dtService.get6HourTimeSlice(endTime);
             start = dtService.get6HourTimeSlice(endTime).minus(configuration.getRawRetention());
-            num6Hour = create1HourAggregator(persistFunctions, permits).execute(start, end);
+            DataAggregator oneHourAggregator = create1HourAggregator(persistFunctions, permits);
+            oneHourAggregator.setPartitions(partitions);
+            oneHourAggregator.setBatchFinishedListener(rollupUpdates);
+            num6Hour = oneHourAggregator.execute(start, end);
 
             end = dtService.get24HourTimeSlice(endTime);
             start = dtService.get24HourTimeSlice(endTime).minus(configuration.getRawRetention());
-            num24Hour = create6HourAggregator(persistFunctions, permits).execute(start, end);
+            DataAggregator sixHourAggregator = create6HourAggregator(persistFunctions, permits);
+            sixHourAggregator.setPartitions(partitions);
+            sixHourAggregator.setBatchFinishedListener(rollupUpdates);
+            num24Hour = sixHourAggregator.execute(start, end);
+
+            if (rollupUpdates != null) {
+                log.info("Updated " + rollupUpdates.finish() + " group rollups");
+            }
 
             return oneHourData;
         } catch (InterruptedException e) {
@@ -191,6 +265,7 @@ public class AggregationManager {
         aggregator.setPersistMetrics(persistFunctions.persist1HourMetrics());
         aggregator.setConfiguration(configuration);
         aggregator.setBatchSize(batchSize);
+        aggregator.setCheckpoints(checkpoints);
 
         return aggregator;
     }
@@ -206,6 +281,7 @@ public class AggregationManager {
         aggregator.setPersistMetrics(persistFunctions.persist6HourMetrics());
         aggregator.setConfiguration(configuration);
         aggregator.setBatchSize(batchSize);
+        aggregator.setCheckpoints(checkpoints);
 
         return aggregator;
     }
@@ -221,6 +297,7 @@ public class AggregationManager {
         aggregator.setPersistMetrics(persistFunctions.persist24HourMetrics());
         aggregator.setConfiguration(configuration);
         aggregator.setBatchSize(batchSize);
+        aggregator.setCheckpoints(checkpoints);
 
         return aggregator;
     }
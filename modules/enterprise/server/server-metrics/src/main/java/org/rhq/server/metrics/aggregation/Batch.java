@@ -28,6 +28,8 @@ public class Batch implements Iterable<IndexEntry> {
 
     private ListenableFuture<List<ResultSet>> queriesFuture;
 
+    private Integer partition;
+
     public DateTime getStartTime() {
         return startTime;
     }
@@ -68,6 +70,18 @@ public class Batch implements Iterable<IndexEntry> {
         return this;
     }
 
+    /**
+     * @return The index partition of all the entries in the batch, or null if the batch is not tracked for checkpoints
+     */
+    public Integer getPartition() {
+        return partition;
+    }
+
+    public Batch setPartition(Integer partition) {
+        this.partition = partition;
+        return this;
+    }
+
     @Override
     public Iterator<IndexEntry> iterator() {
         return indexEntries.iterator();
@@ -78,6 +92,7 @@ public class Batch implements Iterable<IndexEntry> {
         return Objects.toStringHelper(Batch.class)
             .add("startTime", startTime)
             .add("endTime", endTime)
+            .add("partition", partition)
             .add("indexEntries", indexEntries)
             .toString();
     }
@@ -0,0 +1,189 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.server.metrics.aggregation;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tracks the progress of a single {@link DataAggregator} run over the index partitions of its bucket. Each partition
+ * is scanned from its checkpoint up to the end of the run, possibly preceded by a few late time slices that lie before
+ * the checkpoint. The tracker is told when aggregation tasks are submitted and finish, and when the scan of a
+ * partition moves past a time slice. From that it works out up to which time slice every index entry of a partition
+ * has been aggregated, and reports it to the {@link Listener} as the new checkpoint of the partition.
+ * <p/>
+ * A time slice is done once it has been scanned and all of its tasks succeeded. A task that fails, or a scan that is
+ * incomplete because of a read timeout, holds back the checkpoint of the partition for the rest of the run, so that
+ * the next run picks up the time slice again.
+ */
+class CheckpointTracker {
+
+    /**
+     * Listener methods are invoked while holding the tracker's lock and should not block.
+     */
+    static interface Listener {
+
+        /**
+         * Every index entry of the partition before <code>time</code> has been aggregated.
+         */
+        void checkpoint(int partition, long time);
+
+        /**
+         * Every index entry of a late time slice, that is one which lies before the partition's checkpoint at the
+         * start of the run, has been aggregated.
+         */
+        void lateTimeSliceAggregated(int partition, long timeSlice);
+    }
+
+    private static class TimeSlice {
+        int outstandingTasks;
+        boolean scanned;
+        boolean failed;
+    }
+
+    private static class Partition {
+        long checkpoint;
+
+        // Every time slice of the scanned range before this one has been scanned
+        long scannedTo;
+
+        // Time slices of the scanned range which have tasks or failures
+        TreeMap<Long, TimeSlice> timeSlices = new TreeMap<Long, TimeSlice>();
+
+        Map<Long, TimeSlice> lateTimeSlices = new HashMap<Long, TimeSlice>();
+    }
+
+    private final Map<Integer, Partition> partitions = new HashMap<Integer, Partition>();
+
+    private final Listener listener;
+
+    CheckpointTracker(Listener listener) {
+        this.listener = listener;
+    }
+
+    synchronized void startLateScan(int partition, long timeSlice) {
+        getPartition(partition).lateTimeSlices.put(timeSlice, new TimeSlice());
+    }
+
+    synchronized void lateScanFinished(int partition, long timeSlice) {
+        TimeSlice lateTimeSlice = getPartition(partition).lateTimeSlices.get(timeSlice);
+        lateTimeSlice.scanned = true;
+        update(partition);
+    }
+
+    /**
+     * @param from The partition's checkpoint at the start of the run, which is where the scan starts
+     */
+    synchronized void startScan(int partition, long from) {
+        Partition state = getPartition(partition);
+        state.checkpoint = from;
+        state.scannedTo = from;
+    }
+
+    /**
+     * The scan of the partition has moved on to <code>time</code>. Every time slice before it has been scanned, and
+     * its tasks have been submitted.
+     */
+    synchronized void scanned(int partition, long time) {
+        Partition state = getPartition(partition);
+        if (time > state.scannedTo) {
+            state.scannedTo = time;
+            update(partition);
+        }
+    }
+
+    synchronized void scanFailed(int partition, long timeSlice) {
+        getTimeSlice(partition, timeSlice).failed = true;
+    }
+
+    synchronized void taskSubmitted(int partition, long timeSlice) {
+        getTimeSlice(partition, timeSlice).outstandingTasks++;
+    }
+
+    synchronized void taskFinished(int partition, long timeSlice, boolean succeeded) {
+        TimeSlice state = getTimeSlice(partition, timeSlice);
+        state.outstandingTasks--;
+        if (!succeeded) {
+            state.failed = true;
+        }
+        update(partition);
+    }
+
+    synchronized long getCheckpoint(int partition) {
+        return getPartition(partition).checkpoint;
+    }
+
+    private Partition getPartition(int partition) {
+        Partition state = partitions.get(partition);
+        if (state == null) {
+            state = new Partition();
+            partitions.put(partition, state);
+        }
+        return state;
+    }
+
+    private TimeSlice getTimeSlice(int partition, long timeSlice) {
+        Partition state = getPartition(partition);
+        TimeSlice lateTimeSlice = state.lateTimeSlices.get(timeSlice);
+        if (lateTimeSlice != null) {
+            return lateTimeSlice;
+        }
+        TimeSlice result = state.timeSlices.get(timeSlice);
+        if (result == null) {
+            result = new TimeSlice();
+            state.timeSlices.put(timeSlice, result);
+        }
+        return result;
+    }
+
+    private void update(int partition) {
+        Partition state = partitions.get(partition);
+
+        long checkpoint = state.scannedTo;
+        Iterator<Map.Entry<Long, TimeSlice>> iterator = state.timeSlices.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, TimeSlice> entry = iterator.next();
+            if (entry.getKey() >= state.scannedTo) {
+                break;
+            }
+            if (entry.getValue().outstandingTasks > 0 || entry.getValue().failed) {
+                checkpoint = entry.getKey();
+                break;
+            }
+            iterator.remove();
+        }
+        if (checkpoint > state.checkpoint) {
+            state.checkpoint = checkpoint;
+            listener.checkpoint(partition, checkpoint);
+        }
+
+        Iterator<Map.Entry<Long, TimeSlice>> lateIterator = state.lateTimeSlices.entrySet().iterator();
+        while (lateIterator.hasNext()) {
+            Map.Entry<Long, TimeSlice> entry = lateIterator.next();
+            TimeSlice lateTimeSlice = entry.getValue();
+            if (lateTimeSlice.scanned && lateTimeSlice.outstandingTasks == 0 && !lateTimeSlice.failed) {
+                lateIterator.remove();
+                listener.lateTimeSliceAggregated(partition, entry.getKey());
+            }
+        }
+    }
+}
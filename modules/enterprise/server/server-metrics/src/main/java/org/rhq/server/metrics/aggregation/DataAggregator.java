@@ -2,8 +2,12 @@ package org.rhq.server.metrics.aggregation;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -79,6 +83,14 @@ class DataAggregator<T extends NumericMetric> {
 
     private int batchSize;
 
+    private AggregationCheckpoints checkpoints;
+
+    private CheckpointTracker checkpointTracker;
+
+    private List<StorageResultSetFuture> checkpointWrites;
+
+    private Collection<Integer> partitions;
+
     void setDao(MetricsDAO dao) {
         this.dao = dao;
     }
@@ -124,11 +136,37 @@ class DataAggregator<T extends NumericMetric> {
         this.batchSize = batchSize;
     }
 
+    /**
+     * @param checkpoints If not null, each index partition is scanned from its checkpoint rather than from the start
+     * time passed to {@link #execute(DateTime, DateTime)}, and the checkpoints are advanced as aggregation progresses.
+     */
+    void setCheckpoints(AggregationCheckpoints checkpoints) {
+        this.checkpoints = checkpoints;
+    }
+
+    /**
+     * @param partitions The index partitions to aggregate, or null for all of them
+     */
+    void setPartitions(Collection<Integer> partitions) {
+        this.partitions = partitions;
+    }
+
+    private Collection<Integer> getPartitions() {
+        if (partitions != null) {
+            return partitions;
+        }
+        List<Integer> allPartitions = new ArrayList<Integer>(configuration.getIndexPartitions());
+        for (int partition = 0; partition < configuration.getIndexPartitions(); ++partition) {
+            allPartitions.add(partition);
+        }
+        return allPartitions;
+    }
+
     @SuppressWarnings("unchecked")
-    protected void aggregationTaskFinished(ListenableFuture<List<AggregateNumericMetric>> metricsFuture,
+    protected void aggregationTaskFinished(Batch batch, ListenableFuture<List<AggregateNumericMetric>> metricsFuture,
         ListenableFuture<List<ResultSet>> deletedIndexEntriesFuture) {
         final ListenableFuture<List<List<?>>> argsFuture = Futures.allAsList(metricsFuture, deletedIndexEntriesFuture);
-        Futures.addCallback(argsFuture, new AggregationTaskFinishedCallback<List<List<?>>>() {
+        Futures.addCallback(argsFuture, new AggregationTaskFinishedCallback<List<List<?>>>(batch) {
             @Override
             protected void onFinish(List<List<?>> args) {
                 List<AggregateNumericMetric> metrics = (List<AggregateNumericMetric>) args.get(0);
@@ -146,34 +184,20 @@ class DataAggregator<T extends NumericMetric> {
         log.info("Starting " + bucket + " data aggregation");
         Stopwatch stopwatch = Stopwatch.createStarted();
         try {
-            IndexIterator iterator = new IndexIterator(start, end, bucket, dao, configuration);
-            Batch batch = new Batch();
-            while (iterator.hasNext()) {
-                IndexEntry indexEntry = iterator.next();
-                if (batch.getStartTime() == null) {
-                    batch.setStartTime(indexEntry.getTimestamp());
-                    batch.setEndTime(new DateTime(indexEntry.getTimestamp()).plus(timeSliceDuration));
-                }
-                if (batch.getStartTime().getMillis() == indexEntry.getTimestamp()) {
-                    batch.add(indexEntry);
-                    if (batch.size() == batchSize) {
-                        submitAggregationTask(batch);
-                        batch = new Batch();
-                    }
-                } else {
-                    submitAggregationTask(batch);
-                    batch = new Batch()
-                        .setStartTime(indexEntry.getTimestamp())
-                        .setEndTime(new DateTime(indexEntry.getTimestamp()).plus(timeSliceDuration))
-                        .add(indexEntry);
+            if (checkpoints == null && partitions == null) {
+                scan(new IndexIterator(start, end, bucket, dao, configuration), null);
+            } else if (checkpoints == null) {
+                for (Integer partition : partitions) {
+                    scan(new IndexIterator(start, end, bucket, dao, configuration, partition), null);
                 }
+            } else {
+                scanFromCheckpoints(start, end);
             }
-            if (batch.size() > 0) {
-                submitAggregationTask(batch);
-            }
-            iterator = null;
             taskTracker.finishedSchedulingTasks();
             taskTracker.waitForTasksToFinish();
+            if (checkpointWrites != null) {
+                waitForCheckpointWrites();
+            }
         } catch (InterruptedException e) {
             log.warn("There was an interrupt while scheduling aggregation tasks.", e);
             taskTracker.abort("There was an interrupt while scheduling aggregation tasks.");
@@ -188,11 +212,150 @@ class DataAggregator<T extends NumericMetric> {
         return schedulesCount.get();
     }
 
+    /**
+     * Scans each partition from its checkpoint, after first scanning the late time slices of the partition that lie
+     * before the checkpoint. Time slices before the start time are no longer aggregated, as their raw data may
+     * already have expired.
+     */
+    private void scanFromCheckpoints(DateTime start, DateTime end) throws InterruptedException {
+        final long scanStartTime = System.currentTimeMillis();
+        Map<Integer, Long> partitionCheckpoints = checkpoints.getCheckpoints(bucket);
+        // Late time slices at or after the checkpoint of their partition are aggregated by the regular scan. Their
+        // late index entries are deleted once the checkpoint moves past them.
+        final Map<Integer, List<Long>> pendingLateTimeSlices = new HashMap<Integer, List<Long>>();
+        checkpointWrites = Collections.synchronizedList(new ArrayList<StorageResultSetFuture>());
+
+        checkpointTracker = new CheckpointTracker(new CheckpointTracker.Listener() {
+            @Override
+            public void checkpoint(int partition, long time) {
+                checkpointWrites.add(checkpoints.checkpoint(bucket, partition, time));
+                Iterator<Long> iterator = pendingLateTimeSlices.get(partition).iterator();
+                while (iterator.hasNext()) {
+                    long timeSlice = iterator.next();
+                    if (timeSlice < time) {
+                        checkpointWrites.add(checkpoints.lateTimeSliceAggregated(bucket, partition, timeSlice,
+                            scanStartTime));
+                        iterator.remove();
+                    }
+                }
+            }
+
+            @Override
+            public void lateTimeSliceAggregated(int partition, long timeSlice) {
+                checkpointWrites.add(checkpoints.lateTimeSliceAggregated(bucket, partition, timeSlice,
+                    scanStartTime));
+            }
+        });
+
+        for (int partition : getPartitions()) {
+            Long checkpoint = partitionCheckpoints.get(partition);
+            long from = start.getMillis();
+            if (checkpoint != null && checkpoint > from) {
+                from = Math.min(checkpoint, end.getMillis());
+            }
+
+            List<Long> pending = new ArrayList<Long>();
+            synchronized (checkpointTracker) {
+                pendingLateTimeSlices.put(partition, pending);
+            }
+            for (Long timeSlice : checkpoints.getLateTimeSlices(bucket, partition)) {
+                if (timeSlice < start.getMillis()) {
+                    checkpointWrites.add(checkpoints.lateTimeSliceAggregated(bucket, partition, timeSlice,
+                        scanStartTime));
+                } else if (timeSlice < from) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Aggregating late " + bucket + " time slice " + new DateTime(timeSlice) +
+                            " of partition " + partition);
+                    }
+                    checkpointTracker.startLateScan(partition, timeSlice);
+                    scan(new IndexIterator(new DateTime(timeSlice), new DateTime(timeSlice).plus(timeSliceDuration),
+                        bucket, dao, configuration, partition), partition);
+                    checkpointTracker.lateScanFinished(partition, timeSlice);
+                } else {
+                    synchronized (checkpointTracker) {
+                        pending.add(timeSlice);
+                    }
+                }
+            }
+
+            checkpointTracker.startScan(partition, from);
+            scan(new IndexIterator(new DateTime(from), end, bucket, dao, configuration, partition), partition);
+            checkpointTracker.scanned(partition, end.getMillis());
+        }
+    }
+
+    /**
+     * Checkpoint updates and late index entry deletions are not essential, as the next run just repeats some work if
+     * they fail. Waiting for them means that a run is complete, as far as the next one is concerned, when it returns.
+     */
+    private void waitForCheckpointWrites() throws InterruptedException {
+        List<StorageResultSetFuture> writes;
+        synchronized (checkpointWrites) {
+            writes = new ArrayList<StorageResultSetFuture>(checkpointWrites);
+        }
+        try {
+            Futures.successfulAsList(writes).get();
+        } catch (ExecutionException e) {
+            // successfulAsList does not fail, failed writes have already been logged
+        }
+    }
+
+    /**
+     * Submits aggregation tasks for the index entries returned by the iterator, in batches of entries from the same
+     * time slice.
+     *
+     * @param partition The partition to which the iterator is restricted if the scan is tracked for checkpoints,
+     * null otherwise
+     */
+    private void scan(IndexIterator iterator, Integer partition) throws InterruptedException {
+        Batch batch = new Batch().setPartition(partition);
+        while (iterator.hasNext()) {
+            IndexEntry indexEntry = iterator.next();
+            if (batch.getStartTime() == null) {
+                batch.setStartTime(indexEntry.getTimestamp());
+                batch.setEndTime(new DateTime(indexEntry.getTimestamp()).plus(timeSliceDuration));
+            }
+            if (batch.getStartTime().getMillis() == indexEntry.getTimestamp()) {
+                batch.add(indexEntry);
+                if (batch.size() == batchSize) {
+                    submitAggregationTask(batch);
+                    batch = new Batch().setPartition(partition);
+                }
+            } else {
+                submitAggregationTask(batch);
+                if (partition != null) {
+                    reportTimeouts(iterator, partition);
+                    checkpointTracker.scanned(partition, indexEntry.getTimestamp());
+                }
+                batch = new Batch()
+                    .setPartition(partition)
+                    .setStartTime(indexEntry.getTimestamp())
+                    .setEndTime(new DateTime(indexEntry.getTimestamp()).plus(timeSliceDuration))
+                    .add(indexEntry);
+            }
+        }
+        if (batch.size() > 0) {
+            submitAggregationTask(batch);
+        }
+        if (partition != null) {
+            reportTimeouts(iterator, partition);
+        }
+    }
+
+    private void reportTimeouts(IndexIterator iterator, int partition) {
+        for (Long timeSlice : iterator.drainTimedOutTimeSlices()) {
+            checkpointTracker.scanFailed(partition, timeSlice);
+        }
+    }
+
     protected void submitAggregationTask(Batch batch) throws InterruptedException {
         if (log.isDebugEnabled()) {
             log.debug("Scheduling " + bucket + " aggregation task for " + batch);
         }
         permits.acquire();
+        if (batch.getPartition() != null) {
+            checkpointTracker.taskSubmitted(batch.getPartition(), batch.getStartTime().getMillis());
+        }
         aggregationTasks.submit(new AggregationTask(batch) {
             @Override
             void run(Batch batch) {
@@ -245,7 +408,7 @@ class DataAggregator<T extends NumericMetric> {
         ListenableFuture<List<ResultSet>> deleteIndexEntriesFuture = Futures.transform(insertsFuture,
             deleteIndexEntries(batch), aggregationTasks);
 
-        aggregationTaskFinished(metricsFuture, deleteIndexEntriesFuture);
+        aggregationTaskFinished(batch, metricsFuture, deleteIndexEntriesFuture);
     }
 
     protected Function<List<ResultSet>, Iterable<List<T>>> toIterable() {
@@ -362,11 +525,19 @@ class DataAggregator<T extends NumericMetric> {
     }
 
     protected class AggregationTaskFinishedCallback<R> implements FutureCallback<R> {
+
+        private Batch batch;
+
+        public AggregationTaskFinishedCallback(Batch batch) {
+            this.batch = batch;
+        }
+
         @Override
         public void onSuccess(R args) {
             try {
                 onFinish(args);
             } finally {
+                checkpoint(true);
                 permits.release();
                 taskTracker.finishedTask();
                 if (log.isDebugEnabled()) {
@@ -379,9 +550,16 @@ class DataAggregator<T extends NumericMetric> {
         protected void onFinish(R args) {
         }
 
+        private void checkpoint(boolean succeeded) {
+            if (batch.getPartition() != null) {
+                checkpointTracker.taskFinished(batch.getPartition(), batch.getStartTime().getMillis(), succeeded);
+            }
+        }
+
         @Override
         public void onFailure(Throwable t) {
             log.warn("There was an error aggregating data", t);
+            checkpoint(false);
             permits.release();
             taskTracker.finishedTask();
             if (log.isDebugEnabled()) {
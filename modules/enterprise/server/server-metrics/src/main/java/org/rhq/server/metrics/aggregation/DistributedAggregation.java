@@ -0,0 +1,415 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.server.metrics.aggregation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.Futures;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.joda.time.DateTime;
+
+import org.rhq.server.metrics.DateTimeService;
+import org.rhq.server.metrics.MetricsConfiguration;
+import org.rhq.server.metrics.MetricsDAO;
+import org.rhq.server.metrics.StorageClientThreadFactory;
+import org.rhq.server.metrics.StorageResultSetFuture;
+import org.rhq.server.metrics.domain.AggregateNumericMetric;
+import org.rhq.server.metrics.domain.AggregationLease;
+
+/**
+ * Distributes an aggregation run across the servers of an HA deployment. The index is partitioned by schedule id, so
+ * each index partition can be aggregated through all buckets independently of the others.
+ * <p/>
+ * The server that runs the aggregation job acts as the coordinator. It assigns the index partitions round robin to
+ * the live servers, including itself, by writing a lease per partition, aggregates its own partitions, and then waits
+ * for the other servers to finish theirs. Every server polls for partitions leased to it with
+ * {@link #findLeasedPartitions(String)} and aggregates them with {@link #work(String, OOBScorer)}, renewing its leases
+ * while it is at it. When a lease expires because its server died or got disconnected, the coordinator takes over the
+ * partition and aggregates it itself.
+ * <p/>
+ * Leases are not exclusive, Cassandra 1.2 has no compare-and-set. A partition can therefore end up being aggregated
+ * twice, e.g. by a server that was only slow and the coordinator that took it over. That only costs some work, since
+ * aggregation recomputes aggregates from scratch and the index and checkpoint updates are idempotent.
+ */
+public class DistributedAggregation {
+
+    private static final Log log = LogFactory.getLog(DistributedAggregation.class);
+
+    /**
+     * The aggregation progress of a server during a run.
+     */
+    public static class Progress {
+        private int partitions;
+        private int finished;
+        private int schedules;
+
+        /**
+         * @return The number of index partitions leased to or aggregated by the server
+         */
+        public int getPartitions() {
+            return partitions;
+        }
+
+        public int getFinished() {
+            return finished;
+        }
+
+        /**
+         * @return The number of 1 hour aggregates computed for the finished partitions
+         */
+        public int getSchedules() {
+            return schedules;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Progress that = (Progress) o;
+
+            return partitions == that.partitions && finished == that.finished && schedules == that.schedules;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = partitions;
+            result = 31 * result + finished;
+            result = 31 * result + schedules;
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "{partitions: " + partitions + ", finished: " + finished + ", schedules: " + schedules + "}";
+        }
+    }
+
+    private MetricsDAO dao;
+
+    private AggregationManager aggregationManager;
+
+    private DateTimeService dateTimeService;
+
+    private MetricsConfiguration configuration;
+
+    private long leaseDuration;
+
+    private long pollInterval;
+
+    private final ReentrantLock aggregating = new ReentrantLock();
+
+    private final ScheduledExecutorService leaseRenewals;
+
+    public DistributedAggregation(MetricsDAO dao, AggregationManager aggregationManager,
+        DateTimeService dateTimeService, MetricsConfiguration configuration) {
+        this.dao = dao;
+        this.aggregationManager = aggregationManager;
+        this.dateTimeService = dateTimeService;
+        this.configuration = configuration;
+        leaseDuration = Long.parseLong(System.getProperty("rhq.metrics.aggregation.lease-duration", "60000"));
+        pollInterval = Long.parseLong(System.getProperty("rhq.metrics.aggregation.lease-poll-interval", "5000"));
+        leaseRenewals = Executors.newSingleThreadScheduledExecutor(new StorageClientThreadFactory(
+            "AggregationLeases"));
+    }
+
+    public void shutdown() {
+        leaseRenewals.shutdownNow();
+    }
+
+    public long getLeaseDuration() {
+        return leaseDuration;
+    }
+
+    public void setLeaseDuration(long leaseDuration) {
+        this.leaseDuration = leaseDuration;
+    }
+
+    public long getPollInterval() {
+        return pollInterval;
+    }
+
+    public void setPollInterval(long pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+
+    /**
+     * @return The run to which aggregation started now belongs, i.e. the start of the current hour
+     */
+    public long getCurrentRun() {
+        return dateTimeService.currentHour().getMillis();
+    }
+
+    /**
+     * Runs aggregation across the given servers and waits for it to finish.
+     *
+     * @param server The name of this server, the coordinator
+     * @param servers The names of the live servers, this server included
+     * @param oobScorer Scores the 1 hour data computed by this server, may be null
+     * @return The 1 hour aggregates computed by this server. The other servers score the 1 hour data they compute
+     * for OOBs themselves.
+     */
+    public List<AggregateNumericMetric> coordinate(String server, List<String> servers, OOBScorer oobScorer)
+        throws InterruptedException {
+        aggregating.lockInterruptibly();
+        try {
+            Map<String, List<Integer>> assignments = assign(server, servers, configuration.getIndexPartitions());
+            if (assignments.size() == 1) {
+                return new ArrayList<AggregateNumericMetric>(aggregationManager.run(oobScorer));
+            }
+
+            long run = getCurrentRun();
+            log.info("Distributing aggregation run " + new DateTime(run) + " across " + assignments.size() +
+                " servers: " + assignments);
+            try {
+                writeLeases(run, assignments);
+            } catch (ExecutionException e) {
+                log.warn("Failed to lease the index partitions to the servers, all of them will be aggregated " +
+                    "locally: " + e.getCause().getMessage());
+                return new ArrayList<AggregateNumericMetric>(aggregationManager.run(oobScorer));
+            }
+
+            List<AggregateNumericMetric> oneHourData = new ArrayList<AggregateNumericMetric>();
+            oneHourData.addAll(aggregate(run, server, assignments.get(server), oobScorer));
+
+            Map<String, Progress> progress = null;
+            while (true) {
+                Map<Integer, AggregationLease> leases = findLeases(run);
+                Map<String, Progress> currentProgress = getProgress(leases.values());
+                if (!currentProgress.equals(progress) && log.isInfoEnabled()) {
+                    log.info("Progress of aggregation run " + new DateTime(run) + ": " + currentProgress);
+                }
+                progress = currentProgress;
+
+                List<Integer> expired = new ArrayList<Integer>();
+                boolean finished = true;
+                long now = System.currentTimeMillis();
+                for (int partition = 0; partition < configuration.getIndexPartitions(); ++partition) {
+                    AggregationLease lease = leases.get(partition);
+                    if (lease == null || !lease.isFinished()) {
+                        finished = false;
+                        if (lease == null || lease.getExpires() < now) {
+                            expired.add(partition);
+                        }
+                    }
+                }
+                if (finished) {
+                    break;
+                }
+                if (expired.isEmpty()) {
+                    Thread.sleep(pollInterval);
+                } else {
+                    log.warn("The leases on index partitions " + expired + " have expired, " + server +
+                        " takes them over");
+                    try {
+                        writeLeases(run, Collections.singletonMap(server, expired));
+                    } catch (ExecutionException e) {
+                        log.warn("Failed to take over the leases, the index partitions will be aggregated anyway: " +
+                            e.getCause().getMessage());
+                    }
+                    oneHourData.addAll(aggregate(run, server, expired, oobScorer));
+                }
+            }
+            log.info("Finished aggregation run " + new DateTime(run) + ": " + progress);
+
+            return oneHourData;
+        } finally {
+            aggregating.unlock();
+        }
+    }
+
+    /**
+     * @return True if this server is currently aggregating, as the coordinator or otherwise
+     */
+    public boolean isAggregating() {
+        return aggregating.isLocked();
+    }
+
+    /**
+     * @param server The name of this server
+     * @return The unfinished index partitions of the current run that are leased to this server
+     */
+    public List<Integer> findLeasedPartitions(String server) {
+        return findLeasedPartitions(getCurrentRun(), server);
+    }
+
+    /**
+     * Aggregates the index partitions of the current run that are leased to this server. Nothing is done if this
+     * server is already aggregating, as the coordinator or otherwise.
+     *
+     * @param server The name of this server
+     * @param oobScorer Scores the 1 hour data, may be null
+     * @return The 1 hour aggregates
+     */
+    public List<AggregateNumericMetric> work(String server, OOBScorer oobScorer) {
+        if (!aggregating.tryLock()) {
+            return Collections.emptyList();
+        }
+        try {
+            long run = getCurrentRun();
+            List<Integer> partitions = findLeasedPartitions(run, server);
+            if (partitions.isEmpty()) {
+                return Collections.emptyList();
+            }
+            return aggregate(run, server, partitions, oobScorer);
+        } finally {
+            aggregating.unlock();
+        }
+    }
+
+    /**
+     * @return The progress of each server that takes part in the run, keyed by server name
+     */
+    public Map<String, Progress> getProgress(long run) {
+        return getProgress(findLeases(run).values());
+    }
+
+    /**
+     * Assigns the index partitions round robin to the servers, which are sorted by name so that the assignment does
+     * not depend on the order in which they are passed.
+     */
+    static Map<String, List<Integer>> assign(String coordinator, List<String> servers, int partitions) {
+        TreeSet<String> sortedServers = new TreeSet<String>(servers);
+        sortedServers.add(coordinator);
+        List<String> serverList = new ArrayList<String>(sortedServers);
+
+        Map<String, List<Integer>> assignments = new LinkedHashMap<String, List<Integer>>();
+        for (String server : serverList) {
+            assignments.put(server, new ArrayList<Integer>());
+        }
+        for (int partition = 0; partition < partitions; ++partition) {
+            assignments.get(serverList.get(partition % serverList.size())).add(partition);
+        }
+        return assignments;
+    }
+
+    private void writeLeases(long run, Map<String, List<Integer>> assignments) throws InterruptedException,
+        ExecutionException {
+        long expires = System.currentTimeMillis() + leaseDuration;
+        List<StorageResultSetFuture> futures = new ArrayList<StorageResultSetFuture>();
+        for (Map.Entry<String, List<Integer>> assignment : assignments.entrySet()) {
+            for (Integer partition : assignment.getValue()) {
+                futures.add(dao.insertAggregationLease(run, partition, assignment.getKey(), expires));
+            }
+        }
+        Futures.allAsList(futures).get();
+    }
+
+    private List<AggregateNumericMetric> aggregate(final long run, String server, final List<Integer> partitions,
+        OOBScorer oobScorer) {
+        if (partitions.isEmpty()) {
+            return Collections.emptyList();
+        }
+        log.info(server + " is aggregating index partitions " + partitions + " of run " + new DateTime(run));
+        Stopwatch stopwatch = Stopwatch.createStarted();
+
+        ScheduledFuture<?> renewals = leaseRenewals.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                long expires = System.currentTimeMillis() + leaseDuration;
+                for (Integer partition : partitions) {
+                    dao.renewAggregationLease(run, partition, expires);
+                }
+            }
+        }, leaseDuration / 3, leaseDuration / 3, TimeUnit.MILLISECONDS);
+        List<AggregateNumericMetric> oneHourData;
+        try {
+            oneHourData = new ArrayList<AggregateNumericMetric>(aggregationManager.run(oobScorer, partitions));
+        } finally {
+            renewals.cancel(false);
+        }
+
+        Map<Integer, Integer> schedules = new HashMap<Integer, Integer>();
+        for (AggregateNumericMetric metric : oneHourData) {
+            int partition = metric.getScheduleId() % configuration.getIndexPartitions();
+            Integer count = schedules.get(partition);
+            schedules.put(partition, count == null ? 1 : count + 1);
+        }
+        List<StorageResultSetFuture> futures = new ArrayList<StorageResultSetFuture>(partitions.size());
+        for (Integer partition : partitions) {
+            Integer count = schedules.get(partition);
+            futures.add(dao.finishAggregationLease(run, partition, server, count == null ? 0 : count));
+        }
+        try {
+            // A partition that fails to be reported as finished is taken over by the coordinator once its lease
+            // expires
+            Futures.successfulAsList(futures).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // successfulAsList does not fail
+        }
+
+        log.info(server + " finished aggregating index partitions " + partitions + " of run " + new DateTime(run) +
+            " in " + stopwatch.elapsed(TimeUnit.MILLISECONDS) + " ms");
+        return oneHourData;
+    }
+
+    private List<Integer> findLeasedPartitions(long run, String server) {
+        List<Integer> partitions = new ArrayList<Integer>();
+        for (AggregationLease lease : dao.findAggregationLeases(run)) {
+            if (!lease.isFinished() && server.equals(lease.getOwner())) {
+                partitions.add(lease.getPartition());
+            }
+        }
+        return partitions;
+    }
+
+    private Map<Integer, AggregationLease> findLeases(long run) {
+        Map<Integer, AggregationLease> leases = new HashMap<Integer, AggregationLease>();
+        for (AggregationLease lease : dao.findAggregationLeases(run)) {
+            leases.put(lease.getPartition(), lease);
+        }
+        return leases;
+    }
+
+    private Map<String, Progress> getProgress(Iterable<AggregationLease> leases) {
+        Map<String, Progress> progress = new TreeMap<String, Progress>();
+        for (AggregationLease lease : leases) {
+            Progress serverProgress = progress.get(lease.getOwner());
+            if (serverProgress == null) {
+                serverProgress = new Progress();
+                progress.put(lease.getOwner(), serverProgress);
+            }
+            serverProgress.partitions++;
+            if (lease.isFinished()) {
+                serverProgress.finished++;
+                serverProgress.schedules += lease.getSchedules();
+            }
+        }
+        return progress;
+    }
+}
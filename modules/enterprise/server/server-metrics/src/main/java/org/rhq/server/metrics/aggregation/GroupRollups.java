@@ -0,0 +1,425 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.server.metrics.aggregation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.datastax.driver.core.ResultSet;
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.Futures;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.joda.time.DateTime;
+import org.joda.time.ReadablePeriod;
+
+import org.rhq.server.metrics.ArithmeticMeanCalculator;
+import org.rhq.server.metrics.DateTimeService;
+import org.rhq.server.metrics.MetricsConfiguration;
+import org.rhq.server.metrics.MetricsDAO;
+import org.rhq.server.metrics.StorageClientThreadFactory;
+import org.rhq.server.metrics.StorageResultSetFuture;
+import org.rhq.server.metrics.domain.AggregateNumericMetric;
+import org.rhq.server.metrics.domain.AggregateNumericMetricMapper;
+import org.rhq.server.metrics.domain.Bucket;
+import org.rhq.server.metrics.domain.GroupAggregateNumericMetric;
+import org.rhq.server.metrics.domain.GroupRollup;
+
+/**
+ * Maintains pre-computed rollup series of compatible groups, one per group and measurement definition at each of the
+ * 1 hour, 6 hour, and 24 hour buckets, so that group charts read a single series instead of the data of every member.
+ * <p/>
+ * A series is registered the first time its group data is queried through {@link #isAvailable(int, int, Collection)}
+ * and is backfilled in the background from the member aggregates. Registrations are stored with the aggregate data so
+ * that every server keeps the series current, and they expire when the group data is no longer queried. While
+ * aggregating, {@link AggregationManager} collects the time slices of every registered series that got new member
+ * aggregates and recomputes them from the member aggregates once all buckets are done. When the members of a group
+ * change, the next query sees a different set of schedules than the registration and triggers another backfill; until
+ * it completes queries fall back to reading the members.
+ * <p/>
+ * With distributed aggregation each server recomputes the time slices of the members it aggregated. A time slice of
+ * a group whose members span several index partitions is computed more than once, and the last server to finish
+ * writes the complete value.
+ */
+public class GroupRollups {
+
+    private static final Log log = LogFactory.getLog(GroupRollups.class);
+
+    private static final Bucket[] BUCKETS = {Bucket.ONE_HOUR, Bucket.SIX_HOUR, Bucket.TWENTY_FOUR_HOUR};
+
+    private static class Key {
+        private final int groupId;
+        private final int definitionId;
+
+        Key(int groupId, int definitionId) {
+            this.groupId = groupId;
+            this.definitionId = definitionId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key that = (Key) o;
+
+            return groupId == that.groupId && definitionId == that.definitionId;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * groupId + definitionId;
+        }
+
+        @Override
+        public String toString() {
+            return "{groupId: " + groupId + ", definitionId: " + definitionId + "}";
+        }
+    }
+
+    private static class TimeSlice {
+        private final Key key;
+        private final Bucket bucket;
+        private final long time;
+
+        TimeSlice(Key key, Bucket bucket, long time) {
+            this.key = key;
+            this.bucket = bucket;
+            this.time = time;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            TimeSlice that = (TimeSlice) o;
+
+            return time == that.time && bucket == that.bucket && key.equals(that.key);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = key.hashCode();
+            result = 31 * result + bucket.hashCode();
+            result = 31 * result + (int) (time ^ (time >>> 32));
+            return result;
+        }
+    }
+
+    /**
+     * Collects the time slices of the registered series that get new member aggregates during an aggregation run.
+     */
+    public class Updates implements DataAggregator.BatchFinishedListener {
+
+        private final Map<Integer, List<Key>> keysBySchedule = new HashMap<Integer, List<Key>>();
+
+        private final Map<Key, Set<Integer>> members = new HashMap<Key, Set<Integer>>();
+
+        private final Set<TimeSlice> timeSlices = Collections.newSetFromMap(
+            new ConcurrentHashMap<TimeSlice, Boolean>());
+
+        private Updates(Collection<GroupRollup> rollups) {
+            for (GroupRollup rollup : rollups) {
+                Key key = new Key(rollup.getGroupId(), rollup.getDefinitionId());
+                members.put(key, rollup.getScheduleIds());
+                for (Integer scheduleId : rollup.getScheduleIds()) {
+                    List<Key> keys = keysBySchedule.get(scheduleId);
+                    if (keys == null) {
+                        keys = new ArrayList<Key>(1);
+                        keysBySchedule.put(scheduleId, keys);
+                    }
+                    keys.add(key);
+                }
+            }
+        }
+
+        @Override
+        public void onFinish(List<AggregateNumericMetric> metrics) {
+            for (AggregateNumericMetric metric : metrics) {
+                List<Key> keys = keysBySchedule.get(metric.getScheduleId());
+                if (keys != null) {
+                    for (Key key : keys) {
+                        timeSlices.add(new TimeSlice(key, metric.getBucket(), metric.getTimestamp()));
+                    }
+                }
+            }
+        }
+
+        /**
+         * Recomputes the collected time slices from the member aggregates.
+         *
+         * @return The number of rollups that have been updated
+         */
+        public int finish() throws InterruptedException {
+            int updated = 0;
+            for (TimeSlice timeSlice : timeSlices) {
+                try {
+                    List<AggregateNumericMetric> metrics = loadMembers(members.get(timeSlice.key), timeSlice.bucket,
+                        timeSlice.time, timeSlice.time + 1);
+                    GroupAggregateNumericMetric rollup = rollup(timeSlice.key.groupId, timeSlice.key.definitionId,
+                        timeSlice.bucket, timeSlice.time, metrics);
+                    if (rollup != null) {
+                        dao.insertGroupAggregate(rollup).get();
+                        ++updated;
+                    }
+                } catch (ExecutionException e) {
+                    log.warn("Failed to update the " + timeSlice.bucket + " rollup of " + timeSlice.key + " at " +
+                        new DateTime(timeSlice.time), e.getCause());
+                }
+            }
+            return updated;
+        }
+    }
+
+    private MetricsDAO dao;
+
+    private DateTimeService dateTimeService;
+
+    private MetricsConfiguration configuration;
+
+    private long reloadInterval;
+
+    private long refreshInterval;
+
+    private volatile Map<Key, GroupRollup> rollups = Collections.emptyMap();
+
+    private volatile long loadTime;
+
+    private final Set<Key> backfills = Collections.newSetFromMap(new ConcurrentHashMap<Key, Boolean>());
+
+    private final ExecutorService backfillTasks;
+
+    public GroupRollups(MetricsDAO dao, DateTimeService dateTimeService, MetricsConfiguration configuration) {
+        this.dao = dao;
+        this.dateTimeService = dateTimeService;
+        this.configuration = configuration;
+        reloadInterval = Long.parseLong(System.getProperty("rhq.metrics.group-rollups.reload-interval", "60000"));
+        refreshInterval = TimeUnit.DAYS.toMillis(1);
+        backfillTasks = Executors.newSingleThreadExecutor(new StorageClientThreadFactory("GroupRollupBackfills"));
+    }
+
+    public void shutdown() {
+        backfillTasks.shutdownNow();
+    }
+
+    /**
+     * @param reloadInterval How long in milliseconds the registrations are cached for queries
+     */
+    public void setReloadInterval(long reloadInterval) {
+        this.reloadInterval = reloadInterval;
+    }
+
+    /**
+     * Determines whether the rollup series of the group can be queried instead of the member data. If the series is
+     * not registered yet or was computed for different members, a backfill is scheduled and false is returned.
+     *
+     * @param groupId The compatible group id
+     * @param definitionId The measurement definition id
+     * @param scheduleIds The schedules of the definition for the current members of the group
+     * @return True if the series is ready and has been computed for the given schedules
+     */
+    public boolean isAvailable(int groupId, int definitionId, Collection<Integer> scheduleIds) {
+        Key key = new Key(groupId, definitionId);
+        Set<Integer> members = new HashSet<Integer>(scheduleIds);
+        GroupRollup rollup = getRollups().get(key);
+
+        if (rollup != null && rollup.isReady() && rollup.getScheduleIds().equals(members)) {
+            if (System.currentTimeMillis() - rollup.getUpdated() > refreshInterval) {
+                // Keep the registration from expiring while the group data is being queried
+                dao.insertGroupRollup(groupId, definitionId, members, true);
+                updateRollup(new GroupRollup(groupId, definitionId, members, true, System.currentTimeMillis()));
+            }
+            return true;
+        }
+        scheduleBackfill(key, members);
+        return false;
+    }
+
+    /**
+     * @return The rollup updates for an aggregation run, or null if there are no registered series
+     */
+    public Updates startUpdates() {
+        try {
+            Map<Key, GroupRollup> rollups = loadRollups();
+            if (rollups.isEmpty()) {
+                return null;
+            }
+            return new Updates(rollups.values());
+        } catch (Exception e) {
+            log.warn("Failed to load the group rollups. They will not be updated during this aggregation run.", e);
+            return null;
+        }
+    }
+
+    private Map<Key, GroupRollup> getRollups() {
+        if (System.currentTimeMillis() - loadTime > reloadInterval) {
+            try {
+                loadRollups();
+            } catch (Exception e) {
+                log.warn("Failed to load the group rollups", e);
+                loadTime = System.currentTimeMillis();
+            }
+        }
+        return rollups;
+    }
+
+    private Map<Key, GroupRollup> loadRollups() {
+        Map<Key, GroupRollup> loaded = new HashMap<Key, GroupRollup>();
+        for (GroupRollup rollup : dao.findGroupRollups()) {
+            loaded.put(new Key(rollup.getGroupId(), rollup.getDefinitionId()), rollup);
+        }
+        rollups = loaded;
+        loadTime = System.currentTimeMillis();
+        return loaded;
+    }
+
+    private synchronized void updateRollup(GroupRollup rollup) {
+        Map<Key, GroupRollup> updated = new HashMap<Key, GroupRollup>(rollups);
+        updated.put(new Key(rollup.getGroupId(), rollup.getDefinitionId()), rollup);
+        rollups = updated;
+    }
+
+    private void scheduleBackfill(final Key key, final Set<Integer> members) {
+        if (!backfills.add(key)) {
+            return;
+        }
+        try {
+            backfillTasks.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        backfill(key, members);
+                    } catch (InterruptedException e) {
+                        log.info("The backfill of the group rollups of " + key + " has been interrupted");
+                    } catch (Exception e) {
+                        log.warn("Failed to backfill the group rollups of " + key, e);
+                    } finally {
+                        backfills.remove(key);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            backfills.remove(key);
+            throw e;
+        }
+    }
+
+    private void backfill(Key key, Set<Integer> members) throws InterruptedException, ExecutionException {
+        log.debug("Backfilling the group rollups of " + key + " for " + members.size() + " schedules");
+        Stopwatch stopwatch = Stopwatch.createStarted();
+
+        // Register the new members first so that aggregation keeps the series current while it is backfilled
+        dao.insertGroupRollup(key.groupId, key.definitionId, members, false).get();
+
+        int count = 0;
+        DateTime end = dateTimeService.currentHour();
+        for (Bucket bucket : BUCKETS) {
+            List<AggregateNumericMetric> metrics = loadMembers(members, bucket,
+                end.minus(getRetention(bucket)).getMillis(), end.getMillis());
+
+            Map<Long, List<AggregateNumericMetric>> metricsByTime = new TreeMap<Long, List<AggregateNumericMetric>>();
+            for (AggregateNumericMetric metric : metrics) {
+                List<AggregateNumericMetric> timeSlice = metricsByTime.get(metric.getTimestamp());
+                if (timeSlice == null) {
+                    timeSlice = new ArrayList<AggregateNumericMetric>();
+                    metricsByTime.put(metric.getTimestamp(), timeSlice);
+                }
+                timeSlice.add(metric);
+            }
+
+            List<StorageResultSetFuture> inserts = new ArrayList<StorageResultSetFuture>(metricsByTime.size());
+            for (Map.Entry<Long, List<AggregateNumericMetric>> entry : metricsByTime.entrySet()) {
+                inserts.add(dao.insertGroupAggregate(rollup(key.groupId, key.definitionId, bucket, entry.getKey(),
+                    entry.getValue())));
+            }
+            Futures.allAsList(inserts).get();
+            count += inserts.size();
+        }
+
+        dao.insertGroupRollup(key.groupId, key.definitionId, members, true).get();
+        updateRollup(new GroupRollup(key.groupId, key.definitionId, members, true, System.currentTimeMillis()));
+
+        log.debug("Finished backfilling " + count + " group rollups of " + key + " in " +
+            stopwatch.elapsed(TimeUnit.MILLISECONDS) + " ms");
+    }
+
+    private List<AggregateNumericMetric> loadMembers(Set<Integer> scheduleIds, Bucket bucket, long begin, long end)
+        throws InterruptedException, ExecutionException {
+        List<StorageResultSetFuture> queries = new ArrayList<StorageResultSetFuture>(scheduleIds.size());
+        for (Integer scheduleId : scheduleIds) {
+            queries.add(dao.findAggregateMetricsAsync(scheduleId, bucket, begin, end));
+        }
+        AggregateNumericMetricMapper mapper = new AggregateNumericMetricMapper();
+        List<AggregateNumericMetric> metrics = new ArrayList<AggregateNumericMetric>();
+        for (ResultSet resultSet : Futures.allAsList(queries).get()) {
+            metrics.addAll(mapper.mapAll(resultSet));
+        }
+        return metrics;
+    }
+
+    private ReadablePeriod getRetention(Bucket bucket) {
+        switch (bucket) {
+            case ONE_HOUR:
+                return configuration.getOneHourRetention();
+            case SIX_HOUR:
+                return configuration.getSixHourRetention();
+            default:
+                return configuration.getTwentyFourHourRetention();
+        }
+    }
+
+    /**
+     * @return The rollup of the member aggregates of a time slice, or null if there are none
+     */
+    static GroupAggregateNumericMetric rollup(int groupId, int definitionId, Bucket bucket, long time,
+        List<AggregateNumericMetric> metrics) {
+        if (metrics.isEmpty()) {
+            return null;
+        }
+        double min = metrics.get(0).getMin();
+        double max = metrics.get(0).getMax();
+        ArithmeticMeanCalculator mean = new ArithmeticMeanCalculator();
+        for (AggregateNumericMetric metric : metrics) {
+            if (metric.getMin() < min) {
+                min = metric.getMin();
+            }
+            if (metric.getMax() > max) {
+                max = metric.getMax();
+            }
+            mean.add(metric.getAvg());
+        }
+        return new GroupAggregateNumericMetric(groupId, definitionId, bucket, mean.getArithmeticMean(), min, max,
+            metrics.size(), time);
+    }
+}
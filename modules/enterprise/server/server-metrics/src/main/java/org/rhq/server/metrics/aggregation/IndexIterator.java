@@ -1,5 +1,6 @@
 package org.rhq.server.metrics.aggregation;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -76,10 +77,14 @@ public class IndexIterator implements Iterator<IndexEntry> {
 
     private Iterator<Row> rowIterator;
 
-    private int numPartitions;
+    private int firstPartition;
+
+    private int lastPartition;
 
     private int partition;
 
+    private List<Long> timedOutTimeSlices = new ArrayList<Long>();
+
     private int pageSize;
 
     private int lastScheduleId;
@@ -96,11 +101,27 @@ public class IndexIterator implements Iterator<IndexEntry> {
      */
     public IndexIterator(DateTime startTime, DateTime endTime, IndexBucket bucket, MetricsDAO dao,
         MetricsConfiguration configuration) {
+        this(startTime, endTime, bucket, dao, configuration, 0, configuration.getIndexPartitions() - 1);
+    }
+
+    /**
+     * Same as {@link #IndexIterator(DateTime, DateTime, IndexBucket, MetricsDAO, MetricsConfiguration)}, but only the
+     * specified partition is scanned.
+     */
+    public IndexIterator(DateTime startTime, DateTime endTime, IndexBucket bucket, MetricsDAO dao,
+        MetricsConfiguration configuration, int partition) {
+        this(startTime, endTime, bucket, dao, configuration, partition, partition);
+    }
+
+    private IndexIterator(DateTime startTime, DateTime endTime, IndexBucket bucket, MetricsDAO dao,
+        MetricsConfiguration configuration, int firstPartition, int lastPartition) {
         time = startTime;
         this.endTime = endTime;
         this.bucket = bucket;
         this.dao = dao;
-        this.numPartitions = configuration.getIndexPartitions();
+        this.firstPartition = firstPartition;
+        this.lastPartition = lastPartition;
+        this.partition = firstPartition;
         this.pageSize = configuration.getIndexPageSize();
         switch (bucket) {
             case RAW:
@@ -137,6 +158,16 @@ public class IndexIterator implements Iterator<IndexEntry> {
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * Index entries of a time slice are skipped when querying the index results in a read timeout. This returns the
+     * time slices for which that happened since the last call, so that callers can tell the scan is incomplete.
+     */
+    public List<Long> drainTimedOutTimeSlices() {
+        List<Long> timeSlices = timedOutTimeSlices;
+        timedOutTimeSlices = new ArrayList<Long>();
+        return timeSlices;
+    }
+
     private void loadPage() {
         if (rowIterator == null) {
             nextPage(findIndexEntries());
@@ -144,8 +175,8 @@ public class IndexIterator implements Iterator<IndexEntry> {
             if (rowCount < pageSize) {
                 // When we get here, it means that we have gone through all the pages in
                 // the current partition; consequently, we query the next partition.
-                ++partition;
-                nextPage(findIndexEntries());
+                nextPartition();
+                nextPage(time.isBefore(endTime) ? findIndexEntries() : EMPTY_RESULT_SET);
             } else{
                 // We query the current partition again because there could be more pages.
                 nextPage(findIndexEntriesAfterScheduleId());
@@ -161,14 +192,10 @@ public class IndexIterator implements Iterator<IndexEntry> {
     private void nextPage(ResultSet resultSet) {
         ResultSet nextResultSet = resultSet;
         while (nextResultSet.isExhausted() && time.isBefore(endTime)) {
-            if (partition < numPartitions - 1) {
-                ++partition;
-            } else {
-                partition = 0;
-                time = time.plus(duration);
+            nextPartition();
+            if (time.isBefore(endTime)) {
+                nextResultSet = findIndexEntries();
             }
-
-            nextResultSet = findIndexEntries();
         }
         if (time.isBefore(endTime)) {
             List<Row> rows = nextResultSet.all();
@@ -180,12 +207,25 @@ public class IndexIterator implements Iterator<IndexEntry> {
         }
     }
 
+    /**
+     * Moves to the next partition, wrapping around to the first partition of the next time slice after the last one.
+     */
+    private void nextPartition() {
+        if (partition < lastPartition) {
+            ++partition;
+        } else {
+            partition = firstPartition;
+            time = time.plus(duration);
+        }
+    }
+
     private ResultSet findIndexEntries() {
         try {
             return dao.findIndexEntries(bucket, partition, time.getMillis()).get();
         } catch (ReadTimeoutException e) {
             log.warn("There was a read timeout while querying the index with {bucket: " + bucket + ", partition: " +
                 partition + ", time: " + time + "}", e);
+            timedOutTimeSlices.add(time.getMillis());
             return EMPTY_RESULT_SET;
         }
     }
@@ -196,6 +236,7 @@ public class IndexIterator implements Iterator<IndexEntry> {
         } catch (ReadTimeoutException e) {
             log.warn("There was a read timeout while querying the index with {bucket: " + bucket + ", partition: " +
                 partition + ", time: " + time + ", lastScheduleId: " + lastScheduleId + "}", e);
+            timedOutTimeSlices.add(time.getMillis());
             return EMPTY_RESULT_SET;
         }
     }
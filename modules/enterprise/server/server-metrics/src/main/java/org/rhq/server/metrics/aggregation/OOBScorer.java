@@ -0,0 +1,224 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.server.metrics.aggregation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.server.metrics.domain.AggregateNumericMetric;
+
+/**
+ * Scores 1 hour aggregates against their schedule's baseline as they are produced, so that out of bounds (OOB) values
+ * are known as soon as raw data aggregation finishes rather than after a separate pass over the RDBMS. The baselines
+ * are loaded into the scorer before aggregation starts; aggregates of schedules without a baseline are ignored.
+ * <p/>
+ * Only the highest OOB factor seen for a schedule during the run is kept. Whenever a new highest factor is found it is
+ * queued, and the queue is handed to the {@link Sink} in batches of <code>batchSize</code>. A schedule can therefore
+ * be handed to the sink more than once during a run (e.g. when aggregation catches up on several hours), but never
+ * with a lower factor than before.
+ * <p/>
+ * An instance is meant to be used for a single aggregation run. Baselines must all be added before the first call to
+ * {@link #score(List)}; scoring itself is thread safe.
+ */
+public class OOBScorer {
+
+    private final Log log = LogFactory.getLog(OOBScorer.class);
+
+    /**
+     * Persists the OOBs handed over by the scorer. Invoked from aggregation threads, one batch at a time.
+     */
+    public static interface Sink {
+        void persist(List<OOB> oobs);
+    }
+
+    public static class OOB {
+        private final int scheduleId;
+        private final long timestamp;
+        private final int oobFactor;
+
+        public OOB(int scheduleId, long timestamp, int oobFactor) {
+            this.scheduleId = scheduleId;
+            this.timestamp = timestamp;
+            this.oobFactor = oobFactor;
+        }
+
+        public int getScheduleId() {
+            return scheduleId;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public int getOobFactor() {
+            return oobFactor;
+        }
+
+        @Override
+        public String toString() {
+            return "OOB[scheduleId=" + scheduleId + ", timestamp=" + timestamp + ", oobFactor=" + oobFactor + "]";
+        }
+    }
+
+    private final Map<Integer, double[]> baselines = new HashMap<Integer, double[]>();
+
+    private final Map<Integer, Integer> highestFactors = new HashMap<Integer, Integer>();
+
+    private final Sink sink;
+
+    private final int batchSize;
+
+    private List<OOB> pending;
+
+    private final AtomicInteger persisted = new AtomicInteger();
+
+    private final AtomicInteger failed = new AtomicInteger();
+
+    public OOBScorer(Sink sink, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        this.sink = sink;
+        this.batchSize = batchSize;
+        this.pending = new ArrayList<OOB>(batchSize);
+    }
+
+    public void addBaseline(int scheduleId, double baselineMin, double baselineMax) {
+        baselines.put(scheduleId, new double[] { baselineMin, baselineMax });
+    }
+
+    public int getBaselineCount() {
+        return baselines.size();
+    }
+
+    /**
+     * @return The ids of the schedules that have a baseline to score against
+     */
+    public Set<Integer> getScheduleIds() {
+        return Collections.unmodifiableSet(baselines.keySet());
+    }
+
+    /**
+     * Scores the aggregates and hands a batch to the sink if enough OOBs are queued.
+     */
+    public void score(List<AggregateNumericMetric> metrics) {
+        List<OOB> batch = null;
+        synchronized (this) {
+            for (AggregateNumericMetric metric : metrics) {
+                double[] baseline = baselines.get(metric.getScheduleId());
+                if (baseline == null) {
+                    continue;
+                }
+                Integer oobFactor = computeOOBFactor(metric.getAvg(), metric.getMin(), metric.getMax(), baseline[0],
+                    baseline[1]);
+                if (oobFactor == null) {
+                    continue;
+                }
+                Integer highest = highestFactors.get(metric.getScheduleId());
+                if (highest == null || oobFactor > highest) {
+                    highestFactors.put(metric.getScheduleId(), oobFactor);
+                    pending.add(new OOB(metric.getScheduleId(), metric.getTimestamp(), oobFactor));
+                }
+            }
+            if (pending.size() >= batchSize) {
+                batch = pending;
+                pending = new ArrayList<OOB>(batchSize);
+            }
+        }
+        if (batch != null) {
+            persist(batch);
+        }
+    }
+
+    /**
+     * Hands the remaining queued OOBs to the sink. This should be called once aggregation has finished.
+     *
+     * @return the number of OOBs handed to the sink during the run
+     */
+    public int finish() {
+        List<OOB> batch;
+        synchronized (this) {
+            batch = pending;
+            pending = new ArrayList<OOB>(batchSize);
+        }
+        if (!batch.isEmpty()) {
+            persist(batch);
+        }
+        if (failed.get() > 0) {
+            log.warn("Failed to persist " + failed.get() + " OOBs");
+        }
+        return persisted.get();
+    }
+
+    private void persist(List<OOB> batch) {
+        try {
+            sink.persist(batch);
+            persisted.addAndGet(batch.size());
+        } catch (Exception e) {
+            // Losing some OOBs for an hour is not worth failing aggregation over
+            failed.addAndGet(batch.size());
+            log.warn("Failed to persist a batch of " + batch.size() + " OOBs: " + e.getMessage());
+            if (log.isDebugEnabled()) {
+                log.debug("Failed to persist OOBs", e);
+            }
+        }
+    }
+
+    /**
+     * Computes by how far, in percent of the baseline range, the aggregate is outside of the baseline. This is the
+     * same computation that has always been done for OOBs: the aggregate's max is compared to the baseline max if its
+     * average is above the baseline, its min is compared to the baseline min otherwise, and baselines with a range of
+     * 0.1 or less are ignored.
+     *
+     * @return the OOB factor, or null if the aggregate is within its baseline
+     */
+    public static Integer computeOOBFactor(double avg, double min, double max, double baselineMin,
+        double baselineMax) {
+        double range = baselineMax - baselineMin;
+        if (range <= 0.1) {
+            return null;
+        }
+
+        Long upperDelta = null;
+        Long lowerDelta = null;
+        if (avg > baselineMax && max - baselineMax > 0) {
+            upperDelta = Math.round(((max - baselineMax) / range) * 100);
+        }
+        if (avg < baselineMax && baselineMin - min > 0) {
+            lowerDelta = Math.round(((baselineMin - min) / range) * 100);
+        }
+
+        if (upperDelta == null && lowerDelta == null) {
+            return null;
+        }
+        if (lowerDelta == null || (upperDelta != null && upperDelta > lowerDelta)) {
+            return upperDelta.intValue();
+        }
+        return lowerDelta.intValue();
+    }
+}
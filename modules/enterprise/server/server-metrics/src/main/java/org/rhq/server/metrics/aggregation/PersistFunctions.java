@@ -27,6 +27,8 @@ class PersistFunctions {
 
     private DateTimeService dateTimeService;
 
+    private AggregationCheckpoints checkpoints;
+
     private AsyncFunction<List<AggregateNumericMetric>, List<ResultSet>> persist1HourMetrics;
 
     private AsyncFunction<List<AggregateNumericMetric>, List<ResultSet>> persist6HourMetrics;
@@ -34,8 +36,16 @@ class PersistFunctions {
     private AsyncFunction<List<AggregateNumericMetric>, List<ResultSet>> persist24HourMetrics;
 
     public PersistFunctions(MetricsDAO dao, DateTimeService dateTimeService) {
+        this(dao, dateTimeService, null);
+    }
+
+    /**
+     * @param checkpoints If not null, it is notified of the index updates so that late index entries get recorded
+     */
+    public PersistFunctions(MetricsDAO dao, DateTimeService dateTimeService, AggregationCheckpoints checkpoints) {
         this.dao = dao;
         this.dateTimeService = dateTimeService;
+        this.checkpoints = checkpoints;
         initFunctions();
     }
 
@@ -48,6 +58,13 @@ class PersistFunctions {
                     DateTime timeSlice = dateTimeService.get6HourTimeSlice(metric.getTimestamp());
                     futures.add(dao.insert1HourData(metric));
                     futures.add(dao.updateIndex(IndexBucket.ONE_HOUR, timeSlice.getMillis(), metric.getScheduleId()));
+                    if (checkpoints != null) {
+                        StorageResultSetFuture lateIndexFuture = checkpoints.indexUpdated(IndexBucket.ONE_HOUR,
+                            timeSlice.getMillis(), metric.getScheduleId());
+                        if (lateIndexFuture != null) {
+                            futures.add(lateIndexFuture);
+                        }
+                    }
                 }
                 return Futures.allAsList(futures);
             }
@@ -61,6 +78,13 @@ class PersistFunctions {
                     DateTime timeSlice = dateTimeService.get24HourTimeSlice(metric.getTimestamp());
                     futures.add(dao.insert6HourData(metric));
                     futures.add(dao.updateIndex(IndexBucket.SIX_HOUR, timeSlice.getMillis(), metric.getScheduleId()));
+                    if (checkpoints != null) {
+                        StorageResultSetFuture lateIndexFuture = checkpoints.indexUpdated(IndexBucket.SIX_HOUR,
+                            timeSlice.getMillis(), metric.getScheduleId());
+                        if (lateIndexFuture != null) {
+                            futures.add(lateIndexFuture);
+                        }
+                    }
                 }
                 return Futures.allAsList(futures);
             }
@@ -0,0 +1,73 @@
+package org.rhq.server.metrics.domain;
+
+import com.google.common.base.Objects;
+
+/**
+ * The lease of an index partition for an aggregation run that is distributed across the servers. A run is identified
+ * by the hour at which it started, see {@link org.rhq.server.metrics.aggregation.DistributedAggregation}.
+ */
+public class AggregationLease {
+
+    private long run;
+
+    private int partition;
+
+    private String owner;
+
+    private long expires;
+
+    private boolean finished;
+
+    private int schedules;
+
+    public AggregationLease(long run, int partition, String owner, long expires, boolean finished, int schedules) {
+        this.run = run;
+        this.partition = partition;
+        this.owner = owner;
+        this.expires = expires;
+        this.finished = finished;
+        this.schedules = schedules;
+    }
+
+    public long getRun() {
+        return run;
+    }
+
+    public int getPartition() {
+        return partition;
+    }
+
+    /**
+     * @return The name of the server that holds the lease, or that has aggregated the partition if it is finished
+     */
+    public String getOwner() {
+        return owner;
+    }
+
+    public long getExpires() {
+        return expires;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @return The number of 1 hour aggregates computed for the partition, once it is finished
+     */
+    public int getSchedules() {
+        return schedules;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(AggregationLease.class)
+            .add("run", run)
+            .add("partition", partition)
+            .add("owner", owner)
+            .add("expires", expires)
+            .add("finished", finished)
+            .add("schedules", schedules)
+            .toString();
+    }
+}
@@ -0,0 +1,54 @@
+package org.rhq.server.metrics.domain;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.rhq.core.domain.event.EventSeverity;
+import org.rhq.core.domain.event.composite.EventComposite;
+
+/**
+ * The filters that events read from the storage cluster are matched against, with the semantics of the ones of
+ * {@link org.rhq.core.domain.criteria.EventCriteria}: the source location and the detail must contain the filter
+ * text, ignoring case. The severities can be matched against the rollups, the texts only against the events.
+ */
+public class EventFilter {
+
+    private final Set<EventSeverity> severities;
+
+    private final String source;
+
+    private final String detail;
+
+    /**
+     * @param severities The severities to match, null or empty for all of them
+     * @param source The text the source location must contain, null or blank for any
+     * @param detail The text the detail must contain, null or blank for any
+     */
+    public EventFilter(Collection<EventSeverity> severities, String source, String detail) {
+        this.severities = severities == null || severities.isEmpty() ? EnumSet.allOf(EventSeverity.class) : EnumSet
+            .copyOf(severities);
+        this.source = source == null || source.trim().length() == 0 ? null : source.trim().toLowerCase();
+        this.detail = detail == null || detail.trim().length() == 0 ? null : detail.trim().toLowerCase();
+    }
+
+    public EventFilter(EventSeverity[] severities, String source, String detail) {
+        this(severities == null ? null : Arrays.asList(severities), source, detail);
+    }
+
+    public boolean hasTextFilter() {
+        return source != null || detail != null;
+    }
+
+    public boolean matches(EventSeverity severity) {
+        return severities.contains(severity);
+    }
+
+    public boolean matches(EventComposite event) {
+        return matches(event.getSeverity())
+            && (source == null || event.getSourceLocation().toLowerCase().contains(source))
+            && (detail == null || (event.getEventDetail() != null && event.getEventDetail().toLowerCase()
+                .contains(detail)));
+    }
+}
@@ -0,0 +1,45 @@
+package org.rhq.server.metrics.domain;
+
+import com.google.common.base.Objects;
+
+import org.rhq.core.domain.event.EventSeverity;
+
+/**
+ * The number of events of one severity that a resource had during a time slot, as written by one insert. The counts
+ * of a slot are the sum of all the rollups of the slot, see {@link org.rhq.server.metrics.EventDAO}.
+ */
+public class EventRollup {
+
+    private long slot;
+
+    private EventSeverity severity;
+
+    private int count;
+
+    public EventRollup(long slot, EventSeverity severity, int count) {
+        this.slot = slot;
+        this.severity = severity;
+        this.count = count;
+    }
+
+    public long getSlot() {
+        return slot;
+    }
+
+    public EventSeverity getSeverity() {
+        return severity;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(EventRollup.class)
+            .add("slot", slot)
+            .add("severity", severity)
+            .add("count", count)
+            .toString();
+    }
+}
@@ -0,0 +1,88 @@
+package org.rhq.server.metrics.domain;
+
+import com.google.common.base.Objects;
+
+/**
+ * A pre-computed rollup of the aggregates of all members of a compatible group for one measurement definition. The
+ * min and max are those of the member aggregates and the avg is the mean of their averages, which is what is computed
+ * when the members are queried individually.
+ */
+public class GroupAggregateNumericMetric {
+
+    private int groupId;
+
+    private int definitionId;
+
+    private Bucket bucket;
+
+    private double avg;
+
+    private double min;
+
+    private double max;
+
+    private int members;
+
+    private long timestamp;
+
+    public GroupAggregateNumericMetric(int groupId, int definitionId, Bucket bucket, double avg, double min,
+        double max, int members, long timestamp) {
+        this.groupId = groupId;
+        this.definitionId = definitionId;
+        this.bucket = bucket;
+        this.avg = avg;
+        this.min = min;
+        this.max = max;
+        this.members = members;
+        this.timestamp = timestamp;
+    }
+
+    public int getGroupId() {
+        return groupId;
+    }
+
+    public int getDefinitionId() {
+        return definitionId;
+    }
+
+    public Bucket getBucket() {
+        return bucket;
+    }
+
+    public double getAvg() {
+        return avg;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * @return The number of member aggregates that have been rolled up
+     */
+    public int getMembers() {
+        return members;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(GroupAggregateNumericMetric.class)
+            .add("groupId", groupId)
+            .add("definitionId", definitionId)
+            .add("bucket", bucket)
+            .add("avg", avg)
+            .add("min", min)
+            .add("max", max)
+            .add("members", members)
+            .add("timestamp", timestamp)
+            .toString();
+    }
+}
@@ -0,0 +1,67 @@
+package org.rhq.server.metrics.domain;
+
+import java.util.Set;
+
+import com.google.common.base.Objects;
+
+/**
+ * The registration of a group rollup series, see {@link org.rhq.server.metrics.aggregation.GroupRollups}. It records
+ * the member schedules the series is computed from.
+ */
+public class GroupRollup {
+
+    private int groupId;
+
+    private int definitionId;
+
+    private Set<Integer> scheduleIds;
+
+    private boolean ready;
+
+    private long updated;
+
+    public GroupRollup(int groupId, int definitionId, Set<Integer> scheduleIds, boolean ready, long updated) {
+        this.groupId = groupId;
+        this.definitionId = definitionId;
+        this.scheduleIds = scheduleIds;
+        this.ready = ready;
+        this.updated = updated;
+    }
+
+    public int getGroupId() {
+        return groupId;
+    }
+
+    public int getDefinitionId() {
+        return definitionId;
+    }
+
+    public Set<Integer> getScheduleIds() {
+        return scheduleIds;
+    }
+
+    /**
+     * @return True once the series has been backfilled for the current members
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * @return The time at which the registration was last written
+     */
+    public long getUpdated() {
+        return updated;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(GroupRollup.class)
+            .add("groupId", groupId)
+            .add("definitionId", definitionId)
+            .add("scheduleIds", scheduleIds)
+            .add("ready", ready)
+            .add("updated", updated)
+            .toString();
+    }
+}
@@ -28,8 +28,18 @@ package org.rhq.server.metrics.domain;
 public enum MetricsTable {
 
     INDEX("metrics_idx"),
+    CHECKPOINT("metrics_checkpoint"),
+    LATE_INDEX("metrics_late_idx"),
+    AGGREGATION_LEASE("metrics_aggregation_lease"),
     RAW("raw_metrics"),
-    AGGREGATE("aggregate_metrics");
+    AGGREGATE("aggregate_metrics"),
+    GROUP_AGGREGATE("group_aggregate_metrics"),
+    GROUP_ROLLUPS("group_rollups"),
+    TRAIT_HISTORY("trait_history"),
+    AVAILABILITY_HISTORY("availability_history"),
+    EVENTS("events"),
+    EVENT_ROLLUPS("event_rollups"),
+    EVENT_IDS("event_ids");
 
     private final String tableName;
 
@@ -0,0 +1,228 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.server.metrics;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.net.InetAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class AdaptiveRequestLimiterTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private InetAddress node1;
+
+    private InetAddress node2;
+
+    private AdaptiveRequestLimiter limiter;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        node1 = InetAddress.getByAddress(new byte[] { 127, 0, 0, 1 });
+        node2 = InetAddress.getByAddress(new byte[] { 127, 0, 0, 2 });
+        limiter = new AdaptiveRequestLimiter("test", 10, 2, 20, 2.0);
+        limiter.nodeUp(node1);
+        limiter.nodeUp(node2);
+    }
+
+    @Test
+    public void limitIsTheSumOfTheNodeLimits() {
+        assertEquals(limiter.getLimit(), 20);
+        assertEquals(limiter.getLimitsPerNode().get("127.0.0.1"), Integer.valueOf(10));
+
+        limiter.nodeDown(node2);
+        assertEquals(limiter.getLimit(), 10);
+
+        limiter.nodeRemoved(node1);
+        assertEquals(limiter.getLimit(), 2, "The minimum limit applies when no node is up");
+    }
+
+    @Test
+    public void increaseAdditivelyWhenSaturated() {
+        long now = 0;
+        for (int i = 0; i < 10; i++) {
+            limiter.onSuccess(node1, 5 * MILLIS, true, now);
+        }
+        assertEquals(limiter.getLimitsPerNode().get("127.0.0.1"), Integer.valueOf(11));
+
+        for (int i = 0; i < 100; i++) {
+            limiter.onSuccess(node2, 5 * MILLIS, false, now);
+        }
+        assertEquals(limiter.getLimitsPerNode().get("127.0.0.2"), Integer.valueOf(10),
+            "The limit should not grow when it is not being used");
+    }
+
+    @Test
+    public void decreaseWhenLatencyIncreases() {
+        long now = 0;
+        for (int i = 0; i < 5; i++) {
+            limiter.onSuccess(node1, 5 * MILLIS, false, now);
+        }
+        for (int i = 0; i < 100; i++) {
+            now += MILLIS;
+            limiter.onSuccess(node1, 100 * MILLIS, true, now);
+        }
+        assertEquals(limiter.getLimitsPerNode().get("127.0.0.1"), Integer.valueOf(9),
+            "The limit should only have been decreased once during the decrease interval");
+
+        now += AdaptiveRequestLimiter.DECREASE_INTERVAL;
+        limiter.onSuccess(node1, 100 * MILLIS, true, now);
+        assertEquals(limiter.getLimitsPerNode().get("127.0.0.1"), Integer.valueOf(8));
+        assertEquals(limiter.getLimitsPerNode().get("127.0.0.2"), Integer.valueOf(10));
+    }
+
+    @Test
+    public void ignoreSmallLatencyIncreases() {
+        long now = 0;
+        limiter.onSuccess(node1, MILLIS / 10, false, now);
+        for (int i = 0; i < 100; i++) {
+            limiter.onSuccess(node1, MILLIS, false, now);
+        }
+        assertEquals(limiter.getLimitsPerNode().get("127.0.0.1"), Integer.valueOf(10));
+    }
+
+    @Test
+    public void halveOnTimeout() {
+        limiter.onTimeout(node1, 0);
+        assertEquals(limiter.getLimitsPerNode().get("127.0.0.1"), Integer.valueOf(5));
+        assertEquals(limiter.getLimitsPerNode().get("127.0.0.2"), Integer.valueOf(10));
+
+        limiter.onTimeout(null, AdaptiveRequestLimiter.DECREASE_INTERVAL);
+        assertEquals(limiter.getLimitsPerNode().get("127.0.0.1"), Integer.valueOf(2));
+        assertEquals(limiter.getLimitsPerNode().get("127.0.0.2"), Integer.valueOf(5));
+
+        limiter.onTimeout(null, 10 * AdaptiveRequestLimiter.DECREASE_INTERVAL);
+        assertEquals(limiter.getLimitsPerNode().get("127.0.0.1"), Integer.valueOf(2), "The minimum limit applies");
+        assertEquals(limiter.getTimeouts(), 3);
+    }
+
+    @Test
+    public void dampenTimeouts() {
+        limiter.setTimeoutDampening(10000);
+        limiter.onTimeout(node1, 0);
+        limiter.onTimeout(node1, 5 * AdaptiveRequestLimiter.DECREASE_INTERVAL);
+        assertEquals(limiter.getLimitsPerNode().get("127.0.0.1"), Integer.valueOf(5),
+            "The limit should only have been halved once during the dampening period");
+
+        limiter.onTimeout(node1, TimeUnit.SECONDS.toNanos(10));
+        assertEquals(limiter.getLimitsPerNode().get("127.0.0.1"), Integer.valueOf(2));
+    }
+
+    @Test
+    public void resetLimitWhenNodeComesBackUp() {
+        limiter.onTimeout(node1, 0);
+        limiter.nodeDown(node1);
+        limiter.nodeUp(node1);
+        assertEquals(limiter.getLimitsPerNode().get("127.0.0.1"), Integer.valueOf(10));
+    }
+
+    @Test
+    public void changingTheBoundsClampsTheLimits() {
+        limiter.setMaxLimit(4);
+        assertEquals(limiter.getLimit(), 8);
+        limiter.setMinLimit(6);
+        assertEquals(limiter.getMaxLimit(), 6);
+        assertEquals(limiter.getLimit(), 12);
+    }
+
+    @Test
+    public void blockWhenLimitIsReached() throws Exception {
+        limiter.nodeRemoved(node2);
+        limiter.setMaxLimit(2);
+        final AdaptiveRequestLimiter.Permit first = limiter.acquire();
+        limiter.acquire();
+        assertEquals(limiter.getInFlight(), 2);
+
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                limiter.acquire();
+                acquired.countDown();
+            }
+        };
+        thread.start();
+
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS), "The limit has been reached");
+        first.failure();
+        first.failure();
+        assertTrue(acquired.await(5, TimeUnit.SECONDS), "A permit should have been released");
+        assertEquals(limiter.getInFlight(), 2, "Completing a permit more than once must release it only once");
+        assertEquals(limiter.getThrottled(), 1);
+    }
+
+    @Test(timeOut = 10000)
+    public void failWhenNotAdmittedInTime() {
+        limiter.nodeRemoved(node2);
+        limiter.setMaxLimit(2);
+        limiter.setAcquireTimeout(50);
+        limiter.acquire();
+        limiter.acquire();
+        try {
+            limiter.acquire();
+            fail("The request should not have been admitted");
+        } catch (RequestLimitTimeoutException e) {
+            // expected
+        }
+        assertEquals(limiter.getInFlight(), 2, "The rejected request should not be in flight");
+        assertEquals(limiter.getRejected(), 1);
+    }
+
+    @Test(timeOut = 10000)
+    public void failWhenInterrupted() throws Exception {
+        limiter.nodeRemoved(node2);
+        limiter.setMaxLimit(2);
+        limiter.acquire();
+        limiter.acquire();
+
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final AtomicReference<Boolean> interrupted = new AtomicReference<Boolean>();
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    limiter.acquire();
+                } catch (Throwable t) {
+                    failure.set(t);
+                    interrupted.set(isInterrupted());
+                }
+            }
+        };
+        thread.start();
+        while (limiter.getThrottled() == 0) {
+            Thread.sleep(10);
+        }
+        thread.interrupt();
+        thread.join();
+
+        assertTrue(failure.get() instanceof RequestLimitTimeoutException, "Unexpected failure: " + failure.get());
+        assertTrue(interrupted.get(), "The interrupt status should have been restored");
+        assertEquals(limiter.getInFlight(), 2);
+    }
+}
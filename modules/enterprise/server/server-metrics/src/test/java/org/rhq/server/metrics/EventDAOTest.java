@@ -0,0 +1,176 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+
+package org.rhq.server.metrics;
+
+import static java.util.Arrays.asList;
+import static org.testng.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.cassandra.schema.Table;
+import org.rhq.core.domain.event.Event;
+import org.rhq.core.domain.event.EventSeverity;
+import org.rhq.core.domain.event.composite.EventComposite;
+import org.rhq.server.metrics.domain.EventFilter;
+import org.rhq.server.metrics.domain.EventRollup;
+
+public class EventDAOTest extends CassandraIntegrationTest {
+
+    private static final int TTL = 3600;
+
+    private static final String LOCATION = "/var/log/messages";
+
+    private EventDAO dao;
+
+    @BeforeClass
+    public void initDAO() throws Exception {
+        dao = new EventDAO(storageSession);
+    }
+
+    @BeforeMethod
+    public void resetDB() throws Exception {
+        for (Table table : Table.values()) {
+            session.execute("TRUNCATE " + table.getTableName());
+        }
+    }
+
+    @Test
+    public void insertEventsAndRollupsAcrossDays() throws Exception {
+        int resourceId = 123;
+        long day = EventDAO.getDay(hour0().getMillis());
+        long previousDay = day - EventDAO.PARTITION_SIZE;
+
+        for (StorageResultSetFuture future : dao.insertEvents(resourceId, LOCATION, asList(
+            newEvent(previousDay + 10, EventSeverity.INFO, "started"),
+            newEvent(day + 10, EventSeverity.ERROR, "failed"),
+            newEvent(day + 20, EventSeverity.ERROR, "failed again"),
+            newEvent(day + EventDAO.SLOT_SIZE, EventSeverity.WARN, "recovering")), TTL)) {
+            future.get();
+        }
+        dao.insertEvents(resourceId + 1, LOCATION, asList(newEvent(day + 10, EventSeverity.FATAL, "other")), TTL)
+            .get(0).get();
+
+        List<EventComposite> events = dao.findEvents(resourceId, previousDay, day + 20);
+
+        assertEquals(events.size(), 3);
+        assertEquals(events.get(0).getEventDetail(), "started");
+        assertEquals(events.get(0).getSeverity(), EventSeverity.INFO);
+        assertEquals(events.get(0).getSourceLocation(), LOCATION);
+        assertEquals(events.get(1).getTimestamp().getTime(), day + 10);
+        assertEquals(events.get(2).getEventDetail(), "failed again");
+        assertEquals(events.get(2).getResourceId(), resourceId);
+
+        List<EventRollup> rollups = dao.findEventRollups(resourceId, previousDay, day + EventDAO.SLOT_SIZE);
+
+        assertEquals(rollups.size(), 3, "Expected one rollup per slot and severity");
+        assertEquals(rollups.get(0).getSlot(), previousDay);
+        assertEquals(rollups.get(0).getCount(), 1);
+        assertEquals(rollups.get(1).getSlot(), day);
+        assertEquals(rollups.get(1).getSeverity(), EventSeverity.ERROR);
+        assertEquals(rollups.get(1).getCount(), 2);
+        assertEquals(rollups.get(2).getSeverity(), EventSeverity.WARN);
+    }
+
+    @Test
+    public void deleteEvents() throws Exception {
+        int resourceId = 321;
+        long day = EventDAO.getDay(hour0().getMillis());
+
+        dao.insertEvents(resourceId, LOCATION, asList(newEvent(day + 10, EventSeverity.DEBUG, "debug")), TTL).get(0)
+            .get();
+        dao.deleteEvents(resourceId, day, day + 10);
+
+        assertEquals(dao.findEvents(resourceId, day, day + 10).size(), 0);
+        assertEquals(dao.findEventRollups(resourceId, day, day + 10).size(), 0);
+    }
+
+    @Test
+    public void findEventsInPages() throws Exception {
+        int resourceId = 456;
+        long day = EventDAO.getDay(hour0().getMillis());
+
+        List<Event> events = new ArrayList<Event>();
+        for (int i = 0; i < EventDAO.PAGE_SIZE + 10; ++i) {
+            // events share time stamps across the page boundary
+            events.add(newEvent(day - EventDAO.PARTITION_SIZE + i / 4, i % 2 == 0 ? EventSeverity.INFO
+                : EventSeverity.ERROR, "event " + i));
+        }
+        events.add(newEvent(day + 10, EventSeverity.ERROR, "latest"));
+        for (StorageResultSetFuture future : dao.insertEvents(resourceId, LOCATION, events, TTL)) {
+            future.get();
+        }
+
+        EventFilter all = new EventFilter(new EventSeverity[0], null, null);
+        List<EventComposite> newest = dao.findEvents(resourceId, day - EventDAO.PARTITION_SIZE, day + 10, all, true,
+            3);
+        assertEquals(newest.size(), 3);
+        assertEquals(newest.get(0).getEventDetail(), "latest");
+
+        List<EventComposite> oldest = dao.findEvents(resourceId, day - EventDAO.PARTITION_SIZE, day + 10, all, false,
+            Integer.MAX_VALUE);
+        assertEquals(oldest.size(), events.size(), "Every event should be read exactly once");
+        assertEquals(oldest.get(oldest.size() - 1).getEventDetail(), "latest");
+
+        EventFilter errors = new EventFilter(new EventSeverity[] { EventSeverity.ERROR }, null, null);
+        assertEquals(dao.countEvents(resourceId, day - EventDAO.PARTITION_SIZE, day + 10, errors),
+            (EventDAO.PAGE_SIZE + 10) / 2 + 1);
+        EventFilter detail = new EventFilter(new EventSeverity[0], null, "LATEST");
+        assertEquals(dao.countEvents(resourceId, day - EventDAO.PARTITION_SIZE, day + 10, detail), 1);
+        assertEquals(dao.findEvents(resourceId, day - EventDAO.PARTITION_SIZE, day + 10, detail, true, 10).get(0)
+            .getTimestamp().getTime(), day + 10);
+    }
+
+    @Test
+    public void findAndDeleteEventById() throws Exception {
+        int resourceId = 789;
+        long day = EventDAO.getDay(hour0().getMillis());
+
+        dao.insertEvents(resourceId, LOCATION, asList(newEvent(day + 10, EventSeverity.WARN, "warning"),
+            newEvent(day + 20, EventSeverity.WARN, "another warning")), TTL).get(0).get();
+        int eventId = dao.findEvents(resourceId, day, day + 10).get(0).getEventId();
+
+        List<EventComposite> found = dao.findEvent(eventId);
+        assertEquals(found.size(), 1);
+        assertEquals(found.get(0).getEventDetail(), "warning");
+        assertEquals(found.get(0).getResourceId(), resourceId);
+
+        assertEquals(dao.deleteEvent(eventId, asList(resourceId + 1)), 0, "Events of other resources are kept");
+        assertEquals(dao.deleteEvent(eventId, asList(resourceId)), 1);
+
+        assertEquals(dao.findEvent(eventId).size(), 0);
+        assertEquals(dao.findEvents(resourceId, day, day + 20).size(), 1);
+        EventFilter all = new EventFilter(new EventSeverity[0], null, null);
+        assertEquals(dao.countEvents(resourceId, day, day + EventDAO.SLOT_SIZE - 1, all), 1,
+            "The rollup of the deleted event should have been corrected");
+    }
+
+    private Event newEvent(long timestamp, EventSeverity severity, String detail) {
+        return new Event("Log", LOCATION, timestamp, severity, detail);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+
+package org.rhq.server.metrics;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.List;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.cassandra.schema.Table;
+import org.rhq.core.domain.measurement.Availability;
+import org.rhq.core.domain.measurement.AvailabilityType;
+import org.rhq.core.domain.measurement.MeasurementDataTrait;
+
+public class HistoryDAOTest extends CassandraIntegrationTest {
+
+    private static final int TTL = 3600;
+
+    private HistoryDAO dao;
+
+    @BeforeClass
+    public void initDAO() throws Exception {
+        dao = new HistoryDAO(storageSession);
+    }
+
+    @BeforeMethod
+    public void resetDB() throws Exception {
+        for (Table table : Table.values()) {
+            session.execute("TRUNCATE " + table.getTableName());
+        }
+    }
+
+    @Test
+    public void findTraitsAcrossBuckets() throws Exception {
+        int scheduleId = 123;
+        long bucket = HistoryDAO.getBucket(hour0().getMillis());
+        long previousBucket = bucket - HistoryDAO.BUCKET_SIZE;
+
+        dao.insertTrait(scheduleId, previousBucket + 10, "1.0", TTL).get();
+        dao.insertTrait(scheduleId, bucket + 10, "1.1", TTL).get();
+        dao.insertTrait(scheduleId, bucket + 20, "1.2", TTL).get();
+        dao.insertTrait(scheduleId + 1, bucket + 10, "2.0", TTL).get();
+
+        List<MeasurementDataTrait> traits = dao.findTraits(scheduleId, previousBucket, bucket + 20);
+
+        assertEquals(traits.size(), 2, "The range end is exclusive");
+        assertEquals(traits.get(0).getValue(), "1.1", "The newest value should come first");
+        assertEquals(traits.get(0).getTimestamp(), bucket + 10);
+        assertEquals(traits.get(1).getValue(), "1.0");
+        assertEquals(traits.get(1).getScheduleId(), scheduleId);
+    }
+
+    @Test
+    public void findAvailabilitiesIncludingThePrecedingInterval() throws Exception {
+        int resourceId = 321;
+        long bucket = HistoryDAO.getBucket(hour0().getMillis());
+        long oldest = bucket - 3 * HistoryDAO.BUCKET_SIZE;
+        long begin = bucket + 100;
+
+        dao.insertAvailability(resourceId, oldest + 10, oldest + 20, AvailabilityType.DOWN, TTL).get();
+        dao.insertAvailability(resourceId, oldest + 20, begin + 50, AvailabilityType.UP, TTL).get();
+        dao.insertAvailability(resourceId, begin + 50, begin + 60, AvailabilityType.DOWN, TTL).get();
+        dao.insertAvailability(resourceId, begin + 60, begin + 70, AvailabilityType.UP, TTL).get();
+
+        List<Availability> availabilities = dao.findAvailabilities(resourceId, begin, begin + 60, oldest);
+
+        assertEquals(availabilities.size(), 2, "Expected the interval spanning the range start and the one after it");
+        assertEquals(availabilities.get(0).getStartTime().longValue(), oldest + 20);
+        assertEquals(availabilities.get(0).getAvailabilityType(), AvailabilityType.UP);
+        assertEquals(availabilities.get(1).getStartTime().longValue(), begin + 50);
+        assertEquals(availabilities.get(1).getEndTime().longValue(), begin + 60);
+        assertEquals(availabilities.get(1).getResource().getId(), resourceId);
+    }
+}
@@ -85,6 +85,36 @@ public class IndexIteratorTest extends MetricsTest {
         assertEquals(actual, expected, "The index entries do not match");
     }
 
+    @Test
+    public void iterateOverSinglePartition() {
+        dao.updateIndex(IndexBucket.RAW, hour(3).getMillis(), 101).get();
+        dao.updateIndex(IndexBucket.RAW, hour(4).getMillis(), 100).get();
+        dao.updateIndex(IndexBucket.RAW, hour(4).getMillis(), 101).get();
+        dao.updateIndex(IndexBucket.RAW, hour(4).getMillis(), 103).get();
+        dao.updateIndex(IndexBucket.RAW, hour(4).getMillis(), 105).get();
+        dao.updateIndex(IndexBucket.RAW, hour(4).getMillis(), 107).get();
+        dao.updateIndex(IndexBucket.RAW, hour(5).getMillis(), 102).get();
+        dao.updateIndex(IndexBucket.RAW, hour(5).getMillis(), 109).get();
+        dao.updateIndex(IndexBucket.RAW, hour(6).getMillis(), 111).get();
+
+        List<IndexEntry> expected = asList(
+            newIndexEntry(IndexBucket.RAW, hour(4), 101),
+            newIndexEntry(IndexBucket.RAW, hour(4), 103),
+            newIndexEntry(IndexBucket.RAW, hour(4), 105),
+            newIndexEntry(IndexBucket.RAW, hour(4), 107),
+            newIndexEntry(IndexBucket.RAW, hour(5), 109)
+        );
+        List<IndexEntry> actual = new ArrayList<IndexEntry>();
+
+        IndexIterator iterator = new IndexIterator(hour(4), hour(6), IndexBucket.RAW, dao, configuration, 1);
+
+        while (iterator.hasNext()) {
+            actual.add(iterator.next());
+        }
+
+        assertEquals(actual, expected, "Only the index entries of partition 1 should have been returned");
+    }
+
     private IndexEntry newIndexEntry(IndexBucket bucket, DateTime time, int scheduleId) {
         return new IndexEntry(bucket, (scheduleId % numPartitions), time, scheduleId);
     }
@@ -107,6 +107,32 @@ public class MetricsDAOTest extends CassandraIntegrationTest {
             expected.getValue()), "The raw metric does not match the expected value");
     }
 
+    @Test(enabled = ENABLED)
+    public void insertRawDataInOneBatch() throws Exception {
+        int scheduleId = 1;
+        List<MeasurementDataNumeric> data = asList(
+            new MeasurementDataNumeric(hour(4).getMillis(), scheduleId, 1.23),
+            new MeasurementDataNumeric(hour(4).plusMinutes(1).getMillis(), scheduleId, 4.56E10),
+            new MeasurementDataNumeric(hour(4).plusMinutes(2).getMillis(), scheduleId, -0.5)
+        );
+
+        dao.insertRawData(scheduleId, data).get();
+
+        List<RawNumericMetric> actual = dao.findRawMetrics(scheduleId, hour(4).getMillis(), hour(5).getMillis());
+        assertEquals(actual, map(data), "The batched raw data does not match the expected values");
+    }
+
+    @Test(enabled = ENABLED)
+    public void updateIndexInOneBatch() throws Exception {
+        dao.updateIndex(IndexBucket.RAW, hour(2).getMillis(), 1, asList(101, 111, 121)).get();
+
+        List<Integer> actual = new ArrayList<Integer>();
+        for (Row row : dao.findIndexEntries(IndexBucket.RAW, 1, hour(2).getMillis()).get()) {
+            actual.add(row.getInt(0));
+        }
+        assertEquals(actual, asList(101, 111, 121), "The batched index entries do not match the expected values");
+    }
+
     @Test(enabled = ENABLED)
     public void findLatestRawMetric() throws Exception {
         DateTime hour0 = hour0();
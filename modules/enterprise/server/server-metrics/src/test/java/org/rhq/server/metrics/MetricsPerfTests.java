@@ -59,8 +59,6 @@ public class MetricsPerfTests extends MetricsTest {
 
     private final int NUM_SCHEDULES = 10000;
 
-    private double requestLimit;
-
     @BeforeClass
     public void setupClass() throws Exception {
         purgeDB();
@@ -70,20 +68,14 @@ public class MetricsPerfTests extends MetricsTest {
         metricsServer.setConfiguration(configuration);
         metricsServer.setDAO(dao);
         metricsServer.setDateTimeService(dateTimeService);
-        requestLimit = storageSession.getTopologyDelta();
 
         metricsServer.init();
     }
 
-    private void resetRateLimits() {
-        storageSession.setTopologyDelta(requestLimit);
-    }
-
     @Test
     public void insertRawData() throws Exception {
         Random random = new Random();
         DateTime currentHour = hour(3);
-        storageSession.setTopologyDelta(NUM_SCHEDULES);
         dateTimeServiceStub.setNow(currentHour);
         Set<MeasurementDataNumeric> data = new HashSet<MeasurementDataNumeric>();
         for (int i = 0; i < NUM_SCHEDULES; ++i) {
@@ -158,8 +150,6 @@ public class MetricsPerfTests extends MetricsTest {
     public void runAggregation() {
         log.info("Running aggregation");
 
-        resetRateLimits();
-
         long start = System.currentTimeMillis();
         DateTime currentHour = hour(4);
         dateTimeServiceStub.setNow(currentHour);
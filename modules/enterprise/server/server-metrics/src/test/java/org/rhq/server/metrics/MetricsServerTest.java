@@ -28,9 +28,13 @@ package org.rhq.server.metrics;
 import static java.util.Arrays.asList;
 import static org.rhq.test.AssertUtils.assertPropertiesMatch;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import com.google.common.collect.ImmutableSet;
@@ -42,8 +46,11 @@ import org.testng.annotations.Test;
 
 import org.rhq.core.domain.measurement.MeasurementDataNumeric;
 import org.rhq.core.domain.measurement.composite.MeasurementDataNumericHighLowComposite;
+import org.rhq.server.metrics.aggregation.GroupRollups;
 import org.rhq.server.metrics.domain.AggregateNumericMetric;
 import org.rhq.server.metrics.domain.Bucket;
+import org.rhq.server.metrics.domain.GroupAggregateNumericMetric;
+import org.rhq.server.metrics.domain.IndexBucket;
 import org.rhq.server.metrics.domain.RawNumericMetric;
 
 /**
@@ -71,10 +78,15 @@ public class MetricsServerTest extends MetricsTest {
     }
 
     public void initServer(DateTime testNow) throws Exception {
+        initServer(testNow, false);
+    }
+
+    public void initServer(DateTime testNow, boolean groupRollups) throws Exception {
         dateTimeServiceStub.setNow(testNow);
 
         metricsServer = new MetricsServer();
         metricsServer.setConfiguration(configuration);
+        metricsServer.setGroupRollupsEnabled(groupRollups);
 
         metricsServer.setDateTimeService(dateTimeService);
 
@@ -153,6 +165,45 @@ public class MetricsServerTest extends MetricsTest {
         assertRawIndexEquals(hour(5), asList(scheduleId2, scheduleId3, scheduleId1, scheduleId4));
     }
 
+    @Test(dataProvider = "testDates")
+    public void insertRawDataInBatches(DateTime testNow) throws Exception {
+        initServer(testNow);
+        configuration.setRawInsertBatchSize(2);
+
+        try {
+            int scheduleId1 = 123;
+            int scheduleId2 = 124;
+            int scheduleId3 = 125;
+            Set<MeasurementDataNumeric> data = ImmutableSet.of(
+                new MeasurementDataNumeric(hour(4).plusMinutes(58).getMillis(), scheduleId1, 1.1),
+                new MeasurementDataNumeric(hour(5).plusMinutes(1).getMillis(), scheduleId1, 2.2),
+                new MeasurementDataNumeric(hour(5).plusMinutes(2).getMillis(), scheduleId1, 3.3),
+                new MeasurementDataNumeric(hour(5).plusMinutes(2).getMillis(), scheduleId2, 4.4),
+                new MeasurementDataNumeric(hour(5).plusMinutes(3).getMillis(), scheduleId3, 5.5)
+            );
+            WaitForRawInserts waitForRawInserts = new WaitForRawInserts(data.size());
+
+            metricsServer.setIndexPartitions(1);
+            dateTimeServiceStub.setNow(hour(5).plusMinutes(5));
+            metricsServer.addNumericData(data, waitForRawInserts);
+            waitForRawInserts.await("Failed to insert raw data");
+
+            assertRawDataEquals(scheduleId1, hour(4), hour(6), asList(
+                new RawNumericMetric(scheduleId1, hour(4).plusMinutes(58).getMillis(), 1.1),
+                new RawNumericMetric(scheduleId1, hour(5).plusMinutes(1).getMillis(), 2.2),
+                new RawNumericMetric(scheduleId1, hour(5).plusMinutes(2).getMillis(), 3.3)));
+            assertRawDataEquals(scheduleId2, hour(5), hour(6),
+                new RawNumericMetric(scheduleId2, hour(5).plusMinutes(2).getMillis(), 4.4));
+            assertRawDataEquals(scheduleId3, hour(5), hour(6),
+                new RawNumericMetric(scheduleId3, hour(5).plusMinutes(3).getMillis(), 5.5));
+
+            assertRawIndexEquals(hour(4), asList(scheduleId1));
+            assertRawIndexEquals(hour(5), asList(scheduleId1, scheduleId2, scheduleId3));
+        } finally {
+            configuration.setRawInsertBatchSize(new MetricsConfiguration().getRawInsertBatchSize());
+        }
+    }
+
     @Test(dataProvider = "testDates")
     public void insertLateData(DateTime testNow) throws Exception {
         initServer(testNow);
@@ -283,6 +334,91 @@ public class MetricsServerTest extends MetricsTest {
         assert6HourDataEmpty(scheduleId);
     }
 
+    /**
+     * Aggregation resumes from the checkpoints of the previous run, so an index entry before a checkpoint is only
+     * picked up when it comes with a late index entry, as it does when the data is reported late through the server.
+     */
+    @Test(dataProvider = "testDates")
+    public void aggregateLateDataBeforeCheckpoint(DateTime testNow) throws Exception {
+        initServer(testNow);
+
+        int scheduleId1 = 123;
+        int scheduleId2 = 124;
+
+        dateTimeServiceStub.setNow(hour(4).plusMinutes(50));
+        WaitForRawInserts waitForRawInserts = new WaitForRawInserts(1);
+        metricsServer.addNumericData(ImmutableSet.of(new MeasurementDataNumeric(hour(4).plusMinutes(10).getMillis(),
+            scheduleId1, 1.0)), waitForRawInserts);
+        waitForRawInserts.await("Failed to insert raw data");
+
+        dateTimeServiceStub.setNow(hour(5).plusMinutes(1));
+        metricsServer.calculateAggregates();
+
+        assertMetricDataEquals(scheduleId1, Bucket.ONE_HOUR, asList(new AggregateNumericMetric(scheduleId1,
+            Bucket.ONE_HOUR, 1.0, 1.0, 1.0, hour(4).getMillis())));
+
+        // bypass the server so that no late index entry is written
+        dao.insertRawData(new MeasurementDataNumeric(hour(2).plusMinutes(10).getMillis(), scheduleId2, 2.0)).get();
+        dao.updateIndex(IndexBucket.RAW, hour(2).getMillis(), scheduleId2).get();
+
+        dateTimeServiceStub.setNow(hour(6).plusMinutes(1));
+        metricsServer.calculateAggregates();
+
+        assertRawIndexEquals(hour(2), asList(scheduleId2));
+        assertMetricDataEquals(scheduleId2, Bucket.ONE_HOUR, new ArrayList<AggregateNumericMetric>());
+
+        dateTimeServiceStub.setNow(hour(6).plusMinutes(30));
+        waitForRawInserts = new WaitForRawInserts(1);
+        metricsServer.addNumericData(ImmutableSet.of(new MeasurementDataNumeric(hour(2).plusMinutes(20).getMillis(),
+            scheduleId2, 4.0)), waitForRawInserts);
+        waitForRawInserts.await("Failed to insert raw data");
+
+        dateTimeServiceStub.setNow(hour(7).plusMinutes(1));
+        metricsServer.calculateAggregates();
+
+        assertRawIndexEmpty(hour(2));
+        assertMetricDataEquals(scheduleId2, Bucket.ONE_HOUR, asList(new AggregateNumericMetric(scheduleId2,
+            Bucket.ONE_HOUR, 3.0, 2.0, 4.0, hour(2).getMillis())));
+        // the 1 hour aggregate is late as well, which triggers the recomputation of its 6 hour aggregate
+        assertMetricDataEquals(scheduleId2, Bucket.SIX_HOUR, asList(new AggregateNumericMetric(scheduleId2,
+            Bucket.SIX_HOUR, 3.0, 2.0, 4.0, hour0().getMillis())));
+    }
+
+    /**
+     * Without explicit index partitions, aggregation scans every partition from its checkpoint and advances all of the
+     * checkpoints, including those of partitions that have no data.
+     */
+    @Test(dataProvider = "testDates")
+    public void aggregateAllPartitionsFromCheckpoints(DateTime testNow) throws Exception {
+        initServer(testNow);
+
+        int scheduleId1 = 120;
+        int scheduleId2 = 123;
+
+        dateTimeServiceStub.setNow(hour(4).plusMinutes(50));
+        insertRawData(
+            new MeasurementDataNumeric(hour(4).plusMinutes(10).getMillis(), scheduleId1, 2.0),
+            new MeasurementDataNumeric(hour(4).plusMinutes(20).getMillis(), scheduleId2, 4.0)
+        );
+
+        dateTimeServiceStub.setNow(hour(5).plusMinutes(1));
+        metricsServer.getAggregationManager().run(null, null);
+
+        assertMetricDataEquals(scheduleId1, Bucket.ONE_HOUR, asList(new AggregateNumericMetric(scheduleId1,
+            Bucket.ONE_HOUR, 2.0, 2.0, 2.0, hour(4).getMillis())));
+        assertMetricDataEquals(scheduleId2, Bucket.ONE_HOUR, asList(new AggregateNumericMetric(scheduleId2,
+            Bucket.ONE_HOUR, 4.0, 4.0, 4.0, hour(4).getMillis())));
+
+        Map<Integer, Long> checkpoints = metricsServer.getAggregationManager().getCheckpoints().getCheckpoints(
+            IndexBucket.RAW);
+        assertEquals(checkpoints.size(), configuration.getIndexPartitions(),
+            "Every index partition should have a checkpoint");
+        for (int partition = 0; partition < configuration.getIndexPartitions(); ++partition) {
+            assertEquals(checkpoints.get(partition), (Long) hour(5).getMillis(),
+                "The checkpoint of partition " + partition + " should be at the end of the scan");
+        }
+    }
+
     /**
      * This test exercises the scenario in which there is raw data from the past hour to be
      * aggregated as well as from an earlier period. This could happen in the event of a
@@ -615,6 +751,128 @@ public class MetricsServerTest extends MetricsTest {
             TEST_PRECISION);
     }
 
+    @Test(dataProvider = "testDates")
+    public void getSummaryAggregateForGroupFromRollups(DateTime testNow) throws Exception {
+        initServer(testNow, true);
+
+        DateTime beginTime = testNow.minusDays(11);
+        DateTime endTime = testNow;
+
+        Buckets buckets = new Buckets(beginTime, endTime);
+        DateTime bucket0Time = new DateTime(buckets.get(0).getStartTime());
+        DateTime bucket59Time = new DateTime(buckets.get(59).getStartTime());
+
+        int groupId = 100;
+        int definitionId = 200;
+        int scheduleId1 = 123;
+        int scheduleId2 = 456;
+        List<Integer> scheduleIds = asList(scheduleId1, scheduleId2);
+
+        List<AggregateNumericMetric> metrics = asList(
+            new AggregateNumericMetric(scheduleId1, Bucket.ONE_HOUR, 1.1, 1.0, 1.3, bucket0Time.getMillis()),
+            new AggregateNumericMetric(scheduleId2, Bucket.ONE_HOUR, 1.2, 1.1, 1.4, bucket0Time.getMillis()),
+
+            new AggregateNumericMetric(scheduleId1, Bucket.ONE_HOUR, 5.1, 5.0, 5.3, bucket59Time.getMillis())
+        );
+
+        for (AggregateNumericMetric metric : metrics) {
+            dao.insert1HourData(metric).get();
+        }
+
+        double avg = divide(1.1 + 1.2 + 5.1, 3);
+        AggregateNumericMetric expected = new AggregateNumericMetric(0, Bucket.ONE_HOUR, avg, 1.0, 5.3,
+            beginTime.getMillis());
+
+        AggregateNumericMetric actual = metricsServer.getSummaryAggregate(groupId, definitionId, scheduleIds,
+            beginTime.getMillis(), endTime.getMillis());
+        assertPropertiesMatch("The group summary aggregate should be computed from the members while the rollups " +
+            "are backfilled", expected, actual, TEST_PRECISION);
+
+        GroupRollups groupRollups = metricsServer.getGroupRollups();
+        long timeout = System.currentTimeMillis() + 10000;
+        while (!groupRollups.isAvailable(groupId, definitionId, scheduleIds)) {
+            assertTrue(System.currentTimeMillis() < timeout, "Timed out waiting for the group rollups backfill");
+            Thread.sleep(100);
+        }
+
+        List<GroupAggregateNumericMetric> rollups = dao.findGroupAggregateMetrics(groupId, definitionId,
+            Bucket.ONE_HOUR, beginTime.getMillis(), endTime.getMillis());
+        assertEquals(rollups.size(), 2, "Expected a rollup for each time slice with member data");
+        assertEquals(rollups.get(0).getMembers(), 2);
+        assertEquals(rollups.get(0).getAvg(), divide(1.1 + 1.2, 2), TEST_PRECISION);
+        assertEquals(rollups.get(1).getMembers(), 1);
+
+        actual = metricsServer.getSummaryAggregate(groupId, definitionId, scheduleIds, beginTime.getMillis(),
+            endTime.getMillis());
+        assertPropertiesMatch("Failed to get group summary aggregate from the group rollups", expected, actual,
+            TEST_PRECISION);
+
+        assertFalse(groupRollups.isAvailable(groupId, definitionId, asList(scheduleId1)),
+            "The rollups must not be used once the members of the group have changed");
+
+        metricsServer.shutdown();
+    }
+
+    @Test(dataProvider = "testDates")
+    public void findLast24HoursOfGroupDataFromRollups(DateTime testNow) throws Exception {
+        initServer(testNow, true);
+
+        DateTime beginTime = testNow.minusHours(24);
+        DateTime endTime = testNow;
+
+        int groupId = 100;
+        int definitionId = 200;
+        int scheduleId1 = 123;
+        int scheduleId2 = 456;
+        List<Integer> scheduleIds = asList(scheduleId1, scheduleId2);
+
+        // 1 hour aggregates without raw data, so that only the rollup series of the group can provide the hour
+        DateTime hour = dateTimeService.get1HourTimeSlice(testNow.minusHours(12));
+        dao.insert1HourData(new AggregateNumericMetric(scheduleId1, Bucket.ONE_HOUR, 1.1, 1.0, 1.3,
+            hour.getMillis())).get();
+        dao.insert1HourData(new AggregateNumericMetric(scheduleId2, Bucket.ONE_HOUR, 1.2, 1.1, 1.4,
+            hour.getMillis())).get();
+
+        // raw data after the last time slice of the series
+        Set<MeasurementDataNumeric> data = new HashSet<MeasurementDataNumeric>();
+        data.add(new MeasurementDataNumeric(testNow.minusMinutes(5).getMillis(), scheduleId1, 5.1));
+        data.add(new MeasurementDataNumeric(testNow.minusMinutes(5).getMillis(), scheduleId2, 5.2));
+        WaitForRawInserts waitForRawInserts = new WaitForRawInserts(data.size());
+        metricsServer.addNumericData(data, waitForRawInserts);
+        waitForRawInserts.await("Failed to insert raw data");
+
+        // the first query registers the series and has it backfilled
+        metricsServer.findDataForGroup(groupId, definitionId, scheduleIds, beginTime.getMillis(),
+            endTime.getMillis(), 24);
+        GroupRollups groupRollups = metricsServer.getGroupRollups();
+        long timeout = System.currentTimeMillis() + 10000;
+        while (!groupRollups.isAvailable(groupId, definitionId, scheduleIds)) {
+            assertTrue(System.currentTimeMillis() < timeout, "Timed out waiting for the group rollups backfill");
+            Thread.sleep(100);
+        }
+
+        List<MeasurementDataNumericHighLowComposite> actual = metricsServer.findDataForGroup(groupId, definitionId,
+            scheduleIds, beginTime.getMillis(), endTime.getMillis(), 24);
+
+        Buckets buckets = new Buckets(beginTime.getMillis(), endTime.getMillis(), 24);
+        assertEquals(actual.size(), 24);
+        int hourBucket = (int) ((hour.getMillis() - beginTime.getMillis()) / buckets.getInterval());
+        assertPropertiesMatch("The hour should have been read from the rollup series of the group",
+            new MeasurementDataNumericHighLowComposite(buckets.get(hourBucket).getStartTime(), divide(1.1 + 1.2, 2),
+                1.4, 1.0), actual.get(hourBucket));
+        assertPropertiesMatch("The data after the series should have been read from the members",
+            new MeasurementDataNumericHighLowComposite(buckets.get(23).getStartTime(), divide(5.1 + 5.2, 2), 5.2,
+                5.1), actual.get(23));
+
+        AggregateNumericMetric summary = metricsServer.getSummaryAggregate(groupId, definitionId, scheduleIds,
+            beginTime.getMillis(), endTime.getMillis());
+        assertEquals(summary.getMin(), 1.0, TEST_PRECISION);
+        assertEquals(summary.getMax(), 5.2, TEST_PRECISION);
+        assertEquals(summary.getAvg(), divide(1.1 + 1.2 + 5.1 + 5.2, 4), TEST_PRECISION);
+
+        metricsServer.shutdown();
+    }
+
     @Test(dataProvider = "testDates")
     public void getSummaryRawAggregateForGroup(DateTime testNow) throws Exception {
         initServer(testNow);
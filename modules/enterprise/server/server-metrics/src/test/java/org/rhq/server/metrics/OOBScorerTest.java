@@ -0,0 +1,126 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.server.metrics;
+
+import static java.util.Arrays.asList;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import org.rhq.server.metrics.aggregation.OOBScorer;
+import org.rhq.server.metrics.domain.AggregateNumericMetric;
+import org.rhq.server.metrics.domain.Bucket;
+
+public class OOBScorerTest {
+
+    private static class TestSink implements OOBScorer.Sink {
+        List<List<OOBScorer.OOB>> batches = new ArrayList<List<OOBScorer.OOB>>();
+
+        @Override
+        public void persist(List<OOBScorer.OOB> oobs) {
+            batches.add(oobs);
+        }
+    }
+
+    @Test
+    public void computeOOBFactor() {
+        // above the baseline: (15 - 10) / (10 - 5) = 100%
+        assertEquals(OOBScorer.computeOOBFactor(12, 11, 15, 5, 10), Integer.valueOf(100));
+        // below the baseline: (5 - 4) / (10 - 5) = 20%
+        assertEquals(OOBScorer.computeOOBFactor(6, 4, 7, 5, 10), Integer.valueOf(20));
+        // within the baseline
+        assertNull(OOBScorer.computeOOBFactor(7, 6, 9, 5, 10));
+        // the baseline range is too narrow
+        assertNull(OOBScorer.computeOOBFactor(12, 11, 15, 5, 5.05));
+    }
+
+    @Test
+    public void onlyScoreSchedulesWithBaselines() {
+        TestSink sink = new TestSink();
+        OOBScorer scorer = new OOBScorer(sink, 10);
+        scorer.addBaseline(1, 5, 10);
+
+        scorer.score(asList(metric(1, 12, 11, 15, 0), metric(2, 12, 11, 15, 0)));
+
+        assertEquals(scorer.finish(), 1);
+        assertEquals(sink.batches.size(), 1);
+        assertEquals(sink.batches.get(0).get(0).getScheduleId(), 1);
+        assertEquals(sink.batches.get(0).get(0).getOobFactor(), 100);
+    }
+
+    @Test
+    public void persistInBatches() {
+        TestSink sink = new TestSink();
+        OOBScorer scorer = new OOBScorer(sink, 2);
+        for (int i = 1; i <= 5; i++) {
+            scorer.addBaseline(i, 5, 10);
+        }
+
+        scorer.score(asList(metric(1, 12, 11, 15, 0)));
+        assertEquals(sink.batches.size(), 0, "The batch is not full yet");
+
+        scorer.score(asList(metric(2, 12, 11, 15, 0), metric(3, 12, 11, 15, 0)));
+        assertEquals(sink.batches.size(), 1);
+        assertEquals(sink.batches.get(0).size(), 3);
+
+        scorer.score(asList(metric(4, 12, 11, 15, 0)));
+        assertEquals(scorer.finish(), 4);
+        assertEquals(sink.batches.size(), 2);
+    }
+
+    @Test
+    public void keepHighestFactorPerSchedule() {
+        TestSink sink = new TestSink();
+        OOBScorer scorer = new OOBScorer(sink, 100);
+        scorer.addBaseline(1, 5, 10);
+
+        scorer.score(asList(metric(1, 12, 11, 15, 0)));
+        scorer.score(asList(metric(1, 12, 11, 13, 3600000)));
+        scorer.score(asList(metric(1, 12, 11, 20, 7200000)));
+
+        assertEquals(scorer.finish(), 2, "The lower factor of the second hour should not have been persisted");
+        List<OOBScorer.OOB> oobs = sink.batches.get(0);
+        assertEquals(oobs.get(1).getTimestamp(), 7200000);
+        assertEquals(oobs.get(1).getOobFactor(), 200);
+    }
+
+    @Test
+    public void sinkFailuresDoNotPropagate() {
+        OOBScorer scorer = new OOBScorer(new OOBScorer.Sink() {
+            @Override
+            public void persist(List<OOBScorer.OOB> oobs) {
+                throw new RuntimeException("The database is down");
+            }
+        }, 1);
+        scorer.addBaseline(1, 5, 10);
+
+        scorer.score(asList(metric(1, 12, 11, 15, 0)));
+
+        assertEquals(scorer.finish(), 0);
+    }
+
+    private AggregateNumericMetric metric(int scheduleId, double avg, double min, double max, long timestamp) {
+        return new AggregateNumericMetric(scheduleId, Bucket.ONE_HOUR, avg, min, max, timestamp);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.server.metrics.aggregation;
+
+import static java.util.Arrays.asList;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CheckpointTrackerTest {
+
+    private static final long HOUR = 3600000;
+
+    private List<Long> checkpoints;
+
+    private List<Long> lateTimeSlices;
+
+    private CheckpointTracker tracker;
+
+    @BeforeMethod
+    public void setUp() {
+        checkpoints = new ArrayList<Long>();
+        lateTimeSlices = new ArrayList<Long>();
+        tracker = new CheckpointTracker(new CheckpointTracker.Listener() {
+            @Override
+            public void checkpoint(int partition, long time) {
+                checkpoints.add(time);
+            }
+
+            @Override
+            public void lateTimeSliceAggregated(int partition, long timeSlice) {
+                lateTimeSlices.add(timeSlice);
+            }
+        });
+    }
+
+    @Test
+    public void advanceAsTasksFinish() {
+        tracker.startScan(0, 0);
+        tracker.taskSubmitted(0, 0);
+        tracker.scanned(0, HOUR);
+        tracker.taskSubmitted(0, HOUR);
+        tracker.scanned(0, 2 * HOUR);
+        assertTrue(checkpoints.isEmpty(), "No time slice has been aggregated yet");
+
+        tracker.taskFinished(0, HOUR, true);
+        assertTrue(checkpoints.isEmpty(), "The first time slice still has an outstanding task");
+
+        tracker.taskFinished(0, 0, true);
+        assertEquals(checkpoints, asList(2 * HOUR));
+
+        tracker.scanned(0, 3 * HOUR);
+        assertEquals(checkpoints, asList(2 * HOUR, 3 * HOUR),
+            "A time slice without index entries is done once scanned");
+    }
+
+    @Test
+    public void failuresHoldBackTheCheckpoint() {
+        tracker.startScan(0, 0);
+        tracker.taskSubmitted(0, 0);
+        tracker.scanned(0, HOUR);
+        tracker.taskFinished(0, 0, true);
+        tracker.taskSubmitted(0, HOUR);
+        tracker.scanned(0, 2 * HOUR);
+        tracker.scanFailed(0, 2 * HOUR);
+        tracker.scanned(0, 3 * HOUR);
+
+        tracker.taskFinished(0, HOUR, false);
+        tracker.scanned(0, 4 * HOUR);
+
+        assertEquals(checkpoints, asList(HOUR));
+        assertEquals(tracker.getCheckpoint(0), HOUR);
+    }
+
+    @Test
+    public void partitionsAreTrackedSeparately() {
+        tracker.startScan(0, HOUR);
+        tracker.startScan(1, 0);
+        tracker.taskSubmitted(1, 0);
+        tracker.scanned(1, 2 * HOUR);
+        tracker.scanned(0, 2 * HOUR);
+
+        assertEquals(tracker.getCheckpoint(0), 2 * HOUR);
+        assertEquals(tracker.getCheckpoint(1), 0);
+    }
+
+    @Test
+    public void reportLateTimeSlicesOnceAggregated() {
+        tracker.startLateScan(0, 0);
+        tracker.taskSubmitted(0, 0);
+        tracker.lateScanFinished(0, 0);
+        tracker.startLateScan(0, HOUR);
+        tracker.taskSubmitted(0, HOUR);
+        tracker.lateScanFinished(0, HOUR);
+        tracker.startScan(0, 5 * HOUR);
+        assertTrue(lateTimeSlices.isEmpty());
+
+        tracker.taskFinished(0, 0, true);
+        tracker.taskFinished(0, HOUR, false);
+        tracker.scanned(0, 6 * HOUR);
+
+        assertEquals(lateTimeSlices, asList(0L), "A late time slice with a failed task must not be reported");
+        assertEquals(checkpoints, asList(6 * HOUR), "Late time slices do not hold back the checkpoint");
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+
+package org.rhq.server.metrics.aggregation;
+
+import static java.util.Arrays.asList;
+import static org.testng.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+public class DistributedAggregationTest {
+
+    @Test
+    public void assignPartitionsRoundRobin() {
+        Map<String, List<Integer>> assignments = DistributedAggregation.assign("server-b",
+            asList("server-c", "server-a", "server-b"), 5);
+
+        assertEquals(new ArrayList<String>(assignments.keySet()), asList("server-a", "server-b", "server-c"),
+            "The servers should be sorted so that every server computes the same assignments");
+        assertEquals(assignments.get("server-a"), asList(0, 3));
+        assertEquals(assignments.get("server-b"), asList(1, 4));
+        assertEquals(assignments.get("server-c"), asList(2));
+    }
+
+    @Test
+    public void includeTheCoordinator() {
+        Map<String, List<Integer>> assignments = DistributedAggregation.assign("server-a",
+            Collections.<String>emptyList(), 2);
+
+        assertEquals(assignments.size(), 1);
+        assertEquals(assignments.get("server-a"), asList(0, 1));
+    }
+
+    @Test
+    public void leaveExtraServersIdle() {
+        Map<String, List<Integer>> assignments = DistributedAggregation.assign("server-a",
+            asList("server-a", "server-b", "server-c"), 2);
+
+        assertEquals(assignments.get("server-c"), Collections.<Integer>emptyList());
+    }
+}
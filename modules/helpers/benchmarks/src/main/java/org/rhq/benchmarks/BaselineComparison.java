@@ -0,0 +1,125 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares the results of a benchmark run with the results of a baseline run, both written by JMH in JSON:
+ *
+ * <pre>
+ * mvn install -Dbenchmarks
+ * java -jar target/benchmarks.jar -rf json -rff baseline.json
+ * (change the code, build again)
+ * java -jar target/benchmarks.jar -rf json -rff current.json
+ * java -cp target/benchmarks.jar org.rhq.benchmarks.BaselineComparison baseline.json current.json [threshold]
+ * </pre>
+ *
+ * Every benchmark of the current run is printed with its score in both runs and the change. A change slower than the
+ * threshold, a percentage that defaults to 10, is flagged as a regression unless it is within the error margins of the
+ * two scores. The program exits with status 1 when there are regressions, so that it can fail a build.
+ */
+public class BaselineComparison {
+
+    private static final double DEFAULT_THRESHOLD = 10.0;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: BaselineComparison <baseline.json> <current.json> [threshold percentage]");
+            System.exit(2);
+        }
+        double threshold = (args.length == 3) ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD;
+
+        Map<String, JsonNode> baseline = readResults(new File(args[0]));
+        Map<String, JsonNode> current = readResults(new File(args[1]));
+
+        int regressions = 0;
+        System.out.println(String.format("%-100s %14s %14s %9s", "Benchmark", "Baseline", "Current", "Change"));
+        for (Map.Entry<String, JsonNode> entry : current.entrySet()) {
+            JsonNode currentMetric = entry.getValue().get("primaryMetric");
+            String unit = currentMetric.get("scoreUnit").asText();
+            double currentScore = currentMetric.get("score").asDouble();
+            JsonNode baselineResult = baseline.get(entry.getKey());
+            if (baselineResult == null) {
+                System.out.println(String.format("%-100s %14s %14.3f %9s  %s", entry.getKey(), "-", currentScore,
+                    "new", unit));
+                continue;
+            }
+
+            JsonNode baselineMetric = baselineResult.get("primaryMetric");
+            double baselineScore = baselineMetric.get("score").asDouble();
+            double change = (currentScore - baselineScore) / baselineScore * 100;
+            // throughput is better when higher, the other modes measure times which are better when lower
+            double slowdown = "thrpt".equals(entry.getValue().get("mode").asText()) ? -change : change;
+            double errors = error(baselineMetric) + error(currentMetric);
+            boolean regression = slowdown > threshold && Math.abs(currentScore - baselineScore) > errors;
+            if (regression) {
+                ++regressions;
+            }
+            System.out.println(String.format("%-100s %14.3f %14.3f %+8.1f%%  %s%s", entry.getKey(), baselineScore,
+                currentScore, change, unit, regression ? "  REGRESSION" : ""));
+        }
+        for (String key : baseline.keySet()) {
+            if (!current.containsKey(key)) {
+                System.out.println(String.format("%-100s %14s %14s %9s", key, "", "-", "missing"));
+            }
+        }
+
+        System.out.println();
+        System.out.println(regressions + " regression(s) beyond " + threshold + "%");
+        System.exit(regressions > 0 ? 1 : 0);
+    }
+
+    private static double error(JsonNode metric) {
+        double error = metric.path("scoreError").asDouble(0);
+        // JMH reports NaN when there were too few iterations to compute the error
+        return Double.isNaN(error) ? 0 : error;
+    }
+
+    /**
+     * @return the results of a run, keyed on the benchmark name, mode and parameters
+     */
+    private static Map<String, JsonNode> readResults(File file) throws IOException {
+        Map<String, JsonNode> results = new LinkedHashMap<String, JsonNode>();
+        for (JsonNode result : new ObjectMapper().readTree(file)) {
+            StringBuilder key = new StringBuilder(result.get("benchmark").asText());
+            key.append(" [").append(result.get("mode").asText());
+            JsonNode params = result.get("params");
+            if (params != null) {
+                for (Iterator<Map.Entry<String, JsonNode>> fields = params.fields(); fields.hasNext();) {
+                    Map.Entry<String, JsonNode> param = fields.next();
+                    key.append(", ").append(param.getKey()).append('=').append(param.getValue().asText());
+                }
+            }
+            results.put(key.append(']').toString(), result);
+        }
+        return results;
+    }
+}
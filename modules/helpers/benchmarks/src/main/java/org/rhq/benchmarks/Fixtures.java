@@ -0,0 +1,189 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.rhq.core.domain.configuration.Configuration;
+import org.rhq.core.domain.configuration.PropertyList;
+import org.rhq.core.domain.configuration.PropertyMap;
+import org.rhq.core.domain.configuration.PropertySimple;
+import org.rhq.core.domain.measurement.DataType;
+import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
+import org.rhq.core.system.ProcessInfo;
+import org.rhq.server.metrics.domain.RawNumericMetric;
+
+/**
+ * Generates the data the benchmarks work on. The data is shaped after what a server and its agents handle in
+ * production: metric values that drift around a baseline instead of being uniformly random, schedule intervals with
+ * the distribution of the default plugin metrics, plugin configurations with nested lists and maps, and process tables
+ * made of the processes of a typical Linux server. Every generator is seeded, so that two runs of a benchmark work on
+ * the same data.
+ */
+public class Fixtures {
+
+    private static final long SEED = 4140;
+
+    /** The collection intervals of the schedules, in milliseconds, with the most common ones repeated. */
+    private static final long[] INTERVALS = { 30000L, 60000L, 60000L, 600000L, 600000L, 600000L, 1200000L, 3600000L };
+
+    private static final String[][] COMMAND_LINES = {
+        { "/sbin/init" },
+        { "/usr/sbin/sshd", "-D" },
+        { "/usr/sbin/crond", "-n" },
+        { "/usr/sbin/httpd", "-DFOREGROUND" },
+        { "/usr/bin/postgres", "-D", "/var/lib/pgsql/data", "-p", "5432" },
+        { "/usr/java/default/bin/java", "-Xmx1024M", "-Djava.net.preferIPv4Stack=true",
+            "-Djboss.server.base.dir=/opt/jboss/standalone", "-Djboss.bind.address=0.0.0.0", "-jar",
+            "/opt/jboss/jboss-modules.jar", "-mp", "/opt/jboss/modules", "org.jboss.as.standalone" },
+        { "/usr/java/default/bin/java", "-Xms64m", "-Xmx128m", "-Drhq.agent.data-directory=/opt/rhq-agent/data",
+            "-cp", "/opt/rhq-agent/lib/*", "org.rhq.enterprise.agent.AgentMain" },
+        { "/usr/bin/python", "/usr/bin/tuned", "-l", "-P" },
+        { "-bash" },
+        { "/usr/lib/systemd/systemd-journald" } };
+
+    private Fixtures() {
+    }
+
+    /**
+     * @return values of a gauge that drifts around a baseline, with occasional spikes
+     */
+    public static double[] metricValues(int count) {
+        Random random = new Random(SEED);
+        double[] values = new double[count];
+        double value = 100;
+        for (int i = 0; i < count; ++i) {
+            value += random.nextGaussian();
+            values[i] = (random.nextInt(100) == 0) ? value * 10 : value;
+        }
+        return values;
+    }
+
+    /**
+     * @return the raw data of the schedules for one time slice, grouped by schedule as the aggregation reads it
+     */
+    public static List<List<RawNumericMetric>> rawMetrics(int schedules, int valuesPerSchedule, long timeSlice) {
+        List<List<RawNumericMetric>> data = new ArrayList<List<RawNumericMetric>>(schedules);
+        long interval = 3600000L / valuesPerSchedule;
+        for (int scheduleId = 1; scheduleId <= schedules; ++scheduleId) {
+            double[] values = metricValues(valuesPerSchedule);
+            List<RawNumericMetric> metrics = new ArrayList<RawNumericMetric>(valuesPerSchedule);
+            for (int i = 0; i < valuesPerSchedule; ++i) {
+                metrics.add(new RawNumericMetric(scheduleId, timeSlice + i * interval, values[i] * scheduleId));
+            }
+            data.add(metrics);
+        }
+        return data;
+    }
+
+    /**
+     * @return the schedules of a resource, one out of five being a trait
+     */
+    public static Set<MeasurementScheduleRequest> scheduleRequests(int firstScheduleId, int count) {
+        Random random = new Random(SEED + firstScheduleId);
+        Set<MeasurementScheduleRequest> requests = new HashSet<MeasurementScheduleRequest>(count);
+        for (int i = 0; i < count; ++i) {
+            int scheduleId = firstScheduleId + i;
+            DataType dataType = (i % 5 == 4) ? DataType.TRAIT : DataType.MEASUREMENT;
+            requests.add(new MeasurementScheduleRequest(scheduleId, "metric" + i,
+                INTERVALS[random.nextInt(INTERVALS.length)], true, dataType));
+        }
+        return requests;
+    }
+
+    /**
+     * @return a plugin configuration with simple properties, and a list of maps as used for connection properties or
+     *         aliases
+     */
+    public static Configuration configuration(int simpleProperties, int listSize) {
+        Configuration configuration = new Configuration();
+        for (int i = 0; i < simpleProperties; ++i) {
+            configuration.put(new PropertySimple("property" + i, (i % 3 == 0) ? String.valueOf(i * 1000)
+                : "/opt/application/conf/value-" + i));
+        }
+        PropertyList list = new PropertyList("entries");
+        for (int i = 0; i < listSize; ++i) {
+            list.add(new PropertyMap("entry", new PropertySimple("name", "entry" + i), new PropertySimple("value",
+                "value of entry " + i), new PropertySimple("enabled", i % 2 == 0)));
+        }
+        configuration.put(list);
+        return configuration;
+    }
+
+    /**
+     * @return a process table, the processes of a typical server being repeated up to the count
+     */
+    public static List<ProcessInfo> processes(int count) {
+        List<ProcessInfo> processes = new ArrayList<ProcessInfo>(count);
+        for (int pid = 1; pid <= count; ++pid) {
+            String[] commandLine = COMMAND_LINES[(pid - 1) % COMMAND_LINES.length];
+            processes.add(new FixtureProcessInfo(pid, (pid == 1) ? 0 : 1, commandLine));
+        }
+        return processes;
+    }
+
+    private static class FixtureProcessInfo extends ProcessInfo {
+        private final long fixturePid;
+        private final long parentPid;
+        private final String[] commandLine;
+
+        FixtureProcessInfo(long pid, long parentPid, String[] commandLine) {
+            this.fixturePid = pid;
+            this.parentPid = parentPid;
+            this.commandLine = commandLine;
+        }
+
+        @Override
+        public long getPid() {
+            return fixturePid;
+        }
+
+        @Override
+        public String getName() {
+            return commandLine[0];
+        }
+
+        @Override
+        public String getBaseName() {
+            return commandLine[0].substring(commandLine[0].lastIndexOf('/') + 1);
+        }
+
+        @Override
+        public String[] getCommandLine() {
+            return commandLine;
+        }
+
+        @Override
+        public long getParentPid() {
+            return parentPid;
+        }
+
+        @Override
+        public void refresh() {
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.pc.measurement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import org.rhq.benchmarks.Fixtures;
+import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
+import org.rhq.core.pc.PluginContainerConfiguration;
+
+/**
+ * The scheduling work of the {@link MeasurementManager} of an agent: taking the next due schedules of a resource and
+ * putting them back in the queue, as the collector does at every collection, and replacing the schedules of a
+ * resource, as the server does when schedules are updated.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MeasurementManagerBenchmark {
+
+    @Param({ "100", "1000" })
+    public int resources;
+
+    @Param({ "20" })
+    public int schedulesPerResource;
+
+    private MeasurementManager measurementManager;
+
+    private List<Set<MeasurementScheduleRequest>> requests;
+
+    private int nextResource;
+
+    @Setup
+    public void scheduleResources() {
+        PluginContainerConfiguration configuration = new PluginContainerConfiguration();
+        configuration.setMeasurementCollectionInitialDelay(0);
+        measurementManager = new MeasurementManager(configuration, null, null);
+        requests = new ArrayList<Set<MeasurementScheduleRequest>>(resources);
+        for (int resourceId = 0; resourceId < resources; ++resourceId) {
+            Set<MeasurementScheduleRequest> resourceRequests = Fixtures.scheduleRequests(resourceId
+                * schedulesPerResource, schedulesPerResource);
+            requests.add(resourceRequests);
+            measurementManager.scheduleCollection(resourceId, resourceRequests);
+        }
+    }
+
+    /**
+     * Takes the next due schedules and puts them back for the same collection time, so that they stay due.
+     */
+    @Benchmark
+    public Set<ScheduledMeasurementInfo> collectionCycle() {
+        Set<ScheduledMeasurementInfo> scheduledSet = measurementManager.getNextScheduledSet();
+        for (ScheduledMeasurementInfo info : scheduledSet) {
+            info.setNextCollection(info.getNextCollection() - info.getInterval());
+        }
+        measurementManager.reschedule(scheduledSet);
+        return scheduledSet;
+    }
+
+    @Benchmark
+    public int updateSchedules() {
+        int resourceId = nextResource;
+        nextResource = (nextResource + 1) % resources;
+        measurementManager.scheduleCollection(resourceId, requests.get(resourceId));
+        return resourceId;
+    }
+}
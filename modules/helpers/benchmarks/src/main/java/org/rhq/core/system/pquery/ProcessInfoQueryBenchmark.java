@@ -0,0 +1,78 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.system.pquery;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import org.rhq.benchmarks.Fixtures;
+import org.rhq.core.system.ProcessInfo;
+
+/**
+ * The PIQL queries plugins run during discovery and availability checks, against a process table of the size of a
+ * small and of a busy server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProcessInfoQueryBenchmark {
+
+    @Param({ "200", "2000" })
+    public int processes;
+
+    private ProcessInfoQuery query;
+
+    @Setup
+    public void createProcessTable() {
+        query = new ProcessInfoQuery(Fixtures.processes(processes));
+    }
+
+    @Benchmark
+    public List<ProcessInfo> anyArg() {
+        return query.query("process|basename|match=^java.*,arg|*|match=org\\.jboss\\.as\\.standalone");
+    }
+
+    @Benchmark
+    public List<ProcessInfo> namedArg() {
+        return query.query("process|basename|match=^java.*,arg|-Djboss.server.base.dir|match=.*");
+    }
+
+    @Benchmark
+    public List<ProcessInfo> name() {
+        return query.query("process|name|match=.*/postgres");
+    }
+
+    @Benchmark
+    public List<ProcessInfo> pid() {
+        return query.query("process|pid|match=" + (processes / 2));
+    }
+}
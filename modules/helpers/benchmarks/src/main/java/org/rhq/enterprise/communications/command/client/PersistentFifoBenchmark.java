@@ -0,0 +1,90 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.enterprise.communications.command.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * The spooling of commands by the agent while the server is not reachable: a command is put in the
+ * {@link PersistentFifo} and the oldest one is taken out, the file holding a backlog of commands of the size of a
+ * measurement report.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PersistentFifoBenchmark {
+
+    @Param({ "1024", "65536" })
+    public int commandSize;
+
+    @Param({ "false", "true" })
+    public boolean compress;
+
+    @Param({ "100" })
+    public int backlog;
+
+    private File file;
+
+    private PersistentFifo fifo;
+
+    private byte[] command;
+
+    @Setup
+    public void createFifo() throws IOException {
+        file = File.createTempFile("command-spool", ".dat");
+        fifo = new PersistentFifo(file, 1024L * 1024 * 1024, 90, compress);
+        // serialized commands are not random bytes, they compress about as well as this
+        command = new byte[commandSize];
+        Random random = new Random(commandSize);
+        for (int i = 0; i < commandSize; ++i) {
+            command[i] = (byte) ('a' + random.nextInt(16));
+        }
+        for (int i = 0; i < backlog; ++i) {
+            fifo.put(command);
+        }
+    }
+
+    @TearDown
+    public void deleteFifo() {
+        file.delete();
+    }
+
+    @Benchmark
+    public byte[] putAndTake() throws IOException {
+        fifo.put(command);
+        return fifo.take();
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.enterprise.server.alert.engine.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import org.rhq.benchmarks.Fixtures;
+import org.rhq.core.domain.alert.AlertConditionOperator;
+import org.rhq.core.domain.measurement.MeasurementData;
+import org.rhq.core.domain.measurement.MeasurementDataNumeric;
+import org.rhq.core.domain.measurement.MeasurementDataPK;
+import org.rhq.core.domain.measurement.MeasurementDataTrait;
+import org.rhq.enterprise.server.alert.engine.model.MeasurementNumericCacheElement;
+import org.rhq.enterprise.server.alert.engine.model.MeasurementRangeNumericCacheElement;
+import org.rhq.enterprise.server.alert.engine.model.MeasurementTraitCacheElement;
+import org.rhq.enterprise.server.alert.engine.model.NumericDoubleCacheElement;
+
+/**
+ * The check of a measurement report against the alert conditions of an agent, as done by
+ * {@link AgentConditionCache#checkConditions(MeasurementData...)}: the cache elements of every datum are looked up by
+ * schedule id and matched against its value. The cache itself loads its conditions through the server beans, so the
+ * benchmark fills caches of the same shape with threshold, range, change and trait conditions on a part of the
+ * schedules. Matches are counted instead of being sent to the alert queue.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AgentConditionCacheBenchmark {
+
+    /** The number of data in the report. */
+    @Param({ "1000", "20000" })
+    public int reportSize;
+
+    /** The percentage of the schedules having alert conditions. */
+    @Param({ "10" })
+    public int conditionedPercentage;
+
+    private Map<Integer, List<NumericDoubleCacheElement>> measurementDataCache;
+
+    private Map<Integer, List<MeasurementTraitCacheElement>> measurementTraitCache;
+
+    private MeasurementData[] report;
+
+    @Setup
+    public void createCaches() {
+        Random random = new Random(reportSize);
+        double[] values = Fixtures.metricValues(reportSize);
+        measurementDataCache = new HashMap<Integer, List<NumericDoubleCacheElement>>();
+        measurementTraitCache = new HashMap<Integer, List<MeasurementTraitCacheElement>>();
+        report = new MeasurementData[reportSize];
+        long timestamp = System.currentTimeMillis();
+        int conditionId = 0;
+
+        for (int scheduleId = 0; scheduleId < reportSize; ++scheduleId) {
+            boolean trait = scheduleId % 5 == 4;
+            if (trait) {
+                report[scheduleId] = new MeasurementDataTrait(new MeasurementDataPK(timestamp, scheduleId), "version-"
+                    + random.nextInt(3));
+            } else {
+                report[scheduleId] = new MeasurementDataNumeric(timestamp, scheduleId, values[scheduleId]);
+            }
+            if (random.nextInt(100) >= conditionedPercentage) {
+                continue;
+            }
+
+            if (trait) {
+                List<MeasurementTraitCacheElement> elements = new ArrayList<MeasurementTraitCacheElement>();
+                elements.add(new MeasurementTraitCacheElement(AlertConditionOperator.CHANGES, "version-0",
+                    ++conditionId));
+                measurementTraitCache.put(scheduleId, elements);
+            } else {
+                List<NumericDoubleCacheElement> elements = new ArrayList<NumericDoubleCacheElement>();
+                elements.add(new MeasurementNumericCacheElement(AlertConditionOperator.GREATER_THAN, 500.0,
+                    ++conditionId));
+                if (random.nextBoolean()) {
+                    elements.add(new MeasurementRangeNumericCacheElement(AlertConditionOperator.LESS_THAN, 50.0,
+                        150.0, ++conditionId));
+                }
+                if (random.nextInt(4) == 0) {
+                    elements.add(new MeasurementNumericCacheElement(AlertConditionOperator.CHANGES, 0.0,
+                        ++conditionId));
+                }
+                measurementDataCache.put(scheduleId, elements);
+            }
+        }
+    }
+
+    @Benchmark
+    public int checkConditions() {
+        int matched = 0;
+        for (MeasurementData datum : report) {
+            int scheduleId = datum.getScheduleId();
+            if (datum instanceof MeasurementDataNumeric) {
+                List<NumericDoubleCacheElement> elements = measurementDataCache.get(scheduleId);
+                if (elements != null) {
+                    Double value = ((MeasurementDataNumeric) datum).getValue();
+                    for (NumericDoubleCacheElement element : elements) {
+                        if (element.process(value)) {
+                            matched++;
+                        }
+                    }
+                }
+            } else {
+                List<MeasurementTraitCacheElement> elements = measurementTraitCache.get(scheduleId);
+                if (elements != null) {
+                    String value = ((MeasurementDataTrait) datum).getValue();
+                    for (MeasurementTraitCacheElement element : elements) {
+                        if (element.process(value)) {
+                            matched++;
+                        }
+                    }
+                }
+            }
+        }
+        return matched;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.enterprise.server.resource;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import org.rhq.core.domain.resource.Resource;
+
+/**
+ * Loading and querying the {@link ResourceHierarchyIndex} of a large inventory. Each platform has 10 servers of 99
+ * services, so 1000 platforms make an inventory of a million resources. Lineage lookups go to random resources,
+ * subtree lookups to random platforms.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResourceHierarchyIndexBenchmark {
+
+    private static final int SERVERS = 10;
+
+    private static final int SERVICES = 99;
+
+    private static final int PLATFORM_SIZE = 1 + SERVERS * (1 + SERVICES);
+
+    private static final int LOOKUPS = 1024;
+
+    @Param({ "100", "1000" })
+    public int platforms;
+
+    private ResourceHierarchyIndex index;
+
+    private int[] resourceIds;
+
+    private int[] platformIds;
+
+    private int next;
+
+    @Setup
+    public void createIndex() {
+        index = load();
+
+        Random random = new Random(platforms);
+        resourceIds = new int[LOOKUPS];
+        platformIds = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; ++i) {
+            resourceIds[i] = 1 + random.nextInt(platforms * PLATFORM_SIZE);
+            platformIds[i] = 1 + random.nextInt(platforms) * PLATFORM_SIZE;
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public ResourceHierarchyIndex loadIndex() {
+        return load();
+    }
+
+    @Benchmark
+    public int[] getLineage() {
+        next = (next + 1) % LOOKUPS;
+        return index.getLineage(resourceIds[next]);
+    }
+
+    @Benchmark
+    public int[] getSubtree() {
+        next = (next + 1) % LOOKUPS;
+        return index.getSubtree(platformIds[next]);
+    }
+
+    private ResourceHierarchyIndex load() {
+        ResourceHierarchyIndex index = new ResourceHierarchyIndex();
+        ResourceHierarchyIndex.Loader loader = index.startLoad();
+        int id = 0;
+        for (int p = 0; p < platforms; ++p) {
+            int platformId = ++id;
+            loader.add(platformId, Resource.ROOT_ID, 1, p + 1);
+            for (int s = 0; s < SERVERS; ++s) {
+                int serverId = ++id;
+                loader.add(serverId, platformId, 2, p + 1);
+                for (int v = 0; v < SERVICES; ++v) {
+                    loader.add(++id, serverId, 3, p + 1);
+                }
+            }
+        }
+        index.finishLoad(loader);
+        return index;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.server.metrics.aggregation;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Function;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import org.rhq.benchmarks.Fixtures;
+import org.rhq.server.metrics.domain.AggregateNumericMetric;
+import org.rhq.server.metrics.domain.Bucket;
+import org.rhq.server.metrics.domain.RawNumericMetric;
+
+/**
+ * The computation of the 1 hour aggregates of a batch of schedules from their raw data, which is the CPU bound part of
+ * the raw data aggregation. Reading the data from and writing the aggregates to the storage cluster are not part of
+ * it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DataAggregatorBenchmark {
+
+    @Param({ "5", "250" })
+    public int schedules;
+
+    @Param({ "120" })
+    public int valuesPerSchedule;
+
+    private Function<Iterable<? extends Collection<RawNumericMetric>>, List<AggregateNumericMetric>> computeAggregates;
+
+    private List<List<RawNumericMetric>> data;
+
+    @Setup
+    public void createData() {
+        long timeSlice = new DateTime(2014, 10, 1, 10, 0, DateTimeZone.UTC).getMillis();
+        DataAggregator<RawNumericMetric> aggregator = new DataAggregator<RawNumericMetric>();
+        aggregator.setBatchSize(schedules);
+        computeAggregates = aggregator.computeAggregates(timeSlice, Bucket.ONE_HOUR);
+        data = Fixtures.rawMetrics(schedules, valuesPerSchedule, timeSlice);
+    }
+
+    @Benchmark
+    public List<AggregateNumericMetric> computeAggregates() {
+        return computeAggregates.apply(data);
+    }
+}
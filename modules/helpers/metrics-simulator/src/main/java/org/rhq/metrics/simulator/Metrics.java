@@ -2,7 +2,11 @@ package org.rhq.metrics.simulator;
 
 import static com.codahale.metrics.MetricRegistry.name;
 
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
 import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
@@ -34,6 +38,18 @@ public class Metrics {
 
     public final Timer totalReadTime;
 
+    public final Meter reports;
+
+    public final Timer reportLatency;
+
+    public final Counter failedReports;
+
+    public final Meter traitInserts;
+
+    public final Meter availabilityInserts;
+
+    public final Meter eventInserts;
+
     public Metrics() {
         registry = new MetricRegistry();
 
@@ -47,6 +63,49 @@ public class Metrics {
         yearResourceQueryTime = registry.timer(name(MeasurementReader.class, "yearResourceQueryTime"));
         totalAggregationRuns = registry.counter(name(MeasurementAggregator.class, "totalAggregationRuns"));
         totalReadTime = registry.timer(name(MeasurementReader.class, "totalReadTime"));
+
+        reports = registry.meter(name(SimulatedAgent.class, "reports"));
+        reportLatency = registry.timer(name(SimulatedAgent.class, "reportLatency"));
+        failedReports = registry.counter(name(SimulatedAgent.class, "failedReports"));
+        traitInserts = registry.meter(name(SimulatedAgent.class, "traitInserts"));
+        availabilityInserts = registry.meter(name(SimulatedAgent.class, "availabilityInserts"));
+        eventInserts = registry.meter(name(SimulatedAgent.class, "eventInserts"));
+
+        registerResourceUsage();
+    }
+
+    /**
+     * The resources used by the simulator, which runs the storage client and the metrics server.
+     */
+    private void registerResourceUsage() {
+        registry.register(name(Simulator.class, "heapUsed"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+            }
+        });
+        registry.register(name(Simulator.class, "threads"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return ManagementFactory.getThreadMXBean().getThreadCount();
+            }
+        });
+        registry.register(name(Simulator.class, "gcTime"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                long time = 0;
+                for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                    time += Math.max(0, collector.getCollectionTime());
+                }
+                return time;
+            }
+        });
+        registry.register(name(Simulator.class, "systemLoadAverage"), new Gauge<Double>() {
+            @Override
+            public Double getValue() {
+                return ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage();
+            }
+        });
     }
 
 }
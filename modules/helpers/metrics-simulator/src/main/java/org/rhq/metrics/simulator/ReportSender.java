@@ -0,0 +1,54 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.metrics.simulator;
+
+import java.util.Set;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import org.rhq.core.domain.discovery.AvailabilityReport;
+import org.rhq.core.domain.event.transfer.EventReport;
+import org.rhq.core.domain.measurement.MeasurementReport;
+import org.rhq.core.domain.measurement.ResourceMeasurementScheduleRequest;
+
+/**
+ * Where a {@link SimulatedAgent} sends its reports, which are the ones a real agent sends to the server. The returned
+ * futures complete once the report has been handled.
+ */
+public interface ReportSender {
+
+    /**
+     * @return the measurement schedules of the inventory of the agent, the resources included
+     */
+    Set<ResourceMeasurementScheduleRequest> getSchedules();
+
+    /**
+     * @return whether the events of the agent can be reported
+     */
+    boolean isEventReportingSupported();
+
+    ListenableFuture<?> sendMeasurementReport(MeasurementReport report);
+
+    ListenableFuture<?> sendAvailabilityReport(AvailabilityReport report);
+
+    ListenableFuture<?> sendEventReport(EventReport report);
+
+    void shutdown();
+}
@@ -0,0 +1,144 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.metrics.simulator;
+
+import java.util.Set;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import org.rhq.core.clientapi.server.discovery.DiscoveryServerService;
+import org.rhq.core.clientapi.server.measurement.MeasurementServerService;
+import org.rhq.core.domain.discovery.AvailabilityReport;
+import org.rhq.core.domain.event.transfer.EventReport;
+import org.rhq.core.domain.measurement.MeasurementReport;
+import org.rhq.core.domain.measurement.ResourceMeasurementScheduleRequest;
+import org.rhq.enterprise.communications.command.Command;
+import org.rhq.enterprise.communications.command.client.ClientCommandSender;
+import org.rhq.enterprise.communications.command.client.ClientCommandSenderConfiguration;
+import org.rhq.enterprise.communications.command.client.ClientRemotePojoFactory;
+import org.rhq.enterprise.communications.command.client.CommandPreprocessor;
+import org.rhq.enterprise.communications.command.client.JBossRemotingRemoteCommunicator;
+import org.rhq.metrics.simulator.plan.RegisteredAgent;
+
+/**
+ * Sends the reports of a simulated agent to a server over the agent/server comm layer, as the agent it stands for,
+ * through the same server services real agents call: {@link MeasurementServerService#mergeMeasurementReport} and
+ * {@link DiscoveryServerService#mergeAvailabilityReport}. The reports are therefore handled by the server like the
+ * ones of real agents, RDBMS and alert condition checks included.
+ * <p/>
+ * The agent must have been registered with the server, and its inventory imported, by a real agent. The simulated
+ * agent reports values for the enabled metric and trait schedules the server has for that inventory. Events are not
+ * reported, the server only takes them from the event sources of the event definitions of the resource types.
+ * <p/>
+ * The services are called synchronously, so that the time a report takes covers its handling by the server.
+ */
+public class ServerReportSender implements ReportSender {
+
+    /**
+     * The command configuration properties the server authenticates an agent with.
+     */
+    private static final String CMDCONFIG_PROP_SECURITY_TOKEN = "rhq.security-token";
+
+    private static final String CMDCONFIG_PROP_AGENT_NAME = "rhq.agent-name";
+
+    private final ClientCommandSender sender;
+
+    private final MeasurementServerService measurementServerService;
+
+    private final DiscoveryServerService discoveryServerService;
+
+    private final Set<ResourceMeasurementScheduleRequest> schedules;
+
+    private final Metrics metrics;
+
+    /**
+     * @param endpoint The locator URI of the server's comm connector, e.g.
+     *                 <code>socket://localhost:7080/?rhq.communications.connector.rhqtype=server</code>
+     * @param agent The registered agent to send the reports as
+     *
+     * @throws Exception if the endpoint is invalid, or the schedules of the agent cannot be fetched
+     */
+    public ServerReportSender(String endpoint, final RegisteredAgent agent, Metrics metrics) throws Exception {
+        this.metrics = metrics;
+        sender = new ClientCommandSender(new JBossRemotingRemoteCommunicator(endpoint),
+            new ClientCommandSenderConfiguration());
+        sender.setCommandPreprocessors(new CommandPreprocessor[] { new CommandPreprocessor() {
+            @Override
+            public void preprocess(Command command, ClientCommandSender sender) {
+                command.getConfiguration().setProperty(CMDCONFIG_PROP_SECURITY_TOKEN, agent.getSecurityToken());
+                command.getConfiguration().setProperty(CMDCONFIG_PROP_AGENT_NAME, agent.getName());
+            }
+        } });
+        sender.startSending();
+
+        ClientRemotePojoFactory factory = sender.getClientRemotePojoFactory();
+        factory.setIgnoreAnnotations(true);
+        factory.setDeliveryGuaranteed(ClientRemotePojoFactory.GuaranteedDelivery.DISABLED);
+        measurementServerService = factory.getRemotePojo(MeasurementServerService.class);
+        discoveryServerService = factory.getRemotePojo(DiscoveryServerService.class);
+
+        schedules = measurementServerService.getLatestSchedulesForResourceId(agent.getPlatformId(), true);
+    }
+
+    @Override
+    public Set<ResourceMeasurementScheduleRequest> getSchedules() {
+        return schedules;
+    }
+
+    @Override
+    public boolean isEventReportingSupported() {
+        return false;
+    }
+
+    @Override
+    public ListenableFuture<?> sendMeasurementReport(MeasurementReport report) {
+        try {
+            measurementServerService.mergeMeasurementReport(report);
+        } catch (Throwable t) {
+            return Futures.immediateFailedFuture(t);
+        }
+        metrics.rawInserts.mark(report.getNumericData().size());
+        metrics.traitInserts.mark(report.getTraitData().size());
+        return Futures.immediateFuture(null);
+    }
+
+    @Override
+    public ListenableFuture<?> sendAvailabilityReport(AvailabilityReport report) {
+        try {
+            // the reports are full reports, whether the server asks for one does not matter
+            discoveryServerService.mergeAvailabilityReport(report);
+        } catch (Throwable t) {
+            return Futures.immediateFailedFuture(t);
+        }
+        metrics.availabilityInserts.mark(report.getResourceAvailability().size());
+        return Futures.immediateFuture(null);
+    }
+
+    @Override
+    public ListenableFuture<?> sendEventReport(EventReport report) {
+        throw new UnsupportedOperationException("Events are not reported to the server");
+    }
+
+    @Override
+    public void shutdown() {
+        sender.stopSending(false);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.metrics.simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.core.domain.discovery.AvailabilityReport;
+import org.rhq.core.domain.event.Event;
+import org.rhq.core.domain.event.EventDefinition;
+import org.rhq.core.domain.event.EventSeverity;
+import org.rhq.core.domain.event.EventSource;
+import org.rhq.core.domain.event.transfer.EventReport;
+import org.rhq.core.domain.measurement.AvailabilityType;
+import org.rhq.core.domain.measurement.DataType;
+import org.rhq.core.domain.measurement.MeasurementDataNumeric;
+import org.rhq.core.domain.measurement.MeasurementDataTrait;
+import org.rhq.core.domain.measurement.MeasurementReport;
+import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
+import org.rhq.core.domain.measurement.ResourceMeasurementScheduleRequest;
+import org.rhq.core.domain.resource.Resource;
+import org.rhq.core.domain.resource.ResourceCategory;
+import org.rhq.core.domain.resource.ResourceType;
+import org.rhq.metrics.simulator.plan.SimulationPlan;
+import org.rhq.server.metrics.DateTimeService;
+
+/**
+ * Simulates an agent of the fleet. Every run builds the reports an agent sends at the end of a collection: a
+ * {@link MeasurementReport} with a value for every enabled metric and trait schedule of its inventory, an
+ * {@link EventReport} with the events its resources logged since the previous run and, every availability interval,
+ * a full {@link AvailabilityReport}. The reports are handed to the {@link ReportSender} of the agent, which also
+ * provides its inventory. The latency of a run is measured from the collection time to the moment all its reports
+ * have been handled.
+ */
+public class SimulatedAgent implements Runnable {
+
+    private static final String EVENT_TYPE = "SimulatedLog";
+
+    private static final EventDefinition EVENT_DEFINITION = new EventDefinition(new ResourceType("SimulatedServer",
+        "simulator", ResourceCategory.SERVER, null), EVENT_TYPE);
+
+    private final Log log = LogFactory.getLog(SimulatedAgent.class);
+
+    private final String agentName;
+
+    private final int eventsPerResource;
+
+    private final long availabilityInterval;
+
+    private final Metrics metrics;
+
+    private final ReportSender reportSender;
+
+    private final DateTimeService dateTimeService;
+
+    private long lastAvailabilityTime;
+
+    public SimulatedAgent(String agentName, SimulationPlan plan, Metrics metrics, ReportSender reportSender) {
+        this.agentName = agentName;
+        this.eventsPerResource = plan.getEventsPerResource();
+        this.availabilityInterval = plan.getAvailabilityInterval();
+        this.metrics = metrics;
+        this.reportSender = reportSender;
+        this.dateTimeService = plan.getDateTimeService();
+    }
+
+    @Override
+    public void run() {
+        final long start = System.nanoTime();
+        long timestamp = dateTimeService.nowInMillis();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<ListenableFuture<?>> reports = new ArrayList<ListenableFuture<?>>();
+
+        MeasurementReport measurementReport = new MeasurementReport();
+        for (ResourceMeasurementScheduleRequest resource : reportSender.getSchedules()) {
+            for (MeasurementScheduleRequest schedule : resource.getMeasurementSchedules()) {
+                if (!schedule.isEnabled()) {
+                    continue;
+                }
+                if (schedule.getDataType() == DataType.MEASUREMENT) {
+                    measurementReport.addData(new MeasurementDataNumeric(timestamp, schedule, random.nextDouble()));
+                } else if (schedule.getDataType() == DataType.TRAIT) {
+                    measurementReport.addData(new MeasurementDataTrait(timestamp, schedule, "trait-"
+                        + random.nextInt(10)));
+                }
+            }
+        }
+        if (measurementReport.getDataCount() > 0) {
+            reports.add(reportSender.sendMeasurementReport(measurementReport));
+        }
+
+        if (eventsPerResource > 0 && reportSender.isEventReportingSupported()) {
+            String location = agentName + ".log";
+            EventReport eventReport = new EventReport(eventsPerResource, eventsPerResource
+                * reportSender.getSchedules().size());
+            for (ResourceMeasurementScheduleRequest resource : reportSender.getSchedules()) {
+                EventSource source = new EventSource(location, EVENT_DEFINITION,
+                    new Resource(resource.getResourceId()));
+                for (int i = 0; i < eventsPerResource; ++i) {
+                    eventReport.addEvent(new Event(EVENT_TYPE, location, timestamp - random.nextInt(1000),
+                        EventSeverity.values()[random.nextInt(EventSeverity.values().length)], "Simulated event " + i
+                            + " of resource " + resource.getResourceId(), source), source);
+                }
+            }
+            reports.add(reportSender.sendEventReport(eventReport));
+        }
+
+        if (timestamp - lastAvailabilityTime >= availabilityInterval) {
+            long startTime = lastAvailabilityTime == 0 ? timestamp - availabilityInterval : lastAvailabilityTime;
+            AvailabilityReport availabilityReport = new AvailabilityReport(agentName);
+            for (ResourceMeasurementScheduleRequest resource : reportSender.getSchedules()) {
+                AvailabilityType type = random.nextInt(100) == 0 ? AvailabilityType.DOWN : AvailabilityType.UP;
+                availabilityReport.addAvailability(new AvailabilityReport.Datum(resource.getResourceId(), type,
+                    startTime));
+            }
+            reports.add(reportSender.sendAvailabilityReport(availabilityReport));
+            lastAvailabilityTime = timestamp;
+        }
+
+        Futures.addCallback(Futures.allAsList(reports), new FutureCallback<List<Object>>() {
+            @Override
+            public void onSuccess(List<Object> result) {
+                metrics.reportLatency.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                metrics.reports.mark();
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                log.warn("Failed to send the reports of agent " + agentName, t);
+                metrics.failedReports.inc();
+            }
+        });
+    }
+}
@@ -23,7 +23,9 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
@@ -32,6 +34,7 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import com.codahale.metrics.ConsoleReporter;
+import com.codahale.metrics.Snapshot;
 import com.datastax.driver.core.Cluster;
 import com.datastax.driver.core.Host;
 import com.datastax.driver.core.HostDistance;
@@ -44,11 +47,17 @@ import org.apache.commons.logging.LogFactory;
 import org.joda.time.DateTime;
 import org.joda.time.Minutes;
 
+import org.rhq.cassandra.CassandraClusterManager;
+import org.rhq.cassandra.ClusterInitService;
 import org.rhq.cassandra.schema.SchemaManager;
 import org.rhq.cassandra.util.ClusterBuilder;
 import org.rhq.core.domain.measurement.MeasurementDataNumeric;
+import org.rhq.core.domain.measurement.ResourceMeasurementScheduleRequest;
+import org.rhq.metrics.simulator.plan.RegisteredAgent;
 import org.rhq.metrics.simulator.plan.SimulationPlan;
 import org.rhq.metrics.simulator.plan.SimulationPlan.SimulationType;
+import org.rhq.server.metrics.EventDAO;
+import org.rhq.server.metrics.HistoryDAO;
 import org.rhq.server.metrics.MetricsDAO;
 import org.rhq.server.metrics.MetricsServer;
 import org.rhq.server.metrics.StorageSession;
@@ -67,12 +76,15 @@ public class Simulator implements ShutdownManager {
     private StorageSession storageSession;
     private MetricsDAO metricsDAO;
     private MetricsServer metricsServer;
+    private CassandraClusterManager ccm;
 
     public void run(SimulationPlan plan) throws Throwable {
         if (SimulationType.THREADED.equals(plan.getSimulationType())) {
             this.runThreadedSimulation(plan);
         } else if (SimulationType.SEQUENTIAL.equals(plan.getSimulationType())) {
             this.runSequentialSimulation(plan);
+        } else if (SimulationType.FLEET.equals(plan.getSimulationType())) {
+            this.runFleetSimulation(plan);
         } else {
             throw new UnsupportedOperationException("Simulation type " + plan.getSimulationType() + " not implemented.");
         }
@@ -80,6 +92,9 @@ public class Simulator implements ShutdownManager {
 
     private void initializeMetricsServer(SimulationPlan plan) {
         metrics = new Metrics();
+        if (plan.getClusterDeploymentOptions() != null) {
+            deployCluster(plan);
+        }
         createSchema(plan.getNodes(), plan.getCqlPort());
         session = createSession(plan.getNodes(), plan.getCqlPort());
         storageSession = new StorageSession(session);
@@ -196,6 +211,104 @@ public class Simulator implements ShutdownManager {
         shutdown(0);
     }
 
+    /**
+     * Run a simulation of a fleet of agents, each sending the reports of its inventory at every collection interval.
+     * The agents share a pool of threads and their collections are spread over the interval, as the collections of
+     * real agents are. If the plan names a server, the agents send their reports to it as the registered agents of
+     * the plan. Otherwise the reports are written straight to the storage cluster and aggregation runs as in a
+     * threaded simulation. At the end of the simulation, the ingest throughput and the percentiles of the report
+     * latency are logged.
+     */
+    private void runFleetSimulation(SimulationPlan plan) throws Exception {
+        List<ReportSender> reportSenders = new ArrayList<ReportSender>();
+        List<String> agentNames = new ArrayList<String>();
+        if (plan.getServerEndpoint() != null) {
+            metrics = new Metrics();
+            for (RegisteredAgent agent : plan.getRegisteredAgents()) {
+                reportSenders.add(new ServerReportSender(plan.getServerEndpoint(), agent, metrics));
+                agentNames.add(agent.getName());
+            }
+        } else {
+            this.initializeMetricsServer(plan);
+            HistoryDAO historyDAO = new HistoryDAO(storageSession);
+            EventDAO eventDAO = new EventDAO(storageSession);
+            for (int i = 0; i < plan.getNumAgents(); ++i) {
+                reportSenders.add(new StorageReportSender(i, plan, metrics, metricsServer, historyDAO, eventDAO));
+                agentNames.add("agent-" + i);
+            }
+        }
+        final ConsoleReporter consoleReporter = createConsoleReporter(metrics, plan.getMetricsReportInterval());
+
+        ScheduledExecutorService agents = Executors.newScheduledThreadPool(plan.getAgentThreadPoolSize(),
+            new SimulatorThreadFactory());
+        ScheduledExecutorService aggregators = Executors.newScheduledThreadPool(1, new SimulatorThreadFactory());
+        ExecutorService aggregationQueue = Executors.newSingleThreadExecutor(new SimulatorThreadFactory());
+
+        int numResources = 0;
+        int numSchedules = 0;
+        for (ReportSender reportSender : reportSenders) {
+            numResources += reportSender.getSchedules().size();
+            for (ResourceMeasurementScheduleRequest resource : reportSender.getSchedules()) {
+                numSchedules += resource.getMeasurementSchedules().size();
+            }
+        }
+        log.info("Simulating " + reportSenders.size() + " agents managing " + numResources + " resources with "
+            + numSchedules + " schedules");
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < reportSenders.size(); ++i) {
+            SimulatedAgent agent = new SimulatedAgent(agentNames.get(i), plan, metrics, reportSenders.get(i));
+            agents.scheduleAtFixedRate(agent, i * plan.getCollectionInterval() / reportSenders.size(),
+                plan.getCollectionInterval(), TimeUnit.MILLISECONDS);
+        }
+
+        if (plan.getServerEndpoint() == null && plan.isAggregationEnabled()) {
+            MeasurementAggregator measurementAggregator = new MeasurementAggregator(metricsServer, this, metrics,
+                aggregationQueue, plan.getNumAgents() * plan.getResourcesPerAgent() * plan.getMetricsPerResource());
+            aggregators.scheduleAtFixedRate(measurementAggregator, 0, plan.getAggregationInterval(),
+                TimeUnit.MILLISECONDS);
+        }
+
+        try {
+            Thread.sleep(Minutes.minutes(plan.getSimulationTime()).toStandardDuration().getMillis());
+        } catch (InterruptedException e) {
+        }
+        log.info("Simulation has completed. Initiating shutdown...");
+        shutdown(agents, "agents", 30);
+        shutdown(aggregators, "aggregators", 1);
+        shutdown(aggregationQueue, "aggregationQueue", Integer.MAX_VALUE);
+        for (ReportSender reportSender : reportSenders) {
+            reportSender.shutdown();
+        }
+        logFleetSummary(System.currentTimeMillis() - start);
+        consoleReporter.report();
+        consoleReporter.stop();
+        if (metricsServer != null) {
+            metricsServer.shutdown();
+        }
+        shutdown(0);
+    }
+
+    private void logFleetSummary(long duration) {
+        Snapshot latency = metrics.reportLatency.getSnapshot();
+        double seconds = duration / 1000.0;
+        log.info("Fleet simulation summary:\n"
+            + "  reports handled: " + metrics.reports.getCount() + ", failed: " + metrics.failedReports.getCount()
+            + "\n"
+            + "  raw metrics/s: " + Math.round(metrics.rawInserts.getCount() / seconds)
+            + ", traits/s: " + Math.round(metrics.traitInserts.getCount() / seconds)
+            + ", availabilities/s: " + Math.round(metrics.availabilityInserts.getCount() / seconds)
+            + ", events/s: " + Math.round(metrics.eventInserts.getCount() / seconds) + "\n"
+            + "  report latency (ms): median " + toMillis(latency.getMedian())
+            + ", 95th " + toMillis(latency.get95thPercentile())
+            + ", 99th " + toMillis(latency.get99thPercentile())
+            + ", max " + toMillis(latency.getMax()));
+    }
+
+    private static long toMillis(double nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(Math.round(nanos));
+    }
+
     private ConsoleReporter createConsoleReporter(Metrics metrics, int reportInterval) {
         try {
             File basedir = new File(System.getProperty("rhq.metrics.simulator.basedir"));
@@ -218,6 +331,9 @@ public class Simulator implements ShutdownManager {
 
         shutdown = true;
         log.info("Preparing to shutdown simulator...");
+        if (ccm != null) {
+            ccm.shutdownCluster();
+        }
         System.exit(status);
     }
 
@@ -235,6 +351,23 @@ public class Simulator implements ShutdownManager {
         log.info(serviceName + " shut down complete");
     }
 
+    /**
+     * Deploys and starts the embedded cluster of the simulation, which replaces the nodes of the plan.
+     */
+    private void deployCluster(SimulationPlan plan) {
+        log.info("Deploying embedded storage cluster");
+        ccm = new CassandraClusterManager(plan.getClusterDeploymentOptions());
+        ccm.createCluster();
+        ccm.startCluster(false);
+
+        ClusterInitService clusterInitService = new ClusterInitService();
+        clusterInitService.waitForClusterToStart(ccm.getNodes(), ccm.getJmxPorts(), ccm.getNodes().length, 2000, 20,
+            10);
+
+        plan.setNodes(ccm.getNodes());
+        plan.setCqlPort(ccm.getCqlPort());
+    }
+
     private void createSchema(String[] nodes, int cqlPort) {
         SchemaManager schemaManager = new SchemaManager("rhqadmin", "1eeb2f255e832171df8592078de921bc", nodes,
             cqlPort);
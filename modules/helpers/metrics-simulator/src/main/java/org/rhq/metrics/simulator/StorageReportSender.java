@@ -0,0 +1,170 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.metrics.simulator;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import org.rhq.core.domain.discovery.AvailabilityReport;
+import org.rhq.core.domain.event.Event;
+import org.rhq.core.domain.event.EventSource;
+import org.rhq.core.domain.event.transfer.EventReport;
+import org.rhq.core.domain.measurement.DataType;
+import org.rhq.core.domain.measurement.MeasurementDataNumeric;
+import org.rhq.core.domain.measurement.MeasurementDataTrait;
+import org.rhq.core.domain.measurement.MeasurementReport;
+import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
+import org.rhq.core.domain.measurement.ResourceMeasurementScheduleRequest;
+import org.rhq.metrics.simulator.plan.SimulationPlan;
+import org.rhq.server.metrics.DateTimeService;
+import org.rhq.server.metrics.EventDAO;
+import org.rhq.server.metrics.HistoryDAO;
+import org.rhq.server.metrics.MetricsServer;
+import org.rhq.server.metrics.RawDataInsertedCallback;
+
+/**
+ * Writes the reports of a simulated agent straight to the storage cluster, with the storage calls the server ends up
+ * making for them: {@link MetricsServer#addNumericData(Set, RawDataInsertedCallback)} for the numeric data, and the
+ * {@link HistoryDAO} and {@link EventDAO} writes for the traits, availabilities and events. Nothing goes through the
+ * RDBMS, so no server is needed.
+ * <p/>
+ * The inventory of the agent is a block of resources, each with the same number of metric and trait schedules, as the
+ * perftest plugin creates them. Resource ids and schedule ids of different agents do not overlap.
+ */
+public class StorageReportSender implements ReportSender {
+
+    private final Set<ResourceMeasurementScheduleRequest> schedules;
+
+    private final int ttl;
+
+    private final Metrics metrics;
+
+    private final MetricsServer metricsServer;
+
+    private final HistoryDAO historyDAO;
+
+    private final EventDAO eventDAO;
+
+    private final DateTimeService dateTimeService;
+
+    public StorageReportSender(int agentId, SimulationPlan plan, Metrics metrics, MetricsServer metricsServer,
+        HistoryDAO historyDAO, EventDAO eventDAO) {
+        this.schedules = createSchedules(agentId, plan);
+        this.ttl = plan.getMetricsServerConfiguration().getRawTTL();
+        this.metrics = metrics;
+        this.metricsServer = metricsServer;
+        this.historyDAO = historyDAO;
+        this.eventDAO = eventDAO;
+        this.dateTimeService = plan.getDateTimeService();
+    }
+
+    private static Set<ResourceMeasurementScheduleRequest> createSchedules(int agentId, SimulationPlan plan) {
+        int schedulesPerResource = plan.getMetricsPerResource() + plan.getTraitsPerResource();
+        int firstResourceId = agentId * plan.getResourcesPerAgent() + 1;
+        Set<ResourceMeasurementScheduleRequest> schedules = new HashSet<ResourceMeasurementScheduleRequest>();
+        int lastResourceId = firstResourceId + plan.getResourcesPerAgent();
+        for (int resourceId = firstResourceId; resourceId < lastResourceId; ++resourceId) {
+            ResourceMeasurementScheduleRequest resource = new ResourceMeasurementScheduleRequest(resourceId);
+            int scheduleId = (resourceId - 1) * schedulesPerResource + 1;
+            for (int i = 0; i < schedulesPerResource; ++i, ++scheduleId) {
+                DataType dataType = i < plan.getMetricsPerResource() ? DataType.MEASUREMENT : DataType.TRAIT;
+                resource.addMeasurementScheduleRequest(new MeasurementScheduleRequest(scheduleId, "schedule-" + i,
+                    plan.getCollectionInterval(), true, dataType));
+            }
+            schedules.add(resource);
+        }
+        return schedules;
+    }
+
+    @Override
+    public Set<ResourceMeasurementScheduleRequest> getSchedules() {
+        return schedules;
+    }
+
+    @Override
+    public boolean isEventReportingSupported() {
+        return true;
+    }
+
+    @Override
+    public ListenableFuture<?> sendMeasurementReport(MeasurementReport report) {
+        List<ListenableFuture<?>> writes = new ArrayList<ListenableFuture<?>>();
+        if (!report.getNumericData().isEmpty()) {
+            final SettableFuture<Void> inserted = SettableFuture.create();
+            metricsServer.addNumericData(report.getNumericData(), new RawDataInsertedCallback() {
+                @Override
+                public void onFinish() {
+                    inserted.set(null);
+                }
+
+                @Override
+                public void onSuccess(MeasurementDataNumeric result) {
+                    metrics.rawInserts.mark();
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    inserted.setException(t);
+                }
+            });
+            writes.add(inserted);
+        }
+        for (MeasurementDataTrait trait : report.getTraitData()) {
+            writes.add(historyDAO.insertTrait(trait.getScheduleId(), trait.getTimestamp(), trait.getValue(), ttl));
+        }
+        metrics.traitInserts.mark(report.getTraitData().size());
+        return Futures.allAsList(writes);
+    }
+
+    @Override
+    public ListenableFuture<?> sendAvailabilityReport(AvailabilityReport report) {
+        long now = dateTimeService.nowInMillis();
+        List<ListenableFuture<?>> writes = new ArrayList<ListenableFuture<?>>();
+        for (AvailabilityReport.Datum datum : report.getResourceAvailability()) {
+            writes.add(historyDAO.insertAvailability(datum.getResourceId(), datum.getStartTime(), now,
+                datum.getAvailabilityType(), ttl));
+        }
+        metrics.availabilityInserts.mark(report.getResourceAvailability().size());
+        return Futures.allAsList(writes);
+    }
+
+    @Override
+    public ListenableFuture<?> sendEventReport(EventReport report) {
+        List<ListenableFuture<?>> writes = new ArrayList<ListenableFuture<?>>();
+        for (Map.Entry<EventSource, Set<Event>> entry : report.getEvents().entrySet()) {
+            EventSource source = entry.getKey();
+            writes.addAll(eventDAO.insertEvents(source.getResource().getId(), source.getLocation(), entry.getValue(),
+                ttl));
+            metrics.eventInserts.mark(entry.getValue().size());
+        }
+        return Futures.allAsList(writes);
+    }
+
+    @Override
+    public void shutdown() {
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.metrics.simulator.plan;
+
+/**
+ * An agent registered with the server the reports of a fleet simulation are sent to. The simulated agent reports the
+ * data of the inventory of the real one, as the server knows it.
+ */
+public class RegisteredAgent {
+
+    private final String name;
+
+    private final String securityToken;
+
+    private final int platformId;
+
+    /**
+     * @param name The name of the agent
+     * @param securityToken The token the server gave the agent when it registered
+     * @param platformId The id of the platform of the agent, the root of its inventory
+     */
+    public RegisteredAgent(String name, String securityToken, int platformId) {
+        this.name = name;
+        this.securityToken = securityToken;
+        this.platformId = platformId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSecurityToken() {
+        return securityToken;
+    }
+
+    public int getPlatformId() {
+        return platformId;
+    }
+}
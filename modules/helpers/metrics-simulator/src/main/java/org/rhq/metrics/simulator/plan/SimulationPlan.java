@@ -25,6 +25,10 @@
 
 package org.rhq.metrics.simulator.plan;
 
+import java.util.Collections;
+import java.util.List;
+
+import org.rhq.cassandra.DeploymentOptions;
 import org.rhq.server.metrics.DateTimeService;
 import org.rhq.server.metrics.MetricsConfiguration;
 
@@ -77,7 +81,7 @@ public class SimulationPlan {
     }
 
     public static enum SimulationType {
-        THREADED("threaded"), SEQUENTIAL("sequential");
+        THREADED("threaded"), SEQUENTIAL("sequential"), FLEET("fleet");
 
         private final String text;
 
@@ -92,6 +96,9 @@ public class SimulationPlan {
             if (text.equals("sequential") || text.equals("seq")) {
                 return SEQUENTIAL;
             }
+            if (text.equals("fleet")) {
+                return FLEET;
+            }
             throw new IllegalArgumentException(text + " is not a valid simulation type");
         }
     }
@@ -134,6 +141,26 @@ public class SimulationPlan {
 
     private int readerThreadPoolSize = 1;
 
+    private int numAgents;
+
+    private int agentThreadPoolSize;
+
+    private int resourcesPerAgent;
+
+    private int metricsPerResource;
+
+    private int traitsPerResource;
+
+    private int eventsPerResource;
+
+    private long availabilityInterval;
+
+    private DeploymentOptions clusterDeploymentOptions;
+
+    private String serverEndpoint;
+
+    private List<RegisteredAgent> registeredAgents = Collections.emptyList();
+
     public int getReaderThreadPoolSize() {
         return readerThreadPoolSize;
     }
@@ -285,4 +312,95 @@ public class SimulationPlan {
     public void setAggregationEnabled(boolean aggregationEnabled) {
         this.aggregationEnabled = aggregationEnabled;
     }
+
+    public int getNumAgents() {
+        return numAgents;
+    }
+
+    public void setNumAgents(int numAgents) {
+        this.numAgents = numAgents;
+    }
+
+    public int getAgentThreadPoolSize() {
+        return agentThreadPoolSize;
+    }
+
+    public void setAgentThreadPoolSize(int agentThreadPoolSize) {
+        this.agentThreadPoolSize = agentThreadPoolSize;
+    }
+
+    public int getResourcesPerAgent() {
+        return resourcesPerAgent;
+    }
+
+    public void setResourcesPerAgent(int resourcesPerAgent) {
+        this.resourcesPerAgent = resourcesPerAgent;
+    }
+
+    public int getMetricsPerResource() {
+        return metricsPerResource;
+    }
+
+    public void setMetricsPerResource(int metricsPerResource) {
+        this.metricsPerResource = metricsPerResource;
+    }
+
+    public int getTraitsPerResource() {
+        return traitsPerResource;
+    }
+
+    public void setTraitsPerResource(int traitsPerResource) {
+        this.traitsPerResource = traitsPerResource;
+    }
+
+    public int getEventsPerResource() {
+        return eventsPerResource;
+    }
+
+    public void setEventsPerResource(int eventsPerResource) {
+        this.eventsPerResource = eventsPerResource;
+    }
+
+    public long getAvailabilityInterval() {
+        return availabilityInterval;
+    }
+
+    public void setAvailabilityInterval(long availabilityInterval) {
+        this.availabilityInterval = availabilityInterval;
+    }
+
+    /**
+     * @return the options of the embedded cluster to deploy for the simulation, or <code>null</code> if the simulation
+     * uses the cluster of {@link #getNodes()}
+     */
+    public DeploymentOptions getClusterDeploymentOptions() {
+        return clusterDeploymentOptions;
+    }
+
+    public void setClusterDeploymentOptions(DeploymentOptions clusterDeploymentOptions) {
+        this.clusterDeploymentOptions = clusterDeploymentOptions;
+    }
+
+    /**
+     * @return the locator URI of the comm connector of the server the agents of a fleet simulation send their reports
+     * to, or <code>null</code> if they write them to the storage cluster
+     */
+    public String getServerEndpoint() {
+        return serverEndpoint;
+    }
+
+    public void setServerEndpoint(String serverEndpoint) {
+        this.serverEndpoint = serverEndpoint;
+    }
+
+    /**
+     * @return the agents registered with the server, which the simulated agents send their reports as
+     */
+    public List<RegisteredAgent> getRegisteredAgents() {
+        return registeredAgents;
+    }
+
+    public void setRegisteredAgents(List<RegisteredAgent> registeredAgents) {
+        this.registeredAgents = registeredAgents;
+    }
 }
@@ -27,6 +27,8 @@ package org.rhq.metrics.simulator.plan;
 
 import java.io.File;
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParser.Feature;
@@ -36,6 +38,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.joda.time.Minutes;
 import org.joda.time.Seconds;
 
+import org.rhq.cassandra.DeploymentOptions;
+import org.rhq.cassandra.DeploymentOptionsFactory;
 import org.rhq.metrics.simulator.MinutesDateTimeService;
 import org.rhq.metrics.simulator.SecondsDateTimeService;
 import org.rhq.metrics.simulator.SimulatedDateTimeService;
@@ -117,11 +121,56 @@ public class SimulationPlanner {
         simulation.setAggregationType(SimulationPlan.AggregationType.fromText(getString(root.get("aggregationType"),
             "sync")));
         simulation.setAggregationEnabled(getBoolean(root.get("aggregationEnabled"), true));
+        simulation.getMetricsServerConfiguration().setRawInsertBatchSize(getInt(root.get("rawInsertBatchSize"),
+            simulation.getMetricsServerConfiguration().getRawInsertBatchSize()));
 
+        JsonNode fleet = root.get("fleet");
+        if (fleet == null) {
+            fleet = mapper.createObjectNode();
+        }
+        simulation.setNumAgents(getInt(fleet.get("agents"), 10));
+        simulation.setAgentThreadPoolSize(getInt(fleet.get("threadPoolSize"), 4));
+        simulation.setResourcesPerAgent(getInt(fleet.get("resourcesPerAgent"), 100));
+        simulation.setMetricsPerResource(getInt(fleet.get("metricsPerResource"), 10));
+        simulation.setTraitsPerResource(getInt(fleet.get("traitsPerResource"), 2));
+        simulation.setEventsPerResource(getInt(fleet.get("eventsPerResource"), 1));
+        simulation.setAvailabilityInterval(getLong(fleet.get("availabilityInterval"),
+            simulation.getCollectionInterval() * 2));
+
+        JsonNode server = root.get("server");
+        if (server != null) {
+            simulation.setServerEndpoint(getString(server.get("endpoint"), null));
+            List<RegisteredAgent> agents = new ArrayList<RegisteredAgent>();
+            if (server.get("agents") != null) {
+                for (JsonNode agent : server.get("agents")) {
+                    agents.add(new RegisteredAgent(getString(agent.get("name"), null), getString(agent.get("token"),
+                        null), getInt(agent.get("platformId"), 0)));
+                }
+            }
+            simulation.setRegisteredAgents(agents);
+            simulation.setNumAgents(agents.size());
+        }
+
+        JsonNode cluster = root.get("cluster");
+        if (cluster != null && getBoolean(cluster.get("embedded"), false)) {
+            simulation.setClusterDeploymentOptions(createClusterDeploymentOptions(cluster));
+        }
 
         return simulation;
     }
 
+    private DeploymentOptions createClusterDeploymentOptions(JsonNode cluster) {
+        DeploymentOptions deploymentOptions = new DeploymentOptionsFactory().newDeploymentOptions();
+        deploymentOptions.setClusterDir(new File(getString(cluster.get("clusterDir"), "cluster")).getAbsolutePath());
+        deploymentOptions.setNumNodes(getInt(cluster.get("numNodes"), 1));
+        deploymentOptions.setUsername("rhqadmin");
+        deploymentOptions.setPassword("rhqadmin");
+        deploymentOptions.setStartRpc(true);
+        deploymentOptions.setHeapSize(getString(cluster.get("heapSize"), "256M"));
+        deploymentOptions.setHeapNewSize(getString(cluster.get("heapNewSize"), "64M"));
+        return deploymentOptions;
+    }
+
     private MetricsConfiguration createMinutesConfiguration() {
         MetricsConfiguration configuration = new MetricsConfiguration();
         configuration.setRawTTL(Minutes.minutes(168).toStandardSeconds().getSeconds());
@@ -0,0 +1,70 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.metrics.simulator;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+import java.io.File;
+
+import org.testng.annotations.Test;
+
+import org.rhq.metrics.simulator.plan.RegisteredAgent;
+import org.rhq.metrics.simulator.plan.SimulationPlan;
+import org.rhq.metrics.simulator.plan.SimulationPlan.SimulationType;
+import org.rhq.metrics.simulator.plan.SimulationPlanner;
+
+public class SimulationPlannerTest {
+
+    @Test
+    public void createFleetPlan() throws Exception {
+        SimulationPlan plan = new SimulationPlanner().create(new File(getClass().getResource("fleet-simulator.json")
+            .toURI()));
+
+        assertEquals(plan.getSimulationType(), SimulationType.FLEET);
+        assertEquals(plan.getCollectionInterval(), 500L);
+        assertEquals(plan.getNumAgents(), 4);
+        assertEquals(plan.getAgentThreadPoolSize(), 2);
+        assertEquals(plan.getResourcesPerAgent(), 20);
+        assertEquals(plan.getMetricsPerResource(), 5);
+        assertEquals(plan.getTraitsPerResource(), 1);
+        assertEquals(plan.getEventsPerResource(), 2);
+        assertEquals(plan.getAvailabilityInterval(), 1000L, "Availability should default to every other collection");
+        assertNotNull(plan.getClusterDeploymentOptions());
+        assertEquals(plan.getClusterDeploymentOptions().getNumNodes(), 1);
+        assertNull(plan.getServerEndpoint(), "The agents should report to the storage cluster by default");
+    }
+
+    @Test
+    public void createServerFleetPlan() throws Exception {
+        SimulationPlan plan = new SimulationPlanner().create(new File(getClass().getResource(
+            "server-fleet-simulator.json").toURI()));
+
+        assertEquals(plan.getServerEndpoint(), "socket://localhost:7080/?rhq.communications.connector.rhqtype=server");
+        assertEquals(plan.getNumAgents(), 2, "There should be one simulated agent per registered agent");
+        assertEquals(plan.getRegisteredAgents().size(), 2);
+        RegisteredAgent agent = plan.getRegisteredAgents().get(1);
+        assertEquals(agent.getName(), "agent-b");
+        assertEquals(agent.getSecurityToken(), "token-b");
+        assertEquals(agent.getPlatformId(), 10002);
+        assertNull(plan.getClusterDeploymentOptions());
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.plugins.database;
+
+import static org.rhq.plugins.database.DatabasePluginUtil.getConnectionFromComponent;
+import static org.rhq.plugins.database.DatabasePluginUtil.hasConnectionPoolingSupport;
+import static org.rhq.plugins.database.DatabasePluginUtil.safeClose;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.core.pluginapi.inventory.ResourceComponent;
+
+/**
+ * The result of a set-based query shared by the child components of a database component, so that they read their row
+ * from a single query instead of each running its own. Typically the parent component holds one snapshot of the
+ * statistics of all its tables, and each table component looks up the row of its table.
+ * <p/>
+ * Rows are identified by the values of key columns. The query runs again once the snapshot is older than its maximum
+ * age, which should be shorter than the collection interval of the children, or after {@link #invalidate()}.
+ */
+public class QuerySnapshot {
+    private static final Log LOG = LogFactory.getLog(QuerySnapshot.class);
+
+    private final String query;
+    private final long maxAge;
+    private final String[] keyColumns;
+
+    private Map<List<String>, Map<String, Object>> rows;
+    private long timestamp;
+
+    /**
+     * @param query the query returning the rows of all the children
+     * @param maxAge the number of milliseconds the rows are reused
+     * @param keyColumns the columns identifying a row
+     */
+    public QuerySnapshot(String query, long maxAge, String... keyColumns) {
+        this.query = query;
+        this.maxAge = maxAge;
+        this.keyColumns = keyColumns;
+    }
+
+    /**
+     * Returns the row of the key, running the query first if the snapshot is stale. Note that depending on the
+     * database, the column names may be uppercase (Oracle) or lowercase.
+     *
+     * @param component the component providing the connection used to run the query
+     * @param key the values of the key columns, in order
+     * @return the row, or null if the query returned no row for the key
+     * @throws SQLException if the query fails
+     */
+    public Map<String, Object> getRow(ResourceComponent component, String... key) throws SQLException {
+        return getRows(component).get(Arrays.asList(key));
+    }
+
+    /**
+     * Same as {@link #getRow(ResourceComponent, String...)}, but only returns the numeric columns, as doubles.
+     *
+     * @return the numeric columns of the row, or an empty map if the query returned no row for the key
+     */
+    public Map<String, Double> getNumericRow(ResourceComponent component, String... key) throws SQLException {
+        Map<String, Object> row = getRow(component, key);
+        if (row == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, Double> numericRow = new HashMap<String, Double>();
+        for (Map.Entry<String, Object> column : row.entrySet()) {
+            if (column.getValue() instanceof Number) {
+                numericRow.put(column.getKey(), ((Number) column.getValue()).doubleValue());
+            }
+        }
+        return numericRow;
+    }
+
+    /**
+     * Discards the rows, so that the next lookup runs the query. Components should call it after changing what the
+     * query returns, like creating or dropping a table.
+     */
+    public synchronized void invalidate() {
+        rows = null;
+    }
+
+    private synchronized Map<List<String>, Map<String, Object>> getRows(ResourceComponent component)
+        throws SQLException {
+        long now = System.currentTimeMillis();
+        if (rows == null || now - timestamp > maxAge) {
+            rows = loadRows(component);
+            timestamp = now;
+        }
+        return rows;
+    }
+
+    private Map<List<String>, Map<String, Object>> loadRows(ResourceComponent component) throws SQLException {
+        boolean componentHasConnectionPoolingSupport = hasConnectionPoolingSupport(component);
+
+        Connection connection = null;
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        try {
+            connection = getConnectionFromComponent(component);
+            statement = connection.prepareStatement(query);
+            resultSet = statement.executeQuery();
+
+            ResultSetMetaData md = resultSet.getMetaData();
+            String[] names = new String[md.getColumnCount()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = md.getColumnName(i + 1);
+            }
+
+            Map<List<String>, Map<String, Object>> result = new HashMap<List<String>, Map<String, Object>>();
+            while (resultSet.next()) {
+                String[] key = new String[keyColumns.length];
+                for (int i = 0; i < keyColumns.length; i++) {
+                    key[i] = resultSet.getString(keyColumns[i]);
+                }
+                Map<String, Object> row = new HashMap<String, Object>();
+                for (int i = 0; i < names.length; i++) {
+                    row.put(names[i], resultSet.getObject(i + 1));
+                }
+                result.put(Arrays.asList(key), row);
+            }
+
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Loaded " + result.size() + " rows with: " + query);
+            }
+            return result;
+        } catch (SQLException e) {
+            if (!componentHasConnectionPoolingSupport && component instanceof DatabaseComponent) {
+                ((DatabaseComponent) component).removeConnection();
+            }
+            throw e;
+        } finally {
+            safeClose(null, statement, resultSet);
+            if (componentHasConnectionPoolingSupport) {
+                safeClose(connection);
+            }
+        }
+    }
+}
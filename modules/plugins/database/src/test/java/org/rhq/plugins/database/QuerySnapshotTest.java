@@ -0,0 +1,135 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.plugins.database;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.measurement.AvailabilityType;
+import org.rhq.core.pluginapi.inventory.ResourceComponent;
+import org.rhq.core.pluginapi.inventory.ResourceContext;
+
+@Test
+public class QuerySnapshotTest {
+
+    private static final String QUERY = "select schema_name, table_name, row_count, description from table_stats";
+
+    private Connection connection;
+    private DatabaseComponent<ResourceComponent<?>> component;
+
+    @BeforeMethod
+    public void createTable() throws Exception {
+        Class.forName("org.h2.Driver");
+        connection = DriverManager.getConnection("jdbc:h2:mem:snapshot;DB_CLOSE_DELAY=-1", "sa", "");
+        execute("create table table_stats (schema_name varchar(20), table_name varchar(20), row_count int, "
+            + "description varchar(20))");
+        execute("insert into table_stats values ('public', 't1', 10, 'first')");
+        execute("insert into table_stats values ('public', 't2', 20, 'second')");
+
+        component = new DatabaseComponent<ResourceComponent<?>>() {
+            @Override
+            public Connection getConnection() {
+                return connection;
+            }
+
+            @Override
+            public void removeConnection() {
+            }
+
+            @Override
+            public void start(ResourceContext<ResourceComponent<?>> context) {
+            }
+
+            @Override
+            public void stop() {
+            }
+
+            @Override
+            public AvailabilityType getAvailability() {
+                return AvailabilityType.UP;
+            }
+        };
+    }
+
+    @AfterMethod
+    public void dropTable() throws Exception {
+        execute("drop table table_stats");
+        connection.close();
+    }
+
+    public void rowsAreLookedUpByKey() throws Exception {
+        QuerySnapshot snapshot = new QuerySnapshot(QUERY, 60000, "schema_name", "table_name");
+
+        Map<String, Object> row = snapshot.getRow(component, "public", "t2");
+        assertEquals(row.get("DESCRIPTION"), "second");
+
+        Map<String, Double> numericRow = snapshot.getNumericRow(component, "public", "t1");
+        assertEquals(numericRow.get("ROW_COUNT"), 10.0);
+        assertEquals(numericRow.size(), 1, "Only the numeric columns should be returned");
+
+        assertNull(snapshot.getRow(component, "public", "t3"));
+        assertTrue(snapshot.getNumericRow(component, "other", "t1").isEmpty());
+    }
+
+    public void rowsAreReusedUntilInvalidated() throws Exception {
+        QuerySnapshot snapshot = new QuerySnapshot(QUERY, 60000, "schema_name", "table_name");
+        assertNull(snapshot.getRow(component, "public", "t3"));
+
+        execute("insert into table_stats values ('public', 't3', 30, 'third')");
+        execute("update table_stats set row_count = 11 where table_name = 't1'");
+
+        assertNull(snapshot.getRow(component, "public", "t3"), "The snapshot should not have been refreshed yet");
+        assertEquals(snapshot.getNumericRow(component, "public", "t1").get("ROW_COUNT"), 10.0);
+
+        snapshot.invalidate();
+
+        assertEquals(snapshot.getNumericRow(component, "public", "t3").get("ROW_COUNT"), 30.0);
+        assertEquals(snapshot.getNumericRow(component, "public", "t1").get("ROW_COUNT"), 11.0);
+    }
+
+    public void staleRowsAreReloaded() throws Exception {
+        QuerySnapshot snapshot = new QuerySnapshot(QUERY, -1, "schema_name", "table_name");
+        assertNull(snapshot.getRow(component, "public", "t3"));
+
+        execute("insert into table_stats values ('public', 't3', 30, 'third')");
+
+        assertEquals(snapshot.getNumericRow(component, "public", "t3").get("ROW_COUNT"), 30.0);
+    }
+
+    private void execute(String sql) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            statement.executeUpdate(sql);
+        } finally {
+            statement.close();
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.plugins.jmx;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mc4j.ems.connection.EmsConnection;
+import org.mc4j.ems.connection.bean.EmsBean;
+import org.mc4j.ems.connection.bean.attribute.EmsAttribute;
+
+/**
+ * Collects the attributes read by the MBean components of a JMX server in bulk. Every component reading attributes
+ * through the collector registers the attributes it reads. When the snapshot is older than its maximum age, all the
+ * registered attributes of all the MBeans are read again, one request per MBean, with the requests to different MBeans
+ * running in parallel. The components collecting during the same collection interval then read their values from the
+ * snapshot instead of each making their own round trips to the MBean server. A component asking for attributes that
+ * are not in a snapshot which has not expired yet only has the attributes of its own MBean read, and merged into the
+ * snapshot.
+ * <p/>
+ * The attributes of an MBean are read with {@link EmsBean#refreshAttributes(List)}, which issues a single
+ * <code>getAttributes</code> call, so that values go through the class loader isolation of the EMS connection like any
+ * other attribute value. A read that does not complete within the read timeout is cancelled and reported as a failure
+ * of its MBean, so that one unresponsive MBean does not hold up the components of the others.
+ */
+public class BulkAttributeCollector {
+    private static final Log LOG = LogFactory.getLog(BulkAttributeCollector.class);
+
+    private final long maxAge;
+    private final long readTimeout;
+    private final ExecutorService executor;
+
+    // the attribute names read from each MBean, keyed on the object names
+    private final Map<String, Set<String>> registeredAttributes = new HashMap<String, Set<String>>();
+
+    private EmsConnection snapshotConnection;
+    private Map<String, Set<String>> snapshotAttributes = new HashMap<String, Set<String>>();
+    private Map<String, Map<String, Object>> snapshotValues = new HashMap<String, Map<String, Object>>();
+    private Map<String, Throwable> snapshotFailures = new HashMap<String, Throwable>();
+    private long snapshotTime;
+
+    /**
+     * @param maxAge the time, in milliseconds, read values are reused for
+     * @param threads the maximum number of MBeans read concurrently
+     * @param readTimeout the time, in milliseconds, to wait for the attributes of the MBeans to be read
+     */
+    public BulkAttributeCollector(long maxAge, int threads, long readTimeout) {
+        this.maxAge = maxAge;
+        this.readTimeout = readTimeout;
+        final AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "JMX Bulk Collector-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        executor.allowCoreThreadTimeOut(true);
+        this.executor = executor;
+    }
+
+    /**
+     * Gets the values of attributes of an MBean. The attributes of all the registered MBeans are read if the snapshot
+     * has expired, and only the attributes of this MBean if the snapshot does not hold them yet.
+     *
+     * @param connection the connection to the MBean server
+     * @param objectName the name of the MBean
+     * @param attributeNames the names of the attributes to read
+     *
+     * @return the values keyed on the attribute names, without the attributes the MBean does not have, or
+     *         <code>null</code> if the MBean could not be found
+     *
+     * @throws RuntimeException if the attributes of the MBean could not be read
+     */
+    public synchronized Map<String, Object> getAttributes(EmsConnection connection, String objectName,
+        Collection<String> attributeNames) {
+        Set<String> registered = registeredAttributes.get(objectName);
+        if (registered == null) {
+            registered = new HashSet<String>();
+            registeredAttributes.put(objectName, registered);
+        }
+        registered.addAll(attributeNames);
+
+        if (connection != snapshotConnection || System.currentTimeMillis() - snapshotTime >= maxAge) {
+            readAll(connection);
+        } else {
+            Set<String> read = snapshotAttributes.get(objectName);
+            if (read == null || !read.containsAll(attributeNames)) {
+                readOne(connection, objectName, registered);
+            }
+        }
+
+        Throwable failure = snapshotFailures.get(objectName);
+        if (failure != null) {
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            throw new RuntimeException("Failed to read the attributes of MBean [" + objectName + "]", failure);
+        }
+        return snapshotValues.get(objectName);
+    }
+
+    /**
+     * Stops reading the attributes of an MBean, until they are asked for again.
+     */
+    public synchronized void unregister(String objectName) {
+        registeredAttributes.remove(objectName);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void readAll(EmsConnection connection) {
+        long startTime = System.currentTimeMillis();
+
+        Map<String, Future<Map<String, Object>>> reads = new HashMap<String, Future<Map<String, Object>>>();
+        Map<String, Set<String>> attributes = new HashMap<String, Set<String>>();
+        for (Map.Entry<String, Set<String>> entry : registeredAttributes.entrySet()) {
+            attributes.put(entry.getKey(), new HashSet<String>(entry.getValue()));
+            reads.put(entry.getKey(), submit(connection, entry.getKey(), entry.getValue()));
+        }
+
+        snapshotConnection = connection;
+        snapshotAttributes = attributes;
+        snapshotValues = new HashMap<String, Map<String, Object>>();
+        snapshotFailures = new HashMap<String, Throwable>();
+
+        long deadline = startTime + readTimeout;
+        for (Map.Entry<String, Future<Map<String, Object>>> entry : reads.entrySet()) {
+            collect(entry.getKey(), entry.getValue(), deadline);
+        }
+        snapshotTime = System.currentTimeMillis();
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Read the attributes of " + snapshotValues.size() + " MBeans, " + snapshotFailures.size()
+                + " failed, in " + (snapshotTime - startTime) + " ms.");
+        }
+    }
+
+    private void readOne(EmsConnection connection, String objectName, Set<String> attributeNames) {
+        Future<Map<String, Object>> read = submit(connection, objectName, attributeNames);
+        snapshotAttributes.put(objectName, new HashSet<String>(attributeNames));
+        snapshotValues.remove(objectName);
+        snapshotFailures.remove(objectName);
+        collect(objectName, read, System.currentTimeMillis() + readTimeout);
+    }
+
+    private Future<Map<String, Object>> submit(final EmsConnection connection, final String objectName,
+        Set<String> attributeNames) {
+        final List<String> names = new ArrayList<String>(attributeNames);
+        return executor.submit(new Callable<Map<String, Object>>() {
+            public Map<String, Object> call() {
+                return read(connection, objectName, names);
+            }
+        });
+    }
+
+    private void collect(String objectName, Future<Map<String, Object>> read, long deadline) {
+        try {
+            Map<String, Object> beanValues = read.get(Math.max(deadline - System.currentTimeMillis(), 0L),
+                TimeUnit.MILLISECONDS);
+            if (beanValues == null) {
+                // the MBean is gone, components still interested in it will register it again
+                registeredAttributes.remove(objectName);
+                snapshotAttributes.remove(objectName);
+            } else {
+                snapshotValues.put(objectName, beanValues);
+            }
+        } catch (ExecutionException e) {
+            snapshotFailures.put(objectName, e.getCause());
+        } catch (TimeoutException e) {
+            read.cancel(true);
+            snapshotFailures.put(objectName, new TimeoutException("Reading the attributes of MBean [" + objectName
+                + "] did not complete within " + readTimeout + " ms"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            read.cancel(true);
+            snapshotFailures.put(objectName, e);
+        }
+    }
+
+    private static Map<String, Object> read(EmsConnection connection, String objectName, List<String> attributeNames) {
+        EmsBean bean = connection.getBean(objectName);
+        if (bean == null) {
+            return null;
+        }
+        Map<String, Object> values = new HashMap<String, Object>();
+        for (EmsAttribute attribute : bean.refreshAttributes(attributeNames)) {
+            values.put(attribute.getName(), attribute.getValue());
+        }
+        return values;
+    }
+}
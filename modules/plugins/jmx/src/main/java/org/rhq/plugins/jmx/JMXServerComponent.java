@@ -51,8 +51,19 @@ public class JMXServerComponent<T extends ResourceComponent<?>> implements JMXCo
 
     private static final Log log = LogFactory.getLog(JMXServerComponent.class);
 
+    /**
+     * The plugin configuration property holding the time, in seconds, the attributes read in bulk for the MBean
+     * components of this server are reused. Bulk collection is off when the property is not set or not positive.
+     */
+    public static final String BULK_COLLECTION_MAX_AGE_PROP = "bulkCollectionMaxAge";
+
+    private static final int BULK_COLLECTION_THREADS = 4;
+
+    private static final long BULK_COLLECTION_READ_TIMEOUT = 30000L;
+
     private volatile EmsConnection connection;
     private volatile ConnectionProvider connectionProvider;
+    private volatile BulkAttributeCollector bulkAttributeCollector;
 
     /**
      * The context of a component that is started. Note, other classes should use #getResourceContext(), rather than
@@ -64,6 +75,13 @@ public class JMXServerComponent<T extends ResourceComponent<?>> implements JMXCo
         this.context = context;
         log.debug("Starting connection to " + context.getResourceType() + "[" + context.getResourceKey() + "]...");
 
+        String bulkCollectionMaxAge = context.getPluginConfiguration().getSimpleValue(BULK_COLLECTION_MAX_AGE_PROP,
+            null);
+        if (bulkCollectionMaxAge != null && Long.parseLong(bulkCollectionMaxAge) > 0) {
+            this.bulkAttributeCollector = new BulkAttributeCollector(Long.parseLong(bulkCollectionMaxAge) * 1000L,
+                BULK_COLLECTION_THREADS, BULK_COLLECTION_READ_TIMEOUT);
+        }
+
         // If connecting to the EMS fails, log a warning but still succeed in starting. getAvailability() will keep
         // trying to connect each time it is called.
         try {
@@ -106,6 +124,10 @@ public class JMXServerComponent<T extends ResourceComponent<?>> implements JMXCo
     }
 
     public void stop() {
+        if (bulkAttributeCollector != null) {
+            bulkAttributeCollector.shutdown();
+            bulkAttributeCollector = null;
+        }
         if (connection != null) {
             try {
                 connection.close();
@@ -133,6 +155,14 @@ public class JMXServerComponent<T extends ResourceComponent<?>> implements JMXCo
         return this.context;
     }
 
+    /**
+     * @return the collector the MBean components of this server read their attributes through, or <code>null</code>
+     *         if bulk collection is off
+     */
+    public BulkAttributeCollector getBulkAttributeCollector() {
+        return this.bulkAttributeCollector;
+    }
+
     /**
      * This method will attempt to reestablish the connection to the JMX server
      * if it detects that the current connection is no longer open or valid.
@@ -118,6 +118,10 @@ public class MBeanResourceComponent<T extends JMXComponent<?>> implements Measur
      * @see ResourceComponent#stop()
      */
     public void stop() {
+        BulkAttributeCollector collector = getBulkAttributeCollector();
+        if (collector != null && this.bean != null) {
+            collector.unregister(this.bean.getBeanName().getCanonicalName());
+        }
         setResourceContext(null);
         setEmsBean(null);
     }
@@ -295,8 +299,21 @@ public class MBeanResourceComponent<T extends JMXComponent<?>> implements Measur
         // First do the default properties against this component's main bean
         getBeanProperties(report, bean, defaultBeanRequests);
 
+        BulkAttributeCollector collector = getBulkAttributeCollector();
         for (String beanNameTemplate : beansMap.keySet()) {
             String transformedbeanName = transformBeanName(beanNameTemplate);
+            if (collector != null) {
+                // no need to look the bean up, the collector reads it along with the other beans
+                Set<MeasurementScheduleRequest> beanRequests = beansMap.get(beanNameTemplate);
+                Map<String, Object> values = collector.getAttributes(getEmsConnection(), transformedbeanName,
+                    getAttributeNames(beanRequests));
+                if (values == null) {
+                    log.info("Unable to retrieve associated MBean: " + transformedbeanName);
+                } else {
+                    addBeanProperties(report, beanRequests, values);
+                }
+                continue;
+            }
             EmsBean otherBean = getEmsConnection().getBean(transformedbeanName);
             if (otherBean == null) {
                 log.info("Unable to retrieve associated MBean: " + transformedbeanName);
@@ -350,6 +367,22 @@ public class MBeanResourceComponent<T extends JMXComponent<?>> implements Measur
         return result;
     }
 
+    /**
+     * Gets the collector of the JMX server this component's MBean belongs to, if that server collects attributes in
+     * bulk.
+     *
+     * @return the collector, or <code>null</code> if attributes are read MBean by MBean
+     */
+    protected BulkAttributeCollector getBulkAttributeCollector() {
+        Object component = (this.resourceContext != null) ? this.resourceContext.getParentResourceComponent() : null;
+        while (component instanceof MBeanResourceComponent) {
+            ResourceContext<?> context = ((MBeanResourceComponent<?>) component).getResourceContext();
+            component = (context != null) ? context.getParentResourceComponent() : null;
+        }
+        return (component instanceof JMXServerComponent) ? ((JMXServerComponent<?>) component)
+            .getBulkAttributeCollector() : null;
+    }
+
     protected String transformBeanName(String beanTemplate) {
         Matcher m = TEMPLATE_PATTERN.matcher(beanTemplate);
 
@@ -367,6 +400,24 @@ public class MBeanResourceComponent<T extends JMXComponent<?>> implements Measur
 
     protected void getBeanProperties(MeasurementReport report, EmsBean thisBean,
         Set<MeasurementScheduleRequest> requests) {
+        List<String> props = getAttributeNames(requests);
+
+        Map<String, Object> values = null;
+        BulkAttributeCollector collector = getBulkAttributeCollector();
+        if (collector != null) {
+            values = collector.getAttributes(getEmsConnection(), thisBean.getBeanName().getCanonicalName(), props);
+        }
+        if (values == null) {
+            values = new HashMap<String, Object>();
+            for (EmsAttribute refreshedAttribute : thisBean.refreshAttributes(props)) {
+                values.put(refreshedAttribute.getName(), refreshedAttribute.getValue());
+            }
+        }
+
+        addBeanProperties(report, requests, values);
+    }
+
+    private List<String> getAttributeNames(Set<MeasurementScheduleRequest> requests) {
         List<String> props = new ArrayList<String>();
         for (MeasurementScheduleRequest request : requests) {
             Matcher m = PROPERTY_PATTERN.matcher(request.getName());
@@ -378,9 +429,11 @@ public class MBeanResourceComponent<T extends JMXComponent<?>> implements Measur
                 props.add(request.getName());
             }
         }
+        return props;
+    }
 
-        List<EmsAttribute> refreshedAttributes = thisBean.refreshAttributes(props);
-
+    private void addBeanProperties(MeasurementReport report, Set<MeasurementScheduleRequest> requests,
+        Map<String, Object> values) {
         for (MeasurementScheduleRequest request : requests) {
             Matcher m = PROPERTY_PATTERN.matcher(request.getName());
             String fullProperty = null;
@@ -393,19 +446,12 @@ public class MBeanResourceComponent<T extends JMXComponent<?>> implements Measur
                 attributeName = request.getName();
             }
 
-            EmsAttribute attribute = null;
-            for (EmsAttribute refreshedAttribute : refreshedAttributes) {
-                if (attributeName.equals(refreshedAttribute.getName())) {
-                    attribute = refreshedAttribute;
-                }
-            }
-
-            if (attribute == null) {
+            if (!values.containsKey(attributeName)) {
                 log.debug("Unable to collect measurement, attribute [" + request.getName() + "] not found on ["
                     + this.resourceContext.getResourceKey() + "]");
                 // TODO GH: report.addError
             } else {
-                Object value = attribute.getValue();
+                Object value = values.get(attributeName);
                 if ((value != null) && (fullProperty != null)) {
                     // we're meant to load a specific property of the returned value object
                     value = lookupAttributeProperty(value, fullProperty);
@@ -0,0 +1,157 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.plugins.jmx.test;
+
+import static java.util.Arrays.asList;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeoutException;
+
+import org.mc4j.ems.connection.EmsConnection;
+import org.mc4j.ems.connection.bean.EmsBean;
+import org.mc4j.ems.connection.bean.attribute.EmsAttribute;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.plugins.jmx.BulkAttributeCollector;
+
+@Test
+public class BulkAttributeCollectorTest {
+
+    private EmsConnection connection;
+    private EmsBean memory;
+    private EmsBean threading;
+    private BulkAttributeCollector collector;
+
+    @BeforeMethod
+    public void setUp() {
+        connection = mock(EmsConnection.class);
+        memory = mockBean("java.lang:type=Memory", "HeapMemoryUsage", "NonHeapMemoryUsage");
+        threading = mockBean("java.lang:type=Threading", "ThreadCount");
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        if (collector != null) {
+            collector.shutdown();
+        }
+    }
+
+    public void testRegisteredBeansAreReadTogether() {
+        collector = new BulkAttributeCollector(0L, 2, 10000L);
+        collector.getAttributes(connection, "java.lang:type=Memory", asList("HeapMemoryUsage"));
+        collector.getAttributes(connection, "java.lang:type=Threading", asList("ThreadCount"));
+        collector.getAttributes(connection, "java.lang:type=Memory", asList("HeapMemoryUsage"));
+
+        verify(memory, times(3)).refreshAttributes(anyListOf(String.class));
+        verify(threading, times(2)).refreshAttributes(anyListOf(String.class));
+    }
+
+    public void testSnapshotIsReusedUntilItExpires() {
+        collector = new BulkAttributeCollector(60000L, 2, 10000L);
+        collector.getAttributes(connection, "java.lang:type=Memory", asList("HeapMemoryUsage"));
+        collector.getAttributes(connection, "java.lang:type=Threading", asList("ThreadCount"));
+
+        Map<String, Object> values = collector.getAttributes(connection, "java.lang:type=Memory",
+            asList("HeapMemoryUsage"));
+        assertEquals(values.get("HeapMemoryUsage"), "HeapMemoryUsage value");
+        values = collector.getAttributes(connection, "java.lang:type=Threading", asList("ThreadCount"));
+        assertEquals(values.get("ThreadCount"), "ThreadCount value");
+
+        // the threading MBean missing from the snapshot is read alone
+        verify(memory, times(1)).refreshAttributes(anyListOf(String.class));
+        verify(threading, times(1)).refreshAttributes(anyListOf(String.class));
+    }
+
+    public void testMissingAttributesAreMergedIntoSnapshot() {
+        collector = new BulkAttributeCollector(60000L, 2, 10000L);
+        collector.getAttributes(connection, "java.lang:type=Memory", asList("HeapMemoryUsage"));
+        collector.getAttributes(connection, "java.lang:type=Threading", asList("ThreadCount"));
+        collector.getAttributes(connection, "java.lang:type=Memory", asList("HeapMemoryUsage", "NonHeapMemoryUsage"));
+
+        Map<String, Object> values = collector.getAttributes(connection, "java.lang:type=Memory",
+            asList("NonHeapMemoryUsage"));
+        assertEquals(values.get("NonHeapMemoryUsage"), "NonHeapMemoryUsage value");
+        values = collector.getAttributes(connection, "java.lang:type=Threading", asList("ThreadCount"));
+        assertEquals(values.get("ThreadCount"), "ThreadCount value");
+
+        verify(memory, times(2)).refreshAttributes(anyListOf(String.class));
+        verify(threading, times(1)).refreshAttributes(anyListOf(String.class));
+    }
+
+    public void testSlowBeanTimesOut() {
+        final CountDownLatch release = new CountDownLatch(1);
+        when(threading.refreshAttributes(anyListOf(String.class))).thenAnswer(new Answer<List<EmsAttribute>>() {
+            public List<EmsAttribute> answer(InvocationOnMock invocation) throws Throwable {
+                release.await();
+                return new ArrayList<EmsAttribute>();
+            }
+        });
+        collector = new BulkAttributeCollector(0L, 2, 100L);
+        try {
+            collector.getAttributes(connection, "java.lang:type=Threading", asList("ThreadCount"));
+            fail("Expected the read of the threading MBean to time out");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof TimeoutException, "Unexpected failure: " + e);
+        }
+
+        Map<String, Object> values = collector.getAttributes(connection, "java.lang:type=Memory",
+            asList("HeapMemoryUsage"));
+        assertEquals(values.get("HeapMemoryUsage"), "HeapMemoryUsage value");
+        release.countDown();
+    }
+
+    public void testUnknownBean() {
+        collector = new BulkAttributeCollector(60000L, 2, 10000L);
+        assertNull(collector.getAttributes(connection, "java.lang:type=Unknown", asList("Foo")));
+    }
+
+    private EmsBean mockBean(String objectName, String... attributeNames) {
+        EmsBean bean = mock(EmsBean.class);
+        List<EmsAttribute> attributes = new ArrayList<EmsAttribute>();
+        for (String attributeName : attributeNames) {
+            EmsAttribute attribute = mock(EmsAttribute.class);
+            when(attribute.getName()).thenReturn(attributeName);
+            when(attribute.getValue()).thenReturn(attributeName + " value");
+            attributes.add(attribute);
+        }
+        when(bean.refreshAttributes(anyListOf(String.class))).thenReturn(attributes);
+        when(connection.getBean(objectName)).thenReturn(bean);
+        return bean;
+    }
+}
@@ -40,6 +40,7 @@ import org.rhq.plugins.database.ConnectionPoolingSupport;
 import org.rhq.plugins.database.DatabaseComponent;
 import org.rhq.plugins.database.DatabasePluginUtil;
 import org.rhq.plugins.database.PooledConnectionProvider;
+import org.rhq.plugins.database.QuerySnapshot;
 
 /**
  * @author Steve Millidge (C2B2 Consulting Limited)
@@ -49,9 +50,15 @@ public class MySqlDatabaseComponent implements DatabaseComponent, ConnectionPool
 
     private static final Log LOG = LogFactory.getLog(MySqlDatabaseComponent.class);
 
+    /**
+     * Table components collected in the same cycle share the status of all the tables for this long.
+     */
+    private static final long TABLE_STATUS_MAX_AGE = 60 * 1000L;
+
     private ResourceContext resourceContext;
     private MySqlComponent parent;
     private String databaseName;
+    private QuerySnapshot tableStatus;
 
     @Override
     public Connection getConnection() {
@@ -78,17 +85,27 @@ public class MySqlDatabaseComponent implements DatabaseComponent, ConnectionPool
         resourceContext = rc;
         databaseName = rc.getResourceKey();
         parent = (MySqlComponent) resourceContext.getParentResourceComponent();
+        tableStatus = new QuerySnapshot("show table status from `" + databaseName + "`", TABLE_STATUS_MAX_AGE,
+            "Name");
     }
 
     public String getName() {
         return databaseName;
     }
 
+    /**
+     * The status of the tables of the database, as returned by <code>show table status</code>, keyed by table name.
+     */
+    public QuerySnapshot getTableStatus() {
+        return tableStatus;
+    }
+
     @Override
     public void stop() {
         resourceContext = null;
         databaseName = null;
         parent = null;
+        tableStatus = null;
     }
 
     @Override
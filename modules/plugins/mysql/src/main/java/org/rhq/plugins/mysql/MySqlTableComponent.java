@@ -23,9 +23,8 @@ import static org.rhq.core.domain.measurement.AvailabilityType.DOWN;
 import static org.rhq.core.domain.measurement.AvailabilityType.UP;
 
 import java.sql.Connection;
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.logging.Log;
@@ -41,7 +40,6 @@ import org.rhq.core.pluginapi.inventory.ResourceContext;
 import org.rhq.core.pluginapi.measurement.MeasurementFacet;
 import org.rhq.plugins.database.ConnectionPoolingSupport;
 import org.rhq.plugins.database.DatabaseComponent;
-import org.rhq.plugins.database.DatabasePluginUtil;
 import org.rhq.plugins.database.PooledConnectionProvider;
 
 /**
@@ -90,39 +88,25 @@ public class MySqlTableComponent implements DatabaseComponent, ConnectionPooling
 
     @Override
     public AvailabilityType getAvailability() {
-        Connection jdbcConnection = null;
-        Statement statement = null;
-        ResultSet resultSet = null;
         try {
-            jdbcConnection = getPooledConnectionProvider().getPooledConnection();
-            statement = jdbcConnection.createStatement();
-            resultSet = statement.executeQuery("show tables from " + databaseName + " like '" + tableName + "'");
-            if (resultSet.first()) {
+            if (parent.getTableStatus().getRow(parent, tableName) != null) {
                 return UP;
             }
         } catch (SQLException se) {
             // Will return down
-        } finally {
-            DatabasePluginUtil.safeClose(jdbcConnection, statement, resultSet);
         }
         return DOWN;
     }
 
     @Override
     public void getValues(MeasurementReport mr, Set<MeasurementScheduleRequest> set) throws Exception {
-        Connection jdbcConnection = null;
-        Statement statement = null;
-        ResultSet resultSet = null;
         try {
-            jdbcConnection = getPooledConnectionProvider().getPooledConnection();
-            statement = jdbcConnection.createStatement();
-            resultSet = statement.executeQuery("show table status from " + databaseName + " like '" + tableName + "'");
-            if (resultSet.next()) {
+            // one query per database and collection cycle instead of one per table
+            Map<String, Object> row = parent.getTableStatus().getRow(parent, tableName);
+            if (row != null) {
                 for (MeasurementScheduleRequest request : set) {
-                    String value = resultSet.getString(request.getName());
-                    if (value == null) {
-                        value = "0";
-                    }
+                    Object columnValue = row.get(request.getName());
+                    String value = columnValue == null ? "0" : columnValue.toString();
                     switch (request.getDataType()) {
                     case MEASUREMENT: {
                         mr.addData(new MeasurementDataNumeric(request, Double.valueOf(value)));
@@ -142,8 +126,6 @@ public class MySqlTableComponent implements DatabaseComponent, ConnectionPooling
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Unable to measure table statistics", se);
             }
-        } finally {
-            DatabasePluginUtil.safeClose(jdbcConnection, statement, resultSet);
         }
     }
 }
@@ -0,0 +1,327 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.plugins.netservices;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.rhq.plugins.netservices.util.StringUtil.EMPTY_STRING;
+import static org.rhq.plugins.netservices.util.StringUtil.isNotBlank;
+
+import java.net.ProxySelector;
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.params.HttpClientParams;
+import org.apache.http.client.protocol.ClientContext;
+import org.apache.http.conn.params.ConnRoutePNames;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.ProxySelectorRoutePlanner;
+import org.apache.http.impl.cookie.DateUtils;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+import org.rhq.core.domain.configuration.Configuration;
+import org.rhq.plugins.netservices.HTTPNetServiceComponent.ConfigKeys;
+
+/**
+ * Runs the checks of all the HTTP net services of the agent. Checks run on a bounded pool of threads, which limits the
+ * number of requests in flight, and share a pool of keep-alive connections, so that checking an endpoint again does
+ * not open a new TCP (and TLS) connection every time.
+ * <p/>
+ * The checker is shared by the components, which {@link #acquire() acquire} it when they start and
+ * {@link #release() release} it when they stop. It is shut down when the last component releases it.
+ */
+class HTTPChecker {
+
+    private static final Log LOG = LogFactory.getLog(HTTPChecker.class);
+
+    static final int MAX_IN_FLIGHT = 20;
+
+    static final int MAX_CONNECTIONS_PER_HOST = 4;
+
+    static final int CONNECTION_TIMEOUT = 30 * 1000;
+
+    static final int SOCKET_TIMEOUT = 60 * 1000;
+
+    private static final long IDLE_CONNECTION_TIMEOUT = 60 * 1000L;
+
+    private static HTTPChecker instance;
+
+    private static int references;
+
+    private final PoolingClientConnectionManager connectionManager;
+
+    private final DefaultHttpClient client;
+
+    private final DefaultHttpClient systemProxyClient;
+
+    private final ThreadPoolExecutor executor;
+
+    private long lastIdleConnectionsCleanup = System.currentTimeMillis();
+
+    private HTTPChecker() {
+        connectionManager = new PoolingClientConnectionManager();
+        connectionManager.setMaxTotal(MAX_IN_FLIGHT);
+        connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_HOST);
+
+        client = createClient(connectionManager);
+        systemProxyClient = createClient(connectionManager);
+        systemProxyClient.setRoutePlanner(new ProxySelectorRoutePlanner(connectionManager.getSchemeRegistry(),
+            ProxySelector.getDefault()));
+
+        final AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(MAX_IN_FLIGHT, MAX_IN_FLIGHT, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "HTTP Net Service Checker-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    private static DefaultHttpClient createClient(PoolingClientConnectionManager connectionManager) {
+        DefaultHttpClient client = new DefaultHttpClient(connectionManager);
+        HttpParams httpParams = client.getParams();
+        HttpConnectionParams.setConnectionTimeout(httpParams, CONNECTION_TIMEOUT);
+        HttpConnectionParams.setSoTimeout(httpParams, SOCKET_TIMEOUT);
+        return client;
+    }
+
+    static synchronized HTTPChecker acquire() {
+        if (instance == null) {
+            instance = new HTTPChecker();
+        }
+        references++;
+        return instance;
+    }
+
+    static synchronized void release() {
+        if (references > 0 && --references == 0) {
+            instance.shutdown();
+            instance = null;
+        }
+    }
+
+    private void shutdown() {
+        executor.shutdownNow();
+        connectionManager.shutdown();
+    }
+
+    /**
+     * Submits the check of an endpoint.
+     *
+     * @param componentConfig the endpoint to check
+     * @param pluginConfig the plugin configuration of the component, for the credentials and the redirect policy
+     * @return the future result of the check
+     */
+    Future<Result> submit(final HTTPNetServiceComponentConfiguration componentConfig,
+        final Configuration pluginConfig) {
+        closeIdleConnections();
+        return executor.submit(new Callable<Result>() {
+            @Override
+            public Result call() {
+                return check(componentConfig, pluginConfig);
+            }
+        });
+    }
+
+    private void closeIdleConnections() {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (now - lastIdleConnectionsCleanup < IDLE_CONNECTION_TIMEOUT) {
+                return;
+            }
+            lastIdleConnectionsCleanup = now;
+        }
+        connectionManager.closeExpiredConnections();
+        connectionManager.closeIdleConnections(IDLE_CONNECTION_TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    private Result check(HTTPNetServiceComponentConfiguration componentConfig, Configuration pluginConfig) {
+        HttpContext context = new BasicHttpContext();
+
+        String userName = pluginConfig.getSimpleValue(ConfigKeys.USER, EMPTY_STRING);
+        // Set credentials only if a user name is configured
+        if (isNotBlank(userName)) {
+            String password = pluginConfig.getSimpleValue(ConfigKeys.PASSWORD, EMPTY_STRING);
+            String realm = pluginConfig.getSimpleValue(ConfigKeys.REALM, AuthScope.ANY_REALM);
+            BasicCredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+            credentialsProvider.setCredentials(
+                new AuthScope(componentConfig.getEndPointUrl().getHost(), componentConfig.getEndPointUrl().getPort(),
+                    realm), new UsernamePasswordCredentials(userName, password));
+            context.setAttribute(ClientContext.CREDS_PROVIDER, credentialsProvider);
+        }
+
+        HttpRequestBase method;
+        switch (componentConfig.getHttpMethod()) {
+        case GET:
+            method = new HttpGet(componentConfig.getEndPointUrl().toExternalForm());
+            break;
+        case HEAD:
+            method = new HttpHead(componentConfig.getEndPointUrl().toExternalForm());
+            break;
+        default:
+            throw new RuntimeException("Unsupported http method: '" + componentConfig.getHttpMethod() + "'");
+        }
+        // the clients are shared, so the settings of the component go to the request
+        Boolean followRedirects = pluginConfig.getSimple(ConfigKeys.FOLOW_REDIRECTS).getBooleanValue();
+        HttpParams httpParams = method.getParams();
+        HttpClientParams.setRedirecting(httpParams, followRedirects == null ? false : followRedirects.booleanValue());
+
+        DefaultHttpClient client = this.client;
+        switch (componentConfig.getProxyMode()) {
+        case MANUAL:
+            HttpHost proxy = new HttpHost(componentConfig.getProxyHost(), componentConfig.getProxyPort());
+            httpParams.setParameter(ConnRoutePNames.DEFAULT_PROXY, proxy);
+            break;
+        case SYS_PROPS:
+            client = systemProxyClient;
+            break;
+        default:
+        }
+
+        HttpEntity entity = null;
+        try {
+
+            long start = System.nanoTime();
+            HttpResponse response = client.execute(method, context);
+            long connectTime = NANOSECONDS.toMillis(System.nanoTime() - start);
+            entity = response.getEntity();
+
+            // Availability may depend on reponse code value
+            int responseCode = response.getStatusLine().getStatusCode();
+            boolean success = !pluginConfig.getSimple(ConfigKeys.VALIDATE_RESPONSE_CODE).getBooleanValue()
+                || (responseCode >= 200 && responseCode <= 299);
+            // Availability may depend on reponse content matching a pattern
+            success = success
+                && (componentConfig.getResponseValidationPattern() == null || componentConfig
+                    .getResponseValidationPattern().matcher(entity == null ? EMPTY_STRING : EntityUtils.toString(entity))
+                    .find());
+
+            long readTime = NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            Header dateHeader = response.getFirstHeader("Date");
+            Date contentDate = dateHeader == null ? null : DateUtils.parseDate(dateHeader.getValue());
+
+            return new Result(success, connectTime, readTime, entity == null ? null : entity.getContentLength(),
+                contentDate);
+
+        } catch (Exception e) {
+            if (LOG.isTraceEnabled()) {
+                LOG.trace(e);
+            }
+            method.abort();
+        } finally {
+            try {
+                // consuming the content releases the connection to the pool, to be kept alive
+                EntityUtils.consume(entity);
+            } catch (Exception e) {
+                method.abort();
+            }
+        }
+        return new Result(false, null, null, null, null);
+    }
+
+    /**
+     * The outcome of a check.
+     */
+    static class Result {
+
+        private final long timestamp = System.currentTimeMillis();
+
+        private final boolean success;
+
+        private final Long connectTime;
+
+        private final Long readTime;
+
+        private final Long contentLength;
+
+        private final Date contentDate;
+
+        Result(boolean success, Long connectTime, Long readTime, Long contentLength, Date contentDate) {
+            this.success = success;
+            this.connectTime = connectTime;
+            this.readTime = readTime;
+            this.contentLength = contentLength;
+            this.contentDate = contentDate;
+        }
+
+        long getTimestamp() {
+            return timestamp;
+        }
+
+        boolean isSuccess() {
+            return success;
+        }
+
+        /**
+         * @return the time to get the response headers, or <code>null</code> if the request failed
+         */
+        Long getConnectTime() {
+            return connectTime;
+        }
+
+        /**
+         * @return the time to get the whole response, or <code>null</code> if the request failed
+         */
+        Long getReadTime() {
+            return readTime;
+        }
+
+        /**
+         * @return the declared length of the content, or <code>null</code> if there is no content
+         */
+        Long getContentLength() {
+            return contentLength;
+        }
+
+        /**
+         * @return the date of the content, or <code>null</code> if it was not declared
+         */
+        Date getContentDate() {
+            return contentDate;
+        }
+    }
+}
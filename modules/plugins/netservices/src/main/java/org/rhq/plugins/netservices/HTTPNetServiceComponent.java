@@ -19,35 +19,12 @@
 
 package org.rhq.plugins.netservices;
 
-import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static org.rhq.plugins.netservices.HTTPNetServiceComponentConfiguration.createComponentConfiguration;
-import static org.rhq.plugins.netservices.util.StringUtil.EMPTY_STRING;
-import static org.rhq.plugins.netservices.util.StringUtil.isNotBlank;
 
-import java.io.IOException;
-import java.net.ProxySelector;
 import java.util.Date;
 import java.util.Set;
-
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
-import org.apache.http.Header;
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpHost;
-import org.apache.http.HttpResponse;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.methods.HttpHead;
-import org.apache.http.client.methods.HttpRequestBase;
-import org.apache.http.client.params.HttpClientParams;
-import org.apache.http.conn.params.ConnRoutePNames;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.impl.conn.BasicClientConnectionManager;
-import org.apache.http.impl.conn.ProxySelectorRoutePlanner;
-import org.apache.http.impl.cookie.DateUtils;
-import org.apache.http.params.HttpParams;
-import org.apache.http.util.EntityUtils;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.rhq.core.domain.configuration.Configuration;
 import org.rhq.core.domain.measurement.AvailabilityType;
@@ -61,6 +38,11 @@ import org.rhq.core.pluginapi.measurement.MeasurementFacet;
 
 /**
  * Monitoring of HTTP Servers
+ * <p/>
+ * Checks run on the {@link HTTPChecker} shared by all the components. Availability is served from the result of the
+ * latest check as long as it is younger than the {@link ConfigKeys#AVAILABILITY_CACHE_TIME availability cache time};
+ * once it is past half of that time, the next check is started in the background so that the following availability
+ * request finds a fresh result without waiting for it.
  * 
  * @author Greg Hinkle
  */
@@ -83,6 +65,7 @@ public class HTTPNetServiceComponent implements ResourceComponent, MeasurementFa
         public static final String PROXY_MODE = "proxyMode";
         public static final String PROXY_HOST = "proxyHost";
         public static final String PROXY_PORT = "proxyPort";
+        public static final String AVAILABILITY_CACHE_TIME = "availabilityCacheTime";
 
     }
 
@@ -92,14 +75,36 @@ public class HTTPNetServiceComponent implements ResourceComponent, MeasurementFa
 
     private HTTPNetServiceComponentConfiguration componentConfig;
 
+    private HTTPChecker checker;
+
+    private long availabilityCacheTime;
+
+    private HTTPChecker.Result lastResult;
+
+    private Future<HTTPChecker.Result> pendingCheck;
+
     @Override
     public void start(ResourceContext resourceContext) throws InvalidPluginConfigurationException, Exception {
         pluginConfig = resourceContext.getPluginConfiguration();
         componentConfig = createComponentConfiguration(pluginConfig);
+        availabilityCacheTime = 1000L * Long.parseLong(pluginConfig.getSimpleValue(
+            ConfigKeys.AVAILABILITY_CACHE_TIME, "0"));
+        checker = HTTPChecker.acquire();
     }
 
     @Override
     public void stop() {
+        synchronized (this) {
+            if (pendingCheck != null) {
+                pendingCheck.cancel(true);
+                pendingCheck = null;
+            }
+            lastResult = null;
+        }
+        if (checker != null) {
+            HTTPChecker.release();
+            checker = null;
+        }
         pluginConfig = null;
         componentConfig = null;
     }
@@ -107,7 +112,7 @@ public class HTTPNetServiceComponent implements ResourceComponent, MeasurementFa
     @Override
     public AvailabilityType getAvailability() {
         try {
-            return getValuesOrAvailability(null, null) ? AvailabilityType.UP : AvailabilityType.DOWN;
+            return getResult(availabilityCacheTime).isSuccess() ? AvailabilityType.UP : AvailabilityType.DOWN;
         } catch (Exception e) {
             return AvailabilityType.DOWN;
         }
@@ -115,110 +120,65 @@ public class HTTPNetServiceComponent implements ResourceComponent, MeasurementFa
 
     @Override
     public void getValues(MeasurementReport report, Set<MeasurementScheduleRequest> metrics) throws Exception {
-        getValuesOrAvailability(report, metrics);
-    }
-
-    private boolean getValuesOrAvailability(MeasurementReport report, Set<MeasurementScheduleRequest> metrics)
-        throws Exception {
-
-        BasicClientConnectionManager httpConnectionManager = new BasicClientConnectionManager();
-        DefaultHttpClient client = new DefaultHttpClient(httpConnectionManager);
-
-        String userName = pluginConfig.getSimpleValue(ConfigKeys.USER, EMPTY_STRING);
-        // Set credentials only if a user name is configured
-        if (isNotBlank(userName)) {
-            String password = pluginConfig.getSimpleValue(ConfigKeys.PASSWORD, EMPTY_STRING);
-            String realm = pluginConfig.getSimpleValue(ConfigKeys.REALM, AuthScope.ANY_REALM);
-            client.getCredentialsProvider().setCredentials(
-                new AuthScope(componentConfig.getEndPointUrl().getHost(), componentConfig.getEndPointUrl().getPort(),
-                    realm), new UsernamePasswordCredentials(userName, password));
+        // measurements come from a new check, or from the one in progress
+        HTTPChecker.Result result = getResult(0);
+        if (result.getConnectTime() == null) {
+            // the request failed, there's nothing to report
+            return;
         }
-
-        HttpRequestBase method;
-        switch (componentConfig.getHttpMethod()) {
-        case GET:
-            method = new HttpGet(componentConfig.getEndPointUrl().toExternalForm());
-            break;
-        case HEAD:
-            method = new HttpHead(componentConfig.getEndPointUrl().toExternalForm());
-            break;
-        default:
-            throw new RuntimeException("Unsupported http method: '" + componentConfig.getHttpMethod() + "'");
-        }
-        Boolean followRedirects = pluginConfig.getSimple(ConfigKeys.FOLOW_REDIRECTS).getBooleanValue();
-        HttpParams httpParams = client.getParams();
-        HttpClientParams.setRedirecting(httpParams, followRedirects == null ? false : followRedirects.booleanValue());
-
-        switch (componentConfig.getProxyMode()) {
-        case MANUAL:
-            HttpHost proxy = new HttpHost(componentConfig.getProxyHost(), componentConfig.getProxyPort());
-            httpParams.setParameter(ConnRoutePNames.DEFAULT_PROXY, proxy);
-            break;
-        case SYS_PROPS:
-            ProxySelectorRoutePlanner routePlanner = new ProxySelectorRoutePlanner(client.getConnectionManager()
-                .getSchemeRegistry(), ProxySelector.getDefault());
-            client.setRoutePlanner(routePlanner);
-            break;
-        default:
+        for (MeasurementScheduleRequest request : metrics) {
+            if (request.getName().equals("connectTime")) {
+                report.addData(new MeasurementDataNumeric(request, (double) result.getConnectTime()));
+            } else if (request.getName().equals("readTime")) {
+                report.addData(new MeasurementDataNumeric(request, (double) result.getReadTime()));
+            } else if (request.getName().equals("contentLength")) {
+                if (result.getContentLength() != null) {
+                    report.addData(new MeasurementDataNumeric(request, (double) result.getContentLength()));
+                }
+            } else if (request.getName().equals("contentAge")) {
+                Date contentDate = result.getContentDate();
+                if (contentDate != null) {
+                    report.addData(new MeasurementDataNumeric(request,
+                        (double) (System.currentTimeMillis() - contentDate.getTime())));
+                }
+            }
         }
+    }
 
-        try {
-
-            long start = System.nanoTime();
-            HttpResponse response = client.execute(method);
-            long connectTime = NANOSECONDS.toMillis(System.nanoTime() - start);
-
-            // Availability may depend on reponse code value 
-            int responseCode = response.getStatusLine().getStatusCode();
-            boolean success = !pluginConfig.getSimple(ConfigKeys.VALIDATE_RESPONSE_CODE).getBooleanValue()
-                || (responseCode >= 200 && responseCode <= 299);
-            // Availability may depend on reponse content matching a pattern
-            success = success
-                && (componentConfig.getResponseValidationPattern() == null || componentConfig
-                    .getResponseValidationPattern().matcher(getResponseBody(response)).find());
-
-            long readTime = NANOSECONDS.toMillis(System.nanoTime() - start);
-
-            Header dateHeader = response.getFirstHeader("Date");
-            Date contentDate = dateHeader == null ? null : DateUtils.parseDate(dateHeader.getValue());
-            HttpEntity entity = response.getEntity();
-
-            if (metrics != null) {
-                for (MeasurementScheduleRequest request : metrics) {
-                    if (request.getName().equals("connectTime")) {
-                        report.addData(new MeasurementDataNumeric(request, (double) connectTime));
-                    } else if (request.getName().equals("readTime")) {
-                        report.addData(new MeasurementDataNumeric(request, (double) readTime));
-                    } else if (request.getName().equals("contentLength")) {
-                        if (entity != null) {
-                            report.addData(new MeasurementDataNumeric(request, (double) entity.getContentLength()));
-                        }
-                    } else if (request.getName().equals("contentAge")) {
-                        if (contentDate != null) {
-                            report.addData(new MeasurementDataNumeric(request,
-                                (double) (System.currentTimeMillis() - contentDate.getTime())));
-                        }
+    /**
+     * Gets the result of the latest check if it is younger than <code>maxAge</code>, or waits for the result of a new
+     * check otherwise.
+     */
+    private HTTPChecker.Result getResult(long maxAge) throws InterruptedException, ExecutionException {
+        Future<HTTPChecker.Result> check;
+        synchronized (this) {
+            if (pendingCheck != null && pendingCheck.isDone()) {
+                lastResult = pendingCheck.get();
+                pendingCheck = null;
+            }
+            if (lastResult != null) {
+                long age = System.currentTimeMillis() - lastResult.getTimestamp();
+                if (age < maxAge) {
+                    if (age >= maxAge / 2 && pendingCheck == null) {
+                        // refresh ahead, the result will be there for the next request
+                        pendingCheck = checker.submit(componentConfig, pluginConfig);
                     }
+                    return lastResult;
                 }
             }
-
-            return success;
-
-        } catch (Exception e) {
-            if (LOG.isTraceEnabled()) {
-                LOG.trace(e);
+            if (pendingCheck == null) {
+                pendingCheck = checker.submit(componentConfig, pluginConfig);
             }
-        } finally {
-            method.abort();
-            client.getConnectionManager().shutdown();
+            check = pendingCheck;
         }
-        return false;
-    }
-
-    private String getResponseBody(HttpResponse response) throws IOException {
-        HttpEntity httpResponseEntity = response.getEntity();
-        return httpResponseEntity == null ? EMPTY_STRING : EntityUtils.toString(httpResponseEntity);
-
+        HTTPChecker.Result result = check.get();
+        synchronized (this) {
+            if (pendingCheck == check) {
+                lastResult = result;
+                pendingCheck = null;
+            }
+        }
+        return result;
     }
 
 }
@@ -20,6 +20,7 @@
 
 package org.rhq.plugins.netservices.itest;
 
+import static org.rhq.plugins.netservices.HTTPNetServiceComponent.ConfigKeys.AVAILABILITY_CACHE_TIME;
 import static org.rhq.plugins.netservices.HTTPNetServiceComponent.ConfigKeys.METHOD;
 import static org.rhq.plugins.netservices.HTTPNetServiceComponent.ConfigKeys.URL;
 import static org.rhq.plugins.netservices.HTTPNetServiceComponent.ConfigKeys.VALIDATE_RESPONSE_CODE;
@@ -117,6 +118,7 @@ public class HTTPNetServiceComponentTest extends NetServiceComponentTest {
         configuration.setSimpleValue(METHOD, "GET");
         configuration.setSimpleValue(VALIDATE_RESPONSE_CODE, "true");
         configuration.setSimpleValue(VALIDATE_RESPONSE_PATTERN, "success");
+        configuration.setSimpleValue(AVAILABILITY_CACHE_TIME, "60");
         MergeResourceResponse response = getInventoryManager().manuallyAddResource(
             getPluginManager().getMetadataManager().getType(SERVICE_NAME, PLUGIN_NAME), getPlatform().getId(),
             configuration, -1);
@@ -154,6 +156,14 @@ public class HTTPNetServiceComponentTest extends NetServiceComponentTest {
         assertTrue(value > 0);
     }
 
+    @Test(dependsOnMethods = "testMeasurement")
+    public void testCachedAvailability() throws Exception {
+        // the check made for the measurements is still valid
+        long start = System.currentTimeMillis();
+        assertEquals(httpNetServiceComponent.getAvailability(), AvailabilityType.UP);
+        assertTrue(System.currentTimeMillis() - start < SERVLET_SLEEP, "Availability should have been cached");
+    }
+
     private static class TestServlet extends HttpServlet {
         @Override
         protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
@@ -49,6 +49,7 @@ import org.rhq.plugins.database.ConnectionPoolingSupport;
 import org.rhq.plugins.database.DatabaseComponent;
 import org.rhq.plugins.database.DatabasePluginUtil;
 import org.rhq.plugins.database.PooledConnectionProvider;
+import org.rhq.plugins.database.QuerySnapshot;
 
 /**
  * @author Greg Hinkle
@@ -56,10 +57,21 @@ import org.rhq.plugins.database.PooledConnectionProvider;
 public class OracleServerComponent implements DatabaseComponent, ConnectionPoolingSupport, MeasurementFacet {
     private static final Log LOG = LogFactory.getLog(OracleServerComponent.class);
 
+    private static final String SQL_TABLESPACES = "SELECT t.tablespace_name, m.USED_SPACE usedSpace, "
+        + "m.TABLESPACE_SIZE totalSize, (m.USED_PERCENT/100) usedPercent FROM dba_tablespaces t "
+        + "LEFT JOIN dba_tablespace_usage_metrics m ON t.tablespace_name = m.tablespace_name";
+
+    /**
+     * Tablespace components collected in the same cycle share the usage of all the tablespaces for this long.
+     */
+    private static final long TABLESPACES_MAX_AGE = 60 * 1000L;
+
     private ResourceContext resourceContext;
     @Deprecated
     private Connection connection;
     private OraclePooledConnectionProvider pooledConnectionProvider;
+    private final QuerySnapshot tablespaces = new QuerySnapshot(SQL_TABLESPACES, TABLESPACES_MAX_AGE,
+        "tablespace_name");
 
     public void start(ResourceContext resourceContext) throws InvalidPluginConfigurationException, Exception {
         this.resourceContext = resourceContext;
@@ -68,9 +80,17 @@ public class OracleServerComponent implements DatabaseComponent, ConnectionPooli
     }
 
     public void stop() {
+        tablespaces.invalidate();
         removeConnection();
     }
 
+    /**
+     * The usage of all the tablespaces, keyed by tablespace name. Tablespaces without usage metrics have null values.
+     */
+    public QuerySnapshot getTablespaces() {
+        return tablespaces;
+    }
+
     @Override
     public boolean supportsConnectionPooling() {
         return true;
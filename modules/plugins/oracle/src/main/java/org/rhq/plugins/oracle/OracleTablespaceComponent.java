@@ -19,12 +19,6 @@
 
 package org.rhq.plugins.oracle;
 
-import static org.rhq.plugins.database.DatabasePluginUtil.getConnectionFromComponent;
-import static org.rhq.plugins.database.DatabasePluginUtil.getNumericQueryValues;
-
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Locale;
 import java.util.Map;
@@ -39,7 +33,6 @@ import org.rhq.core.domain.measurement.MeasurementReport;
 import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
 import org.rhq.core.pluginapi.measurement.MeasurementFacet;
 import org.rhq.plugins.database.AbstractDatabaseComponent;
-import org.rhq.plugins.database.DatabasePluginUtil;
 
 /**
  * Oracle Tablespace Component.
@@ -49,36 +42,24 @@ import org.rhq.plugins.database.DatabasePluginUtil;
 public class OracleTablespaceComponent extends AbstractDatabaseComponent implements MeasurementFacet {
     private static final Log LOG = LogFactory.getLog(OracleTablespaceComponent.class);
 
-    private static final String SQL_AVAILABLE = "SELECT COUNT(*) FROM dba_tablespaces WHERE tablespace_name = ?";
-    private static final String SQL_VALUES = "SELECT USED_SPACE usedSpace, TABLESPACE_SIZE totalSize, (USED_PERCENT/100) usedPercent "
-        + "FROM dba_tablespace_usage_metrics where tablespace_name = ?";
-
     public AvailabilityType getAvailability() {
-        Connection jdbcConnection = null;
-        PreparedStatement statement = null;
-        ResultSet resultSet = null;
         try {
-            jdbcConnection = getConnectionFromComponent(this);
-            statement = jdbcConnection.prepareStatement(SQL_AVAILABLE);
-            statement.setString(1, this.resourceContext.getResourceKey());
-            resultSet = statement.executeQuery();
-            if (resultSet.next() && (resultSet.getInt(1) == 1)) {
+            OracleServerComponent server = getServerComponent();
+            if (server.getTablespaces().getRow(server, this.resourceContext.getResourceKey()) != null) {
                 return AvailabilityType.UP;
             }
         } catch (SQLException e) {
             LOG.debug("unable to query", e);
-        } finally {
-            DatabasePluginUtil.safeClose(null, statement, resultSet);
-            if (supportsConnectionPooling()) {
-                DatabasePluginUtil.safeClose(jdbcConnection);
-            }
         }
 
         return AvailabilityType.DOWN;
     }
 
     public void getValues(MeasurementReport report, Set<MeasurementScheduleRequest> metrics) throws Exception {
-        Map<String, Double> values = getNumericQueryValues(this, SQL_VALUES, this.resourceContext.getResourceKey());
+        // one query per server and collection cycle instead of one per tablespace
+        OracleServerComponent server = getServerComponent();
+        Map<String, Double> values = server.getTablespaces().getNumericRow(server,
+            this.resourceContext.getResourceKey());
         for (MeasurementScheduleRequest request : metrics) {
             Double d = values.get(request.getName().toUpperCase(Locale.US));
             if (d != null) {
@@ -86,4 +67,8 @@ public class OracleTablespaceComponent extends AbstractDatabaseComponent impleme
             }
         }
     }
+
+    private OracleServerComponent getServerComponent() {
+        return (OracleServerComponent) this.resourceContext.getParentResourceComponent();
+    }
 }
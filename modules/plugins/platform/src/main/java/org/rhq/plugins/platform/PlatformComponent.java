@@ -57,6 +57,7 @@ import org.rhq.core.pluginapi.operation.OperationFacet;
 import org.rhq.core.pluginapi.operation.OperationResult;
 import org.rhq.core.pluginapi.util.ObjectUtil;
 import org.rhq.core.system.ProcessInfo;
+import org.rhq.core.system.ProcessInfo.ProcessInfoSnapshot;
 import org.rhq.core.system.SigarAccess;
 import org.rhq.core.system.SystemInfo;
 
@@ -225,12 +226,14 @@ public class PlatformComponent implements ResourceComponent<PlatformComponent>,
             List<ProcessInfo> processes = this.resourceContext.getSystemInformation().getAllProcesses();
             PropertyList processList = new PropertyList("processList");
             for (ProcessInfo process : processes) {
+                // the process table is shared, so the prior snapshot may be as old as the process
+                ProcessInfoSnapshot snapshot = process.freshSnapshot();
                 PropertyMap pm = new PropertyMap("process");
                 pm.put(new PropertySimple("pid", process.getPid()));
                 pm.put(new PropertySimple("name", process.getBaseName()));
-                pm.put(new PropertySimple("size", (process.getMemory() != null) ? process.getMemory().getSize() : "0"));
-                pm.put(new PropertySimple("userTime", (process.getTime() != null) ? process.getTime().getUser() : "0"));
-                pm.put(new PropertySimple("kernelTime", (process.getTime() != null) ? process.getTime().getSys() : "0"));
+                pm.put(new PropertySimple("size", (snapshot.getMemory() != null) ? snapshot.getMemory().getSize() : "0"));
+                pm.put(new PropertySimple("userTime", (snapshot.getTime() != null) ? snapshot.getTime().getUser() : "0"));
+                pm.put(new PropertySimple("kernelTime", (snapshot.getTime() != null) ? snapshot.getTime().getSys() : "0"));
                 processList.add(pm);
             }
 
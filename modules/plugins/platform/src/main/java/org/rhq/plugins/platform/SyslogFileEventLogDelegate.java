@@ -68,6 +68,7 @@ public class SyslogFileEventLogDelegate extends SyslogProcessor implements LogEn
     public void shutdown() {
         if (this.poller != null) {
             getEventContext().unregisterEventPoller(this.poller.getEventType(), this.poller.getSourceLocation());
+            this.poller.close();
         }
         return;
     }
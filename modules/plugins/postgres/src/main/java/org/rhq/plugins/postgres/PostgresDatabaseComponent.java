@@ -55,6 +55,7 @@ import org.rhq.plugins.database.ConnectionPoolingSupport;
 import org.rhq.plugins.database.DatabaseComponent;
 import org.rhq.plugins.database.DatabasePluginUtil;
 import org.rhq.plugins.database.PooledConnectionProvider;
+import org.rhq.plugins.database.QuerySnapshot;
 
 public class PostgresDatabaseComponent implements DatabaseComponent<PostgresServerComponent<?>>,
     ConnectionPoolingSupport, MeasurementFacet, CreateChildResourceFacet, OperationFacet {
@@ -63,6 +64,19 @@ public class PostgresDatabaseComponent implements DatabaseComponent<PostgresServ
 
     private static final String QUERY_DATABASE_SIZE = "SELECT *, pg_database_size(datname) AS size FROM pg_stat_database where datname = ?";
 
+    private static final String QUERY_TABLE_STATS = "select ts.*,  "
+        + "pg_relation_size(ts.relid) AS table_size, pg_total_relation_size(ts.relid) AS total_size, "
+        + "ios.heap_blks_read, ios.heap_blks_hit, ios.idx_blks_read, ios.idx_blks_hit, "
+        + "ios.toast_blks_read, ios.toast_blks_hit, ios.tidx_blks_read, ios.tidx_blks_hit, "
+        + "pgc.reltuples AS rows_approx "
+        + "from pg_stat_user_tables ts left join pg_statio_user_tables ios on ts.relid = ios.relid "
+        + "left join pg_class pgc on pgc.oid = ts.relid";
+
+    /**
+     * Table components collected in the same cycle share the statistics of all the tables for this long.
+     */
+    private static final long TABLE_STATS_MAX_AGE = 60 * 1000L;
+
     private ResourceContext<PostgresServerComponent<?>> resourceContext;
     private String databaseName;
     private PostgresServerComponent<?> postgresServerComponent;
@@ -70,6 +84,8 @@ public class PostgresDatabaseComponent implements DatabaseComponent<PostgresServ
     @Deprecated
     private Connection databaseConnection;
     private PostgresPooledConnectionProvider pooledConnectionProvider;
+    private final QuerySnapshot tableStats = new QuerySnapshot(QUERY_TABLE_STATS, TABLE_STATS_MAX_AGE, "schemaname",
+        "relname");
 
     @Override
     public void start(ResourceContext<PostgresServerComponent<?>> context) throws Exception {
@@ -86,6 +102,7 @@ public class PostgresDatabaseComponent implements DatabaseComponent<PostgresServ
 
     @Override
     public void stop() {
+        tableStats.invalidate();
         this.resourceContext = null;
         databaseName = null;
         postgresServerComponent = null;
@@ -171,6 +188,15 @@ public class PostgresDatabaseComponent implements DatabaseComponent<PostgresServ
         return databaseName;
     }
 
+    /**
+     * The statistics of the user tables of the database, keyed by schema name and table name. The columns are those of
+     * <code>pg_stat_user_tables</code> and <code>pg_statio_user_tables</code>, plus <code>table_size</code>,
+     * <code>total_size</code> and <code>rows_approx</code>.
+     */
+    public QuerySnapshot getTableStatistics() {
+        return tableStats;
+    }
+
     @Override
     public void getValues(MeasurementReport report, Set<MeasurementScheduleRequest> metrics) {
         Connection jdbcConnection = null;
@@ -243,6 +269,7 @@ public class PostgresDatabaseComponent implements DatabaseComponent<PostgresServ
             jdbcConnection = getPooledConnectionProvider().getPooledConnection();
             statement = jdbcConnection.createStatement();
             statement.executeUpdate(createTableSql);
+            tableStats.invalidate();
             report.setStatus(SUCCESS);
             report.setResourceKey(tableName);
             report.setResourceName(tableName);
@@ -275,6 +302,7 @@ public class PostgresDatabaseComponent implements DatabaseComponent<PostgresServ
             jdbcConnection = getPooledConnectionProvider().getPooledConnection();
             statement = jdbcConnection.createStatement();
             resultSet = statement.executeQuery("select * from pg_stat_reset()");
+            tableStats.invalidate();
             return null; // does not return results
         } catch (SQLException e) {
             OperationResult result = new OperationResult("Failed to reset statistics");
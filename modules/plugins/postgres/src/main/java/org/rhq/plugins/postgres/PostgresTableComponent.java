@@ -23,7 +23,6 @@ import static org.rhq.core.domain.measurement.AvailabilityType.DOWN;
 import static org.rhq.core.domain.measurement.AvailabilityType.UNKNOWN;
 import static org.rhq.core.domain.measurement.AvailabilityType.UP;
 import static org.rhq.core.util.StringUtil.isBlank;
-import static org.rhq.plugins.database.DatabasePluginUtil.getNumericQueryValues;
 import static org.rhq.plugins.database.DatabasePluginUtil.getSingleNumericQueryValue;
 import static org.rhq.plugins.database.DatabasePluginUtil.safeClose;
 import static org.rhq.plugins.postgres.PostgresTableDiscoveryComponent.SCHEMA_SEPARATOR;
@@ -34,6 +33,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -63,6 +63,7 @@ import org.rhq.plugins.database.ConnectionPoolingSupport;
 import org.rhq.plugins.database.DatabaseComponent;
 import org.rhq.plugins.database.DatabaseQueryUtility;
 import org.rhq.plugins.database.PooledConnectionProvider;
+import org.rhq.plugins.database.QuerySnapshot;
 
 /**
  * Represents a postgres table
@@ -77,17 +78,6 @@ public class PostgresTableComponent implements DatabaseComponent<PostgresDatabas
     private static final String TABLE_EXISTS_QUERY = "select 1 from pg_stat_user_tables "
         + "where schemaname = ? and relname = ?";
 
-    private static final String TABLE_STATS_QUERY = "select ts.*,  "
-        + "pg_relation_size(ts.relid) AS table_size, pg_total_relation_size(ts.relid) AS total_size, "
-        + "ios.heap_blks_read, ios.heap_blks_hit, ios.idx_blks_read, ios.idx_blks_hit, "
-        + "ios.toast_blks_read, ios.toast_blks_hit, ios.tidx_blks_read, ios.tidx_blks_hit "
-        + "from pg_stat_user_tables ts left join pg_statio_user_tables ios on ts.relid = ios.relid "
-        + "where ts.schemaname = ? and ts.relname = ?";
-
-    private static final String TABLE_ROW_COUNT_APPROX_QUERY = "select pgc.reltuples "
-        + "from pg_class pgc, pg_namespace pgn "
-        + "where pgn.nspname = ? and pgc.relname = ? and pgc.relnamespace = pgn.oid";
-
     /**
      * @deprecated as of RHQ4.11. No longer used (and shouldn't have been exposed anyway).
      */
@@ -182,7 +172,10 @@ public class PostgresTableComponent implements DatabaseComponent<PostgresDatabas
 
     public AvailabilityType getAvailability() {
         try {
-            return tableExists(resourceContext) ? UP : DOWN;
+            QuerySnapshot tableStats = resourceContext.getParentResourceComponent().getTableStatistics();
+            return tableStats.getRow(resourceContext.getParentResourceComponent(),
+                getSchemaNameFromContext(resourceContext), getTableNameFromContext(resourceContext)) != null ? UP
+                : DOWN;
         } catch (SQLException e) {
             LOG.debug("Exception while checking table existence", e);
             return UNKNOWN;
@@ -192,14 +185,20 @@ public class PostgresTableComponent implements DatabaseComponent<PostgresDatabas
     public void getValues(MeasurementReport report, Set<MeasurementScheduleRequest> requests) {
         String tableName = getTableNameFromContext(resourceContext);
         String schemaName = getSchemaNameFromContext(resourceContext);
-        Map<String, Double> results = getNumericQueryValues(this, TABLE_STATS_QUERY, schemaName, tableName);
+        Map<String, Double> results;
+        try {
+            // one query per database and collection cycle instead of one per table
+            results = resourceContext.getParentResourceComponent().getTableStatistics()
+                .getNumericRow(resourceContext.getParentResourceComponent(), schemaName, tableName);
+        } catch (SQLException e) {
+            LOG.debug("Unable to read table statistics", e);
+            results = Collections.emptyMap();
+        }
         for (MeasurementScheduleRequest request : requests) {
             String metricName = request.getName();
             Double value;
             if (metricName.equals("rows")) {
                 value = getSingleNumericQueryValue(this, getCountQuery(schemaName, tableName));
-            } else if (metricName.equals("rows_approx")) {
-                value = getSingleNumericQueryValue(this, TABLE_ROW_COUNT_APPROX_QUERY, schemaName, tableName);
             } else {
                 value = results.get(metricName);
             }
@@ -227,6 +226,7 @@ public class PostgresTableComponent implements DatabaseComponent<PostgresDatabas
                 + getFullyQualifiedTableName(getSchemaNameFromContext(resourceContext),
                     getQuoted(getTableNameFromContext(resourceContext))));
             statement.executeUpdate();
+            resourceContext.getParentResourceComponent().getTableStatistics().invalidate();
         } finally {
             safeClose(connection, statement);
         }
@@ -375,6 +375,7 @@ public class PostgresTableComponent implements DatabaseComponent<PostgresDatabas
                     + getFullyQualifiedTableName(getSchemaNameFromContext(resourceContext),
                         getQuoted(getTableNameFromContext(resourceContext))));
                 statement.executeUpdate();
+                resourceContext.getParentResourceComponent().getTableStatistics().invalidate();
             } finally {
                 safeClose(connection, statement);
             }